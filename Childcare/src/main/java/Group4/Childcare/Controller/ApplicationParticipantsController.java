@@ -61,7 +61,7 @@ public class ApplicationParticipantsController {
      * @param status 參與者狀態（候補中/已錄取/需要補件/已退件等）
      * @param reason 審核原因或備註
      * @param classID 班級ID
-     * @return 更新後的參與者資訊
+     * @return 更新後的參與者資訊；改為已錄取但班級已滿時回傳 409
      */
     @PutMapping("/{participantID}")
     @PreAuthorize("hasAnyRole('SUPER_ADMIN', 'ADMIN')")
@@ -87,6 +87,8 @@ public class ApplicationParticipantsController {
             ApplicationParticipants result = service.updateParticipant(participantID, status, reason, classID);
             return ResponseEntity.ok(result);
 
+        } catch (ApplicationParticipantsService.ClassFullException ex) {
+            return ResponseEntity.status(409).body("錯誤: " + ex.getMessage());
         } catch (RuntimeException ex) {
             return ResponseEntity.status(404).body("錯誤: " + ex.getMessage());
         } catch (Exception ex) {
@@ -99,9 +101,9 @@ public class ApplicationParticipantsController {
      *
      * 功能說明：
      * 1. 將申請案的狀態設為"已撤銷"
-     * 2. 如果該申請案有 CurrentOrder（候補序號）：
+     * 2. 如果該申請案有 CurrentOrder（候補排序鍵）：
      *    - 將該申請案的 CurrentOrder 設為 null
-     *    - 自動遞補：同機構後面所有的 CurrentOrder 減 1
+     *    - 同機構後面的候補名次由排序鍵推導，自動往前遞補
      * 3. 如果 CurrentOrder 為 null，則不影響其他申請案
      * 4. 自動發送撤銷通知郵件給申請人
      *
@@ -9,12 +9,22 @@ import Group4.Childcare.DTO.CaseOffsetListDTO;
 import Group4.Childcare.DTO.CaseEditUpdateDTO;
 import Group4.Childcare.DTO.UserApplicationDetailsDTO;
 import Group4.Childcare.DTO.ApplicationParticipantDTO;
-import Group4.Childcare.Model.ApplicationParticipants;
 import Group4.Childcare.Service.ApplicationsService;
 import Group4.Childcare.Service.FileService;
-import Group4.Childcare.Service.ApplicationParticipantsService;
+import Group4.Childcare.Service.ApplicationSubmissionService;
+import Group4.Childcare.Service.ApplicationEligibilityService;
+import Group4.Childcare.Service.IdempotencyService;
+import Group4.Childcare.Service.SubmissionWaitingRoom;
+import Group4.Childcare.Service.MultipartStreamParser;
+import Group4.Childcare.Service.StreamingUploadService;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.web.multipart.MultipartFile;
@@ -23,26 +33,45 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.ArrayList;
+import java.util.concurrent.Future;
 import java.nio.file.Files;
 import java.nio.file.Path;
 
 @RestController
 @RequestMapping("/applications")
 public class ApplicationsController {
-    private final ApplicationsService service;
+    public static final String QUEUE_TOKEN_HEADER = "X-Queue-Token";
 
-    @Autowired
-    private JdbcTemplate jdbcTemplate;
+    // 串流送件可接受的檔案欄位，依序對應 attachmentPath ~ attachmentPath3
+    private static final List<String> STREAM_FILE_PARTS = List.of("file", "file1", "file2", "file3");
 
-    @Autowired
-    private FileService fileService;
-
-    @Autowired
-    private ApplicationParticipantsService applicationParticipantsService;
+    private final ApplicationsService service;
+    private final JdbcTemplate jdbcTemplate;
+    private final FileService fileService;
+    private final ApplicationSubmissionService applicationSubmissionService;
+    private final ApplicationEligibilityService applicationEligibilityService;
+    private final IdempotencyService idempotencyService;
+    private final SubmissionWaitingRoom submissionWaitingRoom;
+    private final StreamingUploadService streamingUploadService;
+    private final ObjectMapper objectMapper;
 
     @Autowired
-    public ApplicationsController(ApplicationsService service) {
+    public ApplicationsController(ApplicationsService service, JdbcTemplate jdbcTemplate, FileService fileService,
+                                  ApplicationSubmissionService applicationSubmissionService,
+                                  ApplicationEligibilityService applicationEligibilityService,
+                                  IdempotencyService idempotencyService,
+                                  SubmissionWaitingRoom submissionWaitingRoom,
+                                  StreamingUploadService streamingUploadService,
+                                  ObjectMapper objectMapper) {
         this.service = service;
+        this.jdbcTemplate = jdbcTemplate;
+        this.fileService = fileService;
+        this.applicationSubmissionService = applicationSubmissionService;
+        this.applicationEligibilityService = applicationEligibilityService;
+        this.idempotencyService = idempotencyService;
+        this.submissionWaitingRoom = submissionWaitingRoom;
+        this.streamingUploadService = streamingUploadService;
+        this.objectMapper = objectMapper;
     }
 
     @PostMapping
@@ -166,11 +195,8 @@ public class ApplicationsController {
                         if (oldPath != null && !oldPath.isEmpty()) {
                             try {
                                 // 從路徑中提取檔名（格式：applicationId/uuid_檔名）
-                                String oldFileName = oldPath.substring(oldPath.lastIndexOf('/') + 1);
-                                Path oldFilePath = fileService.getFolderPath(id).resolve(oldFileName);
-                                if (Files.exists(oldFilePath)) {
-                                    Files.delete(oldFilePath);
-                                    System.out.println("  🗑️ 已刪除舊文件: " + oldFilePath.getFileName());
+                                if (fileService.deleteAttachment(id, oldPath)) {
+                                    System.out.println("  🗑️ 已刪除舊文件: " + oldPath.substring(oldPath.lastIndexOf('/') + 1));
                                 }
                             } catch (Exception e) {
                                 System.err.println("  ⚠️ 刪除舊文件失敗: " + e.getMessage());
@@ -186,6 +212,7 @@ public class ApplicationsController {
                         // 設置對應的 attachmentPath
                         // 儲存格式：{applicationId}/UUID_原始檔名
                         String pathWithFolder = id + "/" + fileName;
+                        fileService.registerAttachment(pathWithFolder, null);
 
                         switch (fileIndex) {
                             case 0:
@@ -436,6 +463,37 @@ public class ApplicationsController {
         }
     }
 
+    /**
+     * 送件前的申請資格預先檢查（不含附件），讓前端在上傳附件前就能提示不符合資格的幼兒
+     *
+     * 規則與 /case/submit 相同：已錄取、處理中案件達 2 件、同機構已有有效申請
+     *
+     * 使用範例：
+     * POST /applications/case/eligibility
+     * { "institutionId": "...", "children": [ { "nationalID": "C987654321", "name": "王小美" } ] }
+     *
+     * 回傳值：
+     *  - 200 OK + { eligible, message, children: [ { nationalID, name, acceptedCount, pendingCount, sameInstitutionCount, reason } ] }
+     *  - 429 Too Many Requests：啟用等候室時未帶已放行的號碼牌（X-Queue-Token）
+     *  - 500 Internal Server Error + 錯誤訊息
+     */
+    @PostMapping("/case/eligibility")
+    public ResponseEntity<?> checkEligibility(
+            @RequestHeader(value = QUEUE_TOKEN_HEADER, required = false) String queueToken,
+            @RequestBody CaseEditUpdateDTO caseDto) {
+        if (caseDto == null) {
+            return ResponseEntity.badRequest().body("Missing or invalid caseDto parameter");
+        }
+        if (!admittedByWaitingRoom(queueToken)) {
+            return notYetAdmitted();
+        }
+        try {
+            return ResponseEntity.ok(applicationEligibilityService.check(caseDto.getInstitutionId(), caseDto.getChildren()));
+        } catch (Exception ex) {
+            return ResponseEntity.status(500).body("Error checking eligibility: " + ex.getMessage());
+        }
+    }
+
     /**
      * 提交新的申請案件（包含案件資訊和附件檔案）
      *
@@ -560,97 +618,63 @@ public class ApplicationsController {
      }
 
 
+     * 等候室：啟用時須帶已放行的號碼牌（X-Queue-Token，由 POST /applications/queue 取得），否則回傳 429；
+     * 送件成功後號碼牌即收回。
+     *
+     * 重送保護：前端可帶 Idempotency-Key 標頭（同一次送件的重試使用同一個值），
+     * 相同鍵只會建立一筆案件，重試直接回傳第一次成功的結果（回應標頭 Idempotent-Replayed: true）。
+     * 鍵依登入帳號區分（未登入的送件共用同一個範圍）；同一個鍵搭配不同的 caseDto 或附件（檔名、大小）回傳 422。
      * */
     @PostMapping("/case/submit")
     public ResponseEntity<?> submitApplicationCase(
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+            @RequestHeader(value = QUEUE_TOKEN_HEADER, required = false) String queueToken,
             @RequestPart(value = "caseDto") CaseEditUpdateDTO caseDto,
             @RequestPart(value = "file", required = false) MultipartFile file,
             @RequestPart(value = "file1", required = false) MultipartFile file1,
             @RequestPart(value = "file2", required = false) MultipartFile file2,
             @RequestPart(value = "file3", required = false) MultipartFile file3) {
 
+        if (idempotencyKey == null || idempotencyKey.trim().isEmpty()) {
+            return doSubmitApplicationCase(queueToken, caseDto, file, file1, file2, file3);
+        }
+        try {
+            // 指紋須在送件處理（寫入 ApplicationID、附件路徑）之前計算
+            List<String> attachments = new ArrayList<>();
+            describeAttachment(attachments, "file", file);
+            describeAttachment(attachments, "file1", file1);
+            describeAttachment(attachments, "file2", file2);
+            describeAttachment(attachments, "file3", file3);
+            return idempotencyService.execute(idempotencyScope(), idempotencyKey.trim(),
+                    idempotencyService.fingerprint(caseDto, attachments),
+                    () -> doSubmitApplicationCase(queueToken, caseDto, file, file1, file2, file3),
+                    body -> body instanceof CaseEditUpdateDTO ? ((CaseEditUpdateDTO) body).getApplicationID() : null);
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            return ResponseEntity.status(500).body("Error submitting application case: " + ex.getMessage());
+        }
+    }
+
+    private ResponseEntity<?> doSubmitApplicationCase(String queueToken, CaseEditUpdateDTO caseDto, MultipartFile file,
+                                                      MultipartFile file1, MultipartFile file2, MultipartFile file3) {
         if (caseDto == null) {
             return ResponseEntity.badRequest().body("Missing or invalid caseDto parameter");
         }
+        if (!admittedByWaitingRoom(queueToken)) {
+            return notYetAdmitted();
+        }
 
         try {
-            Applications newApplication = new Applications();
-
-            // 🔍 Debug：檢查 Controller 收到的 DTO 與 userID 映射
-            System.out.println("=== submitApplicationCase DEBUG START ===");
-            System.out.println("Raw caseDto = " + caseDto);
-            if (caseDto.getUser() == null) {
-                System.out.println("caseDto.getUser() = null");
-            } else {
-                System.out.println("caseDto.getUser() = " + caseDto.getUser());
-                try {
-                    System.out.println("caseDto.getUser().getUserID() = " + caseDto.getUser().getUserID());
-                } catch (Exception e) {
-                    System.out.println("Error reading caseDto.getUser().getUserID(): " + e.getMessage());
-                }
-            }
-
             // 生成唯一的 Application ID
             UUID applicationId = UUID.randomUUID();
-            newApplication.setApplicationID(applicationId);
-
-            // 從 caseDto 中設置必要的資訊
-            newApplication.setApplicationDate(caseDto.getApplyDate() != null ?
-                    caseDto.getApplyDate() : java.time.LocalDate.now());
-
-            // 如果前端沒有傳入 caseNumber，則自動生成
-            // 格式：YYYYMMDD + 4位流水號，如 202412040001
-            if (caseDto.getCaseNumber() == null) {
-                Long generatedCaseNumber = service.generateCaseNumber();
-                newApplication.setCaseNumber(generatedCaseNumber);
-                System.out.println("Generated CaseNumber: " + generatedCaseNumber);
-            } else {
-                newApplication.setCaseNumber(caseDto.getCaseNumber());
-            }
-
-            newApplication.setInstitutionID(caseDto.getInstitutionId());
-            newApplication.setIdentityType(caseDto.getIdentityType() != null ?
-                    caseDto.getIdentityType().byteValue() : (byte)0);
-
-            // 如果有 User 資訊，設定 UserID
-            if (caseDto.getUser() != null) {
-                try {
-                    String userIdStr = caseDto.getUser().getUserID();
-                    System.out.println("Raw userIdStr from DTO = " + userIdStr);
-                    if (userIdStr != null && !userIdStr.trim().isEmpty()) {
-                        UUID userId = UUID.fromString(userIdStr.trim());
-                        newApplication.setUserID(userId);
-                    } else {
-                        System.out.println("userIdStr is null or empty");
-                    }
-                } catch (IllegalArgumentException ex) {
-                    System.err.println("Failed to parse UserID: " + ex.getMessage());
-                }
-            } else {
-                System.out.println("caseDto.getUser() is null, skip mapping userID");
-            }
-
-            System.out.println("newApplication.getUserID() AFTER mapping = " + newApplication.getUserID());
-            System.out.println("=== submitApplicationCase DEBUG END ===");
-
-            // 先儲存 Application（此時還沒有 attachmentPath 資訊）
-            try {
-                System.out.println("🔵 BEFORE service.create() - Application data:");
-                System.out.println("  ApplicationID: " + newApplication.getApplicationID());
-                System.out.println("  CaseNumber: " + newApplication.getCaseNumber());
-                System.out.println("  ApplicationDate: " + newApplication.getApplicationDate());
-                System.out.println("  InstitutionID: " + newApplication.getInstitutionID());
-                System.out.println("  UserID: " + newApplication.getUserID());
-                System.out.println("  IdentityType: " + newApplication.getIdentityType());
-
-                newApplication = service.create(newApplication);
-
-                System.out.println("✅ SUCCESS: Application saved to database!");
-                System.out.println("  Saved ApplicationID: " + newApplication.getApplicationID());
-            } catch (Exception ex) {
-                System.err.println("❌ FAILED to create Application: " + ex.getMessage());
-                ex.printStackTrace();
-                return ResponseEntity.status(500).body("Failed to create application: " + ex.getMessage());
+            Applications newApplication = newApplicationFrom(caseDto, applicationId);
+
+            // 🔍 寫入任何資料前先檢查所有幼兒的申請限制（單次查詢）
+            ApplicationEligibilityService.Verdict verdict =
+                    applicationEligibilityService.check(caseDto.getInstitutionId(), caseDto.getChildren());
+            if (!verdict.eligible()) {
+                System.err.println("  ❌ " + verdict.message());
+                return ResponseEntity.status(400).body(verdict.message());
             }
 
             // 設置 Application ID 到 caseDto
@@ -709,231 +733,276 @@ public class ApplicationsController {
 
                     // 設置對應的 attachmentPath 到 DTO 與 Entity
                     // 儲存格式：{applicationId}/UUID_原始檔名
-                    String pathWithFolder = applicationId + "/" + fileName;
-
-                    switch (fileIndex) {
-                        case 0:
-                            caseDto.setAttachmentPath(pathWithFolder);
-                            newApplication.setAttachmentPath(pathWithFolder);
-                            System.out.println("  ✅ 設定 attachmentPath: " + pathWithFolder);
-                            break;
-                        case 1:
-                            caseDto.setAttachmentPath1(pathWithFolder);
-                            newApplication.setAttachmentPath1(pathWithFolder);
-                            System.out.println("  ✅ 設定 attachmentPath1: " + pathWithFolder);
-                            break;
-                        case 2:
-                            caseDto.setAttachmentPath2(pathWithFolder);
-                            newApplication.setAttachmentPath2(pathWithFolder);
-                            System.out.println("  ✅ 設定 attachmentPath2: " + pathWithFolder);
-                            break;
-                        case 3:
-                            caseDto.setAttachmentPath3(pathWithFolder);
-                            newApplication.setAttachmentPath3(pathWithFolder);
-                            System.out.println("  ✅ 設定 attachmentPath3: " + pathWithFolder);
-                            break;
-                        default:
-                            System.out.println("  ⚠️ 警告：超過 4 個附件的限制，忽略此檔案");
-                            break;
-                    }
+                    fileService.registerAttachment(applicationId + "/" + fileName, null);
+                    setAttachmentPath(fileIndex, applicationId + "/" + fileName, caseDto, newApplication);
 
                     fileIndex++;
                 } catch (Exception ex) {
                     System.err.println("❌ Failed to save file from parameter '" + paramName + "': " + ex.getMessage());
                     ex.printStackTrace();
+                    fileService.deleteFolder(applicationId);
                     return ResponseEntity.status(500).body("Failed to save file '" + paramName + "': " + ex.getMessage());
                 }
             }
 
-            // 如果有任何附件路徑被設定，更新一次 Application 以寫入 DB
-            if (newApplication.getAttachmentPath() != null ||
-                    newApplication.getAttachmentPath1() != null ||
-                    newApplication.getAttachmentPath2() != null ||
-                    newApplication.getAttachmentPath3() != null) {
-                try {
-                    System.out.println("🔵 Updating Application with attachment paths:");
-                    System.out.println("  AttachmentPath: " + newApplication.getAttachmentPath());
-                    System.out.println("  AttachmentPath1: " + newApplication.getAttachmentPath1());
-                    System.out.println("  AttachmentPath2: " + newApplication.getAttachmentPath2());
-                    System.out.println("  AttachmentPath3: " + newApplication.getAttachmentPath3());
-
-                    service.update(applicationId, newApplication); // 使用 update 而不是 create
-                    System.out.println("✅ SUCCESS: Attachment paths updated!");
-                } catch (Exception ex) {
-                    System.err.println("❌ FAILED to update Application attachments: " + ex.getMessage());
-                    ex.printStackTrace();
-                }
-            }
-
-            // 假設此處已經完成 newApplication = service.create(newApplication);
-            // 並且已經取得 applicationId 並設到 caseDto.setApplicationID(applicationId);
+            return finishSubmission(queueToken, caseDto, newApplication);
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            return ResponseEntity.status(500).body("Error submitting application case: " + ex.getMessage());
+        }
+    }
 
-            // === 新增：建立 application_participants 資料（家長 + 幼兒） ===
-            // 這裡不要重新宣告 applicationId，直接使用前面建立的變數
+    /**
+     * 串流送件：與 /case/submit 相同的欄位（caseDto、file、file1、file2、file3），但附件不經暫存檔，
+     * 邊接收邊直接寫入 IdentityResource/{applicationId}/，並於寫入時計算 SHA-256。
+     *
+     * 欄位順序：caseDto 必須是第一個欄位（Content-Type: application/json），
+     * 以便在任何附件落地前完成等候室與申請資格檢查；之後依序放檔案欄位。
+     *
+     * 限制（attachment.stream.*）：單檔大小超過上限回傳 413；類型不在允許清單、或檔案開頭與宣告類型不符回傳 415，
+     * 均於傳輸途中立即中止並刪除已寫入的檔案。
+     *
+     * 回傳內容同 /case/submit，另附 attachmentSha256（依附件順序）。
+     *
+     * Idempotency-Key 同 /case/submit；附件在處理前尚未讀取，指紋以 caseDto 與請求本體長度（Content-Length）計算。
+     * 限制：同一個鍵重試時若換成內容不同但請求本體總長度相同的附件，無法分辨，會重播第一次的結果而不是回傳 422。
+     */
+    @PostMapping("/case/submit/stream")
+    public ResponseEntity<?> submitApplicationCaseStream(
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+            @RequestHeader(value = QUEUE_TOKEN_HEADER, required = false) String queueToken,
+            HttpServletRequest request) {
+        // 先讀取 caseDto（第一個欄位），附件仍留在請求本體中
+        MultipartStreamParser parser;
+        CaseEditUpdateDTO caseDto;
+        try {
+            parser = streamingUploadService.open(request.getInputStream(), request.getContentType());
+            MultipartStreamParser.Part first = parser.next();
+            if (first == null || !"caseDto".equals(first.name())) {
+                return ResponseEntity.badRequest().body("caseDto must be the first part");
+            }
+            caseDto = objectMapper.readValue(first.body(), CaseEditUpdateDTO.class);
+        } catch (StreamingUploadService.UploadRejectedException ex) {
+            return ResponseEntity.status(ex.getStatus()).body(ex.getMessage());
+        } catch (com.fasterxml.jackson.core.JsonProcessingException ex) {
+            return ResponseEntity.badRequest().body("Missing or invalid caseDto parameter");
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            return ResponseEntity.status(500).body("Error submitting application case: " + ex.getMessage());
+        }
 
-            // 建立通用方法把 DTO 轉成 Entity 並存檔
-            java.util.function.BiConsumer<ApplicationParticipantDTO, Boolean> saveParticipant = (dto, isParent) -> {
-                if (dto == null) return;
+        if (idempotencyKey == null || idempotencyKey.trim().isEmpty()) {
+            return doSubmitApplicationCaseStream(queueToken, parser, caseDto);
+        }
+        try {
+            // 附件尚未讀取，以請求本體長度代表附件內容
+            String requestHash = idempotencyService.fingerprint(caseDto,
+                    List.of("Content-Length=" + request.getContentLengthLong()));
+            return idempotencyService.execute(idempotencyScope(), idempotencyKey.trim(), requestHash,
+                    () -> doSubmitApplicationCaseStream(queueToken, parser, caseDto),
+                    body -> body instanceof Map ? (UUID) ((Map<?, ?>) body).get("applicationID") : null);
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            return ResponseEntity.status(500).body("Error submitting application case: " + ex.getMessage());
+        }
+    }
 
-                System.out.println("🔵 Creating participant: " + (isParent ? "PARENT" : "CHILD"));
-                System.out.println("  Name: " + dto.name);
-                System.out.println("  NationalID: " + dto.nationalID);
+    private ResponseEntity<?> doSubmitApplicationCaseStream(String queueToken, MultipartStreamParser parser,
+                                                            CaseEditUpdateDTO caseDto) {
+        if (!admittedByWaitingRoom(queueToken)) {
+            return notYetAdmitted();
+        }
 
-                ApplicationParticipants participant = new ApplicationParticipants();
-                participant.setParticipantID(java.util.UUID.randomUUID());
-                participant.setApplicationID(applicationId);
-                participant.setParticipantType(isParent); // true = 家長, false = 幼兒
-                participant.setNationalID(dto.nationalID);
-                participant.setName(dto.name);
+        UUID applicationId = null;
+        List<Future<StreamingUploadService.StoredFile>> pending = new ArrayList<>();
+        try {
+            applicationId = UUID.randomUUID();
+            Applications newApplication = newApplicationFrom(caseDto, applicationId);
+
+            ApplicationEligibilityService.Verdict verdict =
+                    applicationEligibilityService.check(caseDto.getInstitutionId(), caseDto.getChildren());
+            if (!verdict.eligible()) {
+                System.err.println("  ❌ " + verdict.message());
+                return ResponseEntity.status(400).body(verdict.message());
+            }
+            caseDto.setApplicationID(applicationId);
 
-                // gender: 依你現有慣例，"男"/"M" 視為 true，其餘視為 false
-                if (dto.gender != null) {
-                    String g = dto.gender.trim();
-                    boolean genderBool = "男".equals(g) || "M".equalsIgnoreCase(g) || "1".equals(g);
-                    participant.setGender(genderBool);
-                } else {
-                    participant.setGender(null);
+            Path folderPath = fileService.getFolderPath(applicationId);
+            java.util.Set<String> received = new java.util.HashSet<>();
+            for (MultipartStreamParser.Part part; (part = parser.next()) != null; ) {
+                if (!STREAM_FILE_PARTS.contains(part.name()) || !received.add(part.name())) {
+                    System.out.println("  ⚠️ 忽略未知或重複的欄位: " + part.name());
+                    continue;
                 }
+                pending.add(streamingUploadService.store(part, folderPath));
+            }
+            List<StreamingUploadService.StoredFile> storedFiles = streamingUploadService.awaitAll(pending);
+
+            // 依欄位名稱排序後依序對應 attachmentPath ~ attachmentPath3
+            storedFiles.sort(java.util.Comparator.comparingInt(f -> STREAM_FILE_PARTS.indexOf(f.fieldName())));
+            List<String> sha256 = new ArrayList<>();
+            for (int i = 0; i < storedFiles.size(); i++) {
+                StreamingUploadService.StoredFile stored = storedFiles.get(i);
+                System.out.println("  ✅ 串流寫入 " + stored.fieldName() + ": " + stored.storedName()
+                        + " (" + stored.size() + " bytes, sha256=" + stored.sha256() + ")");
+                fileService.registerAttachment(applicationId + "/" + stored.storedName(), stored.sha256());
+                setAttachmentPath(i, applicationId + "/" + stored.storedName(), caseDto, newApplication);
+                sha256.add(stored.sha256());
+            }
 
-                participant.setRelationShip(dto.relationShip);
-                participant.setOccupation(dto.occupation);
-                participant.setPhoneNumber(dto.phoneNumber);
-                participant.setHouseholdAddress(dto.householdAddress);
-                participant.setMailingAddress(dto.mailingAddress);
-                participant.setEmail(dto.email);
-
-                // 生日與停權結束日字串轉 LocalDate（格式預期為 yyyy-MM-dd）
-                try {
-                    if (dto.birthDate != null && !dto.birthDate.isEmpty()) {
-                        participant.setBirthDate(java.time.LocalDate.parse(dto.birthDate));
-                    }
-                } catch (Exception e) {
-                    System.err.println("Failed to parse birthDate for participant: " + dto.birthDate + ", " + e.getMessage());
-                }
-                participant.setIsSuspended(dto.isSuspended);
-                try {
-                    if (dto.suspendEnd != null && !dto.suspendEnd.isEmpty()) {
-                        participant.setSuspendEnd(java.time.LocalDate.parse(dto.suspendEnd));
-                    }
-                } catch (Exception e) {
-                    System.err.println("Failed to parse suspendEnd for participant: " + dto.suspendEnd + ", " + e.getMessage());
-                }
+            ResponseEntity<?> response = finishSubmission(queueToken, caseDto, newApplication);
+            if (!response.getStatusCode().is2xx()) {
+                return response;
+            }
+            Map<String, Object> body = objectMapper.convertValue(caseDto, new TypeReference<Map<String, Object>>() {});
+            body.put("applicationID", applicationId);
+            body.put("attachmentSha256", sha256);
+            return ResponseEntity.ok(body);
+        } catch (StreamingUploadService.UploadRejectedException ex) {
+            System.err.println("❌ 附件被拒絕: " + ex.getMessage());
+            discardStreamUpload(applicationId, pending);
+            return ResponseEntity.status(ex.getStatus()).body(ex.getMessage());
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            discardStreamUpload(applicationId, pending);
+            return ResponseEntity.status(500).body("Error submitting application case: " + ex.getMessage());
+        }
+    }
 
-                // 直接使用 DTO 傳入的 CurrentOrder 值（不自動分配）
-                participant.setCurrentOrder(dto.currentOrder);
+    private void discardStreamUpload(UUID applicationId, List<Future<StreamingUploadService.StoredFile>> pending) {
+        streamingUploadService.discard(pending);
+        if (applicationId != null) {
+            fileService.deleteFolder(applicationId);
+        }
+    }
 
-                participant.setStatus(dto.status);
-                participant.setReason(dto.reason);
+    /**
+     * 由送件內容建立 Applications（案件編號未指定時自動產生）
+     */
+    private Applications newApplicationFrom(CaseEditUpdateDTO caseDto, UUID applicationId) {
+        Applications newApplication = new Applications();
+
+        // 🔍 Debug：檢查 Controller 收到的 DTO 與 userID 映射
+        System.out.println("=== submitApplicationCase DEBUG START ===");
+        System.out.println("Raw caseDto = " + caseDto);
+        if (caseDto.getUser() == null) {
+            System.out.println("caseDto.getUser() = null");
+        } else {
+            System.out.println("caseDto.getUser() = " + caseDto.getUser());
+            try {
+                System.out.println("caseDto.getUser().getUserID() = " + caseDto.getUser().getUserID());
+            } catch (Exception e) {
+                System.out.println("Error reading caseDto.getUser().getUserID(): " + e.getMessage());
+            }
+        }
 
-                // classID 轉 UUID
-                try {
-                    if (dto.classID != null && !dto.classID.isEmpty()) {
-                        participant.setClassID(java.util.UUID.fromString(dto.classID));
-                    }
-                } catch (Exception e) {
-                    System.err.println("Failed to parse classID for participant: " + dto.classID + ", " + e.getMessage());
-                }
+        newApplication.setApplicationID(applicationId);
 
-                // reviewDate 直接帶入（DTO 已是 LocalDateTime）
-                participant.setReviewDate(dto.reviewDate);
+        // 從 caseDto 中設置必要的資訊
+        newApplication.setApplicationDate(caseDto.getApplyDate() != null ?
+                caseDto.getApplyDate() : java.time.LocalDate.now());
 
-                try {
-                    System.out.println("  🔵 Saving participant to database...");
-                    System.out.println("    ParticipantID: " + participant.getParticipantID());
-                    System.out.println("    ApplicationID: " + participant.getApplicationID());
-                    System.out.println("    ParticipantType: " + participant.getParticipantType());
-                    System.out.println("    Status: " + participant.getStatus());
+        // 如果前端沒有傳入 caseNumber，則自動生成
+        // 格式：YYYYMMDD + 4位流水號，如 202412040001
+        if (caseDto.getCaseNumber() == null) {
+            Long generatedCaseNumber = service.generateCaseNumber();
+            newApplication.setCaseNumber(generatedCaseNumber);
+            System.out.println("Generated CaseNumber: " + generatedCaseNumber);
+        } else {
+            newApplication.setCaseNumber(caseDto.getCaseNumber());
+        }
 
-                    applicationParticipantsService.create(participant);
+        newApplication.setInstitutionID(caseDto.getInstitutionId());
+        newApplication.setIdentityType(caseDto.getIdentityType() != null ?
+                caseDto.getIdentityType().byteValue() : (byte)0);
 
-                    System.out.println("  ✅ SUCCESS: Participant saved!");
-                } catch (Exception ex) {
-                    System.err.println("  ❌ FAILED to save ApplicationParticipant: " + ex.getMessage());
-                    ex.printStackTrace();
-                }
-            };
-
-            // 先存家長（parents）
-            System.out.println("🔵 Starting to save PARENTS...");
-            if (caseDto.getParents() != null) {
-                System.out.println("  Total parents to save: " + caseDto.getParents().size());
-                for (ApplicationParticipantDTO parentDto : caseDto.getParents()) {
-                    saveParticipant.accept(parentDto, true);
+        // 如果有 User 資訊，設定 UserID
+        if (caseDto.getUser() != null) {
+            try {
+                String userIdStr = caseDto.getUser().getUserID();
+                System.out.println("Raw userIdStr from DTO = " + userIdStr);
+                if (userIdStr != null && !userIdStr.trim().isEmpty()) {
+                    UUID userId = UUID.fromString(userIdStr.trim());
+                    newApplication.setUserID(userId);
+                } else {
+                    System.out.println("userIdStr is null or empty");
                 }
-            } else {
-                System.out.println("  No parents to save (null)");
+            } catch (IllegalArgumentException ex) {
+                System.err.println("Failed to parse UserID: " + ex.getMessage());
             }
+        } else {
+            System.out.println("caseDto.getUser() is null, skip mapping userID");
+        }
 
-            // 再存幼兒（children）
-            System.out.println("🔵 Starting to save CHILDREN...");
-            if (caseDto.getChildren() != null) {
-                System.out.println("  Total children to save: " + caseDto.getChildren().size());
-
-                // 🔍 檢查每個幼兒的申請限制
-                // 規則：
-                // 1. 如果「已錄取」狀態有 1 件或以上 → 不能再申請
-                // 2. 「審核中」+「需要補件」+「候補中」+「撤銷申請審核中」總共不得大於 2 件
-                // 目前：尚未阻擋「同幼兒+同機構」重複申請，此處只驗證全域（跨機構）。
-                for (ApplicationParticipantDTO childDto : caseDto.getChildren()) {
-                    if (childDto.nationalID != null && !childDto.nationalID.trim().isEmpty()) {
-                        // 檢查「已錄取」案件數
-                        int acceptedCount = service.countAcceptedApplicationsByChildNationalID(childDto.nationalID);
-                        System.out.println("  🔍 幼兒 " + childDto.name + " (身分證: " + childDto.nationalID + ")");
-                        System.out.println("     - 已錄取案件數: " + acceptedCount);
-
-                        // 規則 1：如果已有「已錄取」案件，不能再申請
-                        if (acceptedCount >= 1) {
-                            String errorMsg = "幼兒 " + childDto.name + " (身分證: " + childDto.nationalID + ") 已有錄取案件，無法再提交新申請";
-                            System.err.println("  ❌ " + errorMsg);
-                            return ResponseEntity.status(400).body(errorMsg);
-                        }
-
-                        // 檢查「審核中+需要補件+候補中+撤銷申請審核中」案件數
-                        int pendingCount = service.countPendingApplicationsByChildNationalID(childDto.nationalID);
-                        System.out.println("     - 處理中案件數 (審核中+需要補件+候補中+撤銷申請審核中): " + pendingCount);
-
-                        // 規則 2：處理中案件不得超過 2 件
-                        if (pendingCount >= 2) {
-                            String errorMsg = "幼兒 " + childDto.name + " (身分證: " + childDto.nationalID + ") 的處理中申請案件已達上限 2 件，無法再提交新申請";
-                            System.err.println("  ❌ " + errorMsg);
-                            return ResponseEntity.status(400).body(errorMsg);
-                        }
-
-                        // 規則 3：阻擋同幼兒 + 同機構的重複有效申請
-                        int activeSameInstitutionCount = service.countActiveApplicationsByChildAndInstitution(childDto.nationalID, caseDto.getInstitutionId());
-                        System.out.println("     - 同機構有效申請數: " + activeSameInstitutionCount);
-                        if (activeSameInstitutionCount >= 1) {
-                            String errorMsg = "幼兒 " + childDto.name + " (身分證: " + childDto.nationalID + ") 已在本機構有有效申請，無法重複提交";
-                            System.err.println("  ❌ " + errorMsg);
-                            return ResponseEntity.status(400).body(errorMsg);
-                        }
-                    }
-                }
+        System.out.println("newApplication.getUserID() AFTER mapping = " + newApplication.getUserID());
+        System.out.println("=== submitApplicationCase DEBUG END ===");
+        return newApplication;
+    }
 
-                for (ApplicationParticipantDTO childDto : caseDto.getChildren()) {
-                    saveParticipant.accept(childDto, false);
-                }
-            } else {
-                System.out.println("  No children to save (null)");
-            }
+    /**
+     * 設置第 fileIndex 個附件路徑到 DTO 與 Entity（格式：{applicationId}/UUID_原始檔名）
+     */
+    private void setAttachmentPath(int fileIndex, String pathWithFolder, CaseEditUpdateDTO caseDto,
+                                   Applications newApplication) {
+        switch (fileIndex) {
+            case 0:
+                caseDto.setAttachmentPath(pathWithFolder);
+                newApplication.setAttachmentPath(pathWithFolder);
+                System.out.println("  ✅ 設定 attachmentPath: " + pathWithFolder);
+                break;
+            case 1:
+                caseDto.setAttachmentPath1(pathWithFolder);
+                newApplication.setAttachmentPath1(pathWithFolder);
+                System.out.println("  ✅ 設定 attachmentPath1: " + pathWithFolder);
+                break;
+            case 2:
+                caseDto.setAttachmentPath2(pathWithFolder);
+                newApplication.setAttachmentPath2(pathWithFolder);
+                System.out.println("  ✅ 設定 attachmentPath2: " + pathWithFolder);
+                break;
+            case 3:
+                caseDto.setAttachmentPath3(pathWithFolder);
+                newApplication.setAttachmentPath3(pathWithFolder);
+                System.out.println("  ✅ 設定 attachmentPath3: " + pathWithFolder);
+                break;
+            default:
+                System.out.println("  ⚠️ 警告：超過 4 個附件的限制，忽略此檔案");
+                break;
+        }
+    }
 
-            System.out.println("✅ All participants saved successfully!");
-            // === 建立 participants 完成 ===
+    /**
+     * 案件（含附件路徑）與所有家長、幼兒在同一交易寫入；失敗時整筆回滾並移除已存下的附件
+     */
+    private ResponseEntity<?> finishSubmission(String queueToken, CaseEditUpdateDTO caseDto, Applications newApplication) {
+        try {
+            System.out.println("🔵 Submitting application with participants:");
+            System.out.println("  ApplicationID: " + newApplication.getApplicationID());
+            System.out.println("  CaseNumber: " + newApplication.getCaseNumber());
+            System.out.println("  Parents: " + (caseDto.getParents() != null ? caseDto.getParents().size() : 0));
+            System.out.println("  Children: " + (caseDto.getChildren() != null ? caseDto.getChildren().size() : 0));
 
-            // 最終檢查：輸出返回給前端的附件路徑
-            System.out.println("📤 [submitApplicationCase] 返回給前端的附件路徑:");
-            System.out.println("  attachmentPath: " + caseDto.getAttachmentPath());
-            System.out.println("  attachmentPath1: " + caseDto.getAttachmentPath1());
-            System.out.println("  attachmentPath2: " + caseDto.getAttachmentPath2());
-            System.out.println("  attachmentPath3: " + caseDto.getAttachmentPath3());
-            System.out.println("  前端應使用 URL: /identity-files/{上述路徑}");
-            System.out.println("  例如: /identity-files/" + caseDto.getAttachmentPath());
+            applicationSubmissionService.submit(newApplication, caseDto.getParents(), caseDto.getChildren());
 
-            return ResponseEntity.ok(caseDto);
+            System.out.println("✅ SUCCESS: Application and participants saved to database!");
+            submissionWaitingRoom.complete(queueToken);
         } catch (Exception ex) {
+            System.err.println("❌ FAILED to submit Application: " + ex.getMessage());
             ex.printStackTrace();
-            return ResponseEntity.status(500).body("Error submitting application case: " + ex.getMessage());
+            fileService.deleteFolder(newApplication.getApplicationID());
+            return ResponseEntity.status(500).body("Failed to create application: " + ex.getMessage());
         }
+
+        // 最終檢查：輸出返回給前端的附件路徑
+        System.out.println("📤 [submitApplicationCase] 返回給前端的附件路徑:");
+        System.out.println("  attachmentPath: " + caseDto.getAttachmentPath());
+        System.out.println("  attachmentPath1: " + caseDto.getAttachmentPath1());
+        System.out.println("  attachmentPath2: " + caseDto.getAttachmentPath2());
+        System.out.println("  attachmentPath3: " + caseDto.getAttachmentPath3());
+        System.out.println("  前端應使用 URL: /identity-files/{上述路徑}");
+        System.out.println("  例如: /identity-files/" + caseDto.getAttachmentPath());
+
+        return ResponseEntity.ok(caseDto);
     }
 
     /**
@@ -1040,11 +1109,10 @@ public class ApplicationsController {
      *
      * CurrentOrder 自動管理機制（僅針對幼兒 ParticipantType=0）：
      *  - 當狀態改為「候補中」：
-     *    1. 自動查詢同機構的最大 CurrentOrder 值
-     *    2. 設置為 maxOrder + 1（若無記錄則設為 1）
+     *    1. 由機構序列原子配置下一個排序鍵（見 WaitlistRankKeys）
      *  - 當狀態從「候補中」改為其他狀態（如「已錄取」）：
      *    1. 將該幼兒的 CurrentOrder 設為 null
-     *    2. 自動遞補：將同機構所有 CurrentOrder > 當前值的幼兒順序減 1
+     *    2. 查詢回傳的 CurrentOrder 為由排序鍵推導的候補名次，後面的候補自動往前遞補
      *  - 注意：家長（ParticipantType=1）不會設置 CurrentOrder
      *
      * 回傳值：
@@ -1053,7 +1121,7 @@ public class ApplicationsController {
      *
      * 範例使用：
      *  1. 單一幼兒審核為候補：PUT /applications/{id}/case?NationalID=A123456789&status=候補中
-     *     → 系統自動分配 CurrentOrder（如 5）
+     *     → 系統自動分配排序鍵，查詢時顯示候補名次（如 5）
      *  2. 將候補中的幼兒改為已錄取：PUT /applications/{id}/case?NationalID=A123456789&status=已錄取
      *     → 系統自動將後面的候補（CurrentOrder 6,7,8...）遞補為 5,6,7...
      * */
@@ -1492,5 +1560,34 @@ public class ApplicationsController {
         }
     }
 
+    /**
+     * 等候室未啟用或號碼牌已放行
+     */
+    private boolean admittedByWaitingRoom(String queueToken) {
+        return submissionWaitingRoom.isAdmitted(queueToken);
+    }
 
+    private ResponseEntity<?> notYetAdmitted() {
+        return ResponseEntity.status(429).body("尚未輪到送件，請先排隊取得號碼牌（POST /applications/queue）");
+    }
+
+    /**
+     * 冪等鍵的送件者：JWT 驗證後的登入帳號（不採用請求本體中可由用戶端任意填寫的 UserID）
+     * 送件端點為 permitAll，未登入的送件共用 "anonymous" 範圍，此時範圍僅供參考；
+     * 跨送件者的保護來自請求指紋：必須帶完全相同的內容才會重播第一次的結果，否則回傳 422
+     */
+    private static String idempotencyScope() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !authentication.isAuthenticated()
+                || authentication instanceof AnonymousAuthenticationToken || authentication.getName() == null) {
+            return "anonymous";
+        }
+        return "user:" + authentication.getName();
+    }
+
+    private static void describeAttachment(List<String> attachments, String paramName, MultipartFile file) {
+        if (file != null && !file.isEmpty()) {
+            attachments.add(paramName + ":" + file.getOriginalFilename() + ":" + file.getSize());
+        }
+    }
 }
@@ -1,10 +1,11 @@
 package Group4.Childcare.Controller;
 
+import Group4.Childcare.Service.FileServingSupport;
 import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.io.File;
@@ -21,16 +22,16 @@ public class AttachmentResourceController {
         return dir.toPath();
     }
 
+    /**
+     * 下載公告附件：串流回傳，支援 Range、ETag / Last-Modified 條件請求（見 FileServingSupport）
+     */
     @GetMapping({"/AttachmentResource/{fileName}", "/api/AttachmentResource/{fileName}"})
-    public ResponseEntity<?> getFile(@PathVariable String fileName) {
+    public ResponseEntity<?> getFile(@PathVariable String fileName, @RequestHeader HttpHeaders requestHeaders) {
         Path filePath = getStorageLocation().resolve(fileName);
         if (!Files.exists(filePath)) {
             return ResponseEntity.notFound().build();
         }
         try {
-            String contentType = Files.probeContentType(filePath);
-            if (contentType == null) contentType = MediaType.APPLICATION_OCTET_STREAM_VALUE;
-
             // 從 UUID_原始檔名 格式中提取原始檔名
             String displayFilename = fileName;
             int underscoreIdx = fileName.indexOf('_');
@@ -38,13 +39,9 @@ public class AttachmentResourceController {
                 displayFilename = fileName.substring(underscoreIdx + 1);
             }
 
-            return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + displayFilename + "\"")
-                    .contentType(MediaType.parseMediaType(contentType))
-                    .body(Files.readAllBytes(filePath));
+            return FileServingSupport.serve(filePath, displayFilename, requestHeaders, true);
         } catch (IOException e) {
             return ResponseEntity.internalServerError().body("Failed to read file: " + e.getMessage());
         }
     }
 }
-
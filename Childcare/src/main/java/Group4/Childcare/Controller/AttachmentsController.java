@@ -13,7 +13,11 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.Future;
 import Group4.Childcare.Repository.ApplicationsJdbcRepository;
+import Group4.Childcare.Service.MultipartStreamParser;
+import Group4.Childcare.Service.StreamingUploadService;
+import jakarta.servlet.http.HttpServletRequest;
 import java.util.UUID;
 
 
@@ -23,11 +27,21 @@ public class AttachmentsController {
     // @Autowired
     // private ApplicationService applicationService;
 
-    @Autowired
-    private ApplicationsJdbcRepository applicationsJdbcRepository;
+    private final ApplicationsJdbcRepository applicationsJdbcRepository;
+    private final StreamingUploadService streamingUploadService;
+
+    // 串流上傳可接受的檔案欄位，依序對應 AttachmentPath ~ AttachmentPath3
+    private static final List<String> FILE_PARTS = List.of("file", "file1", "file2", "file3");
 
    private String ATTACHMENT_DIR = "AttachmentResource";
 
+    @Autowired
+    public AttachmentsController(ApplicationsJdbcRepository applicationsJdbcRepository,
+                                 StreamingUploadService streamingUploadService) {
+        this.applicationsJdbcRepository = applicationsJdbcRepository;
+        this.streamingUploadService = streamingUploadService;
+    }
+
     @PostMapping("/applications/{id}/attachments")
     public ResponseEntity<?> uploadAttachments(
             @PathVariable("id") String applicationId,
@@ -68,4 +82,56 @@ public class AttachmentsController {
         result.put("attachmentPaths", savedPaths);
         return ResponseEntity.ok(result);
     }
+
+    /**
+     * 串流上傳附件：欄位同 /applications/{id}/attachments，但邊接收邊直接寫入 AttachmentResource，
+     * 不經暫存檔；單檔超過大小上限回傳 413，類型不允許或內容與類型不符回傳 415（已寫入的檔案會刪除）。
+     * 回傳 attachmentPaths 與各檔案的 SHA-256（attachmentSha256，未上傳的位置為 null）。
+     */
+    @PostMapping("/applications/{id}/attachments/stream")
+    public ResponseEntity<?> uploadAttachmentsStream(@PathVariable("id") String applicationId,
+                                                     HttpServletRequest request) throws IOException {
+        Path dir = Paths.get(ATTACHMENT_DIR);
+        Files.createDirectories(dir);
+
+        List<Future<StreamingUploadService.StoredFile>> pending = new ArrayList<>();
+        Set<String> received = new HashSet<>();
+        List<StreamingUploadService.StoredFile> stored;
+        try {
+            MultipartStreamParser parser = streamingUploadService.open(request.getInputStream(), request.getContentType());
+            for (MultipartStreamParser.Part part; (part = parser.next()) != null; ) {
+                // 同名欄位只取第一個
+                if (FILE_PARTS.contains(part.name()) && received.add(part.name())) {
+                    pending.add(streamingUploadService.store(part, dir));
+                }
+            }
+            stored = streamingUploadService.awaitAll(pending);
+        } catch (StreamingUploadService.UploadRejectedException ex) {
+            streamingUploadService.discard(pending);
+            return ResponseEntity.status(ex.getStatus()).body(ex.getMessage());
+        } catch (IOException ex) {
+            streamingUploadService.discard(pending);
+            throw ex;
+        }
+
+        List<String> savedPaths = new ArrayList<>(Collections.nCopies(FILE_PARTS.size(), null));
+        List<String> sha256 = new ArrayList<>(Collections.nCopies(FILE_PARTS.size(), null));
+        for (StreamingUploadService.StoredFile file : stored) {
+            int index = FILE_PARTS.indexOf(file.fieldName());
+            savedPaths.set(index, Paths.get(ATTACHMENT_DIR, file.storedName()).toString());
+            sha256.set(index, file.sha256());
+        }
+        try {
+            UUID appUuid = applicationId != null && !applicationId.isEmpty() ? UUID.fromString(applicationId) : null;
+            if (appUuid != null) {
+                applicationsJdbcRepository.updateAttachmentPaths(appUuid, savedPaths.get(0), savedPaths.get(1), savedPaths.get(2), savedPaths.get(3));
+            }
+        } catch (Exception ex) {
+            System.err.println("Failed to update attachment paths for applicationId=" + applicationId + ": " + ex.getMessage());
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put("attachmentPaths", savedPaths);
+        result.put("attachmentSha256", sha256);
+        return ResponseEntity.ok(result);
+    }
 }
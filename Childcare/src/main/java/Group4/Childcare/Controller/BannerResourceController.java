@@ -1,10 +1,11 @@
 package Group4.Childcare.Controller;
 
+import Group4.Childcare.Service.FileServingSupport;
 import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.io.File;
@@ -21,19 +22,17 @@ public class BannerResourceController {
         return dir.toPath();
     }
 
+    /**
+     * 橫幅圖片：首頁每次載入都會請求，串流回傳並以 ETag / Cache-Control 讓瀏覽器快取（見 FileServingSupport）
+     */
     @GetMapping({"/BannerResource/{imageName}", "/api/BannerResource/{imageName}"})
-    public ResponseEntity<?> getBannerImage(@PathVariable String imageName) {
+    public ResponseEntity<?> getBannerImage(@PathVariable String imageName, @RequestHeader HttpHeaders requestHeaders) {
         Path filePath = getStorageLocation().resolve(imageName);
         if (!Files.exists(filePath)) {
             return ResponseEntity.notFound().build();
         }
         try {
-            String contentType = Files.probeContentType(filePath);
-            if (contentType == null) contentType = MediaType.APPLICATION_OCTET_STREAM_VALUE;
-            return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + imageName + "\"")
-                    .contentType(MediaType.parseMediaType(contentType))
-                    .body(Files.readAllBytes(filePath));
+            return FileServingSupport.serve(filePath, imageName, requestHeaders, true);
         } catch (IOException e) {
             return ResponseEntity.internalServerError().body("Failed to read image: " + e.getMessage());
         }
@@ -2,8 +2,12 @@ package Group4.Childcare.Controller;
 
 import Group4.Childcare.Model.Banners;
 import Group4.Childcare.Service.BannersService;
+import Group4.Childcare.Service.FileServingSupport;
+import Group4.Childcare.Service.ImageDerivativeService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.StringUtils;
@@ -27,11 +31,14 @@ import java.util.UUID;
 public class BannersController {
     private final BannersService service;
 
+    private final ImageDerivativeService imageDerivativeService;
+
     private final Path storageLocation;
 
     @Autowired
-    public BannersController(BannersService service) throws IOException {
+    public BannersController(BannersService service, ImageDerivativeService imageDerivativeService) throws IOException {
         this.service = service;
+        this.imageDerivativeService = imageDerivativeService;
         // 將 BannerResource 資料夾設在專案根目錄
         String basePath = System.getProperty("user.dir");
         File dir = new File(basePath, "BannerResource");
@@ -73,6 +80,7 @@ public class BannersController {
         try {
             Path target = storageLocation.resolve(filename);
             Files.copy(file.getInputStream(), target, StandardCopyOption.REPLACE_EXISTING);
+            scheduleDerivatives(target);
             meta.setImageName(filename);
             Banners created = service.create(meta);
             return ResponseEntity.status(HttpStatus.CREATED).body(created);
@@ -140,9 +148,11 @@ public class BannersController {
             try {
                 Path target = storageLocation.resolve(filename);
                 Files.copy(file.getInputStream(), target, StandardCopyOption.REPLACE_EXISTING);
+                scheduleDerivatives(target);
                 // delete old file if exists
                 if (banner.getImageName() != null) {
                     try { Files.deleteIfExists(storageLocation.resolve(banner.getImageName())); } catch (IOException ignored) {}
+                    ImageDerivativeService.deleteVariants(storageLocation.resolve(banner.getImageName()));
                 }
                 banner.setImageName(filename);
             } catch (IOException e) {
@@ -199,14 +209,20 @@ public class BannersController {
         // delete file
         if (banner.getImageName() != null) {
             try { Files.deleteIfExists(storageLocation.resolve(banner.getImageName())); } catch (IOException ignored) {}
+            ImageDerivativeService.deleteVariants(storageLocation.resolve(banner.getImageName()));
         }
 
         service.delete(id);
         return ResponseEntity.noContent().build();
     }
 
+    /**
+     * 橫幅圖片；size=thumb / list / full 時回傳對應縮圖，縮圖尚未產生時暫以原圖回傳且不長期快取
+     */
     @GetMapping("/image/{imageName}")
-    public ResponseEntity<?> getImage(@PathVariable String imageName) {
+    public ResponseEntity<?> getImage(@PathVariable String imageName,
+                                      @RequestParam(value = "size", required = false) String size,
+                                      @RequestHeader HttpHeaders requestHeaders) {
         // Remove query parameters if present (e.g., "image.jpg?_=123456" -> "image.jpg")
         int queryParamIndex = imageName.indexOf('?');
         if (queryParamIndex > 0) {
@@ -218,22 +234,27 @@ public class BannersController {
             return ResponseEntity.notFound().build();
         }
         try {
-            String contentType = Files.probeContentType(filePath);
             // 從 UUID_原始檔名 提取原始檔名顯示
             String displayFilename = imageName;
             int underscoreIdx = imageName.indexOf('_');
             if (underscoreIdx > 0 && underscoreIdx < imageName.length() - 1) {
                 displayFilename = imageName.substring(underscoreIdx + 1);
             }
-            return ResponseEntity.ok()
-                .header("Content-Disposition", "inline; filename=\"" + displayFilename + "\"")
-                .contentType(contentType != null ? org.springframework.http.MediaType.parseMediaType(contentType) : org.springframework.http.MediaType.APPLICATION_OCTET_STREAM)
-                .body(Files.readAllBytes(filePath));
+            Path servedPath = ImageDerivativeService.resolve(filePath, size);
+            CacheControl cacheControl = servedPath == filePath && ImageDerivativeService.Variant.fromParam(size) != null
+                    ? CacheControl.noCache()
+                    : FileServingSupport.cacheControlFor(imageName, true);
+            // 串流回傳，支援 Range 與 ETag / Last-Modified 條件請求
+            return FileServingSupport.serve(servedPath, displayFilename, requestHeaders, cacheControl);
         } catch (IOException e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to read image: " + e.getMessage());
         }
     }
 
+    private void scheduleDerivatives(Path image) {
+        imageDerivativeService.scheduleGeneration(image);
+    }
+
     // 取得上架且未過期的 banners
     @GetMapping("/active")
     public List<Banners> getActiveBanners() {
@@ -3,12 +3,18 @@ package Group4.Childcare.Controller;
 import Group4.Childcare.Model.Institutions;
 import Group4.Childcare.DTO.InstitutionSummaryDTO;
 import Group4.Childcare.DTO.InstitutionSimpleDTO;
+import Group4.Childcare.Service.FileServingSupport;
+import Group4.Childcare.Service.ImageDerivativeService;
 import Group4.Childcare.Service.InstitutionsService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -89,6 +95,30 @@ public class InstitutionsController {
     return entity.map(ResponseEntity::ok).orElseGet(() -> ResponseEntity.notFound().build());
   }
 
+  /**
+   * GET /institutions/{id}/image?size=thumb
+   * 機構圖片；size 可為 thumb / list / full，未指定或縮圖尚未產生時回傳原圖
+   * 重新上傳同名圖片會覆寫檔案，因此不長期快取，以 ETag 重新驗證
+   * @param id 機構ID
+   * @param size 縮圖尺寸（可選）
+   * @return 圖片內容
+   */
+  @GetMapping("/{id}/image")
+  public ResponseEntity<?> getImage(@PathVariable UUID id,
+                                    @RequestParam(value = "size", required = false) String size,
+                                    @RequestHeader HttpHeaders requestHeaders) {
+    Path file = service.getImageFile(id, size);
+    if (file == null) {
+      return ResponseEntity.notFound().build();
+    }
+    try {
+      String displayFilename = ImageDerivativeService.originalFileName(file).substring(id.toString().length() + 1);
+      return FileServingSupport.serve(file, displayFilename, requestHeaders, CacheControl.noCache());
+    } catch (IOException e) {
+      return ResponseEntity.internalServerError().body("讀取圖片失敗: " + e.getMessage());
+    }
+  }
+
   @GetMapping
   public List<Institutions> getAll() {
     return service.getAll();
@@ -0,0 +1,86 @@
+package Group4.Childcare.Controller;
+
+import Group4.Childcare.DTO.LotteryJobRequest;
+import Group4.Childcare.Model.LotteryRun;
+import Group4.Childcare.Model.LotteryRunResult;
+import Group4.Childcare.Service.LotteryJobService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * 批次抽籤 API
+ * POST /waitlist/lottery/jobs                  建立批次抽籤（背景執行）
+ * GET  /waitlist/lottery/jobs/{runId}          查詢進度
+ * GET  /waitlist/lottery/jobs/{runId}/results  分頁查詢各機構結果
+ */
+@RestController
+@RequestMapping("/waitlist/lottery/jobs")
+@PreAuthorize("hasAnyRole('SUPER_ADMIN', 'ADMIN')")
+public class LotteryJobController {
+    private final LotteryJobService lotteryJobService;
+
+    @Autowired
+    public LotteryJobController(LotteryJobService lotteryJobService) {
+        this.lotteryJobService = lotteryJobService;
+    }
+
+    @PostMapping
+    public ResponseEntity<Map<String, Object>> startJob(@RequestBody(required = false) LotteryJobRequest request) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            LotteryRun run = lotteryJobService.startJob(request != null ? request.getInstitutionIds() : null);
+            response.put("success", true);
+            response.put("runId", run.getRunID());
+            response.put("totalCount", run.getTotalCount());
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("message", "建立批次抽籤失敗: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+
+    @GetMapping("/{runId}")
+    public ResponseEntity<LotteryRun> getProgress(@PathVariable UUID runId) {
+        Optional<LotteryRun> run = lotteryJobService.getRun(runId);
+        return run.map(ResponseEntity::ok).orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @GetMapping("/{runId}/results")
+    public ResponseEntity<Object> getResults(
+            @PathVariable UUID runId,
+            @RequestParam(defaultValue = "0") int offset,
+            @RequestParam(defaultValue = "20") int size) {
+        if (offset < 0 || size <= 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        final int MAX_SIZE = 100;
+        if (size > MAX_SIZE) {
+            size = MAX_SIZE;
+        }
+
+        List<LotteryRunResult> content = lotteryJobService.getResults(runId, offset, size);
+        long totalElements = lotteryJobService.countResults(runId);
+        int totalPages = (int) Math.ceil((double) totalElements / size);
+        boolean hasNext = offset + size < totalElements;
+
+        Map<String, Object> response = Map.of(
+                "totalPages", totalPages,
+                "hasNext", hasNext,
+                "offset", offset,
+                "size", size,
+                "content", content,
+                "totalElements", totalElements
+        );
+        return ResponseEntity.ok(response);
+    }
+}
@@ -0,0 +1,113 @@
+package Group4.Childcare.Controller;
+
+import Group4.Childcare.DTO.ResumableUploadRequest;
+import Group4.Childcare.Service.ResumableUploadService;
+import Group4.Childcare.Service.StreamingUploadService.UploadRejectedException;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 可續傳的附件上傳 API（行動網路斷線後只需補傳缺少的部分）
+ *
+ * POST   /applications/{id}/uploads             建立上傳：{ slot, fileName, contentType, size, sha256(可選) }，回傳 uploadId
+ * PUT    /applications/uploads/{uploadId}       上傳一段：Content-Range: bytes {起}-{迄}/{總大小}，本體為該段原始位元組
+ * GET    /applications/uploads/{uploadId}       查詢進度：offset（從頭連續收到的位元組數）與 receivedRanges
+ * POST   /applications/uploads/{uploadId}/complete  完成：檔案移入 IdentityResource/{id}/ 並寫入對應的 attachmentPath
+ * DELETE /applications/uploads/{uploadId}       取消上傳
+ */
+@RestController
+@RequestMapping("/applications")
+public class ResumableUploadController {
+
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes\\s+(\\d+)-(\\d+)/(\\d+|\\*)");
+
+    private final ResumableUploadService resumableUploadService;
+
+    @Autowired
+    public ResumableUploadController(ResumableUploadService resumableUploadService) {
+        this.resumableUploadService = resumableUploadService;
+    }
+
+    @PostMapping("/{id}/uploads")
+    public ResponseEntity<?> create(@PathVariable UUID id, @RequestBody ResumableUploadRequest request) {
+        try {
+            ResumableUploadService.UploadStatus status = resumableUploadService.create(id, request.getSlot(),
+                    request.getFileName(), request.getContentType(), request.getSize(), request.getSha256());
+            return ResponseEntity.created(URI.create("/applications/uploads/" + status.uploadId())).body(status);
+        } catch (UploadRejectedException ex) {
+            return error(ex.getStatus(), ex.getMessage());
+        } catch (IOException ex) {
+            System.err.println("❌ 建立續傳上傳失敗: " + ex.getMessage());
+            return error(500, "建立上傳失敗: " + ex.getMessage());
+        }
+    }
+
+    @PutMapping("/uploads/{uploadId}")
+    public ResponseEntity<?> uploadChunk(@PathVariable UUID uploadId,
+                                         @RequestHeader(value = "Content-Range", required = false) String contentRange,
+                                         HttpServletRequest request) {
+        Matcher matcher = contentRange != null ? CONTENT_RANGE.matcher(contentRange.trim()) : null;
+        if (matcher == null || !matcher.matches()) {
+            return error(400, "需要 Content-Range 標頭，格式為 bytes {起}-{迄}/{總大小}");
+        }
+        try {
+            long start = Long.parseLong(matcher.group(1));
+            long end = Long.parseLong(matcher.group(2));
+            Long total = "*".equals(matcher.group(3)) ? null : Long.parseLong(matcher.group(3));
+            return ResponseEntity.ok(resumableUploadService.writeChunk(uploadId, start, end, total,
+                    request.getInputStream()));
+        } catch (NumberFormatException ex) {
+            return error(400, "Content-Range 數值錯誤: " + contentRange);
+        } catch (UploadRejectedException ex) {
+            return error(ex.getStatus(), ex.getMessage());
+        } catch (IOException ex) {
+            // 多半是用戶端中途斷線；已收到的部分已記錄，可查詢進度後續傳
+            System.err.println("⚠️ 續傳上傳 " + uploadId + " 中斷: " + ex.getMessage());
+            return error(500, "上傳中斷，請查詢進度後續傳");
+        }
+    }
+
+    @GetMapping("/uploads/{uploadId}")
+    public ResponseEntity<?> status(@PathVariable UUID uploadId) {
+        return resumableUploadService.status(uploadId)
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .orElseGet(() -> error(404, "上傳不存在或已過期: " + uploadId));
+    }
+
+    @PostMapping("/uploads/{uploadId}/complete")
+    public ResponseEntity<?> complete(@PathVariable UUID uploadId) {
+        try {
+            return ResponseEntity.ok(resumableUploadService.complete(uploadId));
+        } catch (UploadRejectedException ex) {
+            return error(ex.getStatus(), ex.getMessage());
+        } catch (IOException ex) {
+            System.err.println("❌ 完成續傳上傳失敗: " + uploadId + ", " + ex.getMessage());
+            return error(500, "完成上傳失敗: " + ex.getMessage());
+        }
+    }
+
+    @DeleteMapping("/uploads/{uploadId}")
+    public ResponseEntity<?> cancel(@PathVariable UUID uploadId) {
+        if (!resumableUploadService.cancel(uploadId)) {
+            return error(404, "上傳不存在或已過期: " + uploadId);
+        }
+        return ResponseEntity.noContent().build();
+    }
+
+    private static ResponseEntity<?> error(int status, String message) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", false);
+        response.put("message", message);
+        return ResponseEntity.status(status).body(response);
+    }
+}
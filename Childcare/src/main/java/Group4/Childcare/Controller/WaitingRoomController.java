@@ -0,0 +1,42 @@
+package Group4.Childcare.Controller;
+
+import Group4.Childcare.Service.SubmissionWaitingRoom;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 送件等候室 API
+ * POST /applications/queue          取得號碼牌與目前位置
+ * GET  /applications/queue/{token}  查詢位置（已放行時 admitted = true，可帶 X-Queue-Token 送件）
+ */
+@RestController
+@RequestMapping("/applications/queue")
+public class WaitingRoomController {
+    private final SubmissionWaitingRoom submissionWaitingRoom;
+
+    @Autowired
+    public WaitingRoomController(SubmissionWaitingRoom submissionWaitingRoom) {
+        this.submissionWaitingRoom = submissionWaitingRoom;
+    }
+
+    @PostMapping
+    public ResponseEntity<SubmissionWaitingRoom.Ticket> enqueue() {
+        return ResponseEntity.ok(submissionWaitingRoom.enqueue());
+    }
+
+    @GetMapping("/{token}")
+    public ResponseEntity<?> status(@PathVariable String token) {
+        SubmissionWaitingRoom.Ticket ticket = submissionWaitingRoom.status(token);
+        if (ticket == null) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "號碼牌不存在或已過期，請重新排隊");
+            return ResponseEntity.status(404).body(response);
+        }
+        return ResponseEntity.ok(ticket);
+    }
+}
@@ -1,33 +1,59 @@
 package Group4.Childcare.Controller;
 
+import Group4.Childcare.DTO.AdmissionSimulationResult;
 import Group4.Childcare.DTO.LotteryRequest;
 import Group4.Childcare.DTO.LotteryResult;
 import Group4.Childcare.DTO.ManualAdmissionRequest;
 import Group4.Childcare.Repository.WaitlistJdbcRepository;
-import Group4.Childcare.Service.EmailService;
-import jakarta.mail.MessagingException;
+import Group4.Childcare.Service.AdmissionHoldService;
+import Group4.Childcare.Service.CountyAllocationService;
+import Group4.Childcare.Service.LotteryNotificationService;
+import Group4.Childcare.Service.LotteryService;
+import Group4.Childcare.Service.LotterySimulationService;
+import Group4.Childcare.Service.WaitlistRankIndexService;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.time.LocalDate;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
 
 @RestController
 @RequestMapping("/waitlist")
 public class WaitlistController {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
     private final WaitlistJdbcRepository waitlistJdbcRepository;
-    private final EmailService emailService;
+    private final LotteryNotificationService lotteryNotificationService;
+    private final LotteryService lotteryService;
+    private final LotterySimulationService lotterySimulationService;
+    private final WaitlistRankIndexService waitlistRankIndexService;
+    private final CountyAllocationService countyAllocationService;
+    private final AdmissionHoldService admissionHoldService;
 
     @Autowired
-    public WaitlistController(WaitlistJdbcRepository waitlistJdbcRepository, EmailService emailService) {
+    public WaitlistController(WaitlistJdbcRepository waitlistJdbcRepository,
+                              LotteryNotificationService lotteryNotificationService,
+                              LotteryService lotteryService, LotterySimulationService lotterySimulationService,
+                              WaitlistRankIndexService waitlistRankIndexService,
+                              CountyAllocationService countyAllocationService,
+                              AdmissionHoldService admissionHoldService) {
         this.waitlistJdbcRepository = waitlistJdbcRepository;
-        this.emailService = emailService;
+        this.lotteryNotificationService = lotteryNotificationService;
+        this.lotteryService = lotteryService;
+        this.lotterySimulationService = lotterySimulationService;
+        this.waitlistRankIndexService = waitlistRankIndexService;
+        this.countyAllocationService = countyAllocationService;
+        this.admissionHoldService = admissionHoldService;
     }
 
     // 查詢候補名單，可依機構ID與姓名模糊查詢
@@ -35,254 +61,142 @@ public class WaitlistController {
     public List<Map<String, Object>> getWaitlistByInstitution(
             @RequestParam(required = false) String institutionId,
             @RequestParam(required = false) String name) {
+        // 管理端名單直接查詢資料庫，不使用可能落後其他節點的記憶體索引
         return waitlistJdbcRepository.findWaitlistByInstitution(institutionId, name);
     }
 
     /**
-     * 抽籤功能（抽籤時期）
-     * POST /waitlist/lottery
+     * 串流查詢候補名單（欄位與 /by-institution 相同），逐列寫出 JSON，記憶體用量不隨名單大小增加
+     * GET /waitlist/by-institution/stream?institutionId=&name=&limit=&cursor=
+     * 回應：{"content":[...],"nextCursor":"..."}，指定 limit 時以 nextCursor 取得下一頁（已到最後一頁時為 null）
      */
-    @PostMapping("/lottery")
-    @PreAuthorize("hasAnyRole('SUPER_ADMIN', 'ADMIN')")
-    @Transactional
-    public ResponseEntity<LotteryResult> conductLottery(@RequestBody LotteryRequest request) {
+    @GetMapping(value = "/by-institution/stream", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamWaitlistByInstitution(
+            @RequestParam(required = false) String institutionId,
+            @RequestParam(required = false) String name,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String cursor) {
+        if (limit != null && limit <= 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        WaitlistJdbcRepository.WaitlistCursor after;
         try {
-            UUID institutionId = request.getInstitutionId();
-
-            // 1. 獲取機構總收托人數和目前就讀中人數
-            int totalCapacity = waitlistJdbcRepository.getTotalCapacity(institutionId);
-            int currentStudents = waitlistJdbcRepository.getCurrentStudentsCount(institutionId);
-            int availableSlots = totalCapacity - currentStudents;
-
-            // 2. 計算法定序位名額（基於總容量的比例）
-            int firstPriorityLegalQuota = (int) Math.floor(totalCapacity * 0.2);
-            int secondPriorityLegalQuota = (int) Math.floor(totalCapacity * 0.1);
-            int thirdPriorityLegalQuota = totalCapacity - firstPriorityLegalQuota - secondPriorityLegalQuota;
-
-            // 3. 統計機構內各序位已錄取人數
-            Map<Integer, Integer> acceptedCountByPriority = waitlistJdbcRepository.getAcceptedCountByPriority(institutionId);
-            int firstPriorityAcceptedCount = acceptedCountByPriority.get(1);
-            int secondPriorityAcceptedCount = acceptedCountByPriority.get(2);
-            int thirdPriorityAcceptedCount = acceptedCountByPriority.get(3);
-
-            // 4. 計算實際序位名額（法定名額 - 已錄取人數）
-            // 如果名額已滿（availableSlots <= 0），所有quota都設為0，但仍然執行抽籤以打亂CurrentOrder
-            int firstPriorityQuota = availableSlots > 0 ? Math.max(0, firstPriorityLegalQuota - firstPriorityAcceptedCount) : 0;
-            int secondPriorityQuota = availableSlots > 0 ? Math.max(0, secondPriorityLegalQuota - secondPriorityAcceptedCount) : 0;
-            int thirdPriorityQuota = availableSlots > 0 ? Math.max(0, thirdPriorityLegalQuota - thirdPriorityAcceptedCount) : 0;
-
-            // 重置所有候補順位（洗牌）- 無論是否有名額都執行
-            waitlistJdbcRepository.resetAllWaitlistOrders(institutionId);
-
-            // 4. 獲取所有申請人並按身分別分組
-            Map<Integer, List<Map<String, Object>>> applicantsByPriority =
-                    waitlistJdbcRepository.getLotteryApplicantsByPriority(institutionId);
-
-            List<Map<String, Object>> priority1 = applicantsByPriority.get(1);
-            List<Map<String, Object>> priority2 = applicantsByPriority.get(2);
-            List<Map<String, Object>> priority3 = applicantsByPriority.get(3);
-
-            // 獲取班級資訊（包含各班級剩餘空位）
-            List<Map<String, Object>> classes = waitlistJdbcRepository.getClassInfo(institutionId);
-
-            // 5. 進行三階段抽籤
-            List<Map<String, Object>> acceptedList = new ArrayList<>();
-            List<Map<String, Object>> waitlist = new ArrayList<>();
-            List<Map<String, Object>> classFullWaitlist = new ArrayList<>(); // 班級已滿無法錄取者
-
-            // === 第一序位抽籤 ===
-            List<Map<String, Object>> priority1Selected = new ArrayList<>();
-            List<Map<String, Object>> priority1NotSelected = new ArrayList<>();
-
-            // 無論是否有名額，都先洗牌以打亂順序
-            Collections.shuffle(priority1);
+            after = cursor != null && !cursor.isBlank() ? WaitlistJdbcRepository.WaitlistCursor.parse(cursor) : null;
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
 
-            if (firstPriorityQuota <= 0) {
-                // 第一序位已滿額，所有申請人併入第二序位池（已洗牌）
-                priority1NotSelected.addAll(priority1);
-            } else {
-                if (priority1.size() <= firstPriorityQuota) {
-                    // Case A: 全部正取
-                    priority1Selected.addAll(priority1);
-                } else {
-                    // Case B: 抽籤決定正取
-                    for (int i = 0; i < firstPriorityQuota; i++) {
-                        priority1Selected.add(priority1.get(i));
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator json = JSON_FACTORY.createGenerator(outputStream)) {
+                json.writeStartObject();
+                json.writeArrayFieldStart("content");
+                // 多取一筆判斷是否還有下一頁
+                Integer fetchLimit = limit != null ? limit + 1 : null;
+                WaitlistJdbcRepository.WaitlistRow[] last = new WaitlistJdbcRepository.WaitlistRow[1];
+                int[] written = {0};
+                boolean[] hasNext = {false};
+                waitlistJdbcRepository.streamWaitlistByInstitution(institutionId, name, after, fetchLimit, row -> {
+                    if (limit != null && written[0] >= limit) {
+                        hasNext[0] = true;
+                        return;
                     }
-                    for (int i = firstPriorityQuota; i < priority1.size(); i++) {
-                        priority1NotSelected.add(priority1.get(i));
+                    try {
+                        writeWaitlistRow(json, row);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
                     }
-                }
-            }
-
-            // === 第二序位抽籤 ===
-            // 第一序位未錄取者加入第二序位池
-            priority2.addAll(priority1NotSelected);
-
-            List<Map<String, Object>> priority2Selected = new ArrayList<>();
-            List<Map<String, Object>> priority2NotSelected = new ArrayList<>();
-
-            int priority2Available = secondPriorityQuota + (firstPriorityQuota - priority1Selected.size());
-
-            // 無論是否有名額，都先洗牌以打亂順序
-            Collections.shuffle(priority2);
-
-            if (priority2Available <= 0) {
-                // 第二序位已滿額，所有申請人併入第三序位池（已洗牌）
-                priority2NotSelected.addAll(priority2);
-            } else {
-                if (priority2.size() <= priority2Available) {
-                    // Case A: 全部正取
-                    priority2Selected.addAll(priority2);
+                    last[0] = row;
+                    written[0]++;
+                });
+                json.writeEndArray();
+                if (hasNext[0]) {
+                    json.writeStringField("nextCursor", WaitlistJdbcRepository.WaitlistCursor.of(last[0]).toString());
                 } else {
-                    // Case B: 抽籤決定正取
-                    for (int i = 0; i < priority2Available; i++) {
-                        priority2Selected.add(priority2.get(i));
-                    }
-                    for (int i = priority2Available; i < priority2.size(); i++) {
-                        priority2NotSelected.add(priority2.get(i));
-                    }
+                    json.writeNullField("nextCursor");
                 }
+                json.writeEndObject();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
             }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
 
-            // === 第三序位抽籤 ===
-            // 第一、二序位未錄取者加入第三序位池
-            priority3.addAll(priority2NotSelected);
-
-            List<Map<String, Object>> priority3Selected = new ArrayList<>();
-            List<Map<String, Object>> priority3NotSelected = new ArrayList<>();
-
-            int priority3Available = thirdPriorityQuota +
-                (firstPriorityQuota - priority1Selected.size()) +
-                (secondPriorityQuota - priority2Selected.size());
-
-            // 無論是否有名額，都先洗牌以打亂順序
-            Collections.shuffle(priority3);
-
-            if (priority3Available <= 0) {
-                // 第三序位已滿額，所有申請人成為備取（已洗牌）
-                priority3NotSelected.addAll(priority3);
-            } else {
-                if (priority3.size() <= priority3Available) {
-                    // Case A: 全部正取
-                    priority3Selected.addAll(priority3);
-                } else {
-                    // Case B: 抽籤決定正取
-                    for (int i = 0; i < priority3Available; i++) {
-                        priority3Selected.add(priority3.get(i));
-                    }
-                    for (int i = priority3Available; i < priority3.size(); i++) {
-                        priority3NotSelected.add(priority3.get(i));
-                    }
-                }
-            }
-
-            // 6. 依序位順序進行班級分配（序位 1→2→3）
-            int firstAccepted = 0;
-            int secondAccepted = 0;
-            int thirdAccepted = 0;
-
-            int lotteryOrder = 1; // 記錄抽籤順序
-
-            // 第一序位正取者進行班級分配
-            for (Map<String, Object> applicant : priority1Selected) {
-                applicant.put("LotteryOrder", lotteryOrder++); // 記錄抽籤順序
-                if (assignClassAndAdmit(applicant, classes, "第一序位正取", acceptedList, classFullWaitlist)) {
-                    firstAccepted++;
-                }
-            }
-
-            // 第二序位正取者進行班級分配
-            for (Map<String, Object> applicant : priority2Selected) {
-                applicant.put("LotteryOrder", lotteryOrder++);
-                if (assignClassAndAdmit(applicant, classes, "第二序位正取", acceptedList, classFullWaitlist)) {
-                    secondAccepted++;
-                }
-            }
-
-            // 第三序位正取者進行班級分配
-            for (Map<String, Object> applicant : priority3Selected) {
-                applicant.put("LotteryOrder", lotteryOrder++);
-                if (assignClassAndAdmit(applicant, classes, "第三序位正取", acceptedList, classFullWaitlist)) {
-                    thirdAccepted++;
-                }
-            }
-
-            // 第三序位未抽中者成為備取（記錄抽籤順序）
-            for (Map<String, Object> applicant : priority3NotSelected) {
-                applicant.put("Status", "候補中");
-                applicant.put("ReviewDate", LocalDateTime.now());
-                applicant.put("LotteryOrder", lotteryOrder++);
-                waitlist.add(applicant);
-            }
-
-            // 7. 排序邏輯：只有候補者需要 CurrentOrder
-            // 依照抽籤順序排序所有候補者（包含班級已滿和未抽中）
-            List<Map<String, Object>> allWaitlist = new ArrayList<>();
-            allWaitlist.addAll(classFullWaitlist); // 班級已滿無法錄取者
-            allWaitlist.addAll(waitlist); // 未抽中備取者
-
-            // 依照 LotteryOrder 排序（班級已滿者參考當初抽出來的排序）
-            allWaitlist.sort((a, b) -> {
-                Integer orderA = (Integer) a.get("LotteryOrder");
-                Integer orderB = (Integer) b.get("LotteryOrder");
-                return orderA.compareTo(orderB);
-            });
-
-            // 分配 CurrentOrder（只有候補者需要）
-            int currentOrder = 1;
-            for (Map<String, Object> applicant : allWaitlist) {
-                applicant.put("CurrentOrder", currentOrder++);
-            }
+    private static void writeWaitlistRow(JsonGenerator json, WaitlistJdbcRepository.WaitlistRow row) throws IOException {
+        json.writeStartObject();
+        json.writeStringField("ApplicationID", row.applicationId().toString());
+        json.writeStringField("Name", row.name());
+        if (row.caseNumber() != null) {
+            json.writeNumberField("CaseNumber", row.caseNumber());
+        } else {
+            json.writeNullField("CaseNumber");
+        }
+        json.writeStringField("BirthDate", row.birthDate() != null ? row.birthDate().toString() : null);
+        if (row.identityType() != null) {
+            json.writeNumberField("IdentityType", row.identityType());
+        } else {
+            json.writeNullField("IdentityType");
+        }
+        if (row.currentOrder() != null) {
+            json.writeNumberField("CurrentOrder", row.currentOrder());
+        } else {
+            json.writeNullField("CurrentOrder");
+        }
+        json.writeStringField("InstitutionName", row.institutionName());
+        json.writeStringField("Age", WaitlistJdbcRepository.describeAge(row.birthDate()));
+        json.writeEndObject();
+    }
 
-            // 已錄取者不需要 CurrentOrder（設為 NULL 或不設定）
-            for (Map<String, Object> applicant : acceptedList) {
-                applicant.put("CurrentOrder", null); // 已錄取者不需要順序
+    /**
+     * 家長查詢幼兒目前的候補名次
+     * GET /waitlist/position?institutionId=&applicationId=&nationalId=
+     */
+    @GetMapping("/position")
+    public ResponseEntity<Map<String, Object>> getWaitlistPosition(
+            @RequestParam UUID institutionId,
+            @RequestParam UUID applicationId,
+            @RequestParam String nationalId) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            WaitlistRankIndexService.Position position =
+                    waitlistRankIndexService.getPosition(institutionId, applicationId, nationalId);
+            if (position == null) {
+                response.put("success", false);
+                response.put("message", "此幼兒目前不在候補名單中");
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
             }
+            response.put("success", true);
+            response.put("position", position.position());
+            response.put("totalWaiting", position.totalWaiting());
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("message", "查詢失敗: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
 
-            // 8. 批量更新資料庫
-            List<Map<String, Object>> allUpdates = new ArrayList<>();
-            allUpdates.addAll(acceptedList);      // 已錄取者（CurrentOrder = null）
-            allUpdates.addAll(allWaitlist);       // 所有候補者（有 CurrentOrder）
-            waitlistJdbcRepository.batchUpdateApplicants(allUpdates);
-
-            // 8.5. 非同步發送郵件通知（不會阻塞回應）
-            System.out.println("📧 啟動非同步郵件發送流程...");
-            sendLotteryNotificationEmails(acceptedList, allWaitlist);
-            System.out.println("✅ 抽籤完成，郵件將在背景發送");
-            // 9. 返回結果
-            LotteryResult result = new LotteryResult();
-            result.setSuccess(true);
-
-            // 根據是否有空位調整訊息
-            String message;
-            if (availableSlots <= 0) {
-                message = String.format(
-                    "抽籤完成（無空缺名額，已打亂候補順序）。總容量=%d，就讀中=%d，剩餘空位=%d。" +
-                    "所有申請人維持候補狀態，候補人數=%d",
-                    totalCapacity, currentStudents, availableSlots, allWaitlist.size());
-            } else {
-                message = String.format(
-                    "抽籤完成。總容量=%d，就讀中=%d，剩餘空位=%d。" +
-                    "法定名額：第一序位=%d（已錄取%d，本次可錄取%d），第二序位=%d（已錄取%d，本次可錄取%d），第三序位=%d（已錄取%d，本次可錄取%d）。" +
-                    "本次實際錄取=%d",
-                    totalCapacity, currentStudents, availableSlots,
-                    firstPriorityLegalQuota, firstPriorityAcceptedCount, firstPriorityQuota,
-                    secondPriorityLegalQuota, secondPriorityAcceptedCount, secondPriorityQuota,
-                    thirdPriorityLegalQuota, thirdPriorityAcceptedCount, thirdPriorityQuota,
-                    acceptedList.size());
-            }
-            result.setMessage(message);
-            result.setTotalProcessed(allUpdates.size());
-            result.setFirstPriorityAccepted(firstAccepted);
-            result.setSecondPriorityAccepted(secondAccepted);
-            result.setThirdPriorityAccepted(thirdAccepted);
-            result.setWaitlisted(allWaitlist.size());
-            result.setAcceptedList(acceptedList);
-            result.setWaitlistList(allWaitlist);
+    /**
+     * 抽籤功能（抽籤時期）
+     * POST /waitlist/lottery
+     */
+    @PostMapping("/lottery")
+    @PreAuthorize("hasAnyRole('SUPER_ADMIN', 'ADMIN')")
+    @Transactional
+    public ResponseEntity<LotteryResult> conductLottery(@RequestBody LotteryRequest request) {
+        try {
+            UUID institutionId = request.getInstitutionId();
 
+            // 抽籤引擎：一次讀取快照、記憶體內計算、一次批次寫回
+            LotteryResult result = lotteryService.conductLottery(institutionId);
+            sendLotteryNotificationEmails(result.getAcceptedList(), result.getWaitlistList(), result.getReleasedList());
             return ResponseEntity.ok(result);
 
+        } catch (LotteryService.LotteryLockedException e) {
+            LotteryResult errorResult = new LotteryResult();
+            errorResult.setSuccess(false);
+            errorResult.setMessage(e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(errorResult);
         } catch (Exception e) {
             LotteryResult errorResult = new LotteryResult();
             errorResult.setSuccess(false);
@@ -291,66 +205,6 @@ public class WaitlistController {
         }
     }
 
-    /**
-     * 分配班級並錄取（檢查年齡班級限制）
-     */
-    private boolean assignClassAndAdmit(Map<String, Object> applicant, List<Map<String, Object>> classes,
-                                       String priorityType, List<Map<String, Object>> acceptedList,
-                                       List<Map<String, Object>> classFullWaitlist) {
-        Object birthDateObj = applicant.get("BirthDate");
-        if (birthDateObj == null) {
-            // 無法確認年齡，無法分配班級，列入候補
-            applicant.put("Status", "候補中");
-            applicant.put("Reason", priorityType + "-無出生日期");
-            applicant.put("ReviewDate", LocalDateTime.now());
-            classFullWaitlist.add(applicant);
-            return false;
-        }
-
-        LocalDate birthDate = null;
-        if (birthDateObj instanceof java.sql.Date) {
-            birthDate = ((java.sql.Date) birthDateObj).toLocalDate();
-        } else if (birthDateObj instanceof LocalDate) {
-            birthDate = (LocalDate) birthDateObj;
-        }
-
-        // 尋找適合的班級
-        UUID classId = waitlistJdbcRepository.findSuitableClass(birthDate, classes);
-
-        if (classId != null && waitlistJdbcRepository.hasClassCapacity(classId)) {
-            // 有適合的班級且有空位，錄取
-            applicant.put("Status", "已錄取");
-            applicant.put("Reason", priorityType);
-            applicant.put("ClassID", classId.toString());
-            applicant.put("ReviewDate", LocalDateTime.now());
-            acceptedList.add(applicant);
-
-            // 更新班級學生數（記憶體中的 classes 也要更新）
-            waitlistJdbcRepository.updateClassCurrentStudents(classId, 1);
-
-            // 同步更新記憶體中的班級資訊
-            for (Map<String, Object> classInfo : classes) {
-                if (classId.toString().equals(classInfo.get("ClassID").toString())) {
-                    int current = ((Number) classInfo.get("CurrentStudents")).intValue();
-                    classInfo.put("CurrentStudents", current + 1);
-                    break;
-                }
-            }
-
-            return true;
-        } else {
-            // 班級已滿或無適合班級，列入候補
-            String reasonDetail = classId == null ?
-                priorityType + "-無適合年齡班級" :
-                priorityType + "-班級已滿";
-            applicant.put("Status", "候補中");
-            applicant.put("Reason", reasonDetail);
-            applicant.put("ReviewDate", LocalDateTime.now());
-            classFullWaitlist.add(applicant);
-            return false;
-        }
-    }
-
     /**
      * 非抽籤時期：機構手動錄取
      * POST /waitlist/manual-admit
@@ -361,33 +215,46 @@ public class WaitlistController {
         Map<String, Object> response = new HashMap<>();
 
         try {
-            // 檢查是否違反順序錄取
-            List<Map<String, Object>> applicants = waitlistJdbcRepository.getWaitlistApplicants(
-                    request.getApplicationId());
-
-            int targetOrder = -1;
-            for (Map<String, Object> applicant : applicants) {
-                String nationalId = (String) applicant.get("NationalID");
-                if (nationalId.equals(request.getNationalId())) {
-                    targetOrder = (Integer) applicant.get("CurrentOrder");
-                    break;
+            // 未指定班級時依候補順序最佳匹配建議班級；沒有適合的班級時不錄取也不記錄跳號
+            UUID classId = request.getClassId();
+            if (classId == null) {
+                classId = lotteryService.suggestClass(request.getApplicationId(), request.getNationalId());
+                if (classId == null) {
+                    response.put("success", false);
+                    response.put("message", "錄取失敗：沒有適合該幼兒年齡且尚有空位的班級");
+                    return ResponseEntity.status(HttpStatus.CONFLICT).body(response);
                 }
             }
 
-            if (targetOrder > 1) {
-                // 檢查前面是否還有未錄取的人
-                List<Map<String, Object>> violations = waitlistJdbcRepository.checkAdmissionOrderViolation(
-                        request.getApplicationId(), targetOrder);
+            // 檢查是否違反順序錄取：候補名單與排序鍵都以申請案所屬的機構查詢
+            UUID institutionId = waitlistJdbcRepository.findInstitutionIdByApplication(request.getApplicationId());
+            if (institutionId != null) {
+                Integer targetKey = null;
+                for (Map<String, Object> applicant : waitlistJdbcRepository.getWaitlistApplicants(institutionId)) {
+                    if (request.getNationalId().equals(applicant.get("NationalID"))
+                            && request.getApplicationId().toString().equalsIgnoreCase(
+                                    String.valueOf(applicant.get("ApplicationID")))) {
+                        Object order = applicant.get("CurrentOrder");
+                        targetKey = order instanceof Number n ? n.intValue() : null;
+                        break;
+                    }
+                }
+
+                if (targetKey != null) {
+                    // 檢查前面是否還有未錄取的人（查詢資料庫，不依賴各節點的記憶體索引）
+                    List<Map<String, Object>> violations =
+                            waitlistJdbcRepository.checkAdmissionOrderViolation(institutionId, targetKey);
 
-                if (!violations.isEmpty()) {
-                    // 記錄違反順序錄取（將詳細資訊記錄到 Status）
-                    waitlistJdbcRepository.logSkippedAdmission(
-                            request.getApplicationId(),
-                            request.getNationalId(),
-                            "已錄取（違反順序-跳過" + violations.size() + "位候補）");
+                    if (!violations.isEmpty()) {
+                        // 記錄違反順序錄取（將詳細資訊記錄到 Status）
+                        waitlistJdbcRepository.logSkippedAdmission(
+                                request.getApplicationId(),
+                                request.getNationalId(),
+                                "已錄取（違反順序-跳過" + violations.size() + "位候補）");
 
-                    response.put("warning", "注意：前面還有 " + violations.size() + " 位候補者未錄取");
-                    response.put("skippedApplicants", violations);
+                        response.put("warning", "注意：前面還有 " + violations.size() + " 位候補者未錄取");
+                        response.put("skippedApplicants", violations);
+                    }
                 }
             }
 
@@ -395,11 +262,16 @@ public class WaitlistController {
             boolean success = waitlistJdbcRepository.manualAdmit(
                     request.getApplicationId(),
                     request.getNationalId(),
-                    request.getClassId());
+                    classId);
 
             if (success) {
+                waitlistRankIndexService.refreshApplication(request.getApplicationId());
                 response.put("success", true);
                 response.put("message", "錄取成功");
+                response.put("classId", classId);
+                // 家長須於期限內確認錄取
+                response.put("confirmDeadline", admissionHoldService.hold(
+                        request.getApplicationId(), request.getNationalId(), classId));
             } else {
                 response.put("success", false);
                 response.put("message", "錄取失敗：班級已滿");
@@ -414,6 +286,31 @@ public class WaitlistController {
         }
     }
 
+    /**
+     * 家長確認錄取（須於錄取保留期限內）
+     * POST /waitlist/admission/confirm?applicationId=&nationalId=
+     */
+    @PostMapping("/admission/confirm")
+    public ResponseEntity<Map<String, Object>> confirmAdmission(
+            @RequestParam UUID applicationId,
+            @RequestParam String nationalId) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            if (!admissionHoldService.confirm(applicationId, nationalId)) {
+                response.put("success", false);
+                response.put("message", "查無待確認的錄取，或已逾確認期限");
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+            }
+            response.put("success", true);
+            response.put("message", "已確認錄取");
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("message", "確認失敗: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+
     /**
      * 審核通過後自動分配候補順序（非抽籤時期）
      * POST /waitlist/assign-order
@@ -438,6 +335,7 @@ public class WaitlistController {
                     nextOrder,
                     "錄取候補中",
                     LocalDateTime.now());
+            waitlistRankIndexService.refreshApplication(applicationId);
 
             response.put("success", true);
             response.put("message", "已分配候補順序");
@@ -463,6 +361,7 @@ public class WaitlistController {
 
         try {
             waitlistJdbcRepository.resetAllWaitlistOrders(institutionId);
+            waitlistRankIndexService.invalidate(institutionId);
 
             response.put("success", true);
             response.put("message", "已重置所有候補順位");
@@ -510,125 +409,80 @@ public class WaitlistController {
     }
 
     /**
-     * 發送抽籤通知郵件給錄取者和候補者
+     * 模擬抽籤，估算每位候補者的錄取機率與期望候補序號（不寫入資料庫）
+     * GET /waitlist/simulation?institutionId=&iterations=
+     * 計算量大，僅限管理者；模擬次數上限見 LotterySimulationService.MAX_ITERATIONS
      */
-    private void sendLotteryNotificationEmails(List<Map<String, Object>> acceptedList,
-                                              List<Map<String, Object>> waitlist) {
-        DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-        int successCount = 0;
-        int failCount = 0;
-
-        System.out.println("📧 開始發送抽籤通知郵件...");
-        System.out.println("  錄取人數: " + acceptedList.size());
-        System.out.println("  候補人數: " + waitlist.size());
-
-        // 發送郵件給錄取者
-        for (Map<String, Object> applicant : acceptedList) {
-            try {
-                String email = (String) applicant.get("Email");
-                String applicantName = (String) applicant.get("ApplicantName");
-                String childName = (String) applicant.get("ChildName");
-                String institutionName = (String) applicant.get("InstitutionName");
-                Object caseNumberObj = applicant.get("CaseNumber");
-                Long caseNumber = caseNumberObj != null ? ((Number) caseNumberObj).longValue() : null;
-                String status = (String) applicant.get("Status");
-                String reason = (String) applicant.get("Reason");
-
-                // 轉換申請日期（補齊 java.sql.Date / LocalDate）
-                Object applicationDateObj = applicant.get("ApplicationDate");
-                String applicationDate = "";
-                if (applicationDateObj instanceof LocalDateTime) {
-                    applicationDate = ((LocalDateTime) applicationDateObj).format(dateFormatter);
-                } else if (applicationDateObj instanceof java.sql.Timestamp) {
-                    applicationDate = ((java.sql.Timestamp) applicationDateObj).toLocalDateTime().format(dateFormatter);
-                } else if (applicationDateObj instanceof java.sql.Date) {
-                    applicationDate = ((java.sql.Date) applicationDateObj).toLocalDate().format(dateFormatter);
-                } else if (applicationDateObj instanceof LocalDate) {
-                    applicationDate = ((LocalDate) applicationDateObj).format(dateFormatter);
-                } else if (applicationDateObj instanceof String) {
-                    applicationDate = (String) applicationDateObj;
-                }
-
-                if (email != null && !email.isEmpty()) {
-                    emailService.sendApplicationStatusChangeEmail(
-                        email,
-                        applicantName,
-                        childName,
-                        institutionName,
-                        caseNumber,
-                        applicationDate,
-                        status,
-                        null, // 錄取者不需要顯示序號
-                        reason
-                    );
-                    successCount++;
-                    System.out.println("  ✅ 已排程發送錄取通知給: " + applicantName + " (" + email + ")");
-                } else {
-                    System.out.println("  ⚠️ 無法發送郵件給: " + applicantName + " (無 Email)");
-                    failCount++;
-                }
-            } catch (Exception e) {
-                System.err.println("  ❌ 處理申請人資料時發生錯誤: " + e.getMessage());
-                failCount++;
-            }
+    @GetMapping("/simulation")
+    @PreAuthorize("hasAnyRole('SUPER_ADMIN', 'ADMIN')")
+    public ResponseEntity<Object> simulateLottery(
+            @RequestParam UUID institutionId,
+            @RequestParam(defaultValue = "" + LotterySimulationService.DEFAULT_ITERATIONS) int iterations) {
+        try {
+            AdmissionSimulationResult result = lotterySimulationService.simulate(institutionId, iterations);
+            return ResponseEntity.ok(result);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("success", false, "message", e.getMessage()));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("success", false, "message", "模擬失敗: " + e.getMessage()));
         }
+    }
 
-        // 發送郵件給候補者
-        for (Map<String, Object> applicant : waitlist) {
-            try {
-                String email = (String) applicant.get("Email");
-                String applicantName = (String) applicant.get("ApplicantName");
-                String childName = (String) applicant.get("ChildName");
-                String institutionName = (String) applicant.get("InstitutionName");
-                Object caseNumberObj = applicant.get("CaseNumber");
-                Long caseNumber = caseNumberObj != null ? ((Number) caseNumberObj).longValue() : null;
-                String status = (String) applicant.get("Status");
-                Integer currentOrder = (Integer) applicant.get("CurrentOrder");
-
-                // 轉換申請日期（補齊 java.sql.Date / LocalDate）
-                Object applicationDateObj = applicant.get("ApplicationDate");
-                String applicationDate = "";
-                if (applicationDateObj instanceof LocalDateTime) {
-                    applicationDate = ((LocalDateTime) applicationDateObj).format(dateFormatter);
-                } else if (applicationDateObj instanceof java.sql.Timestamp) {
-                    applicationDate = ((java.sql.Timestamp) applicationDateObj).toLocalDateTime().format(dateFormatter);
-                } else if (applicationDateObj instanceof java.sql.Date) {
-                    applicationDate = ((java.sql.Date) applicationDateObj).toLocalDate().format(dateFormatter);
-                } else if (applicationDateObj instanceof LocalDate) {
-                    applicationDate = ((LocalDate) applicationDateObj).format(dateFormatter);
-                } else if (applicationDateObj instanceof String) {
-                    applicationDate = (String) applicationDateObj;
-                }
-
-                if (email != null && !email.isEmpty()) {
-                    emailService.sendApplicationStatusChangeEmail(
-                        email,
-                        applicantName,
-                        childName,
-                        institutionName,
-                        caseNumber,
-                        applicationDate,
-                        status,
-                        currentOrder, // 候補者需要顯示目前序號
-                        "抽籤結果：候補名單"
-                    );
-                    successCount++;
-                    System.out.println("  ✅ 已發送候補通知給: " + applicantName + " (序號: " + currentOrder + ", " + email + ")");
-                } else {
-                    System.out.println("  ⚠️ 無法發送郵件給: " + applicantName + " (無 Email)");
-                    failCount++;
-                }
-            } catch (MessagingException e) {
-                System.err.println("  ❌ 發送郵件失敗: " + e.getMessage());
-                failCount++;
-            } catch (Exception e) {
-                System.err.println("  ❌ 處理申請人資料時發生錯誤: " + e.getMessage());
-                failCount++;
+    /**
+     * 全縣市聯合分發（抽籤時期）：所有機構一起以延遲接受分發，每位幼兒最多錄取一間機構
+     * POST /waitlist/lottery/county
+     */
+    @PostMapping("/lottery/county")
+    @PreAuthorize("hasAnyRole('SUPER_ADMIN', 'ADMIN')")
+    public ResponseEntity<Map<String, Object>> conductCountyAllocation() {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            CountyAllocationService.CountyAllocationResult result = countyAllocationService.allocate();
+
+            List<Map<String, Object>> institutions = new ArrayList<>(result.results().size());
+            for (int s = 0; s < result.results().size(); s++) {
+                LotteryResult lotteryResult = result.results().get(s);
+                sendLotteryNotificationEmails(lotteryResult.getAcceptedList(), lotteryResult.getWaitlistList(),
+                        lotteryResult.getReleasedList());
+
+                Map<String, Object> summary = new LinkedHashMap<>();
+                summary.put("institutionId", result.institutionIds().get(s));
+                summary.put("firstPriorityAccepted", lotteryResult.getFirstPriorityAccepted());
+                summary.put("secondPriorityAccepted", lotteryResult.getSecondPriorityAccepted());
+                summary.put("thirdPriorityAccepted", lotteryResult.getThirdPriorityAccepted());
+                summary.put("waitlisted", lotteryResult.getWaitlisted());
+                summary.put("released", lotteryResult.getReleased());
+                institutions.add(summary);
             }
+
+            response.put("success", true);
+            response.put("message", "聯合分發完成");
+            response.put("institutionCount", result.institutions());
+            response.put("applications", result.applications());
+            response.put("children", result.children());
+            response.put("admittedChildren", result.admittedChildren());
+            response.put("released", result.released());
+            response.put("allocationMillis", result.allocationMillis());
+            response.put("institutions", institutions);
+            return ResponseEntity.ok(response);
+        } catch (IllegalStateException e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(response);
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("message", "聯合分發失敗: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
         }
+    }
 
-        System.out.println("📧 郵件發送完成！");
-        System.out.println("  成功: " + successCount + " 封");
-        System.out.println("  失敗: " + failCount + " 封");
+    /**
+     * 發送抽籤通知郵件給錄取者、候補者與撤銷者
+     */
+    private void sendLotteryNotificationEmails(List<Map<String, Object>> acceptedList,
+                                              List<Map<String, Object>> waitlist,
+                                              List<Map<String, Object>> releasedList) {
+        lotteryNotificationService.sendLotteryNotificationEmails(acceptedList, waitlist, releasedList);
     }
 }
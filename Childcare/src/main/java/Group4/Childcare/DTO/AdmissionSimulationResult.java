@@ -0,0 +1,38 @@
+package Group4.Childcare.DTO;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * 錄取機率模擬結果
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AdmissionSimulationResult {
+    private UUID institutionId;
+    // 模擬次數
+    private int iterations;
+    // 模擬耗時（毫秒）
+    private long elapsedMillis;
+    private List<ApplicantOdds> applicants = new ArrayList<>();
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ApplicantOdds {
+        private UUID applicationId;
+        private String name;
+        // 序位（1: 第一序位, 2: 第二序位, 3: 第三序位）
+        private int priority;
+        // 錄取機率（0 ~ 1）
+        private double admissionProbability;
+        // 未錄取時的期望候補序號；每次模擬都錄取時為 null
+        private Double expectedWaitlistRank;
+    }
+}
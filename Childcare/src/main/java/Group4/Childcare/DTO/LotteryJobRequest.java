@@ -0,0 +1,12 @@
+package Group4.Childcare.DTO;
+
+import lombok.Data;
+
+import java.util.List;
+import java.util.UUID;
+
+@Data
+public class LotteryJobRequest {
+    // 要抽籤的機構；為空時對所有啟用中機構抽籤
+    private List<UUID> institutionIds;
+}
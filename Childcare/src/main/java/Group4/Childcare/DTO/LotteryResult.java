@@ -19,7 +19,9 @@ public class LotteryResult {
     private int secondPriorityAccepted;
     private int thirdPriorityAccepted;
     private int waitlisted;
+    private int released;
     private List<Map<String, Object>> acceptedList;
     private List<Map<String, Object>> waitlistList;
+    private List<Map<String, Object>> releasedList = new ArrayList<>();
     private List<LotteryEmailContext> acceptedEmailContexts = new ArrayList<>();
 }
@@ -7,6 +7,7 @@ import java.util.UUID;
 public class ManualAdmissionRequest {
     private UUID applicationId;
     private String nationalId;
+    // 可不指定，由候補順序最佳匹配建議班級
     private UUID classId;
 }
 
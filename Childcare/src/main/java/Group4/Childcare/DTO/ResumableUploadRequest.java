@@ -0,0 +1,15 @@
+package Group4.Childcare.DTO;
+
+import lombok.Data;
+
+@Data
+public class ResumableUploadRequest {
+    // 完成後寫入的附件欄位：0 ~ 3 對應 attachmentPath ~ attachmentPath3
+    private Integer slot;
+    private String fileName;
+    private String contentType;
+    // 檔案總大小（bytes）
+    private Long size;
+    // 可選：檔案的 SHA-256（十六進位），完成時比對
+    private String sha256;
+}
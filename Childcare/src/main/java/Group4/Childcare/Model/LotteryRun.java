@@ -0,0 +1,45 @@
+package Group4.Childcare.Model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * 批次抽籤執行紀錄
+ */
+@Entity
+@Table(name = "lottery_runs")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LotteryRun {
+
+    @Id
+    @Column(name = "RunID", columnDefinition = "UNIQUEIDENTIFIER")
+    private UUID runID;
+
+    // 執行中 / 已完成 / 部分失敗
+    @Column(name = "Status", length = 20)
+    private String status;
+
+    @Column(name = "TotalCount")
+    private Integer totalCount;
+
+    @Column(name = "CompletedCount")
+    private Integer completedCount;
+
+    @Column(name = "FailedCount")
+    private Integer failedCount;
+
+    @Column(name = "SkippedCount")
+    private Integer skippedCount;
+
+    @Column(name = "CreatedAt")
+    private LocalDateTime createdAt;
+
+    @Column(name = "FinishedAt")
+    private LocalDateTime finishedAt;
+}
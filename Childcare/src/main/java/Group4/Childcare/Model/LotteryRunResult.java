@@ -0,0 +1,57 @@
+package Group4.Childcare.Model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * 批次抽籤中單一機構的執行結果
+ */
+@Entity
+@Table(name = "lottery_run_results")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LotteryRunResult {
+
+    @Id
+    @Column(name = "ResultID", columnDefinition = "UNIQUEIDENTIFIER")
+    private UUID resultID;
+
+    @Column(name = "RunID", columnDefinition = "UNIQUEIDENTIFIER")
+    private UUID runID;
+
+    @Column(name = "InstitutionID", columnDefinition = "UNIQUEIDENTIFIER")
+    private UUID institutionID;
+
+    // 成功 / 失敗 / 略過
+    @Column(name = "Status", length = 20)
+    private String status;
+
+    @Column(name = "Message", length = 1000)
+    private String message;
+
+    @Column(name = "TotalProcessed")
+    private Integer totalProcessed;
+
+    @Column(name = "FirstPriorityAccepted")
+    private Integer firstPriorityAccepted;
+
+    @Column(name = "SecondPriorityAccepted")
+    private Integer secondPriorityAccepted;
+
+    @Column(name = "ThirdPriorityAccepted")
+    private Integer thirdPriorityAccepted;
+
+    @Column(name = "Waitlisted")
+    private Integer waitlisted;
+
+    @Column(name = "StartedAt")
+    private LocalDateTime startedAt;
+
+    @Column(name = "FinishedAt")
+    private LocalDateTime finishedAt;
+}
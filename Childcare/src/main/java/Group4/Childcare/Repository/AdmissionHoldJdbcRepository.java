@@ -0,0 +1,209 @@
+package Group4.Childcare.Repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * 錄取保留（待家長確認）
+ *
+ * 幼兒錄取時寫入一筆保留，家長在期限內確認即刪除；逾期未確認者由 AdmissionHoldService 批次撤銷錄取並釋出班級名額。
+ * 只依主鍵與到期時間存取，不掃描 application_participants。
+ *
+ * 資料表：
+ * <pre>
+ * CREATE TABLE admission_holds (
+ *   ApplicationID UNIQUEIDENTIFIER NOT NULL,
+ *   NationalID NVARCHAR(20) NOT NULL,
+ *   ClassID UNIQUEIDENTIFIER NOT NULL,
+ *   ExpiresAt DATETIME2 NOT NULL,
+ *   CreatedAt DATETIME2 NOT NULL DEFAULT SYSDATETIME(),
+ *   CONSTRAINT PK_admission_holds PRIMARY KEY (ApplicationID, NationalID)
+ * );
+ * </pre>
+ */
+@Repository
+public class AdmissionHoldJdbcRepository {
+
+    public static final String STATUS_EXPIRED = "已撤銷";
+    public static final String REASON_EXPIRED = "逾期未確認錄取";
+
+    // 單一語句的參數上限為 2100，每筆保留最多使用 3 個參數
+    public static final int MAX_BATCH_SIZE = 600;
+
+    private static final int STREAM_FETCH_SIZE = 1000;
+
+    private static final String UPSERT_SQL =
+            "MERGE admission_holds AS t " +
+            "USING (SELECT ? AS ApplicationID, ? AS NationalID, ? AS ClassID, ? AS ExpiresAt) AS s " +
+            "ON t.ApplicationID = s.ApplicationID AND t.NationalID = s.NationalID " +
+            "WHEN MATCHED THEN UPDATE SET t.ClassID = s.ClassID, t.ExpiresAt = s.ExpiresAt, t.CreatedAt = SYSDATETIME() " +
+            "WHEN NOT MATCHED THEN INSERT (ApplicationID, NationalID, ClassID, ExpiresAt, CreatedAt) " +
+            "VALUES (s.ApplicationID, s.NationalID, s.ClassID, s.ExpiresAt, SYSDATETIME());";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public AdmissionHoldJdbcRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * 保留的主鍵（同一申請案中的一位幼兒）
+     */
+    public record HoldKey(UUID applicationId, String nationalId) {
+    }
+
+    /**
+     * 一筆錄取保留
+     */
+    public record Hold(UUID applicationId, String nationalId, UUID classId, LocalDateTime expiresAt) {
+        public HoldKey key() {
+            return new HoldKey(applicationId, nationalId);
+        }
+    }
+
+    /**
+     * 批次新增或更新保留（重新錄取時以新的班級與期限覆蓋）
+     */
+    public void upsertHolds(List<Hold> holds) {
+        if (holds.isEmpty()) {
+            return;
+        }
+        List<Object[]> batchArgs = new ArrayList<>(holds.size());
+        for (Hold hold : holds) {
+            batchArgs.add(new Object[]{hold.applicationId().toString(), hold.nationalId(),
+                    hold.classId().toString(), Timestamp.valueOf(hold.expiresAt())});
+        }
+        jdbcTemplate.batchUpdate(UPSERT_SQL, batchArgs);
+    }
+
+    /**
+     * 家長確認錄取：刪除尚未到期的保留
+     * @return true 如果確認成功（保留存在且未逾期）
+     */
+    public boolean confirmHold(UUID applicationId, String nationalId, LocalDateTime now) {
+        String sql = "DELETE FROM admission_holds WHERE ApplicationID = ? AND NationalID = ? AND ExpiresAt > ?";
+        return jdbcTemplate.update(sql, applicationId.toString(), nationalId, Timestamp.valueOf(now)) > 0;
+    }
+
+    /**
+     * 逐筆讀取所有保留（啟動時重建時間輪用）
+     * @return 讀取筆數
+     */
+    public int forEachHold(Consumer<Hold> consumer) {
+        String sql = "SELECT ApplicationID, NationalID, ClassID, ExpiresAt FROM admission_holds";
+        int[] count = {0};
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql);
+            ps.setFetchSize(STREAM_FETCH_SIZE);
+            return ps;
+        }, (RowCallbackHandler) rs -> {
+            consumer.accept(new Hold(
+                    UUID.fromString(rs.getString("ApplicationID")),
+                    rs.getString("NationalID"),
+                    UUID.fromString(rs.getString("ClassID")),
+                    rs.getTimestamp("ExpiresAt").toLocalDateTime()));
+            count[0]++;
+        });
+        return count[0];
+    }
+
+    /**
+     * 批次處理到期保留（同一交易）：
+     * 1. 刪除仍存在且已到期的保留（已確認或已延長者不受影響）
+     * 2. 仍為已錄取且班級相同的幼兒改為已撤銷（期間已被撤銷或改班者只刪除保留）
+     * 3. 依班級以 ClassSeatLedger.release 扣回 CurrentStudents（每個班級一個語句）
+     * @param keys 最多 MAX_BATCH_SIZE 筆
+     * @return 實際撤銷錄取的保留
+     */
+    @Transactional
+    public List<Hold> expireHolds(List<HoldKey> keys, LocalDateTime now) {
+        if (keys.isEmpty()) {
+            return new ArrayList<>();
+        }
+        if (keys.size() > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("單批最多 " + MAX_BATCH_SIZE + " 筆");
+        }
+        Timestamp nowTs = Timestamp.valueOf(now);
+
+        StringBuilder deleteSql = new StringBuilder(
+                "DELETE h OUTPUT deleted.ApplicationID, deleted.NationalID, deleted.ClassID, deleted.ExpiresAt " +
+                "FROM admission_holds h INNER JOIN (VALUES ");
+        List<Object> deleteParams = new ArrayList<>(keys.size() * 2 + 1);
+        for (int i = 0; i < keys.size(); i++) {
+            deleteSql.append(i == 0 ? "(?, ?)" : ", (?, ?)");
+            deleteParams.add(keys.get(i).applicationId().toString());
+            deleteParams.add(keys.get(i).nationalId());
+        }
+        deleteSql.append(") AS v (ApplicationID, NationalID) " +
+                "ON h.ApplicationID = v.ApplicationID AND h.NationalID = v.NationalID " +
+                "WHERE h.ExpiresAt <= ?");
+        deleteParams.add(nowTs);
+        List<Map<String, Object>> deleted = jdbcTemplate.queryForList(deleteSql.toString(), deleteParams.toArray());
+        if (deleted.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        StringBuilder revertSql = new StringBuilder(
+                "UPDATE ap SET ap.Status = ?, ap.Reason = ?, ap.ClassID = NULL, ap.ReviewDate = ? " +
+                "OUTPUT inserted.ApplicationID, inserted.NationalID, deleted.ClassID " +
+                "FROM application_participants ap INNER JOIN (VALUES ");
+        List<Object> revertParams = new ArrayList<>(deleted.size() * 3 + 3);
+        revertParams.add(STATUS_EXPIRED);
+        revertParams.add(REASON_EXPIRED);
+        revertParams.add(nowTs);
+        Map<String, LocalDateTime> expiresAtByKey = new LinkedHashMap<>();
+        for (int i = 0; i < deleted.size(); i++) {
+            Map<String, Object> row = deleted.get(i);
+            revertSql.append(i == 0 ? "(?, ?, ?)" : ", (?, ?, ?)");
+            revertParams.add(row.get("ApplicationID").toString());
+            revertParams.add(row.get("NationalID"));
+            revertParams.add(row.get("ClassID").toString());
+            expiresAtByKey.put(keyOf(row), toLocalDateTime(row.get("ExpiresAt")));
+        }
+        revertSql.append(") AS v (ApplicationID, NationalID, ClassID) " +
+                "ON ap.ApplicationID = v.ApplicationID AND ap.NationalID = v.NationalID AND ap.ClassID = v.ClassID " +
+                "WHERE ap.Status = '已錄取'");
+        List<Map<String, Object>> reverted = jdbcTemplate.queryForList(revertSql.toString(), revertParams.toArray());
+
+        List<Hold> expired = new ArrayList<>(reverted.size());
+        Map<UUID, Integer> releasedByClass = new LinkedHashMap<>();
+        for (Map<String, Object> row : reverted) {
+            UUID classId = UUID.fromString(row.get("ClassID").toString());
+            releasedByClass.merge(classId, 1, Integer::sum);
+            expired.add(new Hold(UUID.fromString(row.get("ApplicationID").toString()), (String) row.get("NationalID"),
+                    classId, expiresAtByKey.get(keyOf(row))));
+        }
+        for (Map.Entry<UUID, Integer> entry : releasedByClass.entrySet()) {
+            ClassSeatLedger.release(jdbcTemplate, entry.getKey(), entry.getValue());
+        }
+        return expired;
+    }
+
+    private static String keyOf(Map<String, Object> row) {
+        return row.get("ApplicationID").toString().toUpperCase() + "|" + row.get("NationalID");
+    }
+
+    private static LocalDateTime toLocalDateTime(Object value) {
+        if (value instanceof Timestamp) {
+            return ((Timestamp) value).toLocalDateTime();
+        }
+        if (value instanceof LocalDateTime) {
+            return (LocalDateTime) value;
+        }
+        return null;
+    }
+}
@@ -10,6 +10,7 @@ import java.sql.Date;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -22,6 +23,10 @@ public class ApplicationParticipantsJdbcRepository {
 
     private static final String TABLE_NAME = "application_participants";
 
+    private static final String INSERT_SQL = "INSERT INTO " + TABLE_NAME +
+            " (ParticipantID, ApplicationID, ParticipantType, NationalID, Name, Gender, RelationShip, Occupation, PhoneNumber, HouseholdAddress, MailingAddress, Email, BirthDate, IsSuspended, SuspendEnd, CurrentOrder, Status, Reason, ClassID, ReviewDate) " +
+            " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
     private static final RowMapper<ApplicationParticipants> ROW_MAPPER = (rs, rowNum) -> {
         ApplicationParticipants ap = new ApplicationParticipants();
         String applicationIdStr = rs.getString("ApplicationID");
@@ -79,15 +84,54 @@ public class ApplicationParticipantsJdbcRepository {
         }
     }
 
+    /**
+     * 批次新增同一案件的所有申請人（家長與幼兒），以單一 batchUpdate 送出
+     * 未指定 ParticipantID 者自動產生
+     * @return 新增的筆數
+     */
+    public int batchInsert(List<ApplicationParticipants> participants) {
+        if (participants == null || participants.isEmpty()) {
+            return 0;
+        }
+        List<Object[]> batchArgs = new ArrayList<>(participants.size());
+        for (ApplicationParticipants ap : participants) {
+            if (ap.getParticipantID() == null) {
+                ap.setParticipantID(UUID.randomUUID());
+            }
+            batchArgs.add(new Object[]{
+                    ap.getParticipantID().toString(),
+                    ap.getApplicationID() != null ? ap.getApplicationID().toString() : null,
+                    ap.getParticipantType(),
+                    ap.getNationalID(),
+                    ap.getName(),
+                    ap.getGender(),
+                    ap.getRelationShip(),
+                    ap.getOccupation(),
+                    ap.getPhoneNumber(),
+                    ap.getHouseholdAddress(),
+                    ap.getMailingAddress(),
+                    ap.getEmail(),
+                    ap.getBirthDate(),
+                    ap.getIsSuspended(),
+                    ap.getSuspendEnd(),
+                    ap.getCurrentOrder(),
+                    ap.getStatus(),
+                    ap.getReason(),
+                    ap.getClassID() != null ? ap.getClassID().toString() : null,
+                    ap.getReviewDate()
+            });
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, batchArgs);
+        return batchArgs.size();
+    }
+
     private ApplicationParticipants insert(ApplicationParticipants ap) {
         // Ensure ParticipantID is set
         if (ap.getParticipantID() == null) {
             ap.setParticipantID(UUID.randomUUID());
         }
 
-        String sql = "INSERT INTO " + TABLE_NAME +
-                " (ParticipantID, ApplicationID, ParticipantType, NationalID, Name, Gender, RelationShip, Occupation, PhoneNumber, HouseholdAddress, MailingAddress, Email, BirthDate, IsSuspended, SuspendEnd, CurrentOrder, Status, Reason, ClassID, ReviewDate) " +
-                " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        String sql = INSERT_SQL;
 
         System.out.println("🔵 ApplicationParticipantsJdbcRepository.insert() - Executing SQL:");
         System.out.println("  ParticipantID: " + ap.getParticipantID());
@@ -26,6 +26,10 @@ public class ApplicationsJdbcRepository {
 
     private static final String TABLE_NAME = "applications";
 
+    private static final String INSERT_SQL = "INSERT INTO " + TABLE_NAME +
+            " (ApplicationID, ApplicationDate, CaseNumber, InstitutionID, UserID, IdentityType, AttachmentPath, AttachmentPath1, AttachmentPath2, AttachmentPath3) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
     private static final RowMapper<Applications> APPLICATIONS_ROW_MAPPER = (rs, rowNum) -> {
         Applications application = new Applications();
         application.setApplicationID(UUID.fromString(rs.getString("ApplicationID")));
@@ -81,10 +85,28 @@ public class ApplicationsJdbcRepository {
         }
     }
 
+    /**
+     * 送件流程使用：只執行一次 INSERT（不先檢查是否存在、也不做寫入後的驗證查詢），
+     * 由呼叫端的交易決定提交或回滾
+     */
+    public Applications insertApplication(Applications application) {
+        jdbcTemplate.update(INSERT_SQL,
+                application.getApplicationID().toString(),
+                application.getApplicationDate(),
+                application.getCaseNumber(),
+                application.getInstitutionID() != null ? application.getInstitutionID().toString() : null,
+                application.getUserID() != null ? application.getUserID().toString() : null,
+                application.getIdentityType(),
+                application.getAttachmentPath(),
+                application.getAttachmentPath1(),
+                application.getAttachmentPath2(),
+                application.getAttachmentPath3()
+        );
+        return application;
+    }
+
     private Applications insert(Applications application) {
-        String sql = "INSERT INTO " + TABLE_NAME +
-                " (ApplicationID, ApplicationDate, CaseNumber, InstitutionID, UserID, IdentityType, AttachmentPath, AttachmentPath1, AttachmentPath2, AttachmentPath3) " +
-                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        String sql = INSERT_SQL;
 
         System.out.println("🔵 ApplicationsJdbcRepository.insert() - Executing SQL:");
         System.out.println("  SQL: " + sql);
@@ -284,10 +306,11 @@ public class ApplicationsJdbcRepository {
                 "a.AttachmentPath, a.AttachmentPath1, a.AttachmentPath2, a.AttachmentPath3, " +
                 "ap.ParticipantID, ap.ParticipantType, ap.NationalID, ap.Name, ap.Gender, ap.RelationShip, ap.Occupation, " +
                 "ap.PhoneNumber, ap.HouseholdAddress, ap.MailingAddress, ap.Email, ap.BirthDate, " +
-                "ap.IsSuspended, ap.SuspendEnd, ap.CurrentOrder, ap.Status, ap.Reason, ap.ClassID, ap.ReviewDate " +
+                "ap.IsSuspended, ap.SuspendEnd, " + WaitlistRankKeys.positionColumn() + " AS CurrentOrder, ap.Status, ap.Reason, ap.ClassID, ap.ReviewDate " +
                 "FROM applications a " +
                 "LEFT JOIN institutions i ON a.InstitutionID = i.InstitutionID " +
                 "LEFT JOIN application_participants ap ON a.ApplicationID = ap.ApplicationID " +
+                WaitlistRankKeys.positionJoin() +
                 "WHERE a.ApplicationID = ? " +
                 "ORDER BY ap.CurrentOrder";
 
@@ -432,58 +455,9 @@ public class ApplicationsJdbcRepository {
                 boolean isChild = (participantType != null && participantType == false) ||
                         (p.participantType != null && ("幼兒".equals(p.participantType) || "0".equals(p.participantType)));
 
-                // 如果是幼兒且 CurrentOrder 為 null，自動設置排序號
-                if (isChild && p.currentOrder == null) {
-                    System.out.println("🔵 [updateApplicationCase] 幼兒 CurrentOrder 為 null，自動設置排序號");
-                    System.out.println("  NationalID: " + p.nationalID);
-                    System.out.println("  Name: " + p.name);
-                    System.out.println("  Status: " + p.status);
-
-                    // 獲取該申請案件的InstitutionID
-                    String getInstitutionIdSql = "SELECT InstitutionID FROM applications WHERE ApplicationID = ?";
-                    java.util.UUID institutionId = null;
-                    try {
-                        String institutionIdStr = jdbcTemplate.queryForObject(getInstitutionIdSql, String.class, id.toString());
-                        if (institutionIdStr != null) {
-                          institutionId = java.util.UUID.fromString(institutionIdStr);
-                          System.out.println("  InstitutionID: " + institutionId);
-                        }
-                    } catch (Exception ex) {
-                        System.out.println("  ❌ 無法獲取 InstitutionID: " + ex.getMessage());
-                    }
-
-                    if (institutionId != null) {
-                        // 查詢同機構的最大CurrentOrder值
-                        String getMaxOrderSql =
-                                "SELECT MAX(ap.CurrentOrder) FROM application_participants ap " +
-                                        "INNER JOIN applications a ON ap.ApplicationID = a.ApplicationID " +
-                                        "WHERE a.InstitutionID = ? " +
-                                        "AND ap.CurrentOrder IS NOT NULL " +
-                                        "AND ap.ParticipantType = 0";  // 只檢查幼兒記錄
-
-                        Integer maxOrder = null;
-                        try {
-                            maxOrder = jdbcTemplate.queryForObject(getMaxOrderSql, Integer.class, institutionId.toString());
-                            System.out.println("  查詢到的最大 CurrentOrder: " + maxOrder);
-                        } catch (Exception ex) {
-                            System.out.println("  查詢最大 CurrentOrder 失敗 (可能沒有記錄): " + ex.getMessage());
-                        }
-
-                        // 如果沒有任何CurrentOrder，則設置為1；否則設置為最大值+1
-                        if (maxOrder == null) {
-                            p.currentOrder = 1;
-                            System.out.println("  ✅ 設置 CurrentOrder = 1 (該機構第一個排序號)");
-                        } else {
-                            p.currentOrder = maxOrder + 1;
-                            System.out.println("  ✅ 設置 CurrentOrder = " + p.currentOrder + " (最大值 + 1)");
-                        }
-                    } else {
-                        System.out.println("  ⚠️ InstitutionID 為 null，無法設置 CurrentOrder");
-                    }
-                } else {
-                    if (isChild && p.currentOrder != null) {
-                        System.out.println("🔵 [updateApplicationCase] 幼兒已有 CurrentOrder: " + p.currentOrder + " (NationalID: " + p.nationalID + ")");
-                    }
+                // 幼兒候補中：畫面上的 CurrentOrder 是名次（positionColumn），須換算回排序鍵再寫回
+                if (isChild && "候補中".equals(p.status)) {
+                    p.currentOrder = resolveWaitlistRankKey(id, p);
                 }
 
                 String updateSql = "UPDATE application_participants SET ParticipantType = ?, Name = ?, Gender = ?, RelationShip = ?, Occupation = ?, PhoneNumber = ?, HouseholdAddress = ?, MailingAddress = ?, Email = ?, BirthDate = ?, IsSuspended = ?, SuspendEnd = ?, CurrentOrder = ?, Status = ?, Reason = ?, ClassID = ?, ReviewDate = ? WHERE ApplicationID = ? AND NationalID = ?";
@@ -514,6 +488,74 @@ public class ApplicationsJdbcRepository {
         }
     }
 
+    private static final String FIND_CHILD_RANK_SQL =
+            "SELECT ap.CurrentOrder AS RankKey, " + WaitlistRankKeys.positionColumn() + " AS WaitlistPosition " +
+            "FROM application_participants ap " +
+            WaitlistRankKeys.positionJoin() +
+            "WHERE ap.ApplicationID = ? AND ap.NationalID = ? AND ap.ParticipantType = 0";
+
+    /**
+     * 將案件編輯送回的候補名次換算為排序鍵
+     * - 名次未變動：沿用原排序鍵
+     * - 尚無排序鍵且未指定名次：由機構序列配置到最後
+     * - 已有排序鍵但名次被清空：清除排序鍵
+     * - 名次被修改：插入到指定名次（見 WaitlistRankKeys.keyForPosition）
+     */
+    private Integer resolveWaitlistRankKey(UUID id, ApplicationParticipantDTO p) {
+        Integer storedKey = null;
+        Integer position = null;
+        try {
+            List<java.util.Map<String, Object>> rows = jdbcTemplate.queryForList(FIND_CHILD_RANK_SQL, id.toString(), p.nationalID);
+            if (!rows.isEmpty()) {
+                storedKey = toInteger(rows.get(0).get("RankKey"));
+                position = toInteger(rows.get(0).get("WaitlistPosition"));
+            }
+        } catch (Exception ex) {
+            System.out.println("  ❌ 無法讀取目前候補名次: " + ex.getMessage());
+        }
+
+        if (storedKey != null && java.util.Objects.equals(p.currentOrder, position)) {
+            return storedKey;
+        }
+        if (storedKey != null && p.currentOrder == null) {
+            System.out.println("🔵 [updateApplicationCase] 清除候補名次 (NationalID: " + p.nationalID + ")");
+            return null;
+        }
+
+        String getInstitutionIdSql = "SELECT InstitutionID FROM applications WHERE ApplicationID = ?";
+        UUID institutionId = null;
+        try {
+            String institutionIdStr = jdbcTemplate.queryForObject(getInstitutionIdSql, String.class, id.toString());
+            if (institutionIdStr != null) {
+                institutionId = UUID.fromString(institutionIdStr);
+            }
+        } catch (Exception ex) {
+            System.out.println("  ❌ 無法獲取 InstitutionID: " + ex.getMessage());
+        }
+        if (institutionId == null) {
+            System.out.println("  ⚠️ InstitutionID 為 null，沿用原排序鍵");
+            return storedKey;
+        }
+
+        try {
+            if (p.currentOrder == null) {
+                Integer key = WaitlistRankKeys.nextRankKey(jdbcTemplate, institutionId);
+                System.out.println("🔵 [updateApplicationCase] 幼兒候補排序鍵 = " + key + " (機構序列, NationalID: " + p.nationalID + ")");
+                return key;
+            }
+            Integer key = WaitlistRankKeys.keyForPosition(jdbcTemplate, institutionId, id, p.nationalID, p.currentOrder);
+            System.out.println("🔵 [updateApplicationCase] 候補名次調整為 " + p.currentOrder + "，排序鍵 = " + key + " (NationalID: " + p.nationalID + ")");
+            return key;
+        } catch (Exception ex) {
+            System.out.println("  ❌ 配置候補排序鍵失敗: " + ex.getMessage());
+            return storedKey;
+        }
+    }
+
+    private static Integer toInteger(Object value) {
+        return value instanceof Number n ? n.intValue() : null;
+    }
+
     public void deleteById(UUID id) {
         String sql = "DELETE FROM " + TABLE_NAME + " WHERE ApplicationID = ?";
         jdbcTemplate.update(sql, id.toString());
@@ -744,7 +786,7 @@ public class ApplicationsJdbcRepository {
                 }
 
                 if (shouldAssignNewOrder) {
-                    System.out.println("  開始查詢該機構的最大 CurrentOrder...");
+                    System.out.println("  開始配置該機構的候補排序鍵...");
 
                     // 獲取該申請案件的InstitutionID
                     String getInstitutionIdSql = "SELECT InstitutionID FROM applications WHERE ApplicationID = ?";
@@ -760,29 +802,12 @@ public class ApplicationsJdbcRepository {
                     }
 
                     if (institutionId != null) {
-                        // 查詢同機構的最大CurrentOrder值
-                        String getMaxOrderSql =
-                                "SELECT MAX(ap.CurrentOrder) FROM application_participants ap " +
-                                        "INNER JOIN applications a ON ap.ApplicationID = a.ApplicationID " +
-                                        "WHERE a.InstitutionID = ? " +
-                                        "AND ap.CurrentOrder IS NOT NULL " +
-                                        "AND ap.ParticipantType = 0";
-
-                        Integer maxOrder = null;
+                        // 由機構序列原子配置排序鍵（不掃描 MAX(CurrentOrder)）
                         try {
-                            maxOrder = jdbcTemplate.queryForObject(getMaxOrderSql, Integer.class, institutionId.toString());
-                            System.out.println("  查詢到的最大 CurrentOrder: " + maxOrder);
+                            currentOrder = WaitlistRankKeys.nextRankKey(jdbcTemplate, institutionId);
+                            System.out.println("  ✅ 設置 CurrentOrder = " + currentOrder + " (機構序列)");
                         } catch (Exception ex) {
-                            System.out.println("  查詢最大 CurrentOrder 失敗 (可能沒有記錄): " + ex.getMessage());
-                        }
-
-                        // 如果沒有任何CurrentOrder，則設置為1；否則設置為最大值+1
-                        if (maxOrder == null) {
-                            currentOrder = 1;
-                            System.out.println("  ✅ 設置 CurrentOrder = 1 (該機構第一個候補序號)");
-                        } else {
-                            currentOrder = maxOrder + 1;
-                            System.out.println("  ✅ 設置 CurrentOrder = " + currentOrder + " (最大值 " + maxOrder + " + 1)");
+                            System.out.println("  ❌ 配置候補排序鍵失敗: " + ex.getMessage());
                         }
                     }
                 } else {
@@ -792,46 +817,11 @@ public class ApplicationsJdbcRepository {
                 System.out.println("  ⚠️ 非幼兒記錄，不設置 CurrentOrder");
             }
         }
-        // 情況2: 如果原本是"候補中"且有 CurrentOrder，現在改為其他狀態（如已錄取），需要遞補後面的 CurrentOrder
+        // 情況2: 如果原本是"候補中"且有 CurrentOrder，現在改為其他狀態（如已錄取），只清除自己的排序鍵
+        // 後面的候補者名次由排序鍵推導，不需要逐筆遞補
         else if (oldStatus != null && "候補中".equals(oldStatus) && oldCurrentOrder != null && isChild != null && isChild) {
-            System.out.println("  從候補中變更為其他狀態，需要遞補後面的 CurrentOrder");
-
-            // 獲取該申請案件的InstitutionID
-            String getInstitutionIdSql = "SELECT InstitutionID FROM applications WHERE ApplicationID = ?";
-            java.util.UUID institutionId = null;
-            try {
-                String institutionIdStr = jdbcTemplate.queryForObject(getInstitutionIdSql, String.class, id.toString());
-                if (institutionIdStr != null) {
-                    institutionId = java.util.UUID.fromString(institutionIdStr);
-                    System.out.println("  InstitutionID: " + institutionId);
-                }
-            } catch (Exception ex) {
-                System.out.println("  ❌ 無法獲取 InstitutionID: " + ex.getMessage());
-            }
-
-            if (institutionId != null) {
-                // 將該個案後面所有的 CurrentOrder 減 1
-                String updateFollowingOrdersSql =
-                        "UPDATE application_participants " +
-                                "SET CurrentOrder = CurrentOrder - 1 " +
-                                "WHERE ParticipantType = 0 " +
-                                "AND CurrentOrder > ? " +
-                                "AND ApplicationID IN ( " +
-                                "  SELECT ApplicationID FROM applications WHERE InstitutionID = ? " +
-                                ")";
-
-                try {
-                    int updatedCount = jdbcTemplate.update(updateFollowingOrdersSql, oldCurrentOrder, institutionId.toString());
-                    System.out.println("  ✅ 遞補完成：將 CurrentOrder > " + oldCurrentOrder + " 的 " + updatedCount + " 筆記錄減 1");
-                } catch (Exception ex) {
-                    System.out.println("  ❌ 遞補 CurrentOrder 失敗: " + ex.getMessage());
-                    ex.printStackTrace();
-                }
-            }
-
-            // 將當前個案的 CurrentOrder 設為 null（因為已不在候補狀態）
+            System.out.println("  從候補中變更為其他狀態，清除 CurrentOrder");
             currentOrder = null;
-            System.out.println("  將當前個案的 CurrentOrder 設為 null");
         }
 
         // 只更新幼兒記錄（ParticipantType = 0）
@@ -873,7 +863,7 @@ public class ApplicationsJdbcRepository {
                 .append("ap.NationalID, ")
                 .append("ap.Name, ")
                 .append("ap.BirthDate, ")
-                .append("ap.CurrentOrder, ")
+                .append(WaitlistRankKeys.positionColumn()).append(" AS CurrentOrder, ")
                 .append("ap.Status, ")
                 .append("c.ClassName, ")
                 .append("u.NationalID AS ApplicantNationalID, ")
@@ -882,6 +872,7 @@ public class ApplicationsJdbcRepository {
                 .append("FROM applications a ")
                 .append("LEFT JOIN institutions i ON a.InstitutionID = i.InstitutionID ")
                 .append("LEFT JOIN application_participants ap ON a.ApplicationID = ap.ApplicationID ")
+                .append(WaitlistRankKeys.positionJoin())
                 .append("LEFT JOIN classes c ON ap.ClassID = c.ClassID ")
                 .append("LEFT JOIN users u ON a.UserID = u.UserID ")
                 .append("WHERE ap.ParticipantType = 0 "); // 0 = 幼兒
@@ -1054,7 +1045,7 @@ public class ApplicationsJdbcRepository {
                 "a.UserID, " +
                 "i.InstitutionName, " +
                 "ap.Status, " +
-                "ap.CurrentOrder, " +
+                WaitlistRankKeys.positionColumn() + " AS CurrentOrder, " +
                 "ap.ReviewDate, " +
                 "c.ClassName, " +
                 "ap.ParticipantID, " +
@@ -1082,6 +1073,7 @@ public class ApplicationsJdbcRepository {
                 "FROM applications a " +
                 "LEFT JOIN institutions i ON a.InstitutionID = i.InstitutionID " +
                 "LEFT JOIN application_participants ap ON a.ApplicationID = ap.ApplicationID " +
+                WaitlistRankKeys.positionJoin() +
                 "LEFT JOIN classes c ON ap.ClassID = c.ClassID " +
                 "LEFT JOIN users u ON a.UserID = u.UserID " +
                 "WHERE ap.NationalID = ? ";
@@ -1187,13 +1179,14 @@ public class ApplicationsJdbcRepository {
                 "ap.Name as childname, " +
                 "ap.BirthDate, " +
                 "ap.Status, " +
-                "ap.CurrentOrder, " +
+                WaitlistRankKeys.positionColumn() + " AS CurrentOrder, " +
                 "ap.NationalID as childNationalID, " +
                 "ap.Reason, " +
                 "c.CancellationID, " +
                 "u.Name as username " +
                 "FROM applications a " +
                 "LEFT JOIN application_participants ap ON a.ApplicationID = ap.ApplicationID " +
+                WaitlistRankKeys.positionJoin() +
                 "LEFT JOIN users u ON a.UserID = u.UserID " +
                 "LEFT JOIN cancellation c ON  c.ApplicationID = a.ApplicationID " +
                 "LEFT JOIN  institutions i ON  i.InstitutionID = a.InstitutionID " +
@@ -1235,7 +1228,7 @@ public class ApplicationsJdbcRepository {
                 "a.ApplicationID, " +
                 "i.InstitutionName, " +
                 "ap.Status, " +
-                "ap.CurrentOrder, " +
+                WaitlistRankKeys.positionColumn() + " AS CurrentOrder, " +
                 "ap.ReviewDate, " +
                 "c.ClassName, " +
                 "ap.ParticipantID, " +
@@ -1261,6 +1254,7 @@ public class ApplicationsJdbcRepository {
                 "FROM applications a " +
                 "LEFT JOIN institutions i ON a.InstitutionID = i.InstitutionID " +
                 "LEFT JOIN application_participants ap ON a.ApplicationID = ap.ApplicationID " +
+                WaitlistRankKeys.positionJoin() +
                 "LEFT JOIN classes c ON ap.ClassID = c.ClassID " +
                 "LEFT JOIN users u ON a.UserID = u.UserID " +
                 "WHERE ap.ParticipantID = ? ";
@@ -1358,10 +1352,11 @@ public class ApplicationsJdbcRepository {
                 "a.AttachmentPath, a.AttachmentPath1, a.AttachmentPath2, a.AttachmentPath3, " +
                 "ap.ParticipantID, ap.ParticipantType, ap.NationalID, ap.Name, ap.Gender, ap.RelationShip, ap.Occupation, " +
                 "ap.PhoneNumber, ap.HouseholdAddress, ap.MailingAddress, ap.Email, ap.BirthDate, " +
-                "ap.IsSuspended, ap.SuspendEnd, ap.CurrentOrder, ap.Status, ap.Reason, ap.ClassID, ap.ReviewDate " +
+                "ap.IsSuspended, ap.SuspendEnd, " + WaitlistRankKeys.positionColumn() + " AS CurrentOrder, ap.Status, ap.Reason, ap.ClassID, ap.ReviewDate " +
                 "FROM applications a " +
                 "LEFT JOIN institutions i ON a.InstitutionID = i.InstitutionID " +
                 "LEFT JOIN application_participants ap ON a.ApplicationID = ap.ApplicationID " +
+                WaitlistRankKeys.positionJoin() +
                 "WHERE a.ApplicationID = (SELECT ApplicationID FROM application_participants WHERE ParticipantID = ?) " +
                 "ORDER BY ap.CurrentOrder";
 
@@ -1490,6 +1485,27 @@ public class ApplicationsJdbcRepository {
             return 0;
         }
     }
+
+    private static final String[] ATTACHMENT_COLUMNS = {"AttachmentPath", "AttachmentPath1", "AttachmentPath2", "AttachmentPath3"};
+
+    /**
+     * 更新單一附件欄位（slot 0 ~ 3 對應 AttachmentPath ~ AttachmentPath3），並取回原本的路徑
+     * @return 案件不存在時為 null；原本未設定附件時為 Optional.empty()
+     */
+    public Optional<String> replaceAttachmentPath(UUID applicationId, int slot, String path) {
+        if (slot < 0 || slot >= ATTACHMENT_COLUMNS.length) {
+            throw new IllegalArgumentException("Attachment slot must be between 0 and 3: " + slot);
+        }
+        String column = ATTACHMENT_COLUMNS[slot];
+        String sql = "UPDATE " + TABLE_NAME + " SET " + column + " = ? OUTPUT deleted." + column +
+                " WHERE ApplicationID = ?";
+        List<String> previous = jdbcTemplate.query(sql, (rs, rowNum) -> rs.getString(1), path, applicationId.toString());
+        if (previous.isEmpty()) {
+            return null;
+        }
+        return Optional.ofNullable(previous.get(0));
+    }
+
     public long countCaseNumberWithDateFormat() {
         // 查詢 CaseNumber >= 100000000000 (12位數，代表符合 YYYYMMDD+4位流水號格式)
         String sql = "SELECT COUNT(*) FROM " + TABLE_NAME + " WHERE CaseNumber >= 100000000000";
@@ -1541,5 +1557,47 @@ public class ApplicationsJdbcRepository {
             "審核中", "需要補件", "候補中", "撤銷申請審核中", "已錄取");
     return count != null ? count : 0;
   }
-}
 
+  /**
+   * 多位幼兒的申請案件數（已錄取、處理中、同機構有效），一次查詢
+   */
+  public record ChildApplicationCounts(String nationalID, int acceptedCount, int pendingCount, int sameInstitutionCount) {
+  }
+
+  /**
+   * 以單一 GROUP BY 查詢多位幼兒的申請案件數，取代每位幼兒各三次的 COUNT 查詢
+   * 身分證字號以 VALUES 資料列建構式帶入（同一送件的幼兒數很少，不需另建資料表型別）
+   * @param nationalIDs 幼兒身分證字號（不可重複）
+   * @param institutionId 本次申請的機構，用於計算同機構有效申請數
+   * @return 每位幼兒一筆（無任何案件者各數量為 0）
+   */
+  public List<ChildApplicationCounts> countChildApplications(List<String> nationalIDs, UUID institutionId) {
+    if (nationalIDs == null || nationalIDs.isEmpty()) {
+      return new ArrayList<>();
+    }
+    StringBuilder values = new StringBuilder();
+    List<Object> args = new ArrayList<>();
+    args.add(institutionId != null ? institutionId.toString() : null);
+    for (String nationalID : nationalIDs) {
+      if (values.length() > 0) values.append(", ");
+      values.append("(?)");
+      args.add(nationalID);
+    }
+    String sql = "SELECT n.NationalID, " +
+            "COUNT(DISTINCT CASE WHEN ap.Status = N'已錄取' THEN ap.ApplicationID END) AS AcceptedCount, " +
+            "COUNT(DISTINCT CASE WHEN ap.Status IN (N'審核中', N'需要補件', N'候補中', N'撤銷申請審核中') " +
+            "  THEN ap.ApplicationID END) AS PendingCount, " +
+            "COUNT(DISTINCT CASE WHEN a.InstitutionID = ? " +
+            "  AND ap.Status IN (N'審核中', N'需要補件', N'候補中', N'撤銷申請審核中', N'已錄取') " +
+            "  THEN ap.ApplicationID END) AS SameInstitutionCount " +
+            "FROM (VALUES " + values + ") AS n(NationalID) " +
+            "LEFT JOIN application_participants ap ON ap.NationalID = n.NationalID AND ap.ParticipantType = 0 " +
+            "LEFT JOIN applications a ON a.ApplicationID = ap.ApplicationID " +
+            "GROUP BY n.NationalID";
+    return jdbcTemplate.query(sql, (rs, rowNum) -> new ChildApplicationCounts(
+            rs.getString("NationalID"),
+            rs.getInt("AcceptedCount"),
+            rs.getInt("PendingCount"),
+            rs.getInt("SameInstitutionCount")), args.toArray());
+  }
+}
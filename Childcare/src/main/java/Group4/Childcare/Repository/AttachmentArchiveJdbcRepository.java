@@ -0,0 +1,175 @@
+package Group4.Childcare.Repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * 已結案案件附件的封存索引
+ *
+ * 結案已久的案件，附件由 AttachmentArchiveService 依申請月份併入封存檔（例如 .archive/2024-03.pack），
+ * attachment_archive_entries 記錄每個附件在封存檔中的位置，讀取時直接跳到該位置，不必解開整個封存檔。
+ * 內容相同的附件（以 SHA-256 識別）共用封存檔中的同一段資料。
+ * attachment_archived_cases 記錄已封存完成的案件，之後不再列入封存候選。
+ *
+ * 資料表：
+ * <pre>
+ * CREATE TABLE attachment_archive_entries (
+ *   AttachmentPath NVARCHAR(400) NOT NULL PRIMARY KEY,
+ *   ApplicationID UNIQUEIDENTIFIER NOT NULL,
+ *   ArchiveFile NVARCHAR(50) NOT NULL,
+ *   DataOffset BIGINT NOT NULL,
+ *   DataLength BIGINT NOT NULL,
+ *   LastModified DATETIME2 NOT NULL,
+ *   Sha256 CHAR(64) NOT NULL,
+ *   ArchivedAt DATETIME2 NOT NULL
+ * );
+ * CREATE INDEX IX_attachment_archive_entries_ApplicationID ON attachment_archive_entries (ApplicationID);
+ * CREATE INDEX IX_attachment_archive_entries_Sha256 ON attachment_archive_entries (Sha256);
+ *
+ * CREATE TABLE attachment_archived_cases (
+ *   ApplicationID UNIQUEIDENTIFIER NOT NULL PRIMARY KEY,
+ *   ArchivedAt DATETIME2 NOT NULL
+ * );
+ * </pre>
+ */
+@Repository
+public class AttachmentArchiveJdbcRepository {
+
+    /**
+     * 可封存的案件
+     */
+    public record ArchiveCandidate(UUID applicationId, LocalDate applicationDate) {
+    }
+
+    /**
+     * 封存檔中的一個附件
+     * @param attachmentPath {ApplicationID}/UUID_原始檔名
+     * @param archiveFile 封存檔檔名（例如 2024-03.pack）
+     * @param offset 資料在封存檔中的起始位置
+     * @param length 資料長度
+     * @param lastModified 原始檔案的修改時間（UTC，沿用為 Last-Modified / ETag）
+     */
+    public record ArchivedAttachment(String attachmentPath, String archiveFile, long offset, long length,
+                                     LocalDateTime lastModified, String sha256) {
+    }
+
+    // 每位幼兒都已退件或撤銷超過保存期限，或為往年已錄取的案件
+    private static final String FIND_CANDIDATES_SQL =
+            "SELECT TOP (?) a.ApplicationID, a.ApplicationDate FROM applications a " +
+            "WHERE a.ApplicationDate IS NOT NULL " +
+            "AND NOT EXISTS (SELECT 1 FROM attachment_archived_cases c WHERE c.ApplicationID = a.ApplicationID) " +
+            "AND EXISTS (SELECT 1 FROM application_participants ap " +
+            "  WHERE ap.ApplicationID = a.ApplicationID AND ap.ParticipantType = 0) " +
+            "AND NOT EXISTS (SELECT 1 FROM application_participants ap " +
+            "  WHERE ap.ApplicationID = a.ApplicationID AND ap.ParticipantType = 0 " +
+            "  AND (ap.Status IS NULL OR NOT (" +
+            "    (ap.Status IN (N'已退件', N'已撤銷') AND COALESCE(ap.ReviewDate, a.ApplicationDate) < ?) " +
+            "    OR (ap.Status = N'已錄取' AND a.ApplicationDate < ?)))) " +
+            "ORDER BY a.ApplicationDate";
+
+    private static final String INSERT_ENTRY_SQL =
+            "INSERT INTO attachment_archive_entries " +
+            "(AttachmentPath, ApplicationID, ArchiveFile, DataOffset, DataLength, LastModified, Sha256, ArchivedAt) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String SELECT_ENTRY_COLUMNS =
+            "SELECT AttachmentPath, ArchiveFile, DataOffset, DataLength, LastModified, Sha256 " +
+            "FROM attachment_archive_entries ";
+
+    private static final String FIND_BY_PATH_SQL = SELECT_ENTRY_COLUMNS + "WHERE AttachmentPath = ?";
+
+    private static final String FIND_BY_APPLICATION_SQL =
+            SELECT_ENTRY_COLUMNS + "WHERE ApplicationID = ? ORDER BY AttachmentPath";
+
+    private static final String FIND_BY_SHA256_SQL =
+            "SELECT TOP 1 AttachmentPath, ArchiveFile, DataOffset, DataLength, LastModified, Sha256 " +
+            "FROM attachment_archive_entries WHERE Sha256 = ? AND DataLength = ?";
+
+    private static final String DELETE_ENTRY_SQL =
+            "DELETE FROM attachment_archive_entries WHERE AttachmentPath = ?";
+
+    private static final String MARK_CASE_SQL =
+            "MERGE attachment_archived_cases WITH (HOLDLOCK) AS t " +
+            "USING (SELECT ? AS ApplicationID) AS s ON t.ApplicationID = s.ApplicationID " +
+            "WHEN NOT MATCHED THEN INSERT (ApplicationID, ArchivedAt) VALUES (s.ApplicationID, ?);";
+
+    private static final RowMapper<ArchivedAttachment> ENTRY_ROW_MAPPER = (rs, rowNum) -> new ArchivedAttachment(
+            rs.getString("AttachmentPath"),
+            rs.getString("ArchiveFile"),
+            rs.getLong("DataOffset"),
+            rs.getLong("DataLength"),
+            rs.getTimestamp("LastModified").toLocalDateTime(),
+            rs.getString("Sha256"));
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public AttachmentArchiveJdbcRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * 可封存的案件（依申請日期由舊到新）
+     * @param closedBefore 退件、撤銷的審核時間早於此時間
+     * @param admittedBefore 已錄取案件的申請日期早於此日期
+     */
+    public List<ArchiveCandidate> findCandidates(LocalDateTime closedBefore, LocalDate admittedBefore, int limit) {
+        return jdbcTemplate.query(FIND_CANDIDATES_SQL,
+                (rs, rowNum) -> new ArchiveCandidate(
+                        UUID.fromString(rs.getString("ApplicationID")),
+                        rs.getDate("ApplicationDate").toLocalDate()),
+                limit, Timestamp.valueOf(closedBefore), Date.valueOf(admittedBefore));
+    }
+
+    public Optional<ArchivedAttachment> find(String attachmentPath) {
+        return jdbcTemplate.query(FIND_BY_PATH_SQL, ENTRY_ROW_MAPPER, attachmentPath).stream().findFirst();
+    }
+
+    public List<ArchivedAttachment> findByApplicationId(UUID applicationId) {
+        return jdbcTemplate.query(FIND_BY_APPLICATION_SQL, ENTRY_ROW_MAPPER, applicationId.toString());
+    }
+
+    /**
+     * 封存檔中內容相同的既有資料
+     */
+    public Optional<ArchivedAttachment> findBySha256(String sha256, long length) {
+        return jdbcTemplate.query(FIND_BY_SHA256_SQL, ENTRY_ROW_MAPPER, sha256, length).stream().findFirst();
+    }
+
+    public void insertAll(UUID applicationId, List<ArchivedAttachment> entries, LocalDateTime now) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        Timestamp archivedAt = Timestamp.valueOf(now);
+        List<Object[]> rows = new ArrayList<>(entries.size());
+        for (ArchivedAttachment entry : entries) {
+            rows.add(new Object[]{entry.attachmentPath(), applicationId.toString(), entry.archiveFile(),
+                    entry.offset(), entry.length(), Timestamp.valueOf(entry.lastModified()), entry.sha256(),
+                    archivedAt});
+        }
+        jdbcTemplate.batchUpdate(INSERT_ENTRY_SQL, rows);
+    }
+
+    /**
+     * 移除附件的封存記錄（封存檔中的資料不回收）
+     * @return true 如果有記錄被移除
+     */
+    public boolean delete(String attachmentPath) {
+        return jdbcTemplate.update(DELETE_ENTRY_SQL, attachmentPath) > 0;
+    }
+
+    public void markCaseArchived(UUID applicationId, LocalDateTime now) {
+        jdbcTemplate.update(MARK_CASE_SQL, applicationId.toString(), Timestamp.valueOf(now));
+    }
+}
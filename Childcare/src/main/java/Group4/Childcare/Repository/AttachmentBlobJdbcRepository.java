@@ -0,0 +1,149 @@
+package Group4.Childcare.Repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * 附件內容定址儲存（content-addressed store）的參照計數
+ *
+ * attachment_blobs 每個不同內容（以 SHA-256 識別）一筆，RefCount 為目前參照它的附件數；
+ * attachment_blob_refs 每個附件路徑（{ApplicationID}/UUID_原始檔名）一筆，記錄它對應的內容。
+ * RefCount 歸零超過寬限期的內容由 AttachmentBlobStore 定期回收。
+ *
+ * 資料表：
+ * <pre>
+ * CREATE TABLE attachment_blobs (
+ *   Sha256 CHAR(64) NOT NULL PRIMARY KEY,
+ *   SizeBytes BIGINT NOT NULL,
+ *   RefCount INT NOT NULL,
+ *   CreatedAt DATETIME2 NOT NULL DEFAULT SYSDATETIME(),
+ *   UpdatedAt DATETIME2 NOT NULL
+ * );
+ * CREATE INDEX IX_attachment_blobs_RefCount ON attachment_blobs (RefCount, UpdatedAt);
+ *
+ * CREATE TABLE attachment_blob_refs (
+ *   AttachmentPath NVARCHAR(400) NOT NULL PRIMARY KEY,
+ *   Sha256 CHAR(64) NOT NULL,
+ *   CreatedAt DATETIME2 NOT NULL DEFAULT SYSDATETIME()
+ * );
+ * CREATE INDEX IX_attachment_blob_refs_Sha256 ON attachment_blob_refs (Sha256);
+ * </pre>
+ */
+@Repository
+public class AttachmentBlobJdbcRepository {
+
+    private static final String INSERT_REF_SQL =
+            "INSERT INTO attachment_blob_refs (AttachmentPath, Sha256, CreatedAt) VALUES (?, ?, SYSDATETIME())";
+
+    private static final String INCREMENT_SQL =
+            "MERGE attachment_blobs WITH (HOLDLOCK) AS t " +
+            "USING (SELECT ? AS Sha256) AS s ON t.Sha256 = s.Sha256 " +
+            "WHEN MATCHED THEN UPDATE SET t.RefCount = t.RefCount + 1, t.UpdatedAt = ? " +
+            "WHEN NOT MATCHED THEN INSERT (Sha256, SizeBytes, RefCount, CreatedAt, UpdatedAt) " +
+            "VALUES (s.Sha256, ?, 1, SYSDATETIME(), ?);";
+
+    private static final String DELETE_REF_SQL =
+            "DELETE FROM attachment_blob_refs OUTPUT deleted.Sha256 WHERE AttachmentPath = ?";
+
+    private static final String DELETE_REFS_UNDER_SQL =
+            "DELETE FROM attachment_blob_refs OUTPUT deleted.Sha256 WHERE AttachmentPath LIKE ?";
+
+    private static final String DECREMENT_SQL =
+            "UPDATE attachment_blobs SET RefCount = CASE WHEN RefCount > ? THEN RefCount - ? ELSE 0 END, " +
+            "UpdatedAt = ? WHERE Sha256 = ?";
+
+    private static final String FIND_UNREFERENCED_SQL =
+            "SELECT TOP (?) Sha256 FROM attachment_blobs WHERE RefCount = 0 AND UpdatedAt < ? ORDER BY UpdatedAt";
+
+    private static final String DELETE_UNREFERENCED_SQL =
+            "DELETE FROM attachment_blobs WHERE Sha256 = ? AND RefCount = 0";
+
+    private static final String FIND_KNOWN_SQL =
+            "SELECT Sha256 FROM attachment_blobs WHERE Sha256 IN (%s)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public AttachmentBlobJdbcRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * 記錄附件參照內容 sha256（內容不存在時新增，RefCount 為 1）
+     * @param attachmentPath 附件路徑，例如 {applicationId}/UUID_原始檔名
+     */
+    public void addReference(String attachmentPath, String sha256, long sizeBytes, LocalDateTime now) {
+        Timestamp timestamp = Timestamp.valueOf(now);
+        jdbcTemplate.update(INSERT_REF_SQL, attachmentPath, sha256);
+        jdbcTemplate.update(INCREMENT_SQL, sha256, timestamp, sizeBytes, timestamp);
+    }
+
+    /**
+     * 移除附件的參照並遞減對應內容的 RefCount
+     * @return 原本參照的內容；附件沒有參照（例如舊資料）時為空
+     */
+    public Optional<String> removeReference(String attachmentPath, LocalDateTime now) {
+        List<String> removed = jdbcTemplate.query(DELETE_REF_SQL, (rs, rowNum) -> rs.getString(1), attachmentPath);
+        decrement(removed, now);
+        return removed.isEmpty() ? Optional.empty() : Optional.of(removed.get(0));
+    }
+
+    /**
+     * 移除路徑前綴下（例如整個案件資料夾 {applicationId}/）所有附件的參照
+     * @return 移除的參照數
+     */
+    public int removeReferencesUnder(String pathPrefix, LocalDateTime now) {
+        String pattern = pathPrefix.replace("[", "[[]").replace("%", "[%]").replace("_", "[_]") + "%";
+        List<String> removed = jdbcTemplate.query(DELETE_REFS_UNDER_SQL, (rs, rowNum) -> rs.getString(1), pattern);
+        decrement(removed, now);
+        return removed.size();
+    }
+
+    private void decrement(List<String> removedSha256, LocalDateTime now) {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (String sha256 : removedSha256) {
+            counts.merge(sha256, 1, Integer::sum);
+        }
+        Timestamp timestamp = Timestamp.valueOf(now);
+        counts.forEach((sha256, count) -> jdbcTemplate.update(DECREMENT_SQL, count, count, timestamp, sha256));
+    }
+
+    /**
+     * 取得一批 RefCount 為 0 且在 before 之前就已無參照的內容
+     */
+    public List<String> findUnreferenced(LocalDateTime before, int batchSize) {
+        return jdbcTemplate.query(FIND_UNREFERENCED_SQL, (rs, rowNum) -> rs.getString("Sha256"),
+                batchSize, Timestamp.valueOf(before));
+    }
+
+    /**
+     * 刪除內容記錄（僅在 RefCount 仍為 0 時）
+     * @return true 如果已刪除
+     */
+    public boolean deleteIfUnreferenced(String sha256) {
+        return jdbcTemplate.update(DELETE_UNREFERENCED_SQL, sha256) > 0;
+    }
+
+    /**
+     * 從 sha256 清單中找出資料表已記錄的內容
+     */
+    public List<String> findKnown(Collection<String> sha256) {
+        if (sha256.isEmpty()) {
+            return Collections.emptyList();
+        }
+        String placeholders = String.join(", ", Collections.nCopies(sha256.size(), "?"));
+        return jdbcTemplate.query(String.format(FIND_KNOWN_SQL, placeholders),
+                (rs, rowNum) -> rs.getString("Sha256"), new ArrayList<>(sha256).toArray());
+    }
+}
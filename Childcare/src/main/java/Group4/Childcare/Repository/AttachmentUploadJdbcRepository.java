@@ -0,0 +1,186 @@
+package Group4.Childcare.Repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * 續傳上傳（resumable upload）的進度
+ *
+ * 每個上傳中的附件一筆：ReceivedRanges 記錄已寫入暫存檔的位元組區段（"起-迄" 以逗號分隔，迄為不含），
+ * 用戶端斷線後查詢即可只補傳缺少的區段。完成後移入 IdentityResource/{ApplicationID}/ 並刪除此筆；
+ * 超過 ExpiresAt 仍未完成者由 ResumableUploadService 定期清除（含暫存檔）。
+ *
+ * 進行中的寫入也記錄在這一筆，讓任何節點完成上傳時都看得到其他節點正在寫入的區段：
+ * - ActiveWriters / WriterLeaseUntil：寫入區段期間的寫入者數與租約；節點中途當掉時租約過期後視為沒有寫入者
+ * - CompletingUntil：完成上傳（計算雜湊、移檔）期間的租約，期間不接受新的區段寫入
+ * - ReceivedRanges 以比對舊值的條件式 UPDATE 更新，不同節點同時記錄區段時不會互相覆蓋
+ *
+ * 資料表：
+ * <pre>
+ * CREATE TABLE attachment_uploads (
+ *   UploadID UNIQUEIDENTIFIER NOT NULL PRIMARY KEY,
+ *   ApplicationID UNIQUEIDENTIFIER NOT NULL,
+ *   Slot TINYINT NOT NULL,
+ *   FileName NVARCHAR(255) NOT NULL,
+ *   ContentType NVARCHAR(100) NOT NULL,
+ *   TotalBytes BIGINT NOT NULL,
+ *   ReceivedRanges NVARCHAR(MAX) NOT NULL DEFAULT '',
+ *   ReceivedBytes BIGINT NOT NULL DEFAULT 0,
+ *   Sha256 CHAR(64) NULL,
+ *   ActiveWriters INT NOT NULL DEFAULT 0,
+ *   WriterLeaseUntil DATETIME2 NULL,
+ *   CompletingUntil DATETIME2 NULL,
+ *   ExpiresAt DATETIME2 NOT NULL,
+ *   CreatedAt DATETIME2 NOT NULL DEFAULT SYSDATETIME()
+ * );
+ * CREATE INDEX IX_attachment_uploads_ExpiresAt ON attachment_uploads (ExpiresAt);
+ * </pre>
+ */
+@Repository
+public class AttachmentUploadJdbcRepository {
+
+    private static final String INSERT_SQL =
+            "INSERT INTO attachment_uploads (UploadID, ApplicationID, Slot, FileName, ContentType, TotalBytes, " +
+            "ReceivedRanges, ReceivedBytes, Sha256, ExpiresAt, CreatedAt) VALUES (?, ?, ?, ?, ?, ?, '', 0, ?, ?, SYSDATETIME())";
+
+    private static final String FIND_SQL =
+            "SELECT UploadID, ApplicationID, Slot, FileName, ContentType, TotalBytes, ReceivedRanges, ReceivedBytes, " +
+            "Sha256, ExpiresAt FROM attachment_uploads WHERE UploadID = ?";
+
+    private static final String UPDATE_PROGRESS_SQL =
+            "UPDATE attachment_uploads SET ReceivedRanges = ?, ReceivedBytes = ?, ExpiresAt = ? " +
+            "WHERE UploadID = ? AND ReceivedRanges = ?";
+
+    // 租約過期的寫入者數視為殘留（節點當掉），重新從 1 起算
+    private static final String BEGIN_WRITE_SQL =
+            "UPDATE attachment_uploads SET " +
+            "ActiveWriters = CASE WHEN WriterLeaseUntil IS NULL OR WriterLeaseUntil < ? THEN 1 ELSE ActiveWriters + 1 END, " +
+            "WriterLeaseUntil = ? " +
+            "WHERE UploadID = ? AND (CompletingUntil IS NULL OR CompletingUntil < ?)";
+
+    private static final String END_WRITE_SQL =
+            "UPDATE attachment_uploads SET ActiveWriters = CASE WHEN ActiveWriters > 1 THEN ActiveWriters - 1 ELSE 0 END " +
+            "WHERE UploadID = ?";
+
+    private static final String BEGIN_COMPLETE_SQL =
+            "UPDATE attachment_uploads SET CompletingUntil = ? " +
+            "WHERE UploadID = ? AND (ActiveWriters = 0 OR WriterLeaseUntil < ?) " +
+            "AND (CompletingUntil IS NULL OR CompletingUntil < ?)";
+
+    private static final String END_COMPLETE_SQL =
+            "UPDATE attachment_uploads SET CompletingUntil = NULL WHERE UploadID = ?";
+
+    private static final String DELETE_SQL =
+            "DELETE FROM attachment_uploads WHERE UploadID = ?";
+
+    private static final String FIND_EXPIRED_SQL =
+            "SELECT TOP (?) UploadID FROM attachment_uploads WHERE ExpiresAt < ? ORDER BY ExpiresAt";
+
+    private static final RowMapper<Upload> UPLOAD_ROW_MAPPER = (rs, rowNum) -> {
+        Timestamp expiresAt = rs.getTimestamp("ExpiresAt");
+        return new Upload(
+                UUID.fromString(rs.getString("UploadID")),
+                UUID.fromString(rs.getString("ApplicationID")),
+                rs.getInt("Slot"),
+                rs.getString("FileName"),
+                rs.getString("ContentType"),
+                rs.getLong("TotalBytes"),
+                rs.getString("ReceivedRanges"),
+                rs.getLong("ReceivedBytes"),
+                rs.getString("Sha256"),
+                expiresAt != null ? expiresAt.toLocalDateTime() : null);
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public AttachmentUploadJdbcRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * 上傳進度
+     * @param slot 完成後寫入的附件欄位（0 ~ 3 對應 AttachmentPath ~ AttachmentPath3）
+     * @param receivedRanges 已收到的區段，例如 "0-1048576,2097152-3145728"
+     * @param sha256 用戶端宣告的 SHA-256；未宣告時為 null
+     */
+    public record Upload(UUID uploadId, UUID applicationId, int slot, String fileName, String contentType,
+                         long totalBytes, String receivedRanges, long receivedBytes, String sha256,
+                         LocalDateTime expiresAt) {
+    }
+
+    public void insert(UUID uploadId, UUID applicationId, int slot, String fileName, String contentType,
+                       long totalBytes, String sha256, LocalDateTime expiresAt) {
+        jdbcTemplate.update(INSERT_SQL, uploadId.toString(), applicationId.toString(), slot, fileName, contentType,
+                totalBytes, sha256, Timestamp.valueOf(expiresAt));
+    }
+
+    public Optional<Upload> findById(UUID uploadId) {
+        List<Upload> rows = jdbcTemplate.query(FIND_SQL, UPLOAD_ROW_MAPPER, uploadId.toString());
+        return rows.isEmpty() ? Optional.empty() : Optional.of(rows.get(0));
+    }
+
+    /**
+     * 記錄已收到的區段並延長期限（ReceivedRanges 仍為 previousRanges 時才更新）
+     * @return false 如果上傳不存在，或區段已被其他請求更新（呼叫端重新讀取後重試）
+     */
+    public boolean updateProgress(UUID uploadId, String previousRanges, String receivedRanges, long receivedBytes,
+                                  LocalDateTime expiresAt) {
+        return jdbcTemplate.update(UPDATE_PROGRESS_SQL, receivedRanges, receivedBytes,
+                Timestamp.valueOf(expiresAt), uploadId.toString(), previousRanges) > 0;
+    }
+
+    /**
+     * 登記一個區段寫入
+     * @return false 如果上傳不存在或正在完成
+     */
+    public boolean beginWrite(UUID uploadId, LocalDateTime now, LocalDateTime leaseUntil) {
+        Timestamp nowTs = Timestamp.valueOf(now);
+        return jdbcTemplate.update(BEGIN_WRITE_SQL, nowTs, Timestamp.valueOf(leaseUntil), uploadId.toString(),
+                nowTs) > 0;
+    }
+
+    /**
+     * 解除一個區段寫入的登記
+     */
+    public void endWrite(UUID uploadId) {
+        jdbcTemplate.update(END_WRITE_SQL, uploadId.toString());
+    }
+
+    /**
+     * 取得完成上傳的租約
+     * @return false 如果上傳不存在、仍有區段寫入中或其他請求正在完成
+     */
+    public boolean beginComplete(UUID uploadId, LocalDateTime now, LocalDateTime leaseUntil) {
+        Timestamp nowTs = Timestamp.valueOf(now);
+        return jdbcTemplate.update(BEGIN_COMPLETE_SQL, Timestamp.valueOf(leaseUntil), uploadId.toString(),
+                nowTs, nowTs) > 0;
+    }
+
+    /**
+     * 完成失敗且未刪除上傳時釋放租約，之後可再寫入或重試完成
+     */
+    public void endComplete(UUID uploadId) {
+        jdbcTemplate.update(END_COMPLETE_SQL, uploadId.toString());
+    }
+
+    public void deleteById(UUID uploadId) {
+        jdbcTemplate.update(DELETE_SQL, uploadId.toString());
+    }
+
+    /**
+     * 取得一批已過期的上傳
+     */
+    public List<UUID> findExpiredIds(LocalDateTime now, int batchSize) {
+        return jdbcTemplate.query(FIND_EXPIRED_SQL, (rs, rowNum) -> UUID.fromString(rs.getString("UploadID")),
+                batchSize, Timestamp.valueOf(now));
+    }
+}
@@ -0,0 +1,86 @@
+package Group4.Childcare.Repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * 案件編號區段（hi-lo）
+ *
+ * 每天一筆，記錄當日已配置出去的最大流水號。各節點一次保留一整段流水號（LastAllocated 原子加上區段大小），
+ * 之後在記憶體中依序發號，見 CaseNumberAllocator。節點重啟時未用完的區段直接捨棄，流水號允許跳號。
+ *
+ * 資料表：
+ * <pre>
+ * CREATE TABLE case_number_blocks (
+ *   CaseDate DATE NOT NULL PRIMARY KEY,
+ *   LastAllocated INT NOT NULL,
+ *   UpdatedAt DATETIME2 NOT NULL DEFAULT SYSDATETIME()
+ * );
+ * </pre>
+ */
+@Repository
+public class CaseNumberBlockJdbcRepository {
+
+    // 案件編號格式：YYYYMMDD + 4 位流水號
+    public static final long SERIALS_PER_DAY = 10000;
+
+    private static final String RESERVE_SQL =
+            "UPDATE case_number_blocks WITH (ROWLOCK) " +
+            "SET LastAllocated = LastAllocated + ?, UpdatedAt = SYSDATETIME() " +
+            "OUTPUT inserted.LastAllocated " +
+            "WHERE CaseDate = ?";
+
+    // 當日第一次配置時，以當日已存在的最大案件編號初始化（沿用舊編號的資料不會重複）
+    private static final String INIT_SQL =
+            "INSERT INTO case_number_blocks (CaseDate, LastAllocated, UpdatedAt) " +
+            "SELECT ?, ISNULL((SELECT MAX(CaseNumber) FROM applications WHERE CaseNumber >= ? AND CaseNumber < ?) - ?, 0), " +
+            "SYSDATETIME() " +
+            "WHERE NOT EXISTS (SELECT 1 FROM case_number_blocks WITH (UPDLOCK, HOLDLOCK) WHERE CaseDate = ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public CaseNumberBlockJdbcRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * 保留當日下一段流水號（獨立交易，呼叫端回滾也不會釋出已保留的區段）
+     * @param day 案件日期
+     * @param blockSize 區段大小
+     * @return 區段的最後一個流水號；區段為 (回傳值 - blockSize, 回傳值]
+     * @throws IllegalStateException 無法配置區段時
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public long reserveBlock(LocalDate day, int blockSize) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("區段大小必須大於 0");
+        }
+        Date caseDate = Date.valueOf(day);
+        long serialBase = caseNumberBase(day);
+        List<Long> hi = jdbcTemplate.queryForList(RESERVE_SQL, Long.class, blockSize, caseDate);
+        if (hi.isEmpty()) {
+            jdbcTemplate.update(INIT_SQL, caseDate, serialBase, serialBase + SERIALS_PER_DAY, serialBase, caseDate);
+            hi = jdbcTemplate.queryForList(RESERVE_SQL, Long.class, blockSize, caseDate);
+        }
+        if (hi.isEmpty() || hi.get(0) == null) {
+            throw new IllegalStateException("無法配置案件編號區段: " + day);
+        }
+        return hi.get(0);
+    }
+
+    /**
+     * 當日案件編號的起點（YYYYMMDD * 10000），流水號加上此值即為案件編號
+     */
+    public static long caseNumberBase(LocalDate day) {
+        long datePrefix = day.getYear() * 10000L + day.getMonthValue() * 100L + day.getDayOfMonth();
+        return datePrefix * SERIALS_PER_DAY;
+    }
+}
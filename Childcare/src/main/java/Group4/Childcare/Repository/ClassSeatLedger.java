@@ -0,0 +1,113 @@
+package Group4.Childcare.Repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 班級座位帳（classes.CurrentStudents）
+ *
+ * 佔用與釋出座位都是單一條件式 UPDATE，並以 OUTPUT 直接取回更新後的人數與容量：
+ * - 佔用：目前人數加上佔用數不超過容量才更新（Capacity 為 NULL 視為沒有可用座位）
+ * - 釋出：扣除後不低於 0
+ * 不再先查詢是否有空位再另外加減（兩個敘述之間可能被其他交易搶走座位）。
+ *
+ * 人數若因人工修改或舊資料而與實際錄取人數不一致，由 reconcile 依已錄取的幼兒重新計算。
+ */
+public final class ClassSeatLedger {
+
+    private static final String RESERVE_SQL =
+            "UPDATE classes WITH (ROWLOCK) " +
+            "SET CurrentStudents = COALESCE(CurrentStudents, 0) + ? " +
+            "OUTPUT inserted.CurrentStudents, inserted.Capacity " +
+            "WHERE ClassID = ? AND Capacity IS NOT NULL AND COALESCE(CurrentStudents, 0) + ? <= Capacity";
+
+    private static final String RELEASE_SQL =
+            "UPDATE classes WITH (ROWLOCK) " +
+            "SET CurrentStudents = CASE WHEN COALESCE(CurrentStudents, 0) > ? THEN COALESCE(CurrentStudents, 0) - ? ELSE 0 END " +
+            "OUTPUT inserted.CurrentStudents, inserted.Capacity " +
+            "WHERE ClassID = ?";
+
+    private static final String FIND_SQL =
+            "SELECT CurrentStudents, Capacity FROM classes WHERE ClassID = ?";
+
+    // 依已錄取幼兒人數重算，只更新不一致的班級
+    private static final String RECONCILE_SQL =
+            "UPDATE c SET c.CurrentStudents = COALESCE(a.Admitted, 0) " +
+            "OUTPUT inserted.ClassID, deleted.CurrentStudents AS PreviousStudents, " +
+            "inserted.CurrentStudents, inserted.Capacity " +
+            "FROM classes c " +
+            "LEFT JOIN ( " +
+            "  SELECT ClassID, COUNT(*) AS Admitted FROM application_participants " +
+            "  WHERE Status = '已錄取' AND ParticipantType = 0 AND ClassID IS NOT NULL " +
+            "  GROUP BY ClassID " +
+            ") a ON a.ClassID = c.ClassID " +
+            "WHERE c.CurrentStudents IS NULL OR c.CurrentStudents <> COALESCE(a.Admitted, 0)";
+
+    /**
+     * 班級目前人數與容量（容量可為 null，與 ClassesJdbcRepository.isClassFull 相同，未設定容量不視為已滿）
+     */
+    public record SeatCounts(int currentStudents, Integer capacity) {
+
+        public boolean isFull() {
+            return capacity != null && currentStudents >= capacity;
+        }
+    }
+
+    private ClassSeatLedger() {
+    }
+
+    /**
+     * 佔用座位
+     * @return 佔用後的人數；座位不足或查無班級時回傳 null
+     */
+    public static SeatCounts reserve(JdbcTemplate jdbcTemplate, UUID classId, int seats) {
+        if (seats <= 0) {
+            throw new IllegalArgumentException("佔用座位數必須大於 0");
+        }
+        return first(jdbcTemplate.queryForList(RESERVE_SQL, seats, classId.toString(), seats));
+    }
+
+    /**
+     * 釋出座位
+     * @return 釋出後的人數；查無班級時回傳 null
+     */
+    public static SeatCounts release(JdbcTemplate jdbcTemplate, UUID classId, int seats) {
+        if (seats <= 0) {
+            throw new IllegalArgumentException("釋出座位數必須大於 0");
+        }
+        return first(jdbcTemplate.queryForList(RELEASE_SQL, seats, seats, classId.toString()));
+    }
+
+    /**
+     * 查詢班級目前人數與容量
+     * @return 查無班級時回傳 null
+     */
+    public static SeatCounts find(JdbcTemplate jdbcTemplate, UUID classId) {
+        return first(jdbcTemplate.queryForList(FIND_SQL, classId.toString()));
+    }
+
+    /**
+     * 依已錄取幼兒重新計算所有班級的目前人數
+     * @return 被校正的班級（ClassID、PreviousStudents、CurrentStudents、Capacity）
+     */
+    public static List<Map<String, Object>> reconcile(JdbcTemplate jdbcTemplate) {
+        return jdbcTemplate.queryForList(RECONCILE_SQL);
+    }
+
+    /**
+     * 將 OUTPUT 或查詢結果的第一列轉為 SeatCounts
+     */
+    public static SeatCounts toSeatCounts(Map<String, Object> row) {
+        Object current = row.get("CurrentStudents");
+        Object capacity = row.get("Capacity");
+        return new SeatCounts(current != null ? ((Number) current).intValue() : 0,
+                capacity != null ? ((Number) capacity).intValue() : null);
+    }
+
+    private static SeatCounts first(List<Map<String, Object>> rows) {
+        return rows.isEmpty() ? null : toSeatCounts(rows.get(0));
+    }
+}
@@ -9,6 +9,7 @@ import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -397,4 +398,36 @@ public class ClassesJdbcRepository {
             return true; // 如果查詢失敗，保守處理，視為已滿
         }
     }
+
+    /**
+     * 以條件式 UPDATE 佔用一個座位（見 ClassSeatLedger）
+     * @return 佔用後的人數；已滿、未設定容量或查無班級時回傳 null
+     */
+    public ClassSeatLedger.SeatCounts reserveSeat(UUID classId) {
+        return ClassSeatLedger.reserve(jdbcTemplate, classId, 1);
+    }
+
+    /**
+     * 釋出一個座位（不低於 0）
+     * @return 釋出後的人數；查無班級時回傳 null
+     */
+    public ClassSeatLedger.SeatCounts releaseSeat(UUID classId) {
+        return ClassSeatLedger.release(jdbcTemplate, classId, 1);
+    }
+
+    /**
+     * 查詢班級目前人數與容量
+     * @return 查無班級時回傳 null
+     */
+    public ClassSeatLedger.SeatCounts findSeatCounts(UUID classId) {
+        return ClassSeatLedger.find(jdbcTemplate, classId);
+    }
+
+    /**
+     * 依已錄取幼兒重新計算各班目前人數
+     * @return 被校正的班級
+     */
+    public List<Map<String, Object>> reconcileCurrentStudents() {
+        return ClassSeatLedger.reconcile(jdbcTemplate);
+    }
 }
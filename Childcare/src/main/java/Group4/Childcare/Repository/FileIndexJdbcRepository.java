@@ -0,0 +1,188 @@
+package Group4.Childcare.Repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * 檔案索引：記錄各案件資料夾（IdentityResource/{ApplicationID}/）與機構圖片（InstitutionResource/{InstitutionID}_*）
+ * 目前有哪些檔案，讀取時以主鍵查詢，不必列出目錄
+ *
+ * file_index_owners 記錄「已完整建立索引」的擁有者：沒有這筆記錄代表尚未建立索引（舊資料），須列目錄一次補上；
+ * 有記錄但 file_index 沒有檔案代表確實沒有檔案。
+ * Category 為 INSTITUTION_IMAGE 且 OwnerID 為全 0 的記錄代表整個 InstitutionResource 目錄已建立索引。
+ *
+ * 資料表：
+ * <pre>
+ * CREATE TABLE file_index (
+ *   Category NVARCHAR(20) NOT NULL,
+ *   OwnerID UNIQUEIDENTIFIER NOT NULL,
+ *   FileName NVARCHAR(260) NOT NULL,
+ *   SizeBytes BIGINT NOT NULL,
+ *   LastModified DATETIME2 NOT NULL,
+ *   IndexedAt DATETIME2 NOT NULL,
+ *   CONSTRAINT PK_file_index PRIMARY KEY (Category, OwnerID, FileName)
+ * );
+ *
+ * CREATE TABLE file_index_owners (
+ *   Category NVARCHAR(20) NOT NULL,
+ *   OwnerID UNIQUEIDENTIFIER NOT NULL,
+ *   IndexedAt DATETIME2 NOT NULL,
+ *   CONSTRAINT PK_file_index_owners PRIMARY KEY (Category, OwnerID)
+ * );
+ * </pre>
+ */
+@Repository
+public class FileIndexJdbcRepository {
+
+    public static final String CATEGORY_ATTACHMENT = "ATTACHMENT";
+    public static final String CATEGORY_INSTITUTION_IMAGE = "INSTITUTION_IMAGE";
+
+    // 代表「整個目錄已建立索引」的擁有者
+    public static final UUID DIRECTORY_OWNER = new UUID(0L, 0L);
+
+    /**
+     * 索引中的一個檔案
+     */
+    public record IndexedFile(String fileName, long sizeBytes, LocalDateTime lastModified) {
+    }
+
+    private static final String UPSERT_SQL =
+            "MERGE file_index WITH (HOLDLOCK) AS t " +
+            "USING (SELECT ? AS Category, ? AS OwnerID, ? AS FileName) AS s " +
+            "ON t.Category = s.Category AND t.OwnerID = s.OwnerID AND t.FileName = s.FileName " +
+            "WHEN MATCHED THEN UPDATE SET t.SizeBytes = ?, t.LastModified = ?, t.IndexedAt = ? " +
+            "WHEN NOT MATCHED THEN INSERT (Category, OwnerID, FileName, SizeBytes, LastModified, IndexedAt) " +
+            "VALUES (s.Category, s.OwnerID, s.FileName, ?, ?, ?);";
+
+    private static final String INSERT_SQL =
+            "INSERT INTO file_index (Category, OwnerID, FileName, SizeBytes, LastModified, IndexedAt) " +
+            "VALUES (?, ?, ?, ?, ?, ?)";
+
+    private static final String DELETE_SQL =
+            "DELETE FROM file_index WHERE Category = ? AND OwnerID = ? AND FileName = ?";
+
+    private static final String DELETE_OWNER_FILES_SQL =
+            "DELETE FROM file_index WHERE Category = ? AND OwnerID = ?";
+
+    private static final String DELETE_CATEGORY_FILES_SQL =
+            "DELETE FROM file_index WHERE Category = ?";
+
+    private static final String MARK_OWNER_SQL =
+            "MERGE file_index_owners WITH (HOLDLOCK) AS t " +
+            "USING (SELECT ? AS Category, ? AS OwnerID) AS s ON t.Category = s.Category AND t.OwnerID = s.OwnerID " +
+            "WHEN MATCHED THEN UPDATE SET t.IndexedAt = ? " +
+            "WHEN NOT MATCHED THEN INSERT (Category, OwnerID, IndexedAt) VALUES (s.Category, s.OwnerID, ?);";
+
+    private static final String UNMARK_OWNER_SQL =
+            "DELETE FROM file_index_owners WHERE Category = ? AND OwnerID = ?";
+
+    private static final String FIND_FILE_NAMES_SQL =
+            "SELECT f.FileName FROM file_index_owners o " +
+            "LEFT JOIN file_index f ON f.Category = o.Category AND f.OwnerID = o.OwnerID " +
+            "WHERE o.Category = ? AND o.OwnerID = ? ORDER BY f.FileName";
+
+    private static final String FIND_INDEXED_SQL =
+            "SELECT COUNT(*) FROM file_index_owners WHERE Category = ? AND OwnerID = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public FileIndexJdbcRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * 新增或更新一個檔案（不改變擁有者是否已完整建立索引）
+     */
+    public void upsert(String category, UUID ownerId, IndexedFile file, LocalDateTime now) {
+        Timestamp lastModified = Timestamp.valueOf(file.lastModified());
+        Timestamp indexedAt = Timestamp.valueOf(now);
+        jdbcTemplate.update(UPSERT_SQL, category, ownerId.toString(), file.fileName(),
+                file.sizeBytes(), lastModified, indexedAt,
+                file.sizeBytes(), lastModified, indexedAt);
+    }
+
+    public void delete(String category, UUID ownerId, String fileName) {
+        jdbcTemplate.update(DELETE_SQL, category, ownerId.toString(), fileName);
+    }
+
+    /**
+     * 以目前的檔案清單取代擁有者的索引，並標記為已完整建立索引
+     */
+    public void replaceOwner(String category, UUID ownerId, List<IndexedFile> files, LocalDateTime now) {
+        jdbcTemplate.update(DELETE_OWNER_FILES_SQL, category, ownerId.toString());
+        insertAll(category, Map.of(ownerId, files), now);
+        markOwner(category, ownerId, now);
+    }
+
+    /**
+     * 以整個目錄的檔案清單取代某類別的索引（每個擁有者與 DIRECTORY_OWNER 都標記為已建立索引）
+     */
+    public void replaceCategory(String category, Map<UUID, List<IndexedFile>> filesByOwner, LocalDateTime now) {
+        jdbcTemplate.update(DELETE_CATEGORY_FILES_SQL, category);
+        insertAll(category, filesByOwner, now);
+        for (UUID ownerId : filesByOwner.keySet()) {
+            markOwner(category, ownerId, now);
+        }
+        markOwner(category, DIRECTORY_OWNER, now);
+    }
+
+    /**
+     * 取消擁有者的「已建立索引」標記，下次讀取時重新列出目錄
+     */
+    public void unmarkOwner(String category, UUID ownerId) {
+        jdbcTemplate.update(UNMARK_OWNER_SQL, category, ownerId.toString());
+    }
+
+    /**
+     * 擁有者的檔案名稱（依名稱排序）
+     * @return 尚未建立索引時為空
+     */
+    public Optional<List<String>> findFileNames(String category, UUID ownerId) {
+        List<String> rows = jdbcTemplate.query(FIND_FILE_NAMES_SQL, (rs, rowNum) -> rs.getString("FileName"),
+                category, ownerId.toString());
+        if (rows.isEmpty()) {
+            return Optional.empty();
+        }
+        List<String> fileNames = new ArrayList<>(rows.size());
+        for (String fileName : rows) {
+            if (fileName != null) {
+                fileNames.add(fileName);
+            }
+        }
+        return Optional.of(fileNames);
+    }
+
+    public boolean isIndexed(String category, UUID ownerId) {
+        Integer count = jdbcTemplate.queryForObject(FIND_INDEXED_SQL, Integer.class, category, ownerId.toString());
+        return count != null && count > 0;
+    }
+
+    private void markOwner(String category, UUID ownerId, LocalDateTime now) {
+        Timestamp indexedAt = Timestamp.valueOf(now);
+        jdbcTemplate.update(MARK_OWNER_SQL, category, ownerId.toString(), indexedAt, indexedAt);
+    }
+
+    private void insertAll(String category, Map<UUID, List<IndexedFile>> filesByOwner, LocalDateTime now) {
+        Timestamp indexedAt = Timestamp.valueOf(now);
+        List<Object[]> rows = new ArrayList<>();
+        filesByOwner.forEach((ownerId, files) -> {
+            for (IndexedFile file : files) {
+                rows.add(new Object[]{category, ownerId.toString(), file.fileName(), file.sizeBytes(),
+                        Timestamp.valueOf(file.lastModified()), indexedAt});
+            }
+        });
+        if (!rows.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_SQL, rows);
+        }
+    }
+}
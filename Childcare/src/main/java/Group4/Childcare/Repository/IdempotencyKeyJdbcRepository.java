@@ -0,0 +1,142 @@
+package Group4.Childcare.Repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * 冪等鍵（Idempotency-Key）
+ *
+ * 每個鍵一筆：處理中時 StatusCode 為 NULL，ExpiresAt 為處理租約的期限（節點中途當掉時，租約過期後可被重新認領）；
+ * 處理完成後寫入 ApplicationID、回應內容，ExpiresAt 延長為保存期限。過期資料由 IdempotencyService 定期清除。
+ * 鍵依 Scope（送件者）區分，不同使用者用到相同的鍵互不影響；RequestHash 為請求內容的指紋，
+ * 用來拒絕以同一個鍵送出不同內容的請求。
+ *
+ * 資料表：
+ * <pre>
+ * CREATE TABLE idempotency_keys (
+ *   Scope NVARCHAR(100) NOT NULL,
+ *   IdemKey NVARCHAR(100) NOT NULL,
+ *   RequestHash CHAR(64) NOT NULL,
+ *   ApplicationID UNIQUEIDENTIFIER NULL,
+ *   StatusCode INT NULL,
+ *   ResponseBody NVARCHAR(MAX) NULL,
+ *   ExpiresAt DATETIME2 NOT NULL,
+ *   CreatedAt DATETIME2 NOT NULL DEFAULT SYSDATETIME(),
+ *   CONSTRAINT PK_idempotency_keys PRIMARY KEY (Scope, IdemKey)
+ * );
+ * CREATE INDEX IX_idempotency_keys_ExpiresAt ON idempotency_keys (ExpiresAt);
+ * </pre>
+ */
+@Repository
+public class IdempotencyKeyJdbcRepository {
+
+    public static final int MAX_KEY_LENGTH = 100;
+
+    public static final int MAX_SCOPE_LENGTH = 100;
+
+    // 新鍵直接新增；已過期的鍵（含租約過期的處理中鍵）重新認領
+    private static final String CLAIM_SQL =
+            "MERGE idempotency_keys WITH (HOLDLOCK) AS t " +
+            "USING (SELECT ? AS Scope, ? AS IdemKey, ? AS RequestHash) AS s " +
+            "ON t.Scope = s.Scope AND t.IdemKey = s.IdemKey " +
+            "WHEN MATCHED AND t.ExpiresAt < ? THEN UPDATE SET t.RequestHash = s.RequestHash, " +
+            "t.ApplicationID = NULL, t.StatusCode = NULL, t.ResponseBody = NULL, t.ExpiresAt = ?, t.CreatedAt = SYSDATETIME() " +
+            "WHEN NOT MATCHED THEN INSERT (Scope, IdemKey, RequestHash, ExpiresAt, CreatedAt) " +
+            "VALUES (s.Scope, s.IdemKey, s.RequestHash, ?, SYSDATETIME());";
+
+    private static final String FIND_SQL =
+            "SELECT RequestHash, ApplicationID, StatusCode, ResponseBody, ExpiresAt FROM idempotency_keys " +
+            "WHERE Scope = ? AND IdemKey = ?";
+
+    private static final String COMPLETE_SQL =
+            "UPDATE idempotency_keys SET ApplicationID = ?, StatusCode = ?, ResponseBody = ?, ExpiresAt = ? " +
+            "WHERE Scope = ? AND IdemKey = ? AND StatusCode IS NULL";
+
+    private static final String RELEASE_SQL =
+            "DELETE FROM idempotency_keys WHERE Scope = ? AND IdemKey = ? AND StatusCode IS NULL";
+
+    private static final String DELETE_EXPIRED_SQL =
+            "DELETE TOP (?) FROM idempotency_keys WHERE ExpiresAt < ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public IdempotencyKeyJdbcRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * 鍵目前的狀態
+     * @param requestHash 認領此鍵的請求指紋
+     * @param statusCode 處理中時為 null
+     */
+    public record StoredKey(String requestHash, UUID applicationId, Integer statusCode, String responseBody,
+                            LocalDateTime expiresAt) {
+
+        public boolean isCompleted() {
+            return statusCode != null;
+        }
+    }
+
+    /**
+     * 認領鍵（新鍵或已過期的鍵）
+     * @param scope 送件者
+     * @param requestHash 請求指紋（SHA-256 十六進位）
+     * @param leaseUntil 處理租約期限
+     * @return true 如果由本次請求負責處理；false 表示鍵已被其他請求持有或已有結果
+     */
+    public boolean claim(String scope, String key, String requestHash, LocalDateTime now, LocalDateTime leaseUntil) {
+        Timestamp lease = Timestamp.valueOf(leaseUntil);
+        return jdbcTemplate.update(CLAIM_SQL, scope, key, requestHash, Timestamp.valueOf(now), lease, lease) > 0;
+    }
+
+    public Optional<StoredKey> find(String scope, String key) {
+        List<StoredKey> rows = jdbcTemplate.query(FIND_SQL, (rs, rowNum) -> {
+            String applicationId = rs.getString("ApplicationID");
+            int statusCode = rs.getInt("StatusCode");
+            boolean completed = !rs.wasNull();
+            Timestamp expiresAt = rs.getTimestamp("ExpiresAt");
+            return new StoredKey(
+                    rs.getString("RequestHash"),
+                    applicationId != null ? UUID.fromString(applicationId) : null,
+                    completed ? statusCode : null,
+                    rs.getString("ResponseBody"),
+                    expiresAt != null ? expiresAt.toLocalDateTime() : null);
+        }, scope, key);
+        return rows.isEmpty() ? Optional.empty() : Optional.of(rows.get(0));
+    }
+
+    /**
+     * 記錄處理結果（只更新仍在處理中的鍵）
+     * @param expiresAt 結果保存期限
+     * @return true 如果成功記錄
+     */
+    public boolean complete(String scope, String key, UUID applicationId, int statusCode, String responseBody,
+                            LocalDateTime expiresAt) {
+        return jdbcTemplate.update(COMPLETE_SQL,
+                applicationId != null ? applicationId.toString() : null,
+                statusCode, responseBody, Timestamp.valueOf(expiresAt), scope, key) > 0;
+    }
+
+    /**
+     * 釋放處理中的鍵（處理失敗時，讓用戶端重試可以重新處理）
+     */
+    public void release(String scope, String key) {
+        jdbcTemplate.update(RELEASE_SQL, scope, key);
+    }
+
+    /**
+     * 刪除一批過期的鍵
+     * @return 刪除筆數
+     */
+    public int deleteExpired(LocalDateTime now, int batchSize) {
+        return jdbcTemplate.update(DELETE_EXPIRED_SQL, batchSize, Timestamp.valueOf(now));
+    }
+}
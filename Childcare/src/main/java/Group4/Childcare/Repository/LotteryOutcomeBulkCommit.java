@@ -0,0 +1,171 @@
+package Group4.Childcare.Repository;
+
+import com.microsoft.sqlserver.jdbc.ISQLServerBulkData;
+import com.microsoft.sqlserver.jdbc.SQLServerBulkCopy;
+import com.microsoft.sqlserver.jdbc.SQLServerBulkCopyOptions;
+import com.microsoft.sqlserver.jdbc.SQLServerConnection;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 抽籤結果整批寫回（SQL Server 專用）
+ *
+ * 1. 以 SQLServerBulkCopy 將整份結果（ApplicationID、NationalID、Status、Reason、ClassID、CurrentOrder、ReviewDate）
+ *    一次載入暫存表 #lottery_outcome
+ * 2. 以單一 MERGE 更新 application_participants
+ *
+ * 取代逐筆 UPDATE 的 batchUpdate，兩個語句都在呼叫端的交易與同一連線內執行；
+ * 班級人數由呼叫端透過 ClassSeatLedger 佔用（座位不足時整份結果回滾）。
+ */
+public final class LotteryOutcomeBulkCommit {
+
+    static final String STAGING_TABLE = "#lottery_outcome";
+
+    // 暫存表欄位長度與 application_participants 相同；ID 以字串載入，比對時隱含轉為 UNIQUEIDENTIFIER
+    private static final String CREATE_STAGING_SQL =
+            "IF OBJECT_ID('tempdb.." + STAGING_TABLE + "') IS NOT NULL DROP TABLE " + STAGING_TABLE + "; " +
+            "CREATE TABLE " + STAGING_TABLE + " (" +
+            "ApplicationID CHAR(36) NOT NULL, " +
+            "NationalID NVARCHAR(20) NOT NULL, " +
+            "Status NVARCHAR(50) NULL, " +
+            "Reason NVARCHAR(100) NULL, " +
+            "ClassID CHAR(36) NULL, " +
+            "CurrentOrder INT NULL, " +
+            "ReviewDate DATETIME2 NULL, " +
+            "PRIMARY KEY (ApplicationID, NationalID))";
+
+    static final String MERGE_SQL =
+            "MERGE application_participants AS t " +
+            "USING " + STAGING_TABLE + " AS s " +
+            "ON t.ApplicationID = s.ApplicationID AND t.NationalID = s.NationalID " +
+            "WHEN MATCHED THEN UPDATE SET " +
+            "t.CurrentOrder = s.CurrentOrder, t.Status = s.Status, t.Reason = s.Reason, " +
+            "t.ClassID = s.ClassID, t.ReviewDate = s.ReviewDate;";
+
+    private static final String DROP_STAGING_SQL =
+            "IF OBJECT_ID('tempdb.." + STAGING_TABLE + "') IS NOT NULL DROP TABLE " + STAGING_TABLE;
+
+    private LotteryOutcomeBulkCommit() {
+    }
+
+    /**
+     * 是否可使用 bulk copy（連線為 SQL Server）
+     */
+    public static boolean isSupported(Connection connection) throws SQLException {
+        return connection.isWrapperFor(SQLServerConnection.class);
+    }
+
+    /**
+     * 整批寫回抽籤結果
+     * @param applicants 與 WaitlistJdbcRepository.batchUpdateApplicants 相同的資料列
+     * @return 更新的 application_participants 筆數
+     */
+    public static int apply(Connection connection, List<Map<String, Object>> applicants) throws SQLException {
+        SQLServerConnection sqlServerConnection = connection.unwrap(SQLServerConnection.class);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(CREATE_STAGING_SQL);
+            try {
+                SQLServerBulkCopyOptions options = new SQLServerBulkCopyOptions();
+                options.setTableLock(true);
+                options.setBatchSize(0);
+                try (SQLServerBulkCopy bulkCopy = new SQLServerBulkCopy(sqlServerConnection)) {
+                    bulkCopy.setBulkCopyOptions(options);
+                    bulkCopy.setDestinationTableName(STAGING_TABLE);
+                    bulkCopy.writeToServer(new OutcomeRows(applicants));
+                }
+                return statement.executeUpdate(MERGE_SQL);
+            } finally {
+                statement.execute(DROP_STAGING_SQL);
+            }
+        }
+    }
+
+    /**
+     * 以記憶體中的資料列作為 bulk copy 來源
+     */
+    static final class OutcomeRows implements ISQLServerBulkData {
+        private static final long serialVersionUID = 1L;
+
+        private static final String[] NAMES = {
+                "ApplicationID", "NationalID", "Status", "Reason", "ClassID", "CurrentOrder", "ReviewDate"};
+        private static final int[] TYPES = {
+                Types.CHAR, Types.NVARCHAR, Types.NVARCHAR, Types.NVARCHAR, Types.CHAR, Types.INTEGER, Types.TIMESTAMP};
+        private static final int[] PRECISIONS = {36, 20, 50, 100, 36, 10, 27};
+        private static final int[] SCALES = {0, 0, 0, 0, 0, 0, 7};
+
+        private final transient List<Map<String, Object>> rows;
+        private int cursor = -1;
+
+        OutcomeRows(List<Map<String, Object>> rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public Set<Integer> getColumnOrdinals() {
+            return Set.of(1, 2, 3, 4, 5, 6, 7);
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return NAMES[column - 1];
+        }
+
+        @Override
+        public int getColumnType(int column) {
+            return TYPES[column - 1];
+        }
+
+        @Override
+        public int getPrecision(int column) {
+            return PRECISIONS[column - 1];
+        }
+
+        @Override
+        public int getScale(int column) {
+            return SCALES[column - 1];
+        }
+
+        @Override
+        public Object[] getRowData() {
+            Map<String, Object> row = rows.get(cursor);
+            Object currentOrder = row.get("CurrentOrder");
+            return new Object[]{
+                    toText(row.get("ApplicationID")),
+                    row.get("NationalID"),
+                    row.get("Status"),
+                    row.get("Reason"),
+                    toText(row.get("ClassID")),
+                    currentOrder != null ? ((Number) currentOrder).intValue() : null,
+                    toTimestamp(row.get("ReviewDate"))
+            };
+        }
+
+        @Override
+        public boolean next() {
+            cursor++;
+            return cursor < rows.size();
+        }
+
+        private static String toText(Object value) {
+            return value != null ? value.toString() : null;
+        }
+
+        private static Timestamp toTimestamp(Object value) {
+            if (value instanceof LocalDateTime) {
+                return Timestamp.valueOf((LocalDateTime) value);
+            }
+            if (value instanceof Timestamp) {
+                return (Timestamp) value;
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package Group4.Childcare.Repository;
+
+import Group4.Childcare.Model.LotteryRun;
+import Group4.Childcare.Model.LotteryRunResult;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * 批次抽籤執行紀錄
+ *
+ * 資料表：
+ * <pre>
+ * CREATE TABLE lottery_runs (
+ *   RunID UNIQUEIDENTIFIER PRIMARY KEY,
+ *   Status NVARCHAR(20) NOT NULL,
+ *   TotalCount INT NOT NULL,
+ *   CompletedCount INT NOT NULL DEFAULT 0,
+ *   FailedCount INT NOT NULL DEFAULT 0,
+ *   SkippedCount INT NOT NULL DEFAULT 0,
+ *   CreatedAt DATETIME2 NOT NULL,
+ *   FinishedAt DATETIME2 NULL
+ * );
+ * CREATE TABLE lottery_run_results (
+ *   ResultID UNIQUEIDENTIFIER PRIMARY KEY,
+ *   RunID UNIQUEIDENTIFIER NOT NULL,
+ *   InstitutionID UNIQUEIDENTIFIER NOT NULL,
+ *   Status NVARCHAR(20) NOT NULL,
+ *   Message NVARCHAR(1000) NULL,
+ *   TotalProcessed INT NULL,
+ *   FirstPriorityAccepted INT NULL,
+ *   SecondPriorityAccepted INT NULL,
+ *   ThirdPriorityAccepted INT NULL,
+ *   Waitlisted INT NULL,
+ *   StartedAt DATETIME2 NULL,
+ *   FinishedAt DATETIME2 NULL
+ * );
+ * CREATE INDEX IX_lottery_run_results_RunID ON lottery_run_results (RunID, FinishedAt);
+ * </pre>
+ */
+@Repository
+public class LotteryRunJdbcRepository {
+
+    public static final String RUN_STATUS_RUNNING = "執行中";
+    public static final String RUN_STATUS_COMPLETED = "已完成";
+    public static final String RUN_STATUS_PARTIAL_FAILED = "部分失敗";
+
+    public static final String RESULT_STATUS_SUCCESS = "成功";
+    public static final String RESULT_STATUS_FAILED = "失敗";
+    public static final String RESULT_STATUS_SKIPPED = "略過";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public LotteryRunJdbcRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    private static final RowMapper<LotteryRun> RUN_ROW_MAPPER = (rs, rowNum) -> {
+        LotteryRun run = new LotteryRun();
+        run.setRunID(UUID.fromString(rs.getString("RunID")));
+        run.setStatus(rs.getString("Status"));
+        run.setTotalCount(rs.getInt("TotalCount"));
+        run.setCompletedCount(rs.getInt("CompletedCount"));
+        run.setFailedCount(rs.getInt("FailedCount"));
+        run.setSkippedCount(rs.getInt("SkippedCount"));
+        Timestamp createdAt = rs.getTimestamp("CreatedAt");
+        run.setCreatedAt(createdAt != null ? createdAt.toLocalDateTime() : null);
+        Timestamp finishedAt = rs.getTimestamp("FinishedAt");
+        run.setFinishedAt(finishedAt != null ? finishedAt.toLocalDateTime() : null);
+        return run;
+    };
+
+    private static final RowMapper<LotteryRunResult> RESULT_ROW_MAPPER = (rs, rowNum) -> {
+        LotteryRunResult result = new LotteryRunResult();
+        result.setResultID(UUID.fromString(rs.getString("ResultID")));
+        result.setRunID(UUID.fromString(rs.getString("RunID")));
+        result.setInstitutionID(UUID.fromString(rs.getString("InstitutionID")));
+        result.setStatus(rs.getString("Status"));
+        result.setMessage(rs.getString("Message"));
+        result.setTotalProcessed((Integer) rs.getObject("TotalProcessed"));
+        result.setFirstPriorityAccepted((Integer) rs.getObject("FirstPriorityAccepted"));
+        result.setSecondPriorityAccepted((Integer) rs.getObject("SecondPriorityAccepted"));
+        result.setThirdPriorityAccepted((Integer) rs.getObject("ThirdPriorityAccepted"));
+        result.setWaitlisted((Integer) rs.getObject("Waitlisted"));
+        Timestamp startedAt = rs.getTimestamp("StartedAt");
+        result.setStartedAt(startedAt != null ? startedAt.toLocalDateTime() : null);
+        Timestamp finishedAt = rs.getTimestamp("FinishedAt");
+        result.setFinishedAt(finishedAt != null ? finishedAt.toLocalDateTime() : null);
+        return result;
+    };
+
+    /**
+     * 建立執行紀錄
+     */
+    public LotteryRun createRun(int totalCount) {
+        LotteryRun run = new LotteryRun(UUID.randomUUID(), RUN_STATUS_RUNNING, totalCount, 0, 0, 0,
+                LocalDateTime.now(), null);
+        String sql = "INSERT INTO lottery_runs " +
+                "(RunID, Status, TotalCount, CompletedCount, FailedCount, SkippedCount, CreatedAt) " +
+                "VALUES (?, ?, ?, 0, 0, 0, ?)";
+        jdbcTemplate.update(sql, run.getRunID().toString(), run.getStatus(), totalCount, run.getCreatedAt());
+        return run;
+    }
+
+    public Optional<LotteryRun> findRunById(UUID runId) {
+        String sql = "SELECT * FROM lottery_runs WHERE RunID = ?";
+        List<LotteryRun> runs = jdbcTemplate.query(sql, RUN_ROW_MAPPER, runId.toString());
+        return runs.isEmpty() ? Optional.empty() : Optional.of(runs.get(0));
+    }
+
+    /**
+     * 寫入單一機構結果並累加執行進度；全部機構處理完畢時結束此次執行
+     */
+    public void recordResult(LotteryRunResult result) {
+        if (result.getResultID() == null) {
+            result.setResultID(UUID.randomUUID());
+        }
+        String insertSql = "INSERT INTO lottery_run_results " +
+                "(ResultID, RunID, InstitutionID, Status, Message, TotalProcessed, FirstPriorityAccepted, " +
+                "SecondPriorityAccepted, ThirdPriorityAccepted, Waitlisted, StartedAt, FinishedAt) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        jdbcTemplate.update(insertSql,
+                result.getResultID().toString(),
+                result.getRunID().toString(),
+                result.getInstitutionID().toString(),
+                result.getStatus(),
+                result.getMessage(),
+                result.getTotalProcessed(),
+                result.getFirstPriorityAccepted(),
+                result.getSecondPriorityAccepted(),
+                result.getThirdPriorityAccepted(),
+                result.getWaitlisted(),
+                result.getStartedAt(),
+                result.getFinishedAt());
+
+        String counterColumn = RESULT_STATUS_SUCCESS.equals(result.getStatus()) ? "CompletedCount"
+                : RESULT_STATUS_SKIPPED.equals(result.getStatus()) ? "SkippedCount" : "FailedCount";
+        jdbcTemplate.update("UPDATE lottery_runs SET " + counterColumn + " = " + counterColumn + " + 1 WHERE RunID = ?",
+                result.getRunID().toString());
+
+        String finishSql = "UPDATE lottery_runs " +
+                "SET Status = CASE WHEN FailedCount > 0 THEN ? ELSE ? END, FinishedAt = ? " +
+                "WHERE RunID = ? AND FinishedAt IS NULL " +
+                "AND CompletedCount + FailedCount + SkippedCount >= TotalCount";
+        jdbcTemplate.update(finishSql, RUN_STATUS_PARTIAL_FAILED, RUN_STATUS_COMPLETED, LocalDateTime.now(),
+                result.getRunID().toString());
+    }
+
+    /**
+     * 分頁查詢執行結果（依完成時間排序）
+     */
+    public List<LotteryRunResult> findResultsWithOffset(UUID runId, int offset, int limit) {
+        String sql = "SELECT * FROM lottery_run_results WHERE RunID = ? " +
+                "ORDER BY FinishedAt, ResultID OFFSET ? ROWS FETCH NEXT ? ROWS ONLY";
+        return jdbcTemplate.query(sql, RESULT_ROW_MAPPER, runId.toString(), offset, limit);
+    }
+
+    public long countResults(UUID runId) {
+        String sql = "SELECT COUNT(*) FROM lottery_run_results WHERE RunID = ?";
+        Long count = jdbcTemplate.queryForObject(sql, Long.class, runId.toString());
+        return count != null ? count : 0;
+    }
+}
@@ -273,6 +273,16 @@ public class RevokesJdbcRepository {
         // method intentionally returns void
     }
 
+    /**
+     * 查詢已錄取幼兒的班級（非已錄取或無班級時回傳 null）
+     */
+    public String findAdmittedClassID(String applicationID, String nationalID) {
+        String sql = "SELECT [ClassID] FROM [dbo].[application_participants] " +
+                "WHERE [ApplicationID] = ? AND [NationalID] = ? AND [Status] = ? AND [ClassID] IS NOT NULL";
+        List<String> result = jdbcTemplate.queryForList(sql, String.class, applicationID, nationalID, "已錄取");
+        return result.isEmpty() ? null : result.get(0);
+    }
+
     // 新增：更新 application_participants 的 Status
     public int updateApplicationParticipantStatus(String applicationID, String nationalID, String status) {
         String updateStatusSql = "UPDATE [dbo].[application_participants] SET [Status] = ? WHERE [ApplicationID] = ? AND [NationalID] = ?";
@@ -1,18 +1,28 @@
 package Group4.Childcare.Repository;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.PreparedStatement;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.Period;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.function.Consumer;
 
 @Repository
 public class WaitlistJdbcRepository {
+    // 抽籤結果達此人數才改用 bulk copy + MERGE（人數少時建立暫存表的成本高於批次更新）
+    public static final int BULK_COMMIT_MIN_ROWS = 200;
+
+    // 串流查詢每次自資料庫取回的筆數
+    private static final int STREAM_FETCH_SIZE = 500;
+
     private final JdbcTemplate jdbcTemplate;
 
     @Autowired
@@ -21,10 +31,12 @@ public class WaitlistJdbcRepository {
     }
 
     public List<Map<String, Object>> findWaitlistByInstitution(String institutionId, String name) {
-        StringBuilder sql = new StringBuilder("SELECT a.[ApplicationID], ap.[Name],a.[CaseNumber], ap.[BirthDate], a.[IdentityType], ap.[CurrentOrder],i.[InstitutionName] " +
+        StringBuilder sql = new StringBuilder("SELECT a.[ApplicationID], ap.[Name],a.[CaseNumber], ap.[BirthDate], a.[IdentityType], " +
+                WaitlistRankKeys.positionColumn() + " AS CurrentOrder, i.[InstitutionName] " +
                 "FROM [dbo].[applications] a " +
                 "LEFT JOIN [dbo].[institutions] i ON i.[InstitutionID] = a.[InstitutionID] " +
                 "LEFT JOIN [dbo].[application_participants] ap ON a.[ApplicationID] = ap.[ApplicationID] " +
+                WaitlistRankKeys.positionJoin() +
                 "WHERE ap.[Status] = '候補中' AND ap.[ParticipantType] = 0 ");
         // 動態組合條件
         List<Object> paramsList = new java.util.ArrayList<>();
@@ -53,10 +65,7 @@ public class WaitlistJdbcRepository {
                         row.put("Age", "");
                         continue;
                     }
-                    LocalDate now = LocalDate.now();
-                    Period period = Period.between(birthDate, now);
-                    String age = period.getYears() + "歲" + period.getMonths() + "個月";
-                    row.put("Age", age);
+                    row.put("Age", describeAge(birthDate));
                 } catch (Exception e) {
                     row.put("Age", "");
                 }
@@ -67,6 +76,155 @@ public class WaitlistJdbcRepository {
         return results;
     }
 
+    /**
+     * 候補名單串流資料列（findWaitlistByInstitution 的欄位，另含分頁游標所需的 InstitutionID、排序鍵、ParticipantID）
+     */
+    public record WaitlistRow(UUID applicationId, String name, Long caseNumber, LocalDate birthDate,
+                              Integer identityType, Integer currentOrder, String institutionName,
+                              UUID institutionId, int sortKey, UUID participantId) {
+    }
+
+    /**
+     * 串流分頁游標：上一頁最後一筆的 (InstitutionID, 排序鍵, ParticipantID)
+     */
+    public record WaitlistCursor(UUID institutionId, int sortKey, UUID participantId) {
+
+        public static WaitlistCursor parse(String value) {
+            String[] parts = value.split(",");
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("cursor 格式錯誤");
+            }
+            return new WaitlistCursor(UUID.fromString(parts[0]), Integer.parseInt(parts[1]), UUID.fromString(parts[2]));
+        }
+
+        public static WaitlistCursor of(WaitlistRow row) {
+            return new WaitlistCursor(row.institutionId(), row.sortKey(), row.participantId());
+        }
+
+        @Override
+        public String toString() {
+            return institutionId + "," + sortKey + "," + participantId;
+        }
+    }
+
+    /**
+     * 串流查詢候補名單：逐列讀取 ResultSet 交給 consumer，不在記憶體中保留整份名單
+     * 候補名次以視窗函數計算（同機構、排序鍵 <= 自己的人數），與 findWaitlistByInstitution 相同
+     * @param after 游標（null 代表第一頁）
+     * @param limit 最多筆數（null 代表不分頁）
+     * @return 實際輸出的筆數
+     */
+    public int streamWaitlistByInstitution(String institutionId, String name, WaitlistCursor after, Integer limit,
+                                           Consumer<WaitlistRow> consumer) {
+        StringBuilder sql = new StringBuilder("WITH w AS ( " +
+                "SELECT a.ApplicationID, ap.ParticipantID, ap.Name, a.CaseNumber, ap.BirthDate, a.IdentityType, " +
+                "a.InstitutionID, i.InstitutionName, ISNULL(ap.CurrentOrder, 0) AS SortKey, " +
+                "CASE WHEN ap.CurrentOrder IS NULL THEN NULL ELSE COUNT(ap.CurrentOrder) OVER (" +
+                "PARTITION BY a.InstitutionID ORDER BY ap.CurrentOrder RANGE UNBOUNDED PRECEDING) END AS Position " +
+                "FROM applications a " +
+                "INNER JOIN application_participants ap ON a.ApplicationID = ap.ApplicationID " +
+                "LEFT JOIN institutions i ON i.InstitutionID = a.InstitutionID " +
+                "WHERE ap.Status = '候補中' AND ap.ParticipantType = 0 ");
+        // 參數依出現順序：CTE 內的機構條件 → TOP → 外層姓名與游標條件
+        List<Object> params = new ArrayList<>();
+        if (institutionId != null && !institutionId.trim().isEmpty()) {
+            sql.append("AND a.InstitutionID = ? ");
+            params.add(institutionId);
+        }
+        sql.append(") SELECT ");
+        if (limit != null) {
+            sql.append("TOP (?) ");
+            params.add(limit);
+        }
+        sql.append("ApplicationID, ParticipantID, Name, CaseNumber, BirthDate, IdentityType, InstitutionID, " +
+                "InstitutionName, SortKey, Position FROM w WHERE 1 = 1 ");
+        if (name != null && !name.trim().isEmpty()) {
+            sql.append("AND Name LIKE ? ");
+            params.add("%" + name + "%");
+        }
+        if (after != null) {
+            sql.append("AND (InstitutionID > ? OR (InstitutionID = ? AND (SortKey > ? " +
+                    "OR (SortKey = ? AND ParticipantID > ?)))) ");
+            params.add(after.institutionId().toString());
+            params.add(after.institutionId().toString());
+            params.add(after.sortKey());
+            params.add(after.sortKey());
+            params.add(after.participantId().toString());
+        }
+        sql.append("ORDER BY InstitutionID, SortKey, ParticipantID");
+
+        int[] count = {0};
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql.toString());
+            ps.setFetchSize(STREAM_FETCH_SIZE);
+            for (int i = 0; i < params.size(); i++) {
+                ps.setObject(i + 1, params.get(i));
+            }
+            return ps;
+        }, (RowCallbackHandler) rs -> {
+            long caseNumber = rs.getLong("CaseNumber");
+            Long caseNumberValue = rs.wasNull() ? null : caseNumber;
+            int identityType = rs.getInt("IdentityType");
+            Integer identityTypeValue = rs.wasNull() ? null : identityType;
+            int position = rs.getInt("Position");
+            Integer positionValue = rs.wasNull() ? null : position;
+            java.sql.Date birthDate = rs.getDate("BirthDate");
+            String institution = rs.getString("InstitutionID");
+            consumer.accept(new WaitlistRow(
+                    UUID.fromString(rs.getString("ApplicationID")),
+                    rs.getString("Name"),
+                    caseNumberValue,
+                    birthDate != null ? birthDate.toLocalDate() : null,
+                    identityTypeValue,
+                    positionValue,
+                    rs.getString("InstitutionName"),
+                    institution != null ? UUID.fromString(institution) : null,
+                    rs.getInt("SortKey"),
+                    UUID.fromString(rs.getString("ParticipantID"))));
+            count[0]++;
+        });
+        return count[0];
+    }
+
+    /**
+     * 將出生日期轉為「幾歲幾個月」
+     */
+    public static String describeAge(LocalDate birthDate) {
+        if (birthDate == null) {
+            return "";
+        }
+        Period period = Period.between(birthDate, LocalDate.now());
+        return period.getYears() + "歲" + period.getMonths() + "個月";
+    }
+
+    /**
+     * 獲取機構所有候補中且有排序鍵的幼兒（建立記憶體候補索引用，CurrentOrder 為原始排序鍵）
+     */
+    public List<Map<String, Object>> findWaitlistRankEntries(UUID institutionId) {
+        String sql = "SELECT ap.ParticipantID, ap.ApplicationID, ap.NationalID, ap.Name, a.CaseNumber, " +
+                "ap.BirthDate, a.IdentityType, i.InstitutionName, ap.CurrentOrder " +
+                "FROM application_participants ap " +
+                "INNER JOIN applications a ON ap.ApplicationID = a.ApplicationID " +
+                "LEFT JOIN institutions i ON a.InstitutionID = i.InstitutionID " +
+                "WHERE a.InstitutionID = ? AND ap.ParticipantType = 0 " +
+                "AND ap.Status = '候補中' AND ap.CurrentOrder IS NOT NULL " +
+                "ORDER BY ap.CurrentOrder";
+        return jdbcTemplate.queryForList(sql, institutionId.toString());
+    }
+
+    /**
+     * 獲取申請案的所有幼兒目前狀態與排序鍵（狀態變更後同步記憶體候補索引用）
+     */
+    public List<Map<String, Object>> findChildRankEntriesByApplication(UUID applicationId) {
+        String sql = "SELECT ap.ParticipantID, ap.ApplicationID, ap.NationalID, ap.Name, a.CaseNumber, " +
+                "ap.BirthDate, a.IdentityType, i.InstitutionName, ap.CurrentOrder, ap.Status, a.InstitutionID " +
+                "FROM application_participants ap " +
+                "INNER JOIN applications a ON ap.ApplicationID = a.ApplicationID " +
+                "LEFT JOIN institutions i ON a.InstitutionID = i.InstitutionID " +
+                "WHERE ap.ApplicationID = ? AND ap.ParticipantType = 0";
+        return jdbcTemplate.queryForList(sql, applicationId.toString());
+    }
+
     /**
      * 獲取機構的所有待審核通過的候補申請人（非抽籤時期用）
      */
@@ -81,15 +239,33 @@ public class WaitlistJdbcRepository {
     }
 
     /**
-     * 獲取下一個候補順序號
+     * 獲取下一個候補排序鍵（由機構序列原子配置，見 WaitlistRankKeys）
      */
     public int getNextWaitlistOrder(UUID institutionId) {
-        String sql = "SELECT ISNULL(MAX(ap.CurrentOrder), 0) + 1 " +
-                "FROM application_participants ap " +
-                "LEFT JOIN applications a ON ap.ApplicationID = a.ApplicationID " +
-                "WHERE a.InstitutionID = ? AND ap.ParticipantType = 0";
-        Integer result = jdbcTemplate.queryForObject(sql, Integer.class, institutionId.toString());
-        return result != null ? result : 1;
+        return WaitlistRankKeys.nextRankKey(jdbcTemplate, institutionId);
+    }
+
+    /**
+     * 批次改寫排序鍵後，將機構序列對齊目前最大的排序鍵
+     */
+    public void syncRankSequence(UUID institutionId) {
+        WaitlistRankKeys.syncSequence(jdbcTemplate, institutionId);
+    }
+
+    /**
+     * 重新以固定間隔編排機構的候補排序鍵
+     * @return 重新編排的筆數
+     */
+    @Transactional
+    public int compactRankKeys(UUID institutionId) {
+        return WaitlistRankKeys.compact(jdbcTemplate, institutionId);
+    }
+
+    /**
+     * 查詢排序鍵需要重新編排的機構
+     */
+    public List<UUID> findInstitutionsNeedingRankCompaction() {
+        return WaitlistRankKeys.findInstitutionsNeedingCompaction(jdbcTemplate);
     }
 
     /**
@@ -287,6 +463,16 @@ public class WaitlistJdbcRepository {
         return null;
     }
 
+    /**
+     * 查詢申請案所屬機構
+     * @return 機構ID；查無申請案時回傳 null
+     */
+    public UUID findInstitutionIdByApplication(UUID applicationId) {
+        String sql = "SELECT InstitutionID FROM applications WHERE ApplicationID = ?";
+        List<String> result = jdbcTemplate.queryForList(sql, String.class, applicationId.toString());
+        return result.isEmpty() || result.get(0) == null ? null : UUID.fromString(result.get(0));
+    }
+
     /**
      * 檢查班級是否還有空位
      */
@@ -297,6 +483,45 @@ public class WaitlistJdbcRepository {
         return result != null && result == 1;
     }
 
+    /**
+     * 查詢候補遞補所需的班級資訊（所屬機構、容量、目前學生數、年齡區間）
+     * @return 查無班級時回傳 null
+     */
+    public Map<String, Object> findClassForPromotion(UUID classId) {
+        String sql = "SELECT ClassID, InstitutionID, Capacity, CurrentStudents, " +
+                "MinAgeDescription, MaxAgeDescription " +
+                "FROM classes WHERE ClassID = ?";
+        List<Map<String, Object>> result = jdbcTemplate.queryForList(sql, classId.toString());
+        return result.isEmpty() ? null : result.get(0);
+    }
+
+    /**
+     * 以單一條件式 UPDATE 佔用班級一個座位（目前學生數未達容量才成功，見 ClassSeatLedger）
+     * @return true 如果成功佔用
+     */
+    public boolean claimClassSeat(UUID classId) {
+        return ClassSeatLedger.reserve(jdbcTemplate, classId, 1) != null;
+    }
+
+    /**
+     * 歸還先前佔用的座位（錄取未完成時使用）
+     */
+    public void releaseClassSeat(UUID classId) {
+        ClassSeatLedger.release(jdbcTemplate, classId, 1);
+    }
+
+    /**
+     * 將仍在候補中的幼兒改為已錄取（狀態已被其他操作變更時不更新）
+     * @return true 如果成功錄取
+     */
+    public boolean admitWaitlisted(UUID applicationId, String nationalId, UUID classId, String reason) {
+        String sql = "UPDATE application_participants " +
+                "SET Status = '已錄取', Reason = ?, ClassID = ?, CurrentOrder = NULL, ReviewDate = ? " +
+                "WHERE ApplicationID = ? AND NationalID = ? AND Status = '候補中'";
+        return jdbcTemplate.update(sql, reason, classId.toString(), LocalDateTime.now(),
+                applicationId.toString(), nationalId) > 0;
+    }
+
     /**
      * 更新班級目前學生數
      */
@@ -306,6 +531,74 @@ public class WaitlistJdbcRepository {
         jdbcTemplate.update(sql, increment, classId.toString());
     }
 
+    /**
+     * 嘗試取得機構抽籤的資料庫應用程式鎖（sp_getapplock，擁有者為目前交易）
+     * 交易提交或回滾時自動釋放，確保多個節點不會同時對同一機構抽籤
+     * 必須在交易內呼叫
+     * @return true 如果成功取得鎖
+     */
+    public boolean tryAcquireLotteryLock(UUID institutionId) {
+        String sql = "SET NOCOUNT ON; " +
+                "DECLARE @result INT; " +
+                "EXEC @result = sp_getapplock @Resource = ?, @LockMode = 'Exclusive', " +
+                "@LockOwner = 'Transaction', @LockTimeout = 0; " +
+                "SELECT @result";
+        Integer result = jdbcTemplate.queryForObject(sql, Integer.class, "lottery:" + institutionId);
+        return result != null && result >= 0;
+    }
+
+    /**
+     * 依班級佔用抽籤錄取的座位（ClassSeatLedger 條件式 UPDATE，每個班級一個語句）
+     * 任一班級座位不足時拋出 IllegalStateException，由呼叫端交易回滾整份抽籤結果，不會超收
+     * @param seatsByClass Map<ClassID, 錄取人數>
+     */
+    @Transactional
+    public void reserveClassSeats(Map<UUID, Integer> seatsByClass) {
+        if (seatsByClass == null || seatsByClass.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<UUID, Integer> entry : seatsByClass.entrySet()) {
+            if (entry.getValue() == null || entry.getValue() <= 0) {
+                continue;
+            }
+            if (ClassSeatLedger.reserve(jdbcTemplate, entry.getKey(), entry.getValue()) == null) {
+                throw new IllegalStateException("班級座位不足，抽籤結果未寫回: ClassID=" + entry.getKey()
+                        + "，需要 " + entry.getValue() + " 個座位");
+            }
+        }
+    }
+
+    /**
+     * 一次寫回抽籤結果
+     * SQL Server 且人數達 BULK_COMMIT_MIN_ROWS 時：bulk copy 載入暫存表 → 單一 MERGE
+     * 其他情況：批次更新所有申請人
+     * 兩者都再以 reserveClassSeats 佔用各班級座位
+     */
+    @Transactional
+    public void applyLotteryOutcome(List<Map<String, Object>> applicants, Map<UUID, Integer> admittedByClass) {
+        if (applicants.size() < BULK_COMMIT_MIN_ROWS || !applyLotteryOutcomeBulk(applicants)) {
+            batchUpdateApplicants(applicants);
+        }
+        reserveClassSeats(admittedByClass);
+    }
+
+    /**
+     * 以 bulk copy + MERGE 寫回抽籤結果（見 LotteryOutcomeBulkCommit），班級座位由呼叫端另外佔用
+     * @return false 如果連線不是 SQL Server（呼叫端改用批次更新）
+     */
+    @Transactional
+    public boolean applyLotteryOutcomeBulk(List<Map<String, Object>> applicants) {
+        Boolean applied = jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+            if (!LotteryOutcomeBulkCommit.isSupported(connection)) {
+                return false;
+            }
+            int merged = LotteryOutcomeBulkCommit.apply(connection, applicants);
+            System.out.println("📦 抽籤結果整批寫回: 暫存 " + applicants.size() + " 筆，MERGE 更新 " + merged + " 筆");
+            return true;
+        });
+        return Boolean.TRUE.equals(applied);
+    }
+
     /**
      * 記錄跳過錄取的情況（用於查核）
      */
@@ -323,8 +616,8 @@ public class WaitlistJdbcRepository {
      */
     @Transactional
     public boolean manualAdmit(UUID applicationId, String nationalId, UUID classId) {
-        // 檢查班級是否有空位
-        if (!hasClassCapacity(classId)) {
+        // 先佔用座位（班級已滿時不更新）
+        if (!claimClassSeat(classId)) {
             return false;
         }
 
@@ -336,11 +629,11 @@ public class WaitlistJdbcRepository {
                 applicationId.toString(), nationalId);
 
         if (updated > 0) {
-            // 更新班級學生數
-            updateClassCurrentStudents(classId, 1);
             return true;
         }
 
+        // 查無申請人，歸還座位
+        releaseClassSeat(classId);
         return false;
     }
 
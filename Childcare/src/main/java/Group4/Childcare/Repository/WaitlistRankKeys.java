@@ -0,0 +1,205 @@
+package Group4.Childcare.Repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * 候補排序鍵（稀疏序號）
+ *
+ * application_participants.CurrentOrder 儲存的是「排序鍵」而非連續名次：
+ * - 新候補者由每個機構一筆的原子序列取得下一個鍵（間隔 RANK_STEP），取代 MAX(CurrentOrder) + 1 掃描
+ * - 離開候補只清除自己的鍵（單筆更新），不再對後面所有人執行 CurrentOrder - 1
+ * - 顯示用的候補名次由排序鍵推導（同機構中排序鍵不大於自己的候補中人數），見 positionJoin / positionColumn；
+ *   只計算該列所屬機構，由 applications(InstitutionID) 與 application_participants(ApplicationID) 的索引支援
+ * - 鍵值過於密集或接近 INT 上限時，由 WaitlistRankCompactionService 重新以 RANK_STEP 間隔編排
+ *
+ * 資料表：
+ * CREATE TABLE waitlist_rank_sequences (
+ *     InstitutionID UNIQUEIDENTIFIER NOT NULL PRIMARY KEY,
+ *     LastRankKey   INT NOT NULL,
+ *     UpdatedAt     DATETIME2 NOT NULL DEFAULT SYSDATETIME()
+ * );
+ *
+ * 候補名次查詢所需索引：
+ * CREATE INDEX IX_applications_InstitutionID ON applications (InstitutionID);
+ * CREATE INDEX IX_application_participants_Waitlist ON application_participants (ApplicationID, ParticipantType, Status)
+ *     INCLUDE (CurrentOrder, ParticipantID);
+ */
+public final class WaitlistRankKeys {
+
+    // 相鄰排序鍵的間隔
+    public static final int RANK_STEP = 1024;
+
+    // 序列超過此值即需要重新編排
+    public static final int COMPACTION_THRESHOLD = Integer.MAX_VALUE / 2;
+
+    private static final String NEXT_RANK_KEY_SQL =
+            "UPDATE waitlist_rank_sequences WITH (ROWLOCK) " +
+            "SET LastRankKey = LastRankKey + ?, UpdatedAt = SYSDATETIME() " +
+            "OUTPUT inserted.LastRankKey " +
+            "WHERE InstitutionID = ?";
+
+    // 首次使用時以機構目前最大的排序鍵初始化序列（只執行一次）
+    private static final String INIT_SEQUENCE_SQL =
+            "INSERT INTO waitlist_rank_sequences (InstitutionID, LastRankKey, UpdatedAt) " +
+            "SELECT ?, ISNULL(MAX(ap.CurrentOrder), 0), SYSDATETIME() " +
+            "FROM application_participants ap " +
+            "INNER JOIN applications a ON ap.ApplicationID = a.ApplicationID " +
+            "WHERE a.InstitutionID = ? AND ap.ParticipantType = 0 " +
+            "AND NOT EXISTS (SELECT 1 FROM waitlist_rank_sequences WITH (UPDLOCK, HOLDLOCK) WHERE InstitutionID = ?)";
+
+    private static final String SYNC_SEQUENCE_SQL =
+            "UPDATE waitlist_rank_sequences " +
+            "SET LastRankKey = ISNULL((SELECT MAX(ap.CurrentOrder) FROM application_participants ap " +
+            "  INNER JOIN applications a ON ap.ApplicationID = a.ApplicationID " +
+            "  WHERE a.InstitutionID = ? AND ap.ParticipantType = 0), 0), UpdatedAt = SYSDATETIME() " +
+            "WHERE InstitutionID = ?";
+
+    // 以 ROW_NUMBER 一次重新編排同機構候補中的排序鍵
+    private static final String COMPACT_SQL =
+            "UPDATE ap SET ap.CurrentOrder = r.RankNo * ? " +
+            "FROM application_participants ap " +
+            "INNER JOIN ( " +
+            "  SELECT p.ParticipantID, ROW_NUMBER() OVER (ORDER BY p.CurrentOrder, p.ParticipantID) AS RankNo " +
+            "  FROM application_participants p " +
+            "  INNER JOIN applications a ON p.ApplicationID = a.ApplicationID " +
+            "  WHERE a.InstitutionID = ? AND p.ParticipantType = 0 " +
+            "  AND p.Status = '候補中' AND p.CurrentOrder IS NOT NULL " +
+            ") r ON ap.ParticipantID = r.ParticipantID";
+
+    // 指定名次前後的排序鍵（排除正在調整的幼兒本身）
+    private static final String NEIGHBOUR_KEYS_SQL =
+            "SELECT ap.CurrentOrder FROM application_participants ap " +
+            "INNER JOIN applications a ON ap.ApplicationID = a.ApplicationID " +
+            "WHERE a.InstitutionID = ? AND ap.ParticipantType = 0 " +
+            "AND ap.Status = '候補中' AND ap.CurrentOrder IS NOT NULL " +
+            "AND NOT (ap.ApplicationID = ? AND ap.NationalID = ?) " +
+            "ORDER BY ap.CurrentOrder, ap.ParticipantID OFFSET ? ROWS FETCH NEXT 2 ROWS ONLY";
+
+    // 相鄰排序鍵間距不足（無法再插入）或序列接近上限的機構
+    private static final String FIND_DENSE_INSTITUTIONS_SQL =
+            "SELECT s.InstitutionID FROM waitlist_rank_sequences s " +
+            "WHERE s.LastRankKey > ? " +
+            "OR EXISTS ( " +
+            "  SELECT 1 FROM ( " +
+            "    SELECT ap.CurrentOrder - LAG(ap.CurrentOrder) OVER (ORDER BY ap.CurrentOrder) AS Gap " +
+            "    FROM application_participants ap " +
+            "    INNER JOIN applications a ON ap.ApplicationID = a.ApplicationID " +
+            "    WHERE a.InstitutionID = s.InstitutionID AND ap.ParticipantType = 0 " +
+            "    AND ap.Status = '候補中' AND ap.CurrentOrder IS NOT NULL " +
+            "  ) g WHERE g.Gap < 2 " +
+            ")";
+
+    private WaitlistRankKeys() {
+    }
+
+    /**
+     * 取得機構的下一個候補排序鍵（原子遞增，不掃描 application_participants）
+     * @throws IllegalStateException 無法配置排序鍵時
+     */
+    public static int nextRankKey(JdbcTemplate jdbcTemplate, UUID institutionId) {
+        String id = institutionId.toString();
+        List<Integer> keys = jdbcTemplate.queryForList(NEXT_RANK_KEY_SQL, Integer.class, RANK_STEP, id);
+        if (keys.isEmpty()) {
+            jdbcTemplate.update(INIT_SEQUENCE_SQL, id, id, id);
+            keys = jdbcTemplate.queryForList(NEXT_RANK_KEY_SQL, Integer.class, RANK_STEP, id);
+        }
+        if (keys.isEmpty() || keys.get(0) == null) {
+            throw new IllegalStateException("無法配置候補排序鍵: InstitutionID=" + institutionId);
+        }
+        return keys.get(0);
+    }
+
+    /**
+     * 批次改寫排序鍵後（抽籤、重新編排），將序列對齊目前最大的排序鍵
+     */
+    public static void syncSequence(JdbcTemplate jdbcTemplate, UUID institutionId) {
+        String id = institutionId.toString();
+        jdbcTemplate.update(SYNC_SEQUENCE_SQL, id, id);
+    }
+
+    /**
+     * 重新以 RANK_STEP 間隔編排機構內候補中的排序鍵（名次不變）
+     * @return 重新編排的筆數
+     */
+    public static int compact(JdbcTemplate jdbcTemplate, UUID institutionId) {
+        int updated = jdbcTemplate.update(COMPACT_SQL, RANK_STEP, institutionId.toString());
+        syncSequence(jdbcTemplate, institutionId);
+        return updated;
+    }
+
+    /**
+     * 將候補名次（1 起算）換算為排序鍵：取前後相鄰排序鍵的中點
+     * 名次超過最後一位時排到最後；相鄰間距不足時先重新編排再取一次
+     * @throws IllegalStateException 重新編排後仍無法插入時
+     */
+    public static int keyForPosition(JdbcTemplate jdbcTemplate, UUID institutionId,
+                                     UUID applicationId, String nationalId, int position) {
+        int target = Math.max(1, position);
+        for (int attempt = 0; attempt < 2; attempt++) {
+            List<Integer> keys = jdbcTemplate.queryForList(NEIGHBOUR_KEYS_SQL, Integer.class,
+                    institutionId.toString(), applicationId.toString(), nationalId, Math.max(0, target - 2));
+            Integer lower;
+            Integer upper;
+            if (target == 1) {
+                lower = 0;
+                upper = keys.isEmpty() ? null : keys.get(0);
+            } else {
+                lower = keys.isEmpty() ? null : keys.get(0);
+                upper = keys.size() > 1 ? keys.get(1) : null;
+            }
+            if (lower == null || upper == null) {
+                return nextRankKey(jdbcTemplate, institutionId);
+            }
+            if (upper - lower >= 2) {
+                return lower + (upper - lower) / 2;
+            }
+            compact(jdbcTemplate, institutionId);
+        }
+        throw new IllegalStateException("無法插入候補名次: InstitutionID=" + institutionId + ", 名次=" + position);
+    }
+
+    /**
+     * 查詢需要重新編排的機構
+     */
+    public static List<UUID> findInstitutionsNeedingCompaction(JdbcTemplate jdbcTemplate) {
+        List<UUID> result = new ArrayList<>();
+        for (String id : jdbcTemplate.queryForList(FIND_DENSE_INSTITUTIONS_SQL, String.class, COMPACTION_THRESHOLD)) {
+            result.add(UUID.fromString(id));
+        }
+        return result;
+    }
+
+    // 只計算該列所屬機構、排序鍵不大於自己的候補中人數（同鍵以 ParticipantID 決定先後）；
+    // 非候補中或無排序鍵的列不執行子查詢
+    private static final String POSITION_JOIN =
+            "OUTER APPLY ( " +
+            "  SELECT COUNT(*) AS WaitlistPosition " +
+            "  FROM applications ra " +
+            "  INNER JOIN application_participants rp ON rp.ApplicationID = ra.ApplicationID " +
+            "  WHERE ap.ParticipantType = 0 AND ap.Status = '候補中' AND ap.CurrentOrder IS NOT NULL " +
+            "  AND ra.InstitutionID = (SELECT pa.InstitutionID FROM applications pa WHERE pa.ApplicationID = ap.ApplicationID) " +
+            "  AND rp.ParticipantType = 0 AND rp.Status = '候補中' AND rp.CurrentOrder IS NOT NULL " +
+            "  AND (rp.CurrentOrder < ap.CurrentOrder " +
+            "       OR (rp.CurrentOrder = ap.CurrentOrder AND rp.ParticipantID <= ap.ParticipantID)) " +
+            ") wp ";
+
+    /**
+     * 候補名次子查詢（OUTER APPLY），接在 application_participants（別名 ap）的 JOIN 之後，供 positionColumn 使用
+     */
+    public static String positionJoin() {
+        return POSITION_JOIN;
+    }
+
+    /**
+     * 顯示用候補名次欄位（由排序鍵推導），查詢需同時加入 positionJoin
+     * 非候補中或無排序鍵者維持原值
+     */
+    public static String positionColumn() {
+        return "CASE WHEN ap.ParticipantType = 0 AND ap.Status = '候補中' AND ap.CurrentOrder IS NOT NULL " +
+                "THEN wp.WaitlistPosition ELSE ap.CurrentOrder END";
+    }
+}
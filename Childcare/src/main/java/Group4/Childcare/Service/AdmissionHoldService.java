@@ -0,0 +1,220 @@
+package Group4.Childcare.Service;
+
+import Group4.Childcare.Repository.AdmissionHoldJdbcRepository;
+import Group4.Childcare.Repository.AdmissionHoldJdbcRepository.Hold;
+import Group4.Childcare.Repository.AdmissionHoldJdbcRepository.HoldKey;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 錄取保留期限
+ *
+ * - 抽籤、手動錄取、候補遞補錄取時寫入保留（admission_holds），家長須於期限內確認
+ * - 到期時間放在記憶體中的雜湊時間輪，每個 tick 只處理到期的格子；啟動時由資料表重建
+ * - 到期的保留依批次（每批一個交易）撤銷錄取、扣回班級人數，移除班級人數快取，並通知候補遞補
+ *
+ * 多個節點同時處理同一筆到期保留時，只有刪除到保留的節點會撤銷錄取，不會重複扣回名額。
+ */
+@Service
+public class AdmissionHoldService {
+
+    // 時間輪格數；以 1 秒 tick 計，一圈約 68 分鐘
+    private static final int WHEEL_SIZE = 4096;
+
+    // 寫回失敗時延後重試的時間
+    private static final long RETRY_DELAY_MILLIS = 60_000;
+
+    private final AdmissionHoldJdbcRepository admissionHoldJdbcRepository;
+    private final WaitlistPromotionService waitlistPromotionService;
+    private final ClassCapacityService classCapacityService;
+    private final Duration ttl;
+    private final int batchSize;
+    private final HashedTimerWheel<HoldKey> wheel;
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * @param waitlistPromotionService 遞補時也會建立保留，兩者互相參照，這一端延遲解析
+     * @param classCapacityService 經由 WaitlistPromotionService 間接參照本服務，同樣延遲解析
+     */
+    @Autowired
+    public AdmissionHoldService(AdmissionHoldJdbcRepository admissionHoldJdbcRepository,
+                                @Lazy WaitlistPromotionService waitlistPromotionService,
+                                @Lazy ClassCapacityService classCapacityService,
+                                @Value("${admission.hold.ttl-hours:72}") long ttlHours,
+                                @Value("${admission.hold.tick-ms:1000}") long tickMillis,
+                                @Value("${admission.hold.batch-size:500}") int batchSize) {
+        this.admissionHoldJdbcRepository = admissionHoldJdbcRepository;
+        this.waitlistPromotionService = waitlistPromotionService;
+        this.classCapacityService = classCapacityService;
+        this.ttl = Duration.ofHours(ttlHours);
+        this.batchSize = Math.max(1, Math.min(batchSize, AdmissionHoldJdbcRepository.MAX_BATCH_SIZE));
+        this.wheel = new HashedTimerWheel<>(tickMillis, WHEEL_SIZE, System.currentTimeMillis());
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "admission-hold-timer");
+            t.setDaemon(true);
+            return t;
+        });
+        this.scheduler.scheduleWithFixedDelay(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 啟動時由資料表重建時間輪（已逾期者於下一個 tick 處理）
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        try {
+            int loaded = admissionHoldJdbcRepository.forEachHold(hold -> wheel.schedule(hold.key(), toMillis(hold.expiresAt())));
+            System.out.println("⏰ 已載入 " + loaded + " 筆待確認錄取保留");
+        } catch (Exception e) {
+            System.err.println("❌ 載入錄取保留失敗: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 為已錄取的幼兒建立保留（與錄取同一交易；提交後才排入時間輪）
+     * @param admittedRows 含 ApplicationID、NationalID、ClassID 的資料列
+     * @return 保留期限
+     */
+    public LocalDateTime holdAdmitted(List<Map<String, Object>> admittedRows) {
+        LocalDateTime expiresAt = LocalDateTime.now().plus(ttl);
+        List<Hold> holds = new ArrayList<>(admittedRows.size());
+        for (Map<String, Object> row : admittedRows) {
+            Object applicationId = row.get("ApplicationID");
+            Object classId = row.get("ClassID");
+            if (applicationId == null || classId == null || row.get("NationalID") == null) {
+                continue;
+            }
+            holds.add(new Hold(UUID.fromString(applicationId.toString()), row.get("NationalID").toString(),
+                    UUID.fromString(classId.toString()), expiresAt));
+        }
+        register(holds);
+        return expiresAt;
+    }
+
+    /**
+     * 為單一已錄取幼兒建立保留
+     * @return 保留期限
+     */
+    public LocalDateTime hold(UUID applicationId, String nationalId, UUID classId) {
+        LocalDateTime expiresAt = LocalDateTime.now().plus(ttl);
+        register(List.of(new Hold(applicationId, nationalId, classId, expiresAt)));
+        return expiresAt;
+    }
+
+    private void register(List<Hold> holds) {
+        if (holds.isEmpty()) {
+            return;
+        }
+        admissionHoldJdbcRepository.upsertHolds(holds);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    schedule(holds);
+                }
+            });
+        } else {
+            schedule(holds);
+        }
+    }
+
+    private void schedule(List<Hold> holds) {
+        for (Hold hold : holds) {
+            wheel.schedule(hold.key(), toMillis(hold.expiresAt()));
+        }
+    }
+
+    /**
+     * 家長確認錄取
+     * @return true 如果確認成功；保留不存在或已逾期時回傳 false
+     */
+    public boolean confirm(UUID applicationId, String nationalId) {
+        boolean confirmed = admissionHoldJdbcRepository.confirmHold(applicationId, nationalId, LocalDateTime.now());
+        if (confirmed) {
+            wheel.cancel(new HoldKey(applicationId, nationalId));
+        }
+        return confirmed;
+    }
+
+    /**
+     * 目前時間輪中的保留筆數
+     */
+    public int pendingCount() {
+        return wheel.size();
+    }
+
+    private void tick() {
+        try {
+            expireDue(System.currentTimeMillis());
+        } catch (Exception e) {
+            System.err.println("❌ 錄取保留到期處理失敗: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 推進時間輪並分批撤銷到期的保留
+     * @return 撤銷錄取的筆數
+     */
+    public int expireDue(long nowMillis) {
+        List<HoldKey> due = wheel.advance(nowMillis);
+        if (due.isEmpty()) {
+            return 0;
+        }
+        LocalDateTime now = LocalDateTime.ofInstant(Instant.ofEpochMilli(nowMillis), ZoneId.systemDefault());
+        int expired = 0;
+        Set<UUID> freedClasses = new LinkedHashSet<>();
+        for (int from = 0; from < due.size(); from += batchSize) {
+            List<HoldKey> batch = due.subList(from, Math.min(from + batchSize, due.size()));
+            try {
+                for (Hold hold : admissionHoldJdbcRepository.expireHolds(batch, now)) {
+                    freedClasses.add(hold.classId());
+                    expired++;
+                }
+            } catch (Exception e) {
+                System.err.println("❌ 錄取保留撤銷失敗（" + batch.size() + " 筆稍後重試）: " + e.getMessage());
+                for (HoldKey key : batch) {
+                    wheel.schedule(key, nowMillis + RETRY_DELAY_MILLIS);
+                }
+            }
+        }
+        if (expired > 0) {
+            System.out.println("⌛ 逾期未確認錄取 " + expired + " 位，釋出 " + freedClasses.size() + " 個班級的名額");
+        }
+        for (UUID classId : freedClasses) {
+            // 每批已各自提交，快取人數已過時
+            classCapacityService.invalidate(classId);
+            waitlistPromotionService.seatFreed(classId);
+        }
+        return expired;
+    }
+
+    private static long toMillis(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
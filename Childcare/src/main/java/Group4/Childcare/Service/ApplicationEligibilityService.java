@@ -0,0 +1,113 @@
+package Group4.Childcare.Service;
+
+import Group4.Childcare.DTO.ApplicationParticipantDTO;
+import Group4.Childcare.Repository.ApplicationsJdbcRepository;
+import Group4.Childcare.Repository.ApplicationsJdbcRepository.ChildApplicationCounts;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * 幼兒申請資格檢查
+ *
+ * 規則（依序檢查，第一個不符合的規則即為原因）：
+ * 1. 已有「已錄取」案件 → 不能再申請
+ * 2. 「審核中」+「需要補件」+「候補中」+「撤銷申請審核中」已達 2 件 → 不能再申請
+ * 3. 同一機構已有有效申請（上述狀態或已錄取）→ 不能重複申請
+ *
+ * 一次送件的所有幼兒只查詢一次資料庫；未填身分證字號的幼兒不檢查。
+ */
+@Service
+public class ApplicationEligibilityService {
+
+    public static final int MAX_PENDING_APPLICATIONS = 2;
+
+    /**
+     * 單一幼兒的檢查結果
+     * @param reason 不符合時的原因；符合資格時為 null
+     */
+    public record ChildEligibility(String nationalID, String name, int acceptedCount, int pendingCount,
+                                   int sameInstitutionCount, String reason) {
+
+        public boolean isEligible() {
+            return reason == null;
+        }
+    }
+
+    /**
+     * 整份送件的檢查結果
+     * @param message 第一位不符合資格幼兒的原因；全部符合時為 null
+     */
+    public record Verdict(boolean eligible, String message, List<ChildEligibility> children) {
+    }
+
+    private final ApplicationsJdbcRepository applicationsJdbcRepository;
+
+    @Autowired
+    public ApplicationEligibilityService(ApplicationsJdbcRepository applicationsJdbcRepository) {
+        this.applicationsJdbcRepository = applicationsJdbcRepository;
+    }
+
+    /**
+     * 檢查一次送件中所有幼兒的申請資格
+     * @param institutionId 申請的機構
+     * @param children 幼兒，可為 null
+     */
+    public Verdict check(UUID institutionId, List<ApplicationParticipantDTO> children) {
+        List<ChildEligibility> results = new ArrayList<>();
+        if (children == null || children.isEmpty()) {
+            return new Verdict(true, null, results);
+        }
+
+        Set<String> nationalIDs = new LinkedHashSet<>();
+        for (ApplicationParticipantDTO child : children) {
+            if (child != null && child.nationalID != null && !child.nationalID.trim().isEmpty()) {
+                nationalIDs.add(child.nationalID);
+            }
+        }
+
+        Map<String, ChildApplicationCounts> countsById = new HashMap<>();
+        if (!nationalIDs.isEmpty()) {
+            for (ChildApplicationCounts counts : applicationsJdbcRepository.countChildApplications(
+                    new ArrayList<>(nationalIDs), institutionId)) {
+                countsById.put(counts.nationalID(), counts);
+            }
+        }
+
+        String message = null;
+        for (ApplicationParticipantDTO child : children) {
+            if (child == null || !nationalIDs.contains(child.nationalID)) {
+                continue;
+            }
+            ChildApplicationCounts counts = countsById.get(child.nationalID);
+            int accepted = counts != null ? counts.acceptedCount() : 0;
+            int pending = counts != null ? counts.pendingCount() : 0;
+            int sameInstitution = counts != null ? counts.sameInstitutionCount() : 0;
+
+            String who = "幼兒 " + child.name + " (身分證: " + child.nationalID + ")";
+            String reason = null;
+            if (accepted >= 1) {
+                reason = who + " 已有錄取案件，無法再提交新申請";
+            } else if (pending >= MAX_PENDING_APPLICATIONS) {
+                reason = who + " 的處理中申請案件已達上限 " + MAX_PENDING_APPLICATIONS + " 件，無法再提交新申請";
+            } else if (sameInstitution >= 1) {
+                reason = who + " 已在本機構有有效申請，無法重複提交";
+            }
+
+            System.out.println("  🔍 " + who + " 已錄取: " + accepted + ", 處理中: " + pending
+                    + ", 同機構有效: " + sameInstitution);
+            if (reason != null && message == null) {
+                message = reason;
+            }
+            results.add(new ChildEligibility(child.nationalID, child.name, accepted, pending, sameInstitution, reason));
+        }
+        return new Verdict(message == null, message, results);
+    }
+}
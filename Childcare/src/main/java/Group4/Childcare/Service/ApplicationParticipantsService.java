@@ -3,29 +3,50 @@ package Group4.Childcare.Service;
 import Group4.Childcare.Model.ApplicationParticipants;
 import Group4.Childcare.Repository.ApplicationParticipantsJdbcRepository;
 import Group4.Childcare.Repository.ApplicationsJdbcRepository;
+import Group4.Childcare.Repository.WaitlistRankKeys;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
 @Service
 public class ApplicationParticipantsService {
-    private final ApplicationParticipantsJdbcRepository repository;
-
-    @Autowired
-    private JdbcTemplate jdbcTemplate;
 
-    @Autowired
-    private ApplicationsJdbcRepository applicationsJdbcRepository;
+    /**
+     * 改為已錄取時班級已滿（或未設定容量），狀態變更整筆回滾
+     */
+    public static class ClassFullException extends RuntimeException {
+        public ClassFullException(UUID classID) {
+            super("班級已滿，無法錄取: ClassID=" + classID);
+        }
+    }
 
-    @Autowired(required = false)
-    private EmailService emailService;
+    private final ApplicationParticipantsJdbcRepository repository;
+    private final JdbcTemplate jdbcTemplate;
+    private final ApplicationsJdbcRepository applicationsJdbcRepository;
+    private final EmailService emailService;
+    private final WaitlistRankIndexService waitlistRankIndexService;
+    private final WaitlistPromotionService waitlistPromotionService;
+    private final ClassCapacityService classCapacityService;
 
     @Autowired
-    public ApplicationParticipantsService(ApplicationParticipantsJdbcRepository repository) {
+    public ApplicationParticipantsService(ApplicationParticipantsJdbcRepository repository,
+                                          JdbcTemplate jdbcTemplate,
+                                          ApplicationsJdbcRepository applicationsJdbcRepository,
+                                          EmailService emailService,
+                                          WaitlistRankIndexService waitlistRankIndexService,
+                                          WaitlistPromotionService waitlistPromotionService,
+                                          ClassCapacityService classCapacityService) {
         this.repository = repository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.applicationsJdbcRepository = applicationsJdbcRepository;
+        this.emailService = emailService;
+        this.waitlistRankIndexService = waitlistRankIndexService;
+        this.waitlistPromotionService = waitlistPromotionService;
+        this.classCapacityService = classCapacityService;
     }
 
     public ApplicationParticipants create(ApplicationParticipants entity) {
@@ -67,13 +88,17 @@ public class ApplicationParticipantsService {
      *    - 將該個案的currentOrder設為null
      *    - 自動遞補：同機構後面所有的currentOrder減1
      *
+     * 改為已錄取時在同一交易內佔用班級座位，班級已滿則拋出 ClassFullException，狀態不會寫入
+     *
      * @param applicationID 申請案件ID
      * @param nationalID 參與者身分證
      * @param status 新的參與者狀態
      * @param reason 審核原因或備註
      * @param classID 班級ID
      * @return 更新後的參與者資訊
+     * @throws ClassFullException 改為已錄取但班級已滿
      */
+    @Transactional
     public ApplicationParticipants updateParticipantWithDynamicOrder(
             UUID applicationID, String nationalID, String status, String reason, UUID classID) {
 
@@ -128,74 +153,23 @@ public class ApplicationParticipantsService {
                 }
 
                 if (institutionId != null) {
-                    // 查詢同機構的最大CurrentOrder值
-                    String getMaxOrderSql =
-                        "SELECT MAX(ap.CurrentOrder) FROM application_participants ap " +
-                        "INNER JOIN applications a ON ap.ApplicationID = a.ApplicationID " +
-                        "WHERE a.InstitutionID = ? " +
-                        "AND ap.CurrentOrder IS NOT NULL " +
-                        "AND ap.ParticipantType = 0";
-
-                    Integer maxOrder = null;
+                    // 由機構序列原子配置排序鍵（不掃描 MAX(CurrentOrder)）
                     try {
-                        maxOrder = jdbcTemplate.queryForObject(getMaxOrderSql, Integer.class, institutionId.toString());
-                        System.out.println("[DEBUG] 查詢到的最大 CurrentOrder: " + maxOrder);
+                        currentOrder = WaitlistRankKeys.nextRankKey(jdbcTemplate, institutionId);
+                        System.out.println("[DEBUG] 設置 CurrentOrder = " + currentOrder + " (機構序列)");
                     } catch (Exception ex) {
-                        System.out.println("[DEBUG] 無法查詢最大 CurrentOrder (可能沒有記錄): " + ex.getMessage());
-                    }
-
-                    if (maxOrder == null) {
-                        currentOrder = 1;
-                        System.out.println("[DEBUG] 設置 CurrentOrder = 1 (首個候補)");
-                    } else {
-                        currentOrder = maxOrder + 1;
-                        System.out.println("[DEBUG] 設置 CurrentOrder = " + currentOrder + " (maxOrder + 1)");
+                        System.out.println("[ERROR] 配置候補排序鍵失敗: " + ex.getMessage());
                     }
                 }
             } else {
                 System.out.println("[DEBUG] 非幼兒記錄，不設置 CurrentOrder");
             }
         }
-        // 情況2: 如果原本是"候補中"且有 CurrentOrder，現在改為其他狀態（如已錄取），需要遞補後面的 CurrentOrder
+        // 情況2: 如果原本是"候補中"且有 CurrentOrder，現在改為其他狀態（如已錄取），只清除自己的排序鍵
+        // 後面的候補者名次由排序鍵推導，不需要逐筆遞補
         else if (oldStatus != null && "候補中".equals(oldStatus) && oldCurrentOrder != null && isChild != null && isChild) {
-            System.out.println("[DEBUG] 從候補中變更為其他狀態，需要遞補後面的 CurrentOrder");
-
-            // 獲取該申請案件的InstitutionID
-            String getInstitutionIdSql = "SELECT InstitutionID FROM applications WHERE ApplicationID = ?";
-            UUID institutionId = null;
-            try {
-                String institutionIdStr = jdbcTemplate.queryForObject(getInstitutionIdSql, String.class, applicationID.toString());
-                if (institutionIdStr != null) {
-                    institutionId = UUID.fromString(institutionIdStr);
-                    System.out.println("[DEBUG] InstitutionID: " + institutionId);
-                }
-            } catch (Exception ex) {
-                System.out.println("[ERROR] 無法獲取 InstitutionID: " + ex.getMessage());
-            }
-
-            if (institutionId != null) {
-                // 將該個案後面所有的 CurrentOrder 減 1
-                String updateFollowingOrdersSql =
-                    "UPDATE application_participants " +
-                    "SET CurrentOrder = CurrentOrder - 1 " +
-                    "WHERE ParticipantType = 0 " +
-                    "AND CurrentOrder > ? " +
-                    "AND ApplicationID IN ( " +
-                    "  SELECT ApplicationID FROM applications WHERE InstitutionID = ? " +
-                    ")";
-
-                try {
-                    int updatedCount = jdbcTemplate.update(updateFollowingOrdersSql, oldCurrentOrder, institutionId.toString());
-                    System.out.println("[DEBUG] 遞補完成：將 CurrentOrder > " + oldCurrentOrder + " 的 " + updatedCount + " 筆記錄減 1");
-                } catch (Exception ex) {
-                    System.out.println("[ERROR] 遞補 CurrentOrder 失敗: " + ex.getMessage());
-                    ex.printStackTrace();
-                }
-            }
-
-            // 將當前個案的 CurrentOrder 設為 null（因為已不在候補狀態）
+            System.out.println("[DEBUG] 從候補中變更為其他狀態，將當前個案的 CurrentOrder 設為 null");
             currentOrder = null;
-            System.out.println("[DEBUG] 將當前個案的 CurrentOrder 設為 null");
         }
 
         // 執行更新
@@ -223,6 +197,9 @@ public class ApplicationParticipantsService {
         // 🎓 更新班級學生數（如果狀態在「已錄取」與「非已錄取」之間轉換）
         updateClassStudentCount(applicationID, nationalID, oldStatus, status, classID);
 
+        // 同步記憶體候補索引
+        waitlistRankIndexService.refreshApplication(applicationID);
+
         // 查詢並返回更新後的參與者
         List<ApplicationParticipants> participants = repository.findByApplicationIDAndNationalID(applicationID, nationalID);
         if (!participants.isEmpty()) {
@@ -241,11 +218,6 @@ public class ApplicationParticipantsService {
      * 發送狀態變更郵件通知
      */
     private void sendStatusChangeEmail(UUID applicationID, String nationalID, String status, String reason, Integer currentOrder) {
-        if (emailService == null) {
-            System.out.println("⚠️ [sendStatusChangeEmail] EmailService 未配置，跳過郵件發送");
-            return;
-        }
-
         try {
             System.out.println("🔔 [sendStatusChangeEmail] 準備發送郵件:");
             System.out.println("  ApplicationID: " + applicationID);
@@ -268,9 +240,11 @@ public class ApplicationParticipantsService {
                 "  ap.Name AS ChildName, " +
                 "  i.InstitutionName, " +
                 "  a.CaseNumber, " +
-                "  a.ApplicationDate " +
+                "  a.ApplicationDate, " +
+                "  " + WaitlistRankKeys.positionColumn() + " AS WaitlistPosition " +
                 "FROM application_participants ap " +
                 "INNER JOIN applications a ON ap.ApplicationID = a.ApplicationID " +
+                WaitlistRankKeys.positionJoin() +
                 "LEFT JOIN users u ON a.UserID = u.UserID " +
                 "LEFT JOIN institutions i ON a.InstitutionID = i.InstitutionID " +
                 "WHERE ap.ApplicationID = ? AND ap.NationalID = ?";
@@ -284,6 +258,9 @@ public class ApplicationParticipantsService {
             Long caseNumber = caseNumberObj != null ? ((Number) caseNumberObj).longValue() : null;
             Object appDateObj = caseInfo.get("ApplicationDate");
             String applicationDate = appDateObj != null ? appDateObj.toString() : "";
+            // 郵件顯示候補名次（由排序鍵推導），查無時沿用傳入值
+            Object positionObj = caseInfo.get("WaitlistPosition");
+            Integer waitlistPosition = positionObj != null ? ((Number) positionObj).intValue() : currentOrder;
 
             System.out.println("  申請人: " + applicantName);
             System.out.println("  幼兒: " + childName);
@@ -298,7 +275,7 @@ public class ApplicationParticipantsService {
                     caseNumber,
                     applicationDate,
                     status,
-                    currentOrder,
+                    waitlistPosition,
                     reason
             );
 
@@ -315,9 +292,9 @@ public class ApplicationParticipantsService {
      *
      * 功能：
      * 1. 將申請案的狀態設為"已撤銷"
-     * 2. 如果該申請案有 CurrentOrder（候補序號）：
-     *    - 將該申請案的 CurrentOrder 設為 null
-     *    - 自動遞補：同機構後面所有的 CurrentOrder 減 1
+     * 2. 如果該申請案有 CurrentOrder（候補排序鍵）：
+     *    - 將該申請案的 CurrentOrder 設為 null（單筆更新）
+     *    - 同機構後面的候補名次由排序鍵推導，自動往前遞補
      * 3. 如果 CurrentOrder 為 null，則不影響其他申請案
      *
      * @param applicationID 申請案件ID
@@ -359,47 +336,9 @@ public class ApplicationParticipantsService {
             throw new RuntimeException("無法查詢申請案資料: " + ex.getMessage());
         }
 
-        // 2. 如果有 CurrentOrder 且是幼兒記錄，需要遞補後面的 CurrentOrder
+        // 2. 後面的候補者名次由排序鍵推導，撤銷時只需清除自己的 CurrentOrder（見步驟 3），不再逐筆遞補
         if (currentOrder != null && isChild != null && isChild) {
-            System.out.println("[DEBUG] 該申請案有候補序號 " + currentOrder + "，開始遞補後面的申請案");
-
-            // 獲取該申請案件的 InstitutionID
-            String getInstitutionIdSql = "SELECT InstitutionID FROM applications WHERE ApplicationID = ?";
-            UUID institutionId = null;
-            try {
-                String institutionIdStr = jdbcTemplate.queryForObject(getInstitutionIdSql, String.class, applicationID.toString());
-                if (institutionIdStr != null) {
-                    institutionId = UUID.fromString(institutionIdStr);
-                    System.out.println("[DEBUG] InstitutionID: " + institutionId);
-                }
-            } catch (Exception ex) {
-                System.out.println("[ERROR] 無法獲取 InstitutionID: " + ex.getMessage());
-            }
-
-            if (institutionId != null) {
-                // 將該個案後面所有的 CurrentOrder 減 1
-                String updateFollowingOrdersSql =
-                    "UPDATE application_participants " +
-                    "SET CurrentOrder = CurrentOrder - 1 " +
-                    "WHERE ParticipantType = 0 " +
-                    "AND CurrentOrder > ? " +
-                    "AND ApplicationID IN ( " +
-                    "  SELECT ApplicationID FROM applications WHERE InstitutionID = ? " +
-                    ")";
-
-                try {
-                    int updatedCount = jdbcTemplate.update(updateFollowingOrdersSql, currentOrder, institutionId.toString());
-                    System.out.println("[DEBUG] 遞補完成：將 CurrentOrder > " + currentOrder + " 的 " + updatedCount + " 筆記錄減 1");
-                } catch (Exception ex) {
-                    System.out.println("[ERROR] 遞補 CurrentOrder 失敗: " + ex.getMessage());
-                    ex.printStackTrace();
-                    throw new RuntimeException("遞補候補序號失敗: " + ex.getMessage());
-                }
-            }
-        } else if (currentOrder == null) {
-            System.out.println("[DEBUG] 該申請案無候補序號，不需要遞補");
-        } else {
-            System.out.println("[DEBUG] 該申請案非幼兒記錄，不需要遞補");
+            System.out.println("[DEBUG] 該申請案有候補排序鍵 " + currentOrder + "，撤銷後自候補名單移除");
         }
 
         // 3. 更新申請案狀態為"已撤銷"，並將 CurrentOrder 設為 null
@@ -417,6 +356,9 @@ public class ApplicationParticipantsService {
         // 🎓 如果原狀態是「已錄取」，需要更新班級學生數（-1）
         updateClassStudentCount(applicationID, nationalID, oldStatus, "撤銷申請通過", null);
 
+        // 同步記憶體候補索引
+        waitlistRankIndexService.refreshApplication(applicationID);
+
         // 4. 查詢並返回更新後的參與者
         List<ApplicationParticipants> participants = repository.findByApplicationIDAndNationalID(applicationID, nationalID);
         if (!participants.isEmpty()) {
@@ -444,8 +386,8 @@ public class ApplicationParticipantsService {
      * 更新班級學生數
      *
      * 規則：
-     * 1. 從「非已錄取」變為「已錄取」：CurrentStudents + 1
-     * 2. 從「已錄取」變為「非已錄取」：CurrentStudents - 1
+     * 1. 從「非已錄取」變為「已錄取」：CurrentStudents + 1（條件式，班級已滿時拋出 ClassFullException）
+     * 2. 從「已錄取」變為「非已錄取」：CurrentStudents - 1（不低於 0）
      * 3. 其他情況：不更新
      *
      * @param applicationID 申請案ID
@@ -504,12 +446,26 @@ public class ApplicationParticipantsService {
                 System.out.println("  📉 從「已錄取」變為「非已錄取」，CurrentStudents - 1");
             }
 
-            if (delta != 0) {
-                String updateClassSql = "UPDATE classes SET CurrentStudents = CurrentStudents + ? WHERE ClassID = ?";
-                int rowsAffected = jdbcTemplate.update(updateClassSql, delta, targetClassID.toString());
-                System.out.println("  ✅ 班級學生數更新完成，影響行數: " + rowsAffected);
+            if (delta > 0) {
+                // 條件式佔用座位，已滿時拒絕錄取，由呼叫端交易回滾已寫入的狀態
+                boolean reserved = classCapacityService.reserve(targetClassID);
+                if (!reserved) {
+                    System.out.println("  ⚠️ 班級已滿或未設定容量，拒絕錄取: " + targetClassID);
+                    throw new ClassFullException(targetClassID);
+                }
+                System.out.println("  ✅ 班級學生數更新完成");
+            } else if (delta < 0) {
+                boolean released = classCapacityService.release(targetClassID);
+                System.out.println("  ✅ 班級學生數更新完成: " + released);
+
+                // 空出座位時自動遞補候補者（於交易內呼叫時，提交後才遞補）
+                if (released) {
+                    waitlistPromotionService.seatFreed(targetClassID);
+                }
             }
 
+        } catch (ClassFullException ex) {
+            throw ex;
         } catch (Exception ex) {
             System.err.println("  ❌ 更新班級學生數失敗: " + ex.getMessage());
             ex.printStackTrace();
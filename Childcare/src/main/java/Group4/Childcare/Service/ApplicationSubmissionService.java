@@ -0,0 +1,130 @@
+package Group4.Childcare.Service;
+
+import Group4.Childcare.DTO.ApplicationParticipantDTO;
+import Group4.Childcare.Model.ApplicationParticipants;
+import Group4.Childcare.Model.Applications;
+import Group4.Childcare.Repository.ApplicationParticipantsJdbcRepository;
+import Group4.Childcare.Repository.ApplicationsJdbcRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * 申請案件送件
+ *
+ * 案件（含附件路徑）與所有申請人（家長、幼兒）在同一交易中寫入：
+ * - applications 一次 INSERT（附件路徑已在送件前存好，不再另外 UPDATE）
+ * - application_participants 以單一 batchUpdate 寫入
+ * 任一步驟失敗整個案件回滾，不會留下沒有申請人或缺少部分幼兒的案件。
+ */
+@Service
+public class ApplicationSubmissionService {
+
+    private final ApplicationsJdbcRepository applicationsJdbcRepository;
+    private final ApplicationParticipantsJdbcRepository applicationParticipantsJdbcRepository;
+
+    @Autowired
+    public ApplicationSubmissionService(ApplicationsJdbcRepository applicationsJdbcRepository,
+                                        ApplicationParticipantsJdbcRepository applicationParticipantsJdbcRepository) {
+        this.applicationsJdbcRepository = applicationsJdbcRepository;
+        this.applicationParticipantsJdbcRepository = applicationParticipantsJdbcRepository;
+    }
+
+    /**
+     * 寫入案件與申請人（先家長、後幼兒）
+     * @param application 已設定 ApplicationID、案件編號與附件路徑的案件
+     * @param parents 家長，可為 null
+     * @param children 幼兒，可為 null
+     * @return 寫入的申請人
+     */
+    @Transactional
+    public List<ApplicationParticipants> submit(Applications application,
+                                                List<ApplicationParticipantDTO> parents,
+                                                List<ApplicationParticipantDTO> children) {
+        UUID applicationId = application.getApplicationID();
+        List<ApplicationParticipants> participants = new ArrayList<>();
+        if (parents != null) {
+            for (ApplicationParticipantDTO dto : parents) {
+                if (dto != null) participants.add(toParticipant(dto, applicationId, true));
+            }
+        }
+        if (children != null) {
+            for (ApplicationParticipantDTO dto : children) {
+                if (dto != null) participants.add(toParticipant(dto, applicationId, false));
+            }
+        }
+
+        applicationsJdbcRepository.insertApplication(application);
+        int inserted = applicationParticipantsJdbcRepository.batchInsert(participants);
+
+        System.out.println("✅ 送件完成: ApplicationID=" + applicationId + ", CaseNumber=" + application.getCaseNumber()
+                + ", 申請人 " + inserted + " 筆");
+        return participants;
+    }
+
+    /**
+     * 將前端傳入的申請人 DTO 轉為 Entity
+     * @param isParent true = 家長, false = 幼兒
+     */
+    public static ApplicationParticipants toParticipant(ApplicationParticipantDTO dto, UUID applicationId, boolean isParent) {
+        ApplicationParticipants participant = new ApplicationParticipants();
+        participant.setParticipantID(UUID.randomUUID());
+        participant.setApplicationID(applicationId);
+        participant.setParticipantType(isParent);
+        participant.setNationalID(dto.nationalID);
+        participant.setName(dto.name);
+
+        // gender："男"/"M"/"1" 視為 true，其餘視為 false
+        if (dto.gender != null) {
+            String g = dto.gender.trim();
+            participant.setGender("男".equals(g) || "M".equalsIgnoreCase(g) || "1".equals(g));
+        } else {
+            participant.setGender(null);
+        }
+
+        participant.setRelationShip(dto.relationShip);
+        participant.setOccupation(dto.occupation);
+        participant.setPhoneNumber(dto.phoneNumber);
+        participant.setHouseholdAddress(dto.householdAddress);
+        participant.setMailingAddress(dto.mailingAddress);
+        participant.setEmail(dto.email);
+
+        // 生日與停權結束日字串轉 LocalDate（格式預期為 yyyy-MM-dd）
+        try {
+            if (dto.birthDate != null && !dto.birthDate.isEmpty()) {
+                participant.setBirthDate(LocalDate.parse(dto.birthDate));
+            }
+        } catch (Exception e) {
+            System.err.println("Failed to parse birthDate for participant: " + dto.birthDate + ", " + e.getMessage());
+        }
+        participant.setIsSuspended(dto.isSuspended);
+        try {
+            if (dto.suspendEnd != null && !dto.suspendEnd.isEmpty()) {
+                participant.setSuspendEnd(LocalDate.parse(dto.suspendEnd));
+            }
+        } catch (Exception e) {
+            System.err.println("Failed to parse suspendEnd for participant: " + dto.suspendEnd + ", " + e.getMessage());
+        }
+
+        // 直接使用 DTO 傳入的 CurrentOrder 值（不自動分配）
+        participant.setCurrentOrder(dto.currentOrder);
+        participant.setStatus(dto.status);
+        participant.setReason(dto.reason);
+
+        try {
+            if (dto.classID != null && !dto.classID.isEmpty()) {
+                participant.setClassID(UUID.fromString(dto.classID));
+            }
+        } catch (Exception e) {
+            System.err.println("Failed to parse classID for participant: " + dto.classID + ", " + e.getMessage());
+        }
+
+        participant.setReviewDate(dto.reviewDate);
+        return participant;
+    }
+}
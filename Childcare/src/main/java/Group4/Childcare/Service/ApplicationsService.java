@@ -24,14 +24,27 @@ import Group4.Childcare.DTO.UserApplicationDetailsDTO;
 
 @Service
 public class ApplicationsService {
+    private final ApplicationsJdbcRepository applicationsJdbcRepository;
+    private final ApplicationParticipantsJdbcRepository applicationParticipantsRepository;
+    private final FileService fileService;
+    private final EmailService emailService;
+    private final WaitlistRankIndexService waitlistRankIndexService;
+    private final CaseNumberAllocator caseNumberAllocator;
+
     @Autowired
-    private ApplicationsJdbcRepository applicationsJdbcRepository;
-    @Autowired
-    private ApplicationParticipantsJdbcRepository applicationParticipantsRepository;
-    @Autowired
-    private Group4.Childcare.Service.FileService fileService;
-    @Autowired(required = false)
-    private EmailService emailService;
+    public ApplicationsService(ApplicationsJdbcRepository applicationsJdbcRepository,
+                               ApplicationParticipantsJdbcRepository applicationParticipantsRepository,
+                               FileService fileService,
+                               EmailService emailService,
+                               WaitlistRankIndexService waitlistRankIndexService,
+                               CaseNumberAllocator caseNumberAllocator) {
+        this.applicationsJdbcRepository = applicationsJdbcRepository;
+        this.applicationParticipantsRepository = applicationParticipantsRepository;
+        this.fileService = fileService;
+        this.emailService = emailService;
+        this.waitlistRankIndexService = waitlistRankIndexService;
+        this.caseNumberAllocator = caseNumberAllocator;
+    }
 
     @Transactional
     public Applications create(Applications entity) {
@@ -41,22 +54,11 @@ public class ApplicationsService {
     /**
      * 生成案件編號
      * 格式：YYYYMMDD + 4位流水號，如 202412040001
-     * 流水號為符合日期格式的總案件數 + 1
+     * 流水號由 CaseNumberAllocator 依區段配置（每日重新起算、可能跳號但不重複）
      * @return 新的案件編號
      */
     public Long generateCaseNumber() {
-        java.time.LocalDate today = java.time.LocalDate.now();
-        // 生成日期前綴：YYYYMMDD
-        long datePrefix = today.getYear() * 10000L + today.getMonthValue() * 100L + today.getDayOfMonth();
-
-        // 查詢符合日期格式的總案件數
-        long totalCount = applicationsJdbcRepository.countCaseNumberWithDateFormat();
-
-        // 流水號 = 總案件數 + 1，格式化為4位數
-        long sequenceNumber = totalCount + 1;
-
-        // 組合案件編號：YYYYMMDD + 4位流水號
-        return datePrefix * 10000 + sequenceNumber;
+        return caseNumberAllocator.next();
     }
 
     public Optional<Applications> getById(UUID id) {
@@ -158,6 +160,7 @@ public class ApplicationsService {
     // Update single participant's status and reason, optionally set reviewDate
     public void updateParticipantStatusReason(UUID id, String nationalID, String status, String reason, java.time.LocalDateTime reviewDate) {
         applicationsJdbcRepository.updateParticipantStatusReason(id, nationalID, status, reason, reviewDate);
+        waitlistRankIndexService.refreshApplication(id);
     }
 
     /**
@@ -218,41 +221,29 @@ public class ApplicationsService {
             Long caseNumber = caseDto.caseNumber;
             String applicationDate = caseDto.applicationDate != null ? caseDto.applicationDate.toString() : "";
 
-            // 6. 發送郵件（如果 emailService 可用）
+            // 6. 發送郵件
             System.out.println("🔔 準備發送郵件通知:");
             System.out.println("  狀態: " + newStatus);
             System.out.println("  收件人: " + applicantEmail);
             System.out.println("  申請人: " + applicantName);
             System.out.println("  幼兒: " + childName);
 
-            if (emailService != null) {
-                try {
-                    emailService.sendApplicationStatusChangeEmail(
-                            applicantEmail,
-                            applicantName,
-                            childName,
-                            institutionName,
-                            caseNumber,
-                            applicationDate,
-                            newStatus,
-                            currentOrder,
-                            reason
-                    );
-                    System.out.println("✅ 審核狀態變更通知郵件已發送成功: " + applicantEmail + " (狀態: " + newStatus + ")");
-                } catch (Exception emailError) {
-                    System.err.println("❌ 郵件發送失敗 (狀態: " + newStatus + "): " + emailError.getMessage());
-                    emailError.printStackTrace();
-                }
-            } else {
-                System.out.println("⚠️ EmailService 未配置，郵件未發送");
-                System.out.println("郵件摘要:");
-                System.out.println("  收件人: " + applicantEmail);
-                System.out.println("  申請人: " + applicantName);
-                System.out.println("  幼兒: " + childName);
-                System.out.println("  機構: " + institutionName);
-                System.out.println("  案件編號: " + caseNumber);
-                System.out.println("  狀態: " + newStatus);
-                System.out.println("  序號: " + currentOrder);
+            try {
+                emailService.sendApplicationStatusChangeEmail(
+                        applicantEmail,
+                        applicantName,
+                        childName,
+                        institutionName,
+                        caseNumber,
+                        applicationDate,
+                        newStatus,
+                        currentOrder,
+                        reason
+                );
+                System.out.println("✅ 審核狀態變更通知郵件已發送成功: " + applicantEmail + " (狀態: " + newStatus + ")");
+            } catch (Exception emailError) {
+                System.err.println("❌ 郵件發送失敗 (狀態: " + newStatus + "): " + emailError.getMessage());
+                emailError.printStackTrace();
             }
 
         } catch (Exception e) {
@@ -268,6 +259,7 @@ public class ApplicationsService {
     @Transactional
     public void updateApplicationCase(UUID id, ApplicationCaseDTO dto) {
         applicationsJdbcRepository.updateApplicationCase(id, dto);
+        waitlistRankIndexService.refreshApplication(id);
     }
 
     /**
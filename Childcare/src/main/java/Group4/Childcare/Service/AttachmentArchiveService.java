@@ -0,0 +1,451 @@
+package Group4.Childcare.Service;
+
+import Group4.Childcare.Repository.AttachmentArchiveJdbcRepository;
+import Group4.Childcare.Repository.AttachmentArchiveJdbcRepository.ArchiveCandidate;
+import Group4.Childcare.Repository.AttachmentArchiveJdbcRepository.ArchivedAttachment;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 已結案案件附件的冷封存
+ *
+ * 已退件、已撤銷超過 closed-days 天，以及往年已錄取的案件，附件不再變動卻仍以一個個小檔案留在 IdentityResource，
+ * 佔用大量 inode 並拖慢每晚的備份。每日凌晨把這些附件依申請月份附加到封存檔 {archive.dir}/yyyy-MM.pack，
+ * 位置記錄在 attachment_archive_entries（見 AttachmentArchiveJdbcRepository），然後刪除原始檔案：
+ * - 附件路徑與 /identity-files/ 網址不變；案件資料夾中找不到時，由 FileService 依記錄的位置直接讀取封存檔的那一段
+ * - 封存檔只附加不改寫，寫入時以檔案鎖避免多節點同時附加；內容相同的附件只存一份
+ * - 封存目錄（預設 IdentityArchive）不可位於任何靜態資源目錄之下，否則整個月份的身分文件可被直接下載；
+ *   舊版預設的 IdentityResource/.archive 於啟動時搬到封存目錄
+ * - 依序為：附加並寫入磁碟 → 記錄位置 → 刪除原始檔案 → 標記案件已封存；中途失敗時下次重新處理該案件，
+ *   已記錄位置的檔案不會重複附加（未記錄的附加資料只是浪費空間，不影響讀取）
+ */
+@Service
+public class AttachmentArchiveService {
+
+    public static final String ARCHIVE_SUFFIX = ".pack";
+
+    // 舊版預設的封存目錄（位於 /identity-files/ 之下）
+    private static final String LEGACY_ARCHIVE_DIR = ".archive";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final AttachmentArchiveJdbcRepository attachmentArchiveJdbcRepository;
+    private final AttachmentBlobStore attachmentBlobStore;
+    private final Path uploadRoot;
+    private final Path archiveDir;
+    private final boolean enabled;
+    private final Duration closedFor;
+    private final int batchSize;
+    private final Clock clock;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    @Autowired
+    public AttachmentArchiveService(AttachmentArchiveJdbcRepository attachmentArchiveJdbcRepository,
+                                    AttachmentBlobStore attachmentBlobStore,
+                                    @Value("${attachment.upload.dir:IdentityResource}") String uploadDir,
+                                    @Value("${attachment.archive.dir:IdentityArchive}") String archiveDir,
+                                    @Value("${attachment.archive.enabled:true}") boolean enabled,
+                                    @Value("${attachment.archive.closed-days:365}") long closedDays,
+                                    @Value("${attachment.archive.batch-size:200}") int batchSize) {
+        this(attachmentArchiveJdbcRepository, attachmentBlobStore, Paths.get(uploadDir), Paths.get(archiveDir), enabled,
+                Duration.ofDays(closedDays), batchSize, Clock.systemDefaultZone());
+    }
+
+    public AttachmentArchiveService(AttachmentArchiveJdbcRepository attachmentArchiveJdbcRepository,
+                                    AttachmentBlobStore attachmentBlobStore,
+                                    Path uploadRoot, Path archiveDir, Duration closedFor, int batchSize,
+                                    Clock clock) {
+        this(attachmentArchiveJdbcRepository, attachmentBlobStore, uploadRoot, archiveDir, true, closedFor, batchSize, clock);
+    }
+
+    private AttachmentArchiveService(AttachmentArchiveJdbcRepository attachmentArchiveJdbcRepository,
+                                     AttachmentBlobStore attachmentBlobStore, Path uploadRoot, Path archiveDir, boolean enabled, Duration closedFor,
+                                     int batchSize, Clock clock) {
+        this.attachmentArchiveJdbcRepository = attachmentArchiveJdbcRepository;
+        this.attachmentBlobStore = attachmentBlobStore;
+        this.uploadRoot = uploadRoot;
+        this.archiveDir = archiveDir;
+        this.enabled = enabled;
+        this.closedFor = closedFor;
+        this.batchSize = batchSize;
+        this.clock = clock;
+    }
+
+    // ========== 讀取 ==========
+
+    /**
+     * 已封存附件的內容（直接讀取封存檔中的那一段，支援 Range 的跳躍讀取）
+     * @param attachmentPath {applicationId}/UUID_原始檔名
+     * @return 沒有封存記錄時為 null
+     */
+    public Resource openArchived(String attachmentPath) {
+        return attachmentArchiveJdbcRepository.find(attachmentPath)
+                .map(entry -> (Resource) new ArchivedAttachmentResource(archiveDir.resolve(entry.archiveFile()), entry))
+                .orElse(null);
+    }
+
+    /**
+     * 移除附件的封存記錄（封存檔中的資料不回收）
+     * @return true 如果附件原本已封存
+     */
+    public boolean remove(String attachmentPath) {
+        return attachmentArchiveJdbcRepository.delete(attachmentPath);
+    }
+
+    // ========== 封存 ==========
+
+    /**
+     * 將舊版預設目錄 {attachment.upload.dir}/.archive 中的封存檔搬到封存目錄（檔名不變，記錄的位置照常可用）
+     * 封存目錄已有同名檔案時保留兩邊不動並提示，需人工處理
+     * @return 搬移的封存檔數
+     */
+    @PostConstruct
+    public int moveLegacyArchive() {
+        Path legacyDir = uploadRoot.resolve(LEGACY_ARCHIVE_DIR).toAbsolutePath().normalize();
+        Path targetDir = archiveDir.toAbsolutePath().normalize();
+        if (targetDir.startsWith(uploadRoot.toAbsolutePath().normalize())) {
+            System.err.println("⚠️ 封存目錄位於 IdentityResource 之下，封存檔可能被直接下載: " + targetDir);
+        }
+        if (legacyDir.equals(targetDir) || !Files.isDirectory(legacyDir)) {
+            return 0;
+        }
+        int moved = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(legacyDir, "*" + ARCHIVE_SUFFIX)) {
+            Files.createDirectories(targetDir);
+            for (Path pack : stream) {
+                Path target = targetDir.resolve(pack.getFileName());
+                if (Files.exists(target)) {
+                    System.err.println("⚠️ 封存目錄已有同名封存檔，未搬移: " + pack);
+                    continue;
+                }
+                try {
+                    Files.move(pack, target);
+                    moved++;
+                } catch (NoSuchFileException e) {
+                    // 其他節點已搬移
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("❌ 搬移舊封存目錄失敗: " + legacyDir + ", " + e.getMessage());
+        }
+        if (moved > 0) {
+            System.out.println("📦 已將 " + moved + " 個封存檔由 " + legacyDir + " 搬到 " + targetDir);
+        }
+        return moved;
+    }
+
+    /**
+     * 每日凌晨封存已結案案件的附件（排在附件內容回收之後）
+     */
+    @Scheduled(cron = "0 0 4 * * *")
+    public void scheduledArchive() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            archiveClosedCases();
+        } catch (Exception e) {
+            System.err.println("❌ 封存已結案附件失敗: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 封存所有符合條件的案件，每次查詢 batchSize 件，直到沒有候選案件
+     * @return 封存的附件數
+     */
+    public int archiveClosedCases() {
+        if (!running.compareAndSet(false, true)) {
+            return 0;
+        }
+        try {
+            LocalDateTime closedBefore = now().minus(closedFor);
+            LocalDate admittedBefore = LocalDate.now(clock).withDayOfYear(1);
+            Set<UUID> failed = new HashSet<>();
+            int archived = 0;
+            int cases = 0;
+            while (true) {
+                List<ArchiveCandidate> candidates =
+                        attachmentArchiveJdbcRepository.findCandidates(closedBefore, admittedBefore, batchSize);
+                int attempted = 0;
+                for (ArchiveCandidate candidate : candidates) {
+                    if (failed.contains(candidate.applicationId())) {
+                        continue;
+                    }
+                    attempted++;
+                    try {
+                        archived += archiveCase(candidate);
+                        cases++;
+                    } catch (Exception e) {
+                        failed.add(candidate.applicationId());
+                        System.err.println("⚠️ 封存案件附件失敗，下次再試: " + candidate.applicationId()
+                                + ", " + e.getMessage());
+                    }
+                }
+                if (attempted == 0 || candidates.size() < batchSize) {
+                    break;
+                }
+            }
+            if (cases > 0) {
+                System.out.println("🗄️ 已封存 " + cases + " 件已結案案件，共 " + archived + " 個附件");
+            }
+            return archived;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * 封存一個案件的所有附件
+     * @return 封存的附件數
+     */
+    int archiveCase(ArchiveCandidate candidate) throws IOException {
+        UUID applicationId = candidate.applicationId();
+        Path folder = AttachmentStorageLayout.folder(uploadRoot, applicationId);
+        List<String> attachmentPaths = new ArrayList<>();
+        List<ArchivedAttachment> entries = new ArrayList<>();
+
+        List<Path> files = listFiles(folder);
+        if (!files.isEmpty()) {
+            String archiveFile = YearMonth.from(candidate.applicationDate()) + ARCHIVE_SUFFIX;
+            Files.createDirectories(archiveDir);
+            try (FileChannel pack = FileChannel.open(archiveDir.resolve(archiveFile),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                 FileLock ignored = pack.lock()) {
+                Map<String, ArchivedAttachment> written = new HashMap<>();
+                for (Path file : files) {
+                    String attachmentPath = applicationId + "/" + file.getFileName();
+                    if (attachmentArchiveJdbcRepository.find(attachmentPath).isEmpty()) {
+                        ArchivedAttachment entry = append(pack, archiveFile, attachmentPath, file, written);
+                        written.putIfAbsent(entry.sha256(), entry);
+                        entries.add(entry);
+                    }
+                    attachmentPaths.add(attachmentPath);
+                }
+                pack.force(true);
+            }
+            attachmentArchiveJdbcRepository.insertAll(applicationId, entries, now());
+        }
+
+        for (String attachmentPath : attachmentPaths) {
+            // 期間資料夾可能已搬到分散目錄（AttachmentShardMigrator），刪除時重新解析位置
+            Files.deleteIfExists(AttachmentStorageLayout.resolve(uploadRoot, attachmentPath));
+            try {
+                attachmentBlobStore.release(attachmentPath);
+            } catch (Exception e) {
+                System.err.println("⚠️ 移除附件內容參照失敗: " + attachmentPath + ", " + e.getMessage());
+            }
+        }
+        deleteIfEmpty(AttachmentStorageLayout.folder(uploadRoot, applicationId));
+        attachmentArchiveJdbcRepository.markCaseArchived(applicationId, now());
+        return attachmentPaths.size();
+    }
+
+    /**
+     * 把檔案附加到封存檔末端並計算 SHA-256；內容已在封存檔中時撤回這次附加，改為指向既有資料
+     * @param written 這一次已附加但尚未記錄到資料表的內容
+     */
+    private ArchivedAttachment append(FileChannel pack, String archiveFile, String attachmentPath, Path file,
+                                      Map<String, ArchivedAttachment> written) throws IOException {
+        long offset = pack.size();
+        MessageDigest digest = sha256Digest();
+        long length = 0;
+        pack.position(offset);
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            for (int n; (n = in.read(buffer)) > 0; ) {
+                digest.update(buffer, 0, n);
+                ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, n);
+                while (chunk.hasRemaining()) {
+                    pack.write(chunk);
+                }
+                length += n;
+            }
+        }
+        String sha256 = HexFormat.of().formatHex(digest.digest());
+        LocalDateTime lastModified = LocalDateTime.ofInstant(Files.getLastModifiedTime(file).toInstant(), ZoneOffset.UTC);
+
+        ArchivedAttachment same = written.get(sha256);
+        if (same == null || same.length() != length) {
+            same = attachmentArchiveJdbcRepository.findBySha256(sha256, length).orElse(null);
+        }
+        if (same != null) {
+            pack.truncate(offset);
+            return new ArchivedAttachment(attachmentPath, same.archiveFile(), same.offset(), length,
+                    lastModified, sha256);
+        }
+        return new ArchivedAttachment(attachmentPath, archiveFile, offset, length, lastModified, sha256);
+    }
+
+    private static List<Path> listFiles(Path folder) throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (!Files.isDirectory(folder)) {
+            return files;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder)) {
+            for (Path file : stream) {
+                if (Files.isRegularFile(file)) {
+                    files.add(file);
+                }
+            }
+        }
+        files.sort(null);
+        return files;
+    }
+
+    private static void deleteIfEmpty(Path folder) {
+        try {
+            Files.deleteIfExists(folder);
+        } catch (DirectoryNotEmptyException e) {
+            // 封存期間有新檔案寫入，保留資料夾
+        } catch (IOException e) {
+            System.err.println("⚠️ 刪除案件資料夾失敗: " + folder + ", " + e.getMessage());
+        }
+    }
+
+    private static MessageDigest sha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private LocalDateTime now() {
+        return LocalDateTime.now(clock);
+    }
+
+    /**
+     * 封存檔中的一段資料；getInputStream 直接跳到起始位置，skip 以移動位置實作（Range 請求不必讀過前面的資料）
+     */
+    public static class ArchivedAttachmentResource extends AbstractResource {
+
+        private final Path archive;
+        private final ArchivedAttachment entry;
+
+        public ArchivedAttachmentResource(Path archive, ArchivedAttachment entry) {
+            this.archive = archive;
+            this.entry = entry;
+        }
+
+        @Override
+        public boolean exists() {
+            return Files.isRegularFile(archive);
+        }
+
+        @Override
+        public long contentLength() {
+            return entry.length();
+        }
+
+        @Override
+        public long lastModified() {
+            return entry.lastModified().toInstant(ZoneOffset.UTC).toEpochMilli();
+        }
+
+        @Override
+        public String getFilename() {
+            String path = entry.attachmentPath();
+            return path.substring(path.lastIndexOf('/') + 1);
+        }
+
+        @Override
+        public String getDescription() {
+            return "archived attachment [" + entry.attachmentPath() + "] in [" + archive + "]";
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            FileChannel channel = FileChannel.open(archive, StandardOpenOption.READ);
+            channel.position(entry.offset());
+            return new SegmentInputStream(channel, entry.length());
+        }
+    }
+
+    /**
+     * 只讀取封存檔中 [目前位置, 目前位置 + remaining) 的 InputStream
+     */
+    private static class SegmentInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private long remaining;
+
+        SegmentInputStream(FileChannel channel, long length) {
+            this.channel = channel;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == 1 ? one[0] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, remaining)));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = Math.max(0, Math.min(n, remaining));
+            channel.position(channel.position() + skipped);
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(remaining, Integer.MAX_VALUE);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
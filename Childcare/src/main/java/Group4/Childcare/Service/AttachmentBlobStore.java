@@ -0,0 +1,295 @@
+package Group4.Childcare.Service;
+
+import Group4.Childcare.Repository.AttachmentBlobJdbcRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * 附件內容定址儲存：相同內容的附件在磁碟上只存一份
+ *
+ * 家長常把同一份戶口名簿、身分證掃描檔送到多間機構，每次送件都會在 IdentityResource/{applicationId}/
+ * 存下一份相同的檔案。這裡以 SHA-256 為鍵，把內容存成 {attachment.upload.dir}/.blobs/ab/cd/{sha256}，
+ * 案件資料夾中的 UUID_原始檔名 則是指向同一份內容的硬連結：
+ * - 既有路徑 {applicationId}/UUID_原始檔名 完全不變，/identity-files/** 與舊資料照常可讀
+ * - 參照計數記錄在 attachment_blobs / attachment_blob_refs，刪除附件時遞減
+ * - RefCount 歸零超過寬限期的內容，以及沒有資料表記錄的孤兒內容，由排程回收
+ *
+ * 檔案系統不支援硬連結時，附件維持一般檔案（仍可正常讀取，只是沒有去重複）。
+ */
+@Service
+public class AttachmentBlobStore {
+
+    public static final String BLOB_DIR = ".blobs";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int GC_BATCH_SIZE = 200;
+    private static final Pattern SHA256_HEX = Pattern.compile("[0-9a-f]{64}");
+
+    // 同一內容的連結與回收需依序進行；以 sha256 分散到固定數量的鎖
+    private static final int LOCK_STRIPES = 64;
+
+    private final AttachmentBlobJdbcRepository attachmentBlobJdbcRepository;
+    private final Path blobDir;
+    private final Duration gcGrace;
+    private final Clock clock;
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    @Autowired
+    public AttachmentBlobStore(AttachmentBlobJdbcRepository attachmentBlobJdbcRepository,
+                               @Value("${attachment.upload.dir:IdentityResource}") String uploadDir,
+                               @Value("${attachment.blob.gc-grace-hours:24}") long gcGraceHours) {
+        this(attachmentBlobJdbcRepository, Paths.get(uploadDir), Duration.ofHours(gcGraceHours),
+                Clock.systemDefaultZone());
+    }
+
+    public AttachmentBlobStore(AttachmentBlobJdbcRepository attachmentBlobJdbcRepository, Path uploadDir,
+                               Duration gcGrace, Clock clock) {
+        this.attachmentBlobJdbcRepository = attachmentBlobJdbcRepository;
+        this.blobDir = uploadDir.resolve(BLOB_DIR);
+        this.gcGrace = gcGrace;
+        this.clock = clock;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * 內容的儲存位置：.blobs/{前 2 碼}/{3~4 碼}/{sha256}
+     */
+    public Path blobPath(String sha256) {
+        if (sha256 == null || !SHA256_HEX.matcher(sha256).matches()) {
+            throw new IllegalArgumentException("sha256 必須為 64 碼小寫十六進位: " + sha256);
+        }
+        return blobDir.resolve(sha256.substring(0, 2)).resolve(sha256.substring(2, 4)).resolve(sha256);
+    }
+
+    /**
+     * 把剛寫入的附件併入內容定址儲存並記錄參照
+     *
+     * 內容已存在時，附件改為指向既有內容的硬連結（釋放這份重複的空間）；
+     * 否則把附件本身登記為該內容（.blobs 下建立硬連結，不複製資料）。
+     *
+     * @param attachmentPath 附件路徑 {applicationId}/UUID_原始檔名
+     * @param file 附件的實體檔案
+     * @param sha256 檔案內容的 SHA-256；為 null 時即時計算
+     * @return true 如果與既有內容共用同一份資料；檔案系統不支援硬連結時為 false 且不記錄參照
+     */
+    @Transactional
+    public boolean link(String attachmentPath, Path file, String sha256) throws IOException {
+        if (sha256 == null) {
+            sha256 = sha256Of(file);
+        }
+        Path blob = blobPath(sha256);
+        synchronized (lockFor(sha256)) {
+            long size = Files.size(file);
+            boolean shared;
+            if (Files.exists(blob) && Files.size(blob) == size) {
+                if (!Files.isSameFile(blob, file) && !replaceWithLink(file, blob)) {
+                    return false;
+                }
+                shared = true;
+            } else {
+                Files.createDirectories(blob.getParent());
+                Files.deleteIfExists(blob);
+                if (!createLink(blob, file)) {
+                    return false;
+                }
+                shared = false;
+            }
+            attachmentBlobJdbcRepository.addReference(attachmentPath, sha256, size, now());
+            if (shared) {
+                System.out.println("🔗 附件 " + attachmentPath + " 與既有內容相同，共用 " + sha256);
+            }
+            return shared;
+        }
+    }
+
+    /**
+     * 附件刪除後移除它的參照（沒有參照的舊附件不受影響）
+     */
+    @Transactional
+    public void release(String attachmentPath) {
+        attachmentBlobJdbcRepository.removeReference(attachmentPath, now());
+    }
+
+    /**
+     * 移除路徑前綴下所有附件的參照（例如刪除整個案件資料夾 {applicationId}/）
+     * @return 移除的參照數
+     */
+    @Transactional
+    public int releaseAll(String pathPrefix) {
+        return attachmentBlobJdbcRepository.removeReferencesUnder(pathPrefix, now());
+    }
+
+    /**
+     * 每日凌晨回收沒有參照的內容
+     */
+    @Scheduled(cron = "0 30 3 * * *")
+    public void scheduledCollect() {
+        try {
+            collectGarbage();
+        } catch (Exception e) {
+            System.err.println("❌ 回收附件內容失敗: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 回收沒有參照的內容：
+     * 1. RefCount 為 0 超過寬限期者，刪除資料表記錄與 .blobs 下的檔案
+     * 2. .blobs 下沒有資料表記錄、且修改時間早於寬限期的孤兒檔案（例如登記參照前節點當掉）
+     *
+     * 案件資料夾中的硬連結不受影響；只有已無任何附件指向的內容才會真正釋放空間。
+     * @return 刪除的內容檔案數
+     */
+    public int collectGarbage() throws IOException {
+        LocalDateTime cutoff = now().minus(gcGrace);
+        int removed = 0;
+        List<String> unreferenced;
+        do {
+            unreferenced = attachmentBlobJdbcRepository.findUnreferenced(cutoff, GC_BATCH_SIZE);
+            for (String sha256 : unreferenced) {
+                synchronized (lockFor(sha256)) {
+                    if (attachmentBlobJdbcRepository.deleteIfUnreferenced(sha256)
+                            && Files.deleteIfExists(blobPath(sha256))) {
+                        removed++;
+                    }
+                }
+            }
+        } while (unreferenced.size() >= GC_BATCH_SIZE);
+
+        removed += collectOrphans(clock.instant().minus(gcGrace));
+        if (removed > 0) {
+            System.out.println("🧹 已回收 " + removed + " 份沒有參照的附件內容");
+        }
+        return removed;
+    }
+
+    private int collectOrphans(Instant cutoff) throws IOException {
+        if (!Files.isDirectory(blobDir)) {
+            return 0;
+        }
+        List<Path> candidates = new ArrayList<>();
+        try (Stream<Path> files = Files.walk(blobDir, 3)) {
+            files.filter(Files::isRegularFile)
+                 .filter(p -> SHA256_HEX.matcher(p.getFileName().toString()).matches())
+                 .filter(p -> lastModifiedBefore(p, cutoff))
+                 .forEach(candidates::add);
+        }
+        int removed = 0;
+        for (int from = 0; from < candidates.size(); from += GC_BATCH_SIZE) {
+            List<Path> batch = candidates.subList(from, Math.min(from + GC_BATCH_SIZE, candidates.size()));
+            Set<String> names = new HashSet<>();
+            batch.forEach(p -> names.add(p.getFileName().toString()));
+            Set<String> known = new HashSet<>(attachmentBlobJdbcRepository.findKnown(names));
+            for (Path blob : batch) {
+                String sha256 = blob.getFileName().toString();
+                if (known.contains(sha256)) {
+                    continue;
+                }
+                synchronized (lockFor(sha256)) {
+                    if (attachmentBlobJdbcRepository.findKnown(List.of(sha256)).isEmpty()
+                            && Files.deleteIfExists(blob)) {
+                        removed++;
+                    }
+                }
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * 計算檔案的 SHA-256（小寫十六進位）
+     */
+    public static String sha256Of(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            for (int n; (n = in.read(buffer)) > 0; ) {
+                digest.update(buffer, 0, n);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * 以指向 blob 的硬連結取代 file（先建暫存連結再原子替換，過程中 file 始終可讀）
+     * @return false 如果檔案系統不支援硬連結，file 維持原樣
+     */
+    private static boolean replaceWithLink(Path file, Path blob) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".link");
+        if (!createLink(temp, blob)) {
+            return false;
+        }
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return true;
+    }
+
+    /**
+     * 建立硬連結 link → existing
+     * @return false 如果檔案系統不支援硬連結
+     */
+    private static boolean createLink(Path link, Path existing) throws IOException {
+        try {
+            Files.createLink(link, existing);
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            throw e;
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            System.err.println("⚠️ 無法建立硬連結，附件維持獨立檔案: " + existing + ", " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static boolean lastModifiedBefore(Path file, Instant cutoff) {
+        try {
+            return Files.getLastModifiedTime(file).toInstant().isBefore(cutoff);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private Object lockFor(String sha256) {
+        return locks[Math.floorMod(sha256.hashCode(), LOCK_STRIPES)];
+    }
+
+    private LocalDateTime now() {
+        return LocalDateTime.now(clock);
+    }
+}
@@ -0,0 +1,215 @@
+package Group4.Childcare.Service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 把舊的案件資料夾 IdentityResource/{ApplicationID}/ 搬到分散目錄 IdentityResource/ab/cd/{ApplicationID}/
+ * （見 AttachmentStorageLayout），不需停機
+ *
+ * - 每次排程最多搬 batch-size 個資料夾，每搬一個暫停 pause-millis，避免與送件搶磁碟 I/O
+ * - 同一檔案系統內以目錄改名搬移（原子操作），附件與 .blobs 的硬連結不需複製；讀取端先找分散目錄、再找舊資料夾
+ * - 最近 min-idle-minutes 內有變動的資料夾可能正在寫入，留待下次
+ * - 搬移後舊位置又被寫入（兩處都有資料夾）時，把舊位置的檔案併入分散目錄
+ * - 多節點共用儲存時可同時執行：資料夾已被其他節點搬走時直接略過
+ */
+@Service
+public class AttachmentShardMigrator {
+
+    private final Path root;
+    private final boolean enabled;
+    private final int batchSize;
+    private final long pauseMillis;
+    private final Duration minIdle;
+    private final Clock clock;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    @Autowired
+    public AttachmentShardMigrator(@Value("${attachment.upload.dir:IdentityResource}") String uploadDir,
+                                   @Value("${attachment.shard.migration.enabled:true}") boolean enabled,
+                                   @Value("${attachment.shard.migration.batch-size:500}") int batchSize,
+                                   @Value("${attachment.shard.migration.pause-millis:50}") long pauseMillis,
+                                   @Value("${attachment.shard.migration.min-idle-minutes:30}") long minIdleMinutes) {
+        this(Paths.get(uploadDir), enabled, batchSize, pauseMillis, Duration.ofMinutes(minIdleMinutes),
+                Clock.systemDefaultZone());
+    }
+
+    public AttachmentShardMigrator(Path root, int batchSize, long pauseMillis, Duration minIdle, Clock clock) {
+        this(root, true, batchSize, pauseMillis, minIdle, clock);
+    }
+
+    private AttachmentShardMigrator(Path root, boolean enabled, int batchSize, long pauseMillis,
+                                    Duration minIdle, Clock clock) {
+        this.root = root;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.pauseMillis = pauseMillis;
+        this.minIdle = minIdle;
+        this.clock = clock;
+    }
+
+    /**
+     * 每 5 分鐘搬移一批；舊資料夾都搬完後每次只列出根目錄一次
+     */
+    @Scheduled(cron = "0 */5 * * * *")
+    public void scheduledMigrate() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            migrateBatch();
+        } catch (Exception e) {
+            System.err.println("❌ 搬移案件資料夾失敗: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 搬移一批舊的案件資料夾
+     * @return 搬移（或併入）完成的資料夾數
+     */
+    public int migrateBatch() throws IOException {
+        if (!running.compareAndSet(false, true)) {
+            return 0;
+        }
+        try {
+            List<Path> legacyFolders = findLegacyFolders();
+            int migrated = 0;
+            for (Path legacy : legacyFolders) {
+                if (migrated > 0 && !pause()) {
+                    break;
+                }
+                try {
+                    if (migrate(legacy)) {
+                        migrated++;
+                    }
+                } catch (IOException e) {
+                    System.err.println("⚠️ 搬移案件資料夾失敗，下次再試: " + legacy + ", " + e.getMessage());
+                }
+            }
+            if (migrated > 0) {
+                System.out.println("📦 已將 " + migrated + " 個案件資料夾搬到分散目錄");
+            }
+            return migrated;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * 根目錄下閒置超過 minIdle 的舊案件資料夾（最多 batchSize 個）
+     */
+    private List<Path> findLegacyFolders() throws IOException {
+        List<Path> folders = new ArrayList<>();
+        if (!Files.isDirectory(root)) {
+            return folders;
+        }
+        Instant cutoff = clock.instant().minus(minIdle);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(root)) {
+            for (Path entry : stream) {
+                if (folders.size() >= batchSize) {
+                    break;
+                }
+                UUID applicationId = AttachmentStorageLayout.applicationIdOf(root, entry);
+                if (applicationId != null && Files.isDirectory(entry) && idleSince(entry, cutoff)) {
+                    folders.add(entry);
+                }
+            }
+        }
+        return folders;
+    }
+
+    /**
+     * @return true 如果舊資料夾已不存在（已搬移或已併入分散目錄）
+     */
+    private boolean migrate(Path legacy) throws IOException {
+        UUID applicationId = UUID.fromString(legacy.getFileName().toString());
+        Path target = AttachmentStorageLayout.shardedFolder(root, applicationId);
+        Files.createDirectories(target.getParent());
+        if (!Files.exists(target)) {
+            try {
+                Files.move(legacy, target, StandardCopyOption.ATOMIC_MOVE);
+                return true;
+            } catch (NoSuchFileException e) {
+                // 其他節點已搬走
+                return false;
+            } catch (FileAlreadyExistsException e) {
+                // 同時有新附件寫入分散目錄，改為合併
+            }
+        }
+        return merge(legacy, target);
+    }
+
+    /**
+     * 把舊資料夾中的檔案併入分散目錄；同名檔案（UUID_原始檔名 不會重複，只可能是同一份）保留分散目錄中的
+     */
+    private boolean merge(Path legacy, Path target) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(legacy)) {
+            stream.forEach(files::add);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        for (Path file : files) {
+            Path dest = target.resolve(file.getFileName().toString());
+            if (!Files.isRegularFile(file)) {
+                continue;
+            }
+            if (!Files.exists(dest)) {
+                Files.move(file, dest, StandardCopyOption.ATOMIC_MOVE);
+            } else if (Files.size(dest) == Files.size(file)) {
+                Files.delete(file);
+            } else {
+                System.err.println("⚠️ 分散目錄已有同名但內容不同的檔案，保留舊位置: " + file);
+            }
+        }
+        try {
+            Files.delete(legacy);
+            return true;
+        } catch (DirectoryNotEmptyException e) {
+            return false;
+        }
+    }
+
+    private static boolean idleSince(Path folder, Instant cutoff) {
+        try {
+            return Files.getLastModifiedTime(folder).toInstant().isBefore(cutoff);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return false 如果執行緒被中斷（應用程式關閉中），停止這一批
+     */
+    private boolean pause() {
+        if (pauseMillis <= 0) {
+            return true;
+        }
+        try {
+            Thread.sleep(pauseMillis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
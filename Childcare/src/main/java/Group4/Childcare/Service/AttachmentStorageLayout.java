@@ -0,0 +1,114 @@
+package Group4.Childcare.Service;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+
+/**
+ * 案件附件的實體目錄配置
+ *
+ * 案件資料夾放在 {attachment.upload.dir}/{ApplicationID 前 2 碼}/{3~4 碼}/{ApplicationID}/
+ * （與 .blobs 相同的兩層十六進位分散），避免 IdentityResource 根目錄累積數十萬個子目錄。
+ * - 附件路徑（資料庫與 /identity-files/ 網址）維持 {ApplicationID}/UUID_原始檔名，不含分散目錄
+ * - 舊的案件資料夾 {attachment.upload.dir}/{ApplicationID}/ 由 AttachmentShardMigrator 逐批搬移，
+ *   搬移完成前照常可讀寫：先找分散目錄，再找舊目錄
+ */
+public final class AttachmentStorageLayout {
+
+    private AttachmentStorageLayout() {
+    }
+
+    /**
+     * 分散目錄中的案件資料夾 {root}/ab/cd/{applicationId}
+     */
+    public static Path shardedFolder(Path root, UUID applicationId) {
+        String id = applicationId.toString();
+        return root.resolve(id.substring(0, 2)).resolve(id.substring(2, 4)).resolve(id);
+    }
+
+    /**
+     * 分散前的案件資料夾 {root}/{applicationId}
+     */
+    public static Path legacyFolder(Path root, UUID applicationId) {
+        return root.resolve(applicationId.toString());
+    }
+
+    /**
+     * 案件資料夾目前的位置：已在分散目錄 > 尚未搬移的舊資料夾 > 新資料夾建立在分散目錄
+     */
+    public static Path folder(Path root, UUID applicationId) {
+        Path sharded = shardedFolder(root, applicationId);
+        if (Files.isDirectory(sharded)) {
+            return sharded;
+        }
+        Path legacy = legacyFolder(root, applicationId);
+        return Files.isDirectory(legacy) ? legacy : sharded;
+    }
+
+    /**
+     * 附件路徑在分散目錄中的相對路徑
+     * @param attachmentPath {applicationId}/UUID_原始檔名
+     * @return ab/cd/{applicationId}/UUID_原始檔名；不是案件附件路徑時為 null
+     */
+    public static String shardedPath(String attachmentPath) {
+        int slash = attachmentPath.indexOf('/');
+        if (slash != 36 || attachmentPath.indexOf('/', slash + 1) >= 0) {
+            return null;
+        }
+        UUID applicationId = parseUuid(attachmentPath.substring(0, slash));
+        if (applicationId == null) {
+            return null;
+        }
+        String id = applicationId.toString();
+        return id.substring(0, 2) + "/" + id.substring(2, 4) + "/" + id + attachmentPath.substring(slash);
+    }
+
+    /**
+     * 附件的實體檔案：分散目錄中有此檔案時用分散目錄，否則用舊資料夾
+     * @param attachmentPath {applicationId}/UUID_原始檔名
+     */
+    public static Path resolve(Path root, String attachmentPath) {
+        String sharded = shardedPath(attachmentPath);
+        if (sharded != null) {
+            Path file = root.resolve(sharded);
+            if (Files.exists(file)) {
+                return file;
+            }
+        }
+        return root.resolve(attachmentPath);
+    }
+
+    /**
+     * 路徑是否為案件資料夾（舊位置或分散目錄）
+     * @param root 絕對路徑
+     * @param folder 絕對路徑
+     * @return 案件ID；不是案件資料夾時為 null
+     */
+    public static UUID applicationIdOf(Path root, Path folder) {
+        Path parent = folder.getParent();
+        Path name = folder.getFileName();
+        if (parent == null || name == null) {
+            return null;
+        }
+        UUID applicationId = parseUuid(name.toString());
+        if (applicationId == null) {
+            return null;
+        }
+        if (parent.equals(root) || folder.equals(shardedFolder(root, applicationId))) {
+            return applicationId;
+        }
+        return null;
+    }
+
+    private static UUID parseUuid(String value) {
+        if (value.length() != 36) {
+            return null;
+        }
+        try {
+            UUID uuid = UUID.fromString(value);
+            return uuid.toString().equalsIgnoreCase(value) ? uuid : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package Group4.Childcare.Service;
+
+import Group4.Childcare.Repository.CaseNumberBlockJdbcRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.LocalDate;
+
+/**
+ * 案件編號配置（YYYYMMDD + 4 位流水號，每日重新起算）
+ *
+ * 每個節點向 case_number_blocks 一次保留 blockSize 個流水號，之後在記憶體中依序發號，
+ * 區段用完或換日才再回資料庫保留下一段。不同節點保留的區段互不重疊，因此同時送件也不會重複；
+ * 節點重啟時未用完的流水號捨棄（編號可能跳號，但不會重複）。
+ *
+ * 取代每次送件都 COUNT(*) 全部案件再加一（成本隨資料量成長，且同時送件會取得相同編號）。
+ */
+@Service
+public class CaseNumberAllocator {
+
+    private final CaseNumberBlockJdbcRepository caseNumberBlockJdbcRepository;
+    private final int blockSize;
+    private final Clock clock;
+
+    // 目前區段：blockDay 當日的 (nextSerial - 1, lastSerial]
+    private LocalDate blockDay;
+    private long nextSerial;
+    private long lastSerial;
+
+    @Autowired
+    public CaseNumberAllocator(CaseNumberBlockJdbcRepository caseNumberBlockJdbcRepository,
+                               @Value("${applications.case-number.block-size:20}") int blockSize) {
+        this(caseNumberBlockJdbcRepository, blockSize, Clock.systemDefaultZone());
+    }
+
+    public CaseNumberAllocator(CaseNumberBlockJdbcRepository caseNumberBlockJdbcRepository, int blockSize, Clock clock) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("區段大小必須大於 0");
+        }
+        this.caseNumberBlockJdbcRepository = caseNumberBlockJdbcRepository;
+        this.blockSize = blockSize;
+        this.clock = clock;
+    }
+
+    /**
+     * 取得下一個案件編號
+     * @throws IllegalStateException 當日流水號已用盡（超過 9999）或無法保留區段時
+     */
+    public synchronized long next() {
+        LocalDate today = LocalDate.now(clock);
+        if (!today.equals(blockDay) || nextSerial > lastSerial) {
+            reserve(today);
+        }
+        return CaseNumberBlockJdbcRepository.caseNumberBase(today) + nextSerial++;
+    }
+
+    private void reserve(LocalDate today) {
+        long hi = caseNumberBlockJdbcRepository.reserveBlock(today, blockSize);
+        long lo = hi - blockSize + 1;
+        long maxSerial = CaseNumberBlockJdbcRepository.SERIALS_PER_DAY - 1;
+        if (lo > maxSerial) {
+            throw new IllegalStateException("當日案件編號已用盡: " + today);
+        }
+        blockDay = today;
+        nextSerial = lo;
+        lastSerial = Math.min(hi, maxSerial);
+        System.out.println("🔢 保留案件編號區段: " + today + " 流水號 " + lo + " ~ " + lastSerial);
+    }
+}
@@ -0,0 +1,174 @@
+package Group4.Childcare.Service;
+
+import Group4.Childcare.Repository.ClassSeatLedger;
+import Group4.Childcare.Repository.ClassSeatLedger.SeatCounts;
+import Group4.Childcare.Repository.ClassesJdbcRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 班級座位容量
+ *
+ * - 佔用／釋出座位透過 ClassSeatLedger 的條件式 UPDATE（OUTPUT 取回更新後人數），不會超收或扣成負數
+ * - 每個班級的人數快取在記憶體中（ConcurrentHashMap 依 ClassID 分段鎖定，同一班級同時只有一個執行緒回資料庫載入），
+ *   提供 /classes/{classId}/is-full 快速查詢；本服務的寫入於交易提交後直接更新快取，
+ *   到期撤銷釋出座位後由 AdmissionHoldService 呼叫 invalidate，其他路徑（抽籤、遞補）寫入後最多 cacheTtlMillis 反映
+ * - 每日依已錄取幼兒重新計算各班人數，校正人工修改或舊資料造成的誤差
+ *
+ * 快取只用於顯示與預先判斷；是否真的有座位一律以資料庫的條件式 UPDATE 為準。
+ */
+@Service
+public class ClassCapacityService {
+
+    private record CachedCounts(SeatCounts counts, long loadedAt) {
+    }
+
+    private final ClassesJdbcRepository classesJdbcRepository;
+    private final WaitlistPromotionService waitlistPromotionService;
+    private final long cacheTtlMillis;
+    private final ConcurrentHashMap<UUID, CachedCounts> cache = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ClassCapacityService(ClassesJdbcRepository classesJdbcRepository,
+                                WaitlistPromotionService waitlistPromotionService,
+                                @Value("${classes.capacity.cache-ttl-ms:5000}") long cacheTtlMillis) {
+        this.classesJdbcRepository = classesJdbcRepository;
+        this.waitlistPromotionService = waitlistPromotionService;
+        this.cacheTtlMillis = cacheTtlMillis;
+    }
+
+    /**
+     * 佔用一個座位
+     * @return true 如果成功佔用；已滿、未設定容量或查無班級時回傳 false
+     */
+    public boolean reserve(UUID classId) {
+        SeatCounts counts = classesJdbcRepository.reserveSeat(classId);
+        if (counts == null) {
+            // 佔用失敗代表快取可能過時，下次查詢重新載入
+            cache.remove(classId);
+            return false;
+        }
+        remember(classId, counts);
+        return true;
+    }
+
+    /**
+     * 釋出一個座位（不低於 0）
+     * @return true 如果班級存在
+     */
+    public boolean release(UUID classId) {
+        SeatCounts counts = classesJdbcRepository.releaseSeat(classId);
+        if (counts == null) {
+            cache.remove(classId);
+            return false;
+        }
+        remember(classId, counts);
+        return true;
+    }
+
+    /**
+     * 移除班級的快取人數（其他路徑已提交座位異動時呼叫，下次查詢重新載入）
+     */
+    public void invalidate(UUID classId) {
+        cache.remove(classId);
+    }
+
+    /**
+     * 班級是否已滿（優先使用快取；查無班級或查詢失敗時保守視為已滿）
+     */
+    public boolean isFull(UUID classId) {
+        SeatCounts counts;
+        try {
+            counts = currentCounts(classId);
+        } catch (Exception e) {
+            System.err.println("❌ 查詢班級人數失敗: ClassID=" + classId + ", " + e.getMessage());
+            return true;
+        }
+        return counts == null || counts.isFull();
+    }
+
+    /**
+     * 取得班級目前人數與容量（快取逾時才回資料庫載入）
+     * @return 查無班級時回傳 null
+     */
+    public SeatCounts currentCounts(UUID classId) {
+        long now = System.currentTimeMillis();
+        CachedCounts cached = cache.get(classId);
+        if (cached != null && now - cached.loadedAt() <= cacheTtlMillis) {
+            return cached.counts();
+        }
+        CachedCounts loaded = cache.compute(classId, (id, current) -> {
+            if (current != null && now - current.loadedAt() <= cacheTtlMillis) {
+                return current;
+            }
+            SeatCounts counts = classesJdbcRepository.findSeatCounts(id);
+            return counts != null ? new CachedCounts(counts, System.currentTimeMillis()) : null;
+        });
+        return loaded != null ? loaded.counts() : null;
+    }
+
+    /**
+     * 每日凌晨 3:00 依已錄取幼兒重新計算各班人數
+     */
+    @Scheduled(cron = "0 0 3 * * *")
+    public void scheduledReconcile() {
+        try {
+            reconcile();
+        } catch (Exception e) {
+            System.err.println("❌ 班級人數對帳失敗: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 依已錄取幼兒重新計算各班人數；人數減少且仍有空位的班級通知候補遞補
+     * @return 被校正的班級數
+     */
+    public int reconcile() {
+        List<Map<String, Object>> corrected = classesJdbcRepository.reconcileCurrentStudents();
+        cache.clear();
+        for (Map<String, Object> row : corrected) {
+            UUID classId = UUID.fromString(row.get("ClassID").toString());
+            Object previous = row.get("PreviousStudents");
+            SeatCounts counts = ClassSeatLedger.toSeatCounts(row);
+            System.out.println("🧮 班級人數校正: ClassID=" + classId + ", " + previous + " → " + counts.currentStudents());
+
+            boolean decreased = previous != null && ((Number) previous).intValue() > counts.currentStudents();
+            if (decreased && !counts.isFull()) {
+                waitlistPromotionService.seatFreed(classId);
+            }
+        }
+        if (!corrected.isEmpty()) {
+            System.out.println("🧮 班級人數對帳完成，校正 " + corrected.size() + " 個班級");
+        }
+        return corrected.size();
+    }
+
+    /**
+     * 交易提交後以 OUTPUT 取回的人數更新快取；回滾時移除快取
+     */
+    private void remember(UUID classId, SeatCounts counts) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_COMMITTED) {
+                        cache.put(classId, new CachedCounts(counts, System.currentTimeMillis()));
+                    } else {
+                        cache.remove(classId);
+                    }
+                }
+            });
+        } else {
+            cache.put(classId, new CachedCounts(counts, System.currentTimeMillis()));
+        }
+    }
+}
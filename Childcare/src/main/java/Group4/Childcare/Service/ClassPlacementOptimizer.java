@@ -0,0 +1,164 @@
+package Group4.Childcare.Service;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 班級分配（正取者 → 年齡相符的班級座位）
+ *
+ * 原本的作法（firstFit）依抽籤順序把每位正取者放進第一個有空位的班級，
+ * 先抽到的人可能佔走後面的人唯一能進的班級，而年齡重疊的另一班卻空著。
+ *
+ * optimal 改以依抽籤順序的字典序最大二分匹配分配：
+ * - 依抽籤順序逐一加入，先直接找空位（與 firstFit 相同），找不到時沿增廣路徑
+ *   把已分配者調到其他年齡相符的班級，騰出座位
+ * - 已分配者只會換班、不會被擠掉，因此不違反抽籤順序；
+ *   在此前提下分配人數為最大（正取者集合構成橫截擬陣，依序貪婪即為最佳）
+ * - 每位申請人的增廣搜尋每個班級最多走訪一次；搜尋失敗時走訪過的班級之後也不可能再騰出座位，
+ *   標記為已飽和並略過，座位遠少於申請人時不會重複搜尋
+ */
+public final class ClassPlacementOptimizer {
+
+    private final LotteryEngine.AgeBandIndex index;
+
+    public ClassPlacementOptimizer(List<LotteryEngine.ClassSlot> classes) {
+        this.index = new LotteryEngine.AgeBandIndex(classes);
+    }
+
+    /**
+     * 依順序以最佳匹配分配班級
+     * @param order 申請人索引（依抽籤順序）
+     * @param ages 各申請人月齡（-1 代表無出生日期）
+     * @return classOf[i] = 班級索引（對應建構時的 classes），未分配為 -1
+     */
+    public int[] placeOptimal(int[] order, int[] ages) {
+        int[] classOf = new int[ages.length];
+        int[] remaining = new int[index.classCount()];
+        optimal(order, order.length, ages, index, remaining, classOf, new Scratch(index.classCount()));
+        return classOf;
+    }
+
+    /**
+     * 依順序放入第一個有空位的班級（原本的作法，供比較用）
+     */
+    public int[] placeFirstFit(int[] order, int[] ages) {
+        int[] classOf = new int[ages.length];
+        int[] remaining = new int[index.classCount()];
+        firstFit(order, order.length, ages, index, remaining, classOf);
+        return classOf;
+    }
+
+    static void firstFit(int[] order, int count, int[] ages, LotteryEngine.AgeBandIndex index,
+                         int[] remaining, int[] classOf) {
+        index.resetRemaining(remaining);
+        Arrays.fill(classOf, -1);
+        for (int k = 0; k < count; k++) {
+            int i = order[k];
+            if (ages[i] < 0) {
+                continue;
+            }
+            for (int c : index.classesFor(ages[i])) {
+                if (remaining[c] > 0) {
+                    remaining[c]--;
+                    classOf[i] = c;
+                    break;
+                }
+            }
+        }
+    }
+
+    static void optimal(int[] order, int count, int[] ages, LotteryEngine.AgeBandIndex index,
+                        int[] remaining, int[] classOf, Scratch scratch) {
+        index.resetRemaining(remaining);
+        Arrays.fill(classOf, -1);
+        scratch.reset(remaining, ages, index, classOf);
+        for (int k = 0; k < count; k++) {
+            int i = order[k];
+            if (ages[i] < 0 || !index.hasBand(ages[i])) {
+                continue;
+            }
+            scratch.stamp++;
+            if (!scratch.augment(i)) {
+                scratch.markSaturated();
+            }
+        }
+    }
+
+    /**
+     * 增廣搜尋用的暫存資料（可重複使用）
+     */
+    static final class Scratch {
+        // members[c][0..memberCount[c]) = 目前分配在班級 c 的申請人
+        final int[][] members;
+        final int[] memberCount;
+        final int[] visited;
+        // 已飽和：增廣搜尋曾失敗時走訪到的班級，之後的搜尋直接略過
+        final boolean[] saturated;
+        int stamp;
+
+        private int[] remaining;
+        private int[] ages;
+        private int[] classOf;
+        private LotteryEngine.AgeBandIndex index;
+
+        Scratch(int classCount) {
+            members = new int[classCount][];
+            memberCount = new int[classCount];
+            visited = new int[classCount];
+            saturated = new boolean[classCount];
+        }
+
+        void reset(int[] remaining, int[] ages, LotteryEngine.AgeBandIndex index, int[] classOf) {
+            this.remaining = remaining;
+            this.ages = ages;
+            this.index = index;
+            this.classOf = classOf;
+            for (int c = 0; c < members.length; c++) {
+                if (members[c] == null || members[c].length < remaining[c]) {
+                    members[c] = new int[remaining[c]];
+                }
+                memberCount[c] = 0;
+                saturated[c] = false;
+            }
+        }
+
+        void markSaturated() {
+            for (int c = 0; c < visited.length; c++) {
+                if (visited[c] == stamp) {
+                    saturated[c] = true;
+                }
+            }
+        }
+
+        /**
+         * 為申請人 i 找座位：先找空位，再嘗試把已分配者調到其他班級
+         */
+        boolean augment(int i) {
+            int[] candidates = index.classesFor(ages[i]);
+            for (int c : candidates) {
+                if (visited[c] != stamp && !saturated[c] && remaining[c] > 0) {
+                    remaining[c]--;
+                    members[c][memberCount[c]++] = i;
+                    classOf[i] = c;
+                    return true;
+                }
+            }
+            for (int c : candidates) {
+                if (visited[c] == stamp || saturated[c]) {
+                    continue;
+                }
+                visited[c] = stamp;
+                for (int p = 0; p < memberCount[c]; p++) {
+                    int j = members[c][p];
+                    if (augment(j)) {
+                        // j 已換到其他班級，由 i 接手 j 在班級 c 的座位
+                        members[c][p] = i;
+                        classOf[i] = c;
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+}
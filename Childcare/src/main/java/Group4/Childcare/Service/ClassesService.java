@@ -12,8 +12,18 @@ import java.util.UUID;
 
 @Service
 public class ClassesService {
+    private final ClassesJdbcRepository repository;
+    private final WaitlistPromotionService waitlistPromotionService;
+    private final ClassCapacityService classCapacityService;
+
     @Autowired
-    private ClassesJdbcRepository repository;
+    public ClassesService(ClassesJdbcRepository repository,
+                          WaitlistPromotionService waitlistPromotionService,
+                          ClassCapacityService classCapacityService) {
+        this.repository = repository;
+        this.waitlistPromotionService = waitlistPromotionService;
+        this.classCapacityService = classCapacityService;
+    }
 
     /**
      * 新增一筆班級資料
@@ -180,7 +190,12 @@ public class ClassesService {
      * @return 是否成功
      */
     public boolean decrementCurrentStudents(UUID classId) {
-        return repository.decrementCurrentStudents(classId);
+        boolean success = classCapacityService.release(classId);
+        // 空出座位時自動遞補候補者
+        if (success) {
+            waitlistPromotionService.seatFreed(classId);
+        }
+        return success;
     }
 
     /**
@@ -189,6 +204,6 @@ public class ClassesService {
      * @return 是否已滿
      */
     public boolean isClassFull(UUID classId) {
-        return repository.isClassFull(classId);
+        return classCapacityService.isFull(classId);
     }
 }
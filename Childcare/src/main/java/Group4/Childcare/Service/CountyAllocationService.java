@@ -0,0 +1,146 @@
+package Group4.Childcare.Service;
+
+import Group4.Childcare.DTO.LotteryResult;
+import Group4.Childcare.Model.Institutions;
+import Group4.Childcare.Repository.InstitutionsJdbcRepository;
+import Group4.Childcare.Repository.WaitlistJdbcRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.random.RandomGenerator;
+
+/**
+ * 全縣市聯合分發（見 DeferredAcceptanceAllocator）
+ *
+ * - 取得所有啟用中機構的抽籤鎖（任一機構正在抽籤即失敗），讀取各機構快照
+ * - 幼兒的志願順序：同一 NationalID 的候補中申請依申請日期、案件編號排序，較早者為較優先志願
+ * - 在記憶體內一次完成分發，再依機構以 LotteryService.applyOutcome 批次寫回，全部在同一交易內
+ */
+@Service
+public class CountyAllocationService {
+
+    private final LotteryService lotteryService;
+    private final WaitlistJdbcRepository waitlistJdbcRepository;
+    private final InstitutionsJdbcRepository institutionsJdbcRepository;
+    private final WaitlistRankIndexService waitlistRankIndexService;
+
+    @Autowired
+    public CountyAllocationService(LotteryService lotteryService,
+                                   WaitlistJdbcRepository waitlistJdbcRepository,
+                                   InstitutionsJdbcRepository institutionsJdbcRepository,
+                                   WaitlistRankIndexService waitlistRankIndexService) {
+        this.lotteryService = lotteryService;
+        this.waitlistJdbcRepository = waitlistJdbcRepository;
+        this.institutionsJdbcRepository = institutionsJdbcRepository;
+        this.waitlistRankIndexService = waitlistRankIndexService;
+    }
+
+    /**
+     * 聯合分發結果
+     * @param results 各機構寫回結果（依機構），InstitutionID 對應 institutionIds
+     * @param allocationMillis 記憶體內分發耗時（不含讀取與寫回）
+     */
+    public record CountyAllocationResult(int institutions, int applications, int children, int admittedChildren,
+                                         int released, int proposals, long allocationMillis,
+                                         List<UUID> institutionIds, List<LotteryResult> results) {
+    }
+
+    @Transactional
+    public CountyAllocationResult allocate() {
+        return allocate(new SplittableRandom());
+    }
+
+    /**
+     * 執行聯合分發並寫回資料庫（可指定亂數來源，便於重現結果）
+     */
+    @Transactional
+    public CountyAllocationResult allocate(RandomGenerator random) {
+        List<UUID> institutionIds = new ArrayList<>();
+        List<LotteryService.LoadedSnapshot> loadedList = new ArrayList<>();
+        for (Institutions institution : institutionsJdbcRepository.findAllActive()) {
+            UUID institutionId = institution.getInstitutionID();
+            if (!waitlistJdbcRepository.tryAcquireLotteryLock(institutionId)) {
+                throw new IllegalStateException("機構 " + institutionId + " 正在進行抽籤，請稍後再試");
+            }
+            LotteryService.LoadedSnapshot loaded = lotteryService.loadSnapshot(institutionId);
+            if (!loaded.snapshot().applicants().isEmpty()) {
+                institutionIds.add(institutionId);
+                loadedList.add(loaded);
+            }
+        }
+
+        List<DeferredAcceptanceAllocator.Site> sites = new ArrayList<>(loadedList.size());
+        List<int[]> ranks = preferenceRanks(loadedList);
+        int applications = 0;
+        for (int s = 0; s < loadedList.size(); s++) {
+            sites.add(new DeferredAcceptanceAllocator.Site(institutionIds.get(s), loadedList.get(s).snapshot(), ranks.get(s)));
+            applications += ranks.get(s).length;
+        }
+
+        long start = System.nanoTime();
+        DeferredAcceptanceAllocator.Allocation allocation = new DeferredAcceptanceAllocator(random).allocate(sites);
+        long allocationMillis = (System.nanoTime() - start) / 1_000_000;
+        System.out.println("🎯 聯合分發：機構 " + sites.size() + " 間、申請 " + applications + " 件、幼兒 "
+                + allocation.children() + " 位，錄取 " + allocation.admittedChildren() + " 位，耗時 " + allocationMillis + " ms");
+
+        List<LotteryResult> results = new ArrayList<>(sites.size());
+        for (int s = 0; s < sites.size(); s++) {
+            UUID institutionId = institutionIds.get(s);
+            results.add(lotteryService.applyOutcome(loadedList.get(s), allocation.outcomes().get(s)));
+            waitlistJdbcRepository.syncRankSequence(institutionId);
+            waitlistRankIndexService.invalidate(institutionId);
+        }
+
+        return new CountyAllocationResult(sites.size(), applications, allocation.children(),
+                allocation.admittedChildren(), allocation.released(), allocation.proposals(), allocationMillis,
+                institutionIds, results);
+    }
+
+    /**
+     * 依 NationalID 將所有機構的申請分組，按申請日期、案件編號排出志願順位（1 = 第一志願）
+     * @return 各機構的 preferenceRanks，索引對應 loadedList 與各快照的 applicants
+     */
+    static List<int[]> preferenceRanks(List<LotteryService.LoadedSnapshot> loadedList) {
+        Map<String, List<int[]>> byChild = new HashMap<>();
+        List<int[]> ranks = new ArrayList<>(loadedList.size());
+        for (int s = 0; s < loadedList.size(); s++) {
+            List<Map<String, Object>> rows = loadedList.get(s).rows();
+            ranks.add(new int[rows.size()]);
+            for (int i = 0; i < rows.size(); i++) {
+                Object nationalId = rows.get(i).get("NationalID");
+                String key = nationalId != null ? nationalId.toString() : "#" + s + ":" + i;
+                byChild.computeIfAbsent(key, k -> new ArrayList<>(2)).add(new int[]{s, i});
+            }
+        }
+
+        Comparator<int[]> order = Comparator
+                .comparing((int[] a) -> LotteryService.toLocalDate(loadedList.get(a[0]).rows().get(a[1]).get("ApplicationDate")),
+                        Comparator.nullsLast(Comparator.<LocalDate>naturalOrder()))
+                .thenComparing(a -> caseNumber(loadedList.get(a[0]).rows().get(a[1])),
+                        Comparator.nullsLast(Comparator.<Long>naturalOrder()));
+        for (List<int[]> applications : byChild.values()) {
+            if (applications.size() > 1) {
+                applications.sort(order);
+            }
+            for (int k = 0; k < applications.size(); k++) {
+                int[] a = applications.get(k);
+                ranks.get(a[0])[a[1]] = k + 1;
+            }
+        }
+        return ranks;
+    }
+
+    private static Long caseNumber(Map<String, Object> row) {
+        Object value = row.get("CaseNumber");
+        return value instanceof Number ? ((Number) value).longValue() : null;
+    }
+}
@@ -0,0 +1,55 @@
+package Group4.Childcare.Service;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+
+/**
+ * 量測資料庫連線池的負載
+ *
+ * 讀取 Hikari 連線池的統計（HikariPoolMXBean）中正在等待連線的執行緒數，不向連線池借用連線，
+ * 連線池滿載時量測本身不會再多排一個等待者。供 SubmissionWaitingRoom 調整放行速度。
+ * 資料來源不是 Hikari 連線池時無法量測，一律回報 0（放行速度只受上下限限制）。
+ */
+@Service
+public class DataSourceWaitProbe {
+
+    private final HikariDataSource hikariDataSource;
+
+    @Autowired
+    public DataSourceWaitProbe(DataSource dataSource) {
+        this.hikariDataSource = unwrapHikari(dataSource);
+        if (hikariDataSource == null) {
+            System.err.println("⚠️ 資料來源不是 Hikari 連線池，送件等候室無法依連線池負載調整放行速度");
+        }
+    }
+
+    /**
+     * 目前等待取得連線的執行緒數；連線池尚未啟動或無法量測時為 0
+     */
+    public int samplePendingConnections() {
+        if (hikariDataSource == null) {
+            return 0;
+        }
+        HikariPoolMXBean pool = hikariDataSource.getHikariPoolMXBean();
+        return pool != null ? pool.getThreadsAwaitingConnection() : 0;
+    }
+
+    private static HikariDataSource unwrapHikari(DataSource dataSource) {
+        if (dataSource instanceof HikariDataSource hikari) {
+            return hikari;
+        }
+        try {
+            // 外層可能是 Spring 的代理（例如 LazyConnectionDataSourceProxy）
+            return dataSource != null && dataSource.isWrapperFor(HikariDataSource.class)
+                    ? dataSource.unwrap(HikariDataSource.class)
+                    : null;
+        } catch (SQLException e) {
+            return null;
+        }
+    }
+}
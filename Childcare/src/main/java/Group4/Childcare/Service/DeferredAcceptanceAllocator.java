@@ -0,0 +1,398 @@
+package Group4.Childcare.Service;
+
+import Group4.Childcare.Repository.WaitlistRankKeys;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.random.RandomGenerator;
+
+/**
+ * 全縣市聯合分發（延遲接受，Gale–Shapley，幼兒提出申請）
+ *
+ * 各機構獨立抽籤時，同一幼兒（最多 2 件處理中申請）可能同時被兩間機構錄取，佔住一個名額直到人工撤銷。
+ * 聯合分發將所有機構一起處理：
+ * 1. 每間機構洗牌一次，得到每位申請人的籤號（整個分發過程固定不變）
+ * 2. 尚未被暫時錄取的幼兒依志願順序向下一間機構提出申請
+ * 3. 機構把「目前暫時錄取者 + 新申請者」以與 LotteryEngine 相同的三階段規則（法定名額、序位遞延、
+ *    依籤號取正取、ClassPlacementOptimizer 分班）重新挑選，未入選者退回，繼續向下一志願申請
+ * 4. 沒有人被退回時結束：每個 NationalID 最多錄取一間機構
+ *
+ * 結果：
+ * - 暫時錄取者即為錄取
+ * - 已錄取幼兒志願較後的申請改為已撤銷（釋出候補位置），志願較前的申請保留候補
+ * - 其餘申請人依籤號順序重新編排 CurrentOrder（以 WaitlistRankKeys.RANK_STEP 間隔）
+ *
+ * 幼兒以 NationalID、機構以陣列索引（由 InstitutionID 對應）建立記憶體索引，只操作原始型別陣列，
+ * 每位幼兒最多提出志願數次申請。
+ */
+public final class DeferredAcceptanceAllocator {
+
+    public static final String STATUS_RELEASED = "已撤銷";
+    public static final String REASON_RELEASED = "已錄取較優先志願";
+
+    private static final String[] TIER_LABELS = {"", "第一序位正取", "第二序位正取", "第三序位正取"};
+
+    private final RandomGenerator random;
+
+    /**
+     * @param random 亂數來源（測試時可傳入固定種子，例如 new SplittableRandom(42)）
+     */
+    public DeferredAcceptanceAllocator(RandomGenerator random) {
+        this.random = random;
+    }
+
+    /**
+     * 參與聯合分發的機構
+     * @param snapshot 與單一機構抽籤相同的快照
+     * @param preferenceRanks preferenceRanks[i] = 申請人 i 這件申請在該幼兒志願中的順位（1 = 第一志願）
+     */
+    public record Site(UUID institutionId, LotteryEngine.Snapshot snapshot, int[] preferenceRanks) {
+    }
+
+    /**
+     * 分發結果
+     * @param outcomes 各機構結果，索引對應輸入的 sites；已撤銷的申請列在 waitlist（CurrentOrder 為 null）
+     * @param children 參與分發的幼兒數（依 NationalID）
+     * @param admittedChildren 錄取的幼兒數
+     * @param released 因錄取較優先志願而撤銷的申請數
+     * @param proposals 分發過程中提出的申請次數
+     */
+    public record Allocation(List<LotteryEngine.Outcome> outcomes, int children, int admittedChildren,
+                             int released, int proposals) {
+    }
+
+    /**
+     * 執行聯合分發
+     */
+    public Allocation allocate(List<Site> sites) {
+        int siteCount = sites.size();
+        SiteState[] states = new SiteState[siteCount];
+        int[] offsets = new int[siteCount + 1];
+        for (int s = 0; s < siteCount; s++) {
+            states[s] = new SiteState(sites.get(s).snapshot(), random);
+            offsets[s + 1] = offsets[s] + states[s].n;
+        }
+        int total = offsets[siteCount];
+
+        // === NationalID → 幼兒索引，幼兒 → 依志願排序的申請（全域索引 = offsets[site] + 申請人索引） ===
+        Map<String, Integer> childIndex = new HashMap<>();
+        int[] childOf = new int[total];
+        int[] applicationCount = new int[total];
+        for (int s = 0; s < siteCount; s++) {
+            List<LotteryEngine.Applicant> applicants = sites.get(s).snapshot().applicants();
+            for (int i = 0; i < applicants.size(); i++) {
+                String nationalId = applicants.get(i).nationalId();
+                // 無身分證字號者各自視為獨立幼兒
+                String key = nationalId != null ? nationalId : "#" + (offsets[s] + i);
+                Integer c = childIndex.get(key);
+                if (c == null) {
+                    c = childIndex.size();
+                    childIndex.put(key, c);
+                }
+                childOf[offsets[s] + i] = c;
+                applicationCount[c]++;
+            }
+        }
+        int childCount = childIndex.size();
+        int[][] preferences = new int[childCount][];
+        for (int c = 0; c < childCount; c++) {
+            preferences[c] = new int[applicationCount[c]];
+            applicationCount[c] = 0;
+        }
+        for (int g = 0; g < total; g++) {
+            int c = childOf[g];
+            preferences[c][applicationCount[c]++] = g;
+        }
+        int[] siteOf = new int[total];
+        long[] preferenceKey = new long[total];
+        for (int s = 0; s < siteCount; s++) {
+            int[] ranks = sites.get(s).preferenceRanks();
+            for (int i = 0; i < states[s].n; i++) {
+                siteOf[offsets[s] + i] = s;
+                // 志願順位相同時依機構輸入順序
+                preferenceKey[offsets[s] + i] = ((long) ranks[i] << 32) | s;
+            }
+        }
+        for (int[] list : preferences) {
+            sortByKey(list, preferenceKey);
+        }
+
+        // === 延遲接受 ===
+        int[] next = new int[childCount];
+        int[] queue = new int[childCount];
+        int queued = childCount;
+        for (int c = 0; c < childCount; c++) {
+            queue[c] = c;
+        }
+        int[] touched = new int[siteCount];
+        boolean[] isTouched = new boolean[siteCount];
+        int proposals = 0;
+        while (queued > 0) {
+            int touchedCount = 0;
+            for (int q = 0; q < queued; q++) {
+                int c = queue[q];
+                if (next[c] >= preferences[c].length) {
+                    continue;
+                }
+                int g = preferences[c][next[c]++];
+                int s = siteOf[g];
+                states[s].propose(g - offsets[s]);
+                proposals++;
+                if (!isTouched[s]) {
+                    isTouched[s] = true;
+                    touched[touchedCount++] = s;
+                }
+            }
+            queued = 0;
+            for (int t = 0; t < touchedCount; t++) {
+                int s = touched[t];
+                isTouched[s] = false;
+                SiteState state = states[s];
+                state.choose();
+                for (int r = 0; r < state.rejectedCount; r++) {
+                    queue[queued++] = childOf[offsets[s] + state.rejected[r]];
+                }
+            }
+        }
+
+        // === 組合結果 ===
+        // matchedRank[c] = 錄取申請的志願順位索引（-1 = 未錄取）
+        int[] matchedRank = new int[childCount];
+        Arrays.fill(matchedRank, -1);
+        for (int c = 0; c < childCount; c++) {
+            for (int k = 0; k < preferences[c].length; k++) {
+                int g = preferences[c][k];
+                if (states[siteOf[g]].held[g - offsets[siteOf[g]]]) {
+                    matchedRank[c] = k;
+                    break;
+                }
+            }
+        }
+        boolean[] releasedFlags = new boolean[total];
+        int released = 0;
+        int admittedChildren = 0;
+        for (int c = 0; c < childCount; c++) {
+            if (matchedRank[c] < 0) {
+                continue;
+            }
+            admittedChildren++;
+            for (int k = matchedRank[c] + 1; k < preferences[c].length; k++) {
+                releasedFlags[preferences[c][k]] = true;
+                released++;
+            }
+        }
+
+        List<LotteryEngine.Outcome> outcomes = new ArrayList<>(siteCount);
+        for (int s = 0; s < siteCount; s++) {
+            outcomes.add(states[s].toOutcome(sites.get(s).snapshot(), releasedFlags, offsets[s]));
+        }
+        return new Allocation(outcomes, childCount, admittedChildren, released, proposals);
+    }
+
+    /**
+     * 依 key 由小到大排序（志願清單很短，使用插入排序）
+     */
+    private static void sortByKey(int[] values, long[] key) {
+        for (int i = 1; i < values.length; i++) {
+            int v = values[i];
+            int j = i - 1;
+            while (j >= 0 && key[values[j]] > key[v]) {
+                values[j + 1] = values[j];
+                j--;
+            }
+            values[j + 1] = v;
+        }
+    }
+
+    /**
+     * 單一機構的分發狀態與暫存陣列
+     */
+    private static final class SiteState {
+        final int n;
+        final LotteryEngine.Quotas quotas;
+        final int[] priorities;
+        final int[] ages;
+        final LotteryEngine.AgeBandIndex index;
+        // lotteryKey[i] = 申請人 i 的籤號（0..n-1），byKey[籤號] = 申請人
+        final int[] lotteryKey;
+        final int[] byKey;
+        // held[i] = 目前暫時錄取
+        final boolean[] held;
+        final int[] tierOf;
+        final int[] classOf;
+
+        final int[] candidates;
+        int candidateCount;
+        final int[] rejected;
+        int rejectedCount;
+
+        final int[] pool1;
+        final int[] pool2;
+        final int[] pool3;
+        final int[] drawn;
+        final int[] drawnTier;
+        final int[] remaining;
+        final ClassPlacementOptimizer.Scratch placement;
+
+        SiteState(LotteryEngine.Snapshot snapshot, RandomGenerator random) {
+            List<LotteryEngine.Applicant> applicants = snapshot.applicants();
+            n = applicants.size();
+            quotas = LotteryEngine.computeQuotas(snapshot);
+            priorities = LotteryEngine.normalizedPriorities(applicants);
+            ages = LotteryEngine.computeAgesInMonths(applicants, snapshot.asOf());
+            index = new LotteryEngine.AgeBandIndex(snapshot.classes());
+
+            byKey = new int[n];
+            for (int i = 0; i < n; i++) {
+                byKey[i] = i;
+            }
+            for (int i = n - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int tmp = byKey[i];
+                byKey[i] = byKey[j];
+                byKey[j] = tmp;
+            }
+            lotteryKey = new int[n];
+            for (int k = 0; k < n; k++) {
+                lotteryKey[byKey[k]] = k;
+            }
+
+            held = new boolean[n];
+            tierOf = new int[n];
+            classOf = new int[n];
+            Arrays.fill(classOf, -1);
+            candidates = new int[n];
+            rejected = new int[n];
+            pool1 = new int[n];
+            pool2 = new int[n];
+            pool3 = new int[n];
+            drawn = new int[n];
+            drawnTier = new int[n];
+            remaining = new int[index.classCount()];
+            placement = new ClassPlacementOptimizer.Scratch(index.classCount());
+        }
+
+        void propose(int i) {
+            candidates[candidateCount++] = i;
+        }
+
+        /**
+         * 以三階段規則從「暫時錄取者 + 本輪新申請者」重新挑選，未入選者放入 rejected
+         */
+        void choose() {
+            rejectedCount = 0;
+            int selected = draw(candidates, candidateCount);
+            for (int k = 0; k < candidateCount; k++) {
+                held[drawn[k]] = false;
+                tierOf[drawn[k]] = 0;
+            }
+            ClassPlacementOptimizer.optimal(drawn, selected, ages, index, remaining, classOf, placement);
+
+            int keep = 0;
+            for (int k = 0; k < candidateCount; k++) {
+                int i = drawn[k];
+                if (k < selected && classOf[i] >= 0) {
+                    held[i] = true;
+                    tierOf[i] = drawnTier[k];
+                    candidates[keep++] = i;
+                } else {
+                    rejected[rejectedCount++] = i;
+                }
+            }
+            candidateCount = keep;
+        }
+
+        /**
+         * 與 LotteryEngine.draw 相同的三階段抽籤，洗牌改以固定籤號排序
+         * @return 正取人數（drawn 前 selected 位為正取，其後為未抽中者，皆依籤號）
+         */
+        int draw(int[] members, int count) {
+            int p1 = 0;
+            int p2 = 0;
+            int p3 = 0;
+            for (int k = 0; k < count; k++) {
+                int key = lotteryKey[members[k]];
+                switch (priorities[members[k]]) {
+                    case 1 -> pool1[p1++] = key;
+                    case 2 -> pool2[p2++] = key;
+                    default -> pool3[p3++] = key;
+                }
+            }
+            int drawnCount = 0;
+
+            Arrays.sort(pool1, 0, p1);
+            int selected1 = quotas.firstQuota() <= 0 ? 0 : Math.min(p1, quotas.firstQuota());
+            for (int k = 0; k < selected1; k++) {
+                drawnTier[drawnCount] = 1;
+                drawn[drawnCount++] = byKey[pool1[k]];
+            }
+            System.arraycopy(pool1, selected1, pool2, p2, p1 - selected1);
+            p2 += p1 - selected1;
+
+            int available2 = quotas.secondQuota() + (quotas.firstQuota() - selected1);
+            Arrays.sort(pool2, 0, p2);
+            int selected2 = available2 <= 0 ? 0 : Math.min(p2, available2);
+            for (int k = 0; k < selected2; k++) {
+                drawnTier[drawnCount] = 2;
+                drawn[drawnCount++] = byKey[pool2[k]];
+            }
+            System.arraycopy(pool2, selected2, pool3, p3, p2 - selected2);
+            p3 += p2 - selected2;
+
+            int available3 = quotas.thirdQuota()
+                    + (quotas.firstQuota() - selected1)
+                    + (quotas.secondQuota() - selected2);
+            Arrays.sort(pool3, 0, p3);
+            int selected3 = available3 <= 0 ? 0 : Math.min(p3, available3);
+            for (int k = 0; k < selected3; k++) {
+                drawnTier[drawnCount] = 3;
+                drawn[drawnCount++] = byKey[pool3[k]];
+            }
+            int selectedTotal = drawnCount;
+            for (int k = selected3; k < p3; k++) {
+                drawnTier[drawnCount] = 0;
+                drawn[drawnCount++] = byKey[pool3[k]];
+            }
+            return selectedTotal;
+        }
+
+        /**
+         * 轉為與單一機構抽籤相同格式的結果（抽籤順序 = 籤號順序）
+         */
+        LotteryEngine.Outcome toOutcome(LotteryEngine.Snapshot snapshot, boolean[] releasedFlags, int offset) {
+            List<LotteryEngine.Applicant> applicants = snapshot.applicants();
+            List<LotteryEngine.ClassSlot> classes = snapshot.classes();
+            List<LotteryEngine.Decision> accepted = new ArrayList<>();
+            List<LotteryEngine.Decision> waitlist = new ArrayList<>();
+            List<LotteryEngine.Decision> released = new ArrayList<>();
+            int[] admittedPerClass = new int[classes.size()];
+            int[] acceptedByTier = new int[4];
+            int currentOrder = WaitlistRankKeys.RANK_STEP;
+
+            for (int k = 0; k < n; k++) {
+                int i = byKey[k];
+                int lotteryOrder = k + 1;
+                LotteryEngine.Applicant applicant = applicants.get(i);
+                if (held[i]) {
+                    admittedPerClass[classOf[i]]++;
+                    acceptedByTier[tierOf[i]]++;
+                    accepted.add(new LotteryEngine.Decision(i, applicant, lotteryOrder, tierOf[i],
+                            LotteryEngine.STATUS_ADMITTED, TIER_LABELS[tierOf[i]], classes.get(classOf[i]).classId(), null));
+                } else if (releasedFlags[offset + i]) {
+                    released.add(new LotteryEngine.Decision(i, applicant, lotteryOrder, 0,
+                            STATUS_RELEASED, REASON_RELEASED, null, null));
+                } else {
+                    waitlist.add(new LotteryEngine.Decision(i, applicant, lotteryOrder, 0,
+                            LotteryEngine.STATUS_WAITLISTED, null, null, currentOrder));
+                    currentOrder += WaitlistRankKeys.RANK_STEP;
+                }
+            }
+            return new LotteryEngine.Outcome(quotas, accepted, waitlist, released,
+                    acceptedByTier[1], acceptedByTier[2], acceptedByTier[3], admittedPerClass);
+        }
+    }
+}
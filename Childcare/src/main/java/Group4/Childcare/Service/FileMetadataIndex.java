@@ -0,0 +1,556 @@
+package Group4.Childcare.Service;
+
+import Group4.Childcare.Repository.AttachmentArchiveJdbcRepository;
+import Group4.Childcare.Repository.AttachmentArchiveJdbcRepository.ArchivedAttachment;
+import Group4.Childcare.Repository.FileIndexJdbcRepository;
+import Group4.Childcare.Repository.FileIndexJdbcRepository.IndexedFile;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 檔案索引：回答「案件 X 有哪些附件」與「機構 Y 的圖片」，不必每次列出目錄
+ *
+ * - 以 file_index 資料表為準（見 FileIndexJdbcRepository），前面加一層短期的記憶體快取
+ * - FileService 寫入或刪除檔案時同步更新索引
+ * - 尚未建立索引的舊案件資料夾於第一次讀取時列出一次；InstitutionResource 整個目錄只在第一次讀取時列出一次
+ * - WatchService 監看 InstitutionResource，以及 IdentityResource 底下的分散目錄與每個案件資料夾（新建的資料夾隨即加入監看），
+ *   處理直接在檔案系統上的新增、刪除：機構圖片與案件資料夾中的檔案直接更新索引，
+ *   案件資料夾新增、刪除則取消索引標記，下次讀取時重新列出該資料夾
+ * - 事件過多而遺失（OVERFLOW）時，該目錄底下的案件資料夾全部取消索引標記；
+ *   監看數受作業系統限制（Linux 為 fs.inotify.max_user_watches），超過後其餘資料夾只隨應用程式寫入更新
+ * - 網路磁碟（NFS、SMB）通常收不到其他主機的變更通知，多節點之間以資料表同步，記憶體快取只保留 cache-ttl-seconds
+ */
+@Service
+public class FileMetadataIndex {
+
+    // 記憶體中最多快取的擁有者數，超過時只查資料庫
+    private static final int MAX_CACHED_OWNERS = 50_000;
+
+    private static final String INSTITUTION_RESOURCE_DIR = "InstitutionResource";
+
+    private record CachedFiles(List<String> fileNames, long expiresAtMillis) {
+    }
+
+    private final FileIndexJdbcRepository fileIndexJdbcRepository;
+    private final AttachmentArchiveJdbcRepository attachmentArchiveJdbcRepository;
+    private final Path attachmentRoot;
+    private final Path institutionRoot;
+    private final long cacheTtlMillis;
+    private final Clock clock;
+    private final boolean watchEnabled;
+
+    private final ConcurrentHashMap<UUID, CachedFiles> attachmentCache = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<UUID, CachedFiles> institutionCache = new ConcurrentHashMap<>();
+    private final Object institutionDirectoryLock = new Object();
+    private volatile boolean institutionDirectoryIndexed;
+
+    private volatile WatchService watchService;
+    private volatile boolean watchLimitReported;
+
+    @Autowired
+    public FileMetadataIndex(FileIndexJdbcRepository fileIndexJdbcRepository,
+                             AttachmentArchiveJdbcRepository attachmentArchiveJdbcRepository,
+                             @Value("${attachment.upload.dir:IdentityResource}") String uploadDir,
+                             @Value("${file.index.cache-ttl-seconds:60}") long cacheTtlSeconds,
+                             @Value("${file.index.watch-enabled:true}") boolean watchEnabled) {
+        this(fileIndexJdbcRepository, attachmentArchiveJdbcRepository, Paths.get(uploadDir),
+                Paths.get(System.getProperty("user.dir"), INSTITUTION_RESOURCE_DIR),
+                Duration.ofSeconds(cacheTtlSeconds), Clock.systemDefaultZone(), watchEnabled);
+    }
+
+    public FileMetadataIndex(FileIndexJdbcRepository fileIndexJdbcRepository,
+                             AttachmentArchiveJdbcRepository attachmentArchiveJdbcRepository, Path attachmentRoot,
+                             Path institutionRoot, Duration cacheTtl, Clock clock) {
+        this(fileIndexJdbcRepository, attachmentArchiveJdbcRepository, attachmentRoot, institutionRoot, cacheTtl, clock, false);
+    }
+
+    private FileMetadataIndex(FileIndexJdbcRepository fileIndexJdbcRepository,
+                              AttachmentArchiveJdbcRepository attachmentArchiveJdbcRepository, Path attachmentRoot,
+                              Path institutionRoot, Duration cacheTtl, Clock clock, boolean watchEnabled) {
+        this.fileIndexJdbcRepository = fileIndexJdbcRepository;
+        this.attachmentArchiveJdbcRepository = attachmentArchiveJdbcRepository;
+        this.attachmentRoot = attachmentRoot.toAbsolutePath().normalize();
+        this.institutionRoot = institutionRoot.toAbsolutePath().normalize();
+        this.cacheTtlMillis = cacheTtl.toMillis();
+        this.clock = clock;
+        this.watchEnabled = watchEnabled;
+    }
+
+    // ========== 讀取 ==========
+
+    /**
+     * 案件資料夾中的檔案名稱（依名稱排序）
+     */
+    public List<String> attachmentFiles(UUID applicationId) {
+        List<String> cached = cached(attachmentCache, applicationId);
+        if (cached != null) {
+            return cached;
+        }
+        List<String> fileNames = fileIndexJdbcRepository
+                .findFileNames(FileIndexJdbcRepository.CATEGORY_ATTACHMENT, applicationId)
+                .orElseGet(() -> indexAttachmentFolder(applicationId));
+        return cache(attachmentCache, applicationId, fileNames);
+    }
+
+    /**
+     * 機構圖片檔名（機構ID_原始檔名）；正常只有一張，舊資料可能殘留多張
+     */
+    public List<String> institutionImages(UUID institutionId) {
+        List<String> cached = cached(institutionCache, institutionId);
+        if (cached != null) {
+            return cached;
+        }
+        List<String> fileNames = fileIndexJdbcRepository
+                .findFileNames(FileIndexJdbcRepository.CATEGORY_INSTITUTION_IMAGE, institutionId)
+                .orElseGet(() -> institutionDirectoryIndexed()
+                        ? List.of()
+                        : indexInstitutionDirectory().getOrDefault(institutionId, List.of()));
+        return cache(institutionCache, institutionId, fileNames);
+    }
+
+    // ========== FileService 寫入時同步 ==========
+
+    /**
+     * 附件已寫入案件資料夾 {applicationId}/{fileName}（見 AttachmentStorageLayout）
+     */
+    public void attachmentStored(UUID applicationId, String fileName) throws IOException {
+        Path file = AttachmentStorageLayout.folder(attachmentRoot, applicationId).resolve(fileName);
+        fileIndexJdbcRepository.upsert(FileIndexJdbcRepository.CATEGORY_ATTACHMENT, applicationId, describe(file), now());
+        attachmentCache.remove(applicationId);
+    }
+
+    public void attachmentDeleted(UUID applicationId, String fileName) {
+        fileIndexJdbcRepository.delete(FileIndexJdbcRepository.CATEGORY_ATTACHMENT, applicationId, fileName);
+        attachmentCache.remove(applicationId);
+    }
+
+    /**
+     * 案件資料夾內容不確定（例如更新索引失敗）：下次讀取時重新列出該資料夾
+     */
+    public void attachmentsChanged(UUID applicationId) {
+        attachmentCache.remove(applicationId);
+        fileIndexJdbcRepository.unmarkOwner(FileIndexJdbcRepository.CATEGORY_ATTACHMENT, applicationId);
+    }
+
+    /**
+     * 整個案件資料夾已刪除
+     */
+    public void attachmentFolderDeleted(UUID applicationId) {
+        fileIndexJdbcRepository.replaceOwner(FileIndexJdbcRepository.CATEGORY_ATTACHMENT, applicationId,
+                List.of(), now());
+        attachmentCache.remove(applicationId);
+    }
+
+    /**
+     * 機構圖片已寫入 {institutionRoot}/{fileName}（每個機構只有一張，取代舊的索引）
+     */
+    public void institutionImageStored(UUID institutionId, String fileName) throws IOException {
+        fileIndexJdbcRepository.replaceOwner(FileIndexJdbcRepository.CATEGORY_INSTITUTION_IMAGE, institutionId,
+                List.of(describe(institutionRoot.resolve(fileName))), now());
+        institutionCache.remove(institutionId);
+    }
+
+    public void institutionImageDeleted(UUID institutionId) {
+        fileIndexJdbcRepository.replaceOwner(FileIndexJdbcRepository.CATEGORY_INSTITUTION_IMAGE, institutionId,
+                List.of(), now());
+        institutionCache.remove(institutionId);
+    }
+
+    /**
+     * 機構圖片索引不確定（例如更新索引失敗）：下次讀取該機構時重新列出目錄
+     */
+    public void institutionImagesChanged(UUID institutionId) {
+        institutionDirectoryIndexed = false;
+        institutionCache.remove(institutionId);
+        fileIndexJdbcRepository.unmarkOwner(FileIndexJdbcRepository.CATEGORY_INSTITUTION_IMAGE, institutionId);
+        fileIndexJdbcRepository.unmarkOwner(FileIndexJdbcRepository.CATEGORY_INSTITUTION_IMAGE,
+                FileIndexJdbcRepository.DIRECTORY_OWNER);
+    }
+
+    // ========== 檔案系統變更（WatchService） ==========
+
+    /**
+     * 依檔案系統上的變更更新索引
+     * @param changed 新增、修改或刪除的路徑（機構圖片、案件資料夾或案件資料夾中的檔案）
+     */
+    public void onFileSystemChange(Path changed) throws IOException {
+        Path path = changed.toAbsolutePath().normalize();
+        Path parent = path.getParent();
+        String name = path.getFileName().toString();
+        // .variants、.blobs、.uploads 等內部資料夾與暫存檔不列入索引
+        if (parent == null || name.startsWith(".")) {
+            return;
+        }
+
+        if (parent.equals(institutionRoot)) {
+            UUID institutionId = institutionOwnerOf(name);
+            if (institutionId == null) {
+                return;
+            }
+            if (Files.isRegularFile(path)) {
+                institutionImageStored(institutionId, name);
+            } else {
+                fileIndexJdbcRepository.delete(FileIndexJdbcRepository.CATEGORY_INSTITUTION_IMAGE, institutionId, name);
+                institutionCache.remove(institutionId);
+            }
+            return;
+        }
+
+        UUID folderOwner = AttachmentStorageLayout.applicationIdOf(attachmentRoot, path);
+        if (folderOwner != null) {
+            // 案件資料夾新增或刪除：加入監看，下次讀取時重新列出；
+            // 搬到分散目錄（AttachmentShardMigrator）後舊資料夾的刪除只改變位置、檔名不變，索引照常可用
+            registerTree(path);
+            if (Files.notExists(path) && Files.isDirectory(AttachmentStorageLayout.folder(attachmentRoot, folderOwner))) {
+                return;
+            }
+            attachmentsChanged(folderOwner);
+        } else if (isShardDirectory(path)) {
+            // 新的分散目錄：加入監看前可能已有案件資料夾建立
+            for (UUID applicationId : registerTree(path)) {
+                attachmentsChanged(applicationId);
+            }
+        } else {
+            UUID applicationId = AttachmentStorageLayout.applicationIdOf(attachmentRoot, parent);
+            if (applicationId == null) {
+                return;
+            }
+            if (Files.isRegularFile(path)) {
+                attachmentStored(applicationId, name);
+            } else {
+                attachmentDeleted(applicationId, name);
+            }
+        }
+    }
+
+    @PostConstruct
+    public void startWatching() {
+        if (!watchEnabled) {
+            return;
+        }
+        try {
+            Files.createDirectories(attachmentRoot);
+            Files.createDirectories(institutionRoot);
+            watchService = FileSystems.getDefault().newWatchService();
+            register(institutionRoot);
+        } catch (IOException | UnsupportedOperationException e) {
+            System.err.println("⚠️ 無法監看檔案目錄，索引僅隨應用程式寫入更新: " + e.getMessage());
+            return;
+        }
+        Thread watcher = new Thread(this::watchLoop, "file-index-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    private void watchLoop() {
+        // 案件資料夾可能有數十萬個，在背景執行緒逐一加入監看，不拖慢啟動
+        try {
+            registerTree(attachmentRoot);
+        } catch (IOException e) {
+            System.err.println("⚠️ 無法監看案件資料夾，索引僅隨應用程式寫入更新: " + e.getMessage());
+        }
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            Path dir = (Path) key.watchable();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                try {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        onWatchOverflow(dir);
+                    } else {
+                        Path changed = dir.resolve((Path) event.context());
+                        // 資料夾內容變動時 Windows 會對資料夾本身發出 MODIFY，由資料夾自己的監看處理
+                        if (event.kind() == StandardWatchEventKinds.ENTRY_MODIFY && Files.isDirectory(changed)) {
+                            continue;
+                        }
+                        onFileSystemChange(changed);
+                    }
+                } catch (Exception e) {
+                    System.err.println("❌ 更新檔案索引失敗: " + dir + ", " + e.getMessage());
+                }
+            }
+            // 案件資料夾刪除後監看自動失效，只有根目錄失效時需要注意
+            if (!key.reset() && (dir.equals(attachmentRoot) || dir.equals(institutionRoot))) {
+                System.err.println("⚠️ 已停止監看目錄: " + dir);
+            }
+        }
+    }
+
+    /**
+     * 事件過多而遺失時：機構目錄重新列出一次；
+     * 案件目錄無從得知遺失了哪些變更，該目錄底下的案件資料夾重新加入監看並全部取消索引標記
+     * @param dir 發生 OVERFLOW 的目錄（根目錄、分散目錄或案件資料夾）
+     */
+    public void onWatchOverflow(Path dir) throws IOException {
+        Path path = dir.toAbsolutePath().normalize();
+        if (path.equals(institutionRoot)) {
+            indexInstitutionDirectory();
+            return;
+        }
+        for (UUID applicationId : registerTree(path)) {
+            attachmentsChanged(applicationId);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * 將目錄與其下的分散目錄、案件資料夾加入監看（略過 .blobs 等內部資料夾）
+     * @return 找到的案件ID
+     */
+    private List<UUID> registerTree(Path start) throws IOException {
+        List<UUID> applicationIds = new ArrayList<>();
+        if (!Files.isDirectory(start)) {
+            return applicationIds;
+        }
+        Files.walkFileTree(start, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+                UUID applicationId = AttachmentStorageLayout.applicationIdOf(attachmentRoot, dir);
+                if (applicationId == null && !dir.equals(attachmentRoot) && !isShardDirectory(dir)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                if (!register(dir)) {
+                    return FileVisitResult.TERMINATE;
+                }
+                if (applicationId != null) {
+                    applicationIds.add(applicationId);
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return applicationIds;
+    }
+
+    /**
+     * @return 是否已加入監看（未啟用監看時視為成功）；超過作業系統的監看上限時為 false
+     */
+    private boolean register(Path dir) {
+        WatchService service = watchService;
+        if (service == null) {
+            return true;
+        }
+        try {
+            dir.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+            return true;
+        } catch (ClosedWatchServiceException e) {
+            return false;
+        } catch (IOException e) {
+            if (!watchLimitReported) {
+                watchLimitReported = true;
+                System.err.println("⚠️ 無法再加入監看（可能已達 fs.inotify.max_user_watches），其餘資料夾僅隨應用程式寫入更新: "
+                        + dir + ", " + e.getMessage());
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 案件資料夾的分散目錄 {root}/ab 或 {root}/ab/cd
+     */
+    private boolean isShardDirectory(Path dir) {
+        if (!dir.startsWith(attachmentRoot) || dir.equals(attachmentRoot)) {
+            return false;
+        }
+        Path relative = attachmentRoot.relativize(dir);
+        if (relative.getNameCount() > 2) {
+            return false;
+        }
+        for (Path part : relative) {
+            if (!part.toString().matches("[0-9a-f]{2}")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // ========== 建立索引（列出目錄） ==========
+
+    private List<String> indexAttachmentFolder(UUID applicationId) {
+        Path folder = AttachmentStorageLayout.folder(attachmentRoot, applicationId);
+        List<IndexedFile> files = new ArrayList<>();
+        if (Files.isDirectory(folder)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder)) {
+                for (Path file : stream) {
+                    if (Files.isRegularFile(file)) {
+                        files.add(describe(file));
+                    }
+                }
+            } catch (IOException e) {
+                // 無法列出時不記錄索引，下次讀取再試
+                System.err.println("❌ 列出案件資料夾失敗: " + applicationId + ", " + e.getMessage());
+                return List.of();
+            }
+        }
+        // 已封存的附件不在資料夾中（見 AttachmentArchiveService），仍屬於這個案件
+        Set<String> listed = new HashSet<>();
+        files.forEach(file -> listed.add(file.fileName()));
+        for (ArchivedAttachment archived : attachmentArchiveJdbcRepository.findByApplicationId(applicationId)) {
+            String path = archived.attachmentPath();
+            String fileName = path.substring(path.lastIndexOf('/') + 1);
+            if (listed.add(fileName)) {
+                LocalDateTime lastModified = LocalDateTime.ofInstant(
+                        archived.lastModified().toInstant(ZoneOffset.UTC), ZoneId.systemDefault());
+                files.add(new IndexedFile(fileName, archived.length(), lastModified));
+            }
+        }
+        fileIndexJdbcRepository.replaceOwner(FileIndexJdbcRepository.CATEGORY_ATTACHMENT, applicationId, files, now());
+        return sortedNames(files);
+    }
+
+    private boolean institutionDirectoryIndexed() {
+        if (!institutionDirectoryIndexed && fileIndexJdbcRepository.isIndexed(
+                FileIndexJdbcRepository.CATEGORY_INSTITUTION_IMAGE, FileIndexJdbcRepository.DIRECTORY_OWNER)) {
+            institutionDirectoryIndexed = true;
+        }
+        return institutionDirectoryIndexed;
+    }
+
+    /**
+     * 列出 InstitutionResource 一次並重建所有機構圖片的索引
+     * @return 機構ID → 圖片檔名
+     */
+    public Map<UUID, List<String>> indexInstitutionDirectory() {
+        synchronized (institutionDirectoryLock) {
+            Map<UUID, List<IndexedFile>> filesByOwner = new HashMap<>();
+            if (Files.isDirectory(institutionRoot)) {
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(institutionRoot)) {
+                    for (Path file : stream) {
+                        UUID institutionId = institutionOwnerOf(file.getFileName().toString());
+                        if (institutionId != null && Files.isRegularFile(file)) {
+                            filesByOwner.computeIfAbsent(institutionId, id -> new ArrayList<>()).add(describe(file));
+                        }
+                    }
+                } catch (IOException e) {
+                    System.err.println("❌ 列出機構圖片目錄失敗: " + e.getMessage());
+                    return Map.of();
+                }
+            }
+            fileIndexJdbcRepository.replaceCategory(FileIndexJdbcRepository.CATEGORY_INSTITUTION_IMAGE,
+                    filesByOwner, now());
+            institutionDirectoryIndexed = true;
+            institutionCache.clear();
+
+            Map<UUID, List<String>> namesByOwner = new HashMap<>();
+            filesByOwner.forEach((id, files) -> namesByOwner.put(id, sortedNames(files)));
+            System.out.println("📇 機構圖片索引已建立: " + namesByOwner.size() + " 個機構");
+            return namesByOwner;
+        }
+    }
+
+    // ========== 工具 ==========
+
+    private List<String> cached(ConcurrentHashMap<UUID, CachedFiles> cache, UUID ownerId) {
+        CachedFiles entry = cache.get(ownerId);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAtMillis() <= clock.millis()) {
+            cache.remove(ownerId, entry);
+            return null;
+        }
+        return entry.fileNames();
+    }
+
+    private List<String> cache(ConcurrentHashMap<UUID, CachedFiles> cache, UUID ownerId, List<String> fileNames) {
+        List<String> immutable = List.copyOf(fileNames);
+        long nowMillis = clock.millis();
+        if (cache.size() >= MAX_CACHED_OWNERS) {
+            cache.values().removeIf(entry -> entry.expiresAtMillis() <= nowMillis);
+        }
+        if (cache.size() < MAX_CACHED_OWNERS) {
+            cache.put(ownerId, new CachedFiles(immutable, nowMillis + cacheTtlMillis));
+        }
+        return immutable;
+    }
+
+    private IndexedFile describe(Path file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        LocalDateTime lastModified = LocalDateTime.ofInstant(attributes.lastModifiedTime().toInstant(),
+                ZoneId.systemDefault());
+        return new IndexedFile(file.getFileName().toString(), attributes.size(), lastModified);
+    }
+
+    private static List<String> sortedNames(List<IndexedFile> files) {
+        List<String> names = new ArrayList<>(files.size());
+        for (IndexedFile file : files) {
+            names.add(file.fileName());
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    private LocalDateTime now() {
+        return LocalDateTime.now(clock);
+    }
+
+    /**
+     * 機構圖片檔名為 機構ID_原始檔名
+     */
+    private static UUID institutionOwnerOf(String fileName) {
+        int underscore = fileName.indexOf('_');
+        return underscore > 0 ? parseUuid(fileName.substring(0, underscore)) : null;
+    }
+
+    private static UUID parseUuid(String value) {
+        if (value.length() != 36) {
+            return null;
+        }
+        try {
+            return UUID.fromString(value);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package Group4.Childcare.Service;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -18,20 +20,42 @@ import java.util.stream.Collectors;
 @Service
 public class FileService {
 
-  @Value("${attachment.upload.dir:IdentityResource}")
-  private String uploadDir;
+  private final String uploadDir;
+  private final AttachmentBlobStore attachmentBlobStore;
+  private final ImageDerivativeService imageDerivativeService;
+  private final FileMetadataIndex fileMetadataIndex;
+  private final AttachmentArchiveService attachmentArchiveService;
+
+  @Autowired
+  public FileService(@Value("${attachment.upload.dir:IdentityResource}") String uploadDir,
+                     AttachmentBlobStore attachmentBlobStore,
+                     ImageDerivativeService imageDerivativeService,
+                     FileMetadataIndex fileMetadataIndex,
+                     AttachmentArchiveService attachmentArchiveService) {
+    this.uploadDir = uploadDir;
+    this.attachmentBlobStore = attachmentBlobStore;
+    this.imageDerivativeService = imageDerivativeService;
+    this.fileMetadataIndex = fileMetadataIndex;
+    this.attachmentArchiveService = attachmentArchiveService;
+  }
 
   private static final String INSTITUTION_RESOURCE_DIR = "InstitutionResource";
 
   /**
    * 讀取指定案件的所有檔案名稱
-   * 檔案夾位置: IdentityResource/{ApplicationID}/
+   * 檔案夾位置: IdentityResource/ab/cd/{ApplicationID}/（見 getFolderPath）
    * @param applicationId 案件ID
    * @return 檔案名稱列表
    */
   public List<String> getFilesByApplicationId(UUID applicationId) {
+    // 由檔案索引讀取，不列出資料夾（見 FileMetadataIndex）
+    try {
+      return new ArrayList<>(fileMetadataIndex.attachmentFiles(applicationId));
+    } catch (Exception e) {
+      System.err.println("⚠️ 讀取附件索引失敗，改為列出資料夾: " + applicationId + ", " + e.getMessage());
+    }
     try {
-      Path folderPath = Paths.get(uploadDir, applicationId.toString());
+      Path folderPath = attachmentFolder(applicationId);
 
       // 如果文件夾不存在，返回空列表
       if (!Files.exists(folderPath)) {
@@ -61,13 +85,13 @@ public class FileService {
 
   /**
    * 檢查指定案件的文件夾是否存在
-   * 檔案夾位置: IdentityResource/{ApplicationID}/
+   * 檔案夾位置: IdentityResource/ab/cd/{ApplicationID}/（見 getFolderPath）
    * @param applicationId 案件ID
    * @return true 如果存在，false 否則
    */
   public boolean folderExists(UUID applicationId) {
     try {
-      Path folderPath = Paths.get(uploadDir, applicationId.toString());
+      Path folderPath = attachmentFolder(applicationId);
       return Files.exists(folderPath) && Files.isDirectory(folderPath);
     } catch (Exception e) {
       return false;
@@ -76,13 +100,13 @@ public class FileService {
 
   /**
    * 建立案件的文件夾
-   * 檔案夾位置: IdentityResource/{ApplicationID}/
+   * 檔案夾位置: IdentityResource/ab/cd/{ApplicationID}/（見 getFolderPath）
    * @param applicationId 案件ID
    * @return true 如果成功，false 否則
    */
   public boolean createFolder(UUID applicationId) {
     try {
-      Path folderPath = Paths.get(uploadDir, applicationId.toString());
+      Path folderPath = attachmentFolder(applicationId);
       if (!Files.exists(folderPath)) {
         Files.createDirectories(folderPath);
       }
@@ -95,19 +119,20 @@ public class FileService {
 
   /**
    * 取得案件附件儲存的根目錄路徑
-   * 依照 ApplicationID 建立子資料夾（例如 IdentityResource/{applicationId}）
+   * 依照 ApplicationID 建立子資料夾（例如 IdentityResource/ab/cd/{applicationId}，見 AttachmentStorageLayout）
    * 自動建立資料夾如果不存在
    *
    * 檔案儲存結構：
-   *   - 實體路徑：IdentityResource/{applicationId}/UUID_原始檔名
+   *   - 實體路徑：IdentityResource/{applicationId 前 2 碼}/{3~4 碼}/{applicationId}/UUID_原始檔名
+   *     （尚未搬移的舊案件仍為 IdentityResource/{applicationId}/UUID_原始檔名）
    *   - 資料庫儲存：{applicationId}/UUID_原始檔名
    *   - 前端訪問：/identity-files/{applicationId}/UUID_原始檔名
    *
    * @param applicationId 申請單 ID，用於建立子資料夾
-   * @return 資料夾路徑（例如 IdentityResource/{applicationId}）
+   * @return 資料夾路徑（例如 IdentityResource/ab/cd/{applicationId}）
    */
   public Path getFolderPath(UUID applicationId) {
-    Path folderPath = Paths.get(uploadDir, applicationId.toString());
+    Path folderPath = attachmentFolder(applicationId);
     try {
       if (!Files.exists(folderPath)) {
         Files.createDirectories(folderPath);
@@ -118,6 +143,119 @@ public class FileService {
     return folderPath;
   }
 
+  /**
+   * 案件資料夾目前的位置（分散目錄或尚未搬移的舊資料夾），不建立資料夾
+   */
+  private Path attachmentFolder(UUID applicationId) {
+    return AttachmentStorageLayout.folder(Paths.get(uploadDir), applicationId);
+  }
+
+  /**
+   * 附件存入案件資料夾後呼叫：記錄到檔案索引（見 FileMetadataIndex），
+   * 並併入內容定址儲存（相同內容只存一份，見 AttachmentBlobStore）
+   * 路徑與檔名不變；兩者失敗時附件仍維持一般檔案，不影響送件
+   * @param attachmentPath 附件路徑 {applicationId}/UUID_原始檔名
+   * @param sha256 檔案內容的 SHA-256；為 null 時即時計算
+   */
+  public void registerAttachment(String attachmentPath, String sha256) {
+    int slash = attachmentPath.indexOf('/');
+    if (slash > 0) {
+      UUID applicationId = UUID.fromString(attachmentPath.substring(0, slash));
+      updateIndex(applicationId, () -> fileMetadataIndex.attachmentStored(applicationId,
+          attachmentPath.substring(slash + 1)));
+    }
+    try {
+      attachmentBlobStore.link(attachmentPath,
+          AttachmentStorageLayout.resolve(Paths.get(uploadDir), attachmentPath), sha256);
+    } catch (Exception e) {
+      System.err.println("⚠️ 附件去重複失敗，維持獨立檔案: " + attachmentPath + ", " + e.getMessage());
+    }
+  }
+
+  /**
+   * 刪除案件的單一附件並移除它在內容定址儲存的參照
+   * @param applicationId 案件ID
+   * @param attachmentPath 附件路徑（格式：applicationId/uuid_檔名）
+   * @return true 如果檔案存在並已刪除
+   */
+  public boolean deleteAttachment(UUID applicationId, String attachmentPath) throws IOException {
+    String fileName = attachmentPath.substring(attachmentPath.lastIndexOf('/') + 1);
+    boolean deleted = Files.deleteIfExists(
+        AttachmentStorageLayout.resolve(Paths.get(uploadDir), applicationId + "/" + fileName));
+    if (!deleted) {
+      deleted = attachmentArchiveService.remove(applicationId + "/" + fileName);
+    }
+    updateIndex(applicationId, () -> fileMetadataIndex.attachmentDeleted(applicationId, fileName));
+    attachmentBlobStore.release(applicationId + "/" + fileName);
+    return deleted;
+  }
+
+  /**
+   * 已封存附件的內容：案件結案後附件併入月份封存檔（見 AttachmentArchiveService），
+   * 案件資料夾中已沒有原始檔案，改為直接讀取封存檔中的那一段
+   * @param attachmentPath 附件路徑 {applicationId}/UUID_原始檔名
+   * @return 沒有封存記錄時為 null
+   */
+  public Resource getArchivedAttachment(String attachmentPath) {
+    if (AttachmentStorageLayout.shardedPath(attachmentPath) == null) {
+      return null;
+    }
+    try {
+      return attachmentArchiveService.openArchived(attachmentPath);
+    } catch (Exception e) {
+      System.err.println("❌ 讀取封存附件失敗: " + attachmentPath + ", " + e.getMessage());
+      return null;
+    }
+  }
+
+  private interface IndexUpdate {
+    void run() throws IOException;
+  }
+
+  /**
+   * 更新附件索引；失敗時改為標記該案件資料夾須重新列出，避免索引漏掉檔案
+   */
+  private void updateIndex(UUID applicationId, IndexUpdate update) {
+    try {
+      update.run();
+    } catch (Exception e) {
+      System.err.println("⚠️ 更新附件索引失敗: " + applicationId + ", " + e.getMessage());
+      try {
+        fileMetadataIndex.attachmentsChanged(applicationId);
+      } catch (Exception ignored) {
+        // 資料庫無法使用時讀取端也會改為列出資料夾
+      }
+    }
+  }
+
+  /**
+   * 刪除案件的附件資料夾（送件交易回滾時清除已存下的檔案）
+   * @param applicationId 案件ID
+   */
+  public void deleteFolder(UUID applicationId) {
+    Path folderPath = attachmentFolder(applicationId);
+    if (!Files.exists(folderPath)) {
+      return;
+    }
+    try {
+      attachmentBlobStore.releaseAll(applicationId + "/");
+    } catch (Exception e) {
+      System.err.println("⚠️ 移除附件內容參照失敗: " + applicationId + ", " + e.getMessage());
+    }
+    File[] files = folderPath.toFile().listFiles();
+    try {
+      if (files != null) {
+        for (File f : files) {
+          Files.deleteIfExists(f.toPath());
+        }
+      }
+      Files.deleteIfExists(folderPath);
+    } catch (IOException e) {
+      System.err.println("❌ 刪除附件資料夾失敗: " + folderPath + ", " + e.getMessage());
+    }
+    updateIndex(applicationId, () -> fileMetadataIndex.attachmentFolderDeleted(applicationId));
+  }
+
   /**
    * 儲存機構圖片到 InstitutionResource 目錄
    * 每個機構僅儲放一張圖片，新上傳會覆蓋舊的
@@ -153,6 +291,10 @@ public class FileService {
 
     // 儲存檔案
     Files.copy(file.getInputStream(), filePath);
+    updateInstitutionIndex(institutionId, () -> fileMetadataIndex.institutionImageStored(institutionId, fileName));
+
+    // 背景產生縮圖（見 ImageDerivativeService）
+    imageDerivativeService.scheduleGeneration(filePath);
 
     // 返回相對路徑供 imagePath 欄位儲存
     return "/InstitutionResource/" + fileName;
@@ -163,6 +305,21 @@ public class FileService {
    * @param institutionId 機構ID
    */
   public void deleteInstitutionImage(UUID institutionId) {
+    List<String> indexed = indexedInstitutionImages(institutionId);
+    if (indexed != null) {
+      Path institutionDir = Paths.get(System.getProperty("user.dir"), INSTITUTION_RESOURCE_DIR);
+      try {
+        for (String fileName : indexed) {
+          Files.deleteIfExists(institutionDir.resolve(fileName));
+          ImageDerivativeService.deleteVariants(institutionDir.resolve(fileName));
+        }
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+      updateInstitutionIndex(institutionId, () -> fileMetadataIndex.institutionImageDeleted(institutionId));
+      return;
+    }
+
     try {
       Path institutionDir = Paths.get(System.getProperty("user.dir"), INSTITUTION_RESOURCE_DIR);
       if (!Files.exists(institutionDir)) {
@@ -177,6 +334,7 @@ public class FileService {
       if (files != null) {
         for (File file : files) {
           Files.deleteIfExists(file.toPath());
+          ImageDerivativeService.deleteVariants(file.toPath());
         }
       }
     } catch (Exception e) {
@@ -190,6 +348,10 @@ public class FileService {
    * @return 檔名，若不存在返回 null
    */
   public String getInstitutionImageFileName(UUID institutionId) {
+    List<String> indexed = indexedInstitutionImages(institutionId);
+    if (indexed != null) {
+      return indexed.isEmpty() ? null : indexed.get(0);
+    }
     try {
       Path institutionDir = Paths.get(System.getProperty("user.dir"), INSTITUTION_RESOURCE_DIR);
       if (!Files.exists(institutionDir)) {
@@ -208,4 +370,45 @@ public class FileService {
     }
     return null;
   }
+
+  /**
+   * 由檔案索引取得機構圖片檔名，不列出整個 InstitutionResource 目錄
+   * @return 讀取失敗時為 null（改為列出目錄）
+   */
+  private List<String> indexedInstitutionImages(UUID institutionId) {
+    try {
+      return fileMetadataIndex.institutionImages(institutionId);
+    } catch (Exception e) {
+      System.err.println("⚠️ 讀取機構圖片索引失敗，改為列出目錄: " + institutionId + ", " + e.getMessage());
+      return null;
+    }
+  }
+
+  private void updateInstitutionIndex(UUID institutionId, IndexUpdate update) {
+    try {
+      update.run();
+    } catch (Exception e) {
+      System.err.println("⚠️ 更新機構圖片索引失敗: " + institutionId + ", " + e.getMessage());
+      try {
+        fileMetadataIndex.institutionImagesChanged(institutionId);
+      } catch (Exception ignored) {
+        // 資料庫無法使用時讀取端也會改為列出目錄
+      }
+    }
+  }
+
+  /**
+   * 獲取機構圖片檔案，依 size 選擇縮圖
+   * @param institutionId 機構ID
+   * @param size thumb / list / full；null 或縮圖尚未產生時回傳原圖
+   * @return 檔案路徑，若不存在返回 null
+   */
+  public Path getInstitutionImageFile(UUID institutionId, String size) {
+    String fileName = getInstitutionImageFileName(institutionId);
+    if (fileName == null) {
+      return null;
+    }
+    Path original = Paths.get(System.getProperty("user.dir"), INSTITUTION_RESOURCE_DIR, fileName);
+    return ImageDerivativeService.resolve(original, size);
+  }
 }
@@ -0,0 +1,185 @@
+package Group4.Childcare.Service;
+
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.ResourceRegion;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * 檔案下載回應（橫幅圖片、公告附件等）
+ *
+ * - 不把整個檔案讀進記憶體：完整內容以 FileSystemResource、部分內容以 ResourceRegion 回傳，
+ *   由 Spring 邊讀邊寫到回應（每個請求只用固定大小的緩衝區）
+ * - 支援 Range（單一或多段）與 If-Range；範圍超出檔案時回傳 416
+ * - 以檔案大小與修改時間產生強 ETag，If-None-Match / If-Modified-Since 相符時回傳 304
+ * - UUID_原始檔名 的檔案上傳後不會再被覆寫，標記為 immutable 並快取一年；其他檔名每次須重新驗證
+ */
+public final class FileServingSupport {
+
+    public static final Duration IMMUTABLE_MAX_AGE = Duration.ofDays(365);
+
+    private static final Pattern UUID_PREFIXED = Pattern.compile(
+            "^[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}_.+");
+
+    private FileServingSupport() {
+    }
+
+    /**
+     * 產生檔案下載的回應
+     * @param file 檔案路徑（呼叫端需先確認存在）
+     * @param displayFilename Content-Disposition 顯示的檔名
+     * @param requestHeaders 請求標頭（Range、If-None-Match、If-Modified-Since、If-Range）
+     * @param sharedCache true 允許共用快取（CDN、proxy）保存；false 只允許瀏覽器保存（個人資料）
+     * @throws IOException 檔案不是一般檔案或無法讀取屬性
+     */
+    public static ResponseEntity<?> serve(Path file, String displayFilename, HttpHeaders requestHeaders,
+                                          boolean sharedCache) throws IOException {
+        return serve(file, displayFilename, requestHeaders,
+                cacheControlFor(file.getFileName().toString(), sharedCache));
+    }
+
+    /**
+     * 產生檔案下載的回應，由呼叫端指定快取方式（例如縮圖尚未產生、暫時回傳原圖時不可長期快取）
+     */
+    public static ResponseEntity<?> serve(Path file, String displayFilename, HttpHeaders requestHeaders,
+                                          CacheControl cacheControl) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        if (!attributes.isRegularFile()) {
+            throw new IOException("Not a regular file: " + file.getFileName());
+        }
+        long length = attributes.size();
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        String eTag = eTagOf(length, lastModified);
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag(eTag);
+        headers.setLastModified(lastModified);
+        headers.setCacheControl(cacheControl);
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        if (notModified(requestHeaders, eTag, lastModified)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(headers).build();
+        }
+
+        String contentType = Files.probeContentType(file);
+        MediaType mediaType = contentType != null ? MediaType.parseMediaType(contentType)
+                : MediaType.APPLICATION_OCTET_STREAM;
+        headers.setContentType(mediaType);
+        headers.set(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + displayFilename + "\"");
+
+        Resource resource = new FileSystemResource(file);
+        String range = requestHeaders.getFirst(HttpHeaders.RANGE);
+        if (range != null) {
+            if (!ifRangeMatches(requestHeaders.getFirst(HttpHeaders.IF_RANGE), eTag, lastModified)) {
+                // If-Range 不符時回傳完整內容；包成 InputStreamResource，避免框架再依 Range 標頭切成部分內容
+                headers.setContentLength(length);
+                return ResponseEntity.ok().headers(headers)
+                        .body(new InputStreamResource(() -> Files.newInputStream(file)));
+            }
+            try {
+                List<ResourceRegion> regions = HttpRange.toResourceRegions(HttpRange.parseRanges(range), resource);
+                // Content-Range 與 Content-Length 由 ResourceRegionHttpMessageConverter 依區段寫入
+                return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT).headers(headers)
+                        .body(regions.size() == 1 ? regions.get(0) : regions);
+            } catch (IllegalArgumentException e) {
+                HttpHeaders rejected = new HttpHeaders();
+                rejected.set(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE).headers(rejected).build();
+            }
+        }
+
+        headers.setContentLength(length);
+        return ResponseEntity.ok().headers(headers).body(resource);
+    }
+
+    /**
+     * 依檔名決定快取方式：UUID_原始檔名 永不改變，其他檔名須每次以 ETag 重新驗證
+     */
+    public static CacheControl cacheControlFor(String fileName, boolean sharedCache) {
+        if (!isImmutableName(fileName)) {
+            return CacheControl.noCache();
+        }
+        CacheControl cacheControl = CacheControl.maxAge(IMMUTABLE_MAX_AGE).immutable();
+        return sharedCache ? cacheControl.cachePublic() : cacheControl.cachePrivate();
+    }
+
+    /**
+     * 是否為上傳時產生的 UUID_原始檔名
+     */
+    public static boolean isImmutableName(String fileName) {
+        return fileName != null && UUID_PREFIXED.matcher(fileName).matches();
+    }
+
+    /**
+     * 強 ETag：檔案大小與修改時間（毫秒）
+     */
+    public static String eTagOf(long length, long lastModifiedMillis) {
+        return "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModifiedMillis) + "\"";
+    }
+
+    /**
+     * If-None-Match 優先（弱比較）；沒有時才看 If-Modified-Since（精確到秒）
+     */
+    private static boolean notModified(HttpHeaders requestHeaders, String eTag, long lastModified) {
+        List<String> ifNoneMatch;
+        try {
+            ifNoneMatch = requestHeaders.getIfNoneMatch();
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        if (!ifNoneMatch.isEmpty()) {
+            for (String candidate : ifNoneMatch) {
+                if ("*".equals(candidate.trim()) || opaqueTag(candidate).equals(opaqueTag(eTag))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        long ifModifiedSince = ifModifiedSince(requestHeaders);
+        return ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+    }
+
+    /**
+     * If-Range 為 ETag 時須強比較相同；為日期時須與修改時間相同（精確到秒）；沒有 If-Range 視為相符
+     */
+    private static boolean ifRangeMatches(String ifRange, String eTag, long lastModified) {
+        if (ifRange == null || ifRange.isBlank()) {
+            return true;
+        }
+        String value = ifRange.trim();
+        if (value.startsWith("\"") || value.startsWith("W/")) {
+            return value.equals(eTag);
+        }
+        HttpHeaders probe = new HttpHeaders();
+        probe.set(HttpHeaders.IF_MODIFIED_SINCE, value);
+        long date = ifModifiedSince(probe);
+        return date >= 0 && date / 1000 == lastModified / 1000;
+    }
+
+    private static long ifModifiedSince(HttpHeaders requestHeaders) {
+        try {
+            return requestHeaders.getIfModifiedSince();
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    private static String opaqueTag(String tag) {
+        String trimmed = tag.trim();
+        return trimmed.startsWith("W/") ? trimmed.substring(2) : trimmed;
+    }
+}
@@ -0,0 +1,202 @@
+package Group4.Childcare.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 雜湊時間輪（Hashed Timing Wheel）
+ *
+ * - 時間切成固定長度的 tick，每個 tick 對應輪上一格（格數為 2 的次方，以位元遮罩取格）
+ * - 到期時間超過一圈的項目記錄剩餘圈數，每經過所在格一次減一，歸零時到期
+ * - 每格為雙向鏈結串列，加入、取消皆為 O(1)；推進時只走訪經過的格子
+ *
+ * 同一 key 只保留最後一次排定的到期時間。所有方法皆為 synchronized，可由多個執行緒呼叫。
+ */
+public final class HashedTimerWheel<K> {
+
+    private static final int OVERDUE = -1;
+
+    private static final class Entry<K> {
+        final K key;
+        long remainingRounds;
+        int bucket;
+        Entry<K> prev;
+        Entry<K> next;
+
+        Entry(K key) {
+            this.key = key;
+        }
+    }
+
+    private final long tickMillis;
+    private final long startMillis;
+    private final int mask;
+    private final Entry<K>[] heads;
+    // 排定時已逾期的項目，下次推進時直接到期
+    private Entry<K> overdueHead;
+    private final Map<K, Entry<K>> entries = new HashMap<>();
+    // 下一個要處理的 tick（自 startMillis 起算）
+    private long currentTick;
+
+    /**
+     * @param tickMillis 每格時間長度（毫秒）
+     * @param wheelSize  格數（會調整為不小於此值的 2 的次方）
+     * @param startMillis 時間輪起點
+     */
+    @SuppressWarnings("unchecked")
+    public HashedTimerWheel(long tickMillis, int wheelSize, long startMillis) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("tickMillis 必須大於 0");
+        }
+        if (wheelSize <= 0 || wheelSize > (1 << 30)) {
+            throw new IllegalArgumentException("wheelSize 必須介於 1 與 2^30 之間");
+        }
+        int size = Integer.highestOneBit(wheelSize);
+        if (size < wheelSize) {
+            size <<= 1;
+        }
+        this.tickMillis = tickMillis;
+        this.startMillis = startMillis;
+        this.mask = size - 1;
+        this.heads = (Entry<K>[]) new Entry[size];
+    }
+
+    /**
+     * 排定 key 於 deadlineMillis 到期（已排定者改為新的到期時間；已過期者於下次推進時到期）
+     */
+    public synchronized void schedule(K key, long deadlineMillis) {
+        Entry<K> existing = entries.remove(key);
+        if (existing != null) {
+            unlink(existing);
+        }
+        Entry<K> entry = new Entry<>(key);
+        // 向上取整，確保推進到該格時已達到期時間
+        long deadlineTick = ceilDiv(deadlineMillis - startMillis, tickMillis);
+        if (deadlineTick < currentTick) {
+            entry.bucket = OVERDUE;
+        } else {
+            entry.remainingRounds = (deadlineTick - currentTick) / heads.length;
+            entry.bucket = (int) (deadlineTick & mask);
+        }
+        link(entry);
+        entries.put(key, entry);
+    }
+
+    /**
+     * 取消 key 的排程
+     * @return true 如果 key 原本有排程
+     */
+    public synchronized boolean cancel(K key) {
+        Entry<K> entry = entries.remove(key);
+        if (entry == null) {
+            return false;
+        }
+        unlink(entry);
+        return true;
+    }
+
+    /**
+     * 推進到 nowMillis，取出期間到期的 key（依經過的格子順序）
+     */
+    public synchronized List<K> advance(long nowMillis) {
+        List<K> expired = new ArrayList<>();
+        while (overdueHead != null) {
+            Entry<K> entry = overdueHead;
+            unlink(entry);
+            entries.remove(entry.key);
+            expired.add(entry.key);
+        }
+        long targetTick = Math.floorDiv(nowMillis - startMillis, tickMillis);
+        // 落後超過一圈時（例如長時間停頓），走到第 0 格後一次扣除整圈，不逐格空轉
+        while (currentTick <= targetTick && !entries.isEmpty()) {
+            long laps = (targetTick - currentTick) / heads.length;
+            if (laps > 0 && (currentTick & mask) == 0) {
+                expireLaps(laps, expired);
+            }
+            int bucket = (int) (currentTick & mask);
+            Entry<K> entry = heads[bucket];
+            while (entry != null) {
+                Entry<K> next = entry.next;
+                if (entry.remainingRounds <= 0) {
+                    unlink(entry);
+                    entries.remove(entry.key);
+                    expired.add(entry.key);
+                } else {
+                    entry.remainingRounds--;
+                }
+                entry = next;
+            }
+            currentTick++;
+        }
+        if (entries.isEmpty() && currentTick <= targetTick) {
+            currentTick = targetTick + 1;
+        }
+        return expired;
+    }
+
+    /**
+     * 一次扣除整圈數（每格都會經過 laps 次），用於長時間停頓後追上進度
+     */
+    private void expireLaps(long laps, List<K> expired) {
+        for (int bucket = 0; bucket < heads.length; bucket++) {
+            Entry<K> entry = heads[bucket];
+            while (entry != null) {
+                Entry<K> next = entry.next;
+                if (entry.remainingRounds < laps) {
+                    unlink(entry);
+                    entries.remove(entry.key);
+                    expired.add(entry.key);
+                } else {
+                    entry.remainingRounds -= laps;
+                }
+                entry = next;
+            }
+        }
+        currentTick += laps * heads.length;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized boolean contains(K key) {
+        return entries.containsKey(key);
+    }
+
+    private void link(Entry<K> entry) {
+        Entry<K> head = entry.bucket == OVERDUE ? overdueHead : heads[entry.bucket];
+        entry.prev = null;
+        entry.next = head;
+        if (head != null) {
+            head.prev = entry;
+        }
+        setHead(entry.bucket, entry);
+    }
+
+    private void unlink(Entry<K> entry) {
+        if (entry.prev != null) {
+            entry.prev.next = entry.next;
+        } else {
+            setHead(entry.bucket, entry.next);
+        }
+        if (entry.next != null) {
+            entry.next.prev = entry.prev;
+        }
+        entry.prev = null;
+        entry.next = null;
+    }
+
+    private void setHead(int bucket, Entry<K> entry) {
+        if (bucket == OVERDUE) {
+            overdueHead = entry;
+        } else {
+            heads[bucket] = entry;
+        }
+    }
+
+    private static long ceilDiv(long x, long y) {
+        return -Math.floorDiv(-x, y);
+    }
+}
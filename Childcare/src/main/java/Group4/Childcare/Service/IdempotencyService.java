@@ -0,0 +1,354 @@
+package Group4.Childcare.Service;
+
+import Group4.Childcare.Repository.IdempotencyKeyJdbcRepository;
+import Group4.Childcare.Repository.IdempotencyKeyJdbcRepository.StoredKey;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 冪等請求處理（Idempotency-Key）
+ *
+ * 同一個鍵只有第一個請求會真正執行（寫入資料、儲存附件），成功結果（ApplicationID 與回應內容）記錄於 idempotency_keys；
+ * 之後相同鍵的請求直接回傳記錄的結果，並加上 Idempotent-Replayed: true 標頭。
+ *
+ * - 同一節點同時送達的相同鍵：等待第一個請求在記憶體中的結果，不查詢資料庫
+ * - 其他節點正在處理的鍵：輪詢資料庫直到有結果，超過等待時間回傳 409
+ * - 執行失敗（例外、4xx、5xx）不記錄結果並釋放鍵，用戶端重試時重新處理
+ * - 已完成的結果同時快取在記憶體中，保存期限到期後由排程清除
+ * - 鍵依送件者（scope）區分；同一個鍵搭配不同的請求內容（指紋不同）回傳 422，不重播也不執行
+ */
+@Service
+public class IdempotencyService {
+
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    // 輪詢其他節點處理結果的間隔
+    private static final long POLL_INTERVAL_MILLIS = 200;
+
+    // 記憶體中最多快取的結果數，超過時只查資料庫
+    private static final int MAX_CACHED_OUTCOMES = 10_000;
+
+    private static final int PURGE_BATCH_SIZE = 1000;
+
+    /**
+     * 已完成請求的結果
+     * @param requestHash 請求指紋
+     */
+    public record Outcome(String requestHash, UUID applicationId, int statusCode, String responseBody,
+                          LocalDateTime expiresAt) {
+    }
+
+    private record ScopedKey(String scope, String key) {
+    }
+
+    /**
+     * 本節點處理中的請求
+     */
+    private record Pending(String requestHash, CompletableFuture<Outcome> future) {
+    }
+
+    private final IdempotencyKeyJdbcRepository idempotencyKeyJdbcRepository;
+    private final ObjectMapper objectMapper;
+    private final Duration ttl;
+    private final Duration lease;
+    private final long waitMillis;
+
+    private final ConcurrentHashMap<ScopedKey, Pending> inFlight = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<ScopedKey, Outcome> completed = new ConcurrentHashMap<>();
+
+    @Autowired
+    public IdempotencyService(IdempotencyKeyJdbcRepository idempotencyKeyJdbcRepository,
+                              ObjectMapper objectMapper,
+                              @Value("${idempotency.ttl-hours:24}") long ttlHours,
+                              @Value("${idempotency.lease-seconds:120}") long leaseSeconds,
+                              @Value("${idempotency.wait-ms:30000}") long waitMillis) {
+        this.idempotencyKeyJdbcRepository = idempotencyKeyJdbcRepository;
+        this.objectMapper = objectMapper;
+        this.ttl = Duration.ofHours(ttlHours);
+        this.lease = Duration.ofSeconds(leaseSeconds);
+        this.waitMillis = waitMillis;
+    }
+
+    /**
+     * 以冪等鍵執行請求
+     * @param scope 送件者（登入帳號），不同送件者的相同鍵互不影響
+     * @param key Idempotency-Key 標頭
+     * @param requestHash 請求指紋（見 fingerprint）
+     * @param action 實際處理請求
+     * @param applicationIdOf 由成功回應的內容取得 ApplicationID
+     * @return 第一次執行的回應，或重播記錄的結果；同一個鍵用於不同內容的請求時回傳 422
+     */
+    public ResponseEntity<?> execute(String scope, String key, String requestHash, Supplier<ResponseEntity<?>> action,
+                                     Function<Object, UUID> applicationIdOf) {
+        if (key.length() > IdempotencyKeyJdbcRepository.MAX_KEY_LENGTH) {
+            return ResponseEntity.badRequest()
+                    .body("Idempotency-Key 長度不可超過 " + IdempotencyKeyJdbcRepository.MAX_KEY_LENGTH + " 字元");
+        }
+        ScopedKey id = new ScopedKey(boundedScope(scope), key);
+        long deadline = System.currentTimeMillis() + waitMillis;
+
+        while (true) {
+            Outcome cached = cachedOutcome(id);
+            if (cached != null) {
+                return requestHash.equals(cached.requestHash()) ? replay(id, cached) : keyReused(id);
+            }
+
+            Pending mine = new Pending(requestHash, new CompletableFuture<>());
+            Pending running = inFlight.putIfAbsent(id, mine);
+            if (running != null) {
+                if (!requestHash.equals(running.requestHash())) {
+                    return keyReused(id);
+                }
+                // 同一節點的重送：等待第一個請求的結果
+                Outcome outcome = await(running.future(), deadline);
+                if (outcome != null) {
+                    return replay(id, outcome);
+                }
+                if (System.currentTimeMillis() >= deadline || Thread.currentThread().isInterrupted()) {
+                    return stillProcessing(id);
+                }
+                // 第一個請求失敗並已釋放鍵，重新嘗試
+                continue;
+            }
+
+            Outcome outcome = null;
+            try {
+                LocalDateTime now = LocalDateTime.now();
+                if (idempotencyKeyJdbcRepository.claim(id.scope(), id.key(), requestHash, now, now.plus(lease))) {
+                    ResponseEntity<?> response;
+                    try {
+                        response = action.get();
+                    } catch (RuntimeException e) {
+                        idempotencyKeyJdbcRepository.release(id.scope(), id.key());
+                        throw e;
+                    }
+                    outcome = record(id, requestHash, response, applicationIdOf);
+                    return response;
+                }
+
+                // 其他節點持有此鍵：等待其結果
+                StoredKey stored = awaitStored(id, requestHash, deadline);
+                if (stored != null) {
+                    if (!requestHash.equals(stored.requestHash())) {
+                        return keyReused(id);
+                    }
+                    outcome = new Outcome(stored.requestHash(), stored.applicationId(), stored.statusCode(),
+                            stored.responseBody(), stored.expiresAt());
+                    remember(id, outcome);
+                    return replay(id, outcome);
+                }
+                if (System.currentTimeMillis() >= deadline || Thread.currentThread().isInterrupted()) {
+                    return stillProcessing(id);
+                }
+                // 其他節點處理失敗或租約過期，重新認領
+            } finally {
+                inFlight.remove(id, mine);
+                mine.future().complete(outcome);
+            }
+        }
+    }
+
+    /**
+     * 請求指紋：請求內容（JSON）與附件描述（欄位名稱、檔名、大小）的 SHA-256
+     * @param requestBody 請求內容，須在處理請求（可能修改內容）之前計算
+     * @param attachments 附件描述，依送出順序
+     */
+    public String fingerprint(Object requestBody, List<String> attachments) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try {
+            digest.update(objectMapper.writeValueAsBytes(requestBody));
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("無法序列化請求內容", e);
+        }
+        for (String attachment : attachments) {
+            digest.update((byte) '\n');
+            digest.update(attachment.getBytes(StandardCharsets.UTF_8));
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * 每小時清除過期的鍵（記憶體與資料表）
+     */
+    @Scheduled(cron = "0 30 * * * *")
+    public void scheduledPurge() {
+        try {
+            purgeExpired();
+        } catch (Exception e) {
+            System.err.println("❌ 清除過期冪等鍵失敗: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 清除過期的鍵
+     * @return 資料表中刪除的筆數
+     */
+    public int purgeExpired() {
+        LocalDateTime now = LocalDateTime.now();
+        completed.values().removeIf(outcome -> outcome.expiresAt().isBefore(now));
+
+        int total = 0;
+        int deleted;
+        do {
+            deleted = idempotencyKeyJdbcRepository.deleteExpired(now, PURGE_BATCH_SIZE);
+            total += deleted;
+        } while (deleted >= PURGE_BATCH_SIZE);
+        if (total > 0) {
+            System.out.println("🧹 已清除 " + total + " 筆過期冪等鍵");
+        }
+        return total;
+    }
+
+    /**
+     * 記錄成功的回應；失敗的回應釋放鍵
+     * @return 記錄的結果；未記錄時為 null
+     */
+    private Outcome record(ScopedKey id, String requestHash, ResponseEntity<?> response,
+                           Function<Object, UUID> applicationIdOf) {
+        if (response == null || !response.getStatusCode().is2xxSuccessful()) {
+            idempotencyKeyJdbcRepository.release(id.scope(), id.key());
+            return null;
+        }
+        Outcome outcome;
+        try {
+            Object body = response.getBody();
+            outcome = new Outcome(requestHash, applicationIdOf.apply(body), response.getStatusCode().value(),
+                    objectMapper.writeValueAsString(body), LocalDateTime.now().plus(ttl));
+        } catch (Exception e) {
+            System.err.println("❌ 無法序列化冪等回應: key=" + id.key() + ", " + e.getMessage());
+            idempotencyKeyJdbcRepository.release(id.scope(), id.key());
+            return null;
+        }
+        try {
+            idempotencyKeyJdbcRepository.complete(id.scope(), id.key(), outcome.applicationId(), outcome.statusCode(),
+                    outcome.responseBody(), outcome.expiresAt());
+        } catch (Exception e) {
+            // 請求已成功，只是結果沒寫入；本節點仍可重播，其他節點於租約過期後才會重新處理
+            System.err.println("❌ 記錄冪等結果失敗: key=" + id.key() + ", " + e.getMessage());
+        }
+        remember(id, outcome);
+        System.out.println("🔑 已記錄冪等結果: key=" + id.key() + ", ApplicationID=" + outcome.applicationId());
+        return outcome;
+    }
+
+    private Outcome cachedOutcome(ScopedKey id) {
+        Outcome outcome = completed.get(id);
+        if (outcome != null && outcome.expiresAt().isBefore(LocalDateTime.now())) {
+            completed.remove(id, outcome);
+            return null;
+        }
+        return outcome;
+    }
+
+    private void remember(ScopedKey id, Outcome outcome) {
+        if (completed.size() < MAX_CACHED_OUTCOMES) {
+            completed.put(id, outcome);
+        }
+    }
+
+    /**
+     * 送件者識別超過欄位長度時以其 SHA-256 代替
+     */
+    private static String boundedScope(String scope) {
+        if (scope.length() <= IdempotencyKeyJdbcRepository.MAX_SCOPE_LENGTH) {
+            return scope;
+        }
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(scope.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Outcome await(CompletableFuture<Outcome> running, long deadline) {
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+            return null;
+        }
+        try {
+            return running.get(remaining, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException | TimeoutException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 輪詢資料庫直到其他節點記錄結果
+     * @return 已完成的記錄，或指紋與本次請求不同的記錄（不再等待）；鍵已釋放、租約過期或等待逾時時為 null
+     */
+    private StoredKey awaitStored(ScopedKey id, String requestHash, long deadline) {
+        while (true) {
+            Optional<StoredKey> stored = idempotencyKeyJdbcRepository.find(id.scope(), id.key());
+            if (stored.isEmpty()) {
+                return null;
+            }
+            StoredKey row = stored.get();
+            if (row.expiresAt() != null && row.expiresAt().isBefore(LocalDateTime.now())) {
+                return null;
+            }
+            if (row.isCompleted() || !requestHash.equals(row.requestHash())) {
+                return row;
+            }
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return null;
+            }
+            try {
+                Thread.sleep(Math.min(POLL_INTERVAL_MILLIS, remaining));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+    }
+
+    private ResponseEntity<?> replay(ScopedKey id, Outcome outcome) {
+        System.out.println("🔁 重播冪等結果: key=" + id.key() + ", ApplicationID=" + outcome.applicationId());
+        return ResponseEntity.status(outcome.statusCode())
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(REPLAYED_HEADER, "true")
+                .body(outcome.responseBody());
+    }
+
+    private ResponseEntity<?> stillProcessing(ScopedKey id) {
+        System.out.println("⏳ 冪等鍵仍在處理中: key=" + id.key());
+        return ResponseEntity.status(409).body("相同 Idempotency-Key 的請求仍在處理中，請稍後再試");
+    }
+
+    private ResponseEntity<?> keyReused(ScopedKey id) {
+        System.out.println("⚠️ 冪等鍵已用於內容不同的請求: key=" + id.key());
+        return ResponseEntity.status(422).body("Idempotency-Key 已用於內容不同的請求，請改用新的鍵");
+    }
+}
@@ -0,0 +1,317 @@
+package Group4.Childcare.Service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 橫幅與機構圖片的縮圖（衍生圖）
+ *
+ * - 上傳後於背景執行緒池產生 thumb / list / full 三種寬度並重新壓縮，不佔用請求執行緒；
+ *   佇列已滿時略過，讀取時退回原圖
+ * - 衍生圖存放在原圖旁的 .variants/{size}/ 下，檔名為 原檔名.jpg（含透明度者為 .png）
+ * - 原圖已小於目標寬度且重新壓縮後沒有變小時不產生，直接使用原圖
+ * - 解碼前先讀取圖片尺寸，超過像素上限者不處理，避免極大圖片耗盡記憶體
+ */
+@Service
+public class ImageDerivativeService {
+
+    public static final String VARIANT_DIR = ".variants";
+
+    /**
+     * 衍生圖尺寸：size 參數值與最大寬度（像素）
+     */
+    public enum Variant {
+        THUMBNAIL("thumb", 320),
+        LIST("list", 800),
+        FULL("full", 1920);
+
+        private final String key;
+        private final int maxWidth;
+
+        Variant(String key, int maxWidth) {
+            this.key = key;
+            this.maxWidth = maxWidth;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public int getMaxWidth() {
+            return maxWidth;
+        }
+
+        /**
+         * 解析 size 參數（thumb / thumbnail / list / full，不分大小寫）；未提供或無法辨識時回傳 null（原圖）
+         */
+        public static Variant fromParam(String size) {
+            if (size == null || size.isBlank()) {
+                return null;
+            }
+            String value = size.trim().toLowerCase(Locale.ROOT);
+            if ("thumbnail".equals(value)) {
+                return THUMBNAIL;
+            }
+            for (Variant variant : values()) {
+                if (variant.key.equals(value)) {
+                    return variant;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final String[] EXTENSIONS = {"jpg", "png"};
+
+    private final ThreadPoolExecutor executor;
+    private final long maxPixels;
+    private final float jpegQuality;
+
+    @Autowired
+    public ImageDerivativeService(@Value("${image.derivative.threads:2}") int threads,
+                                  @Value("${image.derivative.queue-capacity:200}") int queueCapacity,
+                                  @Value("${image.derivative.max-pixels:40000000}") long maxPixels,
+                                  @Value("${image.derivative.jpeg-quality:0.82}") float jpegQuality) {
+        this.maxPixels = maxPixels;
+        this.jpegQuality = jpegQuality;
+        AtomicInteger threadIndex = new AtomicInteger();
+        int poolSize = Math.max(1, threads);
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                r -> {
+                    Thread t = new Thread(r, "image-derivative-" + threadIndex.incrementAndGet());
+                    t.setDaemon(true);
+                    t.setPriority(Thread.MIN_PRIORITY);
+                    return t;
+                });
+    }
+
+    /**
+     * 排入背景產生衍生圖；佇列已滿時略過（讀取時使用原圖）
+     */
+    public void scheduleGeneration(Path original) {
+        try {
+            executor.execute(() -> {
+                try {
+                    generate(original);
+                } catch (Exception e) {
+                    System.err.println("❌ 產生縮圖失敗: " + original.getFileName() + ", " + e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            System.err.println("⚠️ 縮圖佇列已滿，略過: " + original.getFileName());
+        }
+    }
+
+    /**
+     * 產生所有尺寸的衍生圖（先刪除舊的）
+     * @return 實際寫入的衍生圖數量；不支援的格式或超過像素上限時為 0
+     */
+    public int generate(Path original) throws IOException {
+        deleteVariants(original);
+        FileTime modifiedAt = Files.getLastModifiedTime(original);
+        long originalSize = Files.size(original);
+
+        BufferedImage source = read(original);
+        if (source == null) {
+            return 0;
+        }
+        boolean alpha = source.getColorModel().hasAlpha();
+        String extension = alpha ? "png" : "jpg";
+
+        int written = 0;
+        for (Variant variant : Variant.values()) {
+            BufferedImage scaled = scale(source, variant.maxWidth, alpha);
+            Path target = variantFile(original, variant, extension);
+            Files.createDirectories(target.getParent());
+            Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+            Files.deleteIfExists(temp);
+            try {
+                write(scaled, extension, temp);
+                if (scaled.getWidth() == source.getWidth() && Files.size(temp) >= originalSize) {
+                    // 沒有縮小也沒有變小，直接使用原圖
+                    continue;
+                }
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                written++;
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+
+        // 產生期間原圖被覆寫（同名重新上傳）時捨棄，由新的排程重新產生
+        if (!Files.exists(original) || !modifiedAt.equals(Files.getLastModifiedTime(original))) {
+            deleteVariants(original);
+            return 0;
+        }
+        System.out.println("🖼️ 已產生縮圖: " + original.getFileName() + "，" + written + " 種尺寸");
+        return written;
+    }
+
+    /**
+     * 依 size 參數選擇要回傳的檔案；衍生圖尚未產生或參數無法辨識時回傳原圖
+     */
+    public static Path resolve(Path original, String size) {
+        Variant variant = Variant.fromParam(size);
+        if (variant == null) {
+            return original;
+        }
+        Path found = findVariant(original, variant);
+        return found != null ? found : original;
+    }
+
+    /**
+     * 已存在的衍生圖；沒有時回傳 null
+     */
+    public static Path findVariant(Path original, Variant variant) {
+        for (String extension : EXTENSIONS) {
+            Path candidate = variantFile(original, variant, extension);
+            if (Files.isRegularFile(candidate)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 刪除原圖的所有衍生圖（原圖刪除或覆寫時呼叫）
+     */
+    public static void deleteVariants(Path original) {
+        for (Variant variant : Variant.values()) {
+            for (String extension : EXTENSIONS) {
+                try {
+                    Files.deleteIfExists(variantFile(original, variant, extension));
+                } catch (IOException e) {
+                    System.err.println("❌ 刪除縮圖失敗: " + original.getFileName() + ", " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * 回傳檔案對應的原圖檔名（衍生圖去掉 .variants 下附加的副檔名）
+     */
+    public static String originalFileName(Path file) {
+        String name = file.getFileName().toString();
+        Path sizeDir = file.getParent();
+        if (sizeDir != null && sizeDir.getParent() != null
+                && VARIANT_DIR.equals(String.valueOf(sizeDir.getParent().getFileName()))) {
+            return name.substring(0, name.lastIndexOf('.'));
+        }
+        return name;
+    }
+
+    static Path variantFile(Path original, Variant variant, String extension) {
+        return original.resolveSibling(VARIANT_DIR).resolve(variant.key)
+                .resolve(original.getFileName() + "." + extension);
+    }
+
+    /**
+     * 先讀尺寸再解碼；無法辨識的格式（如 SVG、WebP）或超過像素上限時回傳 null
+     */
+    private BufferedImage read(Path original) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(original.toFile())) {
+            if (input == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+                if (pixels > maxPixels) {
+                    System.err.println("⚠️ 圖片過大，略過縮圖: " + original.getFileName() + "，" + pixels + " 像素");
+                    return null;
+                }
+                return reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * 等比例縮到 maxWidth 以內；大幅縮小時先逐次減半，避免單次雙線性縮放產生鋸齒
+     */
+    private static BufferedImage scale(BufferedImage source, int maxWidth, boolean alpha) {
+        int targetWidth = Math.min(maxWidth, source.getWidth());
+        int targetHeight = Math.max(1, (int) Math.round((double) source.getHeight() * targetWidth / source.getWidth()));
+        int type = alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+
+        BufferedImage current = source;
+        int width = source.getWidth();
+        int height = source.getHeight();
+        do {
+            width = Math.max(targetWidth, width / 2);
+            height = width == targetWidth ? targetHeight : Math.max(targetHeight, height / 2);
+            BufferedImage next = new BufferedImage(width, height, type);
+            Graphics2D g = next.createGraphics();
+            try {
+                if (!alpha) {
+                    // JPEG 不支援透明度，先鋪白底
+                    g.setColor(Color.WHITE);
+                    g.fillRect(0, 0, width, height);
+                }
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                g.drawImage(current, 0, 0, width, height, null);
+            } finally {
+                g.dispose();
+            }
+            current = next;
+        } while (width != targetWidth);
+        return current;
+    }
+
+    private void write(BufferedImage image, String extension, Path target) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName(extension).next();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(target.toFile())) {
+            writer.setOutput(output);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if ("jpg".equals(extension)) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(jpegQuality);
+                if (param.canWriteProgressive()) {
+                    param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+                }
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -9,6 +9,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -51,6 +52,16 @@ public class InstitutionsService {
     return repository.findById(id);
   }
 
+  /**
+   * 取得機構圖片檔案
+   * @param id 機構ID
+   * @param size thumb / list / full；null 時回傳原圖
+   * @return 檔案路徑，若機構沒有圖片返回 null
+   */
+  public Path getImageFile(UUID id, String size) {
+    return fileService.getInstitutionImageFile(id, size);
+  }
+
   public List<Institutions> getAll() {
     return repository.findAll();
   }
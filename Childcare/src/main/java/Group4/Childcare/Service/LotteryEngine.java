@@ -0,0 +1,367 @@
+package Group4.Childcare.Service;
+
+import Group4.Childcare.Repository.WaitlistRankKeys;
+
+import java.time.LocalDate;
+import java.time.Period;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.random.RandomGenerator;
+
+/**
+ * 三階段抽籤引擎（純記憶體運算，不依賴 JdbcTemplate）
+ *
+ * 規則與 WaitlistController.conductLottery 相同：
+ * 1. 法定名額：第一序位 20%、第二序位 10%、其餘為第三序位（以總容量計算）
+ * 2. 各序位洗牌後抽出正取，未抽中者併入下一序位池，剩餘名額往下遞延
+ * 3. 正取者依抽籤順序分配年齡相符的班級（ClassPlacementOptimizer：不擠掉先抽到的人，分配人數最多），
+ *    無班級可分配者列入候補
+ * 4. 候補者依抽籤順序重新編排 CurrentOrder（RANK_STEP、2 × RANK_STEP…，與 WaitlistRankKeys 相同的稀疏鍵）
+ *
+ * 引擎只負責從一份快照計算結果，寫回資料庫由 LotteryService 一次批次完成。
+ */
+public final class LotteryEngine {
+
+    public static final String STATUS_ADMITTED = "已錄取";
+    public static final String STATUS_WAITLISTED = "候補中";
+
+    private static final String[] TIER_LABELS = {"", "第一序位正取", "第二序位正取", "第三序位正取"};
+
+    private final RandomGenerator random;
+
+    /**
+     * @param random 亂數來源（測試時可傳入固定種子，例如 new SplittableRandom(42)）
+     */
+    public LotteryEngine(RandomGenerator random) {
+        this.random = random;
+    }
+
+    /**
+     * 抽籤申請人（幼兒）
+     * @param priority 1: 第一序位, 2: 第二序位, 3: 第三序位
+     * @param birthDate 出生日期（可為 null，無法分配班級）
+     */
+    public record Applicant(UUID applicationId, String nationalId, int priority, LocalDate birthDate) {
+    }
+
+    /**
+     * 班級快照（MinAgeDescription / MaxAgeDescription 為月齡，區間為 [min, max)）
+     * 年齡上下限任一為 null 的班級以 minAgeMonths = maxAgeMonths = -1 表示，不參與分配
+     */
+    public record ClassSlot(UUID classId, int minAgeMonths, int maxAgeMonths, int capacity, int currentStudents) {
+    }
+
+    /**
+     * 抽籤輸入快照
+     * @param acceptedByPriority 各序位已錄取人數，索引 1..3（索引 0 不使用）
+     * @param asOf 計算月齡的基準日
+     */
+    public record Snapshot(int totalCapacity, int currentStudents, int[] acceptedByPriority,
+                           List<Applicant> applicants, List<ClassSlot> classes, LocalDate asOf) {
+    }
+
+    /**
+     * 名額計算結果（供訊息與統計使用）
+     */
+    public record Quotas(int totalCapacity, int currentStudents, int availableSlots,
+                         int firstLegal, int secondLegal, int thirdLegal,
+                         int firstAccepted, int secondAccepted, int thirdAccepted,
+                         int firstQuota, int secondQuota, int thirdQuota) {
+    }
+
+    /**
+     * 單一申請人的抽籤結果
+     * @param applicantIndex 對應 Snapshot.applicants 的索引
+     * @param lotteryOrder 抽籤順序（1 起算）
+     * @param tier 正取的序位（1..3），未抽中為 0
+     * @param classId 錄取班級，候補者為 null
+     * @param currentOrder 候補序號，錄取者為 null
+     */
+    public record Decision(int applicantIndex, Applicant applicant, int lotteryOrder, int tier,
+                           String status, String reason, UUID classId, Integer currentOrder) {
+
+        public boolean admitted() {
+            return STATUS_ADMITTED.equals(status);
+        }
+    }
+
+    /**
+     * 抽籤結果
+     * @param accepted 已錄取者（依抽籤順序）
+     * @param waitlist 候補者（依 CurrentOrder）
+     * @param released 聯合分發時因已錄取較優先志願而撤銷的申請（單一機構抽籤一律為空）
+     * @param admittedPerClass 各班級本次新增錄取人數，索引對應 Snapshot.classes
+     */
+    public record Outcome(Quotas quotas, List<Decision> accepted, List<Decision> waitlist,
+                          List<Decision> released, int firstAccepted, int secondAccepted, int thirdAccepted,
+                          int[] admittedPerClass) {
+    }
+
+    /**
+     * 依快照執行三階段抽籤與班級分配
+     */
+    public Outcome run(Snapshot snapshot) {
+        List<Applicant> applicants = snapshot.applicants();
+        int n = applicants.size();
+
+        Quotas quotas = computeQuotas(snapshot);
+        int[] priorities = normalizedPriorities(applicants);
+        int[] ages = computeAgesInMonths(applicants, snapshot.asOf());
+        AgeBandIndex index = new AgeBandIndex(snapshot.classes());
+
+        Workspace ws = new Workspace(n, index.classCount());
+        int selectedTotal = draw(priorities, quotas, random, ws);
+        place(ws, selectedTotal, ages, index);
+
+        // === 組合結果 ===
+        List<Decision> accepted = new ArrayList<>(selectedTotal);
+        List<Decision> waitlist = new ArrayList<>(n - selectedTotal);
+        int[] admittedPerClass = new int[snapshot.classes().size()];
+        int[] acceptedByTier = new int[4];
+        int currentOrder = WaitlistRankKeys.RANK_STEP;
+
+        for (int k = 0; k < n; k++) {
+            int i = ws.drawn[k];
+            int lotteryOrder = k + 1;
+            int tier = ws.tierOf[i];
+            Applicant applicant = applicants.get(i);
+            if (tier == 0) {
+                waitlist.add(new Decision(i, applicant, lotteryOrder, 0, STATUS_WAITLISTED, null, null, currentOrder));
+                currentOrder += WaitlistRankKeys.RANK_STEP;
+            } else if (ws.classOf[i] >= 0) {
+                admittedPerClass[ws.classOf[i]]++;
+                acceptedByTier[tier]++;
+                accepted.add(new Decision(i, applicant, lotteryOrder, tier, STATUS_ADMITTED, TIER_LABELS[tier],
+                        snapshot.classes().get(ws.classOf[i]).classId(), null));
+            } else {
+                String reason = TIER_LABELS[tier] + (ages[i] < 0 ? "-無出生日期"
+                        : index.hasBand(ages[i]) ? "-班級已滿" : "-無適合年齡班級");
+                waitlist.add(new Decision(i, applicant, lotteryOrder, tier, STATUS_WAITLISTED, reason, null, currentOrder));
+                currentOrder += WaitlistRankKeys.RANK_STEP;
+            }
+        }
+
+        return new Outcome(quotas, accepted, waitlist, List.of(),
+                acceptedByTier[1], acceptedByTier[2], acceptedByTier[3], admittedPerClass);
+    }
+
+    /**
+     * 抽籤與分配用的暫存陣列，可重複使用（模擬時每個工作執行緒一份）
+     */
+    static final class Workspace {
+        final int[] pool1;
+        final int[] pool2;
+        final int[] pool3;
+        // drawn[k] = 第 k 位抽出的申請人索引（正取在前，備取在後）
+        final int[] drawn;
+        // tierOf[i] = 正取序位（0 = 未抽中）
+        final int[] tierOf;
+        // classOf[i] = 分配到的班級索引（-1 = 未分配）
+        final int[] classOf;
+        final int[] remaining;
+        final ClassPlacementOptimizer.Scratch placement;
+
+        Workspace(int applicantCount, int classCount) {
+            pool1 = new int[applicantCount];
+            pool2 = new int[applicantCount];
+            pool3 = new int[applicantCount];
+            drawn = new int[applicantCount];
+            tierOf = new int[applicantCount];
+            classOf = new int[applicantCount];
+            remaining = new int[classCount];
+            placement = new ClassPlacementOptimizer.Scratch(classCount);
+        }
+    }
+
+    /**
+     * 三階段抽籤（只操作原始型別陣列）
+     * @param priorities 各申請人序位（1..3）
+     * @return 正取人數（ws.drawn 前 selectedTotal 位為正取）
+     */
+    static int draw(int[] priorities, Quotas quotas, RandomGenerator random, Workspace ws) {
+        int n = priorities.length;
+        int p1 = 0;
+        int p2 = 0;
+        int p3 = 0;
+        for (int i = 0; i < n; i++) {
+            ws.tierOf[i] = 0;
+            switch (priorities[i]) {
+                case 1 -> ws.pool1[p1++] = i;
+                case 2 -> ws.pool2[p2++] = i;
+                default -> ws.pool3[p3++] = i;
+            }
+        }
+        int drawnCount = 0;
+
+        // === 第一序位抽籤 ===
+        shuffle(ws.pool1, p1, random);
+        int selected1 = quotas.firstQuota() <= 0 ? 0 : Math.min(p1, quotas.firstQuota());
+        for (int i = 0; i < selected1; i++) {
+            ws.drawn[drawnCount++] = ws.pool1[i];
+            ws.tierOf[ws.pool1[i]] = 1;
+        }
+        // 第一序位未錄取者加入第二序位池
+        System.arraycopy(ws.pool1, selected1, ws.pool2, p2, p1 - selected1);
+        p2 += p1 - selected1;
+
+        // === 第二序位抽籤 ===
+        int available2 = quotas.secondQuota() + (quotas.firstQuota() - selected1);
+        shuffle(ws.pool2, p2, random);
+        int selected2 = available2 <= 0 ? 0 : Math.min(p2, available2);
+        for (int i = 0; i < selected2; i++) {
+            ws.drawn[drawnCount++] = ws.pool2[i];
+            ws.tierOf[ws.pool2[i]] = 2;
+        }
+        // 第一、二序位未錄取者加入第三序位池
+        System.arraycopy(ws.pool2, selected2, ws.pool3, p3, p2 - selected2);
+        p3 += p2 - selected2;
+
+        // === 第三序位抽籤 ===
+        int available3 = quotas.thirdQuota()
+                + (quotas.firstQuota() - selected1)
+                + (quotas.secondQuota() - selected2);
+        shuffle(ws.pool3, p3, random);
+        int selected3 = available3 <= 0 ? 0 : Math.min(p3, available3);
+        for (int i = 0; i < selected3; i++) {
+            ws.drawn[drawnCount++] = ws.pool3[i];
+            ws.tierOf[ws.pool3[i]] = 3;
+        }
+        int selectedTotal = drawnCount;
+        // 未抽中者（備取）接在正取者之後
+        for (int i = selected3; i < p3; i++) {
+            ws.drawn[drawnCount++] = ws.pool3[i];
+        }
+        return selectedTotal;
+    }
+
+    /**
+     * 依抽籤順序為正取者分配班級（依序最佳匹配，見 ClassPlacementOptimizer）
+     */
+    static void place(Workspace ws, int selectedTotal, int[] ages, AgeBandIndex index) {
+        ClassPlacementOptimizer.optimal(ws.drawn, selectedTotal, ages, index, ws.remaining, ws.classOf, ws.placement);
+    }
+
+    /**
+     * 計算法定名額與本次可錄取名額
+     * 如果名額已滿（availableSlots <= 0），所有quota都設為0，但仍然執行抽籤以打亂CurrentOrder
+     */
+    public static Quotas computeQuotas(Snapshot snapshot) {
+        int totalCapacity = snapshot.totalCapacity();
+        int currentStudents = snapshot.currentStudents();
+        int availableSlots = totalCapacity - currentStudents;
+
+        int firstLegal = (int) Math.floor(totalCapacity * 0.2);
+        int secondLegal = (int) Math.floor(totalCapacity * 0.1);
+        int thirdLegal = totalCapacity - firstLegal - secondLegal;
+
+        int[] acceptedByPriority = snapshot.acceptedByPriority();
+        int firstAccepted = acceptedByPriority[1];
+        int secondAccepted = acceptedByPriority[2];
+        int thirdAccepted = acceptedByPriority[3];
+
+        int firstQuota = availableSlots > 0 ? Math.max(0, firstLegal - firstAccepted) : 0;
+        int secondQuota = availableSlots > 0 ? Math.max(0, secondLegal - secondAccepted) : 0;
+        int thirdQuota = availableSlots > 0 ? Math.max(0, thirdLegal - thirdAccepted) : 0;
+
+        return new Quotas(totalCapacity, currentStudents, availableSlots,
+                firstLegal, secondLegal, thirdLegal,
+                firstAccepted, secondAccepted, thirdAccepted,
+                firstQuota, secondQuota, thirdQuota);
+    }
+
+    /**
+     * 計算月齡，出生日期為 null 時回傳 -1
+     */
+    static int[] computeAgesInMonths(List<Applicant> applicants, LocalDate asOf) {
+        int[] ages = new int[applicants.size()];
+        for (int i = 0; i < ages.length; i++) {
+            LocalDate birthDate = applicants.get(i).birthDate();
+            if (birthDate == null) {
+                ages[i] = -1;
+            } else {
+                Period period = Period.between(birthDate, asOf);
+                ages[i] = Math.max(0, period.getYears() * 12 + period.getMonths());
+            }
+        }
+        return ages;
+    }
+
+    static int[] normalizedPriorities(List<Applicant> applicants) {
+        int[] priorities = new int[applicants.size()];
+        for (int i = 0; i < priorities.length; i++) {
+            int priority = applicants.get(i).priority();
+            priorities[i] = priority == 1 || priority == 2 ? priority : 3;
+        }
+        return priorities;
+    }
+
+    /**
+     * Fisher-Yates 洗牌（只洗前 length 個元素）
+     */
+    private static void shuffle(int[] values, int length, RandomGenerator random) {
+        for (int i = length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = values[i];
+            values[i] = values[j];
+            values[j] = tmp;
+        }
+    }
+
+    /**
+     * 月齡 → 可收托班級索引（依班級原順序），對應 findSuitableClass 的 min <= age < max 規則
+     */
+    static final class AgeBandIndex {
+        private static final int[] NONE = new int[0];
+
+        private final int[][] byMonth;
+        private final int[] capacities;
+        private final int[] currentStudents;
+
+        AgeBandIndex(List<ClassSlot> classes) {
+            int maxMonth = 0;
+            for (ClassSlot slot : classes) {
+                maxMonth = Math.max(maxMonth, slot.maxAgeMonths());
+            }
+            int[] bandSizes = new int[maxMonth];
+            for (ClassSlot slot : classes) {
+                for (int m = Math.max(0, slot.minAgeMonths()); m < slot.maxAgeMonths(); m++) {
+                    bandSizes[m]++;
+                }
+            }
+            byMonth = new int[maxMonth][];
+            for (int m = 0; m < maxMonth; m++) {
+                byMonth[m] = bandSizes[m] == 0 ? NONE : new int[bandSizes[m]];
+                bandSizes[m] = 0;
+            }
+            capacities = new int[classes.size()];
+            currentStudents = new int[classes.size()];
+            for (int c = 0; c < classes.size(); c++) {
+                ClassSlot slot = classes.get(c);
+                capacities[c] = slot.capacity();
+                currentStudents[c] = slot.currentStudents();
+                for (int m = Math.max(0, slot.minAgeMonths()); m < slot.maxAgeMonths(); m++) {
+                    byMonth[m][bandSizes[m]++] = c;
+                }
+            }
+        }
+
+        int[] classesFor(int ageInMonths) {
+            return ageInMonths >= 0 && ageInMonths < byMonth.length ? byMonth[ageInMonths] : NONE;
+        }
+
+        boolean hasBand(int ageInMonths) {
+            return classesFor(ageInMonths).length > 0;
+        }
+
+        int classCount() {
+            return capacities.length;
+        }
+
+        void resetRemaining(int[] remaining) {
+            for (int c = 0; c < remaining.length; c++) {
+                remaining[c] = Math.max(0, capacities[c] - currentStudents[c]);
+            }
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package Group4.Childcare.Service;
+
+import Group4.Childcare.DTO.LotteryResult;
+import Group4.Childcare.Model.Institutions;
+import Group4.Childcare.Model.LotteryRun;
+import Group4.Childcare.Model.LotteryRunResult;
+import Group4.Childcare.Repository.InstitutionsJdbcRepository;
+import Group4.Childcare.Repository.LotteryRunJdbcRepository;
+import Group4.Childcare.Service.LotteryService.LotteryLockedException;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 批次抽籤（全縣市或指定機構）
+ *
+ * - 以固定大小的執行緒池平行處理各機構，每個機構獨立一個交易
+ * - 每個機構由 LotteryService.conductLottery 取得資料庫應用程式鎖（sp_getapplock），已被其他節點鎖定者記為「略過」
+ * - 進度與各機構結果寫入 lottery_runs / lottery_run_results，由 API 分頁查詢
+ */
+@Service
+public class LotteryJobService {
+
+    private final LotteryService lotteryService;
+    private final LotteryNotificationService lotteryNotificationService;
+    private final InstitutionsJdbcRepository institutionsJdbcRepository;
+    private final LotteryRunJdbcRepository lotteryRunJdbcRepository;
+    private final ThreadPoolExecutor executor;
+
+    @Autowired
+    public LotteryJobService(LotteryService lotteryService,
+                             LotteryNotificationService lotteryNotificationService,
+                             InstitutionsJdbcRepository institutionsJdbcRepository,
+                             LotteryRunJdbcRepository lotteryRunJdbcRepository,
+                             @Value("${lottery.job.parallelism:4}") int parallelism,
+                             @Value("${lottery.job.queue-capacity:1000}") int queueCapacity) {
+        this.lotteryService = lotteryService;
+        this.lotteryNotificationService = lotteryNotificationService;
+        this.institutionsJdbcRepository = institutionsJdbcRepository;
+        this.lotteryRunJdbcRepository = lotteryRunJdbcRepository;
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(parallelism, parallelism, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread t = new Thread(r, "lottery-job-" + threadIndex.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    /**
+     * 建立批次抽籤並於背景執行
+     * @param institutionIds 要抽籤的機構；null 或空集合代表所有啟用中機構
+     * @return 執行紀錄（含 RunID）
+     */
+    public LotteryRun startJob(List<UUID> institutionIds) {
+        List<UUID> targets = new ArrayList<>();
+        if (institutionIds == null || institutionIds.isEmpty()) {
+            for (Institutions institution : institutionsJdbcRepository.findAllActive()) {
+                targets.add(institution.getInstitutionID());
+            }
+        } else {
+            targets.addAll(new LinkedHashSet<>(institutionIds));
+        }
+
+        LotteryRun run = lotteryRunJdbcRepository.createRun(targets.size());
+        System.out.println("🎲 批次抽籤開始: RunID=" + run.getRunID() + "，機構數=" + targets.size());
+
+        for (UUID institutionId : targets) {
+            try {
+                executor.execute(() -> runInstitution(run.getRunID(), institutionId));
+            } catch (RejectedExecutionException e) {
+                LotteryRunResult result = newResult(run.getRunID(), institutionId, LocalDateTime.now());
+                result.setStatus(LotteryRunJdbcRepository.RESULT_STATUS_FAILED);
+                result.setMessage("佇列已滿，未執行");
+                result.setFinishedAt(LocalDateTime.now());
+                lotteryRunJdbcRepository.recordResult(result);
+            }
+        }
+        return run;
+    }
+
+    public Optional<LotteryRun> getRun(UUID runId) {
+        return lotteryRunJdbcRepository.findRunById(runId);
+    }
+
+    public List<LotteryRunResult> getResults(UUID runId, int offset, int limit) {
+        return lotteryRunJdbcRepository.findResultsWithOffset(runId, offset, limit);
+    }
+
+    public long countResults(UUID runId) {
+        return lotteryRunJdbcRepository.countResults(runId);
+    }
+
+    /**
+     * 單一機構抽籤（conductLottery 於獨立交易中執行）
+     */
+    void runInstitution(UUID runId, UUID institutionId) {
+        LotteryRunResult result = newResult(runId, institutionId, LocalDateTime.now());
+        LotteryResult lotteryResult = null;
+        try {
+            lotteryResult = lotteryService.conductLottery(institutionId);
+            result.setStatus(LotteryRunJdbcRepository.RESULT_STATUS_SUCCESS);
+            result.setMessage(lotteryResult.getMessage());
+            result.setTotalProcessed(lotteryResult.getTotalProcessed());
+            result.setFirstPriorityAccepted(lotteryResult.getFirstPriorityAccepted());
+            result.setSecondPriorityAccepted(lotteryResult.getSecondPriorityAccepted());
+            result.setThirdPriorityAccepted(lotteryResult.getThirdPriorityAccepted());
+            result.setWaitlisted(lotteryResult.getWaitlisted());
+        } catch (LotteryLockedException e) {
+            result.setStatus(LotteryRunJdbcRepository.RESULT_STATUS_SKIPPED);
+            result.setMessage("其他節點正在進行此機構抽籤");
+        } catch (Exception e) {
+            System.err.println("❌ 批次抽籤失敗: InstitutionID=" + institutionId + ", " + e.getMessage());
+            result.setStatus(LotteryRunJdbcRepository.RESULT_STATUS_FAILED);
+            result.setMessage("抽籤失敗: " + e.getMessage());
+        }
+        result.setFinishedAt(LocalDateTime.now());
+
+        try {
+            lotteryRunJdbcRepository.recordResult(result);
+        } catch (Exception e) {
+            System.err.println("❌ 寫入批次抽籤結果失敗: RunID=" + runId + ", InstitutionID=" + institutionId + ", " + e.getMessage());
+        }
+
+        // 交易提交後才寄送通知
+        if (lotteryResult != null) {
+            lotteryNotificationService.sendLotteryNotificationEmails(
+                    lotteryResult.getAcceptedList(), lotteryResult.getWaitlistList());
+        }
+    }
+
+    private static LotteryRunResult newResult(UUID runId, UUID institutionId, LocalDateTime startedAt) {
+        LotteryRunResult result = new LotteryRunResult();
+        result.setRunID(runId);
+        result.setInstitutionID(institutionId);
+        result.setStartedAt(startedAt);
+        return result;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,194 @@
+package Group4.Childcare.Service;
+
+import jakarta.mail.MessagingException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 抽籤結果通知（單一機構抽籤與批次抽籤共用）
+ */
+@Service
+public class LotteryNotificationService {
+    private final EmailService emailService;
+
+    @Autowired
+    public LotteryNotificationService(EmailService emailService) {
+        this.emailService = emailService;
+    }
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    /**
+     * 發送抽籤通知郵件給錄取者和候補者
+     */
+    public void sendLotteryNotificationEmails(List<Map<String, Object>> acceptedList,
+                                              List<Map<String, Object>> waitlist) {
+        sendLotteryNotificationEmails(acceptedList, waitlist, List.of());
+    }
+
+    /**
+     * 發送抽籤通知郵件給錄取者、候補者，以及聯合分發中因已錄取較優先志願而撤銷的申請人
+     * （撤銷者寄送撤銷通知，不寄候補通知）
+     */
+    public void sendLotteryNotificationEmails(List<Map<String, Object>> acceptedList,
+                                              List<Map<String, Object>> waitlist,
+                                              List<Map<String, Object>> releasedList) {
+        int successCount = 0;
+        int failCount = 0;
+
+        System.out.println("📧 開始發送抽籤通知郵件...");
+        System.out.println("  錄取人數: " + acceptedList.size());
+        System.out.println("  候補人數: " + waitlist.size());
+        System.out.println("  撤銷人數: " + releasedList.size());
+
+        // 發送郵件給錄取者
+        for (Map<String, Object> applicant : acceptedList) {
+            try {
+                String email = (String) applicant.get("Email");
+                String applicantName = (String) applicant.get("ApplicantName");
+                String childName = (String) applicant.get("ChildName");
+                String institutionName = (String) applicant.get("InstitutionName");
+                Object caseNumberObj = applicant.get("CaseNumber");
+                Long caseNumber = caseNumberObj != null ? ((Number) caseNumberObj).longValue() : null;
+                String status = (String) applicant.get("Status");
+                String reason = (String) applicant.get("Reason");
+
+                String applicationDate = formatApplicationDate(applicant.get("ApplicationDate"));
+
+                if (email != null && !email.isEmpty()) {
+                    emailService.sendApplicationStatusChangeEmail(
+                        email,
+                        applicantName,
+                        childName,
+                        institutionName,
+                        caseNumber,
+                        applicationDate,
+                        status,
+                        null, // 錄取者不需要顯示序號
+                        reason
+                    );
+                    successCount++;
+                    System.out.println("  ✅ 已排程發送錄取通知給: " + applicantName + " (" + email + ")");
+                } else {
+                    System.out.println("  ⚠️ 無法發送郵件給: " + applicantName + " (無 Email)");
+                    failCount++;
+                }
+            } catch (Exception e) {
+                System.err.println("  ❌ 處理申請人資料時發生錯誤: " + e.getMessage());
+                failCount++;
+            }
+        }
+
+        // 發送郵件給候補者
+        for (Map<String, Object> applicant : waitlist) {
+            try {
+                String email = (String) applicant.get("Email");
+                String applicantName = (String) applicant.get("ApplicantName");
+                String childName = (String) applicant.get("ChildName");
+                String institutionName = (String) applicant.get("InstitutionName");
+                Object caseNumberObj = applicant.get("CaseNumber");
+                Long caseNumber = caseNumberObj != null ? ((Number) caseNumberObj).longValue() : null;
+                String status = (String) applicant.get("Status");
+                // 抽籤結果帶 WaitlistPosition（名次），CurrentOrder 為排序鍵
+                Object positionObj = applicant.get("WaitlistPosition") != null
+                        ? applicant.get("WaitlistPosition") : applicant.get("CurrentOrder");
+                Integer currentOrder = positionObj != null ? ((Number) positionObj).intValue() : null;
+
+                String applicationDate = formatApplicationDate(applicant.get("ApplicationDate"));
+
+                if (email != null && !email.isEmpty()) {
+                    emailService.sendApplicationStatusChangeEmail(
+                        email,
+                        applicantName,
+                        childName,
+                        institutionName,
+                        caseNumber,
+                        applicationDate,
+                        status,
+                        currentOrder, // 候補者需要顯示目前序號
+                        "抽籤結果：候補名單"
+                    );
+                    successCount++;
+                    System.out.println("  ✅ 已發送候補通知給: " + applicantName + " (序號: " + currentOrder + ", " + email + ")");
+                } else {
+                    System.out.println("  ⚠️ 無法發送郵件給: " + applicantName + " (無 Email)");
+                    failCount++;
+                }
+            } catch (MessagingException e) {
+                System.err.println("  ❌ 發送郵件失敗: " + e.getMessage());
+                failCount++;
+            } catch (Exception e) {
+                System.err.println("  ❌ 處理申請人資料時發生錯誤: " + e.getMessage());
+                failCount++;
+            }
+        }
+
+        // 發送撤銷通知給已錄取較優先志願者
+        for (Map<String, Object> applicant : releasedList) {
+            try {
+                String email = (String) applicant.get("Email");
+                String applicantName = (String) applicant.get("ApplicantName");
+                String childName = (String) applicant.get("ChildName");
+                String institutionName = (String) applicant.get("InstitutionName");
+                Object caseNumberObj = applicant.get("CaseNumber");
+                Long caseNumber = caseNumberObj != null ? ((Number) caseNumberObj).longValue() : null;
+                String status = (String) applicant.get("Status");
+                String reason = (String) applicant.get("Reason");
+                String applicationDate = formatApplicationDate(applicant.get("ApplicationDate"));
+
+                if (email != null && !email.isEmpty()) {
+                    emailService.sendApplicationStatusChangeEmail(
+                        email,
+                        applicantName,
+                        childName,
+                        institutionName,
+                        caseNumber,
+                        applicationDate,
+                        status,
+                        null, // 撤銷者不占候補序號
+                        "聯合分發結果：" + reason + "，本申請已撤銷"
+                    );
+                    successCount++;
+                    System.out.println("  ✅ 已發送撤銷通知給: " + applicantName + " (" + email + ")");
+                } else {
+                    System.out.println("  ⚠️ 無法發送郵件給: " + applicantName + " (無 Email)");
+                    failCount++;
+                }
+            } catch (MessagingException e) {
+                System.err.println("  ❌ 發送郵件失敗: " + e.getMessage());
+                failCount++;
+            } catch (Exception e) {
+                System.err.println("  ❌ 處理申請人資料時發生錯誤: " + e.getMessage());
+                failCount++;
+            }
+        }
+
+        System.out.println("📧 郵件發送完成！");
+        System.out.println("  成功: " + successCount + " 封");
+        System.out.println("  失敗: " + failCount + " 封");
+    }
+
+    /**
+     * 轉換申請日期（補齊 java.sql.Date / LocalDate）
+     */
+    private static String formatApplicationDate(Object applicationDateObj) {
+        if (applicationDateObj instanceof LocalDateTime) {
+            return ((LocalDateTime) applicationDateObj).format(DATE_FORMATTER);
+        } else if (applicationDateObj instanceof java.sql.Timestamp) {
+            return ((java.sql.Timestamp) applicationDateObj).toLocalDateTime().format(DATE_FORMATTER);
+        } else if (applicationDateObj instanceof java.sql.Date) {
+            return ((java.sql.Date) applicationDateObj).toLocalDate().format(DATE_FORMATTER);
+        } else if (applicationDateObj instanceof LocalDate) {
+            return ((LocalDate) applicationDateObj).format(DATE_FORMATTER);
+        } else if (applicationDateObj instanceof String) {
+            return (String) applicationDateObj;
+        }
+        return "";
+    }
+}
@@ -0,0 +1,312 @@
+package Group4.Childcare.Service;
+
+import Group4.Childcare.DTO.LotteryResult;
+import Group4.Childcare.Repository.WaitlistJdbcRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.random.RandomGenerator;
+
+/**
+ * 抽籤服務
+ *
+ * 流程：
+ * 1. 一次讀取機構快照（容量、各序位已錄取數、候補申請人、班級資訊）
+ * 2. 交由 LotteryEngine 在記憶體中計算完整結果
+ * 3. 以一次批次更新寫回申請人，並以 ClassSeatLedger 條件式佔用各班級座位（座位不足時整份結果回滾）
+ *
+ * 抽籤期間不再逐筆呼叫 hasClassCapacity / updateClassCurrentStudents，
+ * 縮短 application_participants 與 classes 的鎖定時間。
+ */
+@Service
+public class LotteryService {
+
+    private final WaitlistJdbcRepository waitlistJdbcRepository;
+    private final WaitlistRankIndexService waitlistRankIndexService;
+    private final AdmissionHoldService admissionHoldService;
+
+    @Autowired
+    public LotteryService(WaitlistJdbcRepository waitlistJdbcRepository,
+                          WaitlistRankIndexService waitlistRankIndexService,
+                          AdmissionHoldService admissionHoldService) {
+        this.waitlistJdbcRepository = waitlistJdbcRepository;
+        this.waitlistRankIndexService = waitlistRankIndexService;
+        this.admissionHoldService = admissionHoldService;
+    }
+
+    /**
+     * 其他節點正在對同一機構抽籤（未取得機構抽籤鎖）
+     */
+    public static class LotteryLockedException extends IllegalStateException {
+        public LotteryLockedException(UUID institutionId) {
+            super("機構 " + institutionId + " 正在進行抽籤，請稍後再試");
+        }
+    }
+
+    /**
+     * 讀取後的快照與原始資料列（資料列用於回傳結果與寄送郵件）
+     */
+    public record LoadedSnapshot(LotteryEngine.Snapshot snapshot, List<Map<String, Object>> rows) {
+    }
+
+    /**
+     * 執行指定機構的抽籤並寫回資料庫
+     * @throws LotteryLockedException 其他節點正在抽同一機構
+     */
+    @Transactional
+    public LotteryResult conductLottery(UUID institutionId) {
+        return conductLottery(institutionId, new SplittableRandom());
+    }
+
+    /**
+     * 執行指定機構的抽籤並寫回資料庫（可指定亂數來源，便於重現結果）
+     * 先取得機構抽籤鎖（所有抽籤入口只在此取得），其他節點正在抽同一機構時直接失敗
+     * @throws LotteryLockedException 其他節點正在抽同一機構
+     */
+    @Transactional
+    public LotteryResult conductLottery(UUID institutionId, RandomGenerator random) {
+        if (!waitlistJdbcRepository.tryAcquireLotteryLock(institutionId)) {
+            throw new LotteryLockedException(institutionId);
+        }
+        LoadedSnapshot loaded = loadSnapshot(institutionId);
+        LotteryEngine.Outcome outcome = new LotteryEngine(random).run(loaded.snapshot());
+        LotteryResult result = applyOutcome(loaded, outcome);
+        // 抽籤以 RANK_STEP 間隔改寫候補排序鍵，序列需對齊，後續新候補者才會排在最後
+        waitlistJdbcRepository.syncRankSequence(institutionId);
+        waitlistRankIndexService.invalidate(institutionId);
+        return result;
+    }
+
+    /**
+     * 讀取抽籤所需的機構快照
+     */
+    public LoadedSnapshot loadSnapshot(UUID institutionId) {
+        int totalCapacity = waitlistJdbcRepository.getTotalCapacity(institutionId);
+        int currentStudents = waitlistJdbcRepository.getCurrentStudentsCount(institutionId);
+
+        Map<Integer, Integer> acceptedCountByPriority = waitlistJdbcRepository.getAcceptedCountByPriority(institutionId);
+        int[] acceptedByPriority = new int[4];
+        for (int priority = 1; priority <= 3; priority++) {
+            Integer count = acceptedCountByPriority.get(priority);
+            acceptedByPriority[priority] = count != null ? count : 0;
+        }
+
+        Map<Integer, List<Map<String, Object>>> applicantsByPriority =
+                waitlistJdbcRepository.getLotteryApplicantsByPriority(institutionId);
+        List<Map<String, Object>> rows = new ArrayList<>();
+        List<LotteryEngine.Applicant> applicants = new ArrayList<>();
+        for (int priority = 1; priority <= 3; priority++) {
+            List<Map<String, Object>> group = applicantsByPriority.get(priority);
+            if (group == null) {
+                continue;
+            }
+            for (Map<String, Object> row : group) {
+                rows.add(row);
+                applicants.add(toApplicant(row, priority));
+            }
+        }
+
+        List<LotteryEngine.ClassSlot> classes = new ArrayList<>();
+        for (Map<String, Object> classInfo : waitlistJdbcRepository.getClassInfo(institutionId)) {
+            LotteryEngine.ClassSlot slot = toClassSlot(classInfo);
+            if (slot != null) {
+                classes.add(slot);
+            }
+        }
+
+        LotteryEngine.Snapshot snapshot = new LotteryEngine.Snapshot(
+                totalCapacity, currentStudents, acceptedByPriority, applicants, classes, LocalDate.now());
+        return new LoadedSnapshot(snapshot, rows);
+    }
+
+    /**
+     * 手動錄取未指定班級時建議班級
+     * 此幼兒排第一、其餘候補者依 CurrentOrder 排列，以 ClassPlacementOptimizer 依序最佳匹配，
+     * 在錄取此幼兒的前提下，讓排在前面的候補者仍保有最多可入的座位
+     * @return 班級ID；此幼兒不在候補名單或無年齡相符且有空位的班級時回傳 null
+     */
+    public UUID suggestClass(UUID applicationId, String nationalId) {
+        UUID institutionId = waitlistJdbcRepository.findInstitutionIdByApplication(applicationId);
+        if (institutionId == null) {
+            return null;
+        }
+        LoadedSnapshot loaded = loadSnapshot(institutionId);
+        List<Map<String, Object>> rows = loaded.rows();
+        List<LotteryEngine.Applicant> applicants = loaded.snapshot().applicants();
+
+        int target = -1;
+        List<Integer> others = new ArrayList<>();
+        for (int i = 0; i < applicants.size(); i++) {
+            LotteryEngine.Applicant applicant = applicants.get(i);
+            if (applicationId.equals(applicant.applicationId()) && nationalId.equals(applicant.nationalId())) {
+                target = i;
+            } else {
+                others.add(i);
+            }
+        }
+        if (target < 0) {
+            return null;
+        }
+        others.sort(Comparator.comparingInt(i -> {
+            Object order = rows.get(i).get("CurrentOrder");
+            return order != null ? ((Number) order).intValue() : Integer.MAX_VALUE;
+        }));
+        int[] order = new int[applicants.size()];
+        order[0] = target;
+        for (int k = 0; k < others.size(); k++) {
+            order[k + 1] = others.get(k);
+        }
+
+        List<LotteryEngine.ClassSlot> classes = loaded.snapshot().classes();
+        int[] ages = LotteryEngine.computeAgesInMonths(applicants, loaded.snapshot().asOf());
+        int[] classOf = new ClassPlacementOptimizer(classes).placeOptimal(order, ages);
+        return classOf[target] >= 0 ? classes.get(classOf[target]).classId() : null;
+    }
+
+    /**
+     * 將抽籤結果寫回資料庫並組合回傳內容
+     */
+    @Transactional
+    public LotteryResult applyOutcome(LoadedSnapshot loaded, LotteryEngine.Outcome outcome) {
+        LocalDateTime reviewDate = LocalDateTime.now();
+        List<Map<String, Object>> acceptedList = new ArrayList<>(outcome.accepted().size());
+        List<Map<String, Object>> waitlist = new ArrayList<>(outcome.waitlist().size());
+        List<Map<String, Object>> releasedList = new ArrayList<>(outcome.released().size());
+
+        for (LotteryEngine.Decision decision : outcome.accepted()) {
+            Map<String, Object> row = loaded.rows().get(decision.applicantIndex());
+            row.put("Status", decision.status());
+            row.put("Reason", decision.reason());
+            row.put("ClassID", decision.classId().toString());
+            row.put("ReviewDate", reviewDate);
+            row.put("LotteryOrder", decision.lotteryOrder());
+            row.put("CurrentOrder", null); // 已錄取者不需要順序
+            acceptedList.add(row);
+        }
+        for (LotteryEngine.Decision decision : outcome.waitlist()) {
+            Map<String, Object> row = loaded.rows().get(decision.applicantIndex());
+            row.put("Status", decision.status());
+            if (decision.reason() != null) {
+                row.put("Reason", decision.reason());
+            }
+            row.put("ReviewDate", reviewDate);
+            row.put("LotteryOrder", decision.lotteryOrder());
+            row.put("CurrentOrder", decision.currentOrder());
+            // CurrentOrder 為稀疏排序鍵，通知與回應顯示的候補序號為名次
+            row.put("WaitlistPosition", waitlist.size() + 1);
+            waitlist.add(row);
+        }
+        // 聯合分發：已錄取較優先志願，這份申請撤銷，不占候補序號
+        for (LotteryEngine.Decision decision : outcome.released()) {
+            Map<String, Object> row = loaded.rows().get(decision.applicantIndex());
+            row.put("Status", decision.status());
+            row.put("Reason", decision.reason());
+            row.put("ReviewDate", reviewDate);
+            row.put("LotteryOrder", decision.lotteryOrder());
+            row.put("CurrentOrder", null);
+            releasedList.add(row);
+        }
+
+        Map<UUID, Integer> admittedByClass = new LinkedHashMap<>();
+        List<LotteryEngine.ClassSlot> classes = loaded.snapshot().classes();
+        int[] admittedPerClass = outcome.admittedPerClass();
+        for (int c = 0; c < admittedPerClass.length; c++) {
+            if (admittedPerClass[c] > 0) {
+                admittedByClass.put(classes.get(c).classId(), admittedPerClass[c]);
+            }
+        }
+
+        List<Map<String, Object>> allUpdates =
+                new ArrayList<>(acceptedList.size() + waitlist.size() + releasedList.size());
+        allUpdates.addAll(acceptedList);
+        allUpdates.addAll(waitlist);
+        allUpdates.addAll(releasedList);
+        waitlistJdbcRepository.applyLotteryOutcome(allUpdates, admittedByClass);
+        // 錄取者須於保留期限內確認
+        admissionHoldService.holdAdmitted(acceptedList);
+
+        LotteryResult result = new LotteryResult();
+        result.setSuccess(true);
+        result.setMessage(buildMessage(outcome.quotas(), acceptedList.size(), waitlist.size()));
+        result.setTotalProcessed(allUpdates.size());
+        result.setFirstPriorityAccepted(outcome.firstAccepted());
+        result.setSecondPriorityAccepted(outcome.secondAccepted());
+        result.setThirdPriorityAccepted(outcome.thirdAccepted());
+        result.setWaitlisted(waitlist.size());
+        result.setReleased(releasedList.size());
+        result.setAcceptedList(acceptedList);
+        result.setWaitlistList(waitlist);
+        result.setReleasedList(releasedList);
+        return result;
+    }
+
+    /**
+     * 組合抽籤完成訊息（格式與 WaitlistController 相同）
+     */
+    static String buildMessage(LotteryEngine.Quotas q, int acceptedCount, int waitlistCount) {
+        if (q.availableSlots() <= 0) {
+            return String.format(
+                    "抽籤完成（無空缺名額，已打亂候補順序）。總容量=%d，就讀中=%d，剩餘空位=%d。" +
+                    "所有申請人維持候補狀態，候補人數=%d",
+                    q.totalCapacity(), q.currentStudents(), q.availableSlots(), waitlistCount);
+        }
+        return String.format(
+                "抽籤完成。總容量=%d，就讀中=%d，剩餘空位=%d。" +
+                "法定名額：第一序位=%d（已錄取%d，本次可錄取%d），第二序位=%d（已錄取%d，本次可錄取%d），第三序位=%d（已錄取%d，本次可錄取%d）。" +
+                "本次實際錄取=%d",
+                q.totalCapacity(), q.currentStudents(), q.availableSlots(),
+                q.firstLegal(), q.firstAccepted(), q.firstQuota(),
+                q.secondLegal(), q.secondAccepted(), q.secondQuota(),
+                q.thirdLegal(), q.thirdAccepted(), q.thirdQuota(),
+                acceptedCount);
+    }
+
+    static LotteryEngine.Applicant toApplicant(Map<String, Object> row, int priority) {
+        Object applicationIdObj = row.get("ApplicationID");
+        UUID applicationId = applicationIdObj != null ? UUID.fromString(applicationIdObj.toString()) : null;
+        return new LotteryEngine.Applicant(applicationId, (String) row.get("NationalID"), priority,
+                toLocalDate(row.get("BirthDate")));
+    }
+
+    static LotteryEngine.ClassSlot toClassSlot(Map<String, Object> classInfo) {
+        Object classIdObj = classInfo.get("ClassID");
+        if (classIdObj == null) {
+            return null;
+        }
+        Object minAgeObj = classInfo.get("MinAgeDescription");
+        Object maxAgeObj = classInfo.get("MaxAgeDescription");
+        Object capacityObj = classInfo.get("Capacity");
+        Object currentStudentsObj = classInfo.get("CurrentStudents");
+        boolean complete = minAgeObj != null && maxAgeObj != null && capacityObj != null && currentStudentsObj != null;
+        // 資料不完整的班級與 findSuitableClass 相同，不參與分配
+        return new LotteryEngine.ClassSlot(
+                UUID.fromString(classIdObj.toString()),
+                complete ? ((Number) minAgeObj).intValue() : -1,
+                complete ? ((Number) maxAgeObj).intValue() : -1,
+                complete ? ((Number) capacityObj).intValue() : 0,
+                complete ? ((Number) currentStudentsObj).intValue() : 0);
+    }
+
+    static LocalDate toLocalDate(Object value) {
+        if (value instanceof java.sql.Date) {
+            return ((java.sql.Date) value).toLocalDate();
+        } else if (value instanceof LocalDate) {
+            return (LocalDate) value;
+        } else if (value instanceof java.sql.Timestamp) {
+            return ((java.sql.Timestamp) value).toLocalDateTime().toLocalDate();
+        } else if (value instanceof LocalDateTime) {
+            return ((LocalDateTime) value).toLocalDate();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,187 @@
+package Group4.Childcare.Service;
+
+import Group4.Childcare.DTO.AdmissionSimulationResult;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * 錄取機率模擬（唯讀）
+ *
+ * 以與 conductLottery 相同的輸入（容量、各序位已錄取數、候補申請人、班級資訊）
+ * 重複執行三階段抽籤與班級分配 N 次，統計每位申請人的錄取機率與期望候補序號。
+ * 模擬在專用的小型 ForkJoinPool（lottery.simulation.parallelism，預設 2 條執行緒）中平行執行，
+ * 不佔用 commonPool 與其他請求共用的核心；每個分支使用 SplittableRandom.split() 取得獨立亂數，
+ * 內層迴圈只操作原始型別陣列（與 LotteryEngine 共用 draw / place）。
+ * 僅限管理者呼叫（見 WaitlistController /waitlist/simulation）。
+ */
+@Service
+public class LotterySimulationService {
+
+    public static final int DEFAULT_ITERATIONS = 10_000;
+    public static final int MAX_ITERATIONS = 50_000;
+
+    // 每個分支至少處理的模擬次數
+    private static final int LEAF_ITERATIONS = 2_000;
+
+    private static final int DEFAULT_PARALLELISM = 2;
+
+    private final LotteryService lotteryService;
+    private final ForkJoinPool pool;
+
+    @Autowired
+    public LotterySimulationService(LotteryService lotteryService,
+                                    @Value("${lottery.simulation.parallelism:" + DEFAULT_PARALLELISM + "}") int parallelism) {
+        this.lotteryService = lotteryService;
+        this.pool = new ForkJoinPool(Math.max(1, parallelism));
+    }
+
+    public LotterySimulationService(LotteryService lotteryService) {
+        this(lotteryService, DEFAULT_PARALLELISM);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * 模擬指定機構的抽籤結果
+     * @param iterations 模擬次數（1 ~ MAX_ITERATIONS）
+     */
+    public AdmissionSimulationResult simulate(UUID institutionId, int iterations) {
+        LotteryService.LoadedSnapshot loaded = lotteryService.loadSnapshot(institutionId);
+        // 快照的申請人與資料列依相同順序建立
+        List<String> names = new ArrayList<>(loaded.rows().size());
+        for (Map<String, Object> row : loaded.rows()) {
+            names.add((String) row.get("Name"));
+        }
+        AdmissionSimulationResult result = simulate(loaded.snapshot(), names, iterations, new SplittableRandom());
+        result.setInstitutionId(institutionId);
+        return result;
+    }
+
+    /**
+     * 以快照執行模擬（不存取資料庫；快照不含姓名，結果的 name 為 null）
+     */
+    public AdmissionSimulationResult simulate(LotteryEngine.Snapshot snapshot, int iterations, SplittableRandom random) {
+        return simulate(snapshot, List.of(), iterations, random);
+    }
+
+    private AdmissionSimulationResult simulate(LotteryEngine.Snapshot snapshot, List<String> names, int iterations,
+                                               SplittableRandom random) {
+        if (iterations <= 0 || iterations > MAX_ITERATIONS) {
+            throw new IllegalArgumentException("模擬次數必須介於 1 到 " + MAX_ITERATIONS + " 之間");
+        }
+        long start = System.nanoTime();
+
+        Compiled compiled = new Compiled(snapshot);
+        Tally tally = pool.invoke(new SimulationTask(compiled, iterations, random));
+
+        AdmissionSimulationResult result = new AdmissionSimulationResult();
+        result.setIterations(iterations);
+        List<LotteryEngine.Applicant> applicants = snapshot.applicants();
+        for (int i = 0; i < applicants.size(); i++) {
+            LotteryEngine.Applicant applicant = applicants.get(i);
+            long waitlisted = iterations - tally.admitted[i];
+            Double expectedRank = waitlisted > 0 ? (double) tally.waitlistRankSum[i] / waitlisted : null;
+            result.getApplicants().add(new AdmissionSimulationResult.ApplicantOdds(
+                    applicant.applicationId(), i < names.size() ? names.get(i) : null, compiled.priorities[i],
+                    (double) tally.admitted[i] / iterations, expectedRank));
+        }
+        result.setElapsedMillis((System.nanoTime() - start) / 1_000_000);
+        return result;
+    }
+
+    /**
+     * 模擬所需的不可變輸入（所有工作執行緒共用）
+     */
+    private static final class Compiled {
+        final int[] priorities;
+        final int[] ages;
+        final LotteryEngine.Quotas quotas;
+        final LotteryEngine.AgeBandIndex index;
+
+        Compiled(LotteryEngine.Snapshot snapshot) {
+            priorities = LotteryEngine.normalizedPriorities(snapshot.applicants());
+            ages = LotteryEngine.computeAgesInMonths(snapshot.applicants(), snapshot.asOf());
+            quotas = LotteryEngine.computeQuotas(snapshot);
+            index = new LotteryEngine.AgeBandIndex(snapshot.classes());
+        }
+    }
+
+    /**
+     * 統計累計值
+     */
+    private static final class Tally {
+        final long[] admitted;
+        final long[] waitlistRankSum;
+
+        Tally(int n) {
+            admitted = new long[n];
+            waitlistRankSum = new long[n];
+        }
+
+        Tally merge(Tally other) {
+            for (int i = 0; i < admitted.length; i++) {
+                admitted[i] += other.admitted[i];
+                waitlistRankSum[i] += other.waitlistRankSum[i];
+            }
+            return this;
+        }
+    }
+
+    private static final class SimulationTask extends RecursiveTask<Tally> {
+        private final Compiled compiled;
+        private final int iterations;
+        private final SplittableRandom random;
+
+        SimulationTask(Compiled compiled, int iterations, SplittableRandom random) {
+            this.compiled = compiled;
+            this.iterations = iterations;
+            this.random = random;
+        }
+
+        @Override
+        protected Tally compute() {
+            if (iterations <= LEAF_ITERATIONS) {
+                return runLeaf();
+            }
+            int half = iterations / 2;
+            SimulationTask left = new SimulationTask(compiled, half, random.split());
+            SimulationTask right = new SimulationTask(compiled, iterations - half, random.split());
+            left.fork();
+            Tally rightTally = right.compute();
+            return left.join().merge(rightTally);
+        }
+
+        private Tally runLeaf() {
+            int n = compiled.priorities.length;
+            Tally tally = new Tally(n);
+            LotteryEngine.Workspace ws = new LotteryEngine.Workspace(n, compiled.index.classCount());
+            for (int iter = 0; iter < iterations; iter++) {
+                int selectedTotal = LotteryEngine.draw(compiled.priorities, compiled.quotas, random, ws);
+                LotteryEngine.place(ws, selectedTotal, compiled.ages, compiled.index);
+                int rank = 0;
+                for (int k = 0; k < n; k++) {
+                    int i = ws.drawn[k];
+                    if (ws.tierOf[i] != 0 && ws.classOf[i] >= 0) {
+                        tally.admitted[i]++;
+                    } else {
+                        tally.waitlistRankSum[i] += ++rank;
+                    }
+                }
+            }
+            return tally;
+        }
+    }
+}
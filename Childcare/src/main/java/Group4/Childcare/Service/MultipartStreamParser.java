@@ -0,0 +1,286 @@
+package Group4.Childcare.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 串流解析 multipart/form-data 請求本體
+ *
+ * 不經過 Spring 的 MultipartResolver（整份請求先暫存到記憶體或暫存檔），而是邊讀邊交出各個欄位：
+ * next() 回傳下一個欄位的標頭與本體串流，本體讀到分隔線即結束；呼叫端未讀完的部分於下一次 next() 時略過。
+ * 只持有一個固定大小的緩衝區，與請求大小無關。
+ *
+ * 用法：
+ * <pre>
+ * MultipartStreamParser parser = new MultipartStreamParser(in, MultipartStreamParser.boundaryOf(contentType));
+ * for (MultipartStreamParser.Part part; (part = parser.next()) != null; ) {
+ *     part.body().transferTo(out);
+ * }
+ * </pre>
+ */
+public class MultipartStreamParser {
+
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    // 單一欄位的標頭總長度上限
+    public static final int MAX_HEADER_BYTES = 8 * 1024;
+
+    /**
+     * 一個表單欄位
+     * @param filename 檔案欄位的原始檔名；一般欄位為 null，未選檔案的檔案欄位為空字串
+     * @param body 欄位本體，讀到 -1 即為結尾
+     */
+    public record Part(String name, String filename, String contentType, InputStream body) {
+        public boolean isFile() {
+            return filename != null;
+        }
+    }
+
+    private final InputStream in;
+    private final byte[] delimiter;
+    private final byte[] buf = new byte[BUFFER_SIZE];
+    private int pos;
+    private int limit;
+    private boolean eof;
+    private boolean finished;
+    private PartInputStream current;
+
+    public MultipartStreamParser(InputStream in, String boundary) {
+        if (boundary == null || boundary.isEmpty() || boundary.length() > 70) {
+            throw new IllegalArgumentException("Invalid multipart boundary");
+        }
+        this.in = in;
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+        // 第一條分隔線前沒有換行，先放一個 CRLF 讓所有分隔線格式一致；之前的前言（preamble）當作一個要略過的欄位
+        buf[0] = '\r';
+        buf[1] = '\n';
+        limit = 2;
+        current = new PartInputStream();
+    }
+
+    /**
+     * 由 Content-Type 標頭取出 boundary
+     * @return 不是 multipart/form-data 或缺少 boundary 時為 null
+     */
+    public static String boundaryOf(String contentType) {
+        if (contentType == null || !contentType.toLowerCase(Locale.ROOT).startsWith("multipart/form-data")) {
+            return null;
+        }
+        String boundary = parameter(contentType, "boundary");
+        return boundary == null || boundary.isEmpty() ? null : boundary;
+    }
+
+    /**
+     * 前進到下一個欄位
+     * @return 已無欄位時為 null
+     * @throws IOException 請求本體在分隔線之前中斷或格式錯誤
+     */
+    public Part next() throws IOException {
+        if (finished) {
+            return null;
+        }
+        current.skipRemaining();
+
+        // 分隔線後接 "--" 表示結尾，否則接 CRLF 與欄位標頭
+        if (!ensure(2)) {
+            throw new IOException("Unexpected end of multipart stream");
+        }
+        if (buf[pos] == '-' && buf[pos + 1] == '-') {
+            finished = true;
+            return null;
+        }
+        String line = readLine();
+        if (!line.isBlank()) {
+            throw new IOException("Malformed multipart boundary line");
+        }
+
+        String name = null;
+        String filename = null;
+        String contentType = null;
+        int headerBytes = 0;
+        while (!(line = readLine()).isEmpty()) {
+            headerBytes += line.length() + 2;
+            if (headerBytes > MAX_HEADER_BYTES) {
+                throw new IOException("Multipart part headers too large");
+            }
+            int colon = line.indexOf(':');
+            if (colon <= 0) {
+                continue;
+            }
+            String header = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).trim();
+            if (header.equals("content-disposition")) {
+                name = parameter(value, "name");
+                filename = parameter(value, "filename");
+            } else if (header.equals("content-type")) {
+                contentType = value;
+            }
+        }
+        current = new PartInputStream();
+        return new Part(name, filename, contentType, current);
+    }
+
+    /**
+     * 讀取一行標頭（UTF-8，不含 CRLF）
+     */
+    private String readLine() throws IOException {
+        while (true) {
+            for (int i = pos; i + 1 < limit; i++) {
+                if (buf[i] == '\r' && buf[i + 1] == '\n') {
+                    String line = new String(buf, pos, i - pos, StandardCharsets.UTF_8);
+                    pos = i + 2;
+                    return line;
+                }
+            }
+            if (limit - pos > MAX_HEADER_BYTES) {
+                throw new IOException("Multipart part headers too large");
+            }
+            if (!fill()) {
+                throw new IOException("Unexpected end of multipart stream");
+            }
+        }
+    }
+
+    /**
+     * 確保緩衝區內至少有 n 個未讀位元組
+     * @return 串流已結束且不足 n 個位元組時為 false
+     */
+    private boolean ensure(int n) throws IOException {
+        while (limit - pos < n) {
+            if (!fill()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 把未讀資料移到緩衝區開頭，再從來源補滿
+     * @return 來源已結束時為 false
+     */
+    private boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+        if (pos > 0) {
+            System.arraycopy(buf, pos, buf, 0, limit - pos);
+            limit -= pos;
+            pos = 0;
+        }
+        int n = in.read(buf, limit, buf.length - limit);
+        if (n < 0) {
+            eof = true;
+            return false;
+        }
+        limit += n;
+        return true;
+    }
+
+    private int indexOfDelimiter() {
+        int last = limit - delimiter.length;
+        outer:
+        for (int i = pos; i <= last; i++) {
+            for (int j = 0; j < delimiter.length; j++) {
+                if (buf[i + j] != delimiter[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * 欄位本體：回傳到下一條分隔線之前的資料
+     */
+    private class PartInputStream extends InputStream {
+        private boolean done;
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = read(one, 0, 1);
+            return n < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (done) {
+                return -1;
+            }
+            if (len == 0) {
+                return 0;
+            }
+            ensure(delimiter.length);
+            int index = indexOfDelimiter();
+            int available;
+            if (index >= 0) {
+                available = index - pos;
+                if (available == 0) {
+                    pos += delimiter.length;
+                    done = true;
+                    return -1;
+                }
+            } else {
+                // 緩衝區尾端可能是分隔線的前半段，保留到下次補資料後再判斷
+                available = limit - pos - (delimiter.length - 1);
+                if (available <= 0) {
+                    throw new IOException("Unexpected end of multipart stream");
+                }
+            }
+            int n = Math.min(len, available);
+            System.arraycopy(buf, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+
+        void skipRemaining() throws IOException {
+            byte[] skip = new byte[BUFFER_SIZE];
+            while (read(skip, 0, skip.length) >= 0) {
+                // 略過呼叫端未讀完的資料
+            }
+        }
+    }
+
+    /**
+     * 取出標頭參數值，例如 form-data; name="file"; filename="a.pdf" 中的 filename
+     */
+    static String parameter(String header, String key) {
+        for (String param : splitParameters(header)) {
+            int eq = param.indexOf('=');
+            if (eq <= 0 || !param.substring(0, eq).trim().equalsIgnoreCase(key)) {
+                continue;
+            }
+            String value = param.substring(eq + 1).trim();
+            if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+                value = value.substring(1, value.length() - 1).replace("\\\"", "\"");
+            }
+            return value;
+        }
+        return null;
+    }
+
+    private static List<String> splitParameters(String header) {
+        List<String> params = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < header.length(); i++) {
+            char c = header.charAt(i);
+            if (c == '"' && (i == 0 || header.charAt(i - 1) != '\\')) {
+                quoted = !quoted;
+            }
+            if (c == ';' && !quoted) {
+                params.add(sb.toString());
+                sb.setLength(0);
+            } else {
+                sb.append(c);
+            }
+        }
+        params.add(sb.toString());
+        return params;
+    }
+}
@@ -0,0 +1,530 @@
+package Group4.Childcare.Service;
+
+import Group4.Childcare.Repository.ApplicationsJdbcRepository;
+import Group4.Childcare.Repository.AttachmentUploadJdbcRepository;
+import Group4.Childcare.Repository.AttachmentUploadJdbcRepository.Upload;
+import Group4.Childcare.Service.StreamingUploadService.UploadRejectedException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * 可續傳的附件上傳
+ *
+ * 流程：建立上傳（宣告檔名、大小、類型與附件欄位）→ 以 Content-Range 分段 PUT（可亂序、可重送）→ 完成。
+ * - 每段以 FileChannel 依位移直接寫入暫存檔 {attachment.upload.dir}/.uploads/{uploadId}.part，
+ *   寫入後才把區段記入 attachment_uploads；連線中斷時已寫入的部分也會記錄，用戶端查詢後只需補傳缺少的區段
+ * - 區段寫入期間在 attachment_uploads 登記為進行中（寫入者數與租約），完成上傳時先取得完成租約，
+ *   任何節點仍有區段寫入中即拒絕（409）；完成期間新的區段寫入也回傳 409，避免暫存檔移入案件資料夾後仍被寫入
+ * - 完成時確認所有區段都已收到，計算 SHA-256（有宣告時比對）並檢查檔案開頭格式，
+ *   再移入 IdentityResource/{applicationId}/UUID_原始檔名，依 slot 寫入 AttachmentPath ~ AttachmentPath3
+ *   （格式 {applicationId}/UUID_原始檔名，與送件、更新案件相同），並刪除該欄位原本的檔案
+ * - 超過期限（每次收到資料即延長）未完成的上傳由排程清除
+ *
+ * 多節點部署時 IdentityResource 須為共用儲存，不需要黏著連線（sticky session）：
+ * 寫入登記、完成租約與已收到的區段都記錄在資料庫；以 uploadId 分散的鎖只在同一節點內序列化。
+ */
+@Service
+public class ResumableUploadService {
+
+    public static final String PARTIAL_DIR = ".uploads";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int PURGE_BATCH_SIZE = 200;
+    private static final int ATTACHMENT_SLOTS = 4;
+
+    // 同一節點內同一個上傳的區段寫入、記錄與完成需互斥；以 uploadId 分散到固定數量的鎖
+    private static final int LOCK_STRIPES = 64;
+
+    // 區段寫入的租約：節點在寫入途中當掉時，租約過期後才不再阻擋完成上傳
+    private static final Duration WRITER_LEASE = Duration.ofMinutes(30);
+    // 完成上傳（計算雜湊、移檔）的租約
+    private static final Duration COMPLETE_LEASE = Duration.ofMinutes(5);
+    // 不同節點同時記錄區段時的重試次數
+    private static final int PROGRESS_RETRIES = 10;
+
+    /**
+     * 上傳進度
+     * @param offset 從頭開始連續收到的位元組數（用戶端可由此位置繼續依序上傳）
+     * @param receivedRanges 已收到的區段，例如 "0-1048576"（迄不含）
+     */
+    public record UploadStatus(UUID uploadId, UUID applicationId, int slot, String fileName, long totalBytes,
+                               long receivedBytes, long offset, List<String> receivedRanges, boolean complete,
+                               LocalDateTime expiresAt) {
+    }
+
+    /**
+     * 已完成並附加到案件的檔案
+     * @param attachmentPath 寫入 AttachmentPath 欄位的路徑（{applicationId}/UUID_原始檔名）
+     */
+    public record CompletedUpload(UUID applicationId, int slot, String attachmentPath, long size, String sha256) {
+    }
+
+    private final AttachmentUploadJdbcRepository attachmentUploadJdbcRepository;
+    private final ApplicationsJdbcRepository applicationsJdbcRepository;
+    private final FileService fileService;
+    private final StreamingUploadService streamingUploadService;
+    private final Path partialDir;
+    private final long maxFileBytes;
+    private final Duration ttl;
+    private final Clock clock;
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    @Autowired
+    public ResumableUploadService(AttachmentUploadJdbcRepository attachmentUploadJdbcRepository,
+                                  ApplicationsJdbcRepository applicationsJdbcRepository,
+                                  FileService fileService,
+                                  StreamingUploadService streamingUploadService,
+                                  @Value("${attachment.upload.dir:IdentityResource}") String uploadDir,
+                                  @Value("${upload.resumable.max-file-bytes:10485760}") long maxFileBytes,
+                                  @Value("${upload.resumable.ttl-hours:24}") long ttlHours) {
+        this(attachmentUploadJdbcRepository, applicationsJdbcRepository, fileService, streamingUploadService,
+                Paths.get(uploadDir), maxFileBytes, Duration.ofHours(ttlHours), Clock.systemDefaultZone());
+    }
+
+    public ResumableUploadService(AttachmentUploadJdbcRepository attachmentUploadJdbcRepository,
+                                  ApplicationsJdbcRepository applicationsJdbcRepository,
+                                  FileService fileService,
+                                  StreamingUploadService streamingUploadService,
+                                  Path uploadDir, long maxFileBytes, Duration ttl, Clock clock) {
+        this.attachmentUploadJdbcRepository = attachmentUploadJdbcRepository;
+        this.applicationsJdbcRepository = applicationsJdbcRepository;
+        this.fileService = fileService;
+        this.streamingUploadService = streamingUploadService;
+        this.partialDir = uploadDir.resolve(PARTIAL_DIR);
+        this.maxFileBytes = maxFileBytes;
+        this.ttl = ttl;
+        this.clock = clock;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * 建立上傳
+     * @param sha256 可為 null
+     * @throws UploadRejectedException 參數錯誤（400）、案件不存在（404）、檔案過大（413）、類型不允許（415）
+     */
+    public UploadStatus create(UUID applicationId, Integer slot, String fileName, String contentType, Long size,
+                               String sha256) throws IOException {
+        if (slot == null || slot < 0 || slot >= ATTACHMENT_SLOTS) {
+            throw new UploadRejectedException(400, "slot 必須為 0 ~ 3");
+        }
+        String cleanName = fileName != null ? StringUtils.getFilename(StringUtils.cleanPath(fileName.trim())) : null;
+        if (cleanName == null || cleanName.isEmpty() || cleanName.length() > 200) {
+            throw new UploadRejectedException(400, "檔名不可為空或過長");
+        }
+        if (size == null || size <= 0) {
+            throw new UploadRejectedException(400, "檔案大小必須大於 0");
+        }
+        if (size > maxFileBytes) {
+            throw new UploadRejectedException(413, "檔案超過大小上限 " + maxFileBytes + " bytes");
+        }
+        if (!streamingUploadService.isAllowedType(contentType)) {
+            throw new UploadRejectedException(415, "不支援的檔案類型: " + contentType);
+        }
+        String expectedSha256 = null;
+        if (sha256 != null && !sha256.isBlank()) {
+            expectedSha256 = sha256.trim().toLowerCase(Locale.ROOT);
+            if (!expectedSha256.matches("[0-9a-f]{64}")) {
+                throw new UploadRejectedException(400, "sha256 格式錯誤");
+            }
+        }
+        if (!applicationsJdbcRepository.existsById(applicationId)) {
+            throw new UploadRejectedException(404, "案件不存在: " + applicationId);
+        }
+
+        UUID uploadId = UUID.randomUUID();
+        Files.createDirectories(partialDir);
+        Files.createFile(partialPath(uploadId));
+        LocalDateTime expiresAt = now().plus(ttl);
+        try {
+            attachmentUploadJdbcRepository.insert(uploadId, applicationId, slot, cleanName,
+                    StreamingUploadService.mediaType(contentType), size, expectedSha256, expiresAt);
+        } catch (RuntimeException e) {
+            Files.deleteIfExists(partialPath(uploadId));
+            throw e;
+        }
+        System.out.println("📤 建立續傳上傳 " + uploadId + "：案件 " + applicationId + " 附件 " + slot
+                + "，" + cleanName + "（" + size + " bytes）");
+        return new UploadStatus(uploadId, applicationId, slot, cleanName, size, 0, 0, List.of(), false, expiresAt);
+    }
+
+    public Optional<UploadStatus> status(UUID uploadId) {
+        return findActive(uploadId).map(ResumableUploadService::toStatus);
+    }
+
+    /**
+     * 寫入一個區段 [start, endInclusive]，可重送或與其他區段亂序到達
+     *
+     * 傳輸中斷時已寫入的部分仍會記錄後再拋出例外。
+     *
+     * @param total Content-Range 宣告的總大小；null 表示未宣告（"*"）
+     * @throws UploadRejectedException 上傳不存在或已過期（404）、總大小不符（400）、區段超出範圍（416）、資料不足（400）、
+     *                                 上傳正在完成或區段記錄持續衝突（409）
+     */
+    public UploadStatus writeChunk(UUID uploadId, long start, long endInclusive, Long total, InputStream body)
+            throws IOException {
+        Upload upload = findActive(uploadId)
+                .orElseThrow(() -> new UploadRejectedException(404, "上傳不存在或已過期: " + uploadId));
+        if (total != null && total != upload.totalBytes()) {
+            throw new UploadRejectedException(400, "總大小與建立時不符: " + total);
+        }
+        if (start < 0 || endInclusive < start || endInclusive >= upload.totalBytes()) {
+            throw new UploadRejectedException(416, "區段超出檔案範圍: " + start + "-" + endInclusive);
+        }
+        long length = endInclusive - start + 1;
+
+        LocalDateTime now = now();
+        if (!attachmentUploadJdbcRepository.beginWrite(uploadId, now, now.plus(WRITER_LEASE))) {
+            if (findActive(uploadId).isEmpty()) {
+                throw new UploadRejectedException(404, "上傳不存在或已過期: " + uploadId);
+            }
+            throw new UploadRejectedException(409, "上傳正在完成中，不再接受區段");
+        }
+        Object lock = lockFor(uploadId);
+        try {
+            long written = 0;
+            IOException failure = null;
+            try (FileChannel channel = FileChannel.open(partialPath(uploadId), StandardOpenOption.WRITE)) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                try {
+                    while (written < length) {
+                        // 讀取網路資料時不持有鎖，只有依位移寫入暫存檔時才持有
+                        int n = body.read(buffer, 0, (int) Math.min(buffer.length, length - written));
+                        if (n < 0) {
+                            break;
+                        }
+                        ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, n);
+                        long position = start + written;
+                        synchronized (lock) {
+                            while (chunk.hasRemaining()) {
+                                position += channel.write(chunk, position);
+                            }
+                        }
+                        written += n;
+                    }
+                } catch (IOException e) {
+                    // 用戶端斷線：保留已寫入的部分
+                    failure = e;
+                }
+                // 先確定資料已落地，才記錄為已收到
+                channel.force(false);
+            } catch (NoSuchFileException e) {
+                // 已完成、取消或過期清除
+                throw new UploadRejectedException(404, "上傳不存在或已過期: " + uploadId);
+            }
+
+            UploadStatus status = written > 0 ? recordRange(uploadId, start, start + written) : toStatus(upload);
+            if (failure != null) {
+                throw failure;
+            }
+            if (written < length) {
+                throw new UploadRejectedException(400, "收到的資料少於 Content-Range 宣告的長度（" + written + "/" + length
+                        + " bytes），已記錄收到的部分");
+            }
+            return status;
+        } finally {
+            // 區段記錄後才解除登記，complete 看到的區段一定包含已結束的寫入
+            attachmentUploadJdbcRepository.endWrite(uploadId);
+        }
+    }
+
+    /**
+     * 完成上傳：確認資料完整後移入案件資料夾並寫入附件欄位
+     * @throws UploadRejectedException 上傳不存在（404）、尚有區段未收到或仍在寫入（409）、SHA-256 不符（422）、內容與類型不符（415）
+     */
+    public CompletedUpload complete(UUID uploadId) throws IOException {
+        synchronized (lockFor(uploadId)) {
+            Upload upload = findActive(uploadId)
+                    .orElseThrow(() -> new UploadRejectedException(404, "上傳不存在或已過期: " + uploadId));
+            List<long[]> ranges = parseRanges(upload.receivedRanges());
+            if (contiguousEnd(ranges) < upload.totalBytes()) {
+                throw new UploadRejectedException(409, "尚有區段未收到，已收到: "
+                        + String.join(",", formatRanges(ranges)));
+            }
+            LocalDateTime now = now();
+            if (!attachmentUploadJdbcRepository.beginComplete(uploadId, now, now.plus(COMPLETE_LEASE))) {
+                throw new UploadRejectedException(409, "仍有區段正在上傳，請待上傳結束後再完成");
+            }
+            try {
+                return completeLeased(uploadId, upload);
+            } catch (IOException | RuntimeException e) {
+                // 未刪除上傳時釋放租約（已刪除時為空操作），用戶端可補傳後重試
+                attachmentUploadJdbcRepository.endComplete(uploadId);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * 已取得完成租約：檢查內容、移檔並寫入附件欄位
+     */
+    private CompletedUpload completeLeased(UUID uploadId, Upload upload) throws IOException {
+        Path partial = partialPath(uploadId);
+        byte[] head = new byte[16];
+        String sha256 = sha256Of(partial, head);
+        if (upload.sha256() != null && !upload.sha256().equals(sha256)) {
+            discard(uploadId);
+            throw new UploadRejectedException(422, "檔案 SHA-256 與宣告不符，請重新上傳");
+        }
+        if (!StreamingUploadService.matchesSignature(upload.contentType(), head)) {
+            discard(uploadId);
+            throw new UploadRejectedException(415, "檔案 " + upload.fileName() + " 內容與類型 "
+                    + upload.contentType() + " 不符");
+        }
+
+        UUID applicationId = upload.applicationId();
+        String storedName = UUID.randomUUID() + "_" + upload.fileName();
+        Path folderPath = fileService.getFolderPath(applicationId);
+        Path target = folderPath.resolve(storedName);
+        move(partial, target);
+
+        String attachmentPath = applicationId + "/" + storedName;
+        Optional<String> previous = applicationsJdbcRepository.replaceAttachmentPath(applicationId, upload.slot(),
+                attachmentPath);
+        if (previous == null) {
+            Files.deleteIfExists(target);
+            attachmentUploadJdbcRepository.deleteById(uploadId);
+            throw new UploadRejectedException(404, "案件不存在: " + applicationId);
+        }
+        attachmentUploadJdbcRepository.deleteById(uploadId);
+        fileService.registerAttachment(attachmentPath, sha256);
+        previous.filter(p -> !p.isEmpty()).ifPresent(p -> deleteOldAttachment(applicationId, p));
+
+        System.out.println("✅ 續傳上傳完成 " + uploadId + " → " + attachmentPath + "（sha256=" + sha256 + "）");
+        return new CompletedUpload(applicationId, upload.slot(), attachmentPath, upload.totalBytes(), sha256);
+    }
+
+    /**
+     * 取消上傳並刪除暫存檔
+     * @return false 如果上傳不存在
+     */
+    public boolean cancel(UUID uploadId) {
+        synchronized (lockFor(uploadId)) {
+            if (attachmentUploadJdbcRepository.findById(uploadId).isEmpty()) {
+                return false;
+            }
+            discard(uploadId);
+            return true;
+        }
+    }
+
+    /**
+     * 每 10 分鐘清除過期的上傳
+     */
+    @Scheduled(cron = "0 */10 * * * *")
+    public void scheduledPurge() {
+        try {
+            purgeExpired();
+        } catch (Exception e) {
+            System.err.println("❌ 清除過期續傳上傳失敗: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 清除過期的上傳（資料表與暫存檔）
+     * @return 清除筆數
+     */
+    public int purgeExpired() {
+        LocalDateTime now = now();
+        int total = 0;
+        List<UUID> expired;
+        do {
+            expired = attachmentUploadJdbcRepository.findExpiredIds(now, PURGE_BATCH_SIZE);
+            for (UUID uploadId : expired) {
+                synchronized (lockFor(uploadId)) {
+                    discard(uploadId);
+                }
+            }
+            total += expired.size();
+        } while (expired.size() >= PURGE_BATCH_SIZE);
+        if (total > 0) {
+            System.out.println("🧹 已清除 " + total + " 筆過期續傳上傳");
+        }
+        return total;
+    }
+
+    /**
+     * 把 [start, end) 併入已收到的區段並延長期限
+     */
+    private UploadStatus recordRange(UUID uploadId, long start, long end) {
+        synchronized (lockFor(uploadId)) {
+            // 其他節點可能同時記錄區段：以讀到的區段為條件更新，被搶先時重讀後再合併
+            for (int attempt = 0; attempt < PROGRESS_RETRIES; attempt++) {
+                Upload upload = attachmentUploadJdbcRepository.findById(uploadId)
+                        .orElseThrow(() -> new UploadRejectedException(404, "上傳不存在或已過期: " + uploadId));
+                List<long[]> ranges = addRange(parseRanges(upload.receivedRanges()), start, end);
+                String formatted = String.join(",", formatRanges(ranges));
+                long received = coveredBytes(ranges);
+                LocalDateTime expiresAt = now().plus(ttl);
+                if (attachmentUploadJdbcRepository.updateProgress(uploadId, upload.receivedRanges(), formatted,
+                        received, expiresAt)) {
+                    return toStatus(new Upload(upload.uploadId(), upload.applicationId(), upload.slot(),
+                            upload.fileName(), upload.contentType(), upload.totalBytes(), formatted, received,
+                            upload.sha256(), expiresAt));
+                }
+            }
+            throw new UploadRejectedException(409, "區段記錄衝突，請重送此區段");
+        }
+    }
+
+    private Optional<Upload> findActive(UUID uploadId) {
+        return attachmentUploadJdbcRepository.findById(uploadId)
+                .filter(upload -> upload.expiresAt() == null || upload.expiresAt().isAfter(now()));
+    }
+
+    private void discard(UUID uploadId) {
+        try {
+            Files.deleteIfExists(partialPath(uploadId));
+        } catch (IOException e) {
+            System.err.println("⚠️ 刪除續傳暫存檔失敗: " + uploadId + ", " + e.getMessage());
+        }
+        attachmentUploadJdbcRepository.deleteById(uploadId);
+    }
+
+    private void deleteOldAttachment(UUID applicationId, String oldPath) {
+        try {
+            fileService.deleteAttachment(applicationId, oldPath);
+        } catch (IOException e) {
+            System.err.println("⚠️ 刪除舊附件失敗: " + oldPath + ", " + e.getMessage());
+        }
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target);
+        }
+    }
+
+    /**
+     * 計算檔案的 SHA-256，並把開頭的位元組讀入 head
+     */
+    private static String sha256Of(Path file, byte[] head) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            boolean first = true;
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                if (first && buffer.remaining() > 0) {
+                    buffer.get(buffer.position(), head, 0, Math.min(head.length, buffer.remaining()));
+                    first = false;
+                }
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private Path partialPath(UUID uploadId) {
+        return partialDir.resolve(uploadId + ".part");
+    }
+
+    private Object lockFor(UUID uploadId) {
+        return locks[Math.floorMod(uploadId.hashCode(), LOCK_STRIPES)];
+    }
+
+    private LocalDateTime now() {
+        return LocalDateTime.now(clock);
+    }
+
+    private static UploadStatus toStatus(Upload upload) {
+        List<long[]> ranges = parseRanges(upload.receivedRanges());
+        long offset = contiguousEnd(ranges);
+        return new UploadStatus(upload.uploadId(), upload.applicationId(), upload.slot(), upload.fileName(),
+                upload.totalBytes(), upload.receivedBytes(), offset, formatRanges(ranges),
+                offset >= upload.totalBytes(), upload.expiresAt());
+    }
+
+    // ===== 區段（[start, end)，依 start 排序且互不重疊）=====
+
+    private static List<long[]> parseRanges(String value) {
+        List<long[]> ranges = new ArrayList<>();
+        if (value == null || value.isBlank()) {
+            return ranges;
+        }
+        for (String range : value.split(",")) {
+            int dash = range.indexOf('-');
+            ranges.add(new long[]{Long.parseLong(range.substring(0, dash).trim()),
+                    Long.parseLong(range.substring(dash + 1).trim())});
+        }
+        return ranges;
+    }
+
+    private static List<String> formatRanges(List<long[]> ranges) {
+        List<String> formatted = new ArrayList<>(ranges.size());
+        for (long[] range : ranges) {
+            formatted.add(range[0] + "-" + range[1]);
+        }
+        return formatted;
+    }
+
+    /**
+     * 加入 [start, end) 並合併相鄰或重疊的區段
+     */
+    private static List<long[]> addRange(List<long[]> ranges, long start, long end) {
+        List<long[]> merged = new ArrayList<>(ranges.size() + 1);
+        long newStart = start;
+        long newEnd = end;
+        int i = 0;
+        while (i < ranges.size() && ranges.get(i)[1] < newStart) {
+            merged.add(ranges.get(i++));
+        }
+        while (i < ranges.size() && ranges.get(i)[0] <= newEnd) {
+            newStart = Math.min(newStart, ranges.get(i)[0]);
+            newEnd = Math.max(newEnd, ranges.get(i)[1]);
+            i++;
+        }
+        merged.add(new long[]{newStart, newEnd});
+        while (i < ranges.size()) {
+            merged.add(ranges.get(i++));
+        }
+        return merged;
+    }
+
+    private static long coveredBytes(List<long[]> ranges) {
+        long total = 0;
+        for (long[] range : ranges) {
+            total += range[1] - range[0];
+        }
+        return total;
+    }
+
+    private static long contiguousEnd(List<long[]> ranges) {
+        return !ranges.isEmpty() && ranges.get(0)[0] == 0 ? ranges.get(0)[1] : 0;
+    }
+}
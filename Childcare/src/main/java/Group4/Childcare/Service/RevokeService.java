@@ -8,11 +8,19 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import java.util.List;
 import java.time.LocalDate;
+import java.util.UUID;
 
 @Service
 public class RevokeService {
+    private final RevokesJdbcRepository revokesJdbcRepository;
+    private final WaitlistPromotionService waitlistPromotionService;
+
     @Autowired
-    private RevokesJdbcRepository revokesJdbcRepository;
+    public RevokeService(RevokesJdbcRepository revokesJdbcRepository,
+                         WaitlistPromotionService waitlistPromotionService) {
+        this.revokesJdbcRepository = revokesJdbcRepository;
+        this.waitlistPromotionService = waitlistPromotionService;
+    }
 
     public List<RevokeApplicationDTO> getRevokedApplications(int page, int size, String institutionID, String caseNumber, String nationalID) {
         return revokesJdbcRepository.findRevokedApplications(page, size, institutionID, caseNumber, nationalID);
@@ -54,7 +62,14 @@ public class RevokeService {
 
     // 新增：更新 application_participants 的 Status
     public int updateApplicationParticipantStatus(String applicationID, String nationalID, String status) {
-        return revokesJdbcRepository.updateApplicationParticipantStatus(applicationID, nationalID, status);
+        // 撤銷已錄取者時記下原班級，更新後通知候補遞補
+        String freedClassID = !"已錄取".equals(status)
+                ? revokesJdbcRepository.findAdmittedClassID(applicationID, nationalID) : null;
+        int updated = revokesJdbcRepository.updateApplicationParticipantStatus(applicationID, nationalID, status);
+        if (updated > 0 && freedClassID != null) {
+            waitlistPromotionService.seatFreed(UUID.fromString(freedClassID));
+        }
+        return updated;
     }
 
     // 新增：建立一筆 cancellation 並回傳 CancellationID
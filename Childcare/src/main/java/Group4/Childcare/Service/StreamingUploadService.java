@@ -0,0 +1,441 @@
+package Group4.Childcare.Service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * 附件串流上傳
+ *
+ * 請求本體邊讀邊寫入最終位置（不經 Spring 的暫存檔再 Files.copy 一次），每個檔案只落地一次：
+ * - 請求執行緒讀取欄位本體（64KB 一塊），檢查大小與檔案開頭的格式簽章，再把這一塊交給寫檔執行緒
+ * - 寫檔執行緒以一塊為單位的短工作寫入檔案並同時計算 SHA-256（同一檔案的工作依序執行）；
+ *   請求執行緒讀取下一塊、下一個欄位的同時，前一塊正在寫檔與雜湊
+ * - 超過大小上限或格式不符時立即中止並刪除已寫入的部分，不必等整份請求傳完
+ *
+ * 寫檔執行緒只處理已讀到的資料，不會等待用戶端的網路傳輸，同時上傳的檔案數可多於寫檔執行緒數。
+ * 每個上傳中的檔案最多佔用 MAX_PENDING_CHUNKS 塊緩衝，與檔案大小無關。
+ */
+@Service
+public class StreamingUploadService {
+
+    private static final int CHUNK_SIZE = MultipartStreamParser.BUFFER_SIZE;
+
+    // 每個檔案已讀取、尚未寫入的緩衝塊數上限；寫檔跟不上時讀取端會等待
+    private static final int MAX_PENDING_CHUNKS = 8;
+
+    // 常見檔案格式的開頭簽章；允許的類型不在此表時只檢查宣告的 Content-Type
+    private static final Map<String, byte[]> SIGNATURES = Map.of(
+            "application/pdf", new byte[]{'%', 'P', 'D', 'F', '-'},
+            "image/jpeg", new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF},
+            "image/png", new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'});
+
+    /**
+     * 已寫入的檔案
+     * @param storedName 實際檔名（UUID_原始檔名）
+     * @param sha256 檔案內容的 SHA-256（十六進位小寫）
+     */
+    public record StoredFile(String fieldName, String originalFilename, String storedName, Path path,
+                             long size, String sha256, String contentType) {
+    }
+
+    /**
+     * 上傳內容不符合限制
+     * @param status 建議回傳的 HTTP 狀態碼（400 格式錯誤、413 檔案過大、415 類型不允許）
+     */
+    public static class UploadRejectedException extends RuntimeException {
+        private final int status;
+
+        public UploadRejectedException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+    }
+
+    private final long maxFileBytes;
+    private final long maxRequestBytes;
+    private final Set<String> allowedTypes;
+    private final ExecutorService writers;
+
+    @Autowired
+    public StreamingUploadService(@Value("${attachment.stream.max-file-bytes:10485760}") long maxFileBytes,
+                                  @Value("${attachment.stream.max-request-bytes:52428800}") long maxRequestBytes,
+                                  @Value("${attachment.stream.allowed-types:application/pdf,image/jpeg,image/png}") List<String> allowedTypes,
+                                  @Value("${attachment.stream.writer-threads:4}") int writerThreads) {
+        this.maxFileBytes = maxFileBytes;
+        this.maxRequestBytes = maxRequestBytes;
+        this.allowedTypes = allowedTypes.stream()
+                .map(t -> t.trim().toLowerCase(Locale.ROOT))
+                .filter(t -> !t.isEmpty())
+                .collect(Collectors.toUnmodifiableSet());
+        AtomicInteger threadCount = new AtomicInteger();
+        this.writers = Executors.newFixedThreadPool(Math.max(1, writerThreads), r -> {
+            Thread t = new Thread(r, "attachment-writer-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        writers.shutdownNow();
+    }
+
+    /**
+     * 開始解析請求本體；讀取超過 max-request-bytes 時拋出 UploadRejectedException(413)
+     * @throws UploadRejectedException 不是 multipart/form-data 請求
+     */
+    public MultipartStreamParser open(InputStream requestBody, String contentType) {
+        String boundary = MultipartStreamParser.boundaryOf(contentType);
+        if (boundary == null) {
+            throw new UploadRejectedException(400, "請求必須為 multipart/form-data");
+        }
+        return new MultipartStreamParser(new LimitedInputStream(requestBody, maxRequestBytes), boundary);
+    }
+
+    /**
+     * 把一個檔案欄位寫入目錄，檔名為 UUID_原始檔名
+     *
+     * 本方法在呼叫端執行緒讀完整個欄位本體後返回，寫檔與雜湊可能仍在進行；呼叫端可接著讀下一個欄位，
+     * 最後以 awaitAll 等候全部完成。
+     *
+     * @return 未選檔案（檔名空白或內容為空）時，Future 結果為 null 且不建立檔案
+     * @throws UploadRejectedException 類型不允許或超過大小上限（已寫入的部分會刪除）
+     * @throws IOException 讀取請求本體失敗
+     */
+    public Future<StoredFile> store(MultipartStreamParser.Part part, Path dir) throws IOException {
+        if (part.filename() == null || part.filename().trim().isEmpty()) {
+            part.body().transferTo(OutputStream.nullOutputStream());
+            return CompletableFuture.completedFuture(null);
+        }
+        String contentType = mediaType(part.contentType());
+        if (!allowedTypes.contains(contentType)) {
+            throw new UploadRejectedException(415, "不支援的檔案類型: " + part.contentType());
+        }
+
+        String originalFilename = StringUtils.getFilename(StringUtils.cleanPath(part.filename()));
+        String storedName = UUID.randomUUID() + "_" + originalFilename;
+        Path target = dir.resolve(storedName);
+
+        ChunkWriter writer = new ChunkWriter(target);
+        long total = 0;
+        boolean first = true;
+        try {
+            byte[] chunk;
+            while ((chunk = readChunk(part.body())) != null) {
+                total += chunk.length;
+                if (total > maxFileBytes) {
+                    throw new UploadRejectedException(413, "檔案 " + originalFilename + " 超過大小上限 "
+                            + maxFileBytes + " bytes");
+                }
+                if (first) {
+                    checkSignature(contentType, chunk, originalFilename);
+                    first = false;
+                }
+                writer.submit(chunk);
+            }
+        } catch (IOException | RuntimeException e) {
+            awaitQuietly(writer.abort());
+            throw e;
+        }
+        return writer.finish().thenApply(result -> result == null ? null
+                : new StoredFile(part.name(), originalFilename, storedName, target, result.size(),
+                        HexFormat.of().formatHex(result.sha256()), contentType));
+    }
+
+    /**
+     * 等候所有檔案寫入完成
+     * @return 依傳入順序的結果（略過未選檔案的 null）
+     * @throws IOException 任一檔案寫入失敗
+     */
+    public List<StoredFile> awaitAll(List<Future<StoredFile>> pending) throws IOException {
+        IOException failure = null;
+        List<StoredFile> stored = new ArrayList<>();
+        for (Future<StoredFile> future : pending) {
+            try {
+                StoredFile file = future.get();
+                if (file != null) {
+                    stored.add(file);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure = new IOException("Interrupted while writing attachments", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                failure = cause instanceof IOException ? (IOException) cause
+                        : new IOException("Failed to write attachment: " + cause.getMessage(), cause);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return stored;
+    }
+
+    /**
+     * 捨棄尚未完成的上傳（寫檔失敗時刪除已寫入的檔案）
+     */
+    public void discard(List<Future<StoredFile>> pending) {
+        for (Future<StoredFile> future : pending) {
+            try {
+                StoredFile file = future.get();
+                if (file != null) {
+                    Files.deleteIfExists(file.path());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                // 寫檔失敗的檔案已由寫檔執行緒刪除
+            }
+        }
+    }
+
+    private record Written(long size, byte[] sha256) {
+    }
+
+    /**
+     * 一個檔案的寫入：每一塊是一個寫檔工作，接在前一塊之後執行，寫完即釋放執行緒
+     *
+     * 欄位只在寫檔工作中存取；同一檔案的工作依序完成，前一個工作的寫入對下一個工作可見。
+     */
+    private final class ChunkWriter {
+        private final Path target;
+        private final MessageDigest digest = sha256();
+        private final Semaphore pendingChunks = new Semaphore(MAX_PENDING_CHUNKS);
+        private CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+        private FileChannel channel;
+        private long size;
+        private IOException failure;
+
+        ChunkWriter(Path target) {
+            this.target = target;
+        }
+
+        /**
+         * 排入一塊；已有 MAX_PENDING_CHUNKS 塊等待寫入時，請求執行緒在此等候
+         */
+        void submit(byte[] chunk) throws IOException {
+            try {
+                pendingChunks.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while uploading attachment", e);
+            }
+            tail = tail.thenRunAsync(() -> {
+                try {
+                    write(chunk);
+                } finally {
+                    pendingChunks.release();
+                }
+            }, writers);
+        }
+
+        /**
+         * 所有塊寫完後關閉檔案
+         * @return 內容為空時結果為 null；寫入失敗時刪除檔案並以 IOException 結束
+         */
+        CompletableFuture<Written> finish() {
+            return tail.thenApplyAsync(ignored -> {
+                if (failure != null) {
+                    closeAndDelete(channel, target);
+                    throw new CompletionException(failure);
+                }
+                if (channel == null) {
+                    return null;
+                }
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    closeAndDelete(null, target);
+                    throw new CompletionException(e);
+                }
+                return new Written(size, digest.digest());
+            }, writers);
+        }
+
+        /**
+         * 中止：等已排入的塊寫完後刪除檔案
+         */
+        CompletableFuture<Void> abort() {
+            return tail.handleAsync((ignored, e) -> {
+                closeAndDelete(channel, target);
+                return null;
+            }, writers);
+        }
+
+        private void write(byte[] chunk) {
+            if (failure != null) {
+                // 寫入已失敗：略過其餘的塊，結束時回報錯誤
+                return;
+            }
+            try {
+                if (channel == null) {
+                    channel = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(chunk);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                digest.update(chunk);
+                size += chunk.length;
+            } catch (IOException e) {
+                failure = e;
+            } catch (RuntimeException e) {
+                // 不讓例外中斷後續的工作（後續工作才會釋放緩衝塊名額）
+                failure = new IOException("Failed to write attachment: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private static void closeAndDelete(FileChannel channel, Path target) {
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+            Files.deleteIfExists(target);
+        } catch (IOException e) {
+            System.err.println("⚠️ 刪除未完成的附件失敗: " + target + ", " + e.getMessage());
+        }
+    }
+
+    private void checkSignature(String contentType, byte[] firstChunk, String filename) {
+        if (!matchesSignature(contentType, firstChunk)) {
+            throw new UploadRejectedException(415, "檔案 " + filename + " 內容與類型 " + contentType + " 不符");
+        }
+    }
+
+    /**
+     * 檔案開頭是否符合類型的格式簽章；類型不在簽章表時一律視為符合
+     * @param contentType 小寫、不含參數的類型，例如 application/pdf
+     */
+    public static boolean matchesSignature(String contentType, byte[] head) {
+        byte[] signature = SIGNATURES.get(contentType);
+        if (signature == null) {
+            return true;
+        }
+        return head.length >= signature.length
+                && Arrays.equals(head, 0, signature.length, signature, 0, signature.length);
+    }
+
+    /**
+     * 是否為允許上傳的類型
+     */
+    public boolean isAllowedType(String contentType) {
+        return allowedTypes.contains(mediaType(contentType));
+    }
+
+    /**
+     * 讀取一塊（盡量讀滿 CHUNK_SIZE）；本體已讀完時為 null
+     */
+    private static byte[] readChunk(InputStream body) throws IOException {
+        byte[] chunk = new byte[CHUNK_SIZE];
+        int n = body.readNBytes(chunk, 0, CHUNK_SIZE);
+        if (n == 0) {
+            return null;
+        }
+        return n == CHUNK_SIZE ? chunk : Arrays.copyOf(chunk, n);
+    }
+
+    private static void awaitQuietly(Future<?> future) {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // 已中止，錯誤由呼叫端的例外回報
+        }
+    }
+
+    /**
+     * 取出 Content-Type 的類型部分（小寫、不含參數）
+     */
+    public static String mediaType(String contentType) {
+        if (contentType == null) {
+            return "";
+        }
+        int semicolon = contentType.indexOf(';');
+        return (semicolon >= 0 ? contentType.substring(0, semicolon) : contentType).trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 限制請求本體總長度
+     */
+    private static final class LimitedInputStream extends FilterInputStream {
+        private final long max;
+        private long count;
+
+        LimitedInputStream(InputStream in, long max) {
+            super(in);
+            this.max = max;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count(n);
+            }
+            return n;
+        }
+
+        private void count(long n) {
+            count += n;
+            if (count > max) {
+                throw new UploadRejectedException(413, "請求超過大小上限 " + max + " bytes");
+            }
+        }
+    }
+}
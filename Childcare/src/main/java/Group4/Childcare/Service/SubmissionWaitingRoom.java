@@ -0,0 +1,288 @@
+package Group4.Childcare.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 送件等候室（開放申請時的排隊機制）
+ *
+ * - 用戶端先取得排隊號碼牌（token）與目前位置，持已放行的號碼牌才能送件或查詢申請資格
+ * - 每秒依放行速度推進「已放行到第幾號」；位置 = 自己的序號 - 已放行序號，查詢只需一次 Map 查找
+ * - 放行速度依資料庫連線池中等待連線的執行緒數調整（AIMD）：超過目標值時減半，明顯低於目標值時逐步加快
+ * - 放行由專屬的排程執行緒推進，不與其他 @Scheduled 工作（資料夾搬移、封存等）共用預設的單一排程執行緒
+ * - 放行後須於 admissionWindowSeconds 內送件；送件成功即收回號碼牌；久未查詢的號碼牌視為放棄
+ *
+ * 狀態只存在本節點記憶體中；多節點部署時需以黏著工作階段將同一用戶端導向同一節點。
+ * waiting-room.enabled=false 時不排隊，取號立即放行。
+ */
+@Service
+public class SubmissionWaitingRoom {
+
+    // 等待連線數的指數移動平均權重
+    private static final double EWMA_WEIGHT = 0.3;
+
+    // 每次加速增加的放行數（每秒）
+    private static final double RATE_INCREASE = 2.0;
+
+    // 清除過期號碼牌的間隔
+    private static final long CLEANUP_INTERVAL_MILLIS = 10_000;
+
+    // 放行間隔（放行速度以每秒計）
+    private static final long TICK_MILLIS = 1000;
+
+    /**
+     * 號碼牌狀態
+     * @param position 前面還有幾人；0 表示已放行
+     * @param estimatedWaitSeconds 依目前放行速度估計的等待秒數
+     */
+    public record Ticket(String token, long position, boolean admitted, long estimatedWaitSeconds, double releaseRate) {
+    }
+
+    private static final class Entry {
+        final long sequence;
+        volatile long lastSeenMillis;
+        volatile long admittedAtMillis;
+
+        Entry(long sequence, long now) {
+            this.sequence = sequence;
+            this.lastSeenMillis = now;
+        }
+    }
+
+    private final DataSourceWaitProbe dataSourceWaitProbe;
+    private final boolean enabled;
+    private final double minRate;
+    private final double maxRate;
+    private final double targetPendingConnections;
+    private final long admissionWindowMillis;
+    private final long abandonMillis;
+    private final Clock clock;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong lastIssued = new AtomicLong();
+    private final AtomicLong releasedThrough = new AtomicLong();
+
+    // 只在 tick（單一排程執行緒）中修改
+    private volatile double releaseRate;
+    private volatile double averagePendingConnections;
+    private double releaseCredit;
+    private long lastCleanupMillis;
+    private ScheduledExecutorService scheduler;
+
+    @Autowired
+    public SubmissionWaitingRoom(DataSourceWaitProbe dataSourceWaitProbe,
+                                 @Value("${waiting-room.enabled:false}") boolean enabled,
+                                 @Value("${waiting-room.initial-rate:20}") double initialRate,
+                                 @Value("${waiting-room.min-rate:1}") double minRate,
+                                 @Value("${waiting-room.max-rate:200}") double maxRate,
+                                 @Value("${waiting-room.target-pending-connections:2}") double targetPendingConnections,
+                                 @Value("${waiting-room.admission-window-seconds:300}") long admissionWindowSeconds,
+                                 @Value("${waiting-room.abandon-seconds:120}") long abandonSeconds) {
+        this(dataSourceWaitProbe, enabled, initialRate, minRate, maxRate, targetPendingConnections,
+                admissionWindowSeconds, abandonSeconds, Clock.systemUTC());
+    }
+
+    public SubmissionWaitingRoom(DataSourceWaitProbe dataSourceWaitProbe, boolean enabled, double initialRate,
+                                 double minRate, double maxRate, double targetPendingConnections,
+                                 long admissionWindowSeconds, long abandonSeconds, Clock clock) {
+        this.dataSourceWaitProbe = dataSourceWaitProbe;
+        this.enabled = enabled;
+        this.minRate = Math.max(0.1, minRate);
+        this.maxRate = Math.max(this.minRate, maxRate);
+        this.releaseRate = Math.max(this.minRate, Math.min(initialRate, this.maxRate));
+        this.targetPendingConnections = targetPendingConnections;
+        this.admissionWindowMillis = admissionWindowSeconds * 1000;
+        this.abandonMillis = abandonSeconds * 1000;
+        this.clock = clock;
+        this.lastCleanupMillis = clock.millis();
+    }
+
+    /**
+     * 啟用排隊時啟動專屬的放行執行緒
+     */
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "waiting-room-tick");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleAtFixedRate(() -> {
+            try {
+                tick();
+            } catch (Exception e) {
+                // 例外會讓排程停止，只記錄後繼續
+                System.err.println("❌ 送件等候室放行失敗: " + e.getMessage());
+            }
+        }, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 取得號碼牌（排在隊伍最後）
+     */
+    public Ticket enqueue() {
+        long now = clock.millis();
+        String token = UUID.randomUUID().toString();
+        Entry entry = new Entry(lastIssued.incrementAndGet(), now);
+        if (!enabled) {
+            entry.admittedAtMillis = now;
+        }
+        entries.put(token, entry);
+        return ticket(token, entry, now);
+    }
+
+    /**
+     * 查詢號碼牌目前位置
+     * @return 號碼牌不存在（過期或已使用）時為 null
+     */
+    public Ticket status(String token) {
+        Entry entry = token != null ? entries.get(token) : null;
+        if (entry == null) {
+            return null;
+        }
+        long now = clock.millis();
+        entry.lastSeenMillis = now;
+        return ticket(token, entry, now);
+    }
+
+    /**
+     * 號碼牌是否已放行且仍在送件期限內（未啟用排隊時一律放行）
+     */
+    public boolean isAdmitted(String token) {
+        if (!enabled) {
+            return true;
+        }
+        Ticket ticket = status(token);
+        return ticket != null && ticket.admitted();
+    }
+
+    /**
+     * 送件完成，收回號碼牌
+     */
+    public void complete(String token) {
+        if (token != null) {
+            entries.remove(token);
+        }
+    }
+
+    /**
+     * 每秒放行一批號碼牌，並依連線池負載調整放行速度
+     */
+    public void tick() {
+        if (!enabled) {
+            return;
+        }
+        long now = clock.millis();
+        long issued = lastIssued.get();
+        if (releasedThrough.get() < issued) {
+            adjustRate(dataSourceWaitProbe.samplePendingConnections());
+            releaseCredit += releaseRate;
+            long release = (long) releaseCredit;
+            releaseCredit -= release;
+            releasedThrough.set(Math.min(issued, releasedThrough.get() + release));
+        } else {
+            // 沒有人排隊時不累積放行額度
+            releaseCredit = 0;
+        }
+
+        if (now - lastCleanupMillis >= CLEANUP_INTERVAL_MILLIS) {
+            lastCleanupMillis = now;
+            int removed = removeExpired(now);
+            if (removed > 0) {
+                System.out.println("🎫 清除 " + removed + " 張過期號碼牌，排隊中 " + waitingCount()
+                        + " 人，放行速度 " + String.format("%.1f", releaseRate) + "/秒");
+            }
+        }
+    }
+
+    public double getReleaseRate() {
+        return releaseRate;
+    }
+
+    public double getAveragePendingConnections() {
+        return averagePendingConnections;
+    }
+
+    /**
+     * 目前排隊中（尚未放行）的人數
+     */
+    public long waitingCount() {
+        return Math.max(0, lastIssued.get() - releasedThrough.get());
+    }
+
+    /**
+     * AIMD：平均等待連線數超過目標值時放行速度減半；低於目標值一半時每秒多放行 RATE_INCREASE 人
+     */
+    private void adjustRate(int pendingConnections) {
+        averagePendingConnections = EWMA_WEIGHT * pendingConnections
+                + (1 - EWMA_WEIGHT) * averagePendingConnections;
+        double previous = releaseRate;
+        if (averagePendingConnections > targetPendingConnections) {
+            releaseRate = Math.max(minRate, releaseRate / 2);
+        } else if (averagePendingConnections < targetPendingConnections / 2.0) {
+            releaseRate = Math.min(maxRate, releaseRate + RATE_INCREASE);
+        }
+        if (releaseRate < previous) {
+            System.out.println("🐢 連線池平均 " + String.format("%.1f", averagePendingConnections)
+                    + " 個執行緒等待連線，放行速度降為 "
+                    + String.format("%.1f", releaseRate) + "/秒");
+        }
+    }
+
+    private Ticket ticket(String token, Entry entry, long now) {
+        long position = Math.max(0, entry.sequence - releasedThrough.get());
+        boolean admitted = entry.admittedAtMillis > 0 || position == 0;
+        if (admitted && entry.admittedAtMillis == 0) {
+            entry.admittedAtMillis = now;
+        }
+        if (admitted && now - entry.admittedAtMillis > admissionWindowMillis) {
+            // 放行後逾時未送件，須重新排隊
+            entries.remove(token, entry);
+            return null;
+        }
+        long estimatedWait = admitted ? 0 : (long) Math.ceil(position / releaseRate);
+        return new Ticket(token, position, admitted, estimatedWait, releaseRate);
+    }
+
+    private int removeExpired(long now) {
+        int removed = 0;
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next().getValue();
+            boolean admissionExpired = entry.admittedAtMillis > 0 && now - entry.admittedAtMillis > admissionWindowMillis;
+            boolean abandoned = entry.admittedAtMillis == 0 && now - entry.lastSeenMillis > abandonMillis;
+            if (admissionExpired || abandoned) {
+                it.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+}
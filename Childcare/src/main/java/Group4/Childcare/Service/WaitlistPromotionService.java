@@ -0,0 +1,256 @@
+package Group4.Childcare.Service;
+
+import Group4.Childcare.Repository.WaitlistJdbcRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 候補自動遞補
+ *
+ * 班級空出座位時（撤銷錄取、狀態由已錄取改為其他、手動減少班級人數）呼叫 seatFreed(ClassID)：
+ * - 事件於交易提交後登記，同一班級在延遲時間內的多次事件合併為一次遞補
+ * - 遞補時取得機構抽籤鎖（與抽籤互斥），依序位與 CurrentOrder 挑選年齡相符的候補中幼兒，
+ *   以條件式 UPDATE 佔用座位並改為已錄取（同一交易），直到班級額滿或無人可遞補
+ * - 交易提交後寄送錄取通知、同步候補索引
+ *
+ * 序位規則：第一序位法定名額未滿時優先遞補第一序位，其次第一、二序位，其餘依 CurrentOrder。
+ */
+@Service
+public class WaitlistPromotionService {
+
+    public static final String REASON_PROMOTED = "候補遞補錄取";
+
+    private final WaitlistJdbcRepository waitlistJdbcRepository;
+    private final LotteryNotificationService lotteryNotificationService;
+    private final WaitlistRankIndexService waitlistRankIndexService;
+    private final AdmissionHoldService admissionHoldService;
+    private final TransactionTemplate transactionTemplate;
+    private final long delayMillis;
+    private final ScheduledExecutorService scheduler;
+    // 已排定、尚未開始遞補的班級
+    private final Set<UUID> pending = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    public WaitlistPromotionService(WaitlistJdbcRepository waitlistJdbcRepository,
+                                    LotteryNotificationService lotteryNotificationService,
+                                    WaitlistRankIndexService waitlistRankIndexService,
+                                    AdmissionHoldService admissionHoldService,
+                                    PlatformTransactionManager transactionManager,
+                                    @Value("${waitlist.promotion.delay-ms:2000}") long delayMillis) {
+        this.waitlistJdbcRepository = waitlistJdbcRepository;
+        this.lotteryNotificationService = lotteryNotificationService;
+        this.waitlistRankIndexService = waitlistRankIndexService;
+        this.admissionHoldService = admissionHoldService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.delayMillis = delayMillis;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "waitlist-promotion");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 班級空出座位（於交易內呼叫時，提交後才排定遞補；回滾則不遞補）
+     */
+    public void seatFreed(UUID classId) {
+        if (classId == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    schedule(classId);
+                }
+            });
+        } else {
+            schedule(classId);
+        }
+    }
+
+    private void schedule(UUID classId) {
+        // 已排定的班級不再重複排定，延遲期間的其他事件併入同一次遞補
+        if (pending.add(classId)) {
+            scheduler.schedule(() -> runPromotion(classId), delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void runPromotion(UUID classId) {
+        // 先移除再遞補：遞補期間的新事件會重新排定，不會遺漏
+        pending.remove(classId);
+        try {
+            List<Map<String, Object>> promoted = promote(classId);
+            if (promoted == null) {
+                System.out.println("⏳ 班級 " + classId + " 所屬機構正在抽籤，稍後重新遞補");
+                schedule(classId);
+            }
+        } catch (Exception e) {
+            System.err.println("❌ 候補遞補失敗: ClassID=" + classId + ", " + e.getMessage());
+        }
+    }
+
+    /**
+     * 立即為班級遞補候補者
+     * @return 遞補錄取的幼兒資料列；機構正在抽籤時回傳 null
+     */
+    public List<Map<String, Object>> promote(UUID classId) {
+        List<Map<String, Object>> promoted = transactionTemplate.execute(status -> promoteInTransaction(classId));
+        if (promoted == null || promoted.isEmpty()) {
+            return promoted;
+        }
+        System.out.println("🎉 班級 " + classId + " 遞補錄取 " + promoted.size() + " 位");
+        for (Map<String, Object> row : promoted) {
+            waitlistRankIndexService.refreshApplication(UUID.fromString(row.get("ApplicationID").toString()));
+        }
+        lotteryNotificationService.sendLotteryNotificationEmails(promoted, new ArrayList<>());
+        return promoted;
+    }
+
+    private List<Map<String, Object>> promoteInTransaction(UUID classId) {
+        List<Map<String, Object>> promoted = new ArrayList<>();
+        Map<String, Object> classInfo = waitlistJdbcRepository.findClassForPromotion(classId);
+        if (classInfo == null || classInfo.get("InstitutionID") == null) {
+            return promoted;
+        }
+        Object capacityObj = classInfo.get("Capacity");
+        Object currentStudentsObj = classInfo.get("CurrentStudents");
+        Object minAgeObj = classInfo.get("MinAgeDescription");
+        Object maxAgeObj = classInfo.get("MaxAgeDescription");
+        // 資料不完整的班級與抽籤相同，不參與分配
+        if (capacityObj == null || minAgeObj == null || maxAgeObj == null) {
+            return promoted;
+        }
+        int freeSeats = ((Number) capacityObj).intValue()
+                - (currentStudentsObj != null ? ((Number) currentStudentsObj).intValue() : 0);
+        if (freeSeats <= 0) {
+            return promoted;
+        }
+
+        UUID institutionId = UUID.fromString(classInfo.get("InstitutionID").toString());
+        if (!waitlistJdbcRepository.tryAcquireLotteryLock(institutionId)) {
+            return null;
+        }
+
+        // 年齡相符的候補中幼兒，依序位分組、組內依 CurrentOrder
+        int minAge = ((Number) minAgeObj).intValue();
+        int maxAge = ((Number) maxAgeObj).intValue();
+        Map<Integer, List<Map<String, Object>>> byPriority =
+                waitlistJdbcRepository.getLotteryApplicantsByPriority(institutionId);
+        List<List<Map<String, Object>>> tiers = new ArrayList<>(3);
+        LocalDate today = LocalDate.now();
+        for (int priority = 1; priority <= 3; priority++) {
+            List<Map<String, Object>> eligible = new ArrayList<>();
+            List<Map<String, Object>> group = byPriority.get(priority);
+            if (group != null) {
+                for (Map<String, Object> row : group) {
+                    LotteryEngine.Applicant applicant = LotteryService.toApplicant(row, priority);
+                    int age = LotteryEngine.computeAgesInMonths(List.of(applicant), today)[0];
+                    if (age >= minAge && age < maxAge) {
+                        eligible.add(row);
+                    }
+                }
+            }
+            eligible.sort(Comparator.comparingInt(WaitlistPromotionService::currentOrder));
+            tiers.add(eligible);
+        }
+
+        // 序位名額（與抽籤相同的法定名額減去已錄取人數）
+        Map<Integer, Integer> acceptedCount = waitlistJdbcRepository.getAcceptedCountByPriority(institutionId);
+        int totalCapacity = waitlistJdbcRepository.getTotalCapacity(institutionId);
+        int firstQuota = Math.max(0, (int) Math.floor(totalCapacity * 0.2) - count(acceptedCount, 1));
+        int secondQuota = Math.max(0, (int) Math.floor(totalCapacity * 0.1) - count(acceptedCount, 2));
+
+        int[] heads = new int[3];
+        while (freeSeats > 0) {
+            int tier = -1;
+            if (firstQuota > 0) {
+                tier = earliest(tiers, heads, 1);
+            }
+            if (tier < 0 && firstQuota + secondQuota > 0) {
+                tier = earliest(tiers, heads, 2);
+            }
+            if (tier < 0) {
+                tier = earliest(tiers, heads, 3);
+            }
+            if (tier < 0) {
+                break;
+            }
+            Map<String, Object> row = tiers.get(tier).get(heads[tier]++);
+
+            if (!waitlistJdbcRepository.claimClassSeat(classId)) {
+                break;
+            }
+            UUID applicationId = UUID.fromString(row.get("ApplicationID").toString());
+            String nationalId = (String) row.get("NationalID");
+            if (!waitlistJdbcRepository.admitWaitlisted(applicationId, nationalId, classId, REASON_PROMOTED)) {
+                // 幼兒狀態已被其他操作變更，歸還座位改遞補下一位
+                waitlistJdbcRepository.releaseClassSeat(classId);
+                continue;
+            }
+            if (tier == 0 && firstQuota > 0) {
+                firstQuota--;
+            } else if (tier <= 1 && secondQuota > 0) {
+                secondQuota--;
+            } else if (tier <= 1 && firstQuota > 0) {
+                firstQuota--;
+            }
+            freeSeats--;
+
+            row.put("Status", LotteryEngine.STATUS_ADMITTED);
+            row.put("Reason", REASON_PROMOTED);
+            row.put("ClassID", classId.toString());
+            row.put("CurrentOrder", null);
+            promoted.add(row);
+        }
+        admissionHoldService.holdAdmitted(promoted);
+        return promoted;
+    }
+
+    /**
+     * 前 tierCount 個序位中，CurrentOrder 最小的下一位候補者所在序位（皆無時回傳 -1）
+     */
+    private static int earliest(List<List<Map<String, Object>>> tiers, int[] heads, int tierCount) {
+        int best = -1;
+        for (int t = 0; t < tierCount; t++) {
+            if (heads[t] < tiers.get(t).size()
+                    && (best < 0 || currentOrder(tiers.get(t).get(heads[t])) < currentOrder(tiers.get(best).get(heads[best])))) {
+                best = t;
+            }
+        }
+        return best;
+    }
+
+    private static int currentOrder(Map<String, Object> row) {
+        Object order = row.get("CurrentOrder");
+        return order != null ? ((Number) order).intValue() : Integer.MAX_VALUE;
+    }
+
+    private static int count(Map<Integer, Integer> counts, int priority) {
+        Integer value = counts != null ? counts.get(priority) : null;
+        return value != null ? value : 0;
+    }
+}
@@ -0,0 +1,70 @@
+package Group4.Childcare.Service;
+
+import Group4.Childcare.Repository.WaitlistJdbcRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * 候補排序鍵背景重新編排
+ *
+ * 抽籤後排序鍵為 1..n（相鄰無間隔），或序列接近 INT 上限時，
+ * 於離峰時段以 RANK_STEP 間隔重新編排（名次不變）。
+ * 每個機構獨立一個交易，並與抽籤共用機構鎖，避免與抽籤同時改寫。
+ */
+@Service
+public class WaitlistRankCompactionService {
+
+    private final WaitlistJdbcRepository waitlistJdbcRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final WaitlistRankIndexService waitlistRankIndexService;
+
+    @Autowired
+    public WaitlistRankCompactionService(WaitlistJdbcRepository waitlistJdbcRepository,
+                                         PlatformTransactionManager transactionManager,
+                                         WaitlistRankIndexService waitlistRankIndexService) {
+        this.waitlistJdbcRepository = waitlistJdbcRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.waitlistRankIndexService = waitlistRankIndexService;
+    }
+
+    /**
+     * 每日凌晨 3:30 執行
+     */
+    @Scheduled(cron = "0 30 3 * * *")
+    public void compactDenseInstitutions() {
+        List<UUID> institutionIds = waitlistJdbcRepository.findInstitutionsNeedingRankCompaction();
+        if (institutionIds.isEmpty()) {
+            return;
+        }
+        System.out.println("🔧 候補排序鍵重新編排: 機構數=" + institutionIds.size());
+        for (UUID institutionId : institutionIds) {
+            try {
+                compact(institutionId);
+            } catch (Exception e) {
+                System.err.println("❌ 候補排序鍵重新編排失敗: InstitutionID=" + institutionId + ", " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 重新編排單一機構的排序鍵
+     * @return 重新編排的筆數；機構正在抽籤時回傳 -1
+     */
+    public int compact(UUID institutionId) {
+        Integer updated = transactionTemplate.execute(status -> {
+            if (!waitlistJdbcRepository.tryAcquireLotteryLock(institutionId)) {
+                return -1;
+            }
+            int count = waitlistJdbcRepository.compactRankKeys(institutionId);
+            waitlistRankIndexService.invalidate(institutionId);
+            return count;
+        });
+        return updated != null ? updated : 0;
+    }
+}
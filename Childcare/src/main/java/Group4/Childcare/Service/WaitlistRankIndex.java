@@ -0,0 +1,242 @@
+package Group4.Childcare.Service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+/**
+ * 單一機構的候補名單順序統計結構（依排序鍵排列的 treap，節點記錄子樹大小）
+ *
+ * 依 (排序鍵, ParticipantID) 排序，支援：
+ * - positionOf：某位候補者的名次，O(log n)
+ * - firstWaiting：前 k 位候補者，O(log n + k)
+ * - aheadOf：排序鍵小於指定值的候補者（人數 O(log n)）
+ * - put / remove：候補狀態變更，O(log n)
+ *
+ * 非執行緒安全，由 WaitlistRankIndexService 以讀寫鎖保護。
+ */
+public final class WaitlistRankIndex {
+
+    /**
+     * 候補者資料（查詢候補名單所需欄位）
+     */
+    public record Entry(UUID participantId, UUID applicationId, String nationalId, String name,
+                        Long caseNumber, LocalDate birthDate, Integer identityType, String institutionName,
+                        int rankKey) {
+    }
+
+    private static final class Node {
+        final Entry entry;
+        final int priority;
+        Node left;
+        Node right;
+        int size = 1;
+
+        Node(Entry entry, int priority) {
+            this.entry = entry;
+            this.priority = priority;
+        }
+    }
+
+    private final SplittableRandom random = new SplittableRandom(0x5EED);
+    // ApplicationID + NationalID → 節點資料
+    private final Map<String, Entry> byParticipant = new HashMap<>();
+    private Node root;
+
+    public static String participantKey(UUID applicationId, String nationalId) {
+        return applicationId + "|" + nationalId;
+    }
+
+    public int size() {
+        return size(root);
+    }
+
+    public Entry get(UUID applicationId, String nationalId) {
+        return byParticipant.get(participantKey(applicationId, nationalId));
+    }
+
+    /**
+     * 新增或更新候補者（排序鍵變更時重新定位）
+     */
+    public void put(Entry entry) {
+        remove(entry.applicationId(), entry.nationalId());
+        byParticipant.put(participantKey(entry.applicationId(), entry.nationalId()), entry);
+        root = insert(root, new Node(entry, random.nextInt()));
+    }
+
+    /**
+     * 移除候補者
+     * @return true 如果原本在候補名單中
+     */
+    public boolean remove(UUID applicationId, String nationalId) {
+        Entry existing = byParticipant.remove(participantKey(applicationId, nationalId));
+        if (existing == null) {
+            return false;
+        }
+        root = delete(root, existing);
+        return true;
+    }
+
+    /**
+     * 候補名次（1 起算）；不在候補名單中回傳 -1
+     */
+    public int positionOf(UUID applicationId, String nationalId) {
+        Entry entry = get(applicationId, nationalId);
+        if (entry == null) {
+            return -1;
+        }
+        int rank = 1;
+        Node node = root;
+        while (node != null) {
+            int cmp = compare(entry, node.entry);
+            if (cmp < 0) {
+                node = node.left;
+            } else if (cmp > 0) {
+                rank += size(node.left) + 1;
+                node = node.right;
+            } else {
+                return rank + size(node.left);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 依名次排列的前 k 位候補者
+     */
+    public List<Entry> firstWaiting(int k) {
+        List<Entry> result = new ArrayList<>(Math.max(0, Math.min(k, size())));
+        collect(root, k, result);
+        return result;
+    }
+
+    /**
+     * 排序鍵小於 rankKey 的候補者人數
+     */
+    public int countAhead(int rankKey) {
+        int count = 0;
+        Node node = root;
+        while (node != null) {
+            if (node.entry.rankKey() < rankKey) {
+                count += size(node.left) + 1;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 排序鍵小於 rankKey 的候補者（依名次排列）
+     */
+    public List<Entry> aheadOf(int rankKey) {
+        return firstWaiting(countAhead(rankKey));
+    }
+
+    private static void collect(Node node, int k, List<Entry> out) {
+        if (node == null || out.size() >= k) {
+            return;
+        }
+        collect(node.left, k, out);
+        if (out.size() < k) {
+            out.add(node.entry);
+            collect(node.right, k, out);
+        }
+    }
+
+    private static int compare(Entry a, Entry b) {
+        int cmp = Integer.compare(a.rankKey(), b.rankKey());
+        if (cmp != 0) {
+            return cmp;
+        }
+        cmp = compareNullable(a.participantId(), b.participantId());
+        if (cmp != 0) {
+            return cmp;
+        }
+        return participantKey(a.applicationId(), a.nationalId())
+                .compareTo(participantKey(b.applicationId(), b.nationalId()));
+    }
+
+    private static int compareNullable(UUID a, UUID b) {
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : -1) : 1;
+        }
+        return a.compareTo(b);
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static Node update(Node node) {
+        node.size = size(node.left) + size(node.right) + 1;
+        return node;
+    }
+
+    private static Node insert(Node node, Node added) {
+        if (node == null) {
+            return added;
+        }
+        if (compare(added.entry, node.entry) < 0) {
+            node.left = insert(node.left, added);
+            if (node.left.priority > node.priority) {
+                node = rotateRight(node);
+            }
+        } else {
+            node.right = insert(node.right, added);
+            if (node.right.priority > node.priority) {
+                node = rotateLeft(node);
+            }
+        }
+        return update(node);
+    }
+
+    private static Node delete(Node node, Entry entry) {
+        if (node == null) {
+            return null;
+        }
+        int cmp = compare(entry, node.entry);
+        if (cmp < 0) {
+            node.left = delete(node.left, entry);
+        } else if (cmp > 0) {
+            node.right = delete(node.right, entry);
+        } else {
+            return merge(node.left, node.right);
+        }
+        return update(node);
+    }
+
+    private static Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            return update(left);
+        }
+        right.left = merge(left, right.left);
+        return update(right);
+    }
+
+    private static Node rotateRight(Node node) {
+        Node pivot = node.left;
+        node.left = pivot.right;
+        pivot.right = update(node);
+        return pivot;
+    }
+
+    private static Node rotateLeft(Node node) {
+        Node pivot = node.right;
+        node.right = pivot.left;
+        pivot.left = update(node);
+        return pivot;
+    }
+}
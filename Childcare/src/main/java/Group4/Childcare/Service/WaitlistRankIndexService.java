@@ -0,0 +1,287 @@
+package Group4.Childcare.Service;
+
+import Group4.Childcare.Repository.WaitlistJdbcRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 記憶體候補名單索引（每個機構一份 WaitlistRankIndex）
+ *
+ * - 第一次查詢某機構時才從資料庫載入，之後查名次、前 k 位、排在某排序鍵之前的人都不再查詢 SQL Server
+ * - 個案狀態變更後呼叫 refreshApplication，只重新讀取該申請案的幼兒資料列並更新索引
+ * - 抽籤、重置、重新編排等整批改寫排序鍵的操作呼叫 invalidate，下次查詢時重新載入
+ * - 在交易內呼叫時延後到交易提交後才同步，避免索引讀到尚未提交或被回滾的資料
+ * - 索引超過 ttl 後重新載入，涵蓋其他節點的異動
+ * - 只供家長查詢名次（/waitlist/position）；管理端名單與錄取順序檢查仍查詢資料庫，不受 ttl 落後影響
+ */
+@Service
+public class WaitlistRankIndexService {
+
+    private final WaitlistJdbcRepository waitlistJdbcRepository;
+    private final long ttlMillis;
+    private final Map<UUID, Holder> holders = new ConcurrentHashMap<>();
+
+    /**
+     * 單一機構的索引與讀寫鎖
+     */
+    private static final class Holder {
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        WaitlistRankIndex index;
+        long loadedAt;
+    }
+
+    /**
+     * 候補名次查詢結果
+     */
+    public record Position(int position, int totalWaiting, int rankKey) {
+    }
+
+    @Autowired
+    public WaitlistRankIndexService(WaitlistJdbcRepository waitlistJdbcRepository,
+                                    @Value("${waitlist.rank-index.ttl-seconds:300}") long ttlSeconds) {
+        this.waitlistJdbcRepository = waitlistJdbcRepository;
+        this.ttlMillis = ttlSeconds * 1000;
+    }
+
+    /**
+     * 機構候補名單（欄位與 WaitlistJdbcRepository.findWaitlistByInstitution 相同，CurrentOrder 為名次）
+     * @param name 姓名模糊查詢（可為 null）
+     */
+    public List<Map<String, Object>> getWaitlist(UUID institutionId, String name) {
+        Holder holder = acquireRead(institutionId);
+        List<WaitlistRankIndex.Entry> entries;
+        try {
+            entries = holder.index.firstWaiting(holder.index.size());
+        } finally {
+            holder.lock.readLock().unlock();
+        }
+
+        boolean filterByName = name != null && !name.trim().isEmpty();
+        List<Map<String, Object>> rows = new ArrayList<>();
+        int position = 0;
+        for (WaitlistRankIndex.Entry entry : entries) {
+            position++;
+            if (filterByName && (entry.name() == null || !entry.name().contains(name))) {
+                continue;
+            }
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("ApplicationID", entry.applicationId());
+            row.put("Name", entry.name());
+            row.put("CaseNumber", entry.caseNumber());
+            row.put("BirthDate", entry.birthDate() != null ? java.sql.Date.valueOf(entry.birthDate()) : null);
+            row.put("IdentityType", entry.identityType());
+            row.put("CurrentOrder", position);
+            row.put("InstitutionName", entry.institutionName());
+            row.put("Age", WaitlistJdbcRepository.describeAge(entry.birthDate()));
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    /**
+     * 查詢候補名次
+     * @return 名次資訊；不在候補名單中回傳 null
+     */
+    public Position getPosition(UUID institutionId, UUID applicationId, String nationalId) {
+        Holder holder = acquireRead(institutionId);
+        try {
+            WaitlistRankIndex.Entry entry = holder.index.get(applicationId, nationalId);
+            if (entry == null) {
+                return null;
+            }
+            return new Position(holder.index.positionOf(applicationId, nationalId),
+                    holder.index.size(), entry.rankKey());
+        } finally {
+            holder.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 前 k 位候補者
+     */
+    public List<WaitlistRankIndex.Entry> getFirstWaiting(UUID institutionId, int k) {
+        Holder holder = acquireRead(institutionId);
+        try {
+            return holder.index.firstWaiting(k);
+        } finally {
+            holder.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 排序鍵小於 rankKey 的候補者（欄位與 WaitlistJdbcRepository.checkAdmissionOrderViolation 相同）
+     */
+    public List<Map<String, Object>> getWaitingAhead(UUID institutionId, int rankKey) {
+        Holder holder = acquireRead(institutionId);
+        List<WaitlistRankIndex.Entry> entries;
+        try {
+            entries = holder.index.aheadOf(rankKey);
+        } finally {
+            holder.lock.readLock().unlock();
+        }
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (WaitlistRankIndex.Entry entry : entries) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("ApplicationID", entry.applicationId());
+            row.put("NationalID", entry.nationalId());
+            row.put("Name", entry.name());
+            row.put("CurrentOrder", entry.rankKey());
+            row.put("Status", "候補中");
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    /**
+     * 申請案狀態或排序鍵變更後，同步已載入機構的索引
+     */
+    public void refreshApplication(UUID applicationId) {
+        if (applicationId == null) {
+            return;
+        }
+        runAfterCommit(() -> doRefreshApplication(applicationId));
+    }
+
+    private void doRefreshApplication(UUID applicationId) {
+        List<Map<String, Object>> rows;
+        try {
+            rows = waitlistJdbcRepository.findChildRankEntriesByApplication(applicationId);
+        } catch (Exception e) {
+            System.err.println("❌ 同步候補索引失敗: ApplicationID=" + applicationId + ", " + e.getMessage());
+            return;
+        }
+        for (Map<String, Object> row : rows) {
+            UUID institutionId = toUuid(row.get("InstitutionID"));
+            Holder holder = institutionId != null ? holders.get(institutionId) : null;
+            if (holder == null) {
+                // 尚未載入的機構於第一次查詢時才載入
+                continue;
+            }
+            holder.lock.writeLock().lock();
+            try {
+                if (holder.index == null) {
+                    continue;
+                }
+                if ("候補中".equals(row.get("Status")) && row.get("CurrentOrder") != null) {
+                    holder.index.put(toEntry(row));
+                } else {
+                    holder.index.remove(applicationId, (String) row.get("NationalID"));
+                }
+            } finally {
+                holder.lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * 整批改寫機構排序鍵後呼叫，下次查詢時重新載入
+     */
+    public void invalidate(UUID institutionId) {
+        if (institutionId == null) {
+            return;
+        }
+        holders.remove(institutionId);
+        // 交易提交前可能已有其他請求重新載入舊資料，提交後再清除一次
+        runAfterCommit(() -> holders.remove(institutionId));
+    }
+
+    private static void runAfterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * 取得機構索引的讀鎖（未載入或過期時先載入），呼叫端負責釋放
+     */
+    private Holder acquireRead(UUID institutionId) {
+        while (true) {
+            Holder holder = holders.computeIfAbsent(institutionId, id -> new Holder());
+            holder.lock.readLock().lock();
+            if (holder.index != null && System.currentTimeMillis() - holder.loadedAt < ttlMillis) {
+                return holder;
+            }
+            holder.lock.readLock().unlock();
+
+            holder.lock.writeLock().lock();
+            try {
+                if (holder.index == null || System.currentTimeMillis() - holder.loadedAt >= ttlMillis) {
+                    holder.index = load(institutionId);
+                    holder.loadedAt = System.currentTimeMillis();
+                }
+                // 降級為讀鎖
+                holder.lock.readLock().lock();
+            } finally {
+                holder.lock.writeLock().unlock();
+            }
+            if (holders.get(institutionId) == holder) {
+                return holder;
+            }
+            // 載入期間被 invalidate，重新取得
+            holder.lock.readLock().unlock();
+        }
+    }
+
+    private WaitlistRankIndex load(UUID institutionId) {
+        WaitlistRankIndex index = new WaitlistRankIndex();
+        for (Map<String, Object> row : waitlistJdbcRepository.findWaitlistRankEntries(institutionId)) {
+            index.put(toEntry(row));
+        }
+        System.out.println("📋 載入候補索引: InstitutionID=" + institutionId + ", 人數=" + index.size());
+        return index;
+    }
+
+    private static WaitlistRankIndex.Entry toEntry(Map<String, Object> row) {
+        Object caseNumber = row.get("CaseNumber");
+        Object identityType = row.get("IdentityType");
+        return new WaitlistRankIndex.Entry(
+                toUuid(row.get("ParticipantID")),
+                toUuid(row.get("ApplicationID")),
+                (String) row.get("NationalID"),
+                (String) row.get("Name"),
+                caseNumber != null ? ((Number) caseNumber).longValue() : null,
+                toLocalDate(row.get("BirthDate")),
+                identityType != null ? ((Number) identityType).intValue() : null,
+                (String) row.get("InstitutionName"),
+                ((Number) row.get("CurrentOrder")).intValue());
+    }
+
+    private static UUID toUuid(Object value) {
+        if (value == null) {
+            return null;
+        }
+        return value instanceof UUID ? (UUID) value : UUID.fromString(value.toString());
+    }
+
+    private static LocalDate toLocalDate(Object value) {
+        if (value instanceof java.sql.Date) {
+            return ((java.sql.Date) value).toLocalDate();
+        }
+        if (value instanceof LocalDate) {
+            return (LocalDate) value;
+        }
+        if (value instanceof String) {
+            return LocalDate.parse((String) value);
+        }
+        return null;
+    }
+}
@@ -1,13 +1,37 @@
 package Group4.Childcare.config;
 
+import Group4.Childcare.Service.AttachmentStorageLayout;
+import Group4.Childcare.Service.FileService;
+import Group4.Childcare.Service.FileServingSupport;
+import Group4.Childcare.Service.ImageDerivativeService;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.springframework.web.servlet.resource.PathResourceResolver;
+import org.springframework.web.servlet.resource.ResourceResolver;
+import org.springframework.web.servlet.resource.ResourceResolverChain;
+import org.springframework.web.util.UriUtils;
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
 
 @Configuration
 public class WebConfig implements WebMvcConfigurer {
 
+    private final FileService fileService;
+
+    @Autowired
+    public WebConfig(FileService fileService) {
+        this.fileService = fileService;
+    }
+
     @Override
     public void addResourceHandlers(ResourceHandlerRegistry registry) {
         // 取得應用程式運行目錄
@@ -34,17 +58,137 @@ public class WebConfig implements WebMvcConfigurer {
 
         // 映射靜態資源
         // file:/// 協議用於本地檔案系統
+        // 橫幅、公告附件、身分文件皆以 UUID_原始檔名 儲存且不會被覆寫，可長期快取；
+        // 機構圖片以 機構ID_原始檔名 儲存，重新上傳同名檔案會覆寫，須每次以 ETag / Last-Modified 重新驗證
+        // ?size=thumb / list / full 時改回傳縮圖（見 ImageDerivativeService）；結果依參數而異，不快取解析結果
         registry.addResourceHandler("/institution-files/**")
-                .addResourceLocations("file:///" + institutionDir.replace("\\", "/") + "/");
+                .addResourceLocations("file:///" + institutionDir.replace("\\", "/") + "/")
+                .setCacheControl(CacheControl.noCache())
+                .setEtagGenerator(WebConfig::eTagOf)
+                .resourceChain(false)
+                .addResolver(new ImageVariantResolver())
+                .addResolver(new PathResourceResolver());
 
         registry.addResourceHandler("/banner-files/**")
-                .addResourceLocations("file:///" + bannerDir.replace("\\", "/") + "/");
+                .addResourceLocations("file:///" + bannerDir.replace("\\", "/") + "/")
+                .setCacheControl(CacheControl.maxAge(FileServingSupport.IMMUTABLE_MAX_AGE).immutable().cachePublic())
+                .setEtagGenerator(WebConfig::eTagOf);
 
         registry.addResourceHandler("/attachment-files/**")
-                .addResourceLocations("file:///" + attachmentDir.replace("\\", "/") + "/");
+                .addResourceLocations("file:///" + attachmentDir.replace("\\", "/") + "/")
+                .setCacheControl(CacheControl.maxAge(FileServingSupport.IMMUTABLE_MAX_AGE).immutable().cachePublic())
+                .setEtagGenerator(WebConfig::eTagOf);
 
+        // 身分文件含個人資料，只允許瀏覽器快取，不進共用快取
+        // 網址維持 {applicationId}/檔名，實體檔案在分散目錄 ab/cd/{applicationId}/ 或尚未搬移的舊資料夾（見 AttachmentStorageLayout）；
+        // 搬移期間位置會改變，不快取解析結果；結案後已封存的附件改由封存檔讀取（見 AttachmentArchiveService）
         registry.addResourceHandler("/identity-files/**")
-                .addResourceLocations("file:///" + identityDir.replace("\\", "/") + "/");
+                .addResourceLocations("file:///" + identityDir.replace("\\", "/") + "/")
+                .setCacheControl(CacheControl.maxAge(FileServingSupport.IMMUTABLE_MAX_AGE).immutable().cachePrivate())
+                .setEtagGenerator(WebConfig::eTagOf)
+                .resourceChain(false)
+                .addResolver(new ShardedAttachmentResolver(fileService))
+                .addResolver(new PathResourceResolver());
+    }
+
+    /**
+     * 案件附件先找分散目錄，找不到再找舊的案件資料夾，最後找封存檔
+     * . 開頭的路徑段（.blobs、.uploads、.variants、舊版 .archive 等內部資料夾）一律不提供
+     */
+    private static class ShardedAttachmentResolver implements ResourceResolver {
+
+        private final FileService fileService;
+
+        ShardedAttachmentResolver(FileService fileService) {
+            this.fileService = fileService;
+        }
+
+        @Override
+        public Resource resolveResource(HttpServletRequest request, String requestPath,
+                                        List<? extends Resource> locations, ResourceResolverChain chain) {
+            if (hasHiddenSegment(requestPath)) {
+                return null;
+            }
+            String shardedPath = AttachmentStorageLayout.shardedPath(requestPath);
+            if (shardedPath != null) {
+                Resource resource = chain.resolveResource(request, shardedPath, locations);
+                if (resource != null) {
+                    return resource;
+                }
+            }
+            Resource resource = chain.resolveResource(request, requestPath, locations);
+            if (resource == null && shardedPath != null) {
+                // 請求路徑未解碼，封存記錄以原始檔名儲存
+                return fileService.getArchivedAttachment(UriUtils.decode(requestPath, StandardCharsets.UTF_8));
+            }
+            return resource;
+        }
+
+        @Override
+        public String resolveUrlPath(String resourcePath, List<? extends Resource> locations,
+                                     ResourceResolverChain chain) {
+            return hasHiddenSegment(resourcePath) ? null : chain.resolveUrlPath(resourcePath, locations);
+        }
+
+        /**
+         * 路徑（含編碼後的 %2E）是否有 . 開頭的路徑段
+         */
+        static boolean hasHiddenSegment(String path) {
+            String decoded;
+            try {
+                decoded = UriUtils.decode(path, StandardCharsets.UTF_8);
+            } catch (IllegalArgumentException e) {
+                return true;
+            }
+            for (String segment : decoded.split("[/\\\\]")) {
+                if (segment.startsWith(".")) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 依 size 參數改用已產生的縮圖；縮圖不存在時回傳原圖
+     */
+    private static class ImageVariantResolver implements ResourceResolver {
+
+        @Override
+        public Resource resolveResource(HttpServletRequest request, String requestPath,
+                                        List<? extends Resource> locations, ResourceResolverChain chain) {
+            Resource resource = chain.resolveResource(request, requestPath, locations);
+            if (resource == null || request == null) {
+                return resource;
+            }
+            ImageDerivativeService.Variant variant = ImageDerivativeService.Variant.fromParam(request.getParameter("size"));
+            if (variant == null || !resource.isFile()) {
+                return resource;
+            }
+            try {
+                Path found = ImageDerivativeService.findVariant(resource.getFile().toPath(), variant);
+                return found != null ? new FileSystemResource(found) : resource;
+            } catch (IOException e) {
+                return resource;
+            }
+        }
+
+        @Override
+        public String resolveUrlPath(String resourcePath, List<? extends Resource> locations,
+                                     ResourceResolverChain chain) {
+            return chain.resolveUrlPath(resourcePath, locations);
+        }
+    }
+
+    /**
+     * 與 FileServingSupport 相同的強 ETag（檔案大小與修改時間）
+     */
+    private static String eTagOf(Resource resource) {
+        try {
+            return FileServingSupport.eTagOf(resource.contentLength(), resource.lastModified());
+        } catch (IOException e) {
+            return null;
+        }
     }
 }
 
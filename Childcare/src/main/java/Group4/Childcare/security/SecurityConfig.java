@@ -38,6 +38,12 @@ public class SecurityConfig {
 //                 API 6: 執行候補抽籤 (需登入，角色由 @PreAuthorize 控制)
                 .requestMatchers("/waitlist/lottery").authenticated()
 
+                // 批次抽籤 (需登入，角色由 @PreAuthorize 控制)
+                .requestMatchers("/waitlist/lottery/jobs/**").authenticated()
+
+                // 錄取機率模擬 (需登入，角色由 @PreAuthorize 控制)
+                .requestMatchers("/waitlist/simulation").authenticated()
+
                 // 其餘所有請求: 不需要 JWT
                 .anyRequest().permitAll()
             )
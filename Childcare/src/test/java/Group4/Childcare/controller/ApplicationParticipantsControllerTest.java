@@ -138,6 +138,22 @@ class ApplicationParticipantsControllerTest {
                                 eq(testApplicationId), eq("A123456789"), eq("候補中"), eq("符合資格"), any());
         }
 
+        @Test
+        void testUpdate_NewMode_ClassFull_ReturnsConflict() throws Exception {
+                UUID classId = UUID.randomUUID();
+                when(service.updateParticipantWithDynamicOrder(
+                                eq(testApplicationId), eq("A123456789"), eq("已錄取"), any(), eq(classId)))
+                                .thenThrow(new ApplicationParticipantsService.ClassFullException(classId));
+
+                mockMvc.perform(put("/application-participants/{participantID}", testParticipantId)
+                                .param("applicationID", testApplicationId.toString())
+                                .param("nationalID", "A123456789")
+                                .param("status", "已錄取")
+                                .param("classID", classId.toString())
+                                .contentType(MediaType.APPLICATION_JSON))
+                                .andExpect(status().isConflict());
+        }
+
         @Test
         void testUpdate_RuntimeException() throws Exception {
                 when(service.updateParticipant(eq(testParticipantId), any(), any(), any()))
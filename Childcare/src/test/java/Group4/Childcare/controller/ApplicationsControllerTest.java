@@ -1,7 +1,6 @@
 package Group4.Childcare.controller;
 
 import Group4.Childcare.Model.Applications;
-import Group4.Childcare.Model.ApplicationParticipants;
 import Group4.Childcare.DTO.ApplicationSummaryDTO;
 import Group4.Childcare.DTO.ApplicationSummaryWithDetailsDTO;
 import Group4.Childcare.DTO.ApplicationCaseDTO;
@@ -11,21 +10,29 @@ import Group4.Childcare.DTO.ApplicationParticipantDTO;
 import Group4.Childcare.DTO.AdminCaseSearchRequestDto;
 import Group4.Childcare.Service.ApplicationsService;
 import Group4.Childcare.Service.FileService;
-import Group4.Childcare.Service.ApplicationParticipantsService;
+import Group4.Childcare.Service.ApplicationSubmissionService;
+import Group4.Childcare.Service.ApplicationEligibilityService;
+import Group4.Childcare.Service.IdempotencyService;
+import Group4.Childcare.Service.DataSourceWaitProbe;
+import Group4.Childcare.Service.StreamingUploadService;
+import Group4.Childcare.Service.SubmissionWaitingRoom;
+import Group4.Childcare.Repository.ApplicationsJdbcRepository;
+import Group4.Childcare.Repository.ApplicationsJdbcRepository.ChildApplicationCounts;
+import Group4.Childcare.Repository.IdempotencyKeyJdbcRepository;
 import Group4.Childcare.Controller.ApplicationsController;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockedStatic;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.MediaType;
 import org.springframework.http.HttpMethod;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.mock.web.MockMultipartFile;
@@ -62,12 +69,22 @@ class ApplicationsControllerTest {
         private FileService fileService;
 
         @Mock
-        private ApplicationParticipantsService applicationParticipantsService;
+        private ApplicationSubmissionService applicationSubmissionService;
 
         @Mock
         private JdbcTemplate jdbcTemplate;
 
-        @InjectMocks
+        @Mock
+        private ApplicationsJdbcRepository applicationsJdbcRepository;
+
+        @Mock
+        private IdempotencyService idempotencyService;
+
+        @Mock
+        private StreamingUploadService streamingUploadService;
+
+        private SubmissionWaitingRoom submissionWaitingRoom;
+
         private ApplicationsController controller;
 
         private MockMvc mockMvc;
@@ -80,9 +97,12 @@ class ApplicationsControllerTest {
 
         @BeforeEach
         void setUp() {
-                mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
                 objectMapper = new ObjectMapper();
                 objectMapper.registerModule(new JavaTimeModule());
+                // 預設不排隊（未啟用的等候室一律放行）
+                submissionWaitingRoom = new SubmissionWaitingRoom(mock(DataSourceWaitProbe.class), false, 1, 1, 1, 2,
+                                300, 120, java.time.Clock.systemUTC());
+                rebuildController();
 
                 testApplicationId = UUID.randomUUID();
                 testUserId = UUID.randomUUID();
@@ -95,13 +115,17 @@ class ApplicationsControllerTest {
                 testApplication.setApplicationDate(LocalDate.now());
                 testApplication.setCaseNumber(1234567890L);
                 testApplication.setIdentityType((byte) 1);
+        }
 
-                // Manually inject mocks that @InjectMocks might miss due to mixed
-                // constructor/field injection
-                ReflectionTestUtils.setField(controller, "fileService", fileService);
-                ReflectionTestUtils.setField(controller, "jdbcTemplate", jdbcTemplate);
-                ReflectionTestUtils.setField(controller, "applicationParticipantsService",
-                                applicationParticipantsService);
+        /**
+         * 以目前的 idempotencyService、submissionWaitingRoom、streamingUploadService 重新建立控制器
+         */
+        private void rebuildController() {
+                // 資格檢查使用實際服務，只 mock 單次計數查詢（預設無任何案件）
+                controller = new ApplicationsController(service, jdbcTemplate, fileService, applicationSubmissionService,
+                                new ApplicationEligibilityService(applicationsJdbcRepository), idempotencyService,
+                                submissionWaitingRoom, streamingUploadService, objectMapper);
+                mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
         }
 
         // ===== create 測試 =====
@@ -610,11 +634,6 @@ class ApplicationsControllerTest {
                 // Mock service calls
                 when(service.create(any(Applications.class))).thenReturn(createdApp);
                 when(service.generateCaseNumber()).thenReturn(12345L);
-                when(service.countAcceptedApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countPendingApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countActiveApplicationsByChildAndInstitution(anyString(), any())).thenReturn(0);
-                when(applicationParticipantsService.create(any(Group4.Childcare.Model.ApplicationParticipants.class)))
-                                .thenReturn(null);
 
                 // submitApplicationCase 會直接 Files.copy()，因此 folderPath 必須存在。
                 Path tempDir = Files.createTempDirectory("childcare-test-identity-");
@@ -631,7 +650,9 @@ class ApplicationsControllerTest {
                                 .contentType(MediaType.MULTIPART_FORM_DATA))
                                 .andExpect(status().isOk());
 
-                verify(service, times(1)).create(any(Applications.class));
+                // 案件與家長、幼兒一起交由送件服務寫入，不再逐筆呼叫 create
+                verify(applicationSubmissionService, times(1)).submit(any(Applications.class), any(), any());
+                verify(service, never()).create(any(Applications.class));
         }
 
         @Test
@@ -668,17 +689,20 @@ class ApplicationsControllerTest {
                 MockMultipartFile file = new MockMultipartFile("file", "test.pdf", MediaType.APPLICATION_PDF_VALUE,
                                 "content".getBytes());
 
-                when(service.create(any(Applications.class))).thenThrow(new RuntimeException("Service Error"));
+                when(applicationSubmissionService.submit(any(Applications.class), any(), any()))
+                                .thenThrow(new RuntimeException("Service Error"));
+                Path tempDir = Files.createTempDirectory("childcare-test-submit-error-");
+                when(fileService.getFolderPath(any(UUID.class))).thenReturn(tempDir);
                 when(service.generateCaseNumber()).thenReturn(12345L);
-                when(service.countAcceptedApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countPendingApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countActiveApplicationsByChildAndInstitution(anyString(), any())).thenReturn(0);
 
                 mockMvc.perform(multipart("/applications/case/submit")
                                 .file(file)
                                 .file(caseDtoPart)
                                 .contentType(MediaType.MULTIPART_FORM_DATA))
                                 .andExpect(status().isInternalServerError());
+
+                // 交易回滾後移除已存下的附件
+                verify(fileService, times(1)).deleteFolder(any(UUID.class));
         }
 
         // ===== adminSearchCases 測試 =====
@@ -828,6 +852,12 @@ class ApplicationsControllerTest {
 
                 mockMvc.perform(req.contentType(MediaType.MULTIPART_FORM_DATA))
                                 .andExpect(status().isOk());
+
+                // 舊檔經由 FileService 刪除（同時移除內容定址儲存的參照），新檔併入內容定址儲存
+                verify(fileService).deleteAttachment(testApplicationId, testApplicationId + "/old_file.pdf");
+                verify(fileService).registerAttachment(
+                                org.mockito.ArgumentMatchers.startsWith(testApplicationId + "/"),
+                                org.mockito.ArgumentMatchers.isNull());
         }
 
         @Test
@@ -866,7 +896,7 @@ class ApplicationsControllerTest {
                 when(service.create(any(Applications.class))).thenReturn(testApplication);
                 when(service.generateCaseNumber()).thenReturn(12345L);
                 // 幼兒已有錄取案件
-                when(service.countAcceptedApplicationsByChildNationalID("C123456789")).thenReturn(1);
+                stubChildCounts("C123456789", 1, 0, 0);
 
                 MockMultipartFile caseDtoPart = new MockMultipartFile("caseDto", "", MediaType.APPLICATION_JSON_VALUE,
                                 objectMapper.writeValueAsBytes(caseDto));
@@ -888,9 +918,8 @@ class ApplicationsControllerTest {
 
                 when(service.create(any(Applications.class))).thenReturn(testApplication);
                 when(service.generateCaseNumber()).thenReturn(12345L);
-                when(service.countAcceptedApplicationsByChildNationalID("C123456789")).thenReturn(0);
                 // 處理中案件已達 2 件
-                when(service.countPendingApplicationsByChildNationalID("C123456789")).thenReturn(2);
+                stubChildCounts("C123456789", 0, 2, 0);
 
                 MockMultipartFile caseDtoPart = new MockMultipartFile("caseDto", "", MediaType.APPLICATION_JSON_VALUE,
                                 objectMapper.writeValueAsBytes(caseDto));
@@ -912,11 +941,8 @@ class ApplicationsControllerTest {
 
                 when(service.create(any(Applications.class))).thenReturn(testApplication);
                 when(service.generateCaseNumber()).thenReturn(12345L);
-                when(service.countAcceptedApplicationsByChildNationalID("C123456789")).thenReturn(0);
-                when(service.countPendingApplicationsByChildNationalID("C123456789")).thenReturn(1);
                 // 同機構已有有效申請
-                when(service.countActiveApplicationsByChildAndInstitution("C123456789", testInstitutionId))
-                                .thenReturn(1);
+                stubChildCounts("C123456789", 0, 1, 1);
 
                 MockMultipartFile caseDtoPart = new MockMultipartFile("caseDto", "", MediaType.APPLICATION_JSON_VALUE,
                                 objectMapper.writeValueAsBytes(caseDto));
@@ -925,6 +951,38 @@ class ApplicationsControllerTest {
                                 .file(caseDtoPart)
                                 .contentType(MediaType.MULTIPART_FORM_DATA))
                                 .andExpect(status().isBadRequest());
+
+                // 所有幼兒以一次查詢檢查
+                verify(applicationsJdbcRepository, times(1)).countChildApplications(List.of("C123456789"),
+                                testInstitutionId);
+        }
+
+        // ===== checkEligibility() 送件前預先檢查 =====
+        @Test
+        void testCheckEligibility_ReturnsVerdictPerChild() throws Exception {
+                CaseEditUpdateDTO caseDto = createValidCaseDto();
+                stubChildCounts("C123456789", 0, 2, 0);
+
+                mockMvc.perform(post("/applications/case/eligibility")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(objectMapper.writeValueAsString(caseDto)))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.eligible", is(false)))
+                                .andExpect(jsonPath("$.message", containsString("Test Child")))
+                                .andExpect(jsonPath("$.children", hasSize(1)))
+                                .andExpect(jsonPath("$.children[0].pendingCount", is(2)));
+
+                verify(applicationSubmissionService, never()).submit(any(), any(), any());
+        }
+
+        @Test
+        void testCheckEligibility_AllEligible() throws Exception {
+                mockMvc.perform(post("/applications/case/eligibility")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(objectMapper.writeValueAsString(createValidCaseDto())))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.eligible", is(true)))
+                                .andExpect(jsonPath("$.children[0].eligible", is(true)));
         }
 
         @Test
@@ -934,9 +992,6 @@ class ApplicationsControllerTest {
 
                 when(service.create(any(Applications.class))).thenReturn(testApplication);
                 when(service.generateCaseNumber()).thenReturn(202501020001L);
-                when(service.countAcceptedApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countPendingApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countActiveApplicationsByChildAndInstitution(anyString(), any())).thenReturn(0);
 
                 MockMultipartFile caseDtoPart = new MockMultipartFile("caseDto", "", MediaType.APPLICATION_JSON_VALUE,
                                 objectMapper.writeValueAsBytes(caseDto));
@@ -956,9 +1011,6 @@ class ApplicationsControllerTest {
 
                 when(service.create(any(Applications.class))).thenReturn(testApplication);
                 when(service.generateCaseNumber()).thenReturn(12345L);
-                when(service.countAcceptedApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countPendingApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countActiveApplicationsByChildAndInstitution(anyString(), any())).thenReturn(0);
 
                 MockMultipartFile caseDtoPart = new MockMultipartFile("caseDto", "", MediaType.APPLICATION_JSON_VALUE,
                                 objectMapper.writeValueAsBytes(caseDto));
@@ -979,9 +1031,6 @@ class ApplicationsControllerTest {
 
                 when(service.create(any(Applications.class))).thenReturn(testApplication);
                 when(service.generateCaseNumber()).thenReturn(12345L);
-                when(service.countAcceptedApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countPendingApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countActiveApplicationsByChildAndInstitution(anyString(), any())).thenReturn(0);
 
                 MockMultipartFile caseDtoPart = new MockMultipartFile("caseDto", "", MediaType.APPLICATION_JSON_VALUE,
                                 objectMapper.writeValueAsBytes(caseDto));
@@ -1002,9 +1051,6 @@ class ApplicationsControllerTest {
 
                 when(service.create(any(Applications.class))).thenReturn(testApplication);
                 when(service.generateCaseNumber()).thenReturn(12345L);
-                when(service.countAcceptedApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countPendingApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countActiveApplicationsByChildAndInstitution(anyString(), any())).thenReturn(0);
 
                 MockMultipartFile caseDtoPart = new MockMultipartFile("caseDto", "", MediaType.APPLICATION_JSON_VALUE,
                                 objectMapper.writeValueAsBytes(caseDto));
@@ -1021,9 +1067,6 @@ class ApplicationsControllerTest {
 
                 when(service.create(any(Applications.class))).thenReturn(testApplication);
                 when(service.generateCaseNumber()).thenReturn(12345L);
-                when(service.countAcceptedApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countPendingApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countActiveApplicationsByChildAndInstitution(anyString(), any())).thenReturn(0);
 
                 MockMultipartFile caseDtoPart = new MockMultipartFile("caseDto", "", MediaType.APPLICATION_JSON_VALUE,
                                 objectMapper.writeValueAsBytes(caseDto));
@@ -1034,6 +1077,230 @@ class ApplicationsControllerTest {
                                 .andExpect(status().isOk());
         }
 
+        @Test
+        void testSubmitApplicationCase_IdempotencyKey_RetryReplaysFirstResult() throws Exception {
+                // 實際的冪等服務，只 mock 冪等鍵資料表
+                IdempotencyKeyJdbcRepository idempotencyKeyJdbcRepository = mock(IdempotencyKeyJdbcRepository.class);
+                when(idempotencyKeyJdbcRepository.claim(anyString(), eq("retry-key-1"), anyString(), any(), any())).thenReturn(true);
+                idempotencyService = new IdempotencyService(idempotencyKeyJdbcRepository, objectMapper, 24, 120, 2000);
+                rebuildController();
+                CaseEditUpdateDTO caseDto = createValidCaseDto();
+
+                MockMultipartFile caseDtoPart = new MockMultipartFile("caseDto", "", MediaType.APPLICATION_JSON_VALUE,
+                                objectMapper.writeValueAsBytes(caseDto));
+
+                String first = mockMvc.perform(multipart("/applications/case/submit")
+                                .file(caseDtoPart)
+                                .header("Idempotency-Key", "retry-key-1")
+                                .contentType(MediaType.MULTIPART_FORM_DATA))
+                                .andExpect(status().isOk())
+                                .andExpect(header().doesNotExist(IdempotencyService.REPLAYED_HEADER))
+                                .andReturn().getResponse().getContentAsString();
+
+                mockMvc.perform(multipart("/applications/case/submit")
+                                .file(caseDtoPart)
+                                .header("Idempotency-Key", "retry-key-1")
+                                .contentType(MediaType.MULTIPART_FORM_DATA))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string(IdempotencyService.REPLAYED_HEADER, "true"))
+                                .andExpect(jsonPath("$.applicationID",
+                                                is(objectMapper.readTree(first).get("applicationID").asText())));
+
+                // 重送不再寫入案件
+                verify(applicationSubmissionService, times(1)).submit(any(Applications.class), any(), any());
+                verify(idempotencyKeyJdbcRepository).complete(anyString(), eq("retry-key-1"), any(UUID.class), eq(200),
+                                any(String.class), any());
+        }
+
+        @Test
+        void testSubmitApplicationCase_IdempotencyKey_ReusedForDifferentCaseRejected() throws Exception {
+                IdempotencyKeyJdbcRepository idempotencyKeyJdbcRepository = mock(IdempotencyKeyJdbcRepository.class);
+                when(idempotencyKeyJdbcRepository.claim(anyString(), eq("retry-key-3"), anyString(), any(), any()))
+                                .thenReturn(true);
+                idempotencyService = new IdempotencyService(idempotencyKeyJdbcRepository, objectMapper, 24, 120, 2000);
+                rebuildController();
+                CaseEditUpdateDTO caseDto = createValidCaseDto();
+
+                mockMvc.perform(multipart("/applications/case/submit")
+                                .file(new MockMultipartFile("caseDto", "", MediaType.APPLICATION_JSON_VALUE,
+                                                objectMapper.writeValueAsBytes(caseDto)))
+                                .header("Idempotency-Key", "retry-key-3")
+                                .contentType(MediaType.MULTIPART_FORM_DATA))
+                                .andExpect(status().isOk());
+
+                // 同一個鍵、不同的送件內容：不重播第一次的結果，也不建立新案件
+                caseDto.setIdentityType(2);
+                mockMvc.perform(multipart("/applications/case/submit")
+                                .file(new MockMultipartFile("caseDto", "", MediaType.APPLICATION_JSON_VALUE,
+                                                objectMapper.writeValueAsBytes(caseDto)))
+                                .header("Idempotency-Key", "retry-key-3")
+                                .contentType(MediaType.MULTIPART_FORM_DATA))
+                                .andExpect(status().isUnprocessableEntity())
+                                .andExpect(header().doesNotExist(IdempotencyService.REPLAYED_HEADER));
+
+                verify(applicationSubmissionService, times(1)).submit(any(Applications.class), any(), any());
+        }
+
+        @Test
+        void testSubmitApplicationCase_IdempotencyKey_ScopedByPrincipalNotRequestBody() throws Exception {
+                IdempotencyKeyJdbcRepository idempotencyKeyJdbcRepository = mock(IdempotencyKeyJdbcRepository.class);
+                when(idempotencyKeyJdbcRepository.claim(anyString(), eq("retry-key-4"), anyString(), any(), any()))
+                                .thenReturn(true);
+                idempotencyService = new IdempotencyService(idempotencyKeyJdbcRepository, objectMapper, 24, 120, 2000);
+                rebuildController();
+                // caseDto 帶有他人的 UserID，範圍仍以登入帳號為準
+                CaseEditUpdateDTO caseDto = createValidCaseDto();
+                MockMultipartFile caseDtoPart = new MockMultipartFile("caseDto", "", MediaType.APPLICATION_JSON_VALUE,
+                                objectMapper.writeValueAsBytes(caseDto));
+
+                SecurityContextHolder.getContext().setAuthentication(
+                                new UsernamePasswordAuthenticationToken("parent-a", null, List.of()));
+                try {
+                        mockMvc.perform(multipart("/applications/case/submit")
+                                        .file(caseDtoPart)
+                                        .header("Idempotency-Key", "retry-key-4")
+                                        .contentType(MediaType.MULTIPART_FORM_DATA))
+                                        .andExpect(status().isOk());
+                } finally {
+                        SecurityContextHolder.clearContext();
+                }
+
+                // 未登入：共用 anonymous 範圍，不採用請求本體中的 UserID
+                mockMvc.perform(multipart("/applications/case/submit")
+                                .file(caseDtoPart)
+                                .header("Idempotency-Key", "retry-key-4")
+                                .contentType(MediaType.MULTIPART_FORM_DATA))
+                                .andExpect(status().isOk());
+
+                verify(idempotencyKeyJdbcRepository).claim(eq("user:parent-a"), eq("retry-key-4"), anyString(), any(), any());
+                verify(idempotencyKeyJdbcRepository).claim(eq("anonymous"), eq("retry-key-4"), anyString(), any(), any());
+                verify(idempotencyKeyJdbcRepository, never()).claim(eq(testUserId.toString().toLowerCase()), any(), any(),
+                                any(), any());
+        }
+
+        @Test
+        void testSubmitApplicationCase_IdempotencyKey_FailureReleasesKey() throws Exception {
+                IdempotencyKeyJdbcRepository idempotencyKeyJdbcRepository = mock(IdempotencyKeyJdbcRepository.class);
+                when(idempotencyKeyJdbcRepository.claim(anyString(), eq("retry-key-2"), anyString(), any(), any())).thenReturn(true);
+                idempotencyService = new IdempotencyService(idempotencyKeyJdbcRepository, objectMapper, 24, 120, 2000);
+                rebuildController();
+                when(applicationSubmissionService.submit(any(Applications.class), any(), any()))
+                                .thenThrow(new RuntimeException("DB down"));
+                CaseEditUpdateDTO caseDto = createValidCaseDto();
+
+                MockMultipartFile caseDtoPart = new MockMultipartFile("caseDto", "", MediaType.APPLICATION_JSON_VALUE,
+                                objectMapper.writeValueAsBytes(caseDto));
+
+                mockMvc.perform(multipart("/applications/case/submit")
+                                .file(caseDtoPart)
+                                .header("Idempotency-Key", "retry-key-2")
+                                .contentType(MediaType.MULTIPART_FORM_DATA))
+                                .andExpect(status().isInternalServerError());
+
+                // 失敗不記錄結果，重試時重新處理
+                verify(idempotencyKeyJdbcRepository).release(anyString(), eq("retry-key-2"));
+                verify(idempotencyKeyJdbcRepository, never()).complete(any(), any(), any(), any(Integer.class), any(), any());
+        }
+
+        @Test
+        void testSubmitApplicationCase_WaitingRoom_RequiresAdmittedToken() throws Exception {
+                DataSourceWaitProbe probe = mock(DataSourceWaitProbe.class);
+                SubmissionWaitingRoom room = new SubmissionWaitingRoom(probe, true, 1, 1, 1, 2, 300, 120,
+                                java.time.Clock.systemUTC());
+                submissionWaitingRoom = room;
+                rebuildController();
+                SubmissionWaitingRoom.Ticket ticket = room.enqueue();
+                CaseEditUpdateDTO caseDto = createValidCaseDto();
+                MockMultipartFile caseDtoPart = new MockMultipartFile("caseDto", "", MediaType.APPLICATION_JSON_VALUE,
+                                objectMapper.writeValueAsBytes(caseDto));
+
+                // 尚未放行：不寫入、不查詢資格
+                mockMvc.perform(multipart("/applications/case/submit")
+                                .file(caseDtoPart)
+                                .header(ApplicationsController.QUEUE_TOKEN_HEADER, ticket.token())
+                                .contentType(MediaType.MULTIPART_FORM_DATA))
+                                .andExpect(status().isTooManyRequests());
+                mockMvc.perform(post("/applications/case/eligibility")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(objectMapper.writeValueAsString(caseDto)))
+                                .andExpect(status().isTooManyRequests());
+                verify(applicationSubmissionService, never()).submit(any(Applications.class), any(), any());
+                verify(applicationsJdbcRepository, never()).countChildApplications(anyList(), any());
+
+                // 放行後可送件，送件成功即收回號碼牌
+                room.tick();
+                mockMvc.perform(multipart("/applications/case/submit")
+                                .file(caseDtoPart)
+                                .header(ApplicationsController.QUEUE_TOKEN_HEADER, ticket.token())
+                                .contentType(MediaType.MULTIPART_FORM_DATA))
+                                .andExpect(status().isOk());
+                verify(applicationSubmissionService, times(1)).submit(any(Applications.class), any(), any());
+                org.junit.jupiter.api.Assertions.assertNull(room.status(ticket.token()));
+        }
+
+        private static byte[] streamBody(String boundary, byte[] caseJson, String filename, String contentType,
+                                         byte[] content) throws Exception {
+                java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+                out.write(("--" + boundary + "\r\nContent-Disposition: form-data; name=\"caseDto\"\r\n"
+                                + "Content-Type: application/json\r\n\r\n").getBytes());
+                out.write(caseJson);
+                out.write(("\r\n--" + boundary + "\r\nContent-Disposition: form-data; name=\"file\"; filename=\""
+                                + filename + "\"\r\nContent-Type: " + contentType + "\r\n\r\n").getBytes());
+                out.write(content);
+                out.write(("\r\n--" + boundary + "--\r\n").getBytes());
+                return out.toByteArray();
+        }
+
+        @Test
+        void testSubmitApplicationCaseStream_WritesAttachmentOnceWithSha256() throws Exception {
+                Path tempDir = Files.createTempDirectory("childcare-test-stream-");
+                when(fileService.getFolderPath(any(UUID.class))).thenReturn(tempDir);
+                streamingUploadService = new StreamingUploadService(1024 * 1024, 10 * 1024 * 1024,
+                                List.of("application/pdf"), 1);
+                rebuildController();
+                byte[] pdf = "%PDF-1.7 test content".getBytes();
+                String sha256 = java.util.HexFormat.of().formatHex(
+                                java.security.MessageDigest.getInstance("SHA-256").digest(pdf));
+
+                mockMvc.perform(post("/applications/case/submit/stream")
+                                .contentType("multipart/form-data; boundary=XyZ")
+                                .content(streamBody("XyZ", objectMapper.writeValueAsBytes(createValidCaseDto()),
+                                                "test.pdf", "application/pdf", pdf)))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.attachmentSha256[0]", is(sha256)))
+                                .andExpect(jsonPath("$.attachmentPath", endsWith("_test.pdf")));
+
+                // 檔案直接寫入案件資料夾，內容與上傳相同
+                try (java.util.stream.Stream<Path> files = Files.list(tempDir)) {
+                        Path stored = files.findFirst().orElseThrow();
+                        org.junit.jupiter.api.Assertions.assertArrayEquals(pdf, Files.readAllBytes(stored));
+                }
+                verify(applicationSubmissionService, times(1)).submit(
+                                argThat(app -> app.getAttachmentPath() != null && app.getAttachmentPath().endsWith("_test.pdf")),
+                                any(), any());
+        }
+
+        @Test
+        void testSubmitApplicationCaseStream_RejectsOversizedAttachment() throws Exception {
+                Path tempDir = Files.createTempDirectory("childcare-test-stream-");
+                when(fileService.getFolderPath(any(UUID.class))).thenReturn(tempDir);
+                streamingUploadService = new StreamingUploadService(16, 10 * 1024 * 1024,
+                                List.of("application/pdf"), 1);
+                rebuildController();
+
+                mockMvc.perform(post("/applications/case/submit/stream")
+                                .contentType("multipart/form-data; boundary=XyZ")
+                                .content(streamBody("XyZ", objectMapper.writeValueAsBytes(createValidCaseDto()),
+                                                "big.pdf", "application/pdf", "%PDF-1.7 more than sixteen bytes".getBytes())))
+                                .andExpect(status().isPayloadTooLarge());
+
+                verify(applicationSubmissionService, never()).submit(any(Applications.class), any(), any());
+                verify(fileService, times(1)).deleteFolder(any(UUID.class));
+                try (java.util.stream.Stream<Path> files = Files.list(tempDir)) {
+                        org.junit.jupiter.api.Assertions.assertEquals(0, files.count());
+                }
+        }
+
         @Test
         void testSubmitApplicationCase_NullParentsChildren_Success() throws Exception {
                 CaseEditUpdateDTO caseDto = createValidCaseDto();
@@ -1058,9 +1325,6 @@ class ApplicationsControllerTest {
 
                 when(service.create(any(Applications.class))).thenReturn(testApplication);
                 when(service.generateCaseNumber()).thenReturn(12345L);
-                when(service.countAcceptedApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countPendingApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countActiveApplicationsByChildAndInstitution(anyString(), any())).thenReturn(0);
 
                 Path tempDir = Files.createTempDirectory("childcare-test-multi-attach-");
                 when(fileService.getFolderPath(any(UUID.class))).thenReturn(tempDir);
@@ -1082,7 +1346,12 @@ class ApplicationsControllerTest {
                                 .contentType(MediaType.MULTIPART_FORM_DATA))
                                 .andExpect(status().isOk());
 
-                verify(service, times(1)).update(any(UUID.class), any(Applications.class));
+                // 附件路徑隨案件一次寫入，不再另外 update
+                org.mockito.ArgumentCaptor<Applications> appCaptor = org.mockito.ArgumentCaptor
+                                .forClass(Applications.class);
+                verify(applicationSubmissionService, times(1)).submit(appCaptor.capture(), any(), any());
+                org.junit.jupiter.api.Assertions.assertNotNull(appCaptor.getValue().getAttachmentPath3());
+                verify(service, never()).update(any(UUID.class), any(Applications.class));
         }
 
         @Test
@@ -1092,9 +1361,6 @@ class ApplicationsControllerTest {
 
                 when(service.create(any(Applications.class))).thenReturn(testApplication);
                 when(service.generateCaseNumber()).thenReturn(12345L);
-                when(service.countAcceptedApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countPendingApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countActiveApplicationsByChildAndInstitution(anyString(), any())).thenReturn(0);
 
                 MockMultipartFile caseDtoPart = new MockMultipartFile("caseDto", "", MediaType.APPLICATION_JSON_VALUE,
                                 objectMapper.writeValueAsBytes(caseDto));
@@ -1112,9 +1378,6 @@ class ApplicationsControllerTest {
 
                 when(service.create(any(Applications.class))).thenReturn(testApplication);
                 when(service.generateCaseNumber()).thenReturn(12345L);
-                when(service.countAcceptedApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countPendingApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countActiveApplicationsByChildAndInstitution(anyString(), any())).thenReturn(0);
 
                 MockMultipartFile caseDtoPart = new MockMultipartFile("caseDto", "", MediaType.APPLICATION_JSON_VALUE,
                                 objectMapper.writeValueAsBytes(caseDto));
@@ -1506,9 +1769,6 @@ class ApplicationsControllerTest {
 
                 when(service.create(any(Applications.class))).thenReturn(testApplication);
                 when(service.generateCaseNumber()).thenReturn(12345L);
-                when(service.countAcceptedApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countPendingApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countActiveApplicationsByChildAndInstitution(anyString(), any())).thenReturn(0);
 
                 Path tempDir = Files.createTempDirectory("childcare-test-submit4-");
                 when(fileService.getFolderPath(any(UUID.class))).thenReturn(tempDir);
@@ -1529,8 +1789,16 @@ class ApplicationsControllerTest {
                                 .contentType(MediaType.MULTIPART_FORM_DATA))
                                 .andExpect(status().isOk());
 
-                // 驗證 update 被調用（因為有附件需要更新）
-                verify(service, times(1)).update(any(UUID.class), any(Applications.class));
+                // 驗證四個附件路徑都隨案件一起寫入
+                org.mockito.ArgumentCaptor<Applications> appCaptor = org.mockito.ArgumentCaptor
+                                .forClass(Applications.class);
+                verify(applicationSubmissionService, times(1)).submit(appCaptor.capture(), any(), any());
+                Applications submitted = appCaptor.getValue();
+                org.junit.jupiter.api.Assertions.assertTrue(submitted.getAttachmentPath().endsWith("_a0.pdf"));
+                org.junit.jupiter.api.Assertions.assertTrue(submitted.getAttachmentPath1().endsWith("_a1.pdf"));
+                org.junit.jupiter.api.Assertions.assertTrue(submitted.getAttachmentPath2().endsWith("_a2.pdf"));
+                org.junit.jupiter.api.Assertions.assertTrue(submitted.getAttachmentPath3().endsWith("_a3.pdf"));
+                verify(service, never()).update(any(UUID.class), any(Applications.class));
         }
 
         // ===== submitApplicationCase() - 性別轉換邏輯覆蓋 =====
@@ -1547,9 +1815,6 @@ class ApplicationsControllerTest {
 
                 when(service.create(any(Applications.class))).thenReturn(testApplication);
                 when(service.generateCaseNumber()).thenReturn(12345L);
-                when(service.countAcceptedApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countPendingApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countActiveApplicationsByChildAndInstitution(anyString(), any())).thenReturn(0);
 
                 MockMultipartFile caseDtoPart = new MockMultipartFile("caseDto", "", MediaType.APPLICATION_JSON_VALUE,
                                 objectMapper.writeValueAsBytes(caseDto));
@@ -1572,9 +1837,6 @@ class ApplicationsControllerTest {
 
                 when(service.create(any(Applications.class))).thenReturn(testApplication);
                 when(service.generateCaseNumber()).thenReturn(12345L);
-                when(service.countAcceptedApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countPendingApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countActiveApplicationsByChildAndInstitution(anyString(), any())).thenReturn(0);
 
                 MockMultipartFile caseDtoPart = new MockMultipartFile("caseDto", "", MediaType.APPLICATION_JSON_VALUE,
                                 objectMapper.writeValueAsBytes(caseDto));
@@ -1597,9 +1859,6 @@ class ApplicationsControllerTest {
 
                 when(service.create(any(Applications.class))).thenReturn(testApplication);
                 when(service.generateCaseNumber()).thenReturn(12345L);
-                when(service.countAcceptedApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countPendingApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countActiveApplicationsByChildAndInstitution(anyString(), any())).thenReturn(0);
 
                 MockMultipartFile caseDtoPart = new MockMultipartFile("caseDto", "", MediaType.APPLICATION_JSON_VALUE,
                                 objectMapper.writeValueAsBytes(caseDto));
@@ -1623,9 +1882,6 @@ class ApplicationsControllerTest {
 
                 when(service.create(any(Applications.class))).thenReturn(testApplication);
                 when(service.generateCaseNumber()).thenReturn(12345L);
-                when(service.countAcceptedApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countPendingApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countActiveApplicationsByChildAndInstitution(anyString(), any())).thenReturn(0);
 
                 MockMultipartFile caseDtoPart = new MockMultipartFile("caseDto", "", MediaType.APPLICATION_JSON_VALUE,
                                 objectMapper.writeValueAsBytes(caseDto));
@@ -1648,9 +1904,6 @@ class ApplicationsControllerTest {
 
                 when(service.create(any(Applications.class))).thenReturn(testApplication);
                 when(service.generateCaseNumber()).thenReturn(12345L);
-                when(service.countAcceptedApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countPendingApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countActiveApplicationsByChildAndInstitution(anyString(), any())).thenReturn(0);
 
                 MockMultipartFile caseDtoPart = new MockMultipartFile("caseDto", "", MediaType.APPLICATION_JSON_VALUE,
                                 objectMapper.writeValueAsBytes(caseDto));
@@ -1673,9 +1926,6 @@ class ApplicationsControllerTest {
 
                 when(service.create(any(Applications.class))).thenReturn(testApplication);
                 when(service.generateCaseNumber()).thenReturn(12345L);
-                when(service.countAcceptedApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countPendingApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countActiveApplicationsByChildAndInstitution(anyString(), any())).thenReturn(0);
 
                 MockMultipartFile caseDtoPart = new MockMultipartFile("caseDto", "", MediaType.APPLICATION_JSON_VALUE,
                                 objectMapper.writeValueAsBytes(caseDto));
@@ -1707,8 +1957,8 @@ class ApplicationsControllerTest {
                                 .contentType(MediaType.MULTIPART_FORM_DATA))
                                 .andExpect(status().isOk());
 
-                // 驗證計數方法未被調用（因為 nationalID 為空）
-                verify(service, never()).countAcceptedApplicationsByChildNationalID(anyString());
+                // 驗證計數查詢未被調用（因為 nationalID 為空）
+                verify(applicationsJdbcRepository, never()).countChildApplications(anyList(), any());
         }
 
         // ===== getWithOffset() - hasNext = true 場景 =====
@@ -1773,9 +2023,6 @@ class ApplicationsControllerTest {
 
                 when(service.create(any(Applications.class))).thenReturn(testApplication);
                 when(service.generateCaseNumber()).thenReturn(12345L);
-                when(service.countAcceptedApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countPendingApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countActiveApplicationsByChildAndInstitution(anyString(), any())).thenReturn(0);
 
                 // 返回不存在的路徑讓 Files.copy 失敗
                 Path nonExistentDir = Path.of("Z:/non/existent/path/that/should/not/exist");
@@ -1790,21 +2037,20 @@ class ApplicationsControllerTest {
                                 .file(caseDtoPart).file(file)
                                 .contentType(MediaType.MULTIPART_FORM_DATA))
                                 .andExpect(status().isInternalServerError());
+
+                // 檔案存檔失敗時尚未寫入任何資料
+                verify(applicationSubmissionService, never()).submit(any(), any(), any());
+                verify(fileService, times(1)).deleteFolder(any(UUID.class));
         }
 
-        // ===== submitApplicationCase() - 附件更新失敗（不影響主流程）=====
+        // ===== submitApplicationCase() - 送件交易失敗（整筆回滾並移除附件）=====
         @Test
-        void testSubmitApplicationCase_AttachmentUpdateFails_StillReturnsOk() throws Exception {
+        void testSubmitApplicationCase_SubmitFails_RemovesSavedFiles() throws Exception {
                 CaseEditUpdateDTO caseDto = createValidCaseDto();
 
-                when(service.create(any(Applications.class))).thenReturn(testApplication);
                 when(service.generateCaseNumber()).thenReturn(12345L);
-                when(service.countAcceptedApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countPendingApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countActiveApplicationsByChildAndInstitution(anyString(), any())).thenReturn(0);
-                // update 失敗但不應影響整體流程
-                doThrow(new RuntimeException("DB Error")).when(service).update(any(UUID.class),
-                                any(Applications.class));
+                when(applicationSubmissionService.submit(any(Applications.class), any(), any()))
+                                .thenThrow(new RuntimeException("DB Error"));
 
                 Path tempDir = Files.createTempDirectory("childcare-test-updatefail-");
                 when(fileService.getFolderPath(any(UUID.class))).thenReturn(tempDir);
@@ -1814,11 +2060,14 @@ class ApplicationsControllerTest {
                 MockMultipartFile file = new MockMultipartFile("file", "test.pdf", MediaType.APPLICATION_PDF_VALUE,
                                 "content".getBytes());
 
-                // 即使 update 失敗，也應該返回 OK（因為主記錄已創建）
                 mockMvc.perform(multipart("/applications/case/submit")
                                 .file(caseDtoPart).file(file)
                                 .contentType(MediaType.MULTIPART_FORM_DATA))
-                                .andExpect(status().isOk());
+                                .andExpect(status().isInternalServerError());
+
+                org.mockito.ArgumentCaptor<UUID> idCaptor = org.mockito.ArgumentCaptor.forClass(UUID.class);
+                verify(fileService, times(1)).deleteFolder(idCaptor.capture());
+                verify(fileService).getFolderPath(idCaptor.getValue());
         }
 
         // ===== submitApplicationCase() - 有效的 classID 和 birthDate =====
@@ -1835,9 +2084,6 @@ class ApplicationsControllerTest {
 
                 when(service.create(any(Applications.class))).thenReturn(testApplication);
                 when(service.generateCaseNumber()).thenReturn(12345L);
-                when(service.countAcceptedApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countPendingApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countActiveApplicationsByChildAndInstitution(anyString(), any())).thenReturn(0);
 
                 MockMultipartFile caseDtoPart = new MockMultipartFile("caseDto", "", MediaType.APPLICATION_JSON_VALUE,
                                 objectMapper.writeValueAsBytes(caseDto));
@@ -1861,9 +2107,6 @@ class ApplicationsControllerTest {
 
                 when(service.create(any(Applications.class))).thenReturn(testApplication);
                 when(service.generateCaseNumber()).thenReturn(12345L);
-                when(service.countAcceptedApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countPendingApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countActiveApplicationsByChildAndInstitution(anyString(), any())).thenReturn(0);
 
                 MockMultipartFile caseDtoPart = new MockMultipartFile("caseDto", "", MediaType.APPLICATION_JSON_VALUE,
                                 objectMapper.writeValueAsBytes(caseDto));
@@ -1905,9 +2148,6 @@ class ApplicationsControllerTest {
                 caseDto.setCaseNumber(99999L); // Provided case number
 
                 when(service.create(any(Applications.class))).thenReturn(testApplication);
-                when(service.countAcceptedApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countPendingApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countActiveApplicationsByChildAndInstitution(anyString(), any())).thenReturn(0);
 
                 MockMultipartFile caseDtoPart = new MockMultipartFile("caseDto", "", MediaType.APPLICATION_JSON_VALUE,
                                 objectMapper.writeValueAsBytes(caseDto));
@@ -2044,11 +2284,6 @@ class ApplicationsControllerTest {
         @Test
         void testSubmitApplicationCase_ChildWithBlankNationalID_SkipsValidation() throws Exception {
                 when(service.create(any(Applications.class))).thenAnswer(i -> i.getArgument(0));
-                when(applicationParticipantsService.create(any()))
-                                .thenAnswer(i -> i.getArgument(0));
-                when(service.countAcceptedApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countPendingApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countActiveApplicationsByChildAndInstitution(anyString(), any())).thenReturn(0);
 
                 CaseEditUpdateDTO caseDto = createValidCaseDto();
                 ApplicationParticipantDTO childDto = new ApplicationParticipantDTO();
@@ -2065,18 +2300,13 @@ class ApplicationsControllerTest {
                                 .andExpect(status().isOk());
 
                 // 驗證沒有調用驗證方法（因為 nationalID 是空白）
-                verify(service, never()).countAcceptedApplicationsByChildNationalID(eq("   "));
+                verify(applicationsJdbcRepository, never()).countChildApplications(anyList(), any());
         }
 
         @Test
         void testSubmitApplicationCase_FileWithEmptyOriginalFilename_UsesDefaultName() throws Exception {
                 when(service.create(any(Applications.class))).thenAnswer(i -> i.getArgument(0));
                 when(service.update(any(), any(Applications.class))).thenAnswer(i -> i.getArgument(1));
-                when(applicationParticipantsService.create(any()))
-                                .thenAnswer(i -> i.getArgument(0));
-                when(service.countAcceptedApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countPendingApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countActiveApplicationsByChildAndInstitution(anyString(), any())).thenReturn(0);
 
                 Path tempDir = Files.createTempDirectory("childcare-test-empty-filename-");
                 when(fileService.getFolderPath(any(UUID.class))).thenReturn(tempDir);
@@ -2092,7 +2322,10 @@ class ApplicationsControllerTest {
                                 .contentType(MediaType.MULTIPART_FORM_DATA))
                                 .andExpect(status().isOk());
 
-                verify(service, times(1)).update(any(), any(Applications.class));
+                org.mockito.ArgumentCaptor<Applications> appCaptor = org.mockito.ArgumentCaptor
+                                .forClass(Applications.class);
+                verify(applicationSubmissionService, times(1)).submit(appCaptor.capture(), any(), any());
+                org.junit.jupiter.api.Assertions.assertTrue(appCaptor.getValue().getAttachmentPath().endsWith("_attachment_0"));
         }
 
         @Test
@@ -2123,11 +2356,6 @@ class ApplicationsControllerTest {
                 when(service.create(any(Applications.class))).thenAnswer(i -> i.getArgument(0));
                 when(service.update(any(), any(Applications.class)))
                                 .thenThrow(new RuntimeException("Update failed"));
-                when(applicationParticipantsService.create(any()))
-                                .thenAnswer(i -> i.getArgument(0));
-                when(service.countAcceptedApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countPendingApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countActiveApplicationsByChildAndInstitution(anyString(), any())).thenReturn(0);
 
                 Path tempDir = Files.createTempDirectory("childcare-test-update-fail-");
                 when(fileService.getFolderPath(any(UUID.class))).thenReturn(tempDir);
@@ -2137,12 +2365,14 @@ class ApplicationsControllerTest {
                 MockMultipartFile caseDtoPart = new MockMultipartFile("caseDto", "", MediaType.APPLICATION_JSON_VALUE,
                                 objectMapper.writeValueAsBytes(caseDto));
 
-                // 雖然 update 失敗,應該仍然返回 200 (捕獲異常後繼續)
+                // 附件路徑隨案件一次寫入，送件流程不再呼叫 update
                 mockMvc.perform(multipart("/applications/case/submit")
                                 .file(testFile)
                                 .file(caseDtoPart)
                                 .contentType(MediaType.MULTIPART_FORM_DATA))
                                 .andExpect(status().isOk());
+
+                verify(service, never()).update(any(), any(Applications.class));
         }
 
         @Test
@@ -2186,13 +2416,8 @@ class ApplicationsControllerTest {
                 // Mock service.create() to return the mock Application
                 when(service.create(any(Applications.class))).thenReturn(mockApplication);
                 
-                // Mock 返回 acceptedCount = 0 (通過第一個檢查)
-                when(service.countAcceptedApplicationsByChildNationalID(anyString())).thenReturn(0);
-                // Mock 返回 pendingCount = 2 (觸發錯誤)
-                when(service.countPendingApplicationsByChildNationalID(anyString())).thenReturn(2);
-                // Mock 返回 activeSameInstitutionCount (雖然不會執行到,但需要避免錯誤)
-                when(service.countActiveApplicationsByChildAndInstitution(anyString(), any(UUID.class)))
-                                .thenReturn(0);
+                // acceptedCount = 0 (通過第一個檢查), pendingCount = 2 (觸發錯誤)
+                stubChildCounts("C123456789", 0, 2, 0);
 
                 mockMvc.perform(multipart("/applications/case/submit")
                                 .file(new MockMultipartFile("caseDto", "", MediaType.APPLICATION_JSON_VALUE,
@@ -2202,8 +2427,9 @@ class ApplicationsControllerTest {
                                 .andExpect(content().string(containsString("2"))) // Just check for the number instead of Chinese characters
                                 .andExpect(content().string(containsString("Test Child")));
 
-                // Verify service.create() WAS called (before the validation check)
-                verify(service, times(1)).create(any(Applications.class));
+                // 驗證在寫入任何資料之前就被擋下
+                verify(applicationSubmissionService, never()).submit(any(), any(), any());
+                verify(fileService, never()).getFolderPath(any(UUID.class));
         }
 
         /**
@@ -2214,9 +2440,6 @@ class ApplicationsControllerTest {
                 CaseEditUpdateDTO caseDto = createValidCaseDto();
                 caseDto.getUser().setUserID("   "); // 空白字符串
 
-                when(service.countPendingApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countAcceptedApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countActiveApplicationsByChildAndInstitution(anyString(), any())).thenReturn(0);
                 when(service.create(any(Applications.class))).thenAnswer(inv -> inv.getArgument(0));
 
                 mockMvc.perform(multipart("/applications/case/submit")
@@ -2225,7 +2448,7 @@ class ApplicationsControllerTest {
                                 .contentType(MediaType.MULTIPART_FORM_DATA))
                                 .andExpect(status().isOk());
 
-                verify(service, times(1)).create(any());
+                verify(applicationSubmissionService, times(1)).submit(any(), any(), any());
         }
 
         /**
@@ -2236,9 +2459,6 @@ class ApplicationsControllerTest {
                 CaseEditUpdateDTO caseDto = createValidCaseDto();
                 caseDto.getChildren().get(0).setGender("1");
 
-                when(service.countPendingApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countAcceptedApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countActiveApplicationsByChildAndInstitution(anyString(), any())).thenReturn(0);
                 when(service.create(any(Applications.class))).thenAnswer(inv -> inv.getArgument(0));
 
                 mockMvc.perform(multipart("/applications/case/submit")
@@ -2247,7 +2467,7 @@ class ApplicationsControllerTest {
                                 .contentType(MediaType.MULTIPART_FORM_DATA))
                                 .andExpect(status().isOk());
 
-                verify(service, times(1)).create(any());
+                verify(applicationSubmissionService, times(1)).submit(any(), any(), any());
         }
 
         /**
@@ -2258,9 +2478,6 @@ class ApplicationsControllerTest {
                 CaseEditUpdateDTO caseDto = createValidCaseDto();
                 caseDto.setParents(null);
 
-                when(service.countPendingApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countAcceptedApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countActiveApplicationsByChildAndInstitution(anyString(), any())).thenReturn(0);
                 when(service.create(any(Applications.class))).thenAnswer(inv -> inv.getArgument(0));
 
                 mockMvc.perform(multipart("/applications/case/submit")
@@ -2269,7 +2486,7 @@ class ApplicationsControllerTest {
                                 .contentType(MediaType.MULTIPART_FORM_DATA))
                                 .andExpect(status().isOk());
 
-                verify(service, times(1)).create(any());
+                verify(applicationSubmissionService, times(1)).submit(any(), any(), any());
         }
 
         /**
@@ -2288,7 +2505,7 @@ class ApplicationsControllerTest {
                                 .contentType(MediaType.MULTIPART_FORM_DATA))
                                 .andExpect(status().isOk());
 
-                verify(service, times(1)).create(any());
+                verify(applicationSubmissionService, times(1)).submit(any(), any(), any());
         }
 
         /**
@@ -2308,7 +2525,7 @@ class ApplicationsControllerTest {
                                 .contentType(MediaType.MULTIPART_FORM_DATA))
                                 .andExpect(status().isOk());
 
-                verify(service, times(1)).create(any());
+                verify(applicationSubmissionService, times(1)).submit(any(), any(), any());
         }
 
         /**
@@ -2368,7 +2585,7 @@ class ApplicationsControllerTest {
                                 .contentType(MediaType.MULTIPART_FORM_DATA))
                                 .andExpect(status().isOk());
 
-                verify(service, times(1)).create(any());
+                verify(applicationSubmissionService, times(1)).submit(any(), any(), any());
         }
 
         /**
@@ -2393,9 +2610,6 @@ class ApplicationsControllerTest {
                 mockApp.setApplicationID(UUID.randomUUID());
                 mockApp.setCaseNumber(1L);
                 when(service.create(any(Applications.class))).thenReturn(mockApp);
-                when(service.countAcceptedApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countPendingApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countActiveApplicationsByChildAndInstitution(anyString(), any(UUID.class))).thenReturn(0);
 
                 // Create an empty file (size = 0)
                 MockMultipartFile emptyFile = new MockMultipartFile("file", "empty.pdf", "application/pdf", new byte[0]);
@@ -2438,9 +2652,8 @@ class ApplicationsControllerTest {
                                 .contentType(MediaType.MULTIPART_FORM_DATA))
                                 .andExpect(status().isOk());
 
-                // Count methods should NOT be called when nationalID is null
-                verify(service, never()).countAcceptedApplicationsByChildNationalID(anyString());
-                verify(service, never()).countPendingApplicationsByChildNationalID(anyString());
+                // Count query should NOT be called when nationalID is null
+                verify(applicationsJdbcRepository, never()).countChildApplications(anyList(), any());
         }
 
         /**
@@ -2479,9 +2692,6 @@ class ApplicationsControllerTest {
                 mockApp.setApplicationID(UUID.randomUUID());
                 mockApp.setCaseNumber(1L);
                 when(service.create(any(Applications.class))).thenReturn(mockApp);
-                when(service.countAcceptedApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countPendingApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countActiveApplicationsByChildAndInstitution(anyString(), any(UUID.class))).thenReturn(0);
 
                 mockMvc.perform(multipart("/applications/case/submit")
                                 .file(new MockMultipartFile("caseDto", "", MediaType.APPLICATION_JSON_VALUE,
@@ -2502,9 +2712,6 @@ class ApplicationsControllerTest {
                 mockApp.setApplicationID(UUID.randomUUID());
                 mockApp.setCaseNumber(1L);
                 when(service.create(any(Applications.class))).thenReturn(mockApp);
-                when(service.countAcceptedApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countPendingApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countActiveApplicationsByChildAndInstitution(anyString(), any(UUID.class))).thenReturn(0);
 
                 mockMvc.perform(multipart("/applications/case/submit")
                                 .file(new MockMultipartFile("caseDto", "", MediaType.APPLICATION_JSON_VALUE,
@@ -2521,6 +2728,11 @@ class ApplicationsControllerTest {
         }
 
         // ===== 輔助方法 =====
+        private void stubChildCounts(String nationalID, int accepted, int pending, int sameInstitution) {
+                when(applicationsJdbcRepository.countChildApplications(anyList(), any())).thenReturn(List.of(
+                                new ChildApplicationCounts(nationalID, accepted, pending, sameInstitution)));
+        }
+
         private CaseEditUpdateDTO createValidCaseDto() {
                 CaseEditUpdateDTO caseDto = new CaseEditUpdateDTO();
                 caseDto.setCaseNumber(1L);
@@ -2604,9 +2816,6 @@ class ApplicationsControllerTest {
                 mockApp.setApplicationID(UUID.randomUUID());
                 mockApp.setCaseNumber(1L);
                 when(service.create(any(Applications.class))).thenReturn(mockApp);
-                when(service.countAcceptedApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countPendingApplicationsByChildNationalID(anyString())).thenReturn(0);
-                when(service.countActiveApplicationsByChildAndInstitution(anyString(), any(UUID.class))).thenReturn(0);
 
                 mockMvc.perform(multipart("/applications/case/submit")
                                 .file(new MockMultipartFile("caseDto", "", MediaType.APPLICATION_JSON_VALUE,
@@ -2616,28 +2825,26 @@ class ApplicationsControllerTest {
         }
 
         /**
-         * 測試 submitApplicationCase - 儲存參與者時拋出異常 (Lines 850-852)
+         * 測試 submitApplicationCase - 寫入申請人時拋出異常，整個案件回滾
          */
         @Test
-        void testSubmitApplicationCase_ParticipantSaveException_ContinuesProcessing() throws Exception {
+        void testSubmitApplicationCase_ParticipantInsertFails_ReturnsError() throws Exception {
                 CaseEditUpdateDTO caseDto = createValidCaseDto();
-                Applications mockApp = new Applications();
-                mockApp.setApplicationID(UUID.randomUUID());
-                mockApp.setCaseNumber(1L);
-                when(service.create(any(Applications.class))).thenReturn(mockApp);
-                
-                // Mock participant service to throw exception on create
+
+                // 送件服務在同一交易寫入案件與申請人，任一失敗即拋出
                 doThrow(new RuntimeException("Database connection failed"))
-                        .when(applicationParticipantsService).create(any(ApplicationParticipants.class));
+                        .when(applicationSubmissionService).submit(any(Applications.class), any(), any());
 
                 mockMvc.perform(multipart("/applications/case/submit")
                                 .file(new MockMultipartFile("caseDto", "", MediaType.APPLICATION_JSON_VALUE,
                                                 objectMapper.writeValueAsBytes(caseDto)))
                                 .contentType(MediaType.MULTIPART_FORM_DATA))
-                                .andExpect(status().isOk()); // Controller catches exception and continues
-                
-                // Verify exception was caught (at least 2 calls: parent + child)
-                verify(applicationParticipantsService, atLeast(1)).create(any(ApplicationParticipants.class));
+                                .andExpect(status().isInternalServerError())
+                                .andExpect(content().string(containsString("Database connection failed")));
+
+                // 家長與幼兒一起送出（不會只留下部分申請人）
+                verify(applicationSubmissionService, times(1)).submit(any(Applications.class),
+                                eq(caseDto.getParents()), eq(caseDto.getChildren()));
         }
 
         /**
@@ -2707,7 +2914,9 @@ class ApplicationsControllerTest {
                                                 objectMapper.writeValueAsBytes(caseDto)))
                                 .file(file)
                                 .contentType(MediaType.MULTIPART_FORM_DATA))
-                                .andExpect(status().isOk()); // Should still return 200 as exception is caught
+                                .andExpect(status().isOk()); // 送件流程不再呼叫 update
+
+                verify(service, never()).update(any(UUID.class), any(Applications.class));
         }
 
         /**
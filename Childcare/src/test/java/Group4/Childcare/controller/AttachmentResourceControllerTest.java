@@ -7,6 +7,8 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.api.io.TempDir;
 import org.mockito.InjectMocks;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 
 import java.io.IOException;
@@ -53,12 +55,12 @@ class AttachmentResourceControllerTest {
             Files.write(realTestFile, "Test PDF Content".getBytes());
 
             // When
-            ResponseEntity<?> response = controller.getFile("test_document.pdf");
+            ResponseEntity<?> response = controller.getFile("test_document.pdf", new HttpHeaders());
 
             // Then
             assertEquals(200, response.getStatusCodeValue());
             assertNotNull(response.getBody());
-            assertTrue(response.getBody() instanceof byte[]);
+            assertTrue(response.getBody() instanceof Resource);
 
         } finally {
             // Cleanup
@@ -69,7 +71,7 @@ class AttachmentResourceControllerTest {
     @Test
     void testGetFile_FileNotFound() {
         // When
-        ResponseEntity<?> response = controller.getFile("nonexistent.pdf");
+        ResponseEntity<?> response = controller.getFile("nonexistent.pdf", new HttpHeaders());
 
         // Then
         assertEquals(404, response.getStatusCodeValue());
@@ -87,7 +89,7 @@ class AttachmentResourceControllerTest {
             Files.write(testFileWithUUID, "PDF Content".getBytes());
 
             // When
-            ResponseEntity<?> response = controller.getFile(uuidFileName);
+            ResponseEntity<?> response = controller.getFile(uuidFileName, new HttpHeaders());
 
             // Then
             assertEquals(200, response.getStatusCodeValue());
@@ -113,7 +115,7 @@ class AttachmentResourceControllerTest {
             Files.write(simpleFile, "PDF Content".getBytes());
 
             // When
-            ResponseEntity<?> response = controller.getFile(simpleFileName);
+            ResponseEntity<?> response = controller.getFile(simpleFileName, new HttpHeaders());
 
             // Then
             assertEquals(200, response.getStatusCodeValue());
@@ -139,7 +141,7 @@ class AttachmentResourceControllerTest {
             Files.write(testFileEndUnderscore, "Content".getBytes());
 
             // When
-            ResponseEntity<?> response = controller.getFile(fileName);
+            ResponseEntity<?> response = controller.getFile(fileName, new HttpHeaders());
 
             // Then
             assertEquals(200, response.getStatusCodeValue());
@@ -165,7 +167,7 @@ class AttachmentResourceControllerTest {
             Files.write(testFileStartUnderscore, "Content".getBytes());
 
             // When
-            ResponseEntity<?> response = controller.getFile(fileName);
+            ResponseEntity<?> response = controller.getFile(fileName, new HttpHeaders());
 
             // Then
             assertEquals(200, response.getStatusCodeValue());
@@ -192,7 +194,7 @@ class AttachmentResourceControllerTest {
             Files.write(unknownFile, "Unknown Content".getBytes());
 
             // When
-            ResponseEntity<?> response = controller.getFile(unknownFileName);
+            ResponseEntity<?> response = controller.getFile(unknownFileName, new HttpHeaders());
 
             // Then
             assertEquals(200, response.getStatusCodeValue());
@@ -217,7 +219,7 @@ class AttachmentResourceControllerTest {
             Files.write(multiUnderscoreFile, "Content".getBytes());
 
             // When
-            ResponseEntity<?> response = controller.getFile(fileName);
+            ResponseEntity<?> response = controller.getFile(fileName, new HttpHeaders());
 
             // Then
             assertEquals(200, response.getStatusCodeValue());
@@ -246,7 +248,7 @@ class AttachmentResourceControllerTest {
                 Files.write(testFile, "Test Content".getBytes());
 
                 // When
-                ResponseEntity<?> response = controller.getFile(fileName);
+                ResponseEntity<?> response = controller.getFile(fileName, new HttpHeaders());
 
                 // Then
                 assertEquals(200, response.getStatusCodeValue());
@@ -261,7 +263,7 @@ class AttachmentResourceControllerTest {
     @Test
     void testGetFile_EmptyFileName() {
         // When - 空檔名會導致路徑解析問題
-        ResponseEntity<?> response = controller.getFile("");
+        ResponseEntity<?> response = controller.getFile("", new HttpHeaders());
 
         // Then - 空檔名會導致內部錯誤或檔案不存在
         // 實際行為可能是 500 (內部錯誤) 或 404 (檔案不存在)
@@ -281,7 +283,7 @@ class AttachmentResourceControllerTest {
             Files.write(spaceFile, "Content".getBytes());
 
             // When
-            ResponseEntity<?> response = controller.getFile(fileName);
+            ResponseEntity<?> response = controller.getFile(fileName, new HttpHeaders());
 
             // Then
             assertEquals(200, response.getStatusCodeValue());
@@ -306,7 +308,7 @@ class AttachmentResourceControllerTest {
             Files.write(longFile, "Content".getBytes());
 
             // When
-            ResponseEntity<?> response = controller.getFile(longName);
+            ResponseEntity<?> response = controller.getFile(longName, new HttpHeaders());
 
             // Then
             assertEquals(200, response.getStatusCodeValue());
@@ -328,7 +330,7 @@ class AttachmentResourceControllerTest {
             Files.write(specialFile, "Content".getBytes());
 
             // When
-            ResponseEntity<?> response = controller.getFile(fileName);
+            ResponseEntity<?> response = controller.getFile(fileName, new HttpHeaders());
 
             // Then
             assertEquals(200, response.getStatusCodeValue());
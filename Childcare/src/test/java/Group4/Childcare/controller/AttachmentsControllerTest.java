@@ -2,6 +2,7 @@ package Group4.Childcare.controller;
 
 import Group4.Childcare.Controller.AttachmentsController;
 import Group4.Childcare.Repository.ApplicationsJdbcRepository;
+import Group4.Childcare.Service.StreamingUploadService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -39,6 +40,9 @@ class AttachmentsControllerTest {
         @Mock
         private ApplicationsJdbcRepository applicationsJdbcRepository;
 
+        @Mock
+        private StreamingUploadService streamingUploadService;
+
         @InjectMocks
         private AttachmentsController controller;
 
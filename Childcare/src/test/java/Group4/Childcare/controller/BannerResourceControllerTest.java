@@ -5,6 +5,8 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 
 import java.io.IOException;
@@ -34,12 +36,12 @@ class BannerResourceControllerTest {
             Files.write(testImage, "Test Image Content".getBytes());
 
             // When
-            ResponseEntity<?> response = controller.getBannerImage("test-banner.jpg");
+            ResponseEntity<?> response = controller.getBannerImage("test-banner.jpg", new HttpHeaders());
 
             // Then
             assertEquals(200, response.getStatusCodeValue());
             assertNotNull(response.getBody());
-            assertTrue(response.getBody() instanceof byte[]);
+            assertTrue(response.getBody() instanceof Resource);
             assertNotNull(response.getHeaders().getContentType());
 
         } finally {
@@ -50,7 +52,7 @@ class BannerResourceControllerTest {
     @Test
     void testGetBannerImage_FileNotFound() {
         // When
-        ResponseEntity<?> response = controller.getBannerImage("nonexistent-banner.jpg");
+        ResponseEntity<?> response = controller.getBannerImage("nonexistent-banner.jpg", new HttpHeaders());
 
         // Then
         assertEquals(404, response.getStatusCodeValue());
@@ -68,7 +70,7 @@ class BannerResourceControllerTest {
             Files.write(testImage, "PNG Image Content".getBytes());
 
             // When
-            ResponseEntity<?> response = controller.getBannerImage(imageName);
+            ResponseEntity<?> response = controller.getBannerImage(imageName, new HttpHeaders());
 
             // Then
             assertEquals(200, response.getStatusCodeValue());
@@ -96,7 +98,7 @@ class BannerResourceControllerTest {
                 Files.write(testImage, ("Content of " + imageName).getBytes());
 
                 // When
-                ResponseEntity<?> response = controller.getBannerImage(imageName);
+                ResponseEntity<?> response = controller.getBannerImage(imageName, new HttpHeaders());
 
                 // Then
                 assertEquals(200, response.getStatusCodeValue(),
@@ -121,7 +123,7 @@ class BannerResourceControllerTest {
             Files.write(testFile, "Unknown file content".getBytes());
 
             // When
-            ResponseEntity<?> response = controller.getBannerImage(imageName);
+            ResponseEntity<?> response = controller.getBannerImage(imageName, new HttpHeaders());
 
             // Then
             assertEquals(200, response.getStatusCodeValue());
@@ -149,7 +151,7 @@ class BannerResourceControllerTest {
             Files.write(testFile, "XYZ file content".getBytes());
 
             // When
-            ResponseEntity<?> response = controller.getBannerImage(imageName);
+            ResponseEntity<?> response = controller.getBannerImage(imageName, new HttpHeaders());
 
             // Then
             assertEquals(200, response.getStatusCodeValue());
@@ -182,7 +184,7 @@ class BannerResourceControllerTest {
             Files.createDirectory(testFile); // 創建同名目錄
 
             // When - 嘗試讀取（會因為是目錄而拋出異常）
-            ResponseEntity<?> response = controller.getBannerImage(imageName);
+            ResponseEntity<?> response = controller.getBannerImage(imageName, new HttpHeaders());
 
             // Then
             // 應該返回 500 錯誤
@@ -215,13 +217,13 @@ class BannerResourceControllerTest {
             Files.write(testFile, new byte[0]); // 空文件
 
             // When
-            ResponseEntity<?> response = controller.getBannerImage(imageName);
+            ResponseEntity<?> response = controller.getBannerImage(imageName, new HttpHeaders());
 
             // Then
             assertEquals(200, response.getStatusCodeValue());
-            byte[] body = (byte[]) response.getBody();
+            Resource body = (Resource) response.getBody();
             assertNotNull(body);
-            assertEquals(0, body.length);
+            assertEquals(0, body.contentLength());
 
         } finally {
             Files.deleteIfExists(testFile);
@@ -245,13 +247,13 @@ class BannerResourceControllerTest {
             Files.write(testFile, largeContent);
 
             // When
-            ResponseEntity<?> response = controller.getBannerImage(imageName);
+            ResponseEntity<?> response = controller.getBannerImage(imageName, new HttpHeaders());
 
             // Then
             assertEquals(200, response.getStatusCodeValue());
-            byte[] body = (byte[]) response.getBody();
+            Resource body = (Resource) response.getBody();
             assertNotNull(body);
-            assertEquals(1024, body.length);
+            assertEquals(1024, body.contentLength());
 
         } finally {
             Files.deleteIfExists(testFile);
@@ -270,7 +272,7 @@ class BannerResourceControllerTest {
             Files.write(testFile, "Special filename content".getBytes());
 
             // When
-            ResponseEntity<?> response = controller.getBannerImage(imageName);
+            ResponseEntity<?> response = controller.getBannerImage(imageName, new HttpHeaders());
 
             // Then
             assertEquals(200, response.getStatusCodeValue());
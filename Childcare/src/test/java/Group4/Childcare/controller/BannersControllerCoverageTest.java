@@ -3,11 +3,14 @@ package Group4.Childcare.controller;
 import Group4.Childcare.Controller.BannersController;
 import Group4.Childcare.Model.Banners;
 import Group4.Childcare.Service.BannersService;
+import Group4.Childcare.Service.ImageDerivativeService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.web.multipart.MultipartFile;
@@ -29,7 +32,7 @@ import static org.mockito.Mockito.*;
  * 1. BannersController(BannersService)
  * 2. updateWithFile(Integer, MultipartFile, Banners)
  * 3. upload(MultipartFile, Banners)
- * 4. getImage(String)
+ * 4. getImage(String, String, HttpHeaders)
  */
 @ExtendWith(MockitoExtension.class)
 class BannersControllerCoverageTest {
@@ -37,6 +40,9 @@ class BannersControllerCoverageTest {
     @Mock
     private BannersService service;
 
+    @Mock
+    private ImageDerivativeService imageDerivativeService;
+
     private BannersController controller;
     private Path storageLocation;
 
@@ -66,7 +72,7 @@ class BannersControllerCoverageTest {
         assertTrue(dir.exists());
 
         // When
-        controller = new BannersController(service);
+        controller = new BannersController(service, imageDerivativeService);
 
         // Then - 應該成功創建
         assertNotNull(controller);
@@ -86,7 +92,7 @@ class BannersControllerCoverageTest {
         assertFalse(dir.exists());
 
         // When
-        controller = new BannersController(service);
+        controller = new BannersController(service, imageDerivativeService);
 
         // Then - 目錄應該被創建
         assertTrue(dir.exists());
@@ -105,7 +111,7 @@ class BannersControllerCoverageTest {
         }
 
         // When - 即使 mkdirs 返回 false（因為目錄已存在），也不應拋出異常
-        controller = new BannersController(service);
+        controller = new BannersController(service, imageDerivativeService);
 
         // Then
         assertNotNull(controller);
@@ -117,7 +123,7 @@ class BannersControllerCoverageTest {
 
     @Test
     void testUpload_FileNull() throws IOException {
-        controller = new BannersController(service);
+        controller = new BannersController(service, imageDerivativeService);
 
         // When - file 為 null
         ResponseEntity<?> response = controller.upload(null, new Banners());
@@ -129,7 +135,7 @@ class BannersControllerCoverageTest {
 
     @Test
     void testUpload_FileEmpty() throws IOException {
-        controller = new BannersController(service);
+        controller = new BannersController(service, imageDerivativeService);
         MockMultipartFile emptyFile = new MockMultipartFile(
             "file", "test.jpg", "image/jpeg", new byte[0]);
 
@@ -143,7 +149,7 @@ class BannersControllerCoverageTest {
 
     @Test
     void testUpload_MetaNull() throws IOException {
-        controller = new BannersController(service);
+        controller = new BannersController(service, imageDerivativeService);
         MockMultipartFile file = new MockMultipartFile(
             "file", "test.jpg", "image/jpeg", "test content".getBytes());
 
@@ -157,7 +163,7 @@ class BannersControllerCoverageTest {
 
     @Test
     void testUpload_MetaSortOrderZero() throws IOException {
-        controller = new BannersController(service);
+        controller = new BannersController(service, imageDerivativeService);
         MockMultipartFile file = new MockMultipartFile(
             "file", "test.jpg", "image/jpeg", "test content".getBytes());
 
@@ -177,7 +183,7 @@ class BannersControllerCoverageTest {
 
     @Test
     void testUpload_MetaStartTimeNull() throws IOException {
-        controller = new BannersController(service);
+        controller = new BannersController(service, imageDerivativeService);
         MockMultipartFile file = new MockMultipartFile(
             "file", "test.jpg", "image/jpeg", "test content".getBytes());
 
@@ -197,7 +203,7 @@ class BannersControllerCoverageTest {
 
     @Test
     void testUpload_MetaEndTimeNull() throws IOException {
-        controller = new BannersController(service);
+        controller = new BannersController(service, imageDerivativeService);
         MockMultipartFile file = new MockMultipartFile(
             "file", "test.jpg", "image/jpeg", "test content".getBytes());
 
@@ -217,7 +223,7 @@ class BannersControllerCoverageTest {
 
     @Test
     void testUpload_MetaStatusNull() throws IOException {
-        controller = new BannersController(service);
+        controller = new BannersController(service, imageDerivativeService);
         MockMultipartFile file = new MockMultipartFile(
             "file", "test.jpg", "image/jpeg", "test content".getBytes());
 
@@ -237,7 +243,7 @@ class BannersControllerCoverageTest {
 
     @Test
     void testUpload_OriginalFilenameNull() throws IOException {
-        controller = new BannersController(service);
+        controller = new BannersController(service, imageDerivativeService);
         MockMultipartFile file = new MockMultipartFile(
             "file", null, "image/jpeg", "test content".getBytes()); // originalFilename 為 null
 
@@ -257,7 +263,7 @@ class BannersControllerCoverageTest {
 
     @Test
     void testUpload_Success() throws IOException {
-        controller = new BannersController(service);
+        controller = new BannersController(service, imageDerivativeService);
         MockMultipartFile file = new MockMultipartFile(
             "file", "banner.jpg", "image/jpeg", "test content".getBytes());
 
@@ -280,7 +286,7 @@ class BannersControllerCoverageTest {
 
     @Test
     void testUpload_IOExceptionDuringFileSave() throws IOException {
-        controller = new BannersController(service);
+        controller = new BannersController(service, imageDerivativeService);
 
         // 創建一個會在讀取時拋出異常的 MultipartFile
         MultipartFile mockFile = mock(MultipartFile.class);
@@ -304,7 +310,7 @@ class BannersControllerCoverageTest {
 
     @Test
     void testUpdateWithFile_BannerNotFound() throws IOException {
-        controller = new BannersController(service);
+        controller = new BannersController(service, imageDerivativeService);
 
         when(service.getById(1)).thenReturn(Optional.empty());
 
@@ -317,7 +323,7 @@ class BannersControllerCoverageTest {
 
     @Test
     void testUpdateWithFile_MetaNullFileNull() throws IOException {
-        controller = new BannersController(service);
+        controller = new BannersController(service, imageDerivativeService);
 
         Banners existing = createValidBanner();
         when(service.getById(1)).thenReturn(Optional.of(existing));
@@ -332,7 +338,7 @@ class BannersControllerCoverageTest {
 
     @Test
     void testUpdateWithFile_MetaNotNull() throws IOException {
-        controller = new BannersController(service);
+        controller = new BannersController(service, imageDerivativeService);
 
         Banners existing = createValidBanner();
         Banners meta = new Banners();
@@ -354,7 +360,7 @@ class BannersControllerCoverageTest {
 
     @Test
     void testUpdateWithFile_MetaWithImageName() throws IOException {
-        controller = new BannersController(service);
+        controller = new BannersController(service, imageDerivativeService);
 
         Banners existing = createValidBanner();
         Banners meta = new Banners();
@@ -376,7 +382,7 @@ class BannersControllerCoverageTest {
 
     @Test
     void testUpdateWithFile_FileNotNull() throws IOException {
-        controller = new BannersController(service);
+        controller = new BannersController(service, imageDerivativeService);
 
         Banners existing = createValidBanner();
         existing.setImageName("old-image.jpg");
@@ -404,7 +410,7 @@ class BannersControllerCoverageTest {
 
     @Test
     void testUpdateWithFile_FileNotNullOriginalFilenameNull() throws IOException {
-        controller = new BannersController(service);
+        controller = new BannersController(service, imageDerivativeService);
 
         Banners existing = createValidBanner();
 
@@ -425,7 +431,7 @@ class BannersControllerCoverageTest {
 
     @Test
     void testUpdateWithFile_BannerImageNameNull() throws IOException {
-        controller = new BannersController(service);
+        controller = new BannersController(service, imageDerivativeService);
 
         Banners existing = createValidBanner();
         existing.setImageName(null); // imageName 為 null
@@ -447,7 +453,7 @@ class BannersControllerCoverageTest {
 
     @Test
     void testUpdateWithFile_IOExceptionDuringFileSave() throws IOException {
-        controller = new BannersController(service);
+        controller = new BannersController(service, imageDerivativeService);
 
         Banners existing = createValidBanner();
 
@@ -468,7 +474,7 @@ class BannersControllerCoverageTest {
 
     @Test
     void testUpdateWithFile_ServiceUpdateThrowsException() throws IOException {
-        controller = new BannersController(service);
+        controller = new BannersController(service, imageDerivativeService);
 
         Banners existing = createValidBanner();
 
@@ -485,12 +491,12 @@ class BannersControllerCoverageTest {
     }
 
     // ===========================================================================================
-    // 4. getImage(String) 方法測試
+    // 4. getImage(String, String, HttpHeaders) 方法測試
     // ===========================================================================================
 
     @Test
     void testGetImage_WithQueryParameters() throws IOException {
-        controller = new BannersController(service);
+        controller = new BannersController(service, imageDerivativeService);
 
         // 創建測試文件
         Files.createDirectories(storageLocation);
@@ -498,7 +504,7 @@ class BannersControllerCoverageTest {
         Files.write(testFile, "test content".getBytes());
 
         // When - imageName 包含查詢參數
-        ResponseEntity<?> response = controller.getImage("test.jpg?_=123456");
+        ResponseEntity<?> response = controller.getImage("test.jpg?_=123456", null, new HttpHeaders());
 
         // Then - 應該去除查詢參數
         assertEquals(200, response.getStatusCodeValue());
@@ -508,7 +514,7 @@ class BannersControllerCoverageTest {
 
     @Test
     void testGetImage_WithoutQueryParameters() throws IOException {
-        controller = new BannersController(service);
+        controller = new BannersController(service, imageDerivativeService);
 
         // 創建測試文件
         Files.createDirectories(storageLocation);
@@ -516,7 +522,7 @@ class BannersControllerCoverageTest {
         Files.write(testFile, "test content".getBytes());
 
         // When - imageName 不包含查詢參數
-        ResponseEntity<?> response = controller.getImage("test.jpg");
+        ResponseEntity<?> response = controller.getImage("test.jpg", null, new HttpHeaders());
 
         // Then
         assertEquals(200, response.getStatusCodeValue());
@@ -526,10 +532,10 @@ class BannersControllerCoverageTest {
 
     @Test
     void testGetImage_FileNotFound() throws IOException {
-        controller = new BannersController(service);
+        controller = new BannersController(service, imageDerivativeService);
 
         // When - 文件不存在
-        ResponseEntity<?> response = controller.getImage("nonexistent.jpg");
+        ResponseEntity<?> response = controller.getImage("nonexistent.jpg", null, new HttpHeaders());
 
         // Then
         assertEquals(404, response.getStatusCodeValue());
@@ -537,7 +543,7 @@ class BannersControllerCoverageTest {
 
     @Test
     void testGetImage_WithUUIDPrefix() throws IOException {
-        controller = new BannersController(service);
+        controller = new BannersController(service, imageDerivativeService);
 
         // 創建測試文件（UUID_原始檔名格式）
         Files.createDirectories(storageLocation);
@@ -546,7 +552,7 @@ class BannersControllerCoverageTest {
         Files.write(testFile, "test content".getBytes());
 
         // When - 文件名包含下劃線，應提取原始檔名
-        ResponseEntity<?> response = controller.getImage(filename);
+        ResponseEntity<?> response = controller.getImage(filename, null, new HttpHeaders());
 
         // Then
         assertEquals(200, response.getStatusCodeValue());
@@ -558,7 +564,7 @@ class BannersControllerCoverageTest {
 
     @Test
     void testGetImage_WithoutUnderscore() throws IOException {
-        controller = new BannersController(service);
+        controller = new BannersController(service, imageDerivativeService);
 
         // 創建測試文件（沒有下劃線）
         Files.createDirectories(storageLocation);
@@ -567,7 +573,7 @@ class BannersControllerCoverageTest {
         Files.write(testFile, "test content".getBytes());
 
         // When - 文件名沒有下劃線
-        ResponseEntity<?> response = controller.getImage(filename);
+        ResponseEntity<?> response = controller.getImage(filename, null, new HttpHeaders());
 
         // Then - displayFilename 應該等於 imageName
         assertEquals(200, response.getStatusCodeValue());
@@ -579,7 +585,7 @@ class BannersControllerCoverageTest {
 
     @Test
     void testGetImage_UnderscoreAtEnd() throws IOException {
-        controller = new BannersController(service);
+        controller = new BannersController(service, imageDerivativeService);
 
         // 創建測試文件（下劃線在最後）
         Files.createDirectories(storageLocation);
@@ -588,7 +594,7 @@ class BannersControllerCoverageTest {
         Files.write(testFile, "test content".getBytes());
 
         // When - 下劃線在最後（underscoreIdx < imageName.length() - 1 為 false）
-        ResponseEntity<?> response = controller.getImage(filename);
+        ResponseEntity<?> response = controller.getImage(filename, null, new HttpHeaders());
 
         // Then - 應使用原始 imageName
         assertEquals(200, response.getStatusCodeValue());
@@ -598,7 +604,7 @@ class BannersControllerCoverageTest {
 
     @Test
     void testGetImage_ContentTypeNull() throws IOException {
-        controller = new BannersController(service);
+        controller = new BannersController(service, imageDerivativeService);
 
         // 創建沒有副檔名的文件（contentType 會是 null）
         Files.createDirectories(storageLocation);
@@ -607,7 +613,7 @@ class BannersControllerCoverageTest {
         Files.write(testFile, "test content".getBytes());
 
         // When - contentType 為 null
-        ResponseEntity<?> response = controller.getImage(filename);
+        ResponseEntity<?> response = controller.getImage(filename, null, new HttpHeaders());
 
         // Then - 應使用 APPLICATION_OCTET_STREAM
         assertEquals(200, response.getStatusCodeValue());
@@ -618,7 +624,7 @@ class BannersControllerCoverageTest {
 
     @Test
     void testGetImage_IOExceptionDuringRead() throws IOException {
-        controller = new BannersController(service);
+        controller = new BannersController(service, imageDerivativeService);
 
         // 創建目錄而不是文件來觸發 IOException
         Files.createDirectories(storageLocation);
@@ -627,7 +633,7 @@ class BannersControllerCoverageTest {
         Files.createDirectory(testDir);
 
         // When - 嘗試讀取目錄會拋出 IOException
-        ResponseEntity<?> response = controller.getImage(filename);
+        ResponseEntity<?> response = controller.getImage(filename, null, new HttpHeaders());
 
         // Then
         assertEquals(500, response.getStatusCodeValue());
@@ -637,6 +643,36 @@ class BannersControllerCoverageTest {
         Files.delete(testDir);
     }
 
+    @Test
+    void testGetImage_SizeSelectsVariant() throws IOException {
+        controller = new BannersController(service, imageDerivativeService);
+
+        Files.createDirectories(storageLocation);
+        String filename = "550e8400-e29b-41d4-a716-446655440000_banner.jpg";
+        Path original = storageLocation.resolve(filename);
+        Files.write(original, "original content".getBytes());
+        Path thumb = storageLocation.resolve(".variants").resolve("thumb").resolve(filename + ".jpg");
+        Files.createDirectories(thumb.getParent());
+        Files.write(thumb, "thumb".getBytes());
+
+        // When - 縮圖已產生
+        ResponseEntity<?> response = controller.getImage(filename, "thumb", new HttpHeaders());
+
+        // Then - 回傳縮圖並長期快取
+        assertEquals(200, response.getStatusCodeValue());
+        assertEquals(thumb.toFile(), ((FileSystemResource) response.getBody()).getFile());
+        assertTrue(response.getHeaders().getCacheControl().contains("immutable"));
+
+        // When - 縮圖尚未產生，暫以原圖回傳且不長期快取
+        response = controller.getImage(filename, "list", new HttpHeaders());
+
+        // Then
+        assertEquals(original.toFile(), ((FileSystemResource) response.getBody()).getFile());
+        assertEquals("no-cache", response.getHeaders().getCacheControl());
+
+        cleanupTestFiles();
+    }
+
     // ===========================================================================================
     // 輔助方法
     // ===========================================================================================
@@ -2,6 +2,7 @@ package Group4.Childcare.controller;
 
 import Group4.Childcare.Model.Banners;
 import Group4.Childcare.Service.BannersService;
+import Group4.Childcare.Service.ImageDerivativeService;
 import Group4.Childcare.Controller.BannersController;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
@@ -51,6 +52,9 @@ class BannersControllerTest {
     @Mock
     private BannersService service;
 
+    @Mock
+    private ImageDerivativeService imageDerivativeService;
+
     @InjectMocks
     private BannersController controller;
 
@@ -1,9 +1,15 @@
 package Group4.Childcare.controller;
 
 import Group4.Childcare.DTO.LotteryRequest;
+import Group4.Childcare.DTO.LotteryResult;
 import Group4.Childcare.DTO.ManualAdmissionRequest;
 import Group4.Childcare.Repository.WaitlistJdbcRepository;
-import Group4.Childcare.Service.EmailService;
+import Group4.Childcare.Service.AdmissionHoldService;
+import Group4.Childcare.Service.CountyAllocationService;
+import Group4.Childcare.Service.LotteryNotificationService;
+import Group4.Childcare.Service.LotteryService;
+import Group4.Childcare.Service.LotterySimulationService;
+import Group4.Childcare.Service.WaitlistRankIndexService;
 import Group4.Childcare.Controller.WaitlistController;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
@@ -16,14 +22,13 @@ import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
-import jakarta.mail.MessagingException;
 import java.time.LocalDate;
-import java.time.LocalDateTime;
 import java.util.*;
 
 import static org.hamcrest.Matchers.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
@@ -36,6 +41,8 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
  * 1. 等價類劃分：有效/無效機構ID
  * 2. 決策表測試：抽籤狀態變更
  * 3. 異常處理：資料庫異常
+ * 4. 記憶體候補索引：候補名次（候補名單仍查詢資料庫）
+ * 5. 串流候補名單與游標分頁
  */
 @ExtendWith(MockitoExtension.class)
 @org.mockito.junit.jupiter.MockitoSettings(strictness = org.mockito.quality.Strictness.LENIENT)
@@ -45,7 +52,22 @@ class WaitlistControllerTest {
         private WaitlistJdbcRepository waitlistJdbcRepository;
 
         @Mock
-        private EmailService emailService;
+        private LotteryNotificationService lotteryNotificationService;
+
+        @Mock
+        private LotteryService lotteryService;
+
+        @Mock
+        private LotterySimulationService lotterySimulationService;
+
+        @Mock
+        private WaitlistRankIndexService waitlistRankIndexService;
+
+        @Mock
+        private CountyAllocationService countyAllocationService;
+
+        @Mock
+        private AdmissionHoldService admissionHoldService;
 
         @InjectMocks
         private WaitlistController controller;
@@ -75,8 +97,7 @@ class WaitlistControllerTest {
                 item.put("CurrentOrder", 1);
                 waitlist.add(item);
 
-                when(waitlistJdbcRepository.findWaitlistByInstitution(anyString(), anyString()))
-                                .thenReturn(waitlist);
+                when(waitlistJdbcRepository.findWaitlistByInstitution(testInstitutionId.toString(), "測試")).thenReturn(waitlist);
 
                 mockMvc.perform(get("/waitlist/by-institution")
                                 .param("institutionId", testInstitutionId.toString())
@@ -99,7 +120,7 @@ class WaitlistControllerTest {
 
         @Test
         void testGetWaitlistByInstitution_EmptyResult() throws Exception {
-                when(waitlistJdbcRepository.findWaitlistByInstitution(anyString(), any()))
+                when(waitlistJdbcRepository.findWaitlistByInstitution(testInstitutionId.toString(), null))
                                 .thenReturn(Collections.emptyList());
 
                 mockMvc.perform(get("/waitlist/by-institution")
@@ -115,218 +136,34 @@ class WaitlistControllerTest {
                 LotteryRequest request = new LotteryRequest();
                 request.setInstitutionId(testInstitutionId);
 
-                // Mock repository responses
-                when(waitlistJdbcRepository.getTotalCapacity(testInstitutionId)).thenReturn(100);
-                when(waitlistJdbcRepository.getCurrentStudentsCount(testInstitutionId)).thenReturn(50);
-
-                Map<Integer, Integer> acceptedCount = new HashMap<>();
-                acceptedCount.put(1, 5);
-                acceptedCount.put(2, 3);
-                acceptedCount.put(3, 10);
-                when(waitlistJdbcRepository.getAcceptedCountByPriority(testInstitutionId)).thenReturn(acceptedCount);
-
-                Map<Integer, List<Map<String, Object>>> applicantsByPriority = new HashMap<>();
-                List<Map<String, Object>> p1 = new ArrayList<>();
-                Map<String, Object> applicant1 = new HashMap<>();
-                applicant1.put("ApplicantName", "Test Applicant");
-                applicant1.put("Email", "test@example.com");
-                applicant1.put("BirthDate", java.sql.Date.valueOf("2020-01-01"));
-                p1.add(applicant1);
-                applicantsByPriority.put(1, p1);
-                applicantsByPriority.put(2, new ArrayList<>());
-                applicantsByPriority.put(3, new ArrayList<>());
-                when(waitlistJdbcRepository.getLotteryApplicantsByPriority(testInstitutionId))
-                                .thenReturn(applicantsByPriority);
-
-                // Mock class finding
-                when(waitlistJdbcRepository.findSuitableClass(any(), any())).thenReturn(testClassId);
-                when(waitlistJdbcRepository.hasClassCapacity(testClassId)).thenReturn(true);
-
-                when(waitlistJdbcRepository.getClassInfo(testInstitutionId)).thenReturn(new ArrayList<>());
-
-                mockMvc.perform(post("/waitlist/lottery")
-                                .contentType(MediaType.APPLICATION_JSON)
-                                .content(objectMapper.writeValueAsString(request)))
-                                .andExpect(status().isOk())
-                                .andExpect(jsonPath("$.success", is(true)));
-
-                // Verify email service was called
-                verify(emailService, atLeastOnce()).sendApplicationStatusChangeEmail(
-                                any(), any(), any(), any(), any(), any(), any(), any(), any());
-        }
-
-        /**
-         * BB-WL-RBVA-01：強固邊界值分析
-         * Given: totalCapacity == currentStudents（availableSlots = 0）
-         * When: 呼叫 POST /waitlist/lottery
-         * Then: HTTP 200；success=true；message 包含「無空缺名額，已打亂候補順序」；waitlisted ==
-         * waitlistList.size()
-         */
-        @Test
-        void testConductLottery_NoAvailableSlots() throws Exception {
-                LotteryRequest request = new LotteryRequest();
-                request.setInstitutionId(testInstitutionId);
-
-                // 設定 totalCapacity == currentStudents，使 availableSlots = 0
-                when(waitlistJdbcRepository.getTotalCapacity(testInstitutionId)).thenReturn(100);
-                when(waitlistJdbcRepository.getCurrentStudentsCount(testInstitutionId)).thenReturn(100);
-
-                Map<Integer, Integer> acceptedCount = new HashMap<>();
-                acceptedCount.put(1, 20);
-                acceptedCount.put(2, 10);
-                acceptedCount.put(3, 70);
-                when(waitlistJdbcRepository.getAcceptedCountByPriority(testInstitutionId)).thenReturn(acceptedCount);
-
-                // 添加候補申請人以驗證 waitlisted 與 waitlistList.size() 一致性
-                Map<Integer, List<Map<String, Object>>> applicantsByPriority = new HashMap<>();
-                List<Map<String, Object>> priority1Applicants = new ArrayList<>();
-                Map<String, Object> applicant1 = new HashMap<>();
-                applicant1.put("ApplicantName", "候補一");
-                applicant1.put("Email", "waitlist1@example.com");
-                applicant1.put("BirthDate", java.sql.Date.valueOf("2020-05-15"));
-                priority1Applicants.add(applicant1);
-
-                List<Map<String, Object>> priority3Applicants = new ArrayList<>();
-                Map<String, Object> applicant2 = new HashMap<>();
-                applicant2.put("ApplicantName", "候補二");
-                applicant2.put("Email", "waitlist2@example.com");
-                applicant2.put("BirthDate", java.sql.Date.valueOf("2021-03-20"));
-                priority3Applicants.add(applicant2);
-
-                applicantsByPriority.put(1, priority1Applicants);
-                applicantsByPriority.put(2, new ArrayList<>());
-                applicantsByPriority.put(3, priority3Applicants);
-                when(waitlistJdbcRepository.getLotteryApplicantsByPriority(testInstitutionId))
-                                .thenReturn(applicantsByPriority);
-
-                when(waitlistJdbcRepository.getClassInfo(testInstitutionId)).thenReturn(new ArrayList<>());
-
-                mockMvc.perform(post("/waitlist/lottery")
-                                .contentType(MediaType.APPLICATION_JSON)
-                                .content(objectMapper.writeValueAsString(request)))
-                                .andDo(print()) // 印出完整的 request/response
-                                .andExpect(status().isOk())
-                                .andExpect(jsonPath("$.success", is(true)))
-                                // 驗證 message 包含「無空缺名額，已打亂候補順序」
-                                .andExpect(jsonPath("$.message", containsString("無空缺名額，已打亂候補順序")))
-                                // 驗證 waitlisted 數量正確（2位申請人）
-                                .andExpect(jsonPath("$.waitlisted", is(2)))
-                                // 驗證 waitlistList.size() == waitlisted（不變量驗證）
-                                .andExpect(jsonPath("$.waitlistList", hasSize(2)))
-                                // 驗證無人被錄取（因為沒有空缺名額）
-                                .andExpect(jsonPath("$.firstPriorityAccepted", is(0)))
-                                .andExpect(jsonPath("$.secondPriorityAccepted", is(0)))
-                                .andExpect(jsonPath("$.thirdPriorityAccepted", is(0)));
-        }
-
-        // Willium1925修改：測試抽籤邏輯 (Case B) - 申請人數 > 名額
-        @Test
-        void testConductLottery_LotteryRequired() throws Exception {
-                LotteryRequest request = new LotteryRequest();
-                request.setInstitutionId(testInstitutionId);
-
-                // 總容量 100
-                // P1 Quota = 20, P2 Quota = 10, P3 Quota = 70
-                when(waitlistJdbcRepository.getTotalCapacity(testInstitutionId)).thenReturn(100);
-                when(waitlistJdbcRepository.getCurrentStudentsCount(testInstitutionId)).thenReturn(0);
-
-                Map<Integer, Integer> acceptedCount = new HashMap<>();
-                acceptedCount.put(1, 0);
-                acceptedCount.put(2, 0);
-                acceptedCount.put(3, 0);
-                when(waitlistJdbcRepository.getAcceptedCountByPriority(testInstitutionId)).thenReturn(acceptedCount);
-
-                // P1 申請 25 人 (> 20) -> 觸發 P1 抽籤 (Case B)
-                // P2 申請 15 人 (> 10) -> 觸發 P2 抽籤 (Case B)
-                // P3 申請 80 人 (> 70) -> 觸發 P3 抽籤 (Case B)
-                Map<Integer, List<Map<String, Object>>> applicantsByPriority = new HashMap<>();
-                
-                List<Map<String, Object>> p1 = new ArrayList<>();
-                for(int i=0; i<25; i++) p1.add(createApplicant("P1-"+i, "2020-01-01"));
-
-                List<Map<String, Object>> p2 = new ArrayList<>();
-                for(int i=0; i<15; i++) p2.add(createApplicant("P2-"+i, "2020-01-01"));
-
-                List<Map<String, Object>> p3 = new ArrayList<>();
-                for(int i=0; i<80; i++) p3.add(createApplicant("P3-"+i, "2020-01-01"));
-
-                applicantsByPriority.put(1, p1);
-                applicantsByPriority.put(2, p2);
-                applicantsByPriority.put(3, p3);
-                when(waitlistJdbcRepository.getLotteryApplicantsByPriority(testInstitutionId))
-                                .thenReturn(applicantsByPriority);
-
-                // Mock class finding
-                when(waitlistJdbcRepository.findSuitableClass(any(), any())).thenReturn(testClassId);
-                when(waitlistJdbcRepository.hasClassCapacity(testClassId)).thenReturn(true);
-                when(waitlistJdbcRepository.getClassInfo(testInstitutionId)).thenReturn(new ArrayList<>());
+                Map<String, Object> accepted = new HashMap<>();
+                accepted.put("ApplicationID", testApplicationId.toString());
+                accepted.put("Status", "已錄取");
+                LotteryResult result = new LotteryResult();
+                result.setSuccess(true);
+                result.setMessage("抽籤完成");
+                result.setFirstPriorityAccepted(1);
+                result.setWaitlisted(0);
+                result.setAcceptedList(new ArrayList<>(List.of(accepted)));
+                result.setWaitlistList(new ArrayList<>());
+                when(lotteryService.conductLottery(testInstitutionId)).thenReturn(result);
 
                 mockMvc.perform(post("/waitlist/lottery")
                                 .contentType(MediaType.APPLICATION_JSON)
                                 .content(objectMapper.writeValueAsString(request)))
                                 .andExpect(status().isOk())
                                 .andExpect(jsonPath("$.success", is(true)))
-                                // P1: 20人錄取 (Quota=20)
-                                .andExpect(jsonPath("$.firstPriorityAccepted", is(20)))
-                                // P2: 10人錄取 (Quota=10)
-                                .andExpect(jsonPath("$.secondPriorityAccepted", is(10)))
-                                // P3: 70人錄取 (Quota=70)
-                                .andExpect(jsonPath("$.thirdPriorityAccepted", is(70)))
-                                // 總申請 120 人，錄取 100 人，候補 20 人
-                                .andExpect(jsonPath("$.waitlisted", is(20)));
-        }
-
-        // Willium1925修改：測試多序位錄取與班級分配迴圈 (確保 Selected 列表不為空)
-        @Test
-        void testConductLottery_MultiPriorityAdmission() throws Exception {
-                LotteryRequest request = new LotteryRequest();
-                request.setInstitutionId(testInstitutionId);
-
-                // 容量充足，全部錄取 (Case A)
-                when(waitlistJdbcRepository.getTotalCapacity(testInstitutionId)).thenReturn(100);
-                when(waitlistJdbcRepository.getCurrentStudentsCount(testInstitutionId)).thenReturn(0);
-                
-                // 修正：必須提供所有 key 的值
-                Map<Integer, Integer> acceptedCount = new HashMap<>();
-                acceptedCount.put(1, 0);
-                acceptedCount.put(2, 0);
-                acceptedCount.put(3, 0);
-                when(waitlistJdbcRepository.getAcceptedCountByPriority(testInstitutionId)).thenReturn(acceptedCount);
-
-                Map<Integer, List<Map<String, Object>>> applicantsByPriority = new HashMap<>();
-                List<Map<String, Object>> p1 = new ArrayList<>();
-                p1.add(createApplicant("P1", "2020-01-01"));
-                List<Map<String, Object>> p2 = new ArrayList<>();
-                p2.add(createApplicant("P2", "2020-01-01"));
-                List<Map<String, Object>> p3 = new ArrayList<>();
-                p3.add(createApplicant("P3", "2020-01-01"));
-
-                applicantsByPriority.put(1, p1);
-                applicantsByPriority.put(2, p2);
-                applicantsByPriority.put(3, p3);
-                when(waitlistJdbcRepository.getLotteryApplicantsByPriority(testInstitutionId))
-                                .thenReturn(applicantsByPriority);
-
-                when(waitlistJdbcRepository.findSuitableClass(any(), any())).thenReturn(testClassId);
-                when(waitlistJdbcRepository.hasClassCapacity(testClassId)).thenReturn(true);
-                when(waitlistJdbcRepository.getClassInfo(testInstitutionId)).thenReturn(new ArrayList<>());
+                                .andExpect(jsonPath("$.firstPriorityAccepted", is(1)));
 
-                mockMvc.perform(post("/waitlist/lottery")
-                                .contentType(MediaType.APPLICATION_JSON)
-                                .content(objectMapper.writeValueAsString(request)))
-                                .andExpect(status().isOk())
-                                .andExpect(jsonPath("$.firstPriorityAccepted", is(1)))
-                                .andExpect(jsonPath("$.secondPriorityAccepted", is(1)))
-                                .andExpect(jsonPath("$.thirdPriorityAccepted", is(1)));
+                verify(lotteryService).conductLottery(testInstitutionId);
         }
 
-        // Willium1925修改
         @Test
         void testConductLottery_Exception() throws Exception {
                 LotteryRequest request = new LotteryRequest();
                 request.setInstitutionId(testInstitutionId);
 
-                when(waitlistJdbcRepository.getTotalCapacity(testInstitutionId))
+                when(lotteryService.conductLottery(testInstitutionId))
                                 .thenThrow(new RuntimeException("DB Error"));
 
                 mockMvc.perform(post("/waitlist/lottery")
@@ -337,99 +174,20 @@ class WaitlistControllerTest {
                                 .andExpect(jsonPath("$.message", containsString("抽籤失敗")));
         }
 
-        // Willium1925修改
-        @Test
-        void testConductLottery_ClassInfoUpdate() throws Exception {
-                LotteryRequest request = new LotteryRequest();
-                request.setInstitutionId(testInstitutionId);
-
-                when(waitlistJdbcRepository.getTotalCapacity(testInstitutionId)).thenReturn(10);
-                when(waitlistJdbcRepository.getCurrentStudentsCount(testInstitutionId)).thenReturn(0);
-                
-                // 修正：必須提供所有 key 的值
-                Map<Integer, Integer> acceptedCount = new HashMap<>();
-                acceptedCount.put(1, 0);
-                acceptedCount.put(2, 0);
-                acceptedCount.put(3, 0);
-                when(waitlistJdbcRepository.getAcceptedCountByPriority(testInstitutionId)).thenReturn(acceptedCount);
-
-                Map<Integer, List<Map<String, Object>>> applicantsByPriority = new HashMap<>();
-                List<Map<String, Object>> p1 = new ArrayList<>();
-                p1.add(createApplicant("P1", "2020-01-01"));
-                applicantsByPriority.put(1, p1);
-                applicantsByPriority.put(2, new ArrayList<>());
-                applicantsByPriority.put(3, new ArrayList<>());
-                when(waitlistJdbcRepository.getLotteryApplicantsByPriority(testInstitutionId))
-                                .thenReturn(applicantsByPriority);
-
-                // Mock class info with matching ClassID
-                List<Map<String, Object>> classes = new ArrayList<>();
-                Map<String, Object> classInfo = new HashMap<>();
-                classInfo.put("ClassID", testClassId.toString());
-                classInfo.put("CurrentStudents", 0);
-                classes.add(classInfo);
-                when(waitlistJdbcRepository.getClassInfo(testInstitutionId)).thenReturn(classes);
-
-                when(waitlistJdbcRepository.findSuitableClass(any(), any())).thenReturn(testClassId);
-                when(waitlistJdbcRepository.hasClassCapacity(testClassId)).thenReturn(true);
-
-                mockMvc.perform(post("/waitlist/lottery")
-                                .contentType(MediaType.APPLICATION_JSON)
-                                .content(objectMapper.writeValueAsString(request)))
-                                .andExpect(status().isOk())
-                                .andExpect(jsonPath("$.firstPriorityAccepted", is(1)));
-        }
-
-        // Willium1925修改
         @Test
-        void testSendLotteryNotificationEmails_Coverage() throws Exception {
+        void testConductLottery_Locked_Returns409() throws Exception {
                 LotteryRequest request = new LotteryRequest();
                 request.setInstitutionId(testInstitutionId);
 
-                when(waitlistJdbcRepository.getTotalCapacity(testInstitutionId)).thenReturn(10);
-                when(waitlistJdbcRepository.getCurrentStudentsCount(testInstitutionId)).thenReturn(0);
-                
-                // 修正：必須提供所有 key 的值
-                Map<Integer, Integer> acceptedCount = new HashMap<>();
-                acceptedCount.put(1, 0);
-                acceptedCount.put(2, 0);
-                acceptedCount.put(3, 0);
-                when(waitlistJdbcRepository.getAcceptedCountByPriority(testInstitutionId)).thenReturn(acceptedCount);
-
-                Map<Integer, List<Map<String, Object>>> applicantsByPriority = new HashMap<>();
-                List<Map<String, Object>> p1 = new ArrayList<>();
-                // 1. LocalDateTime, 有 Email, 無 CaseNumber
-                Map<String, Object> app1 = createApplicant("App1", "2020-01-01");
-                app1.put("ApplicationDate", LocalDateTime.now());
-                app1.put("CaseNumber", null);
-                p1.add(app1);
-                // 2. Timestamp, MessagingException
-                Map<String, Object> app2 = createApplicant("App2", "2020-01-01");
-                app2.put("ApplicationDate", java.sql.Timestamp.valueOf(LocalDateTime.now()));
-                app2.put("Email", "messaging-error@example.com");
-                p1.add(app2);
-                // 3. String Date, Exception
-                Map<String, Object> app3 = createApplicant("App3", "2020-01-01");
-                app3.put("ApplicationDate", "2020-01-01");
-                app3.put("Email", "runtime-error@example.com");
-                p1.add(app3);
-                applicantsByPriority.put(1, p1);
-                applicantsByPriority.put(2, new ArrayList<>());
-                applicantsByPriority.put(3, new ArrayList<>());
-                when(waitlistJdbcRepository.getLotteryApplicantsByPriority(testInstitutionId)).thenReturn(applicantsByPriority);
-
-                when(waitlistJdbcRepository.findSuitableClass(any(), any())).thenReturn(testClassId);
-                when(waitlistJdbcRepository.hasClassCapacity(testClassId)).thenReturn(true);
-                when(waitlistJdbcRepository.getClassInfo(testInstitutionId)).thenReturn(new ArrayList<>());
-
-                // Mock email service 拋出異常
-                doThrow(new MessagingException("Mail Error")).when(emailService).sendApplicationStatusChangeEmail(eq("messaging-error@example.com"), any(), any(), any(), any(), any(), any(), any(), any());
-                doThrow(new RuntimeException("Unknown Error")).when(emailService).sendApplicationStatusChangeEmail(eq("runtime-error@example.com"), any(), any(), any(), any(), any(), any(), any(), any());
+                when(lotteryService.conductLottery(testInstitutionId))
+                                .thenThrow(new LotteryService.LotteryLockedException(testInstitutionId));
 
                 mockMvc.perform(post("/waitlist/lottery")
                                 .contentType(MediaType.APPLICATION_JSON)
                                 .content(objectMapper.writeValueAsString(request)))
-                                .andExpect(status().isOk());
+                                .andExpect(status().isConflict())
+                                .andExpect(jsonPath("$.success", is(false)))
+                                .andExpect(jsonPath("$.message", containsString("正在進行抽籤")));
         }
 
         // ===== manualAdmit 測試 =====
@@ -439,8 +197,10 @@ class WaitlistControllerTest {
                 ManualAdmissionRequest request = new ManualAdmissionRequest();
                 request.setApplicationId(testApplicationId);
                 request.setNationalId("A123456789");
+                request.setClassId(testClassId);
 
-                when(waitlistJdbcRepository.getWaitlistApplicants(testApplicationId)).thenReturn(Collections.emptyList());
+                when(waitlistJdbcRepository.findInstitutionIdByApplication(testApplicationId)).thenReturn(testInstitutionId);
+                when(waitlistJdbcRepository.getWaitlistApplicants(testInstitutionId)).thenReturn(Collections.emptyList());
 
                 mockMvc.perform(post("/waitlist/manual-admit")
                                 .contentType(MediaType.APPLICATION_JSON)
@@ -458,13 +218,15 @@ class WaitlistControllerTest {
 
                 List<Map<String, Object>> applicants = new ArrayList<>();
                 Map<String, Object> applicant = new HashMap<>();
+                applicant.put("ApplicationID", testApplicationId.toString());
                 applicant.put("NationalID", "B987654321");
                 applicant.put("CurrentOrder", 2);
                 applicants.add(applicant);
-                when(waitlistJdbcRepository.getWaitlistApplicants(testApplicationId)).thenReturn(applicants);
+                when(waitlistJdbcRepository.findInstitutionIdByApplication(testApplicationId)).thenReturn(testInstitutionId);
+                when(waitlistJdbcRepository.getWaitlistApplicants(testInstitutionId)).thenReturn(applicants);
 
                 // 模擬沒有違規 (前面的人已不在候補)
-                when(waitlistJdbcRepository.checkAdmissionOrderViolation(testApplicationId, 2)).thenReturn(Collections.emptyList());
+                when(waitlistJdbcRepository.checkAdmissionOrderViolation(testInstitutionId, 2)).thenReturn(Collections.emptyList());
                 when(waitlistJdbcRepository.manualAdmit(any(), any(), any())).thenReturn(true);
 
                 mockMvc.perform(post("/waitlist/manual-admit")
@@ -483,11 +245,13 @@ class WaitlistControllerTest {
 
                 List<Map<String, Object>> applicants = new ArrayList<>();
                 Map<String, Object> applicant = new HashMap<>();
+                applicant.put("ApplicationID", testApplicationId.toString());
                 applicant.put("NationalID", "A123456789");
                 applicant.put("CurrentOrder", 1);
                 applicants.add(applicant);
 
-                when(waitlistJdbcRepository.getWaitlistApplicants(testApplicationId)).thenReturn(applicants);
+                when(waitlistJdbcRepository.findInstitutionIdByApplication(testApplicationId)).thenReturn(testInstitutionId);
+                when(waitlistJdbcRepository.getWaitlistApplicants(testInstitutionId)).thenReturn(applicants);
                 when(waitlistJdbcRepository.manualAdmit(eq(testApplicationId), eq("A123456789"), eq(testClassId)))
                                 .thenReturn(true);
 
@@ -508,11 +272,13 @@ class WaitlistControllerTest {
 
                 List<Map<String, Object>> applicants = new ArrayList<>();
                 Map<String, Object> applicant = new HashMap<>();
+                applicant.put("ApplicationID", testApplicationId.toString());
                 applicant.put("NationalID", "A123456789");
                 applicant.put("CurrentOrder", 1);
                 applicants.add(applicant);
 
-                when(waitlistJdbcRepository.getWaitlistApplicants(testApplicationId)).thenReturn(applicants);
+                when(waitlistJdbcRepository.findInstitutionIdByApplication(testApplicationId)).thenReturn(testInstitutionId);
+                when(waitlistJdbcRepository.getWaitlistApplicants(testInstitutionId)).thenReturn(applicants);
                 when(waitlistJdbcRepository.manualAdmit(eq(testApplicationId), eq("A123456789"), eq(testClassId)))
                                 .thenReturn(false);
 
@@ -533,9 +299,11 @@ class WaitlistControllerTest {
 
                 List<Map<String, Object>> applicants = new ArrayList<>();
                 Map<String, Object> applicant1 = new HashMap<>();
+                applicant1.put("ApplicationID", UUID.randomUUID().toString());
                 applicant1.put("NationalID", "A123456789");
                 applicant1.put("CurrentOrder", 1);
                 Map<String, Object> applicant2 = new HashMap<>();
+                applicant2.put("ApplicationID", testApplicationId.toString());
                 applicant2.put("NationalID", "B987654321");
                 applicant2.put("CurrentOrder", 2);
                 applicants.add(applicant1);
@@ -544,8 +312,9 @@ class WaitlistControllerTest {
                 List<Map<String, Object>> violations = new ArrayList<>();
                 violations.add(applicant1);
 
-                when(waitlistJdbcRepository.getWaitlistApplicants(testApplicationId)).thenReturn(applicants);
-                when(waitlistJdbcRepository.checkAdmissionOrderViolation(testApplicationId, 2))
+                when(waitlistJdbcRepository.findInstitutionIdByApplication(testApplicationId)).thenReturn(testInstitutionId);
+                when(waitlistJdbcRepository.getWaitlistApplicants(testInstitutionId)).thenReturn(applicants);
+                when(waitlistJdbcRepository.checkAdmissionOrderViolation(testInstitutionId, 2))
                                 .thenReturn(violations);
                 when(waitlistJdbcRepository.manualAdmit(eq(testApplicationId), eq("B987654321"), eq(testClassId)))
                                 .thenReturn(true);
@@ -558,13 +327,94 @@ class WaitlistControllerTest {
                                 .andExpect(jsonPath("$.warning", containsString("1 位候補者未錄取")));
         }
 
+        @Test
+        void testManualAdmit_SkippingOrder_QueriesByInstitutionId() throws Exception {
+                ManualAdmissionRequest request = new ManualAdmissionRequest();
+                request.setApplicationId(testApplicationId);
+                request.setNationalId("B987654321");
+                request.setClassId(testClassId);
+
+                Map<String, Object> earlier = new HashMap<>();
+                earlier.put("ApplicationID", UUID.randomUUID().toString());
+                earlier.put("NationalID", "A123456789");
+                earlier.put("CurrentOrder", 1024);
+                Map<String, Object> applicant = new HashMap<>();
+                applicant.put("ApplicationID", testApplicationId.toString());
+                applicant.put("NationalID", "B987654321");
+                applicant.put("CurrentOrder", 2048);
+
+                // 只以機構ID回應候補名單；若誤用申請案ID會查無此幼兒而不檢查跳號
+                when(waitlistJdbcRepository.findInstitutionIdByApplication(testApplicationId))
+                                .thenReturn(testInstitutionId);
+                when(waitlistJdbcRepository.getWaitlistApplicants(testInstitutionId))
+                                .thenReturn(List.of(earlier, applicant));
+                when(waitlistJdbcRepository.checkAdmissionOrderViolation(testInstitutionId, 2048))
+                                .thenReturn(List.of(earlier));
+                when(waitlistJdbcRepository.manualAdmit(testApplicationId, "B987654321", testClassId))
+                                .thenReturn(true);
+
+                mockMvc.perform(post("/waitlist/manual-admit")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(objectMapper.writeValueAsString(request)))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.success", is(true)))
+                                .andExpect(jsonPath("$.warning", containsString("1 位候補者未錄取")))
+                                .andExpect(jsonPath("$.skippedApplicants", hasSize(1)));
+
+                verify(waitlistJdbcRepository).logSkippedAdmission(testApplicationId, "B987654321",
+                                "已錄取（違反順序-跳過1位候補）");
+                verify(waitlistJdbcRepository, never()).getWaitlistApplicants(testApplicationId);
+                verify(waitlistJdbcRepository, never()).checkAdmissionOrderViolation(eq(testApplicationId), anyInt());
+        }
+
+        @Test
+        void testManualAdmit_NoClassId_UsesSuggestedClass() throws Exception {
+                ManualAdmissionRequest request = new ManualAdmissionRequest();
+                request.setApplicationId(testApplicationId);
+                request.setNationalId("A123456789");
+
+                when(waitlistJdbcRepository.findInstitutionIdByApplication(testApplicationId)).thenReturn(testInstitutionId);
+                when(waitlistJdbcRepository.getWaitlistApplicants(testInstitutionId)).thenReturn(Collections.emptyList());
+                when(lotteryService.suggestClass(testApplicationId, "A123456789")).thenReturn(testClassId);
+                when(waitlistJdbcRepository.manualAdmit(testApplicationId, "A123456789", testClassId)).thenReturn(true);
+
+                mockMvc.perform(post("/waitlist/manual-admit")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(objectMapper.writeValueAsString(request)))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.success", is(true)))
+                                .andExpect(jsonPath("$.classId", is(testClassId.toString())));
+        }
+
+        @Test
+        void testManualAdmit_NoClassId_NoFittingClass_Returns409() throws Exception {
+                ManualAdmissionRequest request = new ManualAdmissionRequest();
+                request.setApplicationId(testApplicationId);
+                request.setNationalId("B987654321");
+
+                when(lotteryService.suggestClass(testApplicationId, "B987654321")).thenReturn(null);
+
+                mockMvc.perform(post("/waitlist/manual-admit")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(objectMapper.writeValueAsString(request)))
+                                .andExpect(status().isConflict())
+                                .andExpect(jsonPath("$.success", is(false)))
+                                .andExpect(jsonPath("$.message", containsString("沒有適合")));
+
+                verify(waitlistJdbcRepository, never()).manualAdmit(any(), any(), any());
+                verify(waitlistJdbcRepository, never()).logSkippedAdmission(any(), any(), any());
+                verifyNoInteractions(admissionHoldService);
+        }
+
         // Willium1925修改
         @Test
         void testManualAdmit_Exception() throws Exception {
                 ManualAdmissionRequest request = new ManualAdmissionRequest();
                 request.setApplicationId(testApplicationId);
+                request.setClassId(testClassId);
 
-                when(waitlistJdbcRepository.getWaitlistApplicants(testApplicationId))
+                when(waitlistJdbcRepository.findInstitutionIdByApplication(testApplicationId)).thenReturn(testInstitutionId);
+                when(waitlistJdbcRepository.getWaitlistApplicants(testInstitutionId))
                         .thenThrow(new RuntimeException("DB Error"));
 
                 mockMvc.perform(post("/waitlist/manual-admit")
@@ -664,615 +514,192 @@ class WaitlistControllerTest {
                                 .andExpect(jsonPath("$.success", is(false)));
         }
 
-        @Test
-        void testConductLottery_EmailServiceError() throws Exception {
-                LotteryRequest request = new LotteryRequest();
-                request.setInstitutionId(testInstitutionId);
-
-                when(waitlistJdbcRepository.getTotalCapacity(testInstitutionId)).thenReturn(100);
-                when(waitlistJdbcRepository.getCurrentStudentsCount(testInstitutionId)).thenReturn(50);
-
-                Map<Integer, Integer> acceptedCount = new HashMap<>(); // All 0
-                acceptedCount.put(1, 0);
-                acceptedCount.put(2, 0);
-                acceptedCount.put(3, 0);
-                when(waitlistJdbcRepository.getAcceptedCountByPriority(testInstitutionId)).thenReturn(acceptedCount);
-
-                Map<Integer, List<Map<String, Object>>> applicantsByPriority = new HashMap<>();
-                List<Map<String, Object>> p1 = new ArrayList<>();
-                Map<String, Object> applicant1 = new HashMap<>();
-                applicant1.put("ApplicantName", "Test Applicant");
-                applicant1.put("Email", "test@example.com");
-                applicant1.put("BirthDate", java.sql.Date.valueOf("2020-01-01"));
-                p1.add(applicant1);
-
-                applicantsByPriority.put(1, p1);
-                applicantsByPriority.put(2, new ArrayList<>());
-                applicantsByPriority.put(3, new ArrayList<>());
-                when(waitlistJdbcRepository.getLotteryApplicantsByPriority(testInstitutionId))
-                                .thenReturn(applicantsByPriority);
-
-                // Mock class info
-                List<Map<String, Object>> classes = new ArrayList<>();
-                Map<String, Object> classA = new HashMap<>();
-                classA.put("ClassID", testClassId.toString());
-                classA.put("CurrentStudents", 10);
-                classes.add(classA);
-                when(waitlistJdbcRepository.getClassInfo(testInstitutionId)).thenReturn(classes);
-
-                // Mock suitable class found
-                when(waitlistJdbcRepository.findSuitableClass(any(), any())).thenReturn(testClassId);
-                when(waitlistJdbcRepository.hasClassCapacity(testClassId)).thenReturn(true);
-
-                // Mock email error
-                doThrow(new jakarta.mail.MessagingException("Mail Error")).when(emailService)
-                                .sendApplicationStatusChangeEmail(any(), any(), any(), any(), any(), any(), any(),
-                                                any(), any());
-
-                mockMvc.perform(post("/waitlist/lottery")
-                                .contentType(MediaType.APPLICATION_JSON)
-                                .content(objectMapper.writeValueAsString(request)))
-                                .andExpect(status().isOk()) // Operations should succeed even if email fails
-                                .andExpect(jsonPath("$.success", is(true)));
+        // ===== streamWaitlistByInstitution 測試 =====
+        private static WaitlistJdbcRepository.WaitlistRow waitlistRow(UUID institutionId, String name, int order) {
+                return new WaitlistJdbcRepository.WaitlistRow(UUID.randomUUID(), name, 202501010001L,
+                                LocalDate.now().minusMonths(14), 3, order, "測試幼兒園",
+                                institutionId, order * 1024, UUID.randomUUID());
         }
 
         @Test
-        void testConductLottery_ClassFullForSpecificApplicant() throws Exception {
-                LotteryRequest request = new LotteryRequest();
-                request.setInstitutionId(testInstitutionId);
-
-                // Mock capacity allows admission globally (5 slots available)
-                when(waitlistJdbcRepository.getTotalCapacity(testInstitutionId)).thenReturn(10);
-                when(waitlistJdbcRepository.getCurrentStudentsCount(testInstitutionId)).thenReturn(5);
-
-                Map<Integer, Integer> acceptedCount = new HashMap<>();
-                acceptedCount.put(1, 0);
-                acceptedCount.put(2, 0);
-                acceptedCount.put(3, 0);
-                when(waitlistJdbcRepository.getAcceptedCountByPriority(testInstitutionId)).thenReturn(acceptedCount);
-
-                // One applicant
-                Map<Integer, List<Map<String, Object>>> applicantsByPriority = new HashMap<>();
-                List<Map<String, Object>> p1 = new ArrayList<>();
-                Map<String, Object> applicant1 = new HashMap<>();
-                applicant1.put("ApplicantName", "Test Applicant");
-                applicant1.put("BirthDate", java.sql.Date.valueOf("2020-01-01"));
-                p1.add(applicant1);
-                applicantsByPriority.put(1, p1);
-                applicantsByPriority.put(2, new ArrayList<>());
-                applicantsByPriority.put(3, new ArrayList<>());
-                when(waitlistJdbcRepository.getLotteryApplicantsByPriority(testInstitutionId))
-                                .thenReturn(applicantsByPriority);
-
-                // Mock suitable class found BUT full capacity specific to this class
-                when(waitlistJdbcRepository.getClassInfo(testInstitutionId)).thenReturn(new ArrayList<>());
-                when(waitlistJdbcRepository.findSuitableClass(any(), any())).thenReturn(testClassId);
-                when(waitlistJdbcRepository.hasClassCapacity(testClassId)).thenReturn(false); // Class full!
+        void testStreamWaitlistByInstitution_PagesWithCursor() throws Exception {
+                List<WaitlistJdbcRepository.WaitlistRow> rows = List.of(
+                                waitlistRow(testInstitutionId, "幼兒A", 1),
+                                waitlistRow(testInstitutionId, "幼兒B", 2),
+                                waitlistRow(testInstitutionId, "幼兒C", 3));
+                doAnswer(invocation -> {
+                        java.util.function.Consumer<WaitlistJdbcRepository.WaitlistRow> consumer = invocation.getArgument(4);
+                        rows.forEach(consumer);
+                        return rows.size();
+                }).when(waitlistJdbcRepository).streamWaitlistByInstitution(
+                                eq(testInstitutionId.toString()), isNull(), isNull(), eq(3), any());
+
+                org.springframework.test.web.servlet.MvcResult result = mockMvc.perform(get("/waitlist/by-institution/stream")
+                                .param("institutionId", testInstitutionId.toString())
+                                .param("limit", "2"))
+                                .andExpect(request().asyncStarted())
+                                .andReturn();
 
-                mockMvc.perform(post("/waitlist/lottery")
-                                .contentType(MediaType.APPLICATION_JSON)
-                                .content(objectMapper.writeValueAsString(request)))
+                String expectedCursor = WaitlistJdbcRepository.WaitlistCursor.of(rows.get(1)).toString();
+                mockMvc.perform(asyncDispatch(result))
                                 .andExpect(status().isOk())
-                                .andExpect(jsonPath("$.success", is(true)))
-                                // Should be waitlisted because class is full
-                                // firstPriorityAccepted is 0 because the only applicant was waitlisted
-                                .andExpect(jsonPath("$.firstPriorityAccepted", is(0)))
-                                .andExpect(jsonPath("$.waitlisted", is(1)));
+                                .andExpect(jsonPath("$.content", hasSize(2)))
+                                .andExpect(jsonPath("$.content[0].Name").value("幼兒A"))
+                                .andExpect(jsonPath("$.content[0].CurrentOrder").value(1))
+                                .andExpect(jsonPath("$.content[0].Age").value("1歲2個月"))
+                                .andExpect(jsonPath("$.nextCursor").value(expectedCursor));
         }
 
         @Test
-        void testConductLottery_BirthDateParsing() throws Exception {
-                LotteryRequest request = new LotteryRequest();
-                request.setInstitutionId(testInstitutionId);
-
-                when(waitlistJdbcRepository.getTotalCapacity(testInstitutionId)).thenReturn(100);
-                when(waitlistJdbcRepository.getCurrentStudentsCount(testInstitutionId)).thenReturn(50);
-
-                Map<Integer, Integer> acceptedCount = new HashMap<>();
-                acceptedCount.put(1, 0);
-                acceptedCount.put(2, 0);
-                acceptedCount.put(3, 0);
-                when(waitlistJdbcRepository.getAcceptedCountByPriority(testInstitutionId)).thenReturn(acceptedCount);
-
-                // Applicants with different BirthDate formats
-                Map<Integer, List<Map<String, Object>>> applicantsByPriority = new HashMap<>();
-                List<Map<String, Object>> p1 = new ArrayList<>();
-
-                Map<String, Object> appDate = new HashMap<>();
-                appDate.put("ApplicantName", "SQL Date");
-                appDate.put("BirthDate", java.sql.Date.valueOf("2020-01-01"));
-                p1.add(appDate);
-
-                Map<String, Object> appLocalDate = new HashMap<>();
-                appLocalDate.put("ApplicantName", "Local Date");
-                appLocalDate.put("BirthDate", java.time.LocalDate.of(2020, 1, 2));
-                p1.add(appLocalDate);
-
-                Map<String, Object> appNull = new HashMap<>();
-                appNull.put("ApplicantName", "No Date");
-                appNull.put("BirthDate", null);
-                p1.add(appNull);
-
-                applicantsByPriority.put(1, p1);
-                applicantsByPriority.put(2, new ArrayList<>());
-                applicantsByPriority.put(3, new ArrayList<>());
-                when(waitlistJdbcRepository.getLotteryApplicantsByPriority(testInstitutionId))
-                                .thenReturn(applicantsByPriority);
-
-                when(waitlistJdbcRepository.getClassInfo(testInstitutionId)).thenReturn(new ArrayList<>());
-                when(waitlistJdbcRepository.findSuitableClass(any(), any())).thenReturn(testClassId);
-                when(waitlistJdbcRepository.hasClassCapacity(testClassId)).thenReturn(true);
-
-                mockMvc.perform(post("/waitlist/lottery")
-                                .contentType(MediaType.APPLICATION_JSON)
-                                .content(objectMapper.writeValueAsString(request)))
+        void testStreamWaitlistByInstitution_LastPage() throws Exception {
+                UUID participantId = UUID.randomUUID();
+                doAnswer(invocation -> {
+                        java.util.function.Consumer<WaitlistJdbcRepository.WaitlistRow> consumer = invocation.getArgument(4);
+                        consumer.accept(waitlistRow(testInstitutionId, "幼兒D", 4));
+                        return 1;
+                }).when(waitlistJdbcRepository).streamWaitlistByInstitution(
+                                isNull(), isNull(), any(WaitlistJdbcRepository.WaitlistCursor.class), isNull(), any());
+
+                org.springframework.test.web.servlet.MvcResult result = mockMvc.perform(get("/waitlist/by-institution/stream")
+                                .param("cursor", testInstitutionId + ",3072," + participantId))
+                                .andExpect(request().asyncStarted())
+                                .andReturn();
+
+                mockMvc.perform(asyncDispatch(result))
                                 .andExpect(status().isOk())
-                                // SQL Date & LocalDate -> Accepted (2)
-                                // Null Date -> Waitlisted (1)
-                                .andExpect(jsonPath("$.firstPriorityAccepted", is(2)))
-                                .andExpect(jsonPath("$.waitlisted", is(1)));
-            }
-
-        // Willium1925修改
-        @Test
-        void testConductLottery_ThirdPriorityLotteryRequired() throws Exception {
-            LotteryRequest request = new LotteryRequest();
-            request.setInstitutionId(testInstitutionId);
-
-            when(waitlistJdbcRepository.getTotalCapacity(testInstitutionId)).thenReturn(10);
-            when(waitlistJdbcRepository.getCurrentStudentsCount(testInstitutionId)).thenReturn(0); // 10 個空位
-
-            // 修正：必須提供所有 key 的值
-            Map<Integer, Integer> acceptedCount = new HashMap<>();
-            acceptedCount.put(1, 0);
-            acceptedCount.put(2, 0);
-            acceptedCount.put(3, 0);
-            when(waitlistJdbcRepository.getAcceptedCountByPriority(testInstitutionId)).thenReturn(acceptedCount);
-
-            Map<Integer, List<Map<String, Object>>> applicantsByPriority = new HashMap<>();
-            applicantsByPriority.put(1, new ArrayList<>());
-            applicantsByPriority.put(2, new ArrayList<>());
-            List<Map<String, Object>> p3 = new ArrayList<>();
-            p3.add(createApplicant("P3-A", "2020-01-01"));
-            p3.add(createApplicant("P3-B", "2020-01-01"));
-            p3.add(createApplicant("P3-C", "2020-01-01"));
-            p3.add(createApplicant("P3-D", "2020-01-01"));
-            p3.add(createApplicant("P3-E", "2020-01-01"));
-            p3.add(createApplicant("P3-F", "2020-01-01")); // 6 人申請
-            applicantsByPriority.put(3, p3);
-            when(waitlistJdbcRepository.getLotteryApplicantsByPriority(testInstitutionId)).thenReturn(applicantsByPriority);
-
-            when(waitlistJdbcRepository.findSuitableClass(any(), any())).thenReturn(testClassId);
-            when(waitlistJdbcRepository.hasClassCapacity(testClassId)).thenReturn(true);
-            when(waitlistJdbcRepository.getClassInfo(testInstitutionId)).thenReturn(new ArrayList<>());
-
-            mockMvc.perform(post("/waitlist/lottery")
-                            .contentType(MediaType.APPLICATION_JSON)
-                            .content(objectMapper.writeValueAsString(request)))
-                            .andExpect(status().isOk())
-                            .andExpect(jsonPath("$.thirdPriorityAccepted", is(6))) // 6 人全部錄取
-                            .andExpect(jsonPath("$.waitlisted", is(0))); // 0 人候補
+                                .andExpect(jsonPath("$.content", hasSize(1)))
+                                .andExpect(jsonPath("$.nextCursor").value(nullValue()));
         }
 
-        // Willium1925修改：測試 assignClassAndAdmit 的 false 分支
         @Test
-        void testConductLottery_AssignClassAdmitReturnsFalse() throws Exception {
-                LotteryRequest request = new LotteryRequest();
-                request.setInstitutionId(testInstitutionId);
-
-                when(waitlistJdbcRepository.getTotalCapacity(testInstitutionId)).thenReturn(10);
-                when(waitlistJdbcRepository.getCurrentStudentsCount(testInstitutionId)).thenReturn(0);
-                
-                // 修正：必須提供所有 key 的值
-                Map<Integer, Integer> acceptedCount = new HashMap<>();
-                acceptedCount.put(1, 0);
-                acceptedCount.put(2, 0);
-                acceptedCount.put(3, 0);
-                when(waitlistJdbcRepository.getAcceptedCountByPriority(testInstitutionId)).thenReturn(acceptedCount);
+        void testStreamWaitlistByInstitution_InvalidCursor() throws Exception {
+                mockMvc.perform(get("/waitlist/by-institution/stream").param("cursor", "bad"))
+                                .andExpect(status().isBadRequest());
 
-                Map<Integer, List<Map<String, Object>>> applicantsByPriority = new HashMap<>();
-                List<Map<String, Object>> p2 = new ArrayList<>();
-                p2.add(createApplicant("P2-A", "2020-01-01"));
-                applicantsByPriority.put(1, new ArrayList<>());
-                applicantsByPriority.put(2, p2);
-                applicantsByPriority.put(3, new ArrayList<>());
-                when(waitlistJdbcRepository.getLotteryApplicantsByPriority(testInstitutionId)).thenReturn(applicantsByPriority);
-
-                when(waitlistJdbcRepository.findSuitableClass(any(), any())).thenReturn(testClassId);
-                // 模擬班級已滿
-                when(waitlistJdbcRepository.hasClassCapacity(testClassId)).thenReturn(false);
-                when(waitlistJdbcRepository.getClassInfo(testInstitutionId)).thenReturn(new ArrayList<>());
-
-                mockMvc.perform(post("/waitlist/lottery")
-                                .contentType(MediaType.APPLICATION_JSON)
-                                .content(objectMapper.writeValueAsString(request)))
-                                .andExpect(status().isOk())
-                                .andExpect(jsonPath("$.secondPriorityAccepted", is(0))) // 錄取 0 人
-                                .andExpect(jsonPath("$.waitlisted", is(1))); // 候補 1 人
+                verify(waitlistJdbcRepository, never()).streamWaitlistByInstitution(any(), any(), any(), any(), any());
         }
 
-        // Willium1925修改：測試 assignClassAndAdmit 的各種分支（確保覆蓋 LocalDate 分支）
+        // ===== getWaitlistPosition 測試 =====
         @Test
-        void testAssignClassAndAdmit_Variations() throws Exception {
-                LotteryRequest request = new LotteryRequest();
-                request.setInstitutionId(testInstitutionId);
-
-                when(waitlistJdbcRepository.getTotalCapacity(testInstitutionId)).thenReturn(10);
-                when(waitlistJdbcRepository.getCurrentStudentsCount(testInstitutionId)).thenReturn(0);
-                
-                Map<Integer, Integer> acceptedCount = new HashMap<>();
-                acceptedCount.put(1, 0);
-                acceptedCount.put(2, 0);
-                acceptedCount.put(3, 0);
-                when(waitlistJdbcRepository.getAcceptedCountByPriority(testInstitutionId)).thenReturn(acceptedCount);
-
-                Map<Integer, List<Map<String, Object>>> applicantsByPriority = new HashMap<>();
-                List<Map<String, Object>> p1 = new ArrayList<>();
-
-                // 1. BirthDate 為 LocalDate（確保覆蓋 instanceof LocalDate 分支）
-                LocalDate testBirthDate = java.time.LocalDate.of(2020, 6, 15);
-                Map<String, Object> app1 = createApplicant("P1-LocalDate", null);
-                app1.put("BirthDate", testBirthDate);  // 直接使用 LocalDate 對象
-                p1.add(app1);
+        void testGetWaitlistPosition_FromIndex() throws Exception {
+                when(waitlistRankIndexService.getPosition(testInstitutionId, testApplicationId, "A123456789"))
+                                .thenReturn(new WaitlistRankIndexService.Position(3, 12, 3072));
 
-                // 2. 找不到適合班級（使用 java.sql.Date）
-                Map<String, Object> app2 = createApplicant("P1-NoClass", "2020-01-01");
-                p1.add(app2);
-
-                applicantsByPriority.put(1, p1);
-                applicantsByPriority.put(2, new ArrayList<>());
-                applicantsByPriority.put(3, new ArrayList<>());
-                when(waitlistJdbcRepository.getLotteryApplicantsByPriority(testInstitutionId)).thenReturn(applicantsByPriority);
+                mockMvc.perform(get("/waitlist/position")
+                                .param("institutionId", testInstitutionId.toString())
+                                .param("applicationId", testApplicationId.toString())
+                                .param("nationalId", "A123456789"))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.position").value(3))
+                                .andExpect(jsonPath("$.totalWaiting").value(12));
 
-                // Mock 行為
-                when(waitlistJdbcRepository.getClassInfo(testInstitutionId)).thenReturn(new ArrayList<>());
+                verifyNoInteractions(waitlistJdbcRepository);
+        }
 
-                // 讓 app1 找到班級（使用 eq 來匹配特定的 LocalDate）
-                when(waitlistJdbcRepository.findSuitableClass(eq(testBirthDate), any())).thenReturn(testClassId);
+        @Test
+        void testGetWaitlistPosition_NotWaiting() throws Exception {
+                when(waitlistRankIndexService.getPosition(any(), any(), any())).thenReturn(null);
 
-                // 讓 app2 找不到班級
-                when(waitlistJdbcRepository.findSuitableClass(eq(java.sql.Date.valueOf("2020-01-01").toLocalDate()), any())).thenReturn(null);
+                mockMvc.perform(get("/waitlist/position")
+                                .param("institutionId", testInstitutionId.toString())
+                                .param("applicationId", testApplicationId.toString())
+                                .param("nationalId", "A123456789"))
+                                .andExpect(status().isNotFound())
+                                .andExpect(jsonPath("$.success").value(false));
+        }
 
-                when(waitlistJdbcRepository.hasClassCapacity(testClassId)).thenReturn(true);
+        @Test
+        void testGetWaitlistByInstitution_QueriesDatabaseNotIndex() throws Exception {
+                Map<String, Object> item = new HashMap<>();
+                item.put("Name", "測試幼兒");
+                item.put("CurrentOrder", 1);
+                when(waitlistJdbcRepository.findWaitlistByInstitution(testInstitutionId.toString(), null))
+                                .thenReturn(List.of(item));
 
-                mockMvc.perform(post("/waitlist/lottery")
-                                .contentType(MediaType.APPLICATION_JSON)
-                                .content(objectMapper.writeValueAsString(request)))
+                mockMvc.perform(get("/waitlist/by-institution")
+                                .param("institutionId", testInstitutionId.toString()))
                                 .andExpect(status().isOk())
-                                .andExpect(jsonPath("$.firstPriorityAccepted", is(1)))
-                                .andExpect(jsonPath("$.waitlisted", is(1)));
+                                .andExpect(jsonPath("$[0].CurrentOrder").value(1));
 
-                // 驗證 findSuitableClass 被用 LocalDate 調用過（確保覆蓋 instanceof LocalDate 分支）
-                verify(waitlistJdbcRepository).findSuitableClass(eq(testBirthDate), any());
+                verify(waitlistRankIndexService, never()).getWaitlist(any(), any());
         }
 
-        // Willium1925新增：測試同步更新記憶體中的班級資訊（覆蓋 classId 匹配分支）
+        // ===== conductCountyAllocation 測試 =====
         @Test
-        void testAssignClassAndAdmit_UpdateClassInfoInMemory() throws Exception {
-                LotteryRequest request = new LotteryRequest();
-                request.setInstitutionId(testInstitutionId);
-
-                when(waitlistJdbcRepository.getTotalCapacity(testInstitutionId)).thenReturn(20);
-                when(waitlistJdbcRepository.getCurrentStudentsCount(testInstitutionId)).thenReturn(0);
-
-                Map<Integer, Integer> acceptedCount = new HashMap<>();
-                acceptedCount.put(1, 0);
-                acceptedCount.put(2, 0);
-                acceptedCount.put(3, 0);
-                when(waitlistJdbcRepository.getAcceptedCountByPriority(testInstitutionId)).thenReturn(acceptedCount);
-
-                Map<Integer, List<Map<String, Object>>> applicantsByPriority = new HashMap<>();
-                List<Map<String, Object>> p1 = new ArrayList<>();
-
-                // 測試 LocalDate 類型的 BirthDate (覆蓋黃色分支 - instanceof LocalDate)
-                LocalDate birthDate1 = java.time.LocalDate.of(2020, 1, 15);
-                Map<String, Object> app1 = createApplicant("P1-App1", null);
-                app1.put("BirthDate", birthDate1);  // 直接使用 LocalDate 對象
-                p1.add(app1);
-
-                // 測試 java.sql.Date 類型的 BirthDate (確保兩種類型都被測試到)
-                Map<String, Object> app2 = createApplicant("P1-App2", "2020-02-20");
-                p1.add(app2);
-
-                applicantsByPriority.put(1, p1);
-                applicantsByPriority.put(2, new ArrayList<>());
-                applicantsByPriority.put(3, new ArrayList<>());
-                when(waitlistJdbcRepository.getLotteryApplicantsByPriority(testInstitutionId)).thenReturn(applicantsByPriority);
-
-                // 創建班級資訊列表，用於測試記憶體更新
-                // 這個列表會測試 for 循環和 classId 匹配邏輯（覆蓋黃色和紅色分支）
-                List<Map<String, Object>> classInfoList = new ArrayList<>();
-
-                // 先添加一個不匹配的班級（測試 if 條件為 false 的情況）
-                UUID anotherClassId = UUID.randomUUID();
-                Map<String, Object> classInfo2 = new HashMap<>();
-                classInfo2.put("ClassID", anotherClassId);
-                classInfo2.put("ClassName", "另一個班級");
-                classInfo2.put("CurrentStudents", 3);
-                classInfo2.put("Capacity", 8);
-                classInfoList.add(classInfo2);
-
-                // 再添加匹配的班級（測試 if 條件為 true 和 break 的情況）
-                Map<String, Object> classInfo1 = new HashMap<>();
-                classInfo1.put("ClassID", testClassId);
-                classInfo1.put("ClassName", "測試班級");
-                classInfo1.put("CurrentStudents", 5);
-                classInfo1.put("Capacity", 10);
-                classInfoList.add(classInfo1);
-
-                when(waitlistJdbcRepository.getClassInfo(testInstitutionId)).thenReturn(classInfoList);
-
-                // Mock findSuitableClass - 針對不同類型的日期分別設置
-                when(waitlistJdbcRepository.findSuitableClass(eq(birthDate1), any())).thenReturn(testClassId);
-                when(waitlistJdbcRepository.findSuitableClass(eq(java.sql.Date.valueOf("2020-02-20").toLocalDate()), any())).thenReturn(testClassId);
-                when(waitlistJdbcRepository.hasClassCapacity(testClassId)).thenReturn(true);
+        void testConductCountyAllocation_Success() throws Exception {
+                LotteryResult lotteryResult = new LotteryResult();
+                lotteryResult.setThirdPriorityAccepted(1);
+                lotteryResult.setWaitlisted(2);
+                lotteryResult.setAcceptedList(new ArrayList<>());
+                lotteryResult.setWaitlistList(new ArrayList<>());
+                when(countyAllocationService.allocate()).thenReturn(new CountyAllocationService.CountyAllocationResult(
+                                1, 3, 3, 1, 0, 3, 5L, List.of(testInstitutionId), List.of(lotteryResult)));
+
+                mockMvc.perform(post("/waitlist/lottery/county"))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.success", is(true)))
+                                .andExpect(jsonPath("$.admittedChildren", is(1)))
+                                .andExpect(jsonPath("$.institutions[0].institutionId", is(testInstitutionId.toString())))
+                                .andExpect(jsonPath("$.institutions[0].thirdPriorityAccepted", is(1)));
+        }
 
-                mockMvc.perform(post("/waitlist/lottery")
-                                .contentType(MediaType.APPLICATION_JSON)
-                                .content(objectMapper.writeValueAsString(request)))
+        @Test
+        void testConductCountyAllocation_ReleasedGetReleaseNoticeNotWaitlistNotice() throws Exception {
+                Map<String, Object> released = new HashMap<>();
+                released.put("Email", "parent@example.com");
+                released.put("ApplicantName", "王小明");
+                released.put("ChildName", "王小寶");
+                released.put("Status", "已撤銷");
+                released.put("Reason", "已錄取較優先志願");
+                released.put("CurrentOrder", null);
+                LotteryResult lotteryResult = new LotteryResult();
+                lotteryResult.setWaitlisted(0);
+                lotteryResult.setReleased(1);
+                lotteryResult.setAcceptedList(new ArrayList<>());
+                lotteryResult.setWaitlistList(new ArrayList<>());
+                lotteryResult.setReleasedList(List.of(released));
+                when(countyAllocationService.allocate()).thenReturn(new CountyAllocationService.CountyAllocationResult(
+                                1, 1, 1, 0, 1, 1, 5L, List.of(testInstitutionId), List.of(lotteryResult)));
+
+                mockMvc.perform(post("/waitlist/lottery/county"))
                                 .andExpect(status().isOk())
-                                .andExpect(jsonPath("$.firstPriorityAccepted", is(2)))
-                                .andExpect(jsonPath("$.waitlisted", is(0)));
+                                .andExpect(jsonPath("$.institutions[0].waitlisted", is(0)))
+                                .andExpect(jsonPath("$.institutions[0].released", is(1)));
 
-                // 驗證記憶體中的班級資訊被正確更新
-                verify(waitlistJdbcRepository, times(2)).updateClassCurrentStudents(eq(testClassId), eq(1));
-                // 驗證 LocalDate 分支被執行
-                verify(waitlistJdbcRepository).findSuitableClass(eq(birthDate1), any());
+                verify(lotteryNotificationService).sendLotteryNotificationEmails(
+                                eq(List.of()), eq(List.of()), eq(List.of(released)));
         }
 
-        // Willium1925新增：確保覆蓋 classId 匹配邏輯的所有路徑
         @Test
-        void testAssignClassAndAdmit_ClassIdMatchingLogic() throws Exception {
-                LotteryRequest request = new LotteryRequest();
-                request.setInstitutionId(testInstitutionId);
-
-                when(waitlistJdbcRepository.getTotalCapacity(testInstitutionId)).thenReturn(10);
-                when(waitlistJdbcRepository.getCurrentStudentsCount(testInstitutionId)).thenReturn(0);
+        void testConductCountyAllocation_Locked() throws Exception {
+                when(countyAllocationService.allocate()).thenThrow(new IllegalStateException("機構正在進行抽籤"));
 
-                Map<Integer, Integer> acceptedCount = new HashMap<>();
-                acceptedCount.put(1, 0);
-                acceptedCount.put(2, 0);
-                acceptedCount.put(3, 0);
-                when(waitlistJdbcRepository.getAcceptedCountByPriority(testInstitutionId)).thenReturn(acceptedCount);
+                mockMvc.perform(post("/waitlist/lottery/county"))
+                                .andExpect(status().isConflict())
+                                .andExpect(jsonPath("$.success", is(false)));
+        }
 
-                Map<Integer, List<Map<String, Object>>> applicantsByPriority = new HashMap<>();
-                List<Map<String, Object>> p3 = new ArrayList<>();
-
-                // 使用 LocalDate 來確保覆蓋 instanceof LocalDate 分支
-                LocalDate birthDate = java.time.LocalDate.of(2021, 5, 10);
-                Map<String, Object> app = createApplicant("P3-App", null);
-                app.put("BirthDate", birthDate);  // 直接使用 LocalDate 對象
-                p3.add(app);
-
-                applicantsByPriority.put(1, new ArrayList<>());
-                applicantsByPriority.put(2, new ArrayList<>());
-                applicantsByPriority.put(3, p3);
-                when(waitlistJdbcRepository.getLotteryApplicantsByPriority(testInstitutionId)).thenReturn(applicantsByPriority);
-
-                // 創建多個班級，測試遍歷邏輯
-                List<Map<String, Object>> classInfoList = new ArrayList<>();
-
-                // 第一個不匹配的班級
-                UUID class1 = UUID.randomUUID();
-                Map<String, Object> info1 = new HashMap<>();
-                info1.put("ClassID", class1);
-                info1.put("CurrentStudents", 1);
-                classInfoList.add(info1);
-
-                // 第二個不匹配的班級
-                UUID class2 = UUID.randomUUID();
-                Map<String, Object> info2 = new HashMap<>();
-                info2.put("ClassID", class2);
-                info2.put("CurrentStudents", 2);
-                classInfoList.add(info2);
-
-                // 第三個匹配的班級（測試 break）
-                Map<String, Object> info3 = new HashMap<>();
-                info3.put("ClassID", testClassId);
-                info3.put("CurrentStudents", 3);
-                classInfoList.add(info3);
-
-                // 第四個班級（不應該被訪問到，因為上面 break 了）
-                UUID class4 = UUID.randomUUID();
-                Map<String, Object> info4 = new HashMap<>();
-                info4.put("ClassID", class4);
-                info4.put("CurrentStudents", 4);
-                classInfoList.add(info4);
-
-                when(waitlistJdbcRepository.getClassInfo(testInstitutionId)).thenReturn(classInfoList);
-                when(waitlistJdbcRepository.findSuitableClass(eq(birthDate), any())).thenReturn(testClassId);
-                when(waitlistJdbcRepository.hasClassCapacity(testClassId)).thenReturn(true);
+        // ===== confirmAdmission 測試 =====
+        @Test
+        void testConfirmAdmission_Success() throws Exception {
+                UUID applicationId = UUID.randomUUID();
+                when(admissionHoldService.confirm(applicationId, "A123456789")).thenReturn(true);
 
-                mockMvc.perform(post("/waitlist/lottery")
-                                .contentType(MediaType.APPLICATION_JSON)
-                                .content(objectMapper.writeValueAsString(request)))
+                mockMvc.perform(post("/waitlist/admission/confirm")
+                                .param("applicationId", applicationId.toString())
+                                .param("nationalId", "A123456789"))
                                 .andExpect(status().isOk())
-                                .andExpect(jsonPath("$.thirdPriorityAccepted", is(1)));
-
-                // 驗證 LocalDate 分支被執行
-                verify(waitlistJdbcRepository).findSuitableClass(eq(birthDate), any());
+                                .andExpect(jsonPath("$.success", is(true)));
         }
 
-        // Willium1925新增：sendLotteryNotificationEmails 全覆蓋測試
         @Test
-        void testSendLotteryNotificationEmails_FullCoverage() throws Exception {
-            LotteryRequest request = new LotteryRequest();
-            request.setInstitutionId(testInstitutionId);
-
-            // 設定名額：P1=10, P3=10
-            when(waitlistJdbcRepository.getTotalCapacity(testInstitutionId)).thenReturn(20);
-            when(waitlistJdbcRepository.getCurrentStudentsCount(testInstitutionId)).thenReturn(0);
-
-            Map<Integer, Integer> acceptedCount = new HashMap<>();
-            acceptedCount.put(1, 0);
-            acceptedCount.put(2, 0);
-            acceptedCount.put(3, 0);
-            when(waitlistJdbcRepository.getAcceptedCountByPriority(testInstitutionId)).thenReturn(acceptedCount);
-
-            Map<Integer, List<Map<String, Object>>> applicantsByPriority = new HashMap<>();
-
-            // --- 錄取者 (P1) ---
-            List<Map<String, Object>> p1 = new ArrayList<>();
-
-            // 測試 CaseNumber = null 分支
-            Map<String, Object> app1 = createApplicant("App1", "2020-01-01");
-            app1.put("CaseNumber", null);
-            app1.put("ApplicationDate", LocalDateTime.now());
-            p1.add(app1);
-
-            // 測試 CaseNumber 正常值 + ApplicationDate = java.sql.Timestamp
-            Map<String, Object> app2 = createApplicant("App2", "2020-01-01");
-            app2.put("CaseNumber", 12345L);
-            app2.put("ApplicationDate", new java.sql.Timestamp(System.currentTimeMillis()));
-            p1.add(app2);
-
-            // 測試 ApplicationDate = java.sql.Date
-            Map<String, Object> app3 = createApplicant("App3", "2020-01-01");
-            app3.put("CaseNumber", 23456);
-            app3.put("ApplicationDate", java.sql.Date.valueOf("2023-01-01"));
-            p1.add(app3);
-
-            // 測試 ApplicationDate = LocalDate
-            Map<String, Object> app4 = createApplicant("App4", "2020-01-01");
-            app4.put("ApplicationDate", java.time.LocalDate.now());
-            p1.add(app4);
-
-            // 測試 ApplicationDate = String
-            Map<String, Object> app5 = createApplicant("App5", "2020-01-01");
-            app5.put("ApplicationDate", "2023-01-15");
-            p1.add(app5);
-
-            // 測試 Email = null 分支
-            Map<String, Object> app6 = createApplicant("App6", "2020-01-01");
-            app6.put("Email", null);
-            p1.add(app6);
-
-            // 測試 Email = "" 分支
-            Map<String, Object> app7 = createApplicant("App7", "2020-01-01");
-            app7.put("Email", "");
-            p1.add(app7);
-
-            // 測試錄取者的 Exception 處理
-            Map<String, Object> app8 = createApplicant("App8", "2020-01-01");
-            app8.put("Email", "accepted-error@example.com");
-            p1.add(app8);
-
-            // --- 候補者 (P3) ---
-            List<Map<String, Object>> p3 = new ArrayList<>();
-
-            // 測試 CaseNumber = null 分支
-            Map<String, Object> app9 = createApplicant("App9", "2021-01-01");
-            app9.put("CaseNumber", null);
-            app9.put("ApplicationDate", LocalDateTime.now());
-            app9.put("BirthDate", java.sql.Date.valueOf("2021-01-01"));
-            p3.add(app9);
-
-            // 測試 CaseNumber 正常值 + ApplicationDate = java.sql.Timestamp
-            Map<String, Object> app10 = createApplicant("App10", "2021-01-01");
-            app10.put("CaseNumber", 34567L);
-            app10.put("ApplicationDate", new java.sql.Timestamp(System.currentTimeMillis()));
-            app10.put("BirthDate", java.sql.Date.valueOf("2021-01-01"));
-            p3.add(app10);
-
-            // 測試 ApplicationDate = java.sql.Date
-            Map<String, Object> app11 = createApplicant("App11", "2021-01-01");
-            app11.put("CaseNumber", 45678);
-            app11.put("ApplicationDate", java.sql.Date.valueOf("2023-02-01"));
-            app11.put("BirthDate", java.sql.Date.valueOf("2021-01-01"));
-            p3.add(app11);
-
-            // 測試 ApplicationDate = LocalDate
-            Map<String, Object> app12 = createApplicant("App12", "2021-01-01");
-            app12.put("ApplicationDate", java.time.LocalDate.now());
-            app12.put("BirthDate", java.sql.Date.valueOf("2021-01-01"));
-            p3.add(app12);
-
-            // 測試 ApplicationDate = String
-            Map<String, Object> app13 = createApplicant("App13", "2021-01-01");
-            app13.put("ApplicationDate", "2023-03-01");
-            app13.put("BirthDate", java.sql.Date.valueOf("2021-01-01"));
-            p3.add(app13);
-
-            // 測試 Email = null 分支
-            Map<String, Object> app14 = createApplicant("App14", "2021-01-01");
-            app14.put("Email", null);
-            app14.put("BirthDate", java.sql.Date.valueOf("2021-01-01"));
-            p3.add(app14);
-
-            // 測試 Email = "" 分支
-            Map<String, Object> app15 = createApplicant("App15", "2021-01-01");
-            app15.put("Email", "");
-            app15.put("BirthDate", java.sql.Date.valueOf("2021-01-01"));
-            p3.add(app15);
-
-            // 測試 MessagingException 分支
-            Map<String, Object> app16 = createApplicant("App16", "2021-01-01");
-            app16.put("Email", "msg-error@example.com");
-            app16.put("BirthDate", java.sql.Date.valueOf("2021-01-01"));
-            p3.add(app16);
-
-            // 測試 RuntimeException (其他 Exception) 分支
-            Map<String, Object> app17 = createApplicant("App17", "2021-01-01");
-            app17.put("Email", "run-error@example.com");
-            app17.put("BirthDate", java.sql.Date.valueOf("2021-01-01"));
-            p3.add(app17);
-
-            applicantsByPriority.put(1, p1);
-            applicantsByPriority.put(2, new ArrayList<>());
-            applicantsByPriority.put(3, p3);
-            when(waitlistJdbcRepository.getLotteryApplicantsByPriority(testInstitutionId)).thenReturn(applicantsByPriority);
-
-            // 讓 P1 錄取
-            when(waitlistJdbcRepository.findSuitableClass(eq(java.sql.Date.valueOf("2020-01-01").toLocalDate()), any())).thenReturn(testClassId);
-            when(waitlistJdbcRepository.findSuitableClass(eq(java.time.LocalDate.now()), any())).thenReturn(testClassId);
-            when(waitlistJdbcRepository.hasClassCapacity(testClassId)).thenReturn(true);
-
-            // 讓 P3 候補 (找不到班級)
-            when(waitlistJdbcRepository.findSuitableClass(eq(java.sql.Date.valueOf("2021-01-01").toLocalDate()), any())).thenReturn(null);
-
-            when(waitlistJdbcRepository.getClassInfo(testInstitutionId)).thenReturn(new ArrayList<>());
-
-            // Mock Email Exceptions - 錄取者的異常
-            doThrow(new RuntimeException("Accepted Send Error"))
-                    .when(emailService).sendApplicationStatusChangeEmail(
-                            eq("accepted-error@example.com"),
-                            any(), any(), any(), any(), any(), any(),
-                            eq(null), // 錄取者的 currentOrder 是 null
-                            any());
-
-            // Mock Email Exceptions - 候補者的異常
-            doThrow(new MessagingException("Mail Error"))
-                    .when(emailService).sendApplicationStatusChangeEmail(
-                            eq("msg-error@example.com"),
-                            any(), any(), any(), any(), any(), any(),
-                            any(Integer.class), // 候補者有 currentOrder
-                            any());
-
-            doThrow(new RuntimeException("Run Error"))
-                    .when(emailService).sendApplicationStatusChangeEmail(
-                            eq("run-error@example.com"),
-                            any(), any(), any(), any(), any(), any(),
-                            any(Integer.class), // 候補者有 currentOrder
-                            any());
-
-            mockMvc.perform(post("/waitlist/lottery")
-                            .contentType(MediaType.APPLICATION_JSON)
-                            .content(objectMapper.writeValueAsString(request)))
-                    .andExpect(status().isOk());
-
-            // 驗證正常的郵件發送被呼叫了
-            verify(emailService, atLeastOnce()).sendApplicationStatusChangeEmail(
-                    any(), any(), any(), any(), any(), any(), any(), any(), any());
-        }
+        void testConfirmAdmission_ExpiredOrMissing() throws Exception {
+                when(admissionHoldService.confirm(any(), any())).thenReturn(false);
 
-        // Willium1925修改:Helper method
-        private Map<String, Object> createApplicant(String name, String birthDate) {
-                Map<String, Object> applicant = new HashMap<>();
-                applicant.put("ApplicantName", name);
-                applicant.put("Email", "test@example.com");
-                if (birthDate != null) {
-                        applicant.put("BirthDate", java.sql.Date.valueOf(birthDate));
-                }
-                return applicant;
+                mockMvc.perform(post("/waitlist/admission/confirm")
+                                .param("applicationId", UUID.randomUUID().toString())
+                                .param("nationalId", "A123456789"))
+                                .andExpect(status().isNotFound())
+                                .andExpect(jsonPath("$.success", is(false)));
         }
 }
@@ -0,0 +1,137 @@
+package Group4.Childcare.repository;
+
+import Group4.Childcare.Repository.AdmissionHoldJdbcRepository;
+import Group4.Childcare.Repository.AdmissionHoldJdbcRepository.Hold;
+import Group4.Childcare.Repository.AdmissionHoldJdbcRepository.HoldKey;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * AdmissionHoldJdbcRepository 單元測試
+ *
+ * 測試覆蓋：
+ * 1. 確認錄取只刪除未到期的保留
+ * 2. 批次新增或更新保留
+ * 3. 到期處理：只撤銷仍為已錄取者，並依班級經由 ClassSeatLedger 扣回人數
+ * 4. 沒有保留被刪除時不更新申請人與班級
+ * 5. 空批次與超過批次上限
+ */
+@ExtendWith(MockitoExtension.class)
+class AdmissionHoldJdbcRepositoryTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private AdmissionHoldJdbcRepository repository;
+    private LocalDateTime now;
+
+    @BeforeEach
+    void setUp() {
+        repository = new AdmissionHoldJdbcRepository(jdbcTemplate);
+        now = LocalDateTime.of(2025, 9, 1, 12, 0);
+    }
+
+    private static Map<String, Object> row(UUID applicationId, String nationalId, UUID classId) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("ApplicationID", applicationId.toString().toUpperCase());
+        row.put("NationalID", nationalId);
+        row.put("ClassID", classId.toString().toUpperCase());
+        return row;
+    }
+
+    @Test
+    void testConfirmHold_OnlyUnexpired() {
+        UUID applicationId = UUID.randomUUID();
+        when(jdbcTemplate.update(contains("ExpiresAt > ?"), eq(applicationId.toString()), eq("A123456789"),
+                eq(Timestamp.valueOf(now)))).thenReturn(1);
+
+        assertTrue(repository.confirmHold(applicationId, "A123456789", now));
+    }
+
+    @Test
+    void testUpsertHolds_BatchesMerge() {
+        List<Hold> holds = List.of(
+                new Hold(UUID.randomUUID(), "A1", UUID.randomUUID(), now.plusHours(72)),
+                new Hold(UUID.randomUUID(), "A2", UUID.randomUUID(), now.plusHours(72)));
+
+        repository.upsertHolds(holds);
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Object[]>> captor = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(startsWith("MERGE admission_holds"), captor.capture());
+        assertEquals(2, captor.getValue().size());
+        assertEquals("A2", captor.getValue().get(1)[1]);
+        assertEquals(Timestamp.valueOf(now.plusHours(72)), captor.getValue().get(1)[3]);
+    }
+
+    @Test
+    void testExpireHolds_RevertsStillAdmittedAndReleasesSeats() {
+        UUID classId = UUID.randomUUID();
+        UUID admitted1 = UUID.randomUUID();
+        UUID admitted2 = UUID.randomUUID();
+        UUID revokedMeanwhile = UUID.randomUUID();
+        List<HoldKey> keys = List.of(new HoldKey(admitted1, "A1"), new HoldKey(admitted2, "A2"),
+                new HoldKey(revokedMeanwhile, "A3"));
+        when(jdbcTemplate.queryForList(startsWith("DELETE h"), any(Object[].class))).thenReturn(List.of(
+                row(admitted1, "A1", classId), row(admitted2, "A2", classId), row(revokedMeanwhile, "A3", classId)));
+        when(jdbcTemplate.queryForList(startsWith("UPDATE ap"), any(Object[].class))).thenReturn(List.of(
+                row(admitted1, "A1", classId), row(admitted2, "A2", classId)));
+
+        List<Hold> expired = repository.expireHolds(keys, now);
+
+        assertEquals(2, expired.size());
+        assertEquals(admitted1, expired.get(0).applicationId());
+        assertEquals(classId, expired.get(0).classId());
+        // 同一班級兩位一次釋出，經由 ClassSeatLedger 的條件式 UPDATE
+        verify(jdbcTemplate).queryForList(contains("CASE WHEN COALESCE(CurrentStudents, 0) > ?"), eq(2), eq(2),
+                eq(classId.toString()));
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), anyList());
+
+        ArgumentCaptor<Object[]> deleteArgs = ArgumentCaptor.forClass(Object[].class);
+        ArgumentCaptor<String> deleteSql = ArgumentCaptor.forClass(String.class);
+        verify(jdbcTemplate, times(3)).queryForList(deleteSql.capture(), deleteArgs.capture());
+        assertTrue(deleteSql.getAllValues().get(0).contains("(?, ?), (?, ?), (?, ?)"));
+        assertEquals(7, deleteArgs.getAllValues().get(0).length);
+        assertEquals(AdmissionHoldJdbcRepository.STATUS_EXPIRED, deleteArgs.getAllValues().get(1)[0]);
+    }
+
+    @Test
+    void testExpireHolds_NothingDeleted_NoUpdates() {
+        when(jdbcTemplate.queryForList(startsWith("DELETE h"), any(Object[].class))).thenReturn(new ArrayList<>());
+
+        List<Hold> expired = repository.expireHolds(List.of(new HoldKey(UUID.randomUUID(), "A1")), now);
+
+        assertTrue(expired.isEmpty());
+        verify(jdbcTemplate, times(1)).queryForList(anyString(), any(Object[].class));
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), anyList());
+    }
+
+    @Test
+    void testExpireHolds_EmptyAndOversizedBatch() {
+        assertTrue(repository.expireHolds(new ArrayList<>(), now).isEmpty());
+        verifyNoInteractions(jdbcTemplate);
+
+        List<HoldKey> oversized = new ArrayList<>();
+        for (int i = 0; i <= AdmissionHoldJdbcRepository.MAX_BATCH_SIZE; i++) {
+            oversized.add(new HoldKey(UUID.randomUUID(), "A" + i));
+        }
+        assertThrows(IllegalArgumentException.class, () -> repository.expireHolds(oversized, now));
+    }
+}
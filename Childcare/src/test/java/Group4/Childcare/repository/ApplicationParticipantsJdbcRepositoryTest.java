@@ -110,6 +110,45 @@ class ApplicationParticipantsJdbcRepositoryTest {
                 assertEquals(testParticipantId, result.getParticipantID());
         }
 
+        // ==================== batchInsert Tests ====================
+
+        @Test
+        void testBatchInsert_SingleBatchUpdate() {
+                // Given
+                ApplicationParticipants parent = createTestParticipant();
+                parent.setParticipantType(true);
+                parent.setParticipantID(testParticipantId);
+                ApplicationParticipants child = createTestParticipant();
+                child.setParticipantID(null);
+
+                // When
+                int inserted = participantsRepository.batchInsert(List.of(parent, child));
+
+                // Then
+                assertEquals(2, inserted);
+                assertNotNull(child.getParticipantID()); // ID should be generated
+                @SuppressWarnings("unchecked")
+                org.mockito.ArgumentCaptor<List<Object[]>> captor = org.mockito.ArgumentCaptor.forClass(List.class);
+                verify(jdbcTemplate, times(1)).batchUpdate(startsWith("INSERT INTO application_participants"),
+                                captor.capture());
+                List<Object[]> rows = captor.getValue();
+                assertEquals(2, rows.size());
+                assertEquals(20, rows.get(0).length);
+                assertEquals(testParticipantId.toString(), rows.get(0)[0]);
+                assertEquals(testApplicationId.toString(), rows.get(0)[1]);
+                assertEquals(true, rows.get(0)[2]);
+                assertEquals(child.getParticipantID().toString(), rows.get(1)[0]);
+                assertEquals(testClassId.toString(), rows.get(1)[18]);
+                verify(jdbcTemplate, never()).update(anyString(), any(Object[].class));
+        }
+
+        @Test
+        void testBatchInsert_EmptyList_NoQuery() {
+                assertEquals(0, participantsRepository.batchInsert(new ArrayList<>()));
+                assertEquals(0, participantsRepository.batchInsert(null));
+                verifyNoInteractions(jdbcTemplate);
+        }
+
         // ==================== findById Tests ====================
 
         @Test
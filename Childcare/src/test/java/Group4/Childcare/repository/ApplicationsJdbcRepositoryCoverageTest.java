@@ -544,10 +544,10 @@ class ApplicationsJdbcRepositoryCoverageTest {
                                 eq(applicationId.toString())))
                                 .thenReturn(institutionId.toString());
 
-                // Mock getting Max Order (e.g., max is 5, so new should be 6)
-                when(jdbcTemplate.queryForObject(contains("SELECT MAX(ap.CurrentOrder)"), eq(Integer.class),
+                // Mock rank key sequence (next key is 6)
+                when(jdbcTemplate.queryForList(contains("waitlist_rank_sequences"), eq(Integer.class), anyInt(),
                                 eq(institutionId.toString())))
-                                .thenReturn(5);
+                                .thenReturn(List.of(6));
 
                 when(jdbcTemplate.update(anyString(), any(), any(), any(), any(), any(), any())).thenReturn(1);
 
@@ -592,9 +592,9 @@ class ApplicationsJdbcRepositoryCoverageTest {
                                 eq(newStatus), eq(reason), any(), isNull(), eq(applicationId.toString()),
                                 eq(nationalID));
 
-                // Verify reordering of others (Decrement orders > 3)
-                verify(jdbcTemplate).update(contains("SET CurrentOrder = CurrentOrder - 1"),
-                                eq(3), eq(institutionId.toString()));
+                // Others are not renumbered (positions are derived from rank keys)
+                verify(jdbcTemplate, never()).update(contains("SET CurrentOrder = CurrentOrder - 1"),
+                                any(), any());
         }
 
         @Test
@@ -651,10 +651,10 @@ class ApplicationsJdbcRepositoryCoverageTest {
                 when(jdbcTemplate.queryForObject(contains("SELECT InstitutionID"), eq(String.class),
                                 eq(applicationId.toString())))
                                 .thenReturn(institutionId.toString());
-                // Mock getting Max Order
-                when(jdbcTemplate.queryForObject(contains("SELECT MAX(ap.CurrentOrder)"), eq(Integer.class),
+                // Mock rank key sequence
+                when(jdbcTemplate.queryForList(contains("waitlist_rank_sequences"), eq(Integer.class), anyInt(),
                                 eq(institutionId.toString())))
-                                .thenReturn(10);
+                                .thenReturn(List.of(11));
 
                 // Mock successful update (return 1 to skip insert path)
                 when(jdbcTemplate.update(contains("UPDATE application_participants"), any(), any(), any(), any(), any(),
@@ -75,9 +75,9 @@ public class ApplicationsJdbcRepositoryExhaustiveTest {
                 // Mock InstitutionID
                 when(jdbcTemplate.queryForObject(contains("SELECT InstitutionID"), eq(String.class), anyString()))
                                 .thenReturn(instId.toString());
-                // Mock MaxOrder null
-                when(jdbcTemplate.queryForObject(contains("SELECT MAX(ap.CurrentOrder)"), eq(Integer.class),
-                                (Object) any())).thenReturn(null);
+                // Mock rank key sequence not available
+                when(jdbcTemplate.queryForList(contains("waitlist_rank_sequences"), eq(Integer.class), (Object) any(),
+                                (Object) any())).thenReturn(Collections.emptyList());
                 repository.updateParticipantStatusReason(appId, nationalID, "候補中", "reason", null);
         }
 
@@ -101,7 +101,6 @@ public class ApplicationsJdbcRepositoryExhaustiveTest {
                                 .thenReturn(Collections.singletonList(row));
                 when(jdbcTemplate.queryForObject(contains("SELECT InstitutionID"), eq(String.class), anyString()))
                                 .thenReturn(instId.toString());
-                when(jdbcTemplate.update(contains("CurrentOrder - 1"), anyInt(), anyString())).thenReturn(1);
                 when(jdbcTemplate.update(eq("UPDATE application_participants SET Status = ?, Reason = ?, ReviewDate = ?, CurrentOrder = ? WHERE ApplicationID = ? AND NationalID = ? AND ParticipantType = 0"),
                                 any(), any(), any(), any(), any(), any())).thenReturn(1);
                 repository.updateParticipantStatusReason(appId, nationalID, "已錄取", "reason", null);
@@ -301,14 +300,15 @@ public class ApplicationsJdbcRepositoryExhaustiveTest {
                 p4.birthDate = "invalid-date"; // Exception
                 p4.suspendEnd = "2025-01-01";
                 p4.classID = "invalid-uuid"; // Exception
+                p4.status = "候補中";
                 p4.currentOrder = null; // trigger waitlist logic
                 dto.children = Collections.singletonList(p4);
 
                 // Mock for waitlist logic
                 when(jdbcTemplate.queryForObject(contains("SELECT InstitutionID"), eq(String.class), anyString()))
                                 .thenReturn(instId.toString());
-                when(jdbcTemplate.queryForObject(contains("SELECT MAX(ap.CurrentOrder)"), eq(Integer.class),
-                                anyString())).thenReturn(5);
+                when(jdbcTemplate.queryForList(contains("waitlist_rank_sequences"), eq(Integer.class), anyInt(),
+                                anyString())).thenReturn(List.of(5));
 
                 // Mock update fails (trigger insert)
                 when(jdbcTemplate.update(startsWith("UPDATE application_participants"), (Object[]) any()))
@@ -6,6 +6,7 @@ import Group4.Childcare.DTO.CaseEditUpdateDTO;
 import Group4.Childcare.DTO.CaseOffsetListDTO;
 import Group4.Childcare.Model.Applications;
 import Group4.Childcare.Repository.ApplicationsJdbcRepository;
+import Group4.Childcare.Repository.WaitlistRankKeys;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -141,10 +142,10 @@ public class ApplicationsJdbcRepositoryExpandedTest {
                                 eq(appId.toString())))
                                 .thenReturn(instId.toString());
 
-                // Mock max order = 10, so new order should be 11
-                when(jdbcTemplate.queryForObject(contains("SELECT MAX(ap.CurrentOrder)"), eq(Integer.class),
+                // Mock rank key sequence, next key is 11
+                when(jdbcTemplate.queryForList(contains("waitlist_rank_sequences"), eq(Integer.class), anyInt(),
                                 eq(instId.toString())))
-                                .thenReturn(10);
+                                .thenReturn(List.of(11));
 
                 // When
                 repository.updateParticipantStatusReason(appId, nationalId, "候補中", "Test Reason", now);
@@ -166,12 +167,11 @@ public class ApplicationsJdbcRepositoryExpandedTest {
                 // When
                 repository.updateParticipantStatusReason(appId, nationalId, "已錄取", "Accepted", now);
 
-                // Then: Current entry order becomes null, and others are decremented
+                // Then: Current entry order becomes null, others are not renumbered
                 verify(jdbcTemplate).update(contains("UPDATE application_participants SET Status = ?"),
                                 eq("已錄取"), any(), any(), isNull(), eq(appId.toString()), eq(nationalId));
 
-                verify(jdbcTemplate).update(contains("SET CurrentOrder = CurrentOrder - 1"), eq(5),
-                                eq(instId.toString()));
+                verify(jdbcTemplate, never()).update(contains("SET CurrentOrder = CurrentOrder - 1"), any(), any());
         }
 
         @Test
@@ -206,15 +206,16 @@ public class ApplicationsJdbcRepositoryExpandedTest {
                 ApplicationParticipantDTO child = new ApplicationParticipantDTO();
                 child.nationalID = "C999";
                 child.participantType = "幼兒";
+                child.status = "候補中";
                 child.currentOrder = null;
                 dto.children = Collections.singletonList(child);
 
                 when(jdbcTemplate.queryForObject(contains("SELECT InstitutionID"), eq(String.class),
                                 eq(appId.toString())))
                                 .thenReturn(instId.toString());
-                when(jdbcTemplate.queryForObject(contains("SELECT MAX(ap.CurrentOrder)"), eq(Integer.class),
+                when(jdbcTemplate.queryForList(contains("waitlist_rank_sequences"), eq(Integer.class), anyInt(),
                                 eq(instId.toString())))
-                                .thenReturn(null); // No existing orders, so 1
+                                .thenReturn(List.of(WaitlistRankKeys.RANK_STEP)); // First key of the institution
 
                 // Mock update fails, trigger insert
                 when(jdbcTemplate.update(startsWith("UPDATE application_participants"), (Object[]) any(Object[].class)))
@@ -223,10 +224,68 @@ public class ApplicationsJdbcRepositoryExpandedTest {
                 // When
                 repository.updateApplicationCase(appId, dto);
 
-                // Then: Order 1 is assigned
+                // Then: First rank key is assigned
                 verify(jdbcTemplate).update(contains("INSERT INTO application_participants"),
                                 any(), any(), any(), any(), any(), any(), any(), any(), any(), any(), any(), any(),
-                                any(), any(), eq(1), any(), any(), any(), any());
+                                any(), any(), eq(WaitlistRankKeys.RANK_STEP), any(), any(), any(), any());
+        }
+
+        @Test
+        void testUpdateApplicationCase_NotWaitlisted_NoRankKeyAndClearsOrder() {
+                ApplicationCaseDTO dto = new ApplicationCaseDTO();
+                ApplicationParticipantDTO child = new ApplicationParticipantDTO();
+                child.nationalID = "C998";
+                child.participantType = "幼兒";
+                child.status = "已錄取";
+                child.currentOrder = null;
+                dto.children = Collections.singletonList(child);
+
+                when(jdbcTemplate.update(startsWith("UPDATE application_participants"), (Object[]) any(Object[].class)))
+                                .thenReturn(1);
+
+                // When
+                repository.updateApplicationCase(appId, dto);
+
+                // Then: 非候補中不配置排序鍵，CurrentOrder 直接寫入 null（不再 COALESCE 保留舊值）
+                verify(jdbcTemplate, never()).queryForObject(contains("SELECT InstitutionID"), eq(String.class),
+                                any(Object[].class));
+                verify(jdbcTemplate).update(startsWith("UPDATE application_participants SET ParticipantType"),
+                                any(), any(), any(), any(), any(), any(), any(), any(), any(), any(), any(), any(),
+                                isNull(), eq("已錄取"), any(), any(), any(), any(), any());
+        }
+
+        @Test
+        void testUpdateApplicationCase_AdminMovesWaitlistPosition() {
+                ApplicationCaseDTO dto = new ApplicationCaseDTO();
+                ApplicationParticipantDTO child = new ApplicationParticipantDTO();
+                child.nationalID = "C997";
+                child.participantType = "幼兒";
+                child.status = "候補中";
+                child.currentOrder = 2; // 原本第 3 名，調整為第 2 名
+                dto.children = Collections.singletonList(child);
+
+                Map<String, Object> current = new HashMap<>();
+                current.put("RankKey", 3 * WaitlistRankKeys.RANK_STEP);
+                current.put("WaitlistPosition", 3L);
+                when(jdbcTemplate.queryForList(contains("AS RankKey"), eq(appId.toString()), eq("C997")))
+                                .thenReturn(List.of(current));
+                when(jdbcTemplate.queryForObject(contains("SELECT InstitutionID"), eq(String.class),
+                                eq(appId.toString())))
+                                .thenReturn(instId.toString());
+                when(jdbcTemplate.queryForList(contains("OFFSET ? ROWS"), eq(Integer.class), eq(instId.toString()),
+                                eq(appId.toString()), eq("C997"), eq(0)))
+                                .thenReturn(List.of(WaitlistRankKeys.RANK_STEP, 2 * WaitlistRankKeys.RANK_STEP));
+                when(jdbcTemplate.update(startsWith("UPDATE application_participants"), (Object[]) any(Object[].class)))
+                                .thenReturn(1);
+
+                // When
+                repository.updateApplicationCase(appId, dto);
+
+                // Then: 排序鍵落在第 1、2 名之間
+                int expectedKey = WaitlistRankKeys.RANK_STEP + WaitlistRankKeys.RANK_STEP / 2;
+                verify(jdbcTemplate).update(startsWith("UPDATE application_participants SET ParticipantType"),
+                                any(), any(), any(), any(), any(), any(), any(), any(), any(), any(), any(), any(),
+                                eq(expectedKey), eq("候補中"), any(), any(), any(), any(), any());
         }
 
         // ===========================================================================================
@@ -593,6 +652,39 @@ public class ApplicationsJdbcRepositoryExpandedTest {
                                 eq("撤銷申請審核中"), eq("已錄取"));
         }
 
+        @Test
+        @SuppressWarnings("unchecked")
+        void testCountChildApplications_SingleGroupedQuery() throws SQLException {
+                ArgumentCaptor<String> sqlCaptor = ArgumentCaptor.forClass(String.class);
+                ArgumentCaptor<RowMapper<ApplicationsJdbcRepository.ChildApplicationCounts>> mapperCaptor =
+                                ArgumentCaptor.forClass(RowMapper.class);
+                ArgumentCaptor<Object[]> argsCaptor = ArgumentCaptor.forClass(Object[].class);
+                when(jdbcTemplate.query(anyString(), any(RowMapper.class), any(Object[].class)))
+                                .thenReturn(new ArrayList<>());
+
+                repository.countChildApplications(List.of("C1", "C2"), instId);
+
+                verify(jdbcTemplate, times(1)).query(sqlCaptor.capture(), mapperCaptor.capture(), argsCaptor.capture());
+                assertTrue(sqlCaptor.getValue().contains("FROM (VALUES (?), (?)) AS n(NationalID)"));
+                assertTrue(sqlCaptor.getValue().contains("GROUP BY n.NationalID"));
+                assertArrayEquals(new Object[]{instId.toString(), "C1", "C2"}, argsCaptor.getValue());
+
+                ResultSet rs = mock(ResultSet.class);
+                when(rs.getString("NationalID")).thenReturn("C1");
+                when(rs.getInt("AcceptedCount")).thenReturn(1);
+                when(rs.getInt("PendingCount")).thenReturn(2);
+                when(rs.getInt("SameInstitutionCount")).thenReturn(3);
+                ApplicationsJdbcRepository.ChildApplicationCounts counts = mapperCaptor.getValue().mapRow(rs, 0);
+                assertEquals(new ApplicationsJdbcRepository.ChildApplicationCounts("C1", 1, 2, 3), counts);
+        }
+
+        @Test
+        void testCountChildApplications_EmptyList_NoQuery() {
+                assertTrue(repository.countChildApplications(new ArrayList<>(), instId).isEmpty());
+                assertTrue(repository.countChildApplications(null, instId).isEmpty());
+                verifyNoInteractions(jdbcTemplate);
+        }
+
         @Test
         void testCountCaseNumberWithDateFormat_NullResult() {
                 // Test when queryForObject returns null
@@ -617,6 +709,22 @@ public class ApplicationsJdbcRepositoryExpandedTest {
                                 eq("path3"), eq(appId.toString()));
         }
 
+        @SuppressWarnings("unchecked")
+        @Test
+        void testReplaceAttachmentPath_ReturnsPreviousPath() {
+                when(jdbcTemplate.query(contains("OUTPUT deleted.AttachmentPath2"), any(RowMapper.class),
+                                eq("new"), eq(appId.toString())))
+                                .thenReturn(List.of("old"))
+                                .thenReturn(Collections.singletonList(null))
+                                .thenReturn(new ArrayList<>());
+
+                assertEquals(Optional.of("old"), repository.replaceAttachmentPath(appId, 2, "new"));
+                assertEquals(Optional.empty(), repository.replaceAttachmentPath(appId, 2, "new"));
+                // 案件不存在
+                assertNull(repository.replaceAttachmentPath(appId, 2, "new"));
+                assertThrows(IllegalArgumentException.class, () -> repository.replaceAttachmentPath(appId, 4, "new"));
+        }
+
         @Test
         void testUpdateAttachmentPaths_NullApplicationId() {
                 // Test with null applicationId - tests the ternary operator
@@ -142,17 +142,18 @@ class ApplicationsJdbcRepositoryExtraTest {
         when(jdbcTemplate.queryForObject(contains("SELECT InstitutionID"), eq(String.class), eq(appId.toString())))
                 .thenReturn(UUID.randomUUID().toString());
 
-        // Mock finding max order
-        when(jdbcTemplate.queryForObject(contains("SELECT MAX"), eq(Integer.class), anyString()))
-                .thenReturn(10);
+        // Mock rank key sequence
+        when(jdbcTemplate.queryForList(contains("waitlist_rank_sequences"), eq(Integer.class), anyInt(), anyString()))
+                .thenReturn(List.of(11));
 
         // Mock updates
         when(jdbcTemplate.update(anyString(), any(), any(), any(), any(), any())).thenReturn(1);
 
         repository.updateParticipantStatusReason(appId, "N123", "候補中", "reason", LocalDateTime.now());
 
-        // Verify that max order was queried (meaning new order logic was triggered)
-        verify(jdbcTemplate).queryForObject(contains("SELECT MAX"), eq(Integer.class), anyString());
+        // Verify that a rank key was allocated (meaning new order logic was triggered)
+        verify(jdbcTemplate).queryForList(contains("waitlist_rank_sequences"), eq(Integer.class), anyInt(), anyString());
+        verify(jdbcTemplate, never()).queryForObject(contains("SELECT MAX"), eq(Integer.class), anyString());
     }
 
     @Test
@@ -165,16 +166,6 @@ class ApplicationsJdbcRepositoryExtraTest {
         when(jdbcTemplate.queryForList(anyString(), eq(appId.toString()), anyString()))
                 .thenReturn(Collections.singletonList(currentInfo));
 
-        // Mock finding institution ID
-        when(jdbcTemplate.queryForObject(contains("SELECT InstitutionID"), eq(String.class), eq(appId.toString())))
-                .thenReturn(UUID.randomUUID().toString());
-
-        // Mock updates (update others)
-        // Note: update(sql, args...) -> args is varargs.
-        // Actual call has 2 args: oldCurrentOrder, institutionID
-        when(jdbcTemplate.update(contains("UPDATE application_participants SET CurrentOrder"), eq(5), anyString()))
-                .thenReturn(1);
-
         // Main update
         // Actual call has 6 args: status, reason, reviewDate, currentOrder, appID,
         // nationalID
@@ -183,7 +174,7 @@ class ApplicationsJdbcRepositoryExtraTest {
 
         repository.updateParticipantStatusReason(appId, "N123", "已錄取", "reason", LocalDateTime.now());
 
-        // Verify reordering update was called
-        verify(jdbcTemplate).update(contains("UPDATE application_participants SET CurrentOrder"), eq(5), anyString());
+        // Others are not renumbered (positions are derived from rank keys)
+        verify(jdbcTemplate, never()).update(contains("UPDATE application_participants SET CurrentOrder"), any(), any());
     }
 }
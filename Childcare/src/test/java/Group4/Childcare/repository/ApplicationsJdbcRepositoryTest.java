@@ -95,6 +95,23 @@ class ApplicationsJdbcRepositoryTest {
                                 any(), any(), any());
         }
 
+        // ===== 測試 insertApplication (送件流程，單一 INSERT) =====
+        @Test
+        void testInsertApplication_SingleInsertWithoutVerify() {
+                testApplication.setAttachmentPath(testApplicationId + "/a_0.pdf");
+                testApplication.setAttachmentPath3(testApplicationId + "/a_3.pdf");
+
+                Applications result = repository.insertApplication(testApplication);
+
+                assertSame(testApplication, result);
+                verify(jdbcTemplate, times(1)).update(startsWith("INSERT INTO applications"),
+                                eq(testApplicationId.toString()), any(), eq(202412140001L),
+                                eq(testInstitutionId.toString()), eq(testUserId.toString()), eq((byte) 1),
+                                eq(testApplicationId + "/a_0.pdf"), isNull(), isNull(), eq(testApplicationId + "/a_3.pdf"));
+                // 不做存在檢查與寫入後驗證查詢
+                verify(jdbcTemplate, never()).queryForObject(anyString(), eq(Integer.class), any(Object[].class));
+        }
+
         // ===== 測試 getUserEmailByApplicationId (查詢使用者郵箱) =====
         @Test
         void testGetUserEmailByApplicationId_Success() {
@@ -147,9 +164,9 @@ class ApplicationsJdbcRepositoryTest {
                 when(jdbcTemplate.queryForObject(contains("SELECT InstitutionID"), eq(String.class), anyString()))
                                 .thenReturn(testInstitutionId.toString());
 
-                // Mock 查詢最大 CurrentOrder
-                when(jdbcTemplate.queryForObject(contains("SELECT MAX"), eq(Integer.class), anyString()))
-                                .thenReturn(5);
+                // Mock 候補排序鍵序列
+                when(jdbcTemplate.queryForList(contains("waitlist_rank_sequences"), eq(Integer.class), anyInt(), anyString()))
+                                .thenReturn(List.of(6));
 
                 // Mock 更新操作
                 when(jdbcTemplate.update(contains("UPDATE application_participants SET Status"),
@@ -163,7 +180,9 @@ class ApplicationsJdbcRepositoryTest {
                 verify(jdbcTemplate, times(1)).queryForList(anyString(), anyString(), anyString());
                 verify(jdbcTemplate, times(1)).queryForObject(contains("SELECT InstitutionID"), eq(String.class),
                                 anyString());
-                verify(jdbcTemplate, times(1)).queryForObject(contains("SELECT MAX"), eq(Integer.class), anyString());
+                verify(jdbcTemplate, times(1)).queryForList(contains("waitlist_rank_sequences"), eq(Integer.class),
+                                anyInt(), anyString());
+                verify(jdbcTemplate, never()).queryForObject(contains("SELECT MAX"), eq(Integer.class), anyString());
                 verify(jdbcTemplate, times(1)).update(contains("UPDATE application_participants SET Status"),
                                 anyString(), anyString(), any(), eq(6), anyString(), anyString());
         }
@@ -188,10 +207,6 @@ class ApplicationsJdbcRepositoryTest {
                 when(jdbcTemplate.queryForObject(contains("SELECT InstitutionID"), eq(String.class), anyString()))
                                 .thenReturn(testInstitutionId.toString());
 
-                // Mock 遞補更新
-                when(jdbcTemplate.update(anyString(), anyInt(), anyString()))
-                                .thenReturn(3);
-
                 // Mock 最終狀態更新
                 when(jdbcTemplate.update(anyString(), anyString(), anyString(), any(), any(), anyString(), anyString()))
                                 .thenReturn(1);
@@ -201,10 +216,8 @@ class ApplicationsJdbcRepositoryTest {
 
                 // Then
                 verify(jdbcTemplate, times(1)).queryForList(anyString(), anyString(), anyString());
-                verify(jdbcTemplate, times(1)).queryForObject(contains("SELECT InstitutionID"), eq(String.class),
-                                anyString());
-                verify(jdbcTemplate, times(1)).update(contains("SET CurrentOrder = CurrentOrder - 1"), anyInt(),
-                                anyString());
+                // 後面的候補名次由排序鍵推導，不再逐筆遞補
+                verify(jdbcTemplate, never()).update(contains("SET CurrentOrder = CurrentOrder - 1"), any(), any());
                 verify(jdbcTemplate, times(1)).update(contains("UPDATE application_participants SET Status"),
                                 anyString(), anyString(), any(), isNull(), anyString(), anyString());
         }
@@ -513,9 +526,9 @@ class ApplicationsJdbcRepositoryTest {
 
                 when(jdbcTemplate.queryForObject(contains("SELECT InstitutionID"), eq(String.class), anyString()))
                                 .thenReturn(testInstitutionId.toString());
-                when(jdbcTemplate.queryForObject(contains("SELECT MAX(ap.CurrentOrder)"), eq(Integer.class),
+                when(jdbcTemplate.queryForList(contains("waitlist_rank_sequences"), eq(Integer.class), anyInt(),
                                 anyString()))
-                                .thenReturn(10);
+                                .thenReturn(List.of(11));
 
                 when(jdbcTemplate.update(anyString(),
                                 any(), any(), any(), any(), any(), any(), any(), any(), any(), any(),
@@ -526,8 +539,8 @@ class ApplicationsJdbcRepositoryTest {
                 repository.updateApplicationCase(appId, dto);
 
                 // Then
-                // Verify that max order + 1 (11) was used in update/insert
-                verify(jdbcTemplate).queryForObject(contains("SELECT MAX(ap.CurrentOrder)"), eq(Integer.class),
+                // Verify that the institution's rank key sequence was used
+                verify(jdbcTemplate).queryForList(contains("waitlist_rank_sequences"), eq(Integer.class), anyInt(),
                                 eq(testInstitutionId.toString()));
         }
 
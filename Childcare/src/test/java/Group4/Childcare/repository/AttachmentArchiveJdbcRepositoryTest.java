@@ -0,0 +1,95 @@
+package Group4.Childcare.repository;
+
+import Group4.Childcare.Repository.AttachmentArchiveJdbcRepository;
+import Group4.Childcare.Repository.AttachmentArchiveJdbcRepository.ArchivedAttachment;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * AttachmentArchiveJdbcRepository 單元測試
+ *
+ * 測試覆蓋：
+ * 1. findCandidates 傳入筆數上限、結案期限與錄取年度
+ * 2. insertAll 批次寫入封存位置；沒有附件時不寫入
+ * 3. find 沒有記錄時為空
+ * 4. markCaseArchived 以 MERGE 標記案件
+ */
+@ExtendWith(MockitoExtension.class)
+class AttachmentArchiveJdbcRepositoryTest {
+
+    private static final UUID APPLICATION_ID = UUID.fromString("11111111-2222-3333-4444-555555555555");
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private AttachmentArchiveJdbcRepository repository;
+    private LocalDateTime now;
+
+    @BeforeEach
+    void setUp() {
+        repository = new AttachmentArchiveJdbcRepository(jdbcTemplate);
+        now = LocalDateTime.of(2025, 9, 1, 4, 0);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testFindCandidates() {
+        LocalDateTime closedBefore = now.minusDays(365);
+        when(jdbcTemplate.query(contains("FROM applications a"), any(RowMapper.class),
+                eq(200), eq(Timestamp.valueOf(closedBefore)), eq(Date.valueOf(LocalDate.of(2025, 1, 1)))))
+                .thenReturn(List.of());
+
+        assertTrue(repository.findCandidates(closedBefore, LocalDate.of(2025, 1, 1), 200).isEmpty());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testInsertAll() {
+        LocalDateTime modified = now.minusYears(1);
+        repository.insertAll(APPLICATION_ID, List.of(
+                new ArchivedAttachment(APPLICATION_ID + "/1_a.pdf", "2024-03.pack", 0L, 10L, modified, "aa"),
+                new ArchivedAttachment(APPLICATION_ID + "/2_b.pdf", "2024-03.pack", 10L, 20L, modified, "bb")), now);
+
+        verify(jdbcTemplate).batchUpdate(contains("INSERT INTO attachment_archive_entries"),
+                argThat((List<Object[]> rows) -> rows.size() == 2
+                        && APPLICATION_ID.toString().equals(rows.get(1)[1])
+                        && Long.valueOf(10L).equals(rows.get(1)[3])
+                        && Timestamp.valueOf(now).equals(rows.get(1)[7])));
+
+        repository.insertAll(APPLICATION_ID, List.of(), now);
+        verify(jdbcTemplate, times(1)).batchUpdate(anyString(), anyList());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testFind_NotArchived() {
+        when(jdbcTemplate.query(contains("WHERE AttachmentPath = ?"), any(RowMapper.class), eq("x/1_a.pdf")))
+                .thenReturn(List.of());
+
+        assertTrue(repository.find("x/1_a.pdf").isEmpty());
+    }
+
+    @Test
+    void testMarkCaseArchived() {
+        repository.markCaseArchived(APPLICATION_ID, now);
+
+        verify(jdbcTemplate).update(contains("MERGE attachment_archived_cases"),
+                eq(APPLICATION_ID.toString()), eq(Timestamp.valueOf(now)));
+    }
+}
@@ -0,0 +1,110 @@
+package Group4.Childcare.repository;
+
+import Group4.Childcare.Repository.AttachmentBlobJdbcRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * AttachmentBlobJdbcRepository 單元測試
+ *
+ * 測試覆蓋：
+ * 1. 新增參照：先寫入參照再遞增（或新增）內容的 RefCount
+ * 2. 移除單一參照時遞減；沒有參照的舊附件不遞減
+ * 3. 移除整個資料夾的參照時依內容合併遞減，且 LIKE 特殊字元會跳脫
+ * 4. 回收只刪除 RefCount 仍為 0 的內容
+ */
+@ExtendWith(MockitoExtension.class)
+class AttachmentBlobJdbcRepositoryTest {
+
+    private static final String SHA_A = "a".repeat(64);
+    private static final String SHA_B = "b".repeat(64);
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private AttachmentBlobJdbcRepository repository;
+    private LocalDateTime now;
+
+    @BeforeEach
+    void setUp() {
+        repository = new AttachmentBlobJdbcRepository(jdbcTemplate);
+        now = LocalDateTime.of(2025, 9, 1, 9, 0);
+    }
+
+    @Test
+    void testAddReference() {
+        repository.addReference("app/1_a.pdf", SHA_A, 5000L, now);
+
+        InOrder inOrder = inOrder(jdbcTemplate);
+        inOrder.verify(jdbcTemplate).update(contains("INSERT INTO attachment_blob_refs"), eq("app/1_a.pdf"), eq(SHA_A));
+        inOrder.verify(jdbcTemplate).update(contains("MERGE attachment_blobs"), eq(SHA_A),
+                eq(Timestamp.valueOf(now)), eq(5000L), eq(Timestamp.valueOf(now)));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testRemoveReference() {
+        when(jdbcTemplate.query(contains("OUTPUT deleted.Sha256 WHERE AttachmentPath = ?"), any(RowMapper.class),
+                eq("app/1_a.pdf"))).thenReturn(List.of(SHA_A));
+        when(jdbcTemplate.query(contains("OUTPUT deleted.Sha256 WHERE AttachmentPath = ?"), any(RowMapper.class),
+                eq("app/legacy.pdf"))).thenReturn(new ArrayList<>());
+
+        assertEquals(SHA_A, repository.removeReference("app/1_a.pdf", now).orElseThrow());
+        assertTrue(repository.removeReference("app/legacy.pdf", now).isEmpty());
+
+        verify(jdbcTemplate, times(1)).update(contains("UPDATE attachment_blobs SET RefCount"), eq(1), eq(1),
+                eq(Timestamp.valueOf(now)), eq(SHA_A));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testRemoveReferencesUnder_GroupsBySha256() {
+        when(jdbcTemplate.query(contains("AttachmentPath LIKE ?"), any(RowMapper.class), eq("app[_]1/%")))
+                .thenReturn(List.of(SHA_A, SHA_B, SHA_A));
+
+        assertEquals(3, repository.removeReferencesUnder("app_1/", now));
+
+        verify(jdbcTemplate).update(contains("UPDATE attachment_blobs SET RefCount"), eq(2), eq(2),
+                eq(Timestamp.valueOf(now)), eq(SHA_A));
+        verify(jdbcTemplate).update(contains("UPDATE attachment_blobs SET RefCount"), eq(1), eq(1),
+                eq(Timestamp.valueOf(now)), eq(SHA_B));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testFindUnreferencedAndDelete() {
+        when(jdbcTemplate.query(contains("RefCount = 0 AND UpdatedAt < ?"), any(RowMapper.class), eq(200),
+                eq(Timestamp.valueOf(now)))).thenReturn(List.of(SHA_A));
+        when(jdbcTemplate.update(contains("DELETE FROM attachment_blobs"), eq(SHA_A))).thenReturn(1).thenReturn(0);
+
+        assertEquals(List.of(SHA_A), repository.findUnreferenced(now, 200));
+        assertTrue(repository.deleteIfUnreferenced(SHA_A));
+        assertFalse(repository.deleteIfUnreferenced(SHA_A));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testFindKnown() {
+        when(jdbcTemplate.query(contains("IN (?, ?)"), any(RowMapper.class), any(Object[].class)))
+                .thenReturn(List.of(SHA_B));
+
+        assertEquals(List.of(SHA_B), repository.findKnown(List.of(SHA_A, SHA_B)));
+        assertTrue(repository.findKnown(List.of()).isEmpty());
+        verify(jdbcTemplate, times(1)).query(anyString(), any(RowMapper.class), any(Object[].class));
+    }
+}
@@ -0,0 +1,146 @@
+package Group4.Childcare.repository;
+
+import Group4.Childcare.Repository.AttachmentUploadJdbcRepository;
+import Group4.Childcare.Repository.AttachmentUploadJdbcRepository.Upload;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * AttachmentUploadJdbcRepository 單元測試
+ *
+ * 測試覆蓋：
+ * 1. 建立上傳時區段為空、已收到 0 bytes
+ * 2. 查詢的欄位對應；不存在時回傳 empty
+ * 3. 更新進度與延長期限，以讀到的區段為條件
+ * 4. 取得一批過期的上傳
+ * 5. 區段寫入登記與完成租約的條件
+ */
+@ExtendWith(MockitoExtension.class)
+class AttachmentUploadJdbcRepositoryTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private AttachmentUploadJdbcRepository repository;
+    private UUID uploadId;
+    private UUID applicationId;
+    private LocalDateTime now;
+
+    @BeforeEach
+    void setUp() {
+        repository = new AttachmentUploadJdbcRepository(jdbcTemplate);
+        uploadId = UUID.randomUUID();
+        applicationId = UUID.randomUUID();
+        now = LocalDateTime.of(2025, 9, 1, 9, 0);
+    }
+
+    @Test
+    void testInsert() {
+        repository.insert(uploadId, applicationId, 1, "a.pdf", "application/pdf", 5000L, null, now);
+
+        verify(jdbcTemplate).update(contains("INSERT INTO attachment_uploads"), eq(uploadId.toString()),
+                eq(applicationId.toString()), eq(1), eq("a.pdf"), eq("application/pdf"), eq(5000L), isNull(),
+                eq(Timestamp.valueOf(now)));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testFindById_MapsRow() throws Exception {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getString("UploadID")).thenReturn(uploadId.toString().toUpperCase());
+        when(rs.getString("ApplicationID")).thenReturn(applicationId.toString());
+        when(rs.getInt("Slot")).thenReturn(2);
+        when(rs.getString("FileName")).thenReturn("a.pdf");
+        when(rs.getString("ContentType")).thenReturn("application/pdf");
+        when(rs.getLong("TotalBytes")).thenReturn(5000L);
+        when(rs.getString("ReceivedRanges")).thenReturn("0-1000");
+        when(rs.getLong("ReceivedBytes")).thenReturn(1000L);
+        when(rs.getString("Sha256")).thenReturn(null);
+        when(rs.getTimestamp("ExpiresAt")).thenReturn(Timestamp.valueOf(now));
+        when(jdbcTemplate.query(contains("FROM attachment_uploads"), any(RowMapper.class), eq(uploadId.toString())))
+                .thenAnswer(inv -> {
+                    RowMapper<Upload> mapper = inv.getArgument(1);
+                    return List.of(mapper.mapRow(rs, 0));
+                });
+
+        Upload upload = repository.findById(uploadId).orElseThrow();
+
+        assertEquals(uploadId, upload.uploadId());
+        assertEquals(applicationId, upload.applicationId());
+        assertEquals(2, upload.slot());
+        assertEquals(5000L, upload.totalBytes());
+        assertEquals("0-1000", upload.receivedRanges());
+        assertEquals(1000L, upload.receivedBytes());
+        assertNull(upload.sha256());
+        assertEquals(now, upload.expiresAt());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testFindById_Missing() {
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class), eq(uploadId.toString()))).thenReturn(new ArrayList<>());
+
+        assertTrue(repository.findById(uploadId).isEmpty());
+    }
+
+    @Test
+    void testUpdateProgress() {
+        when(jdbcTemplate.update(contains("SET ReceivedRanges"), any(Object[].class))).thenReturn(1).thenReturn(0);
+
+        assertTrue(repository.updateProgress(uploadId, "0-1000", "0-2000", 2000L, now));
+        assertFalse(repository.updateProgress(uploadId, "0-1000", "0-2000", 2000L, now));
+        verify(jdbcTemplate, times(2)).update(contains("AND ReceivedRanges = ?"), eq("0-2000"), eq(2000L),
+                eq(Timestamp.valueOf(now)), eq(uploadId.toString()), eq("0-1000"));
+    }
+
+    @Test
+    void testBeginWrite_RejectedWhileCompleting() {
+        LocalDateTime leaseUntil = now.plusMinutes(30);
+        when(jdbcTemplate.update(contains("ActiveWriters + 1"), any(Object[].class))).thenReturn(1).thenReturn(0);
+
+        assertTrue(repository.beginWrite(uploadId, now, leaseUntil));
+        assertFalse(repository.beginWrite(uploadId, now, leaseUntil));
+        verify(jdbcTemplate, times(2)).update(contains("CompletingUntil IS NULL OR CompletingUntil < ?"),
+                eq(Timestamp.valueOf(now)), eq(Timestamp.valueOf(leaseUntil)), eq(uploadId.toString()),
+                eq(Timestamp.valueOf(now)));
+    }
+
+    @Test
+    void testBeginComplete_RequiresNoActiveWriters() {
+        LocalDateTime leaseUntil = now.plusMinutes(5);
+        when(jdbcTemplate.update(contains("SET CompletingUntil = ?"), any(Object[].class))).thenReturn(0);
+
+        assertFalse(repository.beginComplete(uploadId, now, leaseUntil));
+        verify(jdbcTemplate).update(contains("ActiveWriters = 0 OR WriterLeaseUntil < ?"),
+                eq(Timestamp.valueOf(leaseUntil)), eq(uploadId.toString()), eq(Timestamp.valueOf(now)),
+                eq(Timestamp.valueOf(now)));
+
+        repository.endComplete(uploadId);
+        verify(jdbcTemplate).update(contains("SET CompletingUntil = NULL"), eq(uploadId.toString()));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testFindExpiredIds() {
+        when(jdbcTemplate.query(contains("ExpiresAt < ?"), any(RowMapper.class), eq(200), eq(Timestamp.valueOf(now))))
+                .thenReturn(List.of(uploadId));
+
+        assertEquals(List.of(uploadId), repository.findExpiredIds(now, 200));
+    }
+}
@@ -0,0 +1,94 @@
+package Group4.Childcare.repository;
+
+import Group4.Childcare.Repository.CaseNumberBlockJdbcRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * CaseNumberBlockJdbcRepository 單元測試
+ *
+ * 測試覆蓋：
+ * 1. 當日已有資料列時只執行一次原子更新
+ * 2. 當日第一次配置時先初始化（以當日最大案件編號為起點）再保留
+ * 3. 初始化後仍無法保留時拋出例外
+ * 4. 區段大小檢查、案件編號起點計算
+ */
+@ExtendWith(MockitoExtension.class)
+class CaseNumberBlockJdbcRepositoryTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private CaseNumberBlockJdbcRepository repository;
+    private LocalDate day;
+
+    @BeforeEach
+    void setUp() {
+        repository = new CaseNumberBlockJdbcRepository(jdbcTemplate);
+        day = LocalDate.of(2024, 12, 4);
+    }
+
+    @Test
+    void testReserveBlock_ExistingRow() {
+        when(jdbcTemplate.queryForList(contains("UPDATE case_number_blocks"), eq(Long.class), any(Object[].class)))
+                .thenReturn(List.of(40L));
+
+        long hi = repository.reserveBlock(day, 20);
+
+        assertEquals(40L, hi);
+        verify(jdbcTemplate, never()).update(anyString(), any(Object[].class));
+    }
+
+    @Test
+    void testReserveBlock_InitializesFirstBlockOfDay() {
+        when(jdbcTemplate.queryForList(contains("UPDATE case_number_blocks"), eq(Long.class), any(Object[].class)))
+                .thenReturn(new ArrayList<>())
+                .thenReturn(List.of(27L));
+
+        long hi = repository.reserveBlock(day, 20);
+
+        assertEquals(27L, hi);
+        ArgumentCaptor<Object[]> args = ArgumentCaptor.forClass(Object[].class);
+        verify(jdbcTemplate).update(contains("INSERT INTO case_number_blocks"), args.capture());
+        Object[] params = args.getValue();
+        assertEquals(Date.valueOf(day), params[0]);
+        assertEquals(202412040000L, params[1]);
+        assertEquals(202412040000L + 10000, params[2]);
+        assertEquals(202412040000L, params[3]);
+        assertEquals(Date.valueOf(day), params[4]);
+    }
+
+    @Test
+    void testReserveBlock_StillMissingThrows() {
+        when(jdbcTemplate.queryForList(anyString(), eq(Long.class), any(Object[].class)))
+                .thenReturn(new ArrayList<>());
+
+        assertThrows(IllegalStateException.class, () -> repository.reserveBlock(day, 20));
+    }
+
+    @Test
+    void testReserveBlock_InvalidBlockSize() {
+        assertThrows(IllegalArgumentException.class, () -> repository.reserveBlock(day, 0));
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void testCaseNumberBase() {
+        assertEquals(202412040000L, CaseNumberBlockJdbcRepository.caseNumberBase(day));
+        assertEquals(202501010000L, CaseNumberBlockJdbcRepository.caseNumberBase(LocalDate.of(2025, 1, 1)));
+    }
+}
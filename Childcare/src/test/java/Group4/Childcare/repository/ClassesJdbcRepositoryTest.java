@@ -1,10 +1,12 @@
 package Group4.Childcare.repository;
 
 import Group4.Childcare.Model.Classes;
+import Group4.Childcare.Repository.ClassSeatLedger;
 import Group4.Childcare.Repository.ClassesJdbcRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
@@ -471,6 +473,77 @@ class ClassesJdbcRepositoryTest {
         assertTrue(isFull); // Conservatively returns true on error
     }
 
+    // ==================== Seat Ledger Tests ====================
+
+    @Test
+    void testReserveSeat_ConditionalUpdateWithOutput() {
+        // Given
+        Map<String, Object> output = new HashMap<>();
+        output.put("CurrentStudents", 11);
+        output.put("Capacity", 20);
+        when(jdbcTemplate.queryForList(contains("OUTPUT inserted.CurrentStudents"), eq(1), eq(testClassId.toString()), eq(1)))
+                .thenReturn(List.of(output));
+
+        // When
+        ClassSeatLedger.SeatCounts counts = classesRepository.reserveSeat(testClassId);
+
+        // Then
+        assertEquals(11, counts.currentStudents());
+        assertEquals(20, counts.capacity());
+        assertFalse(counts.isFull());
+        verify(jdbcTemplate).queryForList(contains("COALESCE(CurrentStudents, 0) + ? <= Capacity"),
+                eq(1), eq(testClassId.toString()), eq(1));
+    }
+
+    @Test
+    void testReserveSeat_Full() {
+        // Given - 條件不成立，沒有 OUTPUT 資料列
+        when(jdbcTemplate.queryForList(contains("OUTPUT inserted.CurrentStudents"), eq(1), eq(testClassId.toString()), eq(1)))
+                .thenReturn(new ArrayList<>());
+
+        // When & Then
+        assertNull(classesRepository.reserveSeat(testClassId));
+        verify(jdbcTemplate, never()).update(anyString(), any(Object[].class));
+    }
+
+    @Test
+    void testReleaseSeat_NeverNegative() {
+        // Given
+        Map<String, Object> output = new HashMap<>();
+        output.put("CurrentStudents", 0);
+        output.put("Capacity", null);
+        when(jdbcTemplate.queryForList(contains("CASE WHEN COALESCE(CurrentStudents, 0) > ?"), eq(1), eq(1), eq(testClassId.toString())))
+                .thenReturn(List.of(output));
+
+        // When
+        ClassSeatLedger.SeatCounts counts = classesRepository.releaseSeat(testClassId);
+
+        // Then
+        assertEquals(0, counts.currentStudents());
+        assertNull(counts.capacity());
+        assertFalse(counts.isFull());
+    }
+
+    @Test
+    void testReconcileCurrentStudents_RecountsAdmittedChildren() {
+        // Given
+        Map<String, Object> corrected = new HashMap<>();
+        corrected.put("ClassID", testClassId.toString());
+        corrected.put("PreviousStudents", 12);
+        corrected.put("CurrentStudents", 10);
+        when(jdbcTemplate.queryForList(contains("COUNT(*) AS Admitted"))).thenReturn(List.of(corrected));
+
+        // When
+        List<Map<String, Object>> result = classesRepository.reconcileCurrentStudents();
+
+        // Then
+        assertEquals(1, result.size());
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(jdbcTemplate).queryForList(sql.capture());
+        assertTrue(sql.getValue().contains("Status = '已錄取' AND ParticipantType = 0"));
+        assertTrue(sql.getValue().contains("deleted.CurrentStudents AS PreviousStudents"));
+    }
+
     // ==================== RowMapper Logic Tests ====================
     // We can't access private static RowMappers directly, but we can test them via
     // the query methods
@@ -0,0 +1,117 @@
+package Group4.Childcare.repository;
+
+import Group4.Childcare.Repository.FileIndexJdbcRepository;
+import Group4.Childcare.Repository.FileIndexJdbcRepository.IndexedFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * FileIndexJdbcRepository 單元測試
+ *
+ * 測試覆蓋：
+ * 1. upsert 以 MERGE 新增或更新檔案
+ * 2. findFileNames：尚未建立索引、已建立但沒有檔案、有檔案三種情況
+ * 3. replaceOwner：先刪除舊索引、批次寫入、再標記已建立索引；沒有檔案時不批次寫入
+ * 4. replaceCategory 同時標記每個擁有者與整個目錄
+ */
+@ExtendWith(MockitoExtension.class)
+class FileIndexJdbcRepositoryTest {
+
+    private static final UUID OWNER = UUID.fromString("11111111-2222-3333-4444-555555555555");
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private FileIndexJdbcRepository repository;
+    private LocalDateTime now;
+
+    @BeforeEach
+    void setUp() {
+        repository = new FileIndexJdbcRepository(jdbcTemplate);
+        now = LocalDateTime.of(2025, 9, 1, 9, 0);
+    }
+
+    @Test
+    void testUpsert() {
+        LocalDateTime modified = now.minusMinutes(5);
+
+        repository.upsert(FileIndexJdbcRepository.CATEGORY_ATTACHMENT, OWNER,
+                new IndexedFile("1_a.pdf", 2048L, modified), now);
+
+        verify(jdbcTemplate).update(contains("MERGE file_index WITH (HOLDLOCK)"),
+                eq("ATTACHMENT"), eq(OWNER.toString()), eq("1_a.pdf"),
+                eq(2048L), eq(Timestamp.valueOf(modified)), eq(Timestamp.valueOf(now)),
+                eq(2048L), eq(Timestamp.valueOf(modified)), eq(Timestamp.valueOf(now)));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testFindFileNames() {
+        UUID empty = UUID.randomUUID();
+        UUID unknown = UUID.randomUUID();
+        when(jdbcTemplate.query(contains("FROM file_index_owners o LEFT JOIN file_index f"), any(RowMapper.class),
+                eq("ATTACHMENT"), anyString())).thenAnswer(inv -> {
+                    String ownerId = inv.getArgument(3);
+                    if (ownerId.equals(OWNER.toString())) {
+                        return List.of("1_a.pdf", "2_b.png");
+                    }
+                    if (ownerId.equals(empty.toString())) {
+                        return new ArrayList<>(Arrays.asList((String) null));
+                    }
+                    return new ArrayList<>();
+                });
+
+        assertEquals(List.of("1_a.pdf", "2_b.png"),
+                repository.findFileNames(FileIndexJdbcRepository.CATEGORY_ATTACHMENT, OWNER).orElseThrow());
+        assertTrue(repository.findFileNames(FileIndexJdbcRepository.CATEGORY_ATTACHMENT, empty).orElseThrow().isEmpty());
+        assertTrue(repository.findFileNames(FileIndexJdbcRepository.CATEGORY_ATTACHMENT, unknown).isEmpty());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testReplaceOwner() {
+        repository.replaceOwner(FileIndexJdbcRepository.CATEGORY_ATTACHMENT, OWNER,
+                List.of(new IndexedFile("1_a.pdf", 10L, now), new IndexedFile("2_b.pdf", 20L, now)), now);
+
+        InOrder inOrder = inOrder(jdbcTemplate);
+        inOrder.verify(jdbcTemplate).update(contains("DELETE FROM file_index WHERE Category = ? AND OwnerID = ?"),
+                eq("ATTACHMENT"), eq(OWNER.toString()));
+        inOrder.verify(jdbcTemplate).batchUpdate(contains("INSERT INTO file_index"),
+                argThat((List<Object[]> rows) -> rows.size() == 2 && "2_b.pdf".equals(rows.get(1)[2])));
+        inOrder.verify(jdbcTemplate).update(contains("MERGE file_index_owners"), eq("ATTACHMENT"),
+                eq(OWNER.toString()), eq(Timestamp.valueOf(now)), eq(Timestamp.valueOf(now)));
+
+        repository.replaceOwner(FileIndexJdbcRepository.CATEGORY_ATTACHMENT, OWNER, List.of(), now);
+        verify(jdbcTemplate, times(1)).batchUpdate(anyString(), anyList());
+    }
+
+    @Test
+    void testReplaceCategory_MarksOwnersAndDirectory() {
+        repository.replaceCategory(FileIndexJdbcRepository.CATEGORY_INSTITUTION_IMAGE,
+                Map.of(OWNER, List.of(new IndexedFile(OWNER + "_logo.png", 10L, now))), now);
+
+        verify(jdbcTemplate).update(contains("DELETE FROM file_index WHERE Category = ?"), eq("INSTITUTION_IMAGE"));
+        verify(jdbcTemplate).update(contains("MERGE file_index_owners"), eq("INSTITUTION_IMAGE"),
+                eq(OWNER.toString()), any(Timestamp.class), any(Timestamp.class));
+        verify(jdbcTemplate).update(contains("MERGE file_index_owners"), eq("INSTITUTION_IMAGE"),
+                eq(FileIndexJdbcRepository.DIRECTORY_OWNER.toString()), any(Timestamp.class), any(Timestamp.class));
+    }
+}
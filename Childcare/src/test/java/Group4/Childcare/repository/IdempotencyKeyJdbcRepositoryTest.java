@@ -0,0 +1,134 @@
+package Group4.Childcare.repository;
+
+import Group4.Childcare.Repository.IdempotencyKeyJdbcRepository;
+import Group4.Childcare.Repository.IdempotencyKeyJdbcRepository.StoredKey;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * IdempotencyKeyJdbcRepository 單元測試
+ *
+ * 測試覆蓋：
+ * 1. 認領：新鍵或過期鍵回傳 true，已被持有回傳 false；鍵依送件者區分並記錄請求指紋
+ * 2. 查詢：處理中（StatusCode 為 NULL）與已完成的對應，含請求指紋
+ * 3. 記錄結果與釋放只作用於處理中的鍵
+ * 4. 分批刪除過期鍵
+ */
+@ExtendWith(MockitoExtension.class)
+class IdempotencyKeyJdbcRepositoryTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private IdempotencyKeyJdbcRepository repository;
+    private LocalDateTime now;
+
+    @BeforeEach
+    void setUp() {
+        repository = new IdempotencyKeyJdbcRepository(jdbcTemplate);
+        now = LocalDateTime.of(2025, 9, 1, 9, 0);
+    }
+
+    @Test
+    void testClaim() {
+        when(jdbcTemplate.update(contains("MERGE idempotency_keys"), any(Object[].class))).thenReturn(1).thenReturn(0);
+
+        assertTrue(repository.claim("u1", "k1", "hash1", now, now.plusMinutes(2)));
+        assertFalse(repository.claim("u1", "k1", "hash1", now, now.plusMinutes(2)));
+
+        ArgumentCaptor<Object[]> args = ArgumentCaptor.forClass(Object[].class);
+        verify(jdbcTemplate, times(2)).update(anyString(), args.capture());
+        Object[] params = args.getAllValues().get(0);
+        assertEquals("u1", params[0]);
+        assertEquals("k1", params[1]);
+        assertEquals("hash1", params[2]);
+        assertEquals(Timestamp.valueOf(now), params[3]);
+        assertEquals(Timestamp.valueOf(now.plusMinutes(2)), params[4]);
+        assertEquals(Timestamp.valueOf(now.plusMinutes(2)), params[5]);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testFind_MapsInProgressAndCompleted() throws Exception {
+        UUID applicationId = UUID.randomUUID();
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getString("RequestHash")).thenReturn("hash1");
+        when(rs.getString("ApplicationID")).thenReturn(null, applicationId.toString().toUpperCase());
+        when(rs.getInt("StatusCode")).thenReturn(0, 200);
+        when(rs.wasNull()).thenReturn(true, false);
+        when(rs.getString("ResponseBody")).thenReturn(null, "{}");
+        when(rs.getTimestamp("ExpiresAt")).thenReturn(Timestamp.valueOf(now));
+
+        when(jdbcTemplate.query(contains("FROM idempotency_keys"), any(RowMapper.class), eq("u1"), eq("k1")))
+                .thenAnswer(inv -> {
+                    RowMapper<StoredKey> mapper = inv.getArgument(1);
+                    return List.of(mapper.mapRow(rs, 0));
+                })
+                .thenAnswer(inv -> {
+                    RowMapper<StoredKey> mapper = inv.getArgument(1);
+                    return List.of(mapper.mapRow(rs, 0));
+                });
+
+        StoredKey inProgress = repository.find("u1", "k1").orElseThrow();
+        assertEquals("hash1", inProgress.requestHash());
+        assertFalse(inProgress.isCompleted());
+        assertNull(inProgress.statusCode());
+        assertNull(inProgress.applicationId());
+        assertEquals(now, inProgress.expiresAt());
+
+        StoredKey completed = repository.find("u1", "k1").orElseThrow();
+        assertTrue(completed.isCompleted());
+        assertEquals(200, completed.statusCode());
+        assertEquals(applicationId, completed.applicationId());
+        assertEquals("{}", completed.responseBody());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testFind_Missing() {
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class), eq("u1"), eq("k1"))).thenReturn(new ArrayList<>());
+
+        assertEquals(Optional.empty(), repository.find("u1", "k1"));
+    }
+
+    @Test
+    void testCompleteAndRelease_OnlyInProgress() {
+        UUID applicationId = UUID.randomUUID();
+        when(jdbcTemplate.update(anyString(), any(Object[].class))).thenReturn(1);
+
+        assertTrue(repository.complete("u1", "k1", applicationId, 200, "{}", now.plusHours(24)));
+        repository.release("u1", "k1");
+
+        verify(jdbcTemplate).update(contains("StatusCode IS NULL"), eq(applicationId.toString()), eq(200), eq("{}"),
+                eq(Timestamp.valueOf(now.plusHours(24))), eq("u1"), eq("k1"));
+        verify(jdbcTemplate).update(
+                matches("DELETE FROM idempotency_keys WHERE Scope = \\? AND IdemKey = \\? AND StatusCode IS NULL"),
+                eq("u1"), eq("k1"));
+    }
+
+    @Test
+    void testDeleteExpired() {
+        when(jdbcTemplate.update(contains("DELETE TOP"), any(Object[].class))).thenReturn(7);
+
+        assertEquals(7, repository.deleteExpired(now, 1000));
+        verify(jdbcTemplate).update(contains("DELETE TOP"), eq(1000), eq(Timestamp.valueOf(now)));
+    }
+}
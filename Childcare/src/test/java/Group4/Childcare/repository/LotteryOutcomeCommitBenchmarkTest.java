@@ -0,0 +1,186 @@
+package Group4.Childcare.repository;
+
+import Group4.Childcare.Repository.WaitlistJdbcRepository;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 抽籤結果寫回效能比較（批次 UPDATE vs bulk copy + MERGE）
+ *
+ * 需要本機 SQL Server（例如 docker 的 mcr.microsoft.com/mssql/server），預設不執行：
+ * mvn test -Dtest=LotteryOutcomeCommitBenchmarkTest \
+ *   -Dbenchmark.mssql.url="jdbc:sqlserver://localhost:1433;database=bench;encrypt=false" \
+ *   -Dbenchmark.mssql.username=sa -Dbenchmark.mssql.password=...
+ *
+ * 請使用空白的測試資料庫：缺少 application_participants / classes 時會建立最小欄位的資料表，
+ * 測試資料以 BENCH- 開頭的 NationalID 寫入，結束後刪除。
+ */
+@EnabledIfSystemProperty(named = "benchmark.mssql.url", matches = ".+")
+class LotteryOutcomeCommitBenchmarkTest {
+
+    private static final int RUNS = 5;
+    private static final int CLASS_COUNT = 8;
+
+    private static JdbcTemplate jdbcTemplate;
+    private static TransactionTemplate transactionTemplate;
+    private static WaitlistJdbcRepository repository;
+    private static final List<UUID> classIds = new ArrayList<>();
+
+    @BeforeAll
+    static void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                System.getProperty("benchmark.mssql.url"),
+                System.getProperty("benchmark.mssql.username", "sa"),
+                System.getProperty("benchmark.mssql.password", ""));
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        repository = new WaitlistJdbcRepository(jdbcTemplate);
+
+        jdbcTemplate.execute("IF OBJECT_ID('dbo.application_participants') IS NULL " +
+                "CREATE TABLE dbo.application_participants (" +
+                "ParticipantID UNIQUEIDENTIFIER NOT NULL DEFAULT NEWID() PRIMARY KEY, " +
+                "ApplicationID UNIQUEIDENTIFIER NOT NULL, ParticipantType BIT NOT NULL DEFAULT 0, " +
+                "NationalID NVARCHAR(20) NOT NULL, CurrentOrder INT NULL, Status NVARCHAR(50) NULL, " +
+                "Reason NVARCHAR(100) NULL, ClassID UNIQUEIDENTIFIER NULL, ReviewDate DATETIME2 NULL, " +
+                "INDEX IX_bench_app_nid (ApplicationID, NationalID))");
+        jdbcTemplate.execute("IF OBJECT_ID('dbo.classes') IS NULL " +
+                "CREATE TABLE dbo.classes (ClassID UNIQUEIDENTIFIER NOT NULL PRIMARY KEY, " +
+                "ClassName NVARCHAR(50) NULL, Capacity INT NOT NULL DEFAULT 0, CurrentStudents INT NOT NULL DEFAULT 0)");
+        for (int c = 0; c < CLASS_COUNT; c++) {
+            UUID classId = UUID.randomUUID();
+            classIds.add(classId);
+            jdbcTemplate.update("INSERT INTO classes (ClassID, ClassName, Capacity, CurrentStudents) VALUES (?, ?, ?, 0)",
+                    classId.toString(), "BENCH-" + c, 100_000);
+        }
+    }
+
+    @AfterAll
+    static void tearDown() {
+        if (jdbcTemplate == null) {
+            return;
+        }
+        jdbcTemplate.update("DELETE FROM application_participants WHERE NationalID LIKE 'BENCH-%'");
+        jdbcTemplate.update("DELETE FROM classes WHERE ClassName LIKE 'BENCH-%'");
+    }
+
+    @Test
+    void benchmark1k() {
+        runBenchmark(1_000);
+    }
+
+    @Test
+    void benchmark10k() {
+        runBenchmark(10_000);
+    }
+
+    private void runBenchmark(int applicants) {
+        List<Map<String, Object>> rows = seed(applicants);
+        Map<UUID, Integer> admittedByClass = admittedByClass(rows);
+
+        // 暖機
+        commitBatch(rows, admittedByClass);
+        commitBulk(rows, admittedByClass);
+
+        long[] batchMillis = new long[RUNS];
+        long[] bulkMillis = new long[RUNS];
+        for (int run = 0; run < RUNS; run++) {
+            batchMillis[run] = commitBatch(rows, admittedByClass);
+            bulkMillis[run] = commitBulk(rows, admittedByClass);
+        }
+        long batchMedian = median(batchMillis);
+        long bulkMedian = median(bulkMillis);
+        System.out.printf("📊 抽籤結果寫回 %,d 人：batchUpdate + 佔用座位=%d ms，bulk copy + MERGE + 佔用座位=%d ms（中位數，%d 次）%n",
+                applicants, batchMedian, bulkMedian, RUNS);
+
+        Integer merged = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM application_participants WHERE NationalID LIKE ? AND ReviewDate IS NOT NULL",
+                Integer.class, "BENCH-" + applicants + "-%");
+        assertEquals(applicants, merged);
+    }
+
+    private long commitBatch(List<Map<String, Object>> rows, Map<UUID, Integer> admittedByClass) {
+        long start = System.nanoTime();
+        transactionTemplate.executeWithoutResult(status -> {
+            repository.batchUpdateApplicants(rows);
+            repository.reserveClassSeats(admittedByClass);
+        });
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    private long commitBulk(List<Map<String, Object>> rows, Map<UUID, Integer> admittedByClass) {
+        long start = System.nanoTime();
+        Boolean applied = transactionTemplate.execute(status -> {
+            boolean bulk = repository.applyLotteryOutcomeBulk(rows);
+            repository.reserveClassSeats(admittedByClass);
+            return bulk;
+        });
+        assertTrue(Boolean.TRUE.equals(applied));
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    /**
+     * 建立候補中的幼兒，並組出抽籤結果（約 1/5 錄取、其餘候補）
+     */
+    private List<Map<String, Object>> seed(int count) {
+        List<Object[]> inserts = new ArrayList<>(count);
+        List<Map<String, Object>> rows = new ArrayList<>(count);
+        LocalDateTime reviewDate = LocalDateTime.now();
+        for (int i = 0; i < count; i++) {
+            String applicationId = UUID.randomUUID().toString();
+            String nationalId = "BENCH-" + count + "-" + i;
+            inserts.add(new Object[]{applicationId, nationalId});
+
+            Map<String, Object> row = new HashMap<>();
+            row.put("ApplicationID", applicationId);
+            row.put("NationalID", nationalId);
+            row.put("ReviewDate", reviewDate);
+            if (i % 5 == 0) {
+                row.put("Status", "已錄取");
+                row.put("Reason", "第三序位抽籤錄取");
+                row.put("ClassID", classIds.get(i % CLASS_COUNT).toString());
+                row.put("CurrentOrder", null);
+            } else {
+                row.put("Status", "候補中");
+                row.put("CurrentOrder", i + 1);
+            }
+            rows.add(row);
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO application_participants (ApplicationID, ParticipantType, NationalID, Status) " +
+                "VALUES (?, 0, ?, '候補中')", inserts);
+        return rows;
+    }
+
+    private static Map<UUID, Integer> admittedByClass(List<Map<String, Object>> rows) {
+        Map<UUID, Integer> result = new LinkedHashMap<>();
+        for (Map<String, Object> row : rows) {
+            Object classId = row.get("ClassID");
+            if (classId != null) {
+                result.merge(UUID.fromString(classId.toString()), 1, Integer::sum);
+            }
+        }
+        return result;
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
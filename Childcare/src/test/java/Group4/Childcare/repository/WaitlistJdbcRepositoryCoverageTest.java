@@ -694,9 +694,9 @@ class WaitlistJdbcRepositoryCoverageTest {
 
     @Test
     void testManualAdmit_NoCapacity() {
-        // 測試 !hasClassCapacity(classId) 分支（沒空位，返回 false）
-        when(jdbcTemplate.queryForObject(anyString(), eq(Integer.class), anyString()))
-                .thenReturn(0); // 沒空位
+        // 測試佔用座位失敗分支（沒空位，返回 false）
+        when(jdbcTemplate.queryForList(contains("UPDATE classes"), any(Object[].class)))
+                .thenReturn(new ArrayList<>()); // 沒空位
 
         boolean result = repository.manualAdmit(testApplicationId, testNationalId, testClassId);
 
@@ -707,33 +707,28 @@ class WaitlistJdbcRepositoryCoverageTest {
 
     @Test
     void testManualAdmit_Success() {
-        // 測試成功錄取（有空位，更新成功）
-        // Mock hasClassCapacity
-        when(jdbcTemplate.queryForObject(anyString(), eq(Integer.class), anyString()))
-                .thenReturn(1); // 有空位
+        // 測試成功錄取（佔用座位成功，更新成功）
+        when(jdbcTemplate.queryForList(contains("Capacity IS NOT NULL"), any(Object[].class)))
+                .thenReturn(List.of(Map.<String, Object>of("CurrentStudents", 1, "Capacity", 10))); // 有空位
 
         // Mock update application_participants
         when(jdbcTemplate.update(contains("UPDATE application_participants"),
                 anyString(), any(LocalDateTime.class), anyString(), anyString()))
                 .thenReturn(1); // 更新成功
 
-        // Mock updateClassCurrentStudents
-        when(jdbcTemplate.update(contains("UPDATE classes"), anyInt(), anyString()))
-                .thenReturn(1);
-
         boolean result = repository.manualAdmit(testApplicationId, testNationalId, testClassId);
 
         assertTrue(result);
         verify(jdbcTemplate).update(contains("UPDATE application_participants"),
                 anyString(), any(LocalDateTime.class), anyString(), anyString());
-        verify(jdbcTemplate).update(contains("UPDATE classes"), eq(1), anyString());
+        verify(jdbcTemplate).queryForList(contains("Capacity IS NOT NULL"), eq(1), eq(testClassId.toString()), eq(1));
     }
 
     @Test
     void testManualAdmit_UpdateFailed() {
-        // 測試更新失敗（updated == 0，返回 false）
-        when(jdbcTemplate.queryForObject(anyString(), eq(Integer.class), anyString()))
-                .thenReturn(1); // 有空位
+        // 測試更新失敗（updated == 0，返回 false 並歸還座位）
+        when(jdbcTemplate.queryForList(contains("Capacity IS NOT NULL"), any(Object[].class)))
+                .thenReturn(List.of(Map.<String, Object>of("CurrentStudents", 1, "Capacity", 10)));
 
         when(jdbcTemplate.update(contains("UPDATE application_participants"),
                 anyString(), any(LocalDateTime.class), anyString(), anyString()))
@@ -742,15 +737,15 @@ class WaitlistJdbcRepositoryCoverageTest {
         boolean result = repository.manualAdmit(testApplicationId, testNationalId, testClassId);
 
         assertFalse(result);
-        // 不應該更新班級學生數
-        verify(jdbcTemplate, never()).update(contains("UPDATE classes"), anyInt(), anyString());
+        // 歸還先前佔用的座位
+        verify(jdbcTemplate).queryForList(contains("CASE WHEN"), eq(1), eq(1), eq(testClassId.toString()));
     }
 
     @Test
     void testManualAdmit_UpdateReturnsNegative() {
         // 測試邊界情況：update 返回負數
-        when(jdbcTemplate.queryForObject(anyString(), eq(Integer.class), anyString()))
-                .thenReturn(1);
+        when(jdbcTemplate.queryForList(contains("Capacity IS NOT NULL"), any(Object[].class)))
+                .thenReturn(List.of(Map.<String, Object>of("CurrentStudents", 1, "Capacity", 10)));
 
         when(jdbcTemplate.update(contains("UPDATE application_participants"),
                 anyString(), any(LocalDateTime.class), anyString(), anyString()))
@@ -1,6 +1,7 @@
 package Group4.Childcare.repository;
 
 import Group4.Childcare.Repository.WaitlistJdbcRepository;
+import Group4.Childcare.Repository.WaitlistRankKeys;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -49,7 +50,8 @@ class WaitlistJdbcRepositoryExtraTest {
 
     @Test
     void testGetNextWaitlistOrder_ReturnsValue() {
-        when(jdbcTemplate.queryForObject(anyString(), eq(Integer.class), eq(institutionId.toString()))).thenReturn(5);
+        when(jdbcTemplate.queryForList(contains("waitlist_rank_sequences"), eq(Integer.class),
+                eq(WaitlistRankKeys.RANK_STEP), eq(institutionId.toString()))).thenReturn(List.of(5));
         int next = repository.getNextWaitlistOrder(institutionId);
         assertEquals(5, next);
     }
@@ -89,7 +91,8 @@ class WaitlistJdbcRepositoryExtraTest {
     @Test
     void testManualAdmit_Success() {
         UUID classId = UUID.randomUUID();
-        when(jdbcTemplate.queryForObject(anyString(), eq(Integer.class), eq(classId.toString()))).thenReturn(1);
+        when(jdbcTemplate.queryForList(anyString(), eq(1), eq(classId.toString()), eq(1)))
+                .thenReturn(List.of(Map.<String, Object>of("CurrentStudents", 3, "Capacity", 10)));
         when(jdbcTemplate.update(anyString(), anyString(), any(LocalDateTime.class), eq(applicationId.toString()),
                 eq(nationalId))).thenReturn(1);
         boolean result = repository.manualAdmit(applicationId, nationalId, classId);
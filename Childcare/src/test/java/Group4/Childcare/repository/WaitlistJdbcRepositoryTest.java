@@ -1,14 +1,23 @@
 package Group4.Childcare.repository;
 
 import Group4.Childcare.Repository.WaitlistJdbcRepository;
+import Group4.Childcare.Repository.WaitlistRankKeys;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import com.microsoft.sqlserver.jdbc.SQLServerConnection;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.time.LocalDateTime;
 import java.util.*;
 
@@ -93,6 +102,21 @@ class WaitlistJdbcRepositoryTest {
         assertTrue(result.isEmpty());
     }
 
+    @Test
+    void testFindWaitlistByInstitution_PositionCountedWithinInstitution() {
+        doReturn(Collections.emptyList()).when(jdbcTemplate).queryForList(anyString(), any(Object[].class));
+
+        waitlistRepository.findWaitlistByInstitution(testInstitutionId, null);
+
+        // 名次只在該列所屬機構內計算，不對全縣市候補名單執行視窗函數
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(jdbcTemplate).queryForList(sql.capture(), any(Object[].class));
+        assertTrue(sql.getValue().contains("OUTER APPLY"));
+        assertTrue(sql.getValue().contains("pa.ApplicationID = ap.ApplicationID"));
+        assertTrue(sql.getValue().contains(WaitlistRankKeys.positionColumn()));
+        assertFalse(sql.getValue().contains("ROW_NUMBER()"));
+    }
+
     @Test
     void testFindWaitlistByInstitution_DateParsing() {
         // Given
@@ -178,27 +202,54 @@ class WaitlistJdbcRepositoryTest {
     @Test
     void testGetNextWaitlistOrder_ReturnsNextOrder() {
         // Given
-        when(jdbcTemplate.queryForObject(anyString(), eq(Integer.class), anyString()))
-                .thenReturn(6);
+        when(jdbcTemplate.queryForList(contains("waitlist_rank_sequences"), eq(Integer.class), anyInt(), anyString()))
+                .thenReturn(List.of(6 * WaitlistRankKeys.RANK_STEP));
 
         // When
         int nextOrder = waitlistRepository.getNextWaitlistOrder(testApplicationId);
 
         // Then
-        assertEquals(6, nextOrder);
+        assertEquals(6 * WaitlistRankKeys.RANK_STEP, nextOrder);
+        verify(jdbcTemplate, never()).update(contains("INSERT INTO waitlist_rank_sequences"), any(), any(), any());
     }
 
     @Test
-    void testGetNextWaitlistOrder_ReturnsOne_WhenNoData() {
+    void testGetNextWaitlistOrder_InitializesSequence_WhenNoData() {
         // Given
-        when(jdbcTemplate.queryForObject(anyString(), eq(Integer.class), anyString()))
-                .thenReturn(null);
+        when(jdbcTemplate.queryForList(contains("waitlist_rank_sequences"), eq(Integer.class), anyInt(), anyString()))
+                .thenReturn(Collections.emptyList(), List.of(WaitlistRankKeys.RANK_STEP));
 
         // When
         int nextOrder = waitlistRepository.getNextWaitlistOrder(testApplicationId);
 
         // Then
-        assertEquals(1, nextOrder);
+        assertEquals(WaitlistRankKeys.RANK_STEP, nextOrder);
+        verify(jdbcTemplate).update(contains("INSERT INTO waitlist_rank_sequences"),
+                eq(testApplicationId.toString()), eq(testApplicationId.toString()), eq(testApplicationId.toString()));
+    }
+
+    @Test
+    void testGetNextWaitlistOrder_ThrowsWhenSequenceUnavailable() {
+        // Given
+        when(jdbcTemplate.queryForList(contains("waitlist_rank_sequences"), eq(Integer.class), anyInt(), anyString()))
+                .thenReturn(Collections.emptyList());
+
+        // When & Then
+        assertThrows(IllegalStateException.class, () -> waitlistRepository.getNextWaitlistOrder(testApplicationId));
+    }
+
+    @Test
+    void testCompactRankKeys_RenumbersAndSyncsSequence() {
+        // Given
+        when(jdbcTemplate.update(contains("ROW_NUMBER()"), eq(WaitlistRankKeys.RANK_STEP), eq(testInstitutionId)))
+                .thenReturn(3);
+
+        // When
+        int updated = waitlistRepository.compactRankKeys(UUID.fromString(testInstitutionId));
+
+        // Then
+        assertEquals(3, updated);
+        verify(jdbcTemplate).update(contains("UPDATE waitlist_rank_sequences"), eq(testInstitutionId), eq(testInstitutionId));
     }
 
     // ==================== updateApplicantOrder Tests ====================
@@ -563,10 +614,10 @@ class WaitlistJdbcRepositoryTest {
         UUID classId = UUID.randomUUID();
         String nationalId = "A123";
 
-        // Mock hasClassCapacity query
-        when(jdbcTemplate.queryForObject(contains("Capacity > CurrentStudents"), eq(Integer.class),
-                eq(classId.toString())))
-                .thenReturn(1);
+        // Mock 條件式佔用座位（OUTPUT 回傳佔用後人數）
+        when(jdbcTemplate.queryForList(contains("COALESCE(CurrentStudents, 0) + ? <= Capacity"), eq(1),
+                eq(classId.toString()), eq(1)))
+                .thenReturn(List.of(Map.<String, Object>of("CurrentStudents", 6, "Capacity", 20)));
 
         // Mock update applicant
         when(jdbcTemplate.update(contains("SET Status = '已錄取'"), anyString(), any(LocalDateTime.class), anyString(),
@@ -578,8 +629,9 @@ class WaitlistJdbcRepositoryTest {
 
         // Then
         assertTrue(result);
-        // Verify class student count update requested
-        verify(jdbcTemplate).update(contains("UPDATE classes SET CurrentStudents"), eq(1), eq(classId.toString()));
+        // 佔用與加一為同一敘述，不再另外更新班級學生數
+        verify(jdbcTemplate, never()).update(contains("UPDATE classes"), any(Object[].class));
+        verify(jdbcTemplate, never()).queryForList(contains("CASE WHEN"), any(Object[].class));
     }
 
     @Test
@@ -587,9 +639,9 @@ class WaitlistJdbcRepositoryTest {
         // Given
         UUID classId = UUID.randomUUID();
 
-        when(jdbcTemplate.queryForObject(contains("Capacity > CurrentStudents"), eq(Integer.class),
-                eq(classId.toString())))
-                .thenReturn(0);
+        when(jdbcTemplate.queryForList(contains("COALESCE(CurrentStudents, 0) + ? <= Capacity"), eq(1),
+                eq(classId.toString()), eq(1)))
+                .thenReturn(new ArrayList<>());
 
         // When
         boolean result = waitlistRepository.manualAdmit(testApplicationId, "A123", classId);
@@ -598,4 +650,167 @@ class WaitlistJdbcRepositoryTest {
         assertFalse(result);
         verify(jdbcTemplate, never()).update(contains("SET Status = '已錄取'"), any(), any(), any(), any());
     }
+
+    @Test
+    void testManualAdmit_ApplicantMissing_ReleasesSeat() {
+        // Given
+        UUID classId = UUID.randomUUID();
+
+        when(jdbcTemplate.queryForList(contains("COALESCE(CurrentStudents, 0) + ? <= Capacity"), eq(1),
+                eq(classId.toString()), eq(1)))
+                .thenReturn(List.of(Map.<String, Object>of("CurrentStudents", 6, "Capacity", 20)));
+        when(jdbcTemplate.update(contains("SET Status = '已錄取'"), anyString(), any(LocalDateTime.class), anyString(),
+                anyString()))
+                .thenReturn(0);
+
+        // When
+        boolean result = waitlistRepository.manualAdmit(testApplicationId, "A123", classId);
+
+        // Then
+        assertFalse(result);
+        verify(jdbcTemplate).queryForList(contains("CASE WHEN COALESCE(CurrentStudents, 0) > ?"), eq(1), eq(1),
+                eq(classId.toString()));
+    }
+
+    // ==================== applyLotteryOutcome Tests ====================
+
+    private static List<Map<String, Object>> outcomeRows(int count) {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("ApplicationID", UUID.randomUUID().toString());
+            row.put("NationalID", "A" + i);
+            row.put("Status", "候補中");
+            row.put("CurrentOrder", i + 1);
+            row.put("ReviewDate", LocalDateTime.now());
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    @Test
+    void testApplyLotteryOutcome_SmallResult_UsesBatchUpdate() {
+        UUID classId = UUID.randomUUID();
+
+        when(jdbcTemplate.queryForList(contains("COALESCE(CurrentStudents, 0) + ? <= Capacity"), eq(1),
+                eq(classId.toString()), eq(1)))
+                .thenReturn(List.of(Map.<String, Object>of("CurrentStudents", 6, "Capacity", 20)));
+
+        waitlistRepository.applyLotteryOutcome(outcomeRows(3), Map.of(classId, 1));
+
+        verify(jdbcTemplate, never()).execute(any(ConnectionCallback.class));
+        verify(jdbcTemplate).batchUpdate(contains("UPDATE application_participants"), anyList());
+        verify(jdbcTemplate).queryForList(contains("COALESCE(CurrentStudents, 0) + ? <= Capacity"), eq(1),
+                eq(classId.toString()), eq(1));
+    }
+
+    @Test
+    void testApplyLotteryOutcome_ClassFull_ThrowsSoTransactionRollsBack() {
+        UUID classId = UUID.randomUUID();
+        when(jdbcTemplate.queryForList(contains("COALESCE(CurrentStudents, 0) + ? <= Capacity"), eq(2),
+                eq(classId.toString()), eq(2))).thenReturn(new ArrayList<>());
+
+        assertThrows(IllegalStateException.class,
+                () -> waitlistRepository.applyLotteryOutcome(outcomeRows(3), Map.of(classId, 2)));
+    }
+
+    @Test
+    void testApplyLotteryOutcome_LargeResult_UsesBulkMerge() {
+        UUID classId = UUID.randomUUID();
+        when(jdbcTemplate.execute(any(ConnectionCallback.class))).thenReturn(Boolean.TRUE);
+        when(jdbcTemplate.queryForList(contains("COALESCE(CurrentStudents, 0) + ? <= Capacity"), eq(5),
+                eq(classId.toString()), eq(5)))
+                .thenReturn(List.of(Map.<String, Object>of("CurrentStudents", 5, "Capacity", 20)));
+
+        waitlistRepository.applyLotteryOutcome(outcomeRows(WaitlistJdbcRepository.BULK_COMMIT_MIN_ROWS),
+                Map.of(classId, 5));
+
+        verify(jdbcTemplate).execute(any(ConnectionCallback.class));
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), anyList());
+        verify(jdbcTemplate).queryForList(contains("COALESCE(CurrentStudents, 0) + ? <= Capacity"), eq(5),
+                eq(classId.toString()), eq(5));
+    }
+
+    @Test
+    void testApplyLotteryOutcome_NotSqlServer_FallsBackToBatchUpdate() throws Exception {
+        Connection connection = mock(Connection.class);
+        when(connection.isWrapperFor(SQLServerConnection.class)).thenReturn(false);
+        when(jdbcTemplate.execute(any(ConnectionCallback.class))).thenAnswer(invocation ->
+                ((ConnectionCallback<?>) invocation.getArgument(0)).doInConnection(connection));
+
+        UUID classId = UUID.randomUUID();
+        when(jdbcTemplate.queryForList(contains("COALESCE(CurrentStudents, 0) + ? <= Capacity"), eq(2),
+                eq(classId.toString()), eq(2)))
+                .thenReturn(List.of(Map.<String, Object>of("CurrentStudents", 2, "Capacity", 20)));
+
+        waitlistRepository.applyLotteryOutcome(outcomeRows(WaitlistJdbcRepository.BULK_COMMIT_MIN_ROWS),
+                Map.of(classId, 2));
+
+        verify(connection, never()).createStatement();
+        verify(jdbcTemplate).batchUpdate(contains("UPDATE application_participants"), anyList());
+        verify(jdbcTemplate).queryForList(contains("COALESCE(CurrentStudents, 0) + ? <= Capacity"), eq(2),
+                eq(classId.toString()), eq(2));
+    }
+
+    // ==================== streamWaitlistByInstitution Tests ====================
+
+    @Test
+    void testStreamWaitlistByInstitution_MapsRowsAndBindsParameters() throws Exception {
+        UUID institutionId = UUID.randomUUID();
+        UUID participantId = UUID.randomUUID();
+        UUID cursorParticipant = UUID.randomUUID();
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getLong("CaseNumber")).thenReturn(202501010001L);
+        when(rs.getInt("IdentityType")).thenReturn(2);
+        when(rs.getInt("Position")).thenReturn(7);
+        when(rs.getInt("SortKey")).thenReturn(7168);
+        when(rs.getDate("BirthDate")).thenReturn(java.sql.Date.valueOf("2023-05-01"));
+        when(rs.getString("ApplicationID")).thenReturn(testApplicationId.toString().toUpperCase());
+        when(rs.getString("ParticipantID")).thenReturn(participantId.toString());
+        when(rs.getString("InstitutionID")).thenReturn(institutionId.toString());
+        when(rs.getString("Name")).thenReturn("王小明");
+        when(rs.getString("InstitutionName")).thenReturn("測試幼兒園");
+
+        Connection connection = mock(Connection.class);
+        PreparedStatement ps = mock(PreparedStatement.class);
+        when(connection.prepareStatement(anyString())).thenReturn(ps);
+        doAnswer(invocation -> {
+            PreparedStatementCreator creator = invocation.getArgument(0);
+            creator.createPreparedStatement(connection);
+            RowCallbackHandler handler = invocation.getArgument(1);
+            handler.processRow(rs);
+            return null;
+        }).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+
+        List<WaitlistJdbcRepository.WaitlistRow> rows = new ArrayList<>();
+        int count = waitlistRepository.streamWaitlistByInstitution(institutionId.toString(), "王",
+                new WaitlistJdbcRepository.WaitlistCursor(institutionId, 1024, cursorParticipant), 51, rows::add);
+
+        assertEquals(1, count);
+        WaitlistJdbcRepository.WaitlistRow row = rows.get(0);
+        assertEquals(testApplicationId, row.applicationId());
+        assertEquals(7, row.currentOrder());
+        assertEquals(7168, row.sortKey());
+        assertEquals(java.time.LocalDate.of(2023, 5, 1), row.birthDate());
+        assertEquals(202501010001L, row.caseNumber());
+
+        // 參數順序：機構 → TOP → 姓名 → 游標
+        verify(connection).prepareStatement(contains("COUNT(ap.CurrentOrder) OVER"));
+        verify(ps).setFetchSize(anyInt());
+        verify(ps).setObject(1, institutionId.toString());
+        verify(ps).setObject(2, 51);
+        verify(ps).setObject(3, "%王%");
+        verify(ps).setObject(4, institutionId.toString());
+        verify(ps).setObject(6, 1024);
+        verify(ps).setObject(8, cursorParticipant.toString());
+    }
+
+    @Test
+    void testWaitlistCursor_RoundTrip() {
+        WaitlistJdbcRepository.WaitlistCursor cursor =
+                new WaitlistJdbcRepository.WaitlistCursor(UUID.randomUUID(), 2048, UUID.randomUUID());
+
+        assertEquals(cursor, WaitlistJdbcRepository.WaitlistCursor.parse(cursor.toString()));
+        assertThrows(IllegalArgumentException.class, () -> WaitlistJdbcRepository.WaitlistCursor.parse("1,2"));
+    }
 }
@@ -0,0 +1,192 @@
+package Group4.Childcare.service;
+
+import Group4.Childcare.Repository.AdmissionHoldJdbcRepository;
+import Group4.Childcare.Repository.AdmissionHoldJdbcRepository.Hold;
+import Group4.Childcare.Repository.AdmissionHoldJdbcRepository.HoldKey;
+import Group4.Childcare.Service.AdmissionHoldService;
+import Group4.Childcare.Service.ClassCapacityService;
+import Group4.Childcare.Service.WaitlistPromotionService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * AdmissionHoldService 單元測試
+ *
+ * 測試覆蓋：
+ * 1. 錄取時建立保留並排入時間輪（缺班級者略過）
+ * 2. 家長確認後取消排程；確認失敗時保留排程
+ * 3. 到期前不處理，到期後批次撤銷、移除班級人數快取並通知候補遞補
+ * 4. 大量到期依批次大小分批寫回
+ * 5. 寫回失敗時重新排定
+ * 6. 啟動時由資料表重建時間輪
+ */
+@ExtendWith(MockitoExtension.class)
+class AdmissionHoldServiceTest {
+
+    private static final long HOUR = 3_600_000L;
+
+    @Mock
+    private AdmissionHoldJdbcRepository admissionHoldJdbcRepository;
+
+    @Mock
+    private WaitlistPromotionService waitlistPromotionService;
+
+    @Mock
+    private ClassCapacityService classCapacityService;
+
+    private AdmissionHoldService admissionHoldService;
+
+    @BeforeEach
+    void setUp() {
+        // tick 設為 1 分鐘，測試期間背景排程不會推進時間輪
+        admissionHoldService = new AdmissionHoldService(admissionHoldJdbcRepository, waitlistPromotionService,
+                classCapacityService, 1, 60_000, 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        admissionHoldService.shutdown();
+    }
+
+    private static Map<String, Object> admittedRow(UUID classId) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("ApplicationID", UUID.randomUUID().toString());
+        row.put("NationalID", "A" + System.nanoTime());
+        row.put("ClassID", classId != null ? classId.toString() : null);
+        return row;
+    }
+
+    private List<Hold> holdRows(int count, UUID classId) {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            rows.add(admittedRow(classId));
+        }
+        admissionHoldService.holdAdmitted(rows);
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Hold>> captor = ArgumentCaptor.forClass(List.class);
+        verify(admissionHoldJdbcRepository, atLeastOnce()).upsertHolds(captor.capture());
+        return captor.getValue();
+    }
+
+    @Test
+    void testHoldAdmitted_UpsertsAndSchedules() {
+        UUID classId = UUID.randomUUID();
+        List<Map<String, Object>> rows = List.of(admittedRow(classId), admittedRow(classId), admittedRow(null));
+
+        LocalDateTime expiresAt = admissionHoldService.holdAdmitted(rows);
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Hold>> captor = ArgumentCaptor.forClass(List.class);
+        verify(admissionHoldJdbcRepository).upsertHolds(captor.capture());
+        assertEquals(2, captor.getValue().size());
+        assertEquals(classId, captor.getValue().get(0).classId());
+        assertEquals(expiresAt, captor.getValue().get(0).expiresAt());
+        assertTrue(expiresAt.isAfter(LocalDateTime.now().plusMinutes(59)));
+        assertEquals(2, admissionHoldService.pendingCount());
+    }
+
+    @Test
+    void testConfirm_CancelsTimer() {
+        UUID applicationId = UUID.randomUUID();
+        admissionHoldService.hold(applicationId, "A123456789", UUID.randomUUID());
+        when(admissionHoldJdbcRepository.confirmHold(eq(applicationId), eq("A123456789"), any())).thenReturn(true);
+
+        assertTrue(admissionHoldService.confirm(applicationId, "A123456789"));
+
+        assertEquals(0, admissionHoldService.pendingCount());
+        assertEquals(0, admissionHoldService.expireDue(System.currentTimeMillis() + 2 * HOUR));
+        verify(admissionHoldJdbcRepository, never()).expireHolds(anyList(), any());
+    }
+
+    @Test
+    void testConfirm_ExpiredOrMissing_KeepsTimer() {
+        UUID applicationId = UUID.randomUUID();
+        admissionHoldService.hold(applicationId, "A123456789", UUID.randomUUID());
+        when(admissionHoldJdbcRepository.confirmHold(any(), any(), any())).thenReturn(false);
+
+        assertFalse(admissionHoldService.confirm(applicationId, "A123456789"));
+
+        assertEquals(1, admissionHoldService.pendingCount());
+    }
+
+    @Test
+    void testExpireDue_RevertsAfterDeadlineAndPromotes() {
+        UUID classId = UUID.randomUUID();
+        List<Hold> holds = holdRows(2, classId);
+        when(admissionHoldJdbcRepository.expireHolds(anyList(), any())).thenReturn(holds);
+
+        assertEquals(0, admissionHoldService.expireDue(System.currentTimeMillis() + HOUR / 2));
+        verify(admissionHoldJdbcRepository, never()).expireHolds(anyList(), any());
+
+        assertEquals(2, admissionHoldService.expireDue(System.currentTimeMillis() + 2 * HOUR));
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<HoldKey>> keys = ArgumentCaptor.forClass(List.class);
+        verify(admissionHoldJdbcRepository).expireHolds(keys.capture(), any());
+        assertEquals(2, keys.getValue().size());
+        assertTrue(keys.getValue().contains(holds.get(0).key()));
+        verify(classCapacityService, times(1)).invalidate(classId);
+        verify(waitlistPromotionService, times(1)).seatFreed(classId);
+        assertEquals(0, admissionHoldService.pendingCount());
+    }
+
+    @Test
+    void testExpireDue_SplitsIntoBatches() {
+        holdRows(5, UUID.randomUUID());
+        when(admissionHoldJdbcRepository.expireHolds(anyList(), any())).thenReturn(new ArrayList<>());
+
+        admissionHoldService.expireDue(System.currentTimeMillis() + 2 * HOUR);
+
+        verify(admissionHoldJdbcRepository, times(3)).expireHolds(anyList(), any());
+    }
+
+    @Test
+    void testExpireDue_FailureReschedules() {
+        holdRows(2, UUID.randomUUID());
+        when(admissionHoldJdbcRepository.expireHolds(anyList(), any())).thenThrow(new RuntimeException("DB 連線中斷"));
+
+        assertEquals(0, admissionHoldService.expireDue(System.currentTimeMillis() + 2 * HOUR));
+
+        assertEquals(2, admissionHoldService.pendingCount());
+    }
+
+    @Test
+    void testRebuild_LoadsHoldsFromDatabase() {
+        doAnswer(invocation -> {
+            Consumer<Hold> consumer = invocation.getArgument(0);
+            consumer.accept(new Hold(UUID.randomUUID(), "A1", UUID.randomUUID(), LocalDateTime.now().minusMinutes(5)));
+            consumer.accept(new Hold(UUID.randomUUID(), "A2", UUID.randomUUID(), LocalDateTime.now().plusHours(10)));
+            return 2;
+        }).when(admissionHoldJdbcRepository).forEachHold(any());
+        when(admissionHoldJdbcRepository.expireHolds(anyList(), any())).thenReturn(new ArrayList<>());
+
+        admissionHoldService.rebuild();
+
+        assertEquals(2, admissionHoldService.pendingCount());
+        admissionHoldService.expireDue(System.currentTimeMillis());
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<HoldKey>> keys = ArgumentCaptor.forClass(List.class);
+        verify(admissionHoldJdbcRepository).expireHolds(keys.capture(), any());
+        assertEquals(List.of("A1"), keys.getValue().stream().map(HoldKey::nationalId).toList());
+        assertEquals(1, admissionHoldService.pendingCount());
+    }
+}
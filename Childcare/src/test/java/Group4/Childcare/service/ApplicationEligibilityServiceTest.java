@@ -0,0 +1,111 @@
+package Group4.Childcare.service;
+
+import Group4.Childcare.DTO.ApplicationParticipantDTO;
+import Group4.Childcare.Repository.ApplicationsJdbcRepository;
+import Group4.Childcare.Repository.ApplicationsJdbcRepository.ChildApplicationCounts;
+import Group4.Childcare.Service.ApplicationEligibilityService;
+import Group4.Childcare.Service.ApplicationEligibilityService.Verdict;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+/**
+ * ApplicationEligibilityService 單元測試
+ *
+ * 測試覆蓋：
+ * 1. 所有幼兒一次查詢，重複身分證只帶一次
+ * 2. 三條規則依序判斷，訊息為第一位不符合幼兒的原因
+ * 3. 查無案件的幼兒視為 0 件
+ * 4. 未填身分證、null 名單不查詢
+ */
+@ExtendWith(MockitoExtension.class)
+class ApplicationEligibilityServiceTest {
+
+    @Mock
+    private ApplicationsJdbcRepository applicationsJdbcRepository;
+
+    private ApplicationEligibilityService applicationEligibilityService;
+    private UUID institutionId;
+
+    @BeforeEach
+    void setUp() {
+        applicationEligibilityService = new ApplicationEligibilityService(applicationsJdbcRepository);
+        institutionId = UUID.randomUUID();
+    }
+
+    private static ApplicationParticipantDTO child(String name, String nationalId) {
+        ApplicationParticipantDTO dto = new ApplicationParticipantDTO();
+        dto.setName(name);
+        dto.setNationalID(nationalId);
+        return dto;
+    }
+
+    @Test
+    void testCheck_SingleQueryForAllChildren() {
+        when(applicationsJdbcRepository.countChildApplications(List.of("C1", "C2"), institutionId)).thenReturn(List.of(
+                new ChildApplicationCounts("C1", 0, 1, 0),
+                new ChildApplicationCounts("C2", 0, 0, 0)));
+
+        Verdict verdict = applicationEligibilityService.check(institutionId,
+                List.of(child("王小明", "C1"), child("王小華", "C2"), child("王小明", "C1")));
+
+        assertTrue(verdict.eligible());
+        assertNull(verdict.message());
+        assertEquals(3, verdict.children().size());
+        assertEquals(1, verdict.children().get(0).pendingCount());
+        verify(applicationsJdbcRepository, times(1)).countChildApplications(anyList(), any());
+    }
+
+    @Test
+    void testCheck_RulesInOrder() {
+        when(applicationsJdbcRepository.countChildApplications(anyList(), any())).thenReturn(List.of(
+                new ChildApplicationCounts("C1", 0, 0, 0),
+                new ChildApplicationCounts("C2", 1, 2, 1),
+                new ChildApplicationCounts("C3", 0, 2, 1),
+                new ChildApplicationCounts("C4", 0, 1, 1)));
+
+        Verdict verdict = applicationEligibilityService.check(institutionId,
+                List.of(child("甲", "C1"), child("乙", "C2"), child("丙", "C3"), child("丁", "C4")));
+
+        assertFalse(verdict.eligible());
+        assertTrue(verdict.children().get(0).isEligible());
+        assertTrue(verdict.children().get(1).reason().contains("已有錄取案件"));
+        assertTrue(verdict.children().get(2).reason().contains("已達上限 2 件"));
+        assertTrue(verdict.children().get(3).reason().contains("已在本機構有有效申請"));
+        assertEquals(verdict.children().get(1).reason(), verdict.message());
+        assertTrue(verdict.message().contains("乙"));
+    }
+
+    @Test
+    void testCheck_MissingRowTreatedAsNoApplications() {
+        when(applicationsJdbcRepository.countChildApplications(anyList(), any())).thenReturn(new ArrayList<>());
+
+        Verdict verdict = applicationEligibilityService.check(institutionId, List.of(child("王小明", "C1")));
+
+        assertTrue(verdict.eligible());
+        assertEquals(0, verdict.children().get(0).acceptedCount());
+    }
+
+    @Test
+    void testCheck_BlankOrNullSkipsQuery() {
+        assertTrue(applicationEligibilityService.check(institutionId, null).eligible());
+        Verdict verdict = applicationEligibilityService.check(institutionId,
+                Arrays.asList(child("無身分證", "   "), child("未填", null), null));
+
+        assertTrue(verdict.eligible());
+        assertTrue(verdict.children().isEmpty());
+        verifyNoInteractions(applicationsJdbcRepository);
+    }
+}
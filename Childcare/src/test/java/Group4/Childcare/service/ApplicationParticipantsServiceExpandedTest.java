@@ -3,8 +3,12 @@ package Group4.Childcare.service;
 import Group4.Childcare.Model.ApplicationParticipants;
 import Group4.Childcare.Repository.ApplicationParticipantsJdbcRepository;
 import Group4.Childcare.Repository.ApplicationsJdbcRepository;
+import Group4.Childcare.Repository.WaitlistRankKeys;
 import Group4.Childcare.Service.ApplicationParticipantsService;
+import Group4.Childcare.Service.ClassCapacityService;
 import Group4.Childcare.Service.EmailService;
+import Group4.Childcare.Service.WaitlistPromotionService;
+import Group4.Childcare.Service.WaitlistRankIndexService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -28,6 +32,7 @@ import static org.mockito.Mockito.*;
  * 2. updateParticipantWithDynamicOrder() 的錯誤處理和邊界情況
  * 3. countApplicationsByChildNationalID()
  * 4. 各種異常處理路徑
+ * 5. 改為已錄取時班級已滿：拋出 ClassFullException，不寄送通知
  */
 @ExtendWith(MockitoExtension.class)
 @org.mockito.junit.jupiter.MockitoSettings(strictness = org.mockito.quality.Strictness.LENIENT)
@@ -45,6 +50,15 @@ class ApplicationParticipantsServiceExpandedTest {
     @Mock
     private EmailService emailService;
 
+    @Mock
+    private WaitlistRankIndexService waitlistRankIndexService;
+
+    @Mock
+    private WaitlistPromotionService waitlistPromotionService;
+
+    @Mock
+    private ClassCapacityService classCapacityService;
+
     @InjectMocks
     private ApplicationParticipantsService service;
 
@@ -63,11 +77,6 @@ class ApplicationParticipantsServiceExpandedTest {
         testParticipant.setName("測試幼兒");
         testParticipant.setStatus("候補中");
         testParticipant.setParticipantType(false); // 幼兒
-
-        // Inject dependencies
-        ReflectionTestUtils.setField(service, "jdbcTemplate", jdbcTemplate);
-        ReflectionTestUtils.setField(service, "emailService", emailService);
-        ReflectionTestUtils.setField(service, "applicationsJdbcRepository", applicationsJdbcRepository);
     }
 
     // ========== cancelApplicationWithOrderRecalculation Tests ==========
@@ -75,7 +84,6 @@ class ApplicationParticipantsServiceExpandedTest {
     @Test
     void testCancelApplication_WithCurrentOrder_Success() {
         // Given - 有候補序號的申請案
-        UUID institutionId = UUID.randomUUID();
 
         Map<String, Object> currentInfo = new HashMap<>();
         currentInfo.put("CurrentOrder", 5);
@@ -85,13 +93,6 @@ class ApplicationParticipantsServiceExpandedTest {
         when(jdbcTemplate.queryForMap(anyString(), eq(testApplicationId.toString()), eq(testNationalId)))
                 .thenReturn(currentInfo);
 
-        when(jdbcTemplate.queryForObject(contains("SELECT InstitutionID"), eq(String.class),
-                eq(testApplicationId.toString())))
-                .thenReturn(institutionId.toString());
-
-        when(jdbcTemplate.update(contains("SET CurrentOrder = CurrentOrder - 1"), eq(5), eq(institutionId.toString())))
-                .thenReturn(3); // 影響3筆記錄
-
         when(jdbcTemplate.update(contains("SET Status = '撤銷申請通過'"), anyString(), any(),
                 eq(testApplicationId.toString()), eq(testNationalId)))
                 .thenReturn(1);
@@ -109,8 +110,8 @@ class ApplicationParticipantsServiceExpandedTest {
         assertNotNull(result);
         assertEquals("撤銷申請通過", result.getStatus());
         assertNull(result.getCurrentOrder());
-        verify(jdbcTemplate).update(contains("SET CurrentOrder = CurrentOrder - 1"), eq(5),
-                eq(institutionId.toString()));
+        // 後面的候補名次由排序鍵推導，不再逐筆遞補
+        verify(jdbcTemplate, never()).update(contains("SET CurrentOrder = CurrentOrder - 1"), any(), any());
     }
 
     @Test
@@ -188,31 +189,31 @@ class ApplicationParticipantsServiceExpandedTest {
     }
 
     @Test
-    void testCancelApplication_RecalculationError_ThrowsException() {
-        // Given - 遞補操作失敗
-        UUID institutionId = UUID.randomUUID();
-
+    void testCancelApplication_WithCurrentOrder_UpdatesOnlyOwnRow() {
+        // Given - 撤銷候補中的申請案只更新自己的資料列
         Map<String, Object> currentInfo = new HashMap<>();
-        currentInfo.put("CurrentOrder", 5);
+        currentInfo.put("CurrentOrder", 5 * WaitlistRankKeys.RANK_STEP);
         currentInfo.put("ParticipantType", 0);
         currentInfo.put("Status", "候補中");
 
         when(jdbcTemplate.queryForMap(anyString(), eq(testApplicationId.toString()), eq(testNationalId)))
                 .thenReturn(currentInfo);
 
-        when(jdbcTemplate.queryForObject(contains("SELECT InstitutionID"), eq(String.class),
-                eq(testApplicationId.toString())))
-                .thenReturn(institutionId.toString());
+        when(jdbcTemplate.update(contains("SET Status = '撤銷申請通過'"), anyString(), any(),
+                eq(testApplicationId.toString()), eq(testNationalId)))
+                .thenReturn(1);
 
-        when(jdbcTemplate.update(contains("SET CurrentOrder = CurrentOrder - 1"), eq(5), eq(institutionId.toString())))
-                .thenThrow(new RuntimeException("Update failed"));
+        when(repository.findByApplicationIDAndNationalID(testApplicationId, testNationalId))
+                .thenReturn(List.of(testParticipant));
 
-        // When & Then
-        RuntimeException exception = assertThrows(RuntimeException.class, () -> {
-            service.cancelApplicationWithOrderRecalculation(testApplicationId, testNationalId, "測試");
-        });
+        // When
+        service.cancelApplicationWithOrderRecalculation(testApplicationId, testNationalId, "測試");
 
-        assertTrue(exception.getMessage().contains("遞補候補序號失敗"));
+        // Then
+        verify(jdbcTemplate, never()).queryForObject(contains("SELECT InstitutionID"), eq(String.class), anyString());
+        verify(jdbcTemplate, never()).update(contains("CurrentOrder - 1"), any(), any());
+        verify(jdbcTemplate).update(contains("CurrentOrder = NULL"), anyString(), any(),
+                eq(testApplicationId.toString()), eq(testNationalId));
     }
 
     @Test
@@ -268,7 +269,7 @@ class ApplicationParticipantsServiceExpandedTest {
 
     @Test
     void testUpdateDynamicOrder_ChangeToWaitlisted_FirstApplicant() {
-        // Given - 第一個候補者(maxOrder = null)
+        // Given - 第一個候補者（機構序列初始化後取得第一個排序鍵）
         UUID institutionId = UUID.randomUUID();
 
         Map<String, Object> currentInfo = new HashMap<>();
@@ -283,16 +284,16 @@ class ApplicationParticipantsServiceExpandedTest {
                 eq(testApplicationId.toString())))
                 .thenReturn(institutionId.toString());
 
-        when(jdbcTemplate.queryForObject(contains("SELECT MAX(ap.CurrentOrder)"), eq(Integer.class),
+        when(jdbcTemplate.queryForList(contains("waitlist_rank_sequences"), eq(Integer.class), anyInt(),
                 eq(institutionId.toString())))
-                .thenReturn(null); // 沒有現有的候補者
+                .thenReturn(Collections.emptyList(), List.of(WaitlistRankKeys.RANK_STEP)); // 沒有現有的序列
 
         when(jdbcTemplate.update(contains("UPDATE application_participants SET Status = ?"), any(), any(), any(), any(),
                 any(), any()))
                 .thenReturn(1);
 
         testParticipant.setStatus("候補中");
-        testParticipant.setCurrentOrder(1);
+        testParticipant.setCurrentOrder(WaitlistRankKeys.RANK_STEP);
         when(repository.findByApplicationIDAndNationalID(testApplicationId, testNationalId))
                 .thenReturn(List.of(testParticipant));
 
@@ -302,7 +303,10 @@ class ApplicationParticipantsServiceExpandedTest {
 
         // Then
         assertNotNull(result);
-        assertEquals(1, result.getCurrentOrder()); // 第一個候補者應該是1
+        assertEquals(WaitlistRankKeys.RANK_STEP, result.getCurrentOrder()); // 第一個排序鍵
+        verify(jdbcTemplate).update(contains("INSERT INTO waitlist_rank_sequences"), any(), any(), any());
+        verify(jdbcTemplate).update(contains("UPDATE application_participants SET Status = ?"),
+                eq("候補中"), any(), any(), eq(WaitlistRankKeys.RANK_STEP), any(), any());
     }
 
     @Test
@@ -471,9 +475,9 @@ class ApplicationParticipantsServiceExpandedTest {
                 eq(testApplicationId.toString())))
                 .thenReturn(institutionId.toString());
 
-        when(jdbcTemplate.queryForObject(contains("SELECT MAX(ap.CurrentOrder)"), eq(Integer.class),
+        when(jdbcTemplate.queryForList(contains("waitlist_rank_sequences"), eq(Integer.class), anyInt(),
                 eq(institutionId.toString())))
-                .thenReturn(10);
+                .thenReturn(List.of(11));
 
         when(jdbcTemplate.update(contains("UPDATE application_participants SET Status = ?"), any(), any(), any(), any(),
                 any(), any()))
@@ -551,28 +555,43 @@ class ApplicationParticipantsServiceExpandedTest {
     }
 
     @Test
-    void testSendStatusChangeEmail_NoEmail() throws Exception {
-        // Given
+    void testSendStatusChangeEmail_UsesDerivedWaitlistPosition() throws Exception {
+        // Given - 郵件顯示由排序鍵推導的候補名次，而非排序鍵本身
+        String email = "test@example.com";
         when(applicationsJdbcRepository.getUserEmailByApplicationId(testApplicationId))
-                .thenReturn(Optional.empty());
+                .thenReturn(Optional.of(email));
+
+        Map<String, Object> caseInfo = new HashMap<>();
+        caseInfo.put("ApplicantName", "家長");
+        caseInfo.put("ChildName", "小明");
+        caseInfo.put("InstitutionName", "機構");
+        caseInfo.put("CaseNumber", 12345L);
+        caseInfo.put("ApplicationDate", "2023-01-01");
+        caseInfo.put("WaitlistPosition", 3);
+
+        when(jdbcTemplate.queryForMap(contains("WaitlistPosition"), eq(testApplicationId.toString()), eq(testNationalId)))
+                .thenReturn(caseInfo);
 
         // When
-        ReflectionTestUtils.invokeMethod(service, "sendStatusChangeEmail", testApplicationId, testNationalId, "已錄取", "理由", null);
+        ReflectionTestUtils.invokeMethod(service, "sendStatusChangeEmail", testApplicationId, testNationalId, "候補中", null,
+                3 * WaitlistRankKeys.RANK_STEP);
 
         // Then
-        verify(emailService, never()).sendApplicationStatusChangeEmail(anyString(), anyString(), anyString(), anyString(), any(), any(), anyString(), any(), anyString());
+        verify(emailService).sendApplicationStatusChangeEmail(
+                eq(email), eq("家長"), eq("小明"), eq("機構"), eq(12345L), anyString(), eq("候補中"), eq(3), isNull());
     }
 
     @Test
-    void testSendStatusChangeEmail_EmailServiceNull() {
+    void testSendStatusChangeEmail_NoEmail() throws Exception {
         // Given
-        ReflectionTestUtils.setField(service, "emailService", null);
+        when(applicationsJdbcRepository.getUserEmailByApplicationId(testApplicationId))
+                .thenReturn(Optional.empty());
 
         // When
         ReflectionTestUtils.invokeMethod(service, "sendStatusChangeEmail", testApplicationId, testNationalId, "已錄取", "理由", null);
 
         // Then
-        // Should return early without exception
+        verify(emailService, never()).sendApplicationStatusChangeEmail(anyString(), anyString(), anyString(), anyString(), any(), any(), anyString(), any(), anyString());
     }
 
     @Test
@@ -594,36 +613,64 @@ class ApplicationParticipantsServiceExpandedTest {
     void testUpdateClassStudentCount_AdmittedToNotAdmitted() {
         // Given
         UUID classId = UUID.randomUUID();
-        
+        when(classCapacityService.release(classId)).thenReturn(true);
+
+        // When
+        ReflectionTestUtils.invokeMethod(service, "updateClassStudentCount", testApplicationId, testNationalId, "已錄取", "已撤銷", classId);
+
+        // Then - 空出座位後遞補候補者
+        verify(classCapacityService).release(classId);
+        verify(waitlistPromotionService).seatFreed(classId);
+    }
+
+    @Test
+    void testUpdateClassStudentCount_AdmittedToNotAdmitted_NothingReleased() {
+        // Given
+        UUID classId = UUID.randomUUID();
+        when(classCapacityService.release(classId)).thenReturn(false);
+
         // When
         ReflectionTestUtils.invokeMethod(service, "updateClassStudentCount", testApplicationId, testNationalId, "已錄取", "已撤銷", classId);
 
         // Then
-        verify(jdbcTemplate).update(anyString(), eq(-1), eq(classId.toString()));
+        verify(waitlistPromotionService, never()).seatFreed(any());
     }
 
     @Test
     void testUpdateClassStudentCount_NotAdmittedToAdmitted() {
         // Given
         UUID classId = UUID.randomUUID();
-        
+        when(classCapacityService.reserve(classId)).thenReturn(true);
+
         // When
         ReflectionTestUtils.invokeMethod(service, "updateClassStudentCount", testApplicationId, testNationalId, "待審核", "已錄取", classId);
 
         // Then
-        verify(jdbcTemplate).update(anyString(), eq(1), eq(classId.toString()));
+        verify(classCapacityService).reserve(classId);
+        verify(jdbcTemplate, never()).update(contains("UPDATE classes"), any(Object[].class));
+    }
+
+    @Test
+    void testUpdateClassStudentCount_NotAdmittedToAdmitted_ClassFull() {
+        // Given - 條件式佔用不成立，不超收
+        UUID classId = UUID.randomUUID();
+        when(classCapacityService.reserve(classId)).thenReturn(false);
+
+        // When & Then
+        assertThrows(ApplicationParticipantsService.ClassFullException.class, () ->
+                ReflectionTestUtils.invokeMethod(service, "updateClassStudentCount", testApplicationId, testNationalId, "待審核", "已錄取", classId));
     }
 
     @Test
     void testUpdateClassStudentCount_NoChange() {
         // Given
         UUID classId = UUID.randomUUID();
-        
+
         // When
         ReflectionTestUtils.invokeMethod(service, "updateClassStudentCount", testApplicationId, testNationalId, "待審核", "候補中", classId);
 
         // Then
-        verify(jdbcTemplate, never()).update(anyString(), anyInt(), anyString());
+        verifyNoInteractions(classCapacityService);
     }
 
     @Test
@@ -632,14 +679,14 @@ class ApplicationParticipantsServiceExpandedTest {
         ReflectionTestUtils.invokeMethod(service, "updateClassStudentCount", testApplicationId, testNationalId, "待審核", "已錄取", null);
 
         // Then
-        verify(jdbcTemplate, never()).update(anyString(), anyInt(), anyString());
+        verifyNoInteractions(classCapacityService);
     }
 
     @Test
     void testUpdateClassStudentCount_Exception() {
         // Given
         UUID classId = UUID.randomUUID();
-        when(jdbcTemplate.update(anyString(), anyInt(), anyString())).thenThrow(new RuntimeException("Update failed"));
+        when(classCapacityService.reserve(classId)).thenThrow(new RuntimeException("Update failed"));
 
         // When
         ReflectionTestUtils.invokeMethod(service, "updateClassStudentCount", testApplicationId, testNationalId, "待審核", "已錄取", classId);
@@ -750,7 +797,7 @@ class ApplicationParticipantsServiceExpandedTest {
         service.cancelApplicationWithOrderRecalculation(testApplicationId, testNationalId, "理由");
 
         // Then
-        // Should not call shift orders because institutionId was null
+        // Should not shift other orders
         verify(jdbcTemplate, never()).update(contains("CurrentOrder - 1"), anyInt(), anyString());
     }
 
@@ -834,7 +881,7 @@ class ApplicationParticipantsServiceExpandedTest {
     }
 
     @Test
-    void testUpdateDynamicOrder_WaitlistToAdmitted_RecalculationError() {
+    void testUpdateDynamicOrder_WaitlistToAdmitted_NoRecalculation() {
         // Given
         Map<String, Object> currentInfo = new HashMap<>();
         currentInfo.put("Status", "候補中");
@@ -844,12 +891,6 @@ class ApplicationParticipantsServiceExpandedTest {
         when(jdbcTemplate.queryForMap(anyString(), eq(testApplicationId.toString()), eq(testNationalId)))
                 .thenReturn(currentInfo);
 
-        when(jdbcTemplate.queryForObject(contains("SELECT InstitutionID"), eq(String.class), eq(testApplicationId.toString())))
-                .thenReturn(UUID.randomUUID().toString());
-
-        when(jdbcTemplate.update(contains("CurrentOrder - 1"), anyInt(), anyString()))
-                .thenThrow(new RuntimeException("Update error"));
-
         when(jdbcTemplate.update(contains("UPDATE application_participants SET Status = ?"), any(), any(), any(), any(), any(), any()))
                 .thenReturn(1);
 
@@ -860,8 +901,9 @@ class ApplicationParticipantsServiceExpandedTest {
         service.updateParticipantWithDynamicOrder(testApplicationId, testNationalId, "已錄取", "理由", null);
 
         // Then
-        // Should catch exception and continue
-        verify(jdbcTemplate).update(contains("UPDATE application_participants SET Status = ?"), any(), any(), any(), any(), any(), any());
+        // Only the participant's own row is updated, with its rank key cleared
+        verify(jdbcTemplate, never()).update(contains("CurrentOrder - 1"), any(), any());
+        verify(jdbcTemplate).update(contains("UPDATE application_participants SET Status = ?"), any(), any(), any(), isNull(), any(), any());
     }
 
     @Test
@@ -904,6 +946,7 @@ class ApplicationParticipantsServiceExpandedTest {
         when(jdbcTemplate.update(contains("SET ClassID = ?"), anyString(), anyString(), anyString()))
                 .thenThrow(new RuntimeException("Update error"));
 
+        when(classCapacityService.reserve(classId)).thenReturn(true);
         when(repository.findByApplicationIDAndNationalID(testApplicationId, testNationalId))
                 .thenReturn(List.of(testParticipant));
 
@@ -915,6 +958,52 @@ class ApplicationParticipantsServiceExpandedTest {
         verify(repository).findByApplicationIDAndNationalID(testApplicationId, testNationalId);
     }
 
+    @Test
+    void testUpdateDynamicOrder_AdmitToFullClass_ThrowsClassFull() {
+        // Given
+        UUID classId = UUID.randomUUID();
+        Map<String, Object> currentInfo = new HashMap<>();
+        currentInfo.put("Status", "候補中");
+        currentInfo.put("CurrentOrder", 3072);
+        currentInfo.put("ParticipantType", 0);
+
+        when(jdbcTemplate.queryForMap(anyString(), eq(testApplicationId.toString()), eq(testNationalId)))
+                .thenReturn(currentInfo);
+        when(classCapacityService.reserve(classId)).thenReturn(false);
+
+        // When & Then
+        assertThrows(ApplicationParticipantsService.ClassFullException.class, () ->
+                service.updateParticipantWithDynamicOrder(testApplicationId, testNationalId, "已錄取", "理由", classId));
+
+        // 交易回滾，不寄送錄取通知
+        verify(repository, never()).findByApplicationIDAndNationalID(any(), any());
+        verifyNoInteractions(emailService);
+    }
+
+    @Test
+    void testUpdateDynamicOrder_AdmitWithSeat_Succeeds() {
+        // Given
+        UUID classId = UUID.randomUUID();
+        Map<String, Object> currentInfo = new HashMap<>();
+        currentInfo.put("Status", "候補中");
+        currentInfo.put("CurrentOrder", 3072);
+        currentInfo.put("ParticipantType", 0);
+
+        when(jdbcTemplate.queryForMap(anyString(), eq(testApplicationId.toString()), eq(testNationalId)))
+                .thenReturn(currentInfo);
+        when(classCapacityService.reserve(classId)).thenReturn(true);
+        when(repository.findByApplicationIDAndNationalID(testApplicationId, testNationalId))
+                .thenReturn(List.of(testParticipant));
+
+        // When
+        ApplicationParticipants result = service.updateParticipantWithDynamicOrder(
+                testApplicationId, testNationalId, "已錄取", "理由", classId);
+
+        // Then
+        assertNotNull(result);
+        verify(classCapacityService).reserve(classId);
+    }
+
     @Test
     void testUpdateDynamicOrder_ParticipantNotFound_ThrowsException() {
         // Given
@@ -1011,7 +1100,7 @@ class ApplicationParticipantsServiceExpandedTest {
         ReflectionTestUtils.invokeMethod(service, "updateClassStudentCount", testApplicationId, testNationalId, "待審核", "已錄取", null);
 
         // Then
-        verify(jdbcTemplate, never()).update(contains("UPDATE classes"), anyInt(), anyString());
+        verify(jdbcTemplate, never()).queryForList(contains("UPDATE classes"), any(Object[].class));
     }
 
     @Test
@@ -1024,7 +1113,7 @@ class ApplicationParticipantsServiceExpandedTest {
         ReflectionTestUtils.invokeMethod(service, "updateClassStudentCount", testApplicationId, testNationalId, "待審核", "已錄取", null);
 
         // Then
-        verify(jdbcTemplate, never()).update(contains("UPDATE classes"), anyInt(), anyString());
+        verify(jdbcTemplate, never()).queryForList(contains("UPDATE classes"), any(Object[].class));
     }
 
     @Test
@@ -1122,7 +1211,7 @@ class ApplicationParticipantsServiceExpandedTest {
         ReflectionTestUtils.invokeMethod(service, "updateClassStudentCount", testApplicationId, testNationalId, "待審核", "已錄取", null);
 
         // Then
-        verify(jdbcTemplate, never()).update(contains("UPDATE classes"), anyInt(), anyString());
+        verify(jdbcTemplate, never()).queryForList(contains("UPDATE classes"), any(Object[].class));
     }
 
     @Test
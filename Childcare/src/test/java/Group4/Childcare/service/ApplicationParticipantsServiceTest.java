@@ -2,7 +2,12 @@ package Group4.Childcare.service;
 
 import Group4.Childcare.Model.ApplicationParticipants;
 import Group4.Childcare.Repository.ApplicationParticipantsJdbcRepository;
+import Group4.Childcare.Repository.ApplicationsJdbcRepository;
 import Group4.Childcare.Service.ApplicationParticipantsService;
+import Group4.Childcare.Service.ClassCapacityService;
+import Group4.Childcare.Service.EmailService;
+import Group4.Childcare.Service.WaitlistPromotionService;
+import Group4.Childcare.Service.WaitlistRankIndexService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -10,7 +15,6 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.test.util.ReflectionTestUtils;
 
 import java.util.Optional;
 import java.util.UUID;
@@ -41,6 +45,21 @@ class ApplicationParticipantsServiceTest {
     @Mock
     private JdbcTemplate jdbcTemplate;
 
+    @Mock
+    private ApplicationsJdbcRepository applicationsJdbcRepository;
+
+    @Mock
+    private EmailService emailService;
+
+    @Mock
+    private WaitlistRankIndexService waitlistRankIndexService;
+
+    @Mock
+    private WaitlistPromotionService waitlistPromotionService;
+
+    @Mock
+    private ClassCapacityService classCapacityService;
+
     @InjectMocks
     private ApplicationParticipantsService service;
 
@@ -59,9 +78,6 @@ class ApplicationParticipantsServiceTest {
         testParticipant.setName("測試者");
         testParticipant.setStatus("待審核");
         testParticipant.setParticipantType(true);
-
-        // Ensure the service uses the mocked JdbcTemplate to avoid NPEs when jdbcTemplate methods are called
-        ReflectionTestUtils.setField(service, "jdbcTemplate", jdbcTemplate);
     }
 
     @Test
@@ -213,12 +229,13 @@ class ApplicationParticipantsServiceTest {
         lenient().when(jdbcTemplate.queryForObject(contains("SELECT InstitutionID"), eq(String.class), eq(testApplicationId.toString())))
             .thenReturn(institutionId.toString());
 
-        // Mock 查詢最大 CurrentOrder (返回 5)
-        lenient().when(jdbcTemplate.queryForObject(
-            contains("SELECT MAX(ap.CurrentOrder)"),
+        // Mock 機構候補排序鍵序列 (返回 6)
+        lenient().when(jdbcTemplate.queryForList(
+            contains("waitlist_rank_sequences"),
             eq(Integer.class),
+            anyInt(),
             eq(institutionId.toString())))
-            .thenReturn(5);
+            .thenReturn(java.util.List.of(6));
 
         // Mock update 操作
         lenient().when(jdbcTemplate.update(
@@ -239,12 +256,15 @@ class ApplicationParticipantsServiceTest {
         // Then
         assertNotNull(result);
         assertEquals("候補中", result.getStatus());
-        assertEquals(6, result.getCurrentOrder()); // 應該是 5 + 1 = 6
+        assertEquals(6, result.getCurrentOrder()); // 由機構序列配置
+        verify(jdbcTemplate).update(
+            contains("UPDATE application_participants SET Status = ?"),
+            eq("候補中"), any(), any(), eq(6), eq(testApplicationId.toString()), eq(testNationalId));
     }
 
     @Test
     void testUpdateParticipantWithDynamicOrder_FromWaitlistedToAccepted() {
-        // Given - 測試從"候補中"改為"已錄取"，應該遞補後面的順序
+        // Given - 測試從"候補中"改為"已錄取"，只清除自己的排序鍵
         UUID institutionId = UUID.randomUUID();
         UUID classId = UUID.randomUUID();
 
@@ -260,13 +280,6 @@ class ApplicationParticipantsServiceTest {
         lenient().when(jdbcTemplate.queryForObject(contains("SELECT InstitutionID"), eq(String.class), eq(testApplicationId.toString())))
             .thenReturn(institutionId.toString());
 
-        // Mock 遞補操作 (將 CurrentOrder > 3 的都減 1)
-        lenient().when(jdbcTemplate.update(
-            contains("SET CurrentOrder = CurrentOrder - 1"),
-            eq(3),
-            eq(institutionId.toString())))
-            .thenReturn(2); // 假設影響了 2 筆記錄
-
         // Mock 主要的 update 操作
         lenient().when(jdbcTemplate.update(
             contains("UPDATE application_participants SET Status = ?"),
@@ -281,6 +294,9 @@ class ApplicationParticipantsServiceTest {
             eq(testNationalId)))
             .thenReturn(1);
 
+        // 班級仍有座位
+        when(classCapacityService.reserve(classId)).thenReturn(true);
+
         // Mock repository 查詢
         testParticipant.setStatus("已錄取");
         testParticipant.setCurrentOrder(null);
@@ -297,6 +313,8 @@ class ApplicationParticipantsServiceTest {
         assertEquals("已錄取", result.getStatus());
         assertNull(result.getCurrentOrder()); // 已錄取後 CurrentOrder 應該是 null
         assertEquals(classId, result.getClassID());
+        // 後面的候補名次由排序鍵推導，不再逐筆遞補
+        verify(jdbcTemplate, never()).update(contains("SET CurrentOrder = CurrentOrder - 1"), any(), any());
     }
 }
 
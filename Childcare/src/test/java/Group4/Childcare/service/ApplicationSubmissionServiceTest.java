@@ -0,0 +1,140 @@
+package Group4.Childcare.service;
+
+import Group4.Childcare.DTO.ApplicationParticipantDTO;
+import Group4.Childcare.Model.ApplicationParticipants;
+import Group4.Childcare.Model.Applications;
+import Group4.Childcare.Repository.ApplicationParticipantsJdbcRepository;
+import Group4.Childcare.Repository.ApplicationsJdbcRepository;
+import Group4.Childcare.Service.ApplicationSubmissionService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+/**
+ * ApplicationSubmissionService 單元測試
+ *
+ * 測試覆蓋：
+ * 1. 先寫入案件，再以單一批次寫入家長與幼兒（家長在前）
+ * 2. DTO 欄位轉換：性別、日期、班級（格式錯誤時略過該欄位）
+ * 3. null 名單與名單中的 null 略過
+ * 4. 案件寫入失敗時不寫入申請人
+ */
+@ExtendWith(MockitoExtension.class)
+class ApplicationSubmissionServiceTest {
+
+    @Mock
+    private ApplicationsJdbcRepository applicationsJdbcRepository;
+
+    @Mock
+    private ApplicationParticipantsJdbcRepository applicationParticipantsJdbcRepository;
+
+    private ApplicationSubmissionService applicationSubmissionService;
+    private Applications application;
+
+    @BeforeEach
+    void setUp() {
+        applicationSubmissionService = new ApplicationSubmissionService(applicationsJdbcRepository,
+                applicationParticipantsJdbcRepository);
+        application = new Applications();
+        application.setApplicationID(UUID.randomUUID());
+        application.setCaseNumber(202510170001L);
+    }
+
+    private static ApplicationParticipantDTO dto(String name, String nationalId) {
+        ApplicationParticipantDTO dto = new ApplicationParticipantDTO();
+        dto.setName(name);
+        dto.setNationalID(nationalId);
+        return dto;
+    }
+
+    @Test
+    void testSubmit_InsertsApplicationThenBatchParticipants() {
+        ApplicationParticipantDTO parent = dto("王大明", "P123456789");
+        ApplicationParticipantDTO child1 = dto("王小明", "C123456789");
+        ApplicationParticipantDTO child2 = dto("王小華", "C987654321");
+        when(applicationParticipantsJdbcRepository.batchInsert(anyList())).thenReturn(3);
+
+        List<ApplicationParticipants> result = applicationSubmissionService.submit(application,
+                List.of(parent), List.of(child1, child2));
+
+        InOrder inOrder = inOrder(applicationsJdbcRepository, applicationParticipantsJdbcRepository);
+        inOrder.verify(applicationsJdbcRepository).insertApplication(application);
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<ApplicationParticipants>> captor = ArgumentCaptor.forClass(List.class);
+        inOrder.verify(applicationParticipantsJdbcRepository).batchInsert(captor.capture());
+
+        List<ApplicationParticipants> inserted = captor.getValue();
+        assertEquals(result, inserted);
+        assertEquals(3, inserted.size());
+        assertTrue(inserted.get(0).getParticipantType());
+        assertFalse(inserted.get(1).getParticipantType());
+        assertEquals("王小華", inserted.get(2).getName());
+        assertTrue(inserted.stream().allMatch(p -> application.getApplicationID().equals(p.getApplicationID())));
+        assertTrue(inserted.stream().allMatch(p -> p.getParticipantID() != null));
+    }
+
+    @Test
+    void testToParticipant_ConvertsFields() {
+        UUID classId = UUID.randomUUID();
+        ApplicationParticipantDTO dto = dto("王小明", "C123456789");
+        dto.setGender("M");
+        dto.setBirthDate("2021-03-15");
+        dto.setSuspendEnd("2025-12-31");
+        dto.setClassID(classId.toString());
+        dto.setCurrentOrder(5);
+        dto.setStatus("審核中");
+
+        ApplicationParticipants participant = ApplicationSubmissionService.toParticipant(dto,
+                application.getApplicationID(), false);
+
+        assertTrue(participant.getGender());
+        assertEquals(LocalDate.of(2021, 3, 15), participant.getBirthDate());
+        assertEquals(LocalDate.of(2025, 12, 31), participant.getSuspendEnd());
+        assertEquals(classId, participant.getClassID());
+        assertEquals(5, participant.getCurrentOrder());
+        assertEquals("審核中", participant.getStatus());
+
+        dto.setGender("女");
+        dto.setBirthDate("2021/03/15");
+        dto.setClassID("not-a-uuid");
+        ApplicationParticipants invalid = ApplicationSubmissionService.toParticipant(dto,
+                application.getApplicationID(), false);
+        assertFalse(invalid.getGender());
+        assertNull(invalid.getBirthDate());
+        assertNull(invalid.getClassID());
+    }
+
+    @Test
+    void testSubmit_NullListsAndEntriesSkipped() {
+        applicationSubmissionService.submit(application, null, Arrays.asList(dto("王小明", "C123456789"), null));
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<ApplicationParticipants>> captor = ArgumentCaptor.forClass(List.class);
+        verify(applicationParticipantsJdbcRepository).batchInsert(captor.capture());
+        assertEquals(1, captor.getValue().size());
+    }
+
+    @Test
+    void testSubmit_ApplicationInsertFails_NoParticipants() {
+        doThrow(new RuntimeException("DB 連線中斷")).when(applicationsJdbcRepository).insertApplication(any());
+
+        assertThrows(RuntimeException.class, () -> applicationSubmissionService.submit(application,
+                List.of(dto("王大明", "P123456789")), List.of(dto("王小明", "C123456789"))));
+
+        verify(applicationParticipantsJdbcRepository, never()).batchInsert(anyList());
+    }
+}
@@ -6,8 +6,10 @@ import Group4.Childcare.Model.Applications;
 import Group4.Childcare.Repository.ApplicationParticipantsJdbcRepository;
 import Group4.Childcare.Repository.ApplicationsJdbcRepository;
 import Group4.Childcare.Service.ApplicationsService;
+import Group4.Childcare.Service.CaseNumberAllocator;
 import Group4.Childcare.Service.EmailService;
 import Group4.Childcare.Service.FileService;
+import Group4.Childcare.Service.WaitlistRankIndexService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -52,6 +54,12 @@ class ApplicationsServiceTest {
     @Mock
     private EmailService emailService;
 
+    @Mock
+    private WaitlistRankIndexService waitlistRankIndexService;
+
+    @Mock
+    private CaseNumberAllocator caseNumberAllocator;
+
     @InjectMocks
     private ApplicationsService applicationsService;
 
@@ -86,26 +94,13 @@ class ApplicationsServiceTest {
     // ========== generateCaseNumber() 測試 ==========
 
     @Test
-    void testGenerateCaseNumber_Success() {
-        when(applicationsJdbcRepository.countCaseNumberWithDateFormat()).thenReturn(5L);
-
-        Long caseNumber = applicationsService.generateCaseNumber();
-
-        assertNotNull(caseNumber);
-        // 案件編號 = YYYYMMDD * 10000 + 6
-        assertTrue(caseNumber > 0);
-        verify(applicationsJdbcRepository).countCaseNumberWithDateFormat();
-    }
-
-    @Test
-    void testGenerateCaseNumber_FirstCase() {
-        when(applicationsJdbcRepository.countCaseNumberWithDateFormat()).thenReturn(0L);
+    void testGenerateCaseNumber_UsesAllocator() {
+        when(caseNumberAllocator.next()).thenReturn(202412040021L);
 
         Long caseNumber = applicationsService.generateCaseNumber();
 
-        assertNotNull(caseNumber);
-        // 第一筆案件流水號應為 1
-        assertTrue(caseNumber % 10000 == 1);
+        assertEquals(202412040021L, caseNumber);
+        verify(applicationsJdbcRepository, never()).countCaseNumberWithDateFormat();
     }
 
     // ========== getById() 測試 ==========
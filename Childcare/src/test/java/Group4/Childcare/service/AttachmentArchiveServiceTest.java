@@ -0,0 +1,175 @@
+package Group4.Childcare.service;
+
+import Group4.Childcare.Repository.AttachmentArchiveJdbcRepository;
+import Group4.Childcare.Repository.AttachmentArchiveJdbcRepository.ArchiveCandidate;
+import Group4.Childcare.Repository.AttachmentArchiveJdbcRepository.ArchivedAttachment;
+import Group4.Childcare.Service.AttachmentArchiveService;
+import Group4.Childcare.Service.AttachmentBlobStore;
+import Group4.Childcare.Service.AttachmentStorageLayout;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.io.Resource;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * AttachmentArchiveService 單元測試
+ *
+ * 測試覆蓋：
+ * 1. 結案案件的附件附加到申請月份的封存檔、記錄位置、刪除原始檔案與資料夾並標記案件
+ * 2. 內容相同的附件只存一份（同一批與既有封存資料）
+ * 3. 記錄位置失敗時保留原始檔案，案件不標記為已封存
+ * 4. 讀取封存附件：只讀取該段資料，skip 直接跳到 Range 起點
+ * 5. 舊版預設目錄 IdentityResource/.archive 的封存檔搬到資源目錄以外的封存目錄
+ */
+@ExtendWith(MockitoExtension.class)
+class AttachmentArchiveServiceTest {
+
+    @Mock
+    private AttachmentArchiveJdbcRepository attachmentArchiveJdbcRepository;
+
+    @Mock
+    private AttachmentBlobStore attachmentBlobStore;
+
+    @TempDir
+    Path tempDir;
+
+    private Path archiveDir;
+    private AttachmentArchiveService service;
+
+    @BeforeEach
+    void setUp() {
+        archiveDir = tempDir.resolve(".archive");
+        Clock clock = Clock.fixed(Instant.parse("2025-09-01T01:00:00Z"), ZoneOffset.UTC);
+        service = new AttachmentArchiveService(attachmentArchiveJdbcRepository, attachmentBlobStore, tempDir, archiveDir,
+                Duration.ofDays(365), 10, clock);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testArchiveClosedCases_PacksAndDeletesOriginals() throws Exception {
+        UUID applicationId = UUID.randomUUID();
+        Path folder = Files.createDirectories(AttachmentStorageLayout.shardedFolder(tempDir, applicationId));
+        Files.writeString(folder.resolve("1_a.pdf"), "first");
+        Files.writeString(folder.resolve("2_b.pdf"), "second");
+        Files.writeString(folder.resolve("3_c.pdf"), "first");
+        when(attachmentArchiveJdbcRepository.findCandidates(any(LocalDateTime.class), eq(LocalDate.of(2025, 1, 1)), eq(10)))
+                .thenReturn(List.of(new ArchiveCandidate(applicationId, LocalDate.of(2024, 3, 15))));
+
+        assertEquals(3, service.archiveClosedCases());
+
+        assertEquals("firstsecond", Files.readString(archiveDir.resolve("2024-03.pack")));
+        assertFalse(Files.exists(folder));
+        ArgumentCaptor<List<ArchivedAttachment>> entries = ArgumentCaptor.forClass(List.class);
+        verify(attachmentArchiveJdbcRepository).insertAll(eq(applicationId), entries.capture(), any(LocalDateTime.class));
+        assertEquals(3, entries.getValue().size());
+        ArchivedAttachment second = entries.getValue().get(1);
+        assertEquals(applicationId + "/2_b.pdf", second.attachmentPath());
+        assertEquals("2024-03.pack", second.archiveFile());
+        assertEquals(5L, second.offset());
+        assertEquals(6L, second.length());
+        assertEquals(0L, entries.getValue().get(2).offset());
+        verify(attachmentArchiveJdbcRepository).markCaseArchived(eq(applicationId), any(LocalDateTime.class));
+        verify(attachmentBlobStore).release(applicationId + "/2_b.pdf");
+    }
+
+    @Test
+    void testArchiveClosedCases_ReusesArchivedContent() throws Exception {
+        UUID applicationId = UUID.randomUUID();
+        Path folder = Files.createDirectories(tempDir.resolve(applicationId.toString()));
+        Files.writeString(folder.resolve("1_a.pdf"), "same");
+        when(attachmentArchiveJdbcRepository.findCandidates(any(LocalDateTime.class), any(LocalDate.class), anyInt()))
+                .thenReturn(List.of(new ArchiveCandidate(applicationId, LocalDate.of(2024, 5, 1))));
+        when(attachmentArchiveJdbcRepository.findBySha256(anyString(), eq(4L))).thenReturn(Optional.of(
+                new ArchivedAttachment("other/1_x.pdf", "2023-11.pack", 100L, 4L, LocalDateTime.now(), "sha")));
+
+        service.archiveClosedCases();
+
+        assertEquals(0L, Files.size(archiveDir.resolve("2024-05.pack")));
+        verify(attachmentArchiveJdbcRepository).insertAll(eq(applicationId), argThat(entries ->
+                entries.size() == 1 && entries.get(0).archiveFile().equals("2023-11.pack")
+                        && entries.get(0).offset() == 100L), any(LocalDateTime.class));
+    }
+
+    @Test
+    void testArchiveClosedCases_KeepsOriginalsWhenIndexFails() throws Exception {
+        UUID applicationId = UUID.randomUUID();
+        Path folder = Files.createDirectories(AttachmentStorageLayout.shardedFolder(tempDir, applicationId));
+        Files.writeString(folder.resolve("1_a.pdf"), "content");
+        when(attachmentArchiveJdbcRepository.findCandidates(any(LocalDateTime.class), any(LocalDate.class), anyInt()))
+                .thenReturn(List.of(new ArchiveCandidate(applicationId, LocalDate.of(2024, 3, 15))));
+        doThrow(new RuntimeException("db down")).when(attachmentArchiveJdbcRepository)
+                .insertAll(eq(applicationId), anyList(), any(LocalDateTime.class));
+
+        assertEquals(0, service.archiveClosedCases());
+
+        assertTrue(Files.exists(folder.resolve("1_a.pdf")));
+        verify(attachmentArchiveJdbcRepository, never()).markCaseArchived(any(UUID.class), any(LocalDateTime.class));
+        verifyNoInteractions(attachmentBlobStore);
+    }
+
+    @Test
+    void testMoveLegacyArchive_MovesPacksOutOfUploadRoot() throws Exception {
+        Path legacyDir = Files.createDirectories(tempDir.resolve(".archive"));
+        Files.writeString(legacyDir.resolve("2024-03.pack"), "packed");
+        Path outside = tempDir.resolveSibling(tempDir.getFileName() + "-archive");
+        AttachmentArchiveService moved = new AttachmentArchiveService(attachmentArchiveJdbcRepository,
+                attachmentBlobStore, tempDir, outside, Duration.ofDays(365), 10, Clock.systemUTC());
+
+        try {
+            assertEquals(1, moved.moveLegacyArchive());
+            assertEquals("packed", Files.readString(outside.resolve("2024-03.pack")));
+            assertFalse(Files.exists(legacyDir.resolve("2024-03.pack")));
+            // 再次啟動時沒有可搬移的檔案
+            assertEquals(0, moved.moveLegacyArchive());
+        } finally {
+            Files.deleteIfExists(outside.resolve("2024-03.pack"));
+            Files.deleteIfExists(outside);
+        }
+    }
+
+    @Test
+    void testOpenArchived_ReadsSegment() throws Exception {
+        Files.createDirectories(archiveDir);
+        Files.writeString(archiveDir.resolve("2024-03.pack"), "xxxxhello worldyyyy");
+        LocalDateTime lastModified = LocalDateTime.of(2024, 3, 15, 10, 0);
+        when(attachmentArchiveJdbcRepository.find("app/1_身分證.jpg")).thenReturn(Optional.of(
+                new ArchivedAttachment("app/1_身分證.jpg", "2024-03.pack", 4L, 11L, lastModified, "sha")));
+        when(attachmentArchiveJdbcRepository.find("app/missing.pdf")).thenReturn(Optional.empty());
+
+        Resource resource = service.openArchived("app/1_身分證.jpg");
+
+        assertEquals("1_身分證.jpg", resource.getFilename());
+        assertEquals(11L, resource.contentLength());
+        assertEquals(lastModified.toInstant(ZoneOffset.UTC).toEpochMilli(), resource.lastModified());
+        try (InputStream in = resource.getInputStream()) {
+            assertEquals("hello world", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        try (InputStream in = resource.getInputStream()) {
+            assertEquals(6L, in.skip(6));
+            assertEquals("world", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        assertNull(service.openArchived("app/missing.pdf"));
+    }
+}
@@ -0,0 +1,145 @@
+package Group4.Childcare.service;
+
+import Group4.Childcare.Repository.AttachmentBlobJdbcRepository;
+import Group4.Childcare.Service.AttachmentBlobStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * AttachmentBlobStore 單元測試
+ *
+ * 測試覆蓋：
+ * 1. 兩個案件上傳相同內容：第二份改為指向同一份內容，路徑與內容不變，各記錄一次參照
+ * 2. 未提供 SHA-256 時即時計算
+ * 3. 回收 RefCount 為 0 的內容後，案件資料夾中的附件仍可讀取
+ * 4. 回收沒有資料表記錄且超過寬限期的孤兒內容
+ * 5. blobPath 只接受 64 碼小寫十六進位
+ */
+@ExtendWith(MockitoExtension.class)
+class AttachmentBlobStoreTest {
+
+    private static final Instant NOW = Instant.parse("2025-09-01T01:00:00Z");
+
+    @Mock
+    private AttachmentBlobJdbcRepository attachmentBlobJdbcRepository;
+
+    @TempDir
+    Path tempDir;
+
+    private AttachmentBlobStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = new AttachmentBlobStore(attachmentBlobJdbcRepository, tempDir, Duration.ofHours(24),
+                Clock.fixed(NOW, ZoneOffset.UTC));
+    }
+
+    @Test
+    void testLink_SameContentSharesOneCopy() throws Exception {
+        byte[] content = "%PDF-1.7 household register".getBytes(StandardCharsets.UTF_8);
+        Path first = writeAttachment(UUID.randomUUID(), "1_戶口名簿.pdf", content);
+        Path second = writeAttachment(UUID.randomUUID(), "2_戶口名簿.pdf", content);
+        String sha256 = AttachmentBlobStore.sha256Of(first);
+
+        assertFalse(store.link(attachmentPath(first), first, sha256));
+        assertTrue(store.link(attachmentPath(second), second, sha256));
+
+        Path blob = store.blobPath(sha256);
+        assertEquals(tempDir.resolve(".blobs").resolve(sha256.substring(0, 2)).resolve(sha256.substring(2, 4))
+                .resolve(sha256), blob);
+        assertTrue(Files.isSameFile(blob, first));
+        assertTrue(Files.isSameFile(blob, second));
+        assertArrayEquals(content, Files.readAllBytes(second));
+        verify(attachmentBlobJdbcRepository).addReference(eq(attachmentPath(first)), eq(sha256),
+                eq((long) content.length), any(LocalDateTime.class));
+        verify(attachmentBlobJdbcRepository).addReference(eq(attachmentPath(second)), eq(sha256),
+                eq((long) content.length), any(LocalDateTime.class));
+    }
+
+    @Test
+    void testLink_ComputesSha256WhenMissing() throws Exception {
+        Path file = writeAttachment(UUID.randomUUID(), "1_a.png", new byte[]{(byte) 0x89, 'P', 'N', 'G'});
+
+        store.link(attachmentPath(file), file, null);
+
+        String sha256 = AttachmentBlobStore.sha256Of(file);
+        assertTrue(Files.isSameFile(store.blobPath(sha256), file));
+        verify(attachmentBlobJdbcRepository).addReference(eq(attachmentPath(file)), eq(sha256), eq(4L),
+                any(LocalDateTime.class));
+    }
+
+    @Test
+    void testCollectGarbage_UnreferencedBlobRemovedAttachmentsKept() throws Exception {
+        byte[] content = "same scan".getBytes(StandardCharsets.UTF_8);
+        Path file = writeAttachment(UUID.randomUUID(), "1_id.jpg", content);
+        String sha256 = AttachmentBlobStore.sha256Of(file);
+        store.link(attachmentPath(file), file, sha256);
+        when(attachmentBlobJdbcRepository.findUnreferenced(eq(LocalDateTime.of(2025, 8, 31, 1, 0)), anyInt()))
+                .thenReturn(List.of(sha256));
+        when(attachmentBlobJdbcRepository.deleteIfUnreferenced(sha256)).thenReturn(true);
+
+        assertEquals(1, store.collectGarbage());
+
+        assertFalse(Files.exists(store.blobPath(sha256)));
+        assertArrayEquals(content, Files.readAllBytes(file));
+    }
+
+    @Test
+    void testCollectGarbage_RemovesOldOrphansOnly() throws Exception {
+        String orphan = "0".repeat(64);
+        String recent = "1".repeat(64);
+        String known = "2".repeat(64);
+        for (String sha256 : List.of(orphan, recent, known)) {
+            Path blob = store.blobPath(sha256);
+            Files.createDirectories(blob.getParent());
+            Files.write(blob, sha256.getBytes(StandardCharsets.UTF_8));
+            Files.setLastModifiedTime(blob, FileTime.from(NOW.minus(Duration.ofHours(48))));
+        }
+        Files.setLastModifiedTime(store.blobPath(recent), FileTime.from(NOW.minus(Duration.ofHours(1))));
+        when(attachmentBlobJdbcRepository.findKnown(anyCollection()))
+                .thenAnswer(inv -> ((java.util.Collection<?>) inv.getArgument(0)).contains(known)
+                        ? List.of(known) : List.of());
+
+        assertEquals(1, store.collectGarbage());
+
+        assertFalse(Files.exists(store.blobPath(orphan)));
+        assertTrue(Files.exists(store.blobPath(recent)));
+        assertTrue(Files.exists(store.blobPath(known)));
+    }
+
+    @Test
+    void testBlobPath_RejectsInvalidSha256() {
+        assertThrows(IllegalArgumentException.class, () -> store.blobPath("../../etc/passwd"));
+        assertThrows(IllegalArgumentException.class, () -> store.blobPath("A".repeat(64)));
+        assertThrows(IllegalArgumentException.class, () -> store.blobPath(null));
+    }
+
+    private Path writeAttachment(UUID applicationId, String storedName, byte[] content) throws Exception {
+        Path folder = Files.createDirectories(tempDir.resolve(applicationId.toString()));
+        return Files.write(folder.resolve(storedName), content);
+    }
+
+    private String attachmentPath(Path file) {
+        return file.getParent().getFileName() + "/" + file.getFileName();
+    }
+}
@@ -0,0 +1,94 @@
+package Group4.Childcare.service;
+
+import Group4.Childcare.Service.AttachmentShardMigrator;
+import Group4.Childcare.Service.AttachmentStorageLayout;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * AttachmentShardMigrator 單元測試
+ *
+ * 測試覆蓋：
+ * 1. 舊案件資料夾整個搬到分散目錄，檔案內容與硬連結不變；內部資料夾與非案件資料夾不動
+ * 2. 每批最多搬 batch-size 個資料夾
+ * 3. 最近有變動的資料夾留待下次
+ * 4. 兩處都有資料夾時，舊位置的檔案併入分散目錄
+ */
+class AttachmentShardMigratorTest {
+
+    @TempDir
+    Path tempDir;
+
+    // 一小時後：temp 目錄中剛建立的資料夾都已閒置
+    private final Clock later = Clock.offset(Clock.systemUTC(), Duration.ofHours(1));
+
+    @Test
+    void testMigrateBatch_MovesLegacyFolders() throws Exception {
+        UUID applicationId = UUID.randomUUID();
+        Path legacy = Files.createDirectory(tempDir.resolve(applicationId.toString()));
+        Files.write(legacy.resolve("1_a.pdf"), new byte[]{1, 2, 3});
+        Path blob = Files.createDirectories(tempDir.resolve(".blobs").resolve("ab").resolve("cd")).resolve("blob");
+        Files.createLink(blob, legacy.resolve("1_a.pdf"));
+        Files.createDirectory(tempDir.resolve("not-an-application"));
+
+        AttachmentShardMigrator migrator = new AttachmentShardMigrator(tempDir, 100, 0, Duration.ofMinutes(30), later);
+
+        assertEquals(1, migrator.migrateBatch());
+        Path moved = AttachmentStorageLayout.shardedFolder(tempDir, applicationId).resolve("1_a.pdf");
+        assertFalse(Files.exists(legacy));
+        assertArrayEquals(new byte[]{1, 2, 3}, Files.readAllBytes(moved));
+        assertTrue(Files.isSameFile(blob, moved));
+        assertTrue(Files.isDirectory(tempDir.resolve("not-an-application")));
+        assertEquals(0, migrator.migrateBatch());
+    }
+
+    @Test
+    void testMigrateBatch_LimitedByBatchSize() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            Files.createDirectory(tempDir.resolve(UUID.randomUUID().toString()));
+        }
+        AttachmentShardMigrator migrator = new AttachmentShardMigrator(tempDir, 2, 1, Duration.ofMinutes(30), later);
+
+        assertEquals(2, migrator.migrateBatch());
+        assertEquals(2, migrator.migrateBatch());
+        assertEquals(1, migrator.migrateBatch());
+        assertEquals(0, migrator.migrateBatch());
+    }
+
+    @Test
+    void testMigrateBatch_SkipsRecentlyModifiedFolders() throws Exception {
+        UUID applicationId = UUID.randomUUID();
+        Path legacy = Files.createDirectory(tempDir.resolve(applicationId.toString()));
+        AttachmentShardMigrator migrator = new AttachmentShardMigrator(tempDir, 100, 0, Duration.ofMinutes(30),
+                Clock.systemUTC());
+
+        assertEquals(0, migrator.migrateBatch());
+        assertTrue(Files.isDirectory(legacy));
+    }
+
+    @Test
+    void testMigrateBatch_MergesIntoExistingShardedFolder() throws Exception {
+        UUID applicationId = UUID.randomUUID();
+        Path legacy = Files.createDirectory(tempDir.resolve(applicationId.toString()));
+        Files.write(legacy.resolve("1_old.pdf"), new byte[]{1});
+        Files.write(legacy.resolve("2_both.pdf"), new byte[]{2});
+        Path sharded = Files.createDirectories(AttachmentStorageLayout.shardedFolder(tempDir, applicationId));
+        Files.write(sharded.resolve("2_both.pdf"), new byte[]{2});
+        Files.write(sharded.resolve("3_new.pdf"), new byte[]{3});
+        AttachmentShardMigrator migrator = new AttachmentShardMigrator(tempDir, 100, 0, Duration.ofMinutes(30), later);
+
+        assertEquals(1, migrator.migrateBatch());
+        assertFalse(Files.exists(legacy));
+        assertTrue(Files.exists(sharded.resolve("1_old.pdf")));
+        assertTrue(Files.exists(sharded.resolve("2_both.pdf")));
+        assertTrue(Files.exists(sharded.resolve("3_new.pdf")));
+    }
+}
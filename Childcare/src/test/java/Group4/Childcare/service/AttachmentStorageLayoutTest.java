@@ -0,0 +1,79 @@
+package Group4.Childcare.service;
+
+import Group4.Childcare.Service.AttachmentStorageLayout;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * AttachmentStorageLayout 單元測試
+ *
+ * 測試覆蓋：
+ * 1. 分散目錄為案件ID前 2 碼、3~4 碼兩層
+ * 2. 案件資料夾位置：分散目錄優先，其次尚未搬移的舊資料夾，都沒有時建立在分散目錄
+ * 3. 附件路徑轉為分散目錄路徑；不是案件附件路徑時不轉換
+ * 4. 附件實體檔案：分散目錄沒有時改用舊資料夾
+ * 5. 判斷路徑是否為案件資料夾
+ */
+class AttachmentStorageLayoutTest {
+
+    private static final UUID APPLICATION_ID = UUID.fromString("4286bfa6-fcfd-40d4-afb2-2c16e4dd5eec");
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testShardedFolder() {
+        assertEquals(tempDir.resolve("42").resolve("86").resolve(APPLICATION_ID.toString()),
+                AttachmentStorageLayout.shardedFolder(tempDir, APPLICATION_ID));
+    }
+
+    @Test
+    void testFolder_PrefersShardedThenLegacy() throws Exception {
+        Path sharded = AttachmentStorageLayout.shardedFolder(tempDir, APPLICATION_ID);
+        assertEquals(sharded, AttachmentStorageLayout.folder(tempDir, APPLICATION_ID));
+
+        Path legacy = Files.createDirectory(tempDir.resolve(APPLICATION_ID.toString()));
+        assertEquals(legacy, AttachmentStorageLayout.folder(tempDir, APPLICATION_ID));
+
+        Files.createDirectories(sharded);
+        assertEquals(sharded, AttachmentStorageLayout.folder(tempDir, APPLICATION_ID));
+    }
+
+    @Test
+    void testShardedPath() {
+        assertEquals("42/86/4286bfa6-fcfd-40d4-afb2-2c16e4dd5eec/1_身分證.jpg",
+                AttachmentStorageLayout.shardedPath(APPLICATION_ID + "/1_身分證.jpg"));
+        assertNull(AttachmentStorageLayout.shardedPath("banner.png"));
+        assertNull(AttachmentStorageLayout.shardedPath("42/86/" + APPLICATION_ID + "/1_a.pdf"));
+        assertNull(AttachmentStorageLayout.shardedPath("not-a-uuid-but-exactly-36-characters/1_a.pdf"));
+    }
+
+    @Test
+    void testResolve_FallsBackToLegacyFolder() throws Exception {
+        String attachmentPath = APPLICATION_ID + "/1_a.pdf";
+        Path legacy = Files.createDirectory(tempDir.resolve(APPLICATION_ID.toString()));
+        Files.write(legacy.resolve("1_a.pdf"), new byte[]{1});
+        assertEquals(legacy.resolve("1_a.pdf"), AttachmentStorageLayout.resolve(tempDir, attachmentPath));
+
+        Path sharded = Files.createDirectories(AttachmentStorageLayout.shardedFolder(tempDir, APPLICATION_ID));
+        Files.write(sharded.resolve("1_a.pdf"), new byte[]{1});
+        assertEquals(sharded.resolve("1_a.pdf"), AttachmentStorageLayout.resolve(tempDir, attachmentPath));
+    }
+
+    @Test
+    void testApplicationIdOf() {
+        assertEquals(APPLICATION_ID,
+                AttachmentStorageLayout.applicationIdOf(tempDir, tempDir.resolve(APPLICATION_ID.toString())));
+        assertEquals(APPLICATION_ID, AttachmentStorageLayout.applicationIdOf(tempDir,
+                AttachmentStorageLayout.shardedFolder(tempDir, APPLICATION_ID)));
+        assertNull(AttachmentStorageLayout.applicationIdOf(tempDir,
+                tempDir.resolve("00").resolve("00").resolve(APPLICATION_ID.toString())));
+        assertNull(AttachmentStorageLayout.applicationIdOf(tempDir, tempDir.resolve(".blobs")));
+    }
+}
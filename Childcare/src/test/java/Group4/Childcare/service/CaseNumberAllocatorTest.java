@@ -0,0 +1,181 @@
+package Group4.Childcare.service;
+
+import Group4.Childcare.Repository.CaseNumberBlockJdbcRepository;
+import Group4.Childcare.Service.CaseNumberAllocator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * CaseNumberAllocator 單元測試
+ *
+ * 測試覆蓋：
+ * 1. 多個節點、多執行緒同時發號，編號不重複（並輸出每秒發號數）
+ * 2. 區段用完才回資料庫保留下一段
+ * 3. 換日後流水號重新起算
+ * 4. 當日流水號超過 9999 時拋出例外，最後一段只用到 9999
+ */
+class CaseNumberAllocatorTest {
+
+    /**
+     * 以記憶體模擬 case_number_blocks：每日一個計數器，原子加上區段大小
+     */
+    private static class InMemoryBlockRepository extends CaseNumberBlockJdbcRepository {
+        final Map<LocalDate, AtomicLong> lastAllocated = new ConcurrentHashMap<>();
+        final AtomicInteger reserveCalls = new AtomicInteger();
+
+        InMemoryBlockRepository() {
+            super(null);
+        }
+
+        @Override
+        public long reserveBlock(LocalDate day, int blockSize) {
+            reserveCalls.incrementAndGet();
+            return lastAllocated.computeIfAbsent(day, d -> new AtomicLong()).addAndGet(blockSize);
+        }
+    }
+
+    /**
+     * 可調整時間的 Clock，用於模擬換日
+     */
+    private static class MutableClock extends Clock {
+        private volatile Instant instant;
+
+        MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        void set(Instant instant) {
+            this.instant = instant;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+
+    private InMemoryBlockRepository repository;
+    private MutableClock clock;
+
+    @BeforeEach
+    void setUp() {
+        repository = new InMemoryBlockRepository();
+        clock = new MutableClock(Instant.parse("2024-12-04T09:00:00Z"));
+    }
+
+    @Test
+    void testNext_ConcurrentNodesNeverDuplicate() throws Exception {
+        int nodes = 4;
+        int threadsPerNode = 4;
+        int perThread = 500;
+        List<CaseNumberAllocator> allocators = new ArrayList<>();
+        for (int i = 0; i < nodes; i++) {
+            allocators.add(new CaseNumberAllocator(repository, 20, clock));
+        }
+
+        Set<Long> issued = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(nodes * threadsPerNode);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < nodes * threadsPerNode; i++) {
+            CaseNumberAllocator allocator = allocators.get(i % nodes);
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int n = 0; n < perThread; n++) {
+                    assertTrue(issued.add(allocator.next()), "案件編號重複");
+                }
+                return null;
+            }));
+        }
+
+        long began = System.nanoTime();
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        long elapsedNanos = System.nanoTime() - began;
+        executor.shutdown();
+
+        int total = nodes * threadsPerNode * perThread;
+        assertEquals(total, issued.size());
+        for (long caseNumber : issued) {
+            assertEquals(20241204L, caseNumber / 10000);
+            assertTrue(caseNumber % 10000 >= 1 && caseNumber % 10000 <= 9999);
+        }
+        // 每段 20 個，最多每節點浪費一段未用完的區段
+        assertTrue(repository.reserveCalls.get() <= total / 20 + nodes);
+        System.out.println("🔢 " + total + " 個案件編號，耗時 " + elapsedNanos / 1_000_000 + " ms，約 "
+                + (long) (total / (elapsedNanos / 1e9)) + " 個/秒，保留區段 " + repository.reserveCalls.get() + " 次");
+    }
+
+    @Test
+    void testNext_ReservesOnlyWhenBlockExhausted() {
+        CaseNumberAllocator allocator = new CaseNumberAllocator(repository, 3, clock);
+
+        assertEquals(202412040001L, allocator.next());
+        assertEquals(202412040002L, allocator.next());
+        assertEquals(202412040003L, allocator.next());
+        assertEquals(1, repository.reserveCalls.get());
+
+        assertEquals(202412040004L, allocator.next());
+        assertEquals(2, repository.reserveCalls.get());
+    }
+
+    @Test
+    void testNext_RestartsOnNewDay() {
+        CaseNumberAllocator allocator = new CaseNumberAllocator(repository, 20, clock);
+        assertEquals(202412040001L, allocator.next());
+        assertEquals(202412040002L, allocator.next());
+
+        clock.set(Instant.parse("2024-12-05T00:00:01Z"));
+
+        assertEquals(202412050001L, allocator.next());
+        assertEquals(2, repository.reserveCalls.get());
+    }
+
+    @Test
+    void testNext_DailyLimit() {
+        repository.lastAllocated.put(LocalDate.of(2024, 12, 4), new AtomicLong(9990));
+        CaseNumberAllocator allocator = new CaseNumberAllocator(repository, 20, clock);
+
+        for (long serial = 9991; serial <= 9999; serial++) {
+            assertEquals(202412040000L + serial, allocator.next());
+        }
+        assertThrows(IllegalStateException.class, allocator::next);
+    }
+
+    @Test
+    void testConstructor_InvalidBlockSize() {
+        assertThrows(IllegalArgumentException.class, () -> new CaseNumberAllocator(repository, 0, clock));
+    }
+}
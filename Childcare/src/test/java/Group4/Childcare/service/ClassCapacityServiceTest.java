@@ -0,0 +1,144 @@
+package Group4.Childcare.service;
+
+import Group4.Childcare.Repository.ClassSeatLedger.SeatCounts;
+import Group4.Childcare.Repository.ClassesJdbcRepository;
+import Group4.Childcare.Service.ClassCapacityService;
+import Group4.Childcare.Service.WaitlistPromotionService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * ClassCapacityService 單元測試
+ *
+ * 測試覆蓋：
+ * 1. 佔用成功後以 OUTPUT 人數更新快取，查詢不回資料庫
+ * 2. 佔用失敗時移除快取
+ * 3. 快取逾時才重新載入；查無班級或查詢失敗視為已滿
+ * 4. 釋出座位更新快取
+ * 5. 對帳：清除快取，人數減少且仍有空位的班級通知遞補
+ */
+@ExtendWith(MockitoExtension.class)
+class ClassCapacityServiceTest {
+
+    @Mock
+    private ClassesJdbcRepository classesJdbcRepository;
+
+    @Mock
+    private WaitlistPromotionService waitlistPromotionService;
+
+    private ClassCapacityService classCapacityService;
+    private UUID classId;
+
+    @BeforeEach
+    void setUp() {
+        classCapacityService = new ClassCapacityService(classesJdbcRepository, waitlistPromotionService, 60_000);
+        classId = UUID.randomUUID();
+    }
+
+    private static Map<String, Object> reconciledRow(UUID classId, Integer previous, int current, int capacity) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("ClassID", classId.toString().toUpperCase());
+        row.put("PreviousStudents", previous);
+        row.put("CurrentStudents", current);
+        row.put("Capacity", capacity);
+        return row;
+    }
+
+    @Test
+    void testReserve_UpdatesCacheFromOutput() {
+        when(classesJdbcRepository.reserveSeat(classId)).thenReturn(new SeatCounts(10, 10));
+
+        assertTrue(classCapacityService.reserve(classId));
+
+        assertTrue(classCapacityService.isFull(classId));
+        verify(classesJdbcRepository, never()).findSeatCounts(any());
+    }
+
+    @Test
+    void testReserve_FullEvictsCache() {
+        when(classesJdbcRepository.findSeatCounts(classId)).thenReturn(new SeatCounts(9, 10));
+        assertFalse(classCapacityService.isFull(classId));
+        when(classesJdbcRepository.reserveSeat(classId)).thenReturn(null);
+
+        assertFalse(classCapacityService.reserve(classId));
+
+        when(classesJdbcRepository.findSeatCounts(classId)).thenReturn(new SeatCounts(10, 10));
+        assertTrue(classCapacityService.isFull(classId));
+        verify(classesJdbcRepository, times(2)).findSeatCounts(classId);
+    }
+
+    @Test
+    void testIsFull_CachesWithinTtl() {
+        when(classesJdbcRepository.findSeatCounts(classId)).thenReturn(new SeatCounts(3, 10));
+
+        assertFalse(classCapacityService.isFull(classId));
+        assertFalse(classCapacityService.isFull(classId));
+
+        verify(classesJdbcRepository, times(1)).findSeatCounts(classId);
+
+        ClassCapacityService noCache = new ClassCapacityService(classesJdbcRepository, waitlistPromotionService, -1);
+        noCache.isFull(classId);
+        noCache.isFull(classId);
+        verify(classesJdbcRepository, times(3)).findSeatCounts(classId);
+    }
+
+    @Test
+    void testIsFull_MissingClassOrErrorTreatedAsFull() {
+        when(classesJdbcRepository.findSeatCounts(classId)).thenReturn(null);
+        assertTrue(classCapacityService.isFull(classId));
+
+        UUID brokenClassId = UUID.randomUUID();
+        when(classesJdbcRepository.findSeatCounts(brokenClassId)).thenThrow(new RuntimeException("DB 連線中斷"));
+        assertTrue(classCapacityService.isFull(brokenClassId));
+
+        // 未設定容量不視為已滿（與原本的 is-full 查詢相同）
+        UUID unlimitedClassId = UUID.randomUUID();
+        when(classesJdbcRepository.findSeatCounts(unlimitedClassId)).thenReturn(new SeatCounts(50, null));
+        assertFalse(classCapacityService.isFull(unlimitedClassId));
+    }
+
+    @Test
+    void testRelease_UpdatesCache() {
+        when(classesJdbcRepository.reserveSeat(classId)).thenReturn(new SeatCounts(10, 10));
+        classCapacityService.reserve(classId);
+        when(classesJdbcRepository.releaseSeat(classId)).thenReturn(new SeatCounts(9, 10));
+
+        assertTrue(classCapacityService.release(classId));
+
+        assertFalse(classCapacityService.isFull(classId));
+        assertEquals(9, classCapacityService.currentCounts(classId).currentStudents());
+    }
+
+    @Test
+    void testReconcile_ClearsCacheAndPromotesFreedClasses() {
+        UUID freed = UUID.randomUUID();
+        UUID stillFull = UUID.randomUUID();
+        UUID increased = UUID.randomUUID();
+        when(classesJdbcRepository.reserveSeat(freed)).thenReturn(new SeatCounts(10, 10));
+        classCapacityService.reserve(freed);
+        when(classesJdbcRepository.reconcileCurrentStudents()).thenReturn(List.of(
+                reconciledRow(freed, 10, 8, 10),
+                reconciledRow(stillFull, 12, 10, 10),
+                reconciledRow(increased, 2, 4, 10)));
+        when(classesJdbcRepository.findSeatCounts(freed)).thenReturn(new SeatCounts(8, 10));
+
+        assertEquals(3, classCapacityService.reconcile());
+
+        verify(waitlistPromotionService).seatFreed(freed);
+        verify(waitlistPromotionService, never()).seatFreed(stillFull);
+        verify(waitlistPromotionService, never()).seatFreed(increased);
+        assertFalse(classCapacityService.isFull(freed));
+    }
+}
@@ -0,0 +1,249 @@
+package Group4.Childcare.service;
+
+import Group4.Childcare.Repository.WaitlistJdbcRepository;
+import Group4.Childcare.Service.AdmissionHoldService;
+import Group4.Childcare.Service.ClassPlacementOptimizer;
+import Group4.Childcare.Service.LotteryEngine;
+import Group4.Childcare.Service.LotteryService;
+import Group4.Childcare.Service.WaitlistRankIndexService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * ClassPlacementOptimizer 單元測試
+ *
+ * 測試覆蓋：
+ * 1. 年齡重疊班級：first-fit 浪費座位、最佳匹配補滿
+ * 2. 座位不足時依順序錄取（不擠掉前面的人）
+ * 3. 隨機小案例與窮舉最大匹配比對、年齡與容量限制
+ * 4. 手動錄取建議班級
+ * 5. 與 first-fit 比較座位數與耗時（預設不執行，見 testBenchmark_OptimalVersusFirstFit）
+ */
+class ClassPlacementOptimizerTest {
+
+    private static LotteryEngine.ClassSlot slot(int minAgeMonths, int maxAgeMonths, int capacity) {
+        return new LotteryEngine.ClassSlot(UUID.randomUUID(), minAgeMonths, maxAgeMonths, capacity, 0);
+    }
+
+    private static int[] identity(int n) {
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        return order;
+    }
+
+    private static int placed(int[] classOf) {
+        int count = 0;
+        for (int c : classOf) {
+            if (c >= 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    void testPlaceOptimal_ReroutesOverlappingBands() {
+        // 班級 0 收 12~36 個月、班級 1 只收 24~36 個月，各 1 位
+        ClassPlacementOptimizer optimizer = new ClassPlacementOptimizer(List.of(slot(12, 36, 1), slot(24, 36, 1)));
+        int[] ages = {30, 20};
+
+        int[] greedy = optimizer.placeFirstFit(identity(2), ages);
+        int[] optimal = optimizer.placeOptimal(identity(2), ages);
+
+        assertArrayEquals(new int[]{0, -1}, greedy);
+        assertArrayEquals(new int[]{1, 0}, optimal);
+    }
+
+    @Test
+    void testPlaceOptimal_KeepsDrawOrderWhenSeatsShort() {
+        ClassPlacementOptimizer optimizer = new ClassPlacementOptimizer(List.of(slot(12, 36, 1)));
+        int[] ages = {20, 30, 25};
+
+        int[] optimal = optimizer.placeOptimal(new int[]{1, 0, 2}, ages);
+
+        assertArrayEquals(new int[]{-1, 0, -1}, optimal);
+    }
+
+    @Test
+    void testPlaceOptimal_MissingBirthDateOrNoBand() {
+        ClassPlacementOptimizer optimizer = new ClassPlacementOptimizer(List.of(slot(12, 36, 5)));
+
+        int[] optimal = optimizer.placeOptimal(identity(3), new int[]{-1, 40, 24});
+
+        assertArrayEquals(new int[]{-1, -1, 0}, optimal);
+    }
+
+    @Test
+    void testPlaceOptimal_RandomCasesMatchExhaustiveMaximum() {
+        SplittableRandom random = new SplittableRandom(7);
+        for (int round = 0; round < 300; round++) {
+            List<LotteryEngine.ClassSlot> classes = new ArrayList<>();
+            int classCount = 1 + random.nextInt(3);
+            for (int c = 0; c < classCount; c++) {
+                int min = random.nextInt(24);
+                classes.add(slot(min, min + 6 + random.nextInt(18), random.nextInt(3)));
+            }
+            int n = 1 + random.nextInt(6);
+            int[] ages = new int[n];
+            for (int i = 0; i < n; i++) {
+                ages[i] = random.nextInt(10) == 0 ? -1 : random.nextInt(48);
+            }
+            int[] order = identity(n);
+            for (int i = n - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int tmp = order[i];
+                order[i] = order[j];
+                order[j] = tmp;
+            }
+
+            ClassPlacementOptimizer optimizer = new ClassPlacementOptimizer(classes);
+            int[] optimal = optimizer.placeOptimal(order, ages);
+            int[] greedy = optimizer.placeFirstFit(order, ages);
+
+            assertValid(classes, ages, optimal);
+            assertTrue(placed(optimal) >= placed(greedy));
+            assertEquals(bruteForceMaximum(classes, ages, new int[classes.size()], 0), placed(optimal));
+            // 依順序：每個前綴的已分配人數都不少於 first-fit
+            int optimalPrefix = 0;
+            int greedyPrefix = 0;
+            for (int k = 0; k < n; k++) {
+                optimalPrefix += optimal[order[k]] >= 0 ? 1 : 0;
+                greedyPrefix += greedy[order[k]] >= 0 ? 1 : 0;
+                assertTrue(optimalPrefix >= greedyPrefix);
+            }
+        }
+    }
+
+    @Test
+    void testSuggestClass_LeavesNarrowBandForEarlierWaiting() {
+        WaitlistJdbcRepository repository = mock(WaitlistJdbcRepository.class);
+        UUID institutionId = UUID.randomUUID();
+        UUID targetApplicationId = UUID.randomUUID();
+        UUID wideClassId = UUID.randomUUID();
+        UUID narrowClassId = UUID.randomUUID();
+
+        Map<String, Object> earlier = new HashMap<>();
+        earlier.put("ApplicationID", UUID.randomUUID().toString());
+        earlier.put("NationalID", "A111111111");
+        earlier.put("BirthDate", java.sql.Date.valueOf(LocalDate.now().minusMonths(20)));
+        earlier.put("CurrentOrder", 1024);
+        Map<String, Object> target = new HashMap<>();
+        target.put("ApplicationID", targetApplicationId.toString());
+        target.put("NationalID", "B222222222");
+        target.put("BirthDate", java.sql.Date.valueOf(LocalDate.now().minusMonths(30)));
+        target.put("CurrentOrder", 2048);
+
+        Map<Integer, List<Map<String, Object>>> byPriority = new HashMap<>();
+        byPriority.put(3, List.of(target, earlier));
+        when(repository.findInstitutionIdByApplication(targetApplicationId)).thenReturn(institutionId);
+        when(repository.getAcceptedCountByPriority(institutionId)).thenReturn(Map.of());
+        when(repository.getLotteryApplicantsByPriority(institutionId)).thenReturn(byPriority);
+        when(repository.getClassInfo(institutionId)).thenReturn(List.of(
+                classInfo(wideClassId, 12, 36),
+                classInfo(narrowClassId, 24, 36)));
+
+        LotteryService lotteryService = new LotteryService(repository, mock(WaitlistRankIndexService.class),
+                mock(AdmissionHoldService.class));
+        UUID suggested = lotteryService.suggestClass(targetApplicationId, "B222222222");
+
+        assertEquals(narrowClassId, suggested);
+        assertNull(lotteryService.suggestClass(targetApplicationId, "X000000000"));
+    }
+
+    /**
+     * 數百位申請人、數十個班級：比較 first-fit 與最佳匹配的座位數與耗時（結果輸出至主控台）
+     *
+     * 耗時較長且結果只供參考，預設不執行：
+     * mvn test -Dtest=ClassPlacementOptimizerTest -Dbenchmark.placement=true
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark.placement", matches = "true")
+    void testBenchmark_OptimalVersusFirstFit() {
+        SplittableRandom random = new SplittableRandom(2025);
+        List<LotteryEngine.ClassSlot> classes = new ArrayList<>();
+        for (int c = 0; c < 40; c++) {
+            int min = 6 * random.nextInt(8);
+            classes.add(slot(min, min + 6 * (1 + random.nextInt(4)), 5 + random.nextInt(10)));
+        }
+        int n = 800;
+        int[] ages = new int[n];
+        for (int i = 0; i < n; i++) {
+            ages[i] = random.nextInt(72);
+        }
+        int[] order = identity(n);
+        ClassPlacementOptimizer optimizer = new ClassPlacementOptimizer(classes);
+
+        int runs = 50;
+        int[] greedy = null;
+        int[] optimal = null;
+        long start = System.nanoTime();
+        for (int run = 0; run < runs; run++) {
+            greedy = optimizer.placeFirstFit(order, ages);
+        }
+        long greedyNanos = (System.nanoTime() - start) / runs;
+        start = System.nanoTime();
+        for (int run = 0; run < runs; run++) {
+            optimal = optimizer.placeOptimal(order, ages);
+        }
+        long optimalNanos = (System.nanoTime() - start) / runs;
+
+        System.out.printf("📊 班級分配 %d 人 / %d 班：first-fit %d 位（%.3f ms），最佳匹配 %d 位（%.3f ms）%n",
+                n, classes.size(), placed(greedy), greedyNanos / 1e6, placed(optimal), optimalNanos / 1e6);
+        assertValid(classes, ages, optimal);
+        assertTrue(placed(optimal) >= placed(greedy));
+    }
+
+    private static Map<String, Object> classInfo(UUID classId, int minAgeMonths, int maxAgeMonths) {
+        Map<String, Object> info = new HashMap<>();
+        info.put("ClassID", classId.toString());
+        info.put("MinAgeDescription", minAgeMonths);
+        info.put("MaxAgeDescription", maxAgeMonths);
+        info.put("Capacity", 1);
+        info.put("CurrentStudents", 0);
+        return info;
+    }
+
+    private static void assertValid(List<LotteryEngine.ClassSlot> classes, int[] ages, int[] classOf) {
+        int[] used = new int[classes.size()];
+        for (int i = 0; i < classOf.length; i++) {
+            if (classOf[i] < 0) {
+                continue;
+            }
+            LotteryEngine.ClassSlot slot = classes.get(classOf[i]);
+            assertTrue(ages[i] >= slot.minAgeMonths() && ages[i] < slot.maxAgeMonths());
+            used[classOf[i]]++;
+        }
+        for (int c = 0; c < used.length; c++) {
+            assertTrue(used[c] <= classes.get(c).capacity());
+        }
+    }
+
+    private static int bruteForceMaximum(List<LotteryEngine.ClassSlot> classes, int[] ages, int[] used, int i) {
+        if (i == ages.length) {
+            return 0;
+        }
+        int best = bruteForceMaximum(classes, ages, used, i + 1);
+        for (int c = 0; c < classes.size(); c++) {
+            LotteryEngine.ClassSlot slot = classes.get(c);
+            if (ages[i] >= slot.minAgeMonths() && ages[i] < slot.maxAgeMonths() && used[c] < slot.capacity()) {
+                used[c]++;
+                best = Math.max(best, 1 + bruteForceMaximum(classes, ages, used, i + 1));
+                used[c]--;
+            }
+        }
+        return best;
+    }
+}
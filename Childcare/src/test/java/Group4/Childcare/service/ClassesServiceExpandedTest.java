@@ -2,7 +2,9 @@ package Group4.Childcare.service;
 
 import Group4.Childcare.Model.Classes;
 import Group4.Childcare.Repository.ClassesJdbcRepository;
+import Group4.Childcare.Service.ClassCapacityService;
 import Group4.Childcare.Service.ClassesService;
+import Group4.Childcare.Service.WaitlistPromotionService;
 import Group4.Childcare.DTO.ClassSummaryDTO;
 import Group4.Childcare.DTO.ClassNameDTO;
 import org.junit.jupiter.api.BeforeEach;
@@ -30,6 +32,12 @@ class ClassesServiceExpandedTest {
     @Mock
     private ClassesJdbcRepository repository;
 
+    @Mock
+    private WaitlistPromotionService waitlistPromotionService;
+
+    @Mock
+    private ClassCapacityService classCapacityService;
+
     @InjectMocks
     private ClassesService service;
 
@@ -405,44 +413,40 @@ class ClassesServiceExpandedTest {
     // ========== decrementCurrentStudents Tests ==========
 
     @Test
-    void testDecrementCurrentStudents_Success() {
-        when(repository.decrementCurrentStudents(testClassId)).thenReturn(true);
+    void testDecrementCurrentStudents_Success_TriggersPromotion() {
+        when(classCapacityService.release(testClassId)).thenReturn(true);
 
-        boolean result = service.decrementCurrentStudents(testClassId);
+        assertTrue(service.decrementCurrentStudents(testClassId));
 
-        assertTrue(result);
-        verify(repository).decrementCurrentStudents(testClassId);
+        verify(classCapacityService).release(testClassId);
+        verify(waitlistPromotionService).seatFreed(testClassId);
+        verify(repository, never()).decrementCurrentStudents(any());
     }
 
     @Test
-    void testDecrementCurrentStudents_Failed() {
-        when(repository.decrementCurrentStudents(testClassId)).thenReturn(false);
+    void testDecrementCurrentStudents_Failed_NoPromotion() {
+        when(classCapacityService.release(testClassId)).thenReturn(false);
 
-        boolean result = service.decrementCurrentStudents(testClassId);
+        assertFalse(service.decrementCurrentStudents(testClassId));
 
-        assertFalse(result);
-        verify(repository).decrementCurrentStudents(testClassId);
+        verify(waitlistPromotionService, never()).seatFreed(any());
     }
 
     // ========== isClassFull Tests ==========
 
     @Test
     void testIsClassFull_True() {
-        when(repository.isClassFull(testClassId)).thenReturn(true);
+        when(classCapacityService.isFull(testClassId)).thenReturn(true);
 
-        boolean result = service.isClassFull(testClassId);
+        assertTrue(service.isClassFull(testClassId));
 
-        assertTrue(result);
-        verify(repository).isClassFull(testClassId);
+        verify(repository, never()).isClassFull(any());
     }
 
     @Test
     void testIsClassFull_False() {
-        when(repository.isClassFull(testClassId)).thenReturn(false);
+        when(classCapacityService.isFull(testClassId)).thenReturn(false);
 
-        boolean result = service.isClassFull(testClassId);
-
-        assertFalse(result);
-        verify(repository).isClassFull(testClassId);
+        assertFalse(service.isClassFull(testClassId));
     }
 }
@@ -0,0 +1,145 @@
+package Group4.Childcare.service;
+
+import Group4.Childcare.DTO.LotteryResult;
+import Group4.Childcare.Model.Institutions;
+import Group4.Childcare.Repository.InstitutionsJdbcRepository;
+import Group4.Childcare.Repository.WaitlistJdbcRepository;
+import Group4.Childcare.Service.CountyAllocationService;
+import Group4.Childcare.Service.DeferredAcceptanceAllocator;
+import Group4.Childcare.Service.LotteryEngine;
+import Group4.Childcare.Service.LotteryService;
+import Group4.Childcare.Service.WaitlistRankIndexService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * CountyAllocationService 單元測試
+ *
+ * 測試覆蓋：
+ * 1. 依申請日期決定志願，同一幼兒只錄取較早申請的機構
+ * 2. 任一機構正在抽籤時整批失敗
+ * 3. 沒有候補者的機構不寫回
+ */
+@ExtendWith(MockitoExtension.class)
+class CountyAllocationServiceTest {
+
+    @Mock
+    private LotteryService lotteryService;
+
+    @Mock
+    private WaitlistJdbcRepository waitlistJdbcRepository;
+
+    @Mock
+    private InstitutionsJdbcRepository institutionsJdbcRepository;
+
+    @Mock
+    private WaitlistRankIndexService waitlistRankIndexService;
+
+    private CountyAllocationService countyAllocationService;
+    private UUID institutionA;
+    private UUID institutionB;
+
+    @BeforeEach
+    void setUp() {
+        countyAllocationService = new CountyAllocationService(lotteryService, waitlistJdbcRepository,
+                institutionsJdbcRepository, waitlistRankIndexService);
+        institutionA = UUID.randomUUID();
+        institutionB = UUID.randomUUID();
+    }
+
+    private static Institutions institution(UUID institutionId) {
+        Institutions institution = new Institutions();
+        institution.setInstitutionID(institutionId);
+        return institution;
+    }
+
+    private static LotteryService.LoadedSnapshot loaded(String nationalId, LocalDate applicationDate, long caseNumber) {
+        LocalDate asOf = LocalDate.of(2025, 8, 1);
+        LotteryEngine.Applicant applicant = new LotteryEngine.Applicant(UUID.randomUUID(), nationalId, 3,
+                asOf.minusMonths(24));
+        LotteryEngine.Snapshot snapshot = new LotteryEngine.Snapshot(10, 0, new int[]{0, 0, 0, 0},
+                List.of(applicant), List.of(new LotteryEngine.ClassSlot(UUID.randomUUID(), 12, 36, 10, 0)), asOf);
+        Map<String, Object> row = new HashMap<>();
+        row.put("ApplicationID", applicant.applicationId().toString());
+        row.put("NationalID", nationalId);
+        row.put("ApplicationDate", java.sql.Date.valueOf(applicationDate));
+        row.put("CaseNumber", caseNumber);
+        return new LotteryService.LoadedSnapshot(snapshot, List.of(row));
+    }
+
+    @Test
+    void testAllocate_EarlierApplicationIsFirstChoice() {
+        LotteryService.LoadedSnapshot loadedA = loaded("A123456789", LocalDate.of(2025, 3, 1), 202503010001L);
+        LotteryService.LoadedSnapshot loadedB = loaded("A123456789", LocalDate.of(2025, 2, 1), 202502010001L);
+        when(institutionsJdbcRepository.findAllActive()).thenReturn(List.of(institution(institutionA), institution(institutionB)));
+        when(waitlistJdbcRepository.tryAcquireLotteryLock(any())).thenReturn(true);
+        when(lotteryService.loadSnapshot(institutionA)).thenReturn(loadedA);
+        when(lotteryService.loadSnapshot(institutionB)).thenReturn(loadedB);
+        when(lotteryService.applyOutcome(any(), any())).thenReturn(new LotteryResult());
+
+        CountyAllocationService.CountyAllocationResult result = countyAllocationService.allocate(new SplittableRandom(1));
+
+        assertEquals(2, result.institutions());
+        assertEquals(2, result.applications());
+        assertEquals(1, result.children());
+        assertEquals(1, result.admittedChildren());
+        assertEquals(1, result.released());
+        assertEquals(List.of(institutionA, institutionB), result.institutionIds());
+
+        ArgumentCaptor<LotteryEngine.Outcome> outcomeA = ArgumentCaptor.forClass(LotteryEngine.Outcome.class);
+        ArgumentCaptor<LotteryEngine.Outcome> outcomeB = ArgumentCaptor.forClass(LotteryEngine.Outcome.class);
+        verify(lotteryService).applyOutcome(eq(loadedA), outcomeA.capture());
+        verify(lotteryService).applyOutcome(eq(loadedB), outcomeB.capture());
+        assertTrue(outcomeA.getValue().accepted().isEmpty());
+        assertEquals(DeferredAcceptanceAllocator.STATUS_RELEASED, outcomeA.getValue().released().get(0).status());
+        assertTrue(outcomeA.getValue().waitlist().isEmpty());
+        assertEquals(1, outcomeB.getValue().accepted().size());
+        verify(waitlistJdbcRepository).syncRankSequence(institutionA);
+        verify(waitlistJdbcRepository).syncRankSequence(institutionB);
+        verify(waitlistRankIndexService).invalidate(institutionA);
+        verify(waitlistRankIndexService).invalidate(institutionB);
+    }
+
+    @Test
+    void testAllocate_LockedInstitution_Throws() {
+        when(institutionsJdbcRepository.findAllActive()).thenReturn(List.of(institution(institutionA)));
+        when(waitlistJdbcRepository.tryAcquireLotteryLock(institutionA)).thenReturn(false);
+
+        assertThrows(IllegalStateException.class, () -> countyAllocationService.allocate(new SplittableRandom(1)));
+
+        verify(lotteryService, never()).loadSnapshot(any());
+        verify(lotteryService, never()).applyOutcome(any(), any());
+    }
+
+    @Test
+    void testAllocate_SkipsInstitutionWithoutApplicants() {
+        LotteryEngine.Snapshot empty = new LotteryEngine.Snapshot(10, 0, new int[]{0, 0, 0, 0},
+                List.of(), List.of(), LocalDate.of(2025, 8, 1));
+        when(institutionsJdbcRepository.findAllActive()).thenReturn(List.of(institution(institutionA)));
+        when(waitlistJdbcRepository.tryAcquireLotteryLock(institutionA)).thenReturn(true);
+        when(lotteryService.loadSnapshot(institutionA)).thenReturn(new LotteryService.LoadedSnapshot(empty, List.of()));
+
+        CountyAllocationService.CountyAllocationResult result = countyAllocationService.allocate(new SplittableRandom(1));
+
+        assertEquals(0, result.institutions());
+        assertEquals(0, result.children());
+        verify(lotteryService, never()).applyOutcome(any(), any());
+        verify(waitlistJdbcRepository, never()).syncRankSequence(any());
+    }
+}
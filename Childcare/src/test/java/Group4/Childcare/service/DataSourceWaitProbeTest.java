@@ -0,0 +1,48 @@
+package Group4.Childcare.service;
+
+import Group4.Childcare.Service.DataSourceWaitProbe;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * DataSourceWaitProbe 單元測試
+ *
+ * 測試覆蓋：
+ * 1. 讀取 Hikari 連線池等待連線的執行緒數，不借用連線
+ * 2. 連線池尚未啟動、資料來源不是 Hikari 時回報 0
+ */
+class DataSourceWaitProbeTest {
+
+    @Test
+    void testSample_ReadsHikariPendingThreads() throws Exception {
+        HikariDataSource dataSource = mock(HikariDataSource.class);
+        HikariPoolMXBean pool = mock(HikariPoolMXBean.class);
+        when(dataSource.getHikariPoolMXBean()).thenReturn(pool);
+        when(pool.getThreadsAwaitingConnection()).thenReturn(7);
+
+        assertEquals(7, new DataSourceWaitProbe(dataSource).samplePendingConnections());
+        verify(dataSource, never()).getConnection();
+    }
+
+    @Test
+    void testSample_PoolNotStarted() {
+        HikariDataSource dataSource = mock(HikariDataSource.class);
+        when(dataSource.getHikariPoolMXBean()).thenReturn(null);
+
+        assertEquals(0, new DataSourceWaitProbe(dataSource).samplePendingConnections());
+    }
+
+    @Test
+    void testSample_NotHikari() throws Exception {
+        DataSource dataSource = mock(DataSource.class);
+
+        assertEquals(0, new DataSourceWaitProbe(dataSource).samplePendingConnections());
+        verify(dataSource, never()).getConnection();
+    }
+}
@@ -0,0 +1,230 @@
+package Group4.Childcare.service;
+
+import Group4.Childcare.Repository.WaitlistRankKeys;
+import Group4.Childcare.Service.DeferredAcceptanceAllocator;
+import Group4.Childcare.Service.LotteryEngine;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.Period;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * DeferredAcceptanceAllocator 單元測試
+ *
+ * 測試覆蓋：
+ * 1. 同一幼兒申請兩間機構只錄取第一志願，第二志願撤銷
+ * 2. 第一志願落選時遞補第二志願
+ * 3. 被較優先序位的幼兒擠出後改申請下一志願
+ * 4. 隨機全縣市資料：每位幼兒最多錄取一間、班級容量與年齡、候補序號以 RANK_STEP 等距遞增
+ * 5. 固定種子可重現
+ */
+class DeferredAcceptanceAllocatorTest {
+
+    private static final LocalDate AS_OF = LocalDate.of(2025, 8, 1);
+
+    private static LotteryEngine.Applicant applicant(String nationalId, int priority) {
+        return new LotteryEngine.Applicant(UUID.randomUUID(), nationalId, priority, AS_OF.minusMonths(24));
+    }
+
+    /**
+     * 總容量 10（法定名額：第一序位 2、第二序位 1），單一班級 classCapacity 位
+     */
+    private static DeferredAcceptanceAllocator.Site site(int classCapacity, List<LotteryEngine.Applicant> applicants,
+                                                         int... preferenceRanks) {
+        List<LotteryEngine.ClassSlot> classes = List.of(
+                new LotteryEngine.ClassSlot(UUID.randomUUID(), 12, 36, classCapacity, 0));
+        LotteryEngine.Snapshot snapshot = new LotteryEngine.Snapshot(10, 0, new int[]{0, 0, 0, 0},
+                applicants, classes, AS_OF);
+        return new DeferredAcceptanceAllocator.Site(UUID.randomUUID(), snapshot, preferenceRanks);
+    }
+
+    private static LotteryEngine.Decision decisionOf(LotteryEngine.Outcome outcome, String nationalId) {
+        for (LotteryEngine.Decision decision : outcome.accepted()) {
+            if (decision.applicant().nationalId().equals(nationalId)) {
+                return decision;
+            }
+        }
+        for (LotteryEngine.Decision decision : outcome.waitlist()) {
+            if (decision.applicant().nationalId().equals(nationalId)) {
+                return decision;
+            }
+        }
+        for (LotteryEngine.Decision decision : outcome.released()) {
+            if (decision.applicant().nationalId().equals(nationalId)) {
+                return decision;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    void testAllocate_AdmitsFirstChoiceAndReleasesSecond() {
+        DeferredAcceptanceAllocator.Site first = site(10, List.of(applicant("A", 3)), 1);
+        DeferredAcceptanceAllocator.Site second = site(10, List.of(applicant("A", 3)), 2);
+
+        DeferredAcceptanceAllocator.Allocation allocation =
+                new DeferredAcceptanceAllocator(new SplittableRandom(1)).allocate(List.of(second, first));
+
+        assertEquals(1, allocation.children());
+        assertEquals(1, allocation.admittedChildren());
+        assertEquals(1, allocation.released());
+        assertTrue(decisionOf(allocation.outcomes().get(1), "A").admitted());
+        LotteryEngine.Decision released = decisionOf(allocation.outcomes().get(0), "A");
+        assertEquals(DeferredAcceptanceAllocator.STATUS_RELEASED, released.status());
+        assertNull(released.currentOrder());
+        assertTrue(allocation.outcomes().get(0).waitlist().isEmpty());
+        assertEquals(List.of(released), allocation.outcomes().get(0).released());
+        assertEquals(0, allocation.outcomes().get(0).admittedPerClass()[0]);
+    }
+
+    @Test
+    void testAllocate_FallsBackToSecondChoice() {
+        // 第一志願只有 1 位名額，第一序位的 B 優先錄取
+        DeferredAcceptanceAllocator.Site first = site(1, List.of(applicant("A", 3), applicant("B", 1)), 1, 1);
+        DeferredAcceptanceAllocator.Site second = site(5, List.of(applicant("A", 3)), 2);
+
+        DeferredAcceptanceAllocator.Allocation allocation =
+                new DeferredAcceptanceAllocator(new SplittableRandom(3)).allocate(List.of(first, second));
+
+        assertTrue(decisionOf(allocation.outcomes().get(0), "B").admitted());
+        LotteryEngine.Decision waiting = decisionOf(allocation.outcomes().get(0), "A");
+        assertEquals(LotteryEngine.STATUS_WAITLISTED, waiting.status());
+        assertEquals(WaitlistRankKeys.RANK_STEP, waiting.currentOrder());
+        assertTrue(decisionOf(allocation.outcomes().get(1), "A").admitted());
+        assertEquals(0, allocation.released());
+    }
+
+    @Test
+    void testAllocate_DisplacedChildProposesAgain() {
+        // A（第三序位）第一志願 X、第二志願 Y；C（第二序位）第一志願 Y、第二志願 X；D（第一序位）只申請 Y
+        // Y 由 D 錄取 → C 改申請 X 擠掉 A → A 改申請 Y 仍落選
+        DeferredAcceptanceAllocator.Site x = site(1, List.of(applicant("A", 3), applicant("C", 2)), 1, 2);
+        DeferredAcceptanceAllocator.Site y = site(1, List.of(applicant("C", 2), applicant("A", 3), applicant("D", 1)), 1, 2, 1);
+
+        for (long seed = 0; seed < 20; seed++) {
+            DeferredAcceptanceAllocator.Allocation allocation =
+                    new DeferredAcceptanceAllocator(new SplittableRandom(seed)).allocate(List.of(x, y));
+
+            assertTrue(decisionOf(allocation.outcomes().get(0), "C").admitted());
+            assertTrue(decisionOf(allocation.outcomes().get(1), "D").admitted());
+            assertEquals(LotteryEngine.STATUS_WAITLISTED, decisionOf(allocation.outcomes().get(0), "A").status());
+            assertEquals(LotteryEngine.STATUS_WAITLISTED, decisionOf(allocation.outcomes().get(1), "A").status());
+            // C 錄取第二志願，第一志願 Y 保留候補
+            assertEquals(LotteryEngine.STATUS_WAITLISTED, decisionOf(allocation.outcomes().get(1), "C").status());
+            assertEquals(2, allocation.admittedChildren());
+            assertEquals(0, allocation.released());
+        }
+    }
+
+    @Test
+    void testAllocate_RandomCountyInvariants() {
+        SplittableRandom random = new SplittableRandom(2025);
+        int institutionCount = 120;
+        int childCount = 9_000;
+        List<List<LotteryEngine.Applicant>> applicantsBySite = new ArrayList<>();
+        List<List<Integer>> ranksBySite = new ArrayList<>();
+        for (int s = 0; s < institutionCount; s++) {
+            applicantsBySite.add(new ArrayList<>());
+            ranksBySite.add(new ArrayList<>());
+        }
+        for (int c = 0; c < childCount; c++) {
+            int priority = 1 + random.nextInt(10) / 4;
+            LocalDate birthDate = AS_OF.minusMonths(6 + random.nextInt(60));
+            int applications = 1 + random.nextInt(2);
+            int firstSite = random.nextInt(institutionCount);
+            for (int k = 0; k < applications; k++) {
+                int s = k == 0 ? firstSite : (firstSite + 1 + random.nextInt(institutionCount - 1)) % institutionCount;
+                applicantsBySite.get(s).add(new LotteryEngine.Applicant(UUID.randomUUID(), "N" + c, priority, birthDate));
+                ranksBySite.get(s).add(k + 1);
+            }
+        }
+        List<DeferredAcceptanceAllocator.Site> sites = new ArrayList<>();
+        for (int s = 0; s < institutionCount; s++) {
+            List<LotteryEngine.ClassSlot> classes = new ArrayList<>();
+            int total = 0;
+            for (int band = 0; band < 3; band++) {
+                int capacity = 5 + random.nextInt(15);
+                classes.add(new LotteryEngine.ClassSlot(UUID.randomUUID(), 12 * band, 12 * band + 24, capacity, 0));
+                total += capacity;
+            }
+            int[] ranks = ranksBySite.get(s).stream().mapToInt(Integer::intValue).toArray();
+            sites.add(new DeferredAcceptanceAllocator.Site(UUID.randomUUID(),
+                    new LotteryEngine.Snapshot(total, 0, new int[]{0, 0, 0, 0}, applicantsBySite.get(s), classes, AS_OF),
+                    ranks));
+        }
+
+        long start = System.nanoTime();
+        DeferredAcceptanceAllocator.Allocation allocation = new DeferredAcceptanceAllocator(new SplittableRandom(7)).allocate(sites);
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        System.out.printf("📊 聯合分發 %d 間機構、%d 位幼兒：錄取 %d 位、撤銷 %d 件、申請 %d 次，耗時 %d ms%n",
+                institutionCount, allocation.children(), allocation.admittedChildren(), allocation.released(),
+                allocation.proposals(), millis);
+
+        Map<String, Integer> admittedRank = new HashMap<>();
+        int admitted = 0;
+        for (int s = 0; s < institutionCount; s++) {
+            LotteryEngine.Outcome outcome = allocation.outcomes().get(s);
+            List<LotteryEngine.ClassSlot> classes = sites.get(s).snapshot().classes();
+            int[] used = new int[classes.size()];
+            for (LotteryEngine.Decision decision : outcome.accepted()) {
+                assertNull(admittedRank.put(decision.applicant().nationalId(),
+                        sites.get(s).preferenceRanks()[decision.applicantIndex()]));
+                int c = 0;
+                while (!classes.get(c).classId().equals(decision.classId())) {
+                    c++;
+                }
+                int age = (int) Period.between(decision.applicant().birthDate(), AS_OF).toTotalMonths();
+                assertTrue(age >= classes.get(c).minAgeMonths() && age < classes.get(c).maxAgeMonths());
+                used[c]++;
+                admitted++;
+            }
+            for (int c = 0; c < used.length; c++) {
+                assertTrue(used[c] <= classes.get(c).capacity());
+                assertEquals(used[c], outcome.admittedPerClass()[c]);
+            }
+            int expectedOrder = WaitlistRankKeys.RANK_STEP;
+            for (LotteryEngine.Decision decision : outcome.waitlist()) {
+                assertEquals(LotteryEngine.STATUS_WAITLISTED, decision.status());
+                assertEquals(expectedOrder, decision.currentOrder());
+                expectedOrder += WaitlistRankKeys.RANK_STEP;
+            }
+            assertEquals(sites.get(s).snapshot().applicants().size(),
+                    outcome.accepted().size() + outcome.waitlist().size() + outcome.released().size());
+        }
+        assertEquals(allocation.admittedChildren(), admitted);
+        // 撤銷的申請一定是已錄取幼兒志願較後者
+        for (int s = 0; s < institutionCount; s++) {
+            for (LotteryEngine.Decision decision : allocation.outcomes().get(s).released()) {
+                assertEquals(DeferredAcceptanceAllocator.STATUS_RELEASED, decision.status());
+                Integer rank = admittedRank.get(decision.applicant().nationalId());
+                assertNotNull(rank);
+                assertTrue(sites.get(s).preferenceRanks()[decision.applicantIndex()] > rank);
+            }
+        }
+        assertTrue(millis < 5_000);
+    }
+
+    @Test
+    void testAllocate_SameSeedSameResult() {
+        List<DeferredAcceptanceAllocator.Site> sites = List.of(
+                site(2, List.of(applicant("A", 3), applicant("B", 3), applicant("C", 3)), 1, 1, 2),
+                site(1, List.of(applicant("C", 3), applicant("D", 3)), 1, 1));
+
+        DeferredAcceptanceAllocator.Allocation first = new DeferredAcceptanceAllocator(new SplittableRandom(99)).allocate(sites);
+        DeferredAcceptanceAllocator.Allocation second = new DeferredAcceptanceAllocator(new SplittableRandom(99)).allocate(sites);
+
+        for (int s = 0; s < sites.size(); s++) {
+            assertEquals(first.outcomes().get(s).accepted(), second.outcomes().get(s).accepted());
+            assertEquals(first.outcomes().get(s).waitlist(), second.outcomes().get(s).waitlist());
+            assertEquals(first.outcomes().get(s).released(), second.outcomes().get(s).released());
+        }
+    }
+}
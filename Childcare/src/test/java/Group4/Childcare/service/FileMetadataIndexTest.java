@@ -0,0 +1,228 @@
+package Group4.Childcare.service;
+
+import Group4.Childcare.Repository.AttachmentArchiveJdbcRepository;
+import Group4.Childcare.Repository.FileIndexJdbcRepository;
+import Group4.Childcare.Repository.FileIndexJdbcRepository.IndexedFile;
+import Group4.Childcare.Service.AttachmentStorageLayout;
+import Group4.Childcare.Service.FileMetadataIndex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * FileMetadataIndex 單元測試
+ *
+ * 測試覆蓋：
+ * 1. 已建立索引的案件由資料表回答，快取期間內不重複查詢，過期後重新查詢
+ * 2. 尚未建立索引的案件資料夾列出一次並寫入索引（只列檔案、依名稱排序）
+ * 3. 附件寫入後更新索引並清除快取
+ * 4. 機構圖片：整個目錄只列出一次；目錄已建立索引後，沒有記錄代表沒有圖片
+ * 5. 檔案系統變更：機構圖片新增、案件資料夾新增、內部資料夾略過
+ * 6. 案件資料夾搬到分散目錄時索引不變
+ * 7. 分散目錄中新增案件資料夾、新增分散目錄時取消索引標記
+ * 8. OVERFLOW：該目錄底下的案件資料夾全部取消索引標記，內部資料夾略過
+ */
+@ExtendWith(MockitoExtension.class)
+class FileMetadataIndexTest {
+
+    @Mock
+    private FileIndexJdbcRepository fileIndexJdbcRepository;
+
+    @Mock
+    private AttachmentArchiveJdbcRepository attachmentArchiveJdbcRepository;
+
+    @TempDir
+    Path tempDir;
+
+    private Path attachmentRoot;
+    private Path institutionRoot;
+    private MutableClock clock;
+    private FileMetadataIndex index;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        attachmentRoot = Files.createDirectories(tempDir.resolve("IdentityResource"));
+        institutionRoot = Files.createDirectories(tempDir.resolve("InstitutionResource"));
+        clock = new MutableClock();
+        index = new FileMetadataIndex(fileIndexJdbcRepository, attachmentArchiveJdbcRepository, attachmentRoot,
+                institutionRoot, Duration.ofSeconds(60), clock);
+    }
+
+    @Test
+    void testAttachmentFiles_IndexedAndCached() {
+        UUID applicationId = UUID.randomUUID();
+        when(fileIndexJdbcRepository.findFileNames(FileIndexJdbcRepository.CATEGORY_ATTACHMENT, applicationId))
+                .thenReturn(Optional.of(List.of("1_a.pdf", "2_b.pdf")));
+
+        assertEquals(List.of("1_a.pdf", "2_b.pdf"), index.attachmentFiles(applicationId));
+        assertEquals(List.of("1_a.pdf", "2_b.pdf"), index.attachmentFiles(applicationId));
+        verify(fileIndexJdbcRepository, times(1)).findFileNames(anyString(), any(UUID.class));
+
+        clock.advance(Duration.ofSeconds(61));
+        index.attachmentFiles(applicationId);
+        verify(fileIndexJdbcRepository, times(2)).findFileNames(anyString(), any(UUID.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testAttachmentFiles_LegacyFolderListedOnce() throws Exception {
+        UUID applicationId = UUID.randomUUID();
+        Path folder = Files.createDirectories(attachmentRoot.resolve(applicationId.toString()));
+        Files.write(folder.resolve("b_second.pdf"), new byte[]{1, 2});
+        Files.write(folder.resolve("a_first.png"), new byte[]{1});
+        Files.createDirectories(folder.resolve("subdir"));
+        when(fileIndexJdbcRepository.findFileNames(FileIndexJdbcRepository.CATEGORY_ATTACHMENT, applicationId))
+                .thenReturn(Optional.empty());
+
+        assertEquals(List.of("a_first.png", "b_second.pdf"), index.attachmentFiles(applicationId));
+
+        verify(fileIndexJdbcRepository).replaceOwner(eq(FileIndexJdbcRepository.CATEGORY_ATTACHMENT), eq(applicationId),
+                argThat((List<IndexedFile> files) -> files.size() == 2), any(LocalDateTime.class));
+    }
+
+    @Test
+    void testAttachmentStored_UpsertsAndInvalidatesCache() throws Exception {
+        UUID applicationId = UUID.randomUUID();
+        Path folder = Files.createDirectories(attachmentRoot.resolve(applicationId.toString()));
+        Files.write(folder.resolve("1_a.pdf"), new byte[]{1, 2, 3});
+        when(fileIndexJdbcRepository.findFileNames(FileIndexJdbcRepository.CATEGORY_ATTACHMENT, applicationId))
+                .thenReturn(Optional.of(List.of()), Optional.of(List.of("1_a.pdf")));
+
+        assertTrue(index.attachmentFiles(applicationId).isEmpty());
+        index.attachmentStored(applicationId, "1_a.pdf");
+
+        assertEquals(List.of("1_a.pdf"), index.attachmentFiles(applicationId));
+        verify(fileIndexJdbcRepository).upsert(eq(FileIndexJdbcRepository.CATEGORY_ATTACHMENT), eq(applicationId),
+                argThat(file -> file.fileName().equals("1_a.pdf") && file.sizeBytes() == 3L), any(LocalDateTime.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testInstitutionImages_DirectoryListedOnce() throws Exception {
+        UUID withImage = UUID.randomUUID();
+        UUID withoutImage = UUID.randomUUID();
+        Files.write(institutionRoot.resolve(withImage + "_logo.png"), new byte[]{1});
+        Files.write(institutionRoot.resolve("readme.txt"), new byte[]{1});
+        when(fileIndexJdbcRepository.findFileNames(eq(FileIndexJdbcRepository.CATEGORY_INSTITUTION_IMAGE), any(UUID.class)))
+                .thenReturn(Optional.empty());
+        when(fileIndexJdbcRepository.isIndexed(FileIndexJdbcRepository.CATEGORY_INSTITUTION_IMAGE,
+                FileIndexJdbcRepository.DIRECTORY_OWNER)).thenReturn(false);
+
+        assertEquals(List.of(withImage + "_logo.png"), index.institutionImages(withImage));
+        assertTrue(index.institutionImages(withoutImage).isEmpty());
+
+        verify(fileIndexJdbcRepository, times(1)).replaceCategory(eq(FileIndexJdbcRepository.CATEGORY_INSTITUTION_IMAGE),
+                argThat((Map<UUID, List<IndexedFile>> files) -> files.size() == 1 && files.containsKey(withImage)),
+                any(LocalDateTime.class));
+    }
+
+    @Test
+    void testOnFileSystemChange() throws Exception {
+        UUID institutionId = UUID.randomUUID();
+        UUID applicationId = UUID.randomUUID();
+        Path image = Files.write(institutionRoot.resolve(institutionId + "_photo.jpg"), new byte[]{1, 2});
+
+        index.onFileSystemChange(image);
+        index.onFileSystemChange(Files.createDirectories(attachmentRoot.resolve(applicationId.toString())));
+        index.onFileSystemChange(institutionRoot.resolve(".variants"));
+        index.onFileSystemChange(attachmentRoot.resolve(".blobs"));
+
+        verify(fileIndexJdbcRepository).replaceOwner(eq(FileIndexJdbcRepository.CATEGORY_INSTITUTION_IMAGE),
+                eq(institutionId), argThat(files -> files.size() == 1 && files.get(0).sizeBytes() == 2L),
+                any(LocalDateTime.class));
+        verify(fileIndexJdbcRepository).unmarkOwner(FileIndexJdbcRepository.CATEGORY_ATTACHMENT, applicationId);
+        verifyNoMoreInteractions(fileIndexJdbcRepository);
+    }
+
+    @Test
+    void testOnFileSystemChange_FolderMovedToShardKeepsIndex() throws Exception {
+        UUID applicationId = UUID.randomUUID();
+        Path sharded = Files.createDirectories(AttachmentStorageLayout.shardedFolder(attachmentRoot, applicationId));
+        Files.write(sharded.resolve("1_a.pdf"), new byte[]{1});
+
+        // 舊資料夾已搬走（刪除事件），分散目錄中的資料夾已存在
+        index.onFileSystemChange(attachmentRoot.resolve(applicationId.toString()));
+        index.onFileSystemChange(sharded.resolve("1_a.pdf"));
+
+        verify(fileIndexJdbcRepository, never()).unmarkOwner(anyString(), any(UUID.class));
+        verify(fileIndexJdbcRepository).upsert(eq(FileIndexJdbcRepository.CATEGORY_ATTACHMENT), eq(applicationId),
+                argThat(file -> file.fileName().equals("1_a.pdf")), any(LocalDateTime.class));
+    }
+
+    @Test
+    void testOnFileSystemChange_NewShardedFolderMarkedStale() throws Exception {
+        UUID applicationId = UUID.fromString("ab12cdef-0000-4000-8000-000000000001");
+        Path sharded = Files.createDirectories(AttachmentStorageLayout.shardedFolder(attachmentRoot, applicationId));
+        Files.write(sharded.resolve("1_a.pdf"), new byte[]{1});
+
+        // 分散目錄本身才剛建立，案件資料夾的新增事件來不及收到
+        index.onFileSystemChange(attachmentRoot.resolve("ab"));
+        index.onFileSystemChange(sharded);
+
+        verify(fileIndexJdbcRepository, times(2)).unmarkOwner(FileIndexJdbcRepository.CATEGORY_ATTACHMENT, applicationId);
+        verifyNoMoreInteractions(fileIndexJdbcRepository);
+    }
+
+    @Test
+    void testOnWatchOverflow_MarksFoldersUnderDirectoryStale() throws Exception {
+        UUID first = UUID.fromString("ab12cdef-0000-4000-8000-000000000001");
+        UUID second = UUID.fromString("ab34cdef-0000-4000-8000-000000000002");
+        UUID elsewhere = UUID.fromString("cd12cdef-0000-4000-8000-000000000003");
+        Files.createDirectories(AttachmentStorageLayout.shardedFolder(attachmentRoot, first));
+        Files.createDirectories(AttachmentStorageLayout.shardedFolder(attachmentRoot, second));
+        Files.createDirectories(AttachmentStorageLayout.shardedFolder(attachmentRoot, elsewhere));
+        Files.createDirectories(attachmentRoot.resolve(".blobs").resolve("ab"));
+
+        index.onWatchOverflow(attachmentRoot.resolve("ab"));
+
+        verify(fileIndexJdbcRepository).unmarkOwner(FileIndexJdbcRepository.CATEGORY_ATTACHMENT, first);
+        verify(fileIndexJdbcRepository).unmarkOwner(FileIndexJdbcRepository.CATEGORY_ATTACHMENT, second);
+        verifyNoMoreInteractions(fileIndexJdbcRepository);
+    }
+
+    /**
+     * 可調整時間的 Clock
+     */
+    private static class MutableClock extends Clock {
+        private volatile Instant instant = Instant.parse("2025-09-01T01:00:00Z");
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
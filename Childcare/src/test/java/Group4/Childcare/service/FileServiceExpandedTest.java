@@ -1,18 +1,25 @@
 package Group4.Childcare.service;
 
+import Group4.Childcare.Repository.AttachmentArchiveJdbcRepository;
+import Group4.Childcare.Service.AttachmentArchiveService;
+import Group4.Childcare.Service.AttachmentBlobStore;
+import Group4.Childcare.Service.FileMetadataIndex;
 import Group4.Childcare.Service.FileService;
+import Group4.Childcare.Service.ImageDerivativeService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.api.io.TempDir;
-import org.mockito.InjectMocks;
+import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.mock.web.MockMultipartFile;
-import org.springframework.test.util.ReflectionTestUtils;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Clock;
+import java.time.Duration;
 import java.util.List;
 import java.util.UUID;
 
@@ -21,7 +28,15 @@ import static org.junit.jupiter.api.Assertions.*;
 @ExtendWith(MockitoExtension.class)
 class FileServiceExpandedTest {
 
-    @InjectMocks
+    @Mock
+    private AttachmentBlobStore attachmentBlobStore;
+
+    @Mock
+    private ImageDerivativeService imageDerivativeService;
+
+    @Mock
+    private AttachmentArchiveService attachmentArchiveService;
+
     private FileService fileService;
 
     @TempDir
@@ -35,8 +50,12 @@ class FileServiceExpandedTest {
         testApplicationId = UUID.randomUUID();
         testInstitutionId = UUID.randomUUID();
 
-        // Set upload directory to temp directory
-        ReflectionTestUtils.setField(fileService, "uploadDir", tempDir.toString());
+        // 附件存放於暫存目錄；檔案索引使用記憶體中的資料表
+        FileMetadataIndex fileMetadataIndex = new FileMetadataIndex(new InMemoryFileIndexRepository(),
+                mock(AttachmentArchiveJdbcRepository.class), tempDir,
+                Paths.get(System.getProperty("user.dir"), "InstitutionResource"), Duration.ZERO, Clock.systemUTC());
+        fileService = new FileService(tempDir.toString(), attachmentBlobStore, imageDerivativeService,
+                fileMetadataIndex, attachmentArchiveService);
     }
 
     // ========== getFilesByApplicationId Tests ==========
@@ -137,9 +156,9 @@ class FileServiceExpandedTest {
     void testCreateFolder_Success() {
         boolean result = fileService.createFolder(testApplicationId);
 
+        String id = testApplicationId.toString();
         assertTrue(result);
-        assertTrue(Files.exists(tempDir.resolve(testApplicationId.toString())));
-        assertTrue(Files.isDirectory(tempDir.resolve(testApplicationId.toString())));
+        assertTrue(Files.isDirectory(tempDir.resolve(id.substring(0, 2)).resolve(id.substring(2, 4)).resolve(id)));
     }
 
     @Test
@@ -159,8 +178,9 @@ class FileServiceExpandedTest {
     void testGetFolderPath_ReturnsUploadDir() {
         Path result = fileService.getFolderPath(testApplicationId);
 
+        String id = testApplicationId.toString();
         assertNotNull(result);
-        assertEquals(tempDir.resolve(testApplicationId.toString()), result);
+        assertEquals(tempDir.resolve(id.substring(0, 2)).resolve(id.substring(2, 4)).resolve(id), result);
     }
 
     // ========== saveInstitutionImage Tests ==========
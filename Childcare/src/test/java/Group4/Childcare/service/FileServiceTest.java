@@ -1,20 +1,27 @@
 package Group4.Childcare.service;
 
+import Group4.Childcare.Repository.AttachmentArchiveJdbcRepository;
+import Group4.Childcare.Service.AttachmentArchiveService;
+import Group4.Childcare.Service.AttachmentBlobStore;
+import Group4.Childcare.Service.FileMetadataIndex;
 import Group4.Childcare.Service.FileService;
+import Group4.Childcare.Service.ImageDerivativeService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 import org.springframework.mock.web.MockMultipartFile;
-import org.springframework.test.util.ReflectionTestUtils;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Clock;
+import java.time.Duration;
 import java.util.List;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
 
 /**
  * FileService 單元測試
@@ -34,8 +41,11 @@ class FileServiceTest {
 
     @BeforeEach
     void setUp() {
-        fileService = new FileService();
-        ReflectionTestUtils.setField(fileService, "uploadDir", tempDir.toString());
+        FileMetadataIndex fileMetadataIndex = new FileMetadataIndex(new InMemoryFileIndexRepository(),
+                mock(AttachmentArchiveJdbcRepository.class), tempDir,
+                Paths.get(System.getProperty("user.dir"), "InstitutionResource"), Duration.ZERO, Clock.systemUTC());
+        fileService = new FileService(tempDir.toString(), mock(AttachmentBlobStore.class),
+                mock(ImageDerivativeService.class), fileMetadataIndex, mock(AttachmentArchiveService.class));
     }
 
     // ========== getFilesByApplicationId() 測試 ==========
@@ -128,7 +138,9 @@ class FileServiceTest {
         boolean result = fileService.createFolder(applicationId);
 
         assertTrue(result);
-        assertTrue(Files.exists(tempDir.resolve(applicationId.toString())));
+        assertTrue(Files.exists(tempDir.resolve(applicationId.toString().substring(0, 2))
+                .resolve(applicationId.toString().substring(2, 4)).resolve(applicationId.toString())));
+        assertFalse(Files.exists(tempDir.resolve(applicationId.toString())));
     }
 
     @Test
@@ -150,7 +162,16 @@ class FileServiceTest {
 
         Path path = fileService.getFolderPath(applicationId);
 
-        assertEquals(tempDir.resolve(applicationId.toString()), path);
+        String id = applicationId.toString();
+        assertEquals(tempDir.resolve(id.substring(0, 2)).resolve(id.substring(2, 4)).resolve(id), path);
+    }
+
+    @Test
+    void testGetFolderPath_LegacyFolderNotYetMigrated() throws IOException {
+        UUID applicationId = UUID.randomUUID();
+        Path legacy = Files.createDirectory(tempDir.resolve(applicationId.toString()));
+
+        assertEquals(legacy, fileService.getFolderPath(applicationId));
     }
 
     // ========== saveInstitutionImage() 測試 ==========
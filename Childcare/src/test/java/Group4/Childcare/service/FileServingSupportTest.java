@@ -0,0 +1,141 @@
+package Group4.Childcare.service;
+
+import Group4.Childcare.Service.FileServingSupport;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.support.ResourceRegion;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * FileServingSupport 單元測試
+ *
+ * 測試覆蓋：
+ * 1. 完整內容以 FileSystemResource 串流回傳，附 ETag、Last-Modified、Content-Length
+ * 2. UUID_原始檔名 標記為 immutable（公開或僅限瀏覽器），其他檔名 no-cache
+ * 3. If-None-Match / If-Modified-Since 相符時回傳 304
+ * 4. Range：單段回傳 ResourceRegion、多段回傳清單、超出範圍回傳 416
+ * 5. If-Range 不符時回傳完整內容
+ * 6. 目錄視為讀取失敗
+ */
+class FileServingSupportTest {
+
+    private static final String UUID_NAME = "550e8400-e29b-41d4-a716-446655440000_banner.png";
+    private static final Instant MODIFIED = Instant.parse("2025-09-01T01:00:00Z");
+
+    @TempDir
+    Path tempDir;
+
+    private Path file;
+    private String eTag;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        byte[] content = new byte[1000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        file = Files.write(tempDir.resolve(UUID_NAME), content);
+        Files.setLastModifiedTime(file, FileTime.from(MODIFIED));
+        eTag = FileServingSupport.eTagOf(1000, MODIFIED.toEpochMilli());
+    }
+
+    @Test
+    void testServe_FullContentStreamed() throws IOException {
+        ResponseEntity<?> response = FileServingSupport.serve(file, "banner.png", new HttpHeaders(), true);
+
+        assertEquals(200, response.getStatusCode().value());
+        assertTrue(response.getBody() instanceof FileSystemResource);
+        HttpHeaders headers = response.getHeaders();
+        assertEquals(eTag, headers.getETag());
+        assertEquals(MODIFIED.toEpochMilli(), headers.getLastModified());
+        assertEquals(1000, headers.getContentLength());
+        assertEquals("bytes", headers.getFirst(HttpHeaders.ACCEPT_RANGES));
+        assertEquals("max-age=31536000, immutable, public", headers.getCacheControl());
+        assertEquals("inline; filename=\"banner.png\"", headers.getFirst(HttpHeaders.CONTENT_DISPOSITION));
+    }
+
+    @Test
+    void testCacheControl_ByFileName() {
+        assertEquals("max-age=31536000, immutable, private", FileServingSupport.cacheControlFor(UUID_NAME, false)
+                .getHeaderValue());
+        assertEquals("no-cache", FileServingSupport.cacheControlFor("logo.png", true).getHeaderValue());
+        assertEquals("no-cache", FileServingSupport.cacheControlFor("abc123_test.jpg", true).getHeaderValue());
+    }
+
+    @Test
+    void testServe_NotModified() throws IOException {
+        HttpHeaders ifNoneMatch = new HttpHeaders();
+        ifNoneMatch.setIfNoneMatch(List.of("\"other\"", eTag));
+        ResponseEntity<?> response = FileServingSupport.serve(file, "banner.png", ifNoneMatch, true);
+        assertEquals(304, response.getStatusCode().value());
+        assertNull(response.getBody());
+        assertEquals(eTag, response.getHeaders().getETag());
+
+        HttpHeaders ifModifiedSince = new HttpHeaders();
+        ifModifiedSince.setIfModifiedSince(MODIFIED.toEpochMilli());
+        assertEquals(304, FileServingSupport.serve(file, "banner.png", ifModifiedSince, true).getStatusCode().value());
+
+        // If-None-Match 存在時不看 If-Modified-Since
+        ifModifiedSince.setIfNoneMatch("\"other\"");
+        assertEquals(200, FileServingSupport.serve(file, "banner.png", ifModifiedSince, true).getStatusCode().value());
+    }
+
+    @Test
+    void testServe_Ranges() throws IOException {
+        HttpHeaders single = new HttpHeaders();
+        single.set(HttpHeaders.RANGE, "bytes=100-199");
+        ResponseEntity<?> response = FileServingSupport.serve(file, "banner.png", single, true);
+        assertEquals(206, response.getStatusCode().value());
+        ResourceRegion region = (ResourceRegion) response.getBody();
+        assertEquals(100, region.getPosition());
+        assertEquals(100, region.getCount());
+
+        HttpHeaders multiple = new HttpHeaders();
+        multiple.set(HttpHeaders.RANGE, "bytes=0-9,-10");
+        response = FileServingSupport.serve(file, "banner.png", multiple, true);
+        assertEquals(206, response.getStatusCode().value());
+        List<?> regions = (List<?>) response.getBody();
+        assertEquals(2, regions.size());
+        assertEquals(990, ((ResourceRegion) regions.get(1)).getPosition());
+
+        HttpHeaders unsatisfiable = new HttpHeaders();
+        unsatisfiable.set(HttpHeaders.RANGE, "bytes=5000-");
+        response = FileServingSupport.serve(file, "banner.png", unsatisfiable, true);
+        assertEquals(416, response.getStatusCode().value());
+        assertEquals("bytes */1000", response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+    }
+
+    @Test
+    void testServe_IfRange() throws IOException {
+        HttpHeaders matching = new HttpHeaders();
+        matching.set(HttpHeaders.RANGE, "bytes=0-99");
+        matching.set(HttpHeaders.IF_RANGE, eTag);
+        assertEquals(206, FileServingSupport.serve(file, "banner.png", matching, true).getStatusCode().value());
+
+        HttpHeaders stale = new HttpHeaders();
+        stale.set(HttpHeaders.RANGE, "bytes=0-99");
+        stale.set(HttpHeaders.IF_RANGE, "\"stale\"");
+        ResponseEntity<?> response = FileServingSupport.serve(file, "banner.png", stale, true);
+        assertEquals(200, response.getStatusCode().value());
+        assertTrue(response.getBody() instanceof InputStreamResource);
+        assertEquals(1000, response.getHeaders().getContentLength());
+    }
+
+    @Test
+    void testServe_DirectoryIsReadFailure() {
+        assertThrows(IOException.class, () -> FileServingSupport.serve(tempDir, "dir", new HttpHeaders(), true));
+    }
+}
@@ -0,0 +1,130 @@
+package Group4.Childcare.service;
+
+import Group4.Childcare.Service.HashedTimerWheel;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * HashedTimerWheel 單元測試
+ *
+ * 測試覆蓋：
+ * 1. 到期前不觸發、到期後觸發一次
+ * 2. 超過一圈的到期時間（圈數）
+ * 3. 取消與重新排定
+ * 4. 已逾期的項目於下次推進時觸發
+ * 5. 長時間停頓後一次追上
+ * 6. 隨機大量項目：每個項目恰好在到期的 tick 觸發
+ */
+class HashedTimerWheelTest {
+
+    private static final long START = 1_000_000L;
+
+    @Test
+    void testAdvance_FiresOnlyAfterDeadline() {
+        HashedTimerWheel<String> wheel = new HashedTimerWheel<>(100, 8, START);
+        wheel.schedule("A", START + 250);
+
+        assertTrue(wheel.advance(START + 200).isEmpty());
+        assertEquals(List.of("A"), wheel.advance(START + 300));
+        assertTrue(wheel.advance(START + 1_000).isEmpty());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void testAdvance_DeadlineBeyondOneLap() {
+        HashedTimerWheel<String> wheel = new HashedTimerWheel<>(100, 8, START);
+        wheel.schedule("A", START + 2_500);
+
+        for (long t = START; t < START + 2_500; t += 100) {
+            assertTrue(wheel.advance(t).isEmpty(), "提早觸發於 " + (t - START));
+        }
+        assertEquals(List.of("A"), wheel.advance(START + 2_500));
+    }
+
+    @Test
+    void testCancelAndReschedule() {
+        HashedTimerWheel<String> wheel = new HashedTimerWheel<>(100, 8, START);
+        wheel.schedule("A", START + 200);
+        wheel.schedule("B", START + 200);
+
+        assertTrue(wheel.cancel("A"));
+        assertFalse(wheel.cancel("A"));
+        wheel.schedule("B", START + 900);
+
+        assertTrue(wheel.advance(START + 500).isEmpty());
+        assertEquals(List.of("B"), wheel.advance(START + 900));
+    }
+
+    @Test
+    void testSchedule_PastDeadlineFiresOnNextAdvance() {
+        HashedTimerWheel<String> wheel = new HashedTimerWheel<>(100, 8, START);
+        wheel.advance(START + 1_000);
+        wheel.schedule("A", START);
+
+        assertEquals(List.of("A"), wheel.advance(START + 1_000));
+    }
+
+    @Test
+    void testAdvance_CatchesUpAfterLongPause() {
+        HashedTimerWheel<Integer> wheel = new HashedTimerWheel<>(10, 16, START);
+        for (int i = 0; i < 100; i++) {
+            wheel.schedule(i, START + i * 1_000L);
+        }
+
+        List<Integer> fired = wheel.advance(START + 49_999);
+        assertEquals(50, fired.size());
+        assertEquals(new HashSet<>(fired), Set.copyOf(range(0, 50)));
+        assertEquals(range(50, 100), sorted(wheel.advance(START + 100_000)));
+    }
+
+    @Test
+    void testAdvance_RandomDeadlinesFireOnTime() {
+        long tick = 50;
+        HashedTimerWheel<Integer> wheel = new HashedTimerWheel<>(tick, 64, START);
+        Random random = new Random(11);
+        int count = 20_000;
+        long[] deadlines = new long[count];
+        for (int i = 0; i < count; i++) {
+            deadlines[i] = START + random.nextInt(200_000);
+            wheel.schedule(i, deadlines[i]);
+        }
+        Set<Integer> cancelled = new HashSet<>();
+        for (int i = 0; i < count; i += 7) {
+            wheel.cancel(i);
+            cancelled.add(i);
+        }
+
+        int fired = 0;
+        for (long now = START; now <= START + 200_000 + tick; now += tick) {
+            for (int key : wheel.advance(now)) {
+                assertFalse(cancelled.contains(key));
+                assertTrue(deadlines[key] <= now && deadlines[key] > now - tick,
+                        "key " + key + " 到期 " + deadlines[key] + " 觸發於 " + now);
+                fired++;
+            }
+        }
+        assertEquals(count - cancelled.size(), fired);
+        assertEquals(0, wheel.size());
+    }
+
+    private static List<Integer> range(int from, int to) {
+        List<Integer> list = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            list.add(i);
+        }
+        return list;
+    }
+
+    private static List<Integer> sorted(List<Integer> list) {
+        List<Integer> copy = new ArrayList<>(list);
+        copy.sort(null);
+        return copy;
+    }
+}
@@ -0,0 +1,273 @@
+package Group4.Childcare.service;
+
+import Group4.Childcare.Repository.IdempotencyKeyJdbcRepository;
+import Group4.Childcare.Repository.IdempotencyKeyJdbcRepository.StoredKey;
+import Group4.Childcare.Service.IdempotencyService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.ResponseEntity;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * IdempotencyService 單元測試
+ *
+ * 測試覆蓋：
+ * 1. 第一次執行記錄 ApplicationID 與回應內容，之後相同鍵直接重播（不再執行、不查資料庫）
+ * 2. 同一節點同時送達的相同鍵只執行一次
+ * 3. 其他節點持有的鍵：輪詢到結果後重播；逾時回傳 409；鍵被釋放後重新認領
+ * 4. 失敗的回應與例外釋放鍵，重試時重新執行
+ * 5. 鍵長度檢查、過期清除
+ * 6. 同一個鍵搭配不同請求內容回傳 422（本節點快取與其他節點持有）；不同送件者的相同鍵各自處理
+ * 7. 請求指紋涵蓋請求內容與附件描述
+ */
+@ExtendWith(MockitoExtension.class)
+class IdempotencyServiceTest {
+
+    private static final String HASH = "a".repeat(64);
+
+    @Mock
+    private IdempotencyKeyJdbcRepository idempotencyKeyJdbcRepository;
+
+    private IdempotencyService idempotencyService;
+    private UUID applicationId;
+    private Function<Object, UUID> applicationIdOf;
+
+    @BeforeEach
+    void setUp() {
+        idempotencyService = new IdempotencyService(idempotencyKeyJdbcRepository, new ObjectMapper(), 24, 120, 2000);
+        applicationId = UUID.randomUUID();
+        applicationIdOf = body -> UUID.fromString(((Map<?, ?>) body).get("applicationID").toString());
+    }
+
+    private Supplier<ResponseEntity<?>> countingAction(AtomicInteger calls) {
+        return () -> {
+            calls.incrementAndGet();
+            return ResponseEntity.ok(Map.of("applicationID", applicationId.toString()));
+        };
+    }
+
+    @Test
+    void testExecute_RecordsThenReplays() {
+        when(idempotencyKeyJdbcRepository.claim(eq("u1"), eq("k1"), eq(HASH), any(), any())).thenReturn(true);
+        AtomicInteger calls = new AtomicInteger();
+
+        ResponseEntity<?> first = idempotencyService.execute("u1", "k1", HASH, countingAction(calls), applicationIdOf);
+        ResponseEntity<?> second = idempotencyService.execute("u1", "k1", HASH, countingAction(calls), applicationIdOf);
+
+        assertEquals(200, first.getStatusCode().value());
+        assertNull(first.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER));
+        assertEquals(200, second.getStatusCode().value());
+        assertEquals("true", second.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER));
+        assertTrue(second.getBody().toString().contains(applicationId.toString()));
+        assertEquals(1, calls.get());
+        verify(idempotencyKeyJdbcRepository, times(1)).claim(anyString(), anyString(), anyString(), any(), any());
+        verify(idempotencyKeyJdbcRepository).complete(eq("u1"), eq("k1"), eq(applicationId), eq(200),
+                contains(applicationId.toString()), any(LocalDateTime.class));
+    }
+
+    @Test
+    void testExecute_ConcurrentSameKeyRunsOnce() throws Exception {
+        when(idempotencyKeyJdbcRepository.claim(eq("u1"), eq("k1"), eq(HASH), any(), any())).thenReturn(true);
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Supplier<ResponseEntity<?>> slowAction = () -> {
+            calls.incrementAndGet();
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return ResponseEntity.ok(Map.of("applicationID", applicationId.toString()));
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        Future<ResponseEntity<?>> leader = executor.submit(
+                () -> idempotencyService.execute("u1", "k1", HASH, slowAction, applicationIdOf));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        Future<ResponseEntity<?>> retry1 = executor.submit(
+                () -> idempotencyService.execute("u1", "k1", HASH, slowAction, applicationIdOf));
+        Future<ResponseEntity<?>> retry2 = executor.submit(
+                () -> idempotencyService.execute("u1", "k1", HASH, slowAction, applicationIdOf));
+        Thread.sleep(100);
+        release.countDown();
+
+        assertEquals(200, leader.get(5, TimeUnit.SECONDS).getStatusCode().value());
+        assertEquals("true", retry1.get(5, TimeUnit.SECONDS).getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER));
+        assertEquals("true", retry2.get(5, TimeUnit.SECONDS).getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER));
+        executor.shutdown();
+
+        assertEquals(1, calls.get());
+        verify(idempotencyKeyJdbcRepository, times(1)).claim(anyString(), anyString(), anyString(), any(), any());
+    }
+
+    @Test
+    void testExecute_OtherNodeCompletes() {
+        when(idempotencyKeyJdbcRepository.claim(eq("u1"), eq("k1"), eq(HASH), any(), any())).thenReturn(false);
+        LocalDateTime expiresAt = LocalDateTime.now().plusHours(1);
+        when(idempotencyKeyJdbcRepository.find("u1", "k1"))
+                .thenReturn(Optional.of(new StoredKey(HASH, null, null, null, expiresAt)))
+                .thenReturn(Optional.of(new StoredKey(HASH, applicationId, 200, "{\"applicationID\":\"x\"}", expiresAt)));
+        AtomicInteger calls = new AtomicInteger();
+
+        ResponseEntity<?> response = idempotencyService.execute("u1", "k1", HASH, countingAction(calls), applicationIdOf);
+
+        assertEquals(200, response.getStatusCode().value());
+        assertEquals("true", response.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER));
+        assertEquals("{\"applicationID\":\"x\"}", response.getBody());
+        assertEquals(0, calls.get());
+        verify(idempotencyKeyJdbcRepository, times(2)).find("u1", "k1");
+    }
+
+    @Test
+    void testExecute_OtherNodeStillProcessingTimesOut() {
+        idempotencyService = new IdempotencyService(idempotencyKeyJdbcRepository, new ObjectMapper(), 24, 120, 50);
+        when(idempotencyKeyJdbcRepository.claim(eq("u1"), eq("k1"), eq(HASH), any(), any())).thenReturn(false);
+        when(idempotencyKeyJdbcRepository.find("u1", "k1"))
+                .thenReturn(Optional.of(new StoredKey(HASH, null, null, null, LocalDateTime.now().plusMinutes(2))));
+        AtomicInteger calls = new AtomicInteger();
+
+        ResponseEntity<?> response = idempotencyService.execute("u1", "k1", HASH, countingAction(calls), applicationIdOf);
+
+        assertEquals(409, response.getStatusCode().value());
+        assertEquals(0, calls.get());
+    }
+
+    @Test
+    void testExecute_OtherNodeReleasedThenReclaimed() {
+        when(idempotencyKeyJdbcRepository.claim(eq("u1"), eq("k1"), eq(HASH), any(), any())).thenReturn(false).thenReturn(true);
+        when(idempotencyKeyJdbcRepository.find("u1", "k1")).thenReturn(Optional.empty());
+        AtomicInteger calls = new AtomicInteger();
+
+        ResponseEntity<?> response = idempotencyService.execute("u1", "k1", HASH, countingAction(calls), applicationIdOf);
+
+        assertEquals(200, response.getStatusCode().value());
+        assertEquals(1, calls.get());
+        verify(idempotencyKeyJdbcRepository, times(2)).claim(anyString(), anyString(), anyString(), any(), any());
+    }
+
+    @Test
+    void testExecute_FailureReleasesKey() {
+        when(idempotencyKeyJdbcRepository.claim(eq("u1"), eq("k1"), eq(HASH), any(), any())).thenReturn(true);
+        AtomicInteger calls = new AtomicInteger();
+        Supplier<ResponseEntity<?>> failing = () -> {
+            calls.incrementAndGet();
+            return ResponseEntity.status(500).body("Failed to create application");
+        };
+
+        assertEquals(500, idempotencyService.execute("u1", "k1", HASH, failing, applicationIdOf).getStatusCode().value());
+        assertEquals(500, idempotencyService.execute("u1", "k1", HASH, failing, applicationIdOf).getStatusCode().value());
+
+        assertEquals(2, calls.get());
+        verify(idempotencyKeyJdbcRepository, times(2)).release("u1", "k1");
+        verify(idempotencyKeyJdbcRepository, never()).complete(anyString(), anyString(), any(), anyInt(), anyString(), any());
+    }
+
+    @Test
+    void testExecute_ExceptionReleasesKeyAndPropagates() {
+        when(idempotencyKeyJdbcRepository.claim(eq("u1"), eq("k1"), eq(HASH), any(), any())).thenReturn(true);
+
+        assertThrows(IllegalStateException.class, () -> idempotencyService.execute("u1", "k1", HASH, () -> {
+            throw new IllegalStateException("boom");
+        }, applicationIdOf));
+
+        verify(idempotencyKeyJdbcRepository).release("u1", "k1");
+    }
+
+    @Test
+    void testExecute_SameKeyDifferentRequestRejected() {
+        when(idempotencyKeyJdbcRepository.claim(eq("u1"), eq("k1"), eq(HASH), any(), any())).thenReturn(true);
+        AtomicInteger calls = new AtomicInteger();
+
+        idempotencyService.execute("u1", "k1", HASH, countingAction(calls), applicationIdOf);
+        ResponseEntity<?> reused = idempotencyService.execute("u1", "k1", "b".repeat(64), countingAction(calls),
+                applicationIdOf);
+
+        assertEquals(422, reused.getStatusCode().value());
+        assertNull(reused.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void testExecute_OtherNodeHoldsKeyForDifferentRequest() {
+        when(idempotencyKeyJdbcRepository.claim(eq("u1"), eq("k1"), eq(HASH), any(), any())).thenReturn(false);
+        when(idempotencyKeyJdbcRepository.find("u1", "k1"))
+                .thenReturn(Optional.of(new StoredKey("b".repeat(64), null, null, null,
+                        LocalDateTime.now().plusMinutes(2))));
+        AtomicInteger calls = new AtomicInteger();
+
+        ResponseEntity<?> response = idempotencyService.execute("u1", "k1", HASH, countingAction(calls), applicationIdOf);
+
+        // 不等待其他節點處理完成
+        assertEquals(422, response.getStatusCode().value());
+        assertEquals(0, calls.get());
+        verify(idempotencyKeyJdbcRepository, times(1)).find("u1", "k1");
+    }
+
+    @Test
+    void testExecute_SameKeyDifferentUsersRunSeparately() {
+        when(idempotencyKeyJdbcRepository.claim(anyString(), eq("k1"), eq(HASH), any(), any())).thenReturn(true);
+        AtomicInteger calls = new AtomicInteger();
+
+        ResponseEntity<?> first = idempotencyService.execute("u1", "k1", HASH, countingAction(calls), applicationIdOf);
+        ResponseEntity<?> second = idempotencyService.execute("u2", "k1", HASH, countingAction(calls), applicationIdOf);
+
+        assertNull(first.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER));
+        assertNull(second.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER));
+        assertEquals(2, calls.get());
+        verify(idempotencyKeyJdbcRepository).claim(eq("u2"), eq("k1"), eq(HASH), any(), any());
+    }
+
+    @Test
+    void testFingerprint_CoversBodyAndAttachments() {
+        String base = idempotencyService.fingerprint(Map.of("institutionId", "i1"), List.of("file:a.pdf:100"));
+
+        assertEquals(64, base.length());
+        assertEquals(base, idempotencyService.fingerprint(Map.of("institutionId", "i1"), List.of("file:a.pdf:100")));
+        assertNotEquals(base, idempotencyService.fingerprint(Map.of("institutionId", "i2"), List.of("file:a.pdf:100")));
+        assertNotEquals(base, idempotencyService.fingerprint(Map.of("institutionId", "i1"), List.of("file:a.pdf:101")));
+        assertNotEquals(base, idempotencyService.fingerprint(Map.of("institutionId", "i1"), List.of()));
+    }
+
+    @Test
+    void testExecute_KeyTooLong() {
+        String key = "k".repeat(IdempotencyKeyJdbcRepository.MAX_KEY_LENGTH + 1);
+
+        ResponseEntity<?> response = idempotencyService.execute("u1", key, HASH, countingAction(new AtomicInteger()), applicationIdOf);
+
+        assertEquals(400, response.getStatusCode().value());
+        verifyNoInteractions(idempotencyKeyJdbcRepository);
+    }
+
+    @Test
+    void testPurgeExpired_DeletesInBatches() {
+        when(idempotencyKeyJdbcRepository.deleteExpired(any(LocalDateTime.class), anyInt()))
+                .thenReturn(1000)
+                .thenReturn(12);
+
+        assertEquals(1012, idempotencyService.purgeExpired());
+        verify(idempotencyKeyJdbcRepository, times(2)).deleteExpired(any(LocalDateTime.class), eq(1000));
+    }
+}
@@ -0,0 +1,141 @@
+package Group4.Childcare.service;
+
+import Group4.Childcare.Service.ImageDerivativeService;
+import Group4.Childcare.Service.ImageDerivativeService.Variant;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ImageDerivativeService 單元測試
+ *
+ * 測試覆蓋：
+ * 1. 大圖產生 thumb / list / full 三種寬度的 JPEG，等比例縮放
+ * 2. 含透明度的圖片輸出 PNG
+ * 3. 原圖已夠小且重新壓縮沒有變小時不產生該尺寸
+ * 4. 無法辨識的格式與超過像素上限的圖片不產生縮圖
+ * 5. size 參數解析、縮圖不存在時退回原圖、刪除縮圖
+ */
+class ImageDerivativeServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private ImageDerivativeService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new ImageDerivativeService(1, 10, 40_000_000L, 0.8f);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void testGenerate_LargeImageAllVariants() throws Exception {
+        Path original = writeImage("550e8400-e29b-41d4-a716-446655440000_banner.png", 2400, 1200, false);
+
+        assertEquals(3, service.generate(original));
+
+        assertSize(ImageDerivativeService.findVariant(original, Variant.THUMBNAIL), 320, 160);
+        assertSize(ImageDerivativeService.findVariant(original, Variant.LIST), 800, 400);
+        assertSize(ImageDerivativeService.findVariant(original, Variant.FULL), 1920, 960);
+        Path thumb = ImageDerivativeService.findVariant(original, Variant.THUMBNAIL);
+        assertEquals(tempDir.resolve(".variants").resolve("thumb")
+                .resolve("550e8400-e29b-41d4-a716-446655440000_banner.png.jpg"), thumb);
+        assertEquals("550e8400-e29b-41d4-a716-446655440000_banner.png", ImageDerivativeService.originalFileName(thumb));
+    }
+
+    @Test
+    void testGenerate_TransparentImageKeepsPng() throws Exception {
+        Path original = writeImage("logo.png", 1000, 500, true);
+
+        service.generate(original);
+
+        Path thumb = ImageDerivativeService.findVariant(original, Variant.THUMBNAIL);
+        assertTrue(thumb.getFileName().toString().endsWith(".png"));
+        assertTrue(ImageIO.read(thumb.toFile()).getColorModel().hasAlpha());
+    }
+
+    @Test
+    void testGenerate_SmallImageSkipsVariantsThatAreNotSmaller() throws Exception {
+        // 單色 PNG 壓縮後只有數百位元組，轉成 JPEG 反而變大
+        Path original = tempDir.resolve("small.png");
+        ImageIO.write(new BufferedImage(300, 200, BufferedImage.TYPE_INT_RGB), "png", original.toFile());
+
+        service.generate(original);
+
+        for (Variant variant : Variant.values()) {
+            assertNull(ImageDerivativeService.findVariant(original, variant));
+            assertEquals(original, ImageDerivativeService.resolve(original, variant.getKey()));
+        }
+    }
+
+    @Test
+    void testGenerate_UnsupportedOrTooLarge() throws Exception {
+        Path svg = Files.write(tempDir.resolve("icon.svg"),
+                "<svg xmlns=\"http://www.w3.org/2000/svg\"/>".getBytes(StandardCharsets.UTF_8));
+        assertEquals(0, service.generate(svg));
+
+        ImageDerivativeService limited = new ImageDerivativeService(1, 10, 1_000L, 0.8f);
+        try {
+            Path large = writeImage("large.png", 100, 100, false);
+            assertEquals(0, limited.generate(large));
+            assertNull(ImageDerivativeService.findVariant(large, Variant.THUMBNAIL));
+        } finally {
+            limited.shutdown();
+        }
+    }
+
+    @Test
+    void testResolveAndDelete() throws Exception {
+        Path original = writeImage("photo.png", 1000, 800, false);
+        service.generate(original);
+
+        assertNull(Variant.fromParam(null));
+        assertNull(Variant.fromParam("huge"));
+        assertEquals(Variant.THUMBNAIL, Variant.fromParam("Thumbnail"));
+        assertEquals(original, ImageDerivativeService.resolve(original, null));
+        assertEquals(ImageDerivativeService.findVariant(original, Variant.LIST),
+                ImageDerivativeService.resolve(original, "list"));
+
+        ImageDerivativeService.deleteVariants(original);
+
+        assertEquals(original, ImageDerivativeService.resolve(original, "list"));
+        assertTrue(Files.exists(original));
+    }
+
+    private Path writeImage(String name, int width, int height, boolean alpha) throws Exception {
+        BufferedImage image = new BufferedImage(width, height,
+                alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        for (int x = 0; x < width; x += 20) {
+            g.setColor(new Color((x * 7) % 256, (x * 13) % 256, (x * 31) % 256, alpha ? 128 : 255));
+            g.fillRect(x, 0, 20, height);
+        }
+        g.dispose();
+        Path file = tempDir.resolve(name);
+        ImageIO.write(image, "png", file.toFile());
+        return file;
+    }
+
+    private static void assertSize(Path file, int width, int height) throws Exception {
+        assertNotNull(file);
+        BufferedImage image = ImageIO.read(file.toFile());
+        assertEquals(width, image.getWidth());
+        assertEquals(height, image.getHeight());
+    }
+}
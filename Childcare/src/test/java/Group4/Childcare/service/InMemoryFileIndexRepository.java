@@ -0,0 +1,81 @@
+package Group4.Childcare.service;
+
+import Group4.Childcare.Repository.FileIndexJdbcRepository;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * 以記憶體模擬 file_index / file_index_owners，供需要真實 FileMetadataIndex 的測試使用
+ * 語意與 FileIndexJdbcRepository 相同：擁有者未標記為已建立索引時 findFileNames 為空
+ */
+class InMemoryFileIndexRepository extends FileIndexJdbcRepository {
+
+    private final Map<String, TreeMap<String, IndexedFile>> files = new HashMap<>();
+    private final Set<String> indexedOwners = new HashSet<>();
+
+    InMemoryFileIndexRepository() {
+        super(null);
+    }
+
+    private static String key(String category, UUID ownerId) {
+        return category + "/" + ownerId;
+    }
+
+    @Override
+    public synchronized void upsert(String category, UUID ownerId, IndexedFile file, LocalDateTime now) {
+        files.computeIfAbsent(key(category, ownerId), k -> new TreeMap<>()).put(file.fileName(), file);
+    }
+
+    @Override
+    public synchronized void delete(String category, UUID ownerId, String fileName) {
+        TreeMap<String, IndexedFile> owned = files.get(key(category, ownerId));
+        if (owned != null) {
+            owned.remove(fileName);
+        }
+    }
+
+    @Override
+    public synchronized void replaceOwner(String category, UUID ownerId, List<IndexedFile> replacement,
+                                          LocalDateTime now) {
+        TreeMap<String, IndexedFile> owned = new TreeMap<>();
+        replacement.forEach(file -> owned.put(file.fileName(), file));
+        files.put(key(category, ownerId), owned);
+        indexedOwners.add(key(category, ownerId));
+    }
+
+    @Override
+    public synchronized void replaceCategory(String category, Map<UUID, List<IndexedFile>> filesByOwner,
+                                             LocalDateTime now) {
+        files.keySet().removeIf(k -> k.startsWith(category + "/"));
+        filesByOwner.forEach((ownerId, owned) -> replaceOwner(category, ownerId, owned, now));
+        indexedOwners.add(key(category, DIRECTORY_OWNER));
+    }
+
+    @Override
+    public synchronized void unmarkOwner(String category, UUID ownerId) {
+        indexedOwners.remove(key(category, ownerId));
+    }
+
+    @Override
+    public synchronized Optional<List<String>> findFileNames(String category, UUID ownerId) {
+        if (!indexedOwners.contains(key(category, ownerId))) {
+            return Optional.empty();
+        }
+        TreeMap<String, IndexedFile> owned = files.get(key(category, ownerId));
+        return Optional.of(owned == null ? List.of() : new ArrayList<>(owned.keySet()));
+    }
+
+    @Override
+    public synchronized boolean isIndexed(String category, UUID ownerId) {
+        return indexedOwners.contains(key(category, ownerId));
+    }
+}
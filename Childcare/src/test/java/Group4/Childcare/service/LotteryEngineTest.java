@@ -0,0 +1,137 @@
+package Group4.Childcare.service;
+
+import Group4.Childcare.Repository.WaitlistRankKeys;
+import Group4.Childcare.Service.LotteryEngine;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * LotteryEngine 單元測試
+ *
+ * 測試覆蓋：
+ * 1. 名額計算與序位遞延
+ * 2. 年齡班級分配與候補原因
+ * 3. 候補序號以 RANK_STEP 等距遞增
+ * 4. 固定種子可重現
+ */
+class LotteryEngineTest {
+
+    private static final LocalDate AS_OF = LocalDate.of(2025, 8, 1);
+
+    private static LotteryEngine.Applicant applicant(int priority, LocalDate birthDate) {
+        return new LotteryEngine.Applicant(UUID.randomUUID(), "A" + UUID.randomUUID(), priority, birthDate);
+    }
+
+    private static LotteryEngine.Snapshot snapshot(int totalCapacity, int currentStudents,
+                                                   List<LotteryEngine.Applicant> applicants,
+                                                   List<LotteryEngine.ClassSlot> classes) {
+        return new LotteryEngine.Snapshot(totalCapacity, currentStudents, new int[]{0, 0, 0, 0},
+                applicants, classes, AS_OF);
+    }
+
+    @Test
+    void testRun_AllAdmittedWhenSeatsSuffice() {
+        UUID classId = UUID.randomUUID();
+        List<LotteryEngine.ClassSlot> classes = List.of(new LotteryEngine.ClassSlot(classId, 12, 36, 10, 0));
+        List<LotteryEngine.Applicant> applicants = new ArrayList<>();
+        applicants.add(applicant(1, AS_OF.minusMonths(20)));
+        applicants.add(applicant(2, AS_OF.minusMonths(20)));
+        applicants.add(applicant(3, AS_OF.minusMonths(20)));
+
+        LotteryEngine.Outcome outcome = new LotteryEngine(new SplittableRandom(1))
+                .run(snapshot(10, 0, applicants, classes));
+
+        assertEquals(3, outcome.accepted().size());
+        assertEquals(0, outcome.waitlist().size());
+        assertEquals(1, outcome.firstAccepted());
+        assertEquals(1, outcome.secondAccepted());
+        assertEquals(1, outcome.thirdAccepted());
+        assertEquals(3, outcome.admittedPerClass()[0]);
+        assertTrue(outcome.accepted().stream().allMatch(d -> classId.equals(d.classId())));
+    }
+
+    @Test
+    void testRun_NoAvailableSlots_AllWaitlistedWithSequentialOrder() {
+        List<LotteryEngine.ClassSlot> classes = List.of(new LotteryEngine.ClassSlot(UUID.randomUUID(), 0, 72, 5, 5));
+        List<LotteryEngine.Applicant> applicants = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            applicants.add(applicant(i % 3 + 1, AS_OF.minusMonths(24)));
+        }
+
+        LotteryEngine.Outcome outcome = new LotteryEngine(new SplittableRandom(2))
+                .run(snapshot(5, 5, applicants, classes));
+
+        assertEquals(0, outcome.accepted().size());
+        assertEquals(6, outcome.waitlist().size());
+        assertEquals(0, outcome.quotas().firstQuota());
+        for (int i = 0; i < outcome.waitlist().size(); i++) {
+            assertEquals((i + 1) * WaitlistRankKeys.RANK_STEP, outcome.waitlist().get(i).currentOrder());
+            assertNull(outcome.waitlist().get(i).reason());
+        }
+    }
+
+    @Test
+    void testRun_FirstPriorityOverflowCarriesIntoLaterTiers() {
+        // 容量 10：第一序位 2、第二序位 1、第三序位 7
+        List<LotteryEngine.ClassSlot> classes = List.of(new LotteryEngine.ClassSlot(UUID.randomUUID(), 0, 72, 10, 0));
+        List<LotteryEngine.Applicant> applicants = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            applicants.add(applicant(1, AS_OF.minusMonths(30)));
+        }
+
+        LotteryEngine.Outcome outcome = new LotteryEngine(new SplittableRandom(3))
+                .run(snapshot(10, 0, applicants, classes));
+
+        assertEquals(2, outcome.firstAccepted());
+        assertEquals(1, outcome.secondAccepted());
+        assertEquals(7, outcome.thirdAccepted());
+        assertEquals(2, outcome.waitlist().size());
+    }
+
+    @Test
+    void testRun_WaitlistReasons() {
+        UUID classId = UUID.randomUUID();
+        List<LotteryEngine.ClassSlot> classes = List.of(new LotteryEngine.ClassSlot(classId, 12, 24, 1, 0));
+        List<LotteryEngine.Applicant> applicants = new ArrayList<>();
+        applicants.add(applicant(1, null));                      // 無出生日期
+        applicants.add(applicant(1, AS_OF.minusMonths(60)));     // 無適合年齡班級
+        applicants.add(applicant(1, AS_OF.minusMonths(18)));
+        applicants.add(applicant(1, AS_OF.minusMonths(18)));     // 其中一位會因班級已滿而候補
+
+        LotteryEngine.Outcome outcome = new LotteryEngine(new SplittableRandom(4))
+                .run(snapshot(20, 0, applicants, classes));
+
+        assertEquals(1, outcome.accepted().size());
+        Set<String> reasons = new HashSet<>();
+        outcome.waitlist().forEach(d -> reasons.add(d.reason()));
+        assertTrue(reasons.contains("第一序位正取-無出生日期"));
+        assertTrue(reasons.contains("第一序位正取-無適合年齡班級"));
+        assertTrue(reasons.contains("第一序位正取-班級已滿"));
+    }
+
+    @Test
+    void testRun_SameSeedSameOutcome() {
+        List<LotteryEngine.ClassSlot> classes = List.of(new LotteryEngine.ClassSlot(UUID.randomUUID(), 0, 72, 3, 0));
+        List<LotteryEngine.Applicant> applicants = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            applicants.add(applicant(i % 3 + 1, AS_OF.minusMonths(30)));
+        }
+
+        LotteryEngine.Outcome a = new LotteryEngine(new SplittableRandom(99)).run(snapshot(3, 0, applicants, classes));
+        LotteryEngine.Outcome b = new LotteryEngine(new SplittableRandom(99)).run(snapshot(3, 0, applicants, classes));
+
+        assertEquals(a.accepted().stream().map(LotteryEngine.Decision::applicantIndex).toList(),
+                b.accepted().stream().map(LotteryEngine.Decision::applicantIndex).toList());
+        assertEquals(a.waitlist().stream().map(LotteryEngine.Decision::applicantIndex).toList(),
+                b.waitlist().stream().map(LotteryEngine.Decision::applicantIndex).toList());
+    }
+}
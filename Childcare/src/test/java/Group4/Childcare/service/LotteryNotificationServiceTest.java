@@ -0,0 +1,87 @@
+package Group4.Childcare.service;
+
+import Group4.Childcare.Service.EmailService;
+import Group4.Childcare.Service.LotteryNotificationService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+/**
+ * LotteryNotificationService 單元測試
+ *
+ * 測試覆蓋：
+ * 1. 聯合分發撤銷者寄送撤銷通知，不寄候補通知
+ * 2. 候補者通知帶目前序號
+ * 3. 抽籤結果的候補者通知顯示名次而非稀疏排序鍵
+ */
+@ExtendWith(MockitoExtension.class)
+class LotteryNotificationServiceTest {
+
+    @Mock
+    private EmailService emailService;
+
+    private LotteryNotificationService lotteryNotificationService;
+
+    @BeforeEach
+    void setUp() {
+        lotteryNotificationService = new LotteryNotificationService(emailService);
+    }
+
+    private static Map<String, Object> applicant(String email, String status) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("Email", email);
+        row.put("ApplicantName", "王小明");
+        row.put("ChildName", "王小寶");
+        row.put("Status", status);
+        return row;
+    }
+
+    @Test
+    void testReleasedGetReleaseNoticeNotWaitlistNotice() throws Exception {
+        Map<String, Object> released = applicant("parent@example.com", "已撤銷");
+        released.put("Reason", "已錄取較優先志願");
+        released.put("CurrentOrder", null);
+
+        lotteryNotificationService.sendLotteryNotificationEmails(List.of(), List.of(), List.of(released));
+
+        verify(emailService).sendApplicationStatusChangeEmail(eq("parent@example.com"), eq("王小明"),
+                eq("王小寶"), any(), any(), any(), eq("已撤銷"), isNull(),
+                eq("聯合分發結果：已錄取較優先志願，本申請已撤銷"));
+        verify(emailService, never()).sendApplicationStatusChangeEmail(any(), any(), any(), any(), any(),
+                any(), any(), any(), eq("抽籤結果：候補名單"));
+    }
+
+    @Test
+    void testWaitlistedGetCurrentOrder() throws Exception {
+        Map<String, Object> waiting = applicant("wait@example.com", "候補中");
+        waiting.put("CurrentOrder", 2);
+
+        lotteryNotificationService.sendLotteryNotificationEmails(List.of(), List.of(waiting));
+
+        verify(emailService).sendApplicationStatusChangeEmail(eq("wait@example.com"), eq("王小明"),
+                eq("王小寶"), any(), any(), any(), eq("候補中"), eq(2), eq("抽籤結果：候補名單"));
+    }
+
+    @Test
+    void testWaitlistedGetPositionNotRankKey() throws Exception {
+        Map<String, Object> waiting = applicant("wait@example.com", "候補中");
+        waiting.put("CurrentOrder", 2048);
+        waiting.put("WaitlistPosition", 2);
+
+        lotteryNotificationService.sendLotteryNotificationEmails(List.of(), List.of(waiting));
+
+        verify(emailService).sendApplicationStatusChangeEmail(eq("wait@example.com"), eq("王小明"),
+                eq("王小寶"), any(), any(), any(), eq("候補中"), eq(2), eq("抽籤結果：候補名單"));
+    }
+}
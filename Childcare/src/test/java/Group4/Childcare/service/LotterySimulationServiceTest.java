@@ -0,0 +1,143 @@
+package Group4.Childcare.service;
+
+import Group4.Childcare.DTO.AdmissionSimulationResult;
+import Group4.Childcare.Service.LotteryEngine;
+import Group4.Childcare.Service.LotteryService;
+import Group4.Childcare.Service.LotterySimulationService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * LotterySimulationService 單元測試
+ *
+ * 測試覆蓋：
+ * 1. 名額足夠時錄取機率為 1
+ * 2. 無名額時候補序號期望值
+ * 3. 序位名額下的錄取機率
+ * 4. 模擬次數驗證
+ * 5. 500 名申請人效能
+ * 6. 由資料庫快照模擬時帶入申請人姓名
+ */
+@ExtendWith(MockitoExtension.class)
+class LotterySimulationServiceTest {
+
+    private static final LocalDate AS_OF = LocalDate.of(2025, 8, 1);
+
+    @Mock
+    private LotteryService lotteryService;
+
+    private LotterySimulationService simulationService;
+
+    @BeforeEach
+    void setUp() {
+        simulationService = new LotterySimulationService(lotteryService);
+    }
+
+    private static List<LotteryEngine.Applicant> applicants(int count, int priority) {
+        List<LotteryEngine.Applicant> list = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            list.add(new LotteryEngine.Applicant(UUID.randomUUID(), "A" + i, priority, AS_OF.minusMonths(24)));
+        }
+        return list;
+    }
+
+    private static LotteryEngine.Snapshot snapshot(int totalCapacity, int currentStudents,
+                                                   List<LotteryEngine.Applicant> applicants) {
+        List<LotteryEngine.ClassSlot> classes = List.of(
+                new LotteryEngine.ClassSlot(UUID.randomUUID(), 0, 72, totalCapacity, currentStudents));
+        return new LotteryEngine.Snapshot(totalCapacity, currentStudents, new int[]{0, 0, 0, 0},
+                applicants, classes, AS_OF);
+    }
+
+    @Test
+    void testSimulate_AllAdmittedWhenSeatsSuffice() {
+        AdmissionSimulationResult result = simulationService.simulate(
+                snapshot(10, 0, applicants(3, 3)), 5_000, new SplittableRandom(1));
+
+        assertEquals(3, result.getApplicants().size());
+        for (AdmissionSimulationResult.ApplicantOdds odds : result.getApplicants()) {
+            assertEquals(1.0, odds.getAdmissionProbability());
+            assertNull(odds.getExpectedWaitlistRank());
+        }
+    }
+
+    @Test
+    void testSimulate_NoSeats_ExpectedRankIsMidpoint() {
+        AdmissionSimulationResult result = simulationService.simulate(
+                snapshot(5, 5, applicants(5, 3)), 20_000, new SplittableRandom(2));
+
+        for (AdmissionSimulationResult.ApplicantOdds odds : result.getApplicants()) {
+            assertEquals(0.0, odds.getAdmissionProbability());
+            // 5 人隨機排序，期望序號為 3
+            assertEquals(3.0, odds.getExpectedWaitlistRank(), 0.1);
+        }
+    }
+
+    @Test
+    void testSimulate_ThirdTierOddsMatchQuota() {
+        // 容量 10：第一序位 2、第二序位 1、第三序位 7；20 名第三序位搶 10 個名額
+        AdmissionSimulationResult result = simulationService.simulate(
+                snapshot(10, 0, applicants(20, 3)), 50_000, new SplittableRandom(3));
+
+        double total = 0;
+        for (AdmissionSimulationResult.ApplicantOdds odds : result.getApplicants()) {
+            assertEquals(0.5, odds.getAdmissionProbability(), 0.03);
+            total += odds.getAdmissionProbability();
+        }
+        assertEquals(10.0, total, 1e-6);
+    }
+
+    @Test
+    void testSimulate_InvalidIterations() {
+        LotteryEngine.Snapshot snapshot = snapshot(10, 0, applicants(1, 1));
+        assertThrows(IllegalArgumentException.class,
+                () -> simulationService.simulate(snapshot, 0, new SplittableRandom()));
+        assertThrows(IllegalArgumentException.class,
+                () -> simulationService.simulate(snapshot, LotterySimulationService.MAX_ITERATIONS + 1, new SplittableRandom()));
+    }
+
+    @Test
+    void testSimulate_500Applicants_Performance() {
+        List<LotteryEngine.Applicant> list = new ArrayList<>();
+        list.addAll(applicants(100, 1));
+        list.addAll(applicants(50, 2));
+        list.addAll(applicants(350, 3));
+
+        // 暖機
+        simulationService.simulate(snapshot(120, 20, list), 10_000, new SplittableRandom(4));
+        AdmissionSimulationResult result = simulationService.simulate(
+                snapshot(120, 20, list), LotterySimulationService.DEFAULT_ITERATIONS, new SplittableRandom(5));
+
+        System.out.println("500 名申請人 x " + result.getIterations() + " 次模擬耗時: " + result.getElapsedMillis() + " ms");
+        assertEquals(500, result.getApplicants().size());
+        assertTrue(result.getElapsedMillis() < 5_000);
+    }
+
+    @Test
+    void testSimulate_ByInstitution_FillsNames() {
+        UUID institutionId = UUID.randomUUID();
+        List<LotteryEngine.Applicant> list = applicants(2, 3);
+        List<Map<String, Object>> rows = List.of(Map.of("Name", "王小明"), Map.of("Name", "李小華"));
+        when(lotteryService.loadSnapshot(institutionId))
+                .thenReturn(new LotteryService.LoadedSnapshot(snapshot(10, 0, list), rows));
+
+        AdmissionSimulationResult result = simulationService.simulate(institutionId, 1_000);
+
+        assertEquals(institutionId, result.getInstitutionId());
+        assertEquals("王小明", result.getApplicants().get(0).getName());
+        assertEquals("李小華", result.getApplicants().get(1).getName());
+    }
+}
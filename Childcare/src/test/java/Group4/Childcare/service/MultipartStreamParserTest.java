@@ -0,0 +1,136 @@
+package Group4.Childcare.service;
+
+import Group4.Childcare.Service.MultipartStreamParser;
+import Group4.Childcare.Service.MultipartStreamParser.Part;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MultipartStreamParser 單元測試
+ *
+ * 測試覆蓋：
+ * 1. 依序解析欄位名稱、檔名（含中文）、Content-Type 與本體，略過前言
+ * 2. 本體內含與分隔線相似的位元組、來源每次只回傳少量資料時仍正確切割
+ * 3. 未讀完的欄位於下一次 next() 時略過
+ * 4. 請求本體中斷時拋出 IOException；非 multipart 請求取不到 boundary
+ */
+class MultipartStreamParserTest {
+
+    private static final String BOUNDARY = "----WebKitFormBoundary7MA4YWxkTrZu0gW";
+
+    /**
+     * 每次最多回傳 n 個位元組，模擬網路分段到達
+     */
+    private static class TrickleInputStream extends FilterInputStream {
+        private final Random random = new Random(42);
+
+        TrickleInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return super.read(b, off, Math.min(len, 1 + random.nextInt(3000)));
+        }
+    }
+
+    private static void writePart(ByteArrayOutputStream out, String disposition, String contentType, byte[] body)
+            throws IOException {
+        out.write(("--" + BOUNDARY + "\r\nContent-Disposition: form-data; " + disposition + "\r\n")
+                .getBytes(StandardCharsets.UTF_8));
+        if (contentType != null) {
+            out.write(("Content-Type: " + contentType + "\r\n").getBytes(StandardCharsets.UTF_8));
+        }
+        out.write("\r\n".getBytes(StandardCharsets.UTF_8));
+        out.write(body);
+        out.write("\r\n".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testNext_ParsesPartsInOrder() throws IOException {
+        byte[] file = new byte[300_000];
+        new Random(1).nextBytes(file);
+        // 本體中放入只差最後一個字元的分隔線，以及跨越緩衝區邊界的分隔線前綴
+        byte[] nearBoundary = ("\r\n--" + BOUNDARY.substring(0, BOUNDARY.length() - 1) + "X")
+                .getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(nearBoundary, 0, file, 1000, nearBoundary.length);
+        System.arraycopy(nearBoundary, 0, file, MultipartStreamParser.BUFFER_SIZE - 10, nearBoundary.length);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write("This is the preamble.\r\n".getBytes(StandardCharsets.UTF_8));
+        writePart(out, "name=\"caseDto\"", "application/json", "{\"name\":\"王小明\"}".getBytes(StandardCharsets.UTF_8));
+        writePart(out, "name=\"file\"; filename=\"戶口名簿.pdf\"", "application/pdf", file);
+        writePart(out, "name=\"file1\"; filename=\"\"", "application/octet-stream", new byte[0]);
+        out.write(("--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8));
+
+        MultipartStreamParser parser = new MultipartStreamParser(
+                new TrickleInputStream(new ByteArrayInputStream(out.toByteArray())), BOUNDARY);
+
+        Part json = parser.next();
+        assertEquals("caseDto", json.name());
+        assertFalse(json.isFile());
+        assertEquals("application/json", json.contentType());
+        assertEquals("{\"name\":\"王小明\"}", new String(json.body().readAllBytes(), StandardCharsets.UTF_8));
+
+        Part pdf = parser.next();
+        assertEquals("file", pdf.name());
+        assertEquals("戶口名簿.pdf", pdf.filename());
+        assertArrayEquals(file, pdf.body().readAllBytes());
+
+        Part empty = parser.next();
+        assertEquals("file1", empty.name());
+        assertEquals("", empty.filename());
+        assertEquals(0, empty.body().readAllBytes().length);
+
+        assertNull(parser.next());
+        assertNull(parser.next());
+    }
+
+    @Test
+    void testNext_SkipsUnreadBody() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writePart(out, "name=\"file\"; filename=\"a.png\"", "image/png", new byte[200_000]);
+        writePart(out, "name=\"note\"", null, "ok".getBytes(StandardCharsets.UTF_8));
+        out.write(("--" + BOUNDARY + "--").getBytes(StandardCharsets.UTF_8));
+
+        MultipartStreamParser parser = new MultipartStreamParser(new ByteArrayInputStream(out.toByteArray()), BOUNDARY);
+        assertEquals("file", parser.next().name());
+
+        Part note = parser.next();
+        assertEquals("note", note.name());
+        assertNull(note.contentType());
+        assertEquals("ok", new String(note.body().readAllBytes(), StandardCharsets.UTF_8));
+        assertNull(parser.next());
+    }
+
+    @Test
+    void testNext_TruncatedStreamThrows() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writePart(out, "name=\"file\"; filename=\"a.pdf\"", "application/pdf", new byte[100_000]);
+        byte[] truncated = Arrays.copyOf(out.toByteArray(), 50_000);
+
+        MultipartStreamParser parser = new MultipartStreamParser(new ByteArrayInputStream(truncated), BOUNDARY);
+        Part part = parser.next();
+
+        assertThrows(IOException.class, () -> part.body().readAllBytes());
+    }
+
+    @Test
+    void testBoundaryOf() {
+        assertEquals("abc", MultipartStreamParser.boundaryOf("multipart/form-data; boundary=abc"));
+        assertEquals("a b;c", MultipartStreamParser.boundaryOf("Multipart/Form-Data; charset=UTF-8; boundary=\"a b;c\""));
+        assertNull(MultipartStreamParser.boundaryOf("application/json"));
+        assertNull(MultipartStreamParser.boundaryOf("multipart/form-data"));
+        assertNull(MultipartStreamParser.boundaryOf(null));
+    }
+}
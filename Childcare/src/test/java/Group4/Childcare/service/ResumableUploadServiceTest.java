@@ -0,0 +1,497 @@
+package Group4.Childcare.service;
+
+import Group4.Childcare.Repository.ApplicationsJdbcRepository;
+import Group4.Childcare.Repository.AttachmentUploadJdbcRepository;
+import Group4.Childcare.Repository.AttachmentUploadJdbcRepository.Upload;
+import Group4.Childcare.Service.AttachmentArchiveService;
+import Group4.Childcare.Service.AttachmentBlobStore;
+import Group4.Childcare.Service.FileMetadataIndex;
+import Group4.Childcare.Service.FileService;
+import Group4.Childcare.Service.ImageDerivativeService;
+import Group4.Childcare.Service.ResumableUploadService;
+import Group4.Childcare.Service.ResumableUploadService.CompletedUpload;
+import Group4.Childcare.Service.ResumableUploadService.UploadStatus;
+import Group4.Childcare.Service.StreamingUploadService;
+import Group4.Childcare.Service.StreamingUploadService.UploadRejectedException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * ResumableUploadService 單元測試
+ *
+ * 測試覆蓋：
+ * 1. 區段亂序到達後組合成完整檔案，完成時移入案件資料夾、寫入附件欄位並刪除舊附件
+ * 2. 傳輸中斷時記錄已收到的部分，只需補傳其餘區段
+ * 3. 區段未收齊（409）、SHA-256 不符（422）、區段超出範圍（416）
+ * 4. 建立上傳時檢查附件欄位、大小、類型與案件是否存在
+ * 5. 過期的上傳連同暫存檔一起清除
+ * 6. 仍有區段寫入中時拒絕完成（409），寫入結束後才可完成
+ * 7. 兩個節點共用資料表與暫存目錄：另一節點仍有區段寫入中時拒絕完成，完成中的上傳不再接受區段
+ */
+@ExtendWith(MockitoExtension.class)
+class ResumableUploadServiceTest {
+
+    /**
+     * 以記憶體取代 attachment_uploads 資料表
+     */
+    private static class InMemoryUploadRepository extends AttachmentUploadJdbcRepository {
+        final Map<UUID, Upload> rows = new ConcurrentHashMap<>();
+        // ActiveWriters、WriterLeaseUntil、CompletingUntil
+        private final Map<UUID, Lease> leases = new ConcurrentHashMap<>();
+
+        private static class Lease {
+            int writers;
+            LocalDateTime writerLeaseUntil;
+            LocalDateTime completingUntil;
+        }
+
+        InMemoryUploadRepository() {
+            super(null);
+        }
+
+        @Override
+        public void insert(UUID uploadId, UUID applicationId, int slot, String fileName, String contentType,
+                           long totalBytes, String sha256, LocalDateTime expiresAt) {
+            rows.put(uploadId, new Upload(uploadId, applicationId, slot, fileName, contentType, totalBytes, "", 0,
+                    sha256, expiresAt));
+        }
+
+        @Override
+        public Optional<Upload> findById(UUID uploadId) {
+            return Optional.ofNullable(rows.get(uploadId));
+        }
+
+        @Override
+        public synchronized boolean updateProgress(UUID uploadId, String previousRanges, String receivedRanges,
+                                                   long receivedBytes, LocalDateTime expiresAt) {
+            Upload u = rows.get(uploadId);
+            if (u == null || !u.receivedRanges().equals(previousRanges)) {
+                return false;
+            }
+            rows.put(uploadId, new Upload(uploadId, u.applicationId(), u.slot(), u.fileName(), u.contentType(),
+                    u.totalBytes(), receivedRanges, receivedBytes, u.sha256(), expiresAt));
+            return true;
+        }
+
+        @Override
+        public synchronized boolean beginWrite(UUID uploadId, LocalDateTime now, LocalDateTime leaseUntil) {
+            if (!rows.containsKey(uploadId)) {
+                return false;
+            }
+            Lease lease = leases.computeIfAbsent(uploadId, id -> new Lease());
+            if (lease.completingUntil != null && lease.completingUntil.isAfter(now)) {
+                return false;
+            }
+            boolean expired = lease.writerLeaseUntil == null || !lease.writerLeaseUntil.isAfter(now);
+            lease.writers = expired ? 1 : lease.writers + 1;
+            lease.writerLeaseUntil = leaseUntil;
+            return true;
+        }
+
+        @Override
+        public synchronized void endWrite(UUID uploadId) {
+            Lease lease = leases.get(uploadId);
+            if (lease != null && lease.writers > 0) {
+                lease.writers--;
+            }
+        }
+
+        @Override
+        public synchronized boolean beginComplete(UUID uploadId, LocalDateTime now, LocalDateTime leaseUntil) {
+            if (!rows.containsKey(uploadId)) {
+                return false;
+            }
+            Lease lease = leases.computeIfAbsent(uploadId, id -> new Lease());
+            boolean writing = lease.writers > 0 && lease.writerLeaseUntil != null
+                    && lease.writerLeaseUntil.isAfter(now);
+            boolean completing = lease.completingUntil != null && lease.completingUntil.isAfter(now);
+            if (writing || completing) {
+                return false;
+            }
+            lease.completingUntil = leaseUntil;
+            return true;
+        }
+
+        @Override
+        public synchronized void endComplete(UUID uploadId) {
+            Lease lease = leases.get(uploadId);
+            if (lease != null) {
+                lease.completingUntil = null;
+            }
+        }
+
+        @Override
+        public synchronized void deleteById(UUID uploadId) {
+            rows.remove(uploadId);
+            leases.remove(uploadId);
+        }
+
+        @Override
+        public List<UUID> findExpiredIds(LocalDateTime now, int batchSize) {
+            List<UUID> expired = new ArrayList<>();
+            rows.values().stream().filter(u -> u.expiresAt().isBefore(now)).limit(batchSize)
+                    .forEach(u -> expired.add(u.uploadId()));
+            return expired;
+        }
+    }
+
+    /**
+     * 可調整時間的 Clock
+     */
+    private static class MutableClock extends Clock {
+        private volatile Instant instant = Instant.parse("2025-09-01T01:00:00Z");
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+
+    /**
+     * 送出 n 個位元組後模擬斷線
+     */
+    private static class DroppingInputStream extends InputStream {
+        private final InputStream in;
+        private int remaining;
+
+        DroppingInputStream(byte[] data, int dropAfter) {
+            this.in = new ByteArrayInputStream(data);
+            this.remaining = dropAfter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                throw new IOException("Connection reset");
+            }
+            int n = in.read(b, off, Math.min(len, remaining));
+            remaining -= n;
+            return n;
+        }
+    }
+
+    /**
+     * 第一次讀取時通知 started，等到 release 後才送出資料
+     */
+    private static class GatedInputStream extends InputStream {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        private final InputStream in;
+
+        GatedInputStream(byte[] data) {
+            this.in = new ByteArrayInputStream(data);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            started.countDown();
+            try {
+                if (!release.await(10, TimeUnit.SECONDS)) {
+                    throw new IOException("timeout");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+            return in.read(b, off, len);
+        }
+    }
+
+    @Mock
+    private ApplicationsJdbcRepository applicationsJdbcRepository;
+
+    @TempDir
+    Path tempDir;
+
+    private InMemoryUploadRepository repository;
+    private StreamingUploadService streamingUploadService;
+    private ResumableUploadService service;
+    private MutableClock clock;
+    private UUID applicationId;
+    private byte[] pdf;
+
+    @BeforeEach
+    void setUp() {
+        FileService fileService = new FileService(tempDir.toString(), mock(AttachmentBlobStore.class),
+                mock(ImageDerivativeService.class), mock(FileMetadataIndex.class), mock(AttachmentArchiveService.class));
+        repository = new InMemoryUploadRepository();
+        streamingUploadService = new StreamingUploadService(10 * 1024 * 1024, 50 * 1024 * 1024,
+                List.of("application/pdf", "image/jpeg", "image/png"), 1);
+        clock = new MutableClock();
+        service = new ResumableUploadService(repository, applicationsJdbcRepository, fileService,
+                streamingUploadService, tempDir, 1024 * 1024, Duration.ofHours(24), clock);
+        applicationId = UUID.randomUUID();
+
+        pdf = new byte[300_000];
+        new Random(3).nextBytes(pdf);
+        System.arraycopy("%PDF-1.7".getBytes(StandardCharsets.US_ASCII), 0, pdf, 0, 8);
+    }
+
+    @AfterEach
+    void tearDown() {
+        streamingUploadService.shutdown();
+    }
+
+    private UploadStatus create(String sha256) throws IOException {
+        when(applicationsJdbcRepository.existsById(applicationId)).thenReturn(true);
+        return service.create(applicationId, 1, "戶口名簿.pdf", "application/pdf", (long) pdf.length, sha256);
+    }
+
+    private UploadStatus put(UUID uploadId, int start, int endExclusive) throws IOException {
+        return service.writeChunk(uploadId, start, endExclusive - 1, (long) pdf.length,
+                new ByteArrayInputStream(Arrays.copyOfRange(pdf, start, endExclusive)));
+    }
+
+    private static String sha256(byte[] data) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+    }
+
+    @Test
+    void testOutOfOrderChunks_AssembledAndAttached() throws Exception {
+        UUID uploadId = create(sha256(pdf)).uploadId();
+        Path oldFile = Files.createDirectories(tempDir.resolve(applicationId.toString())).resolve("old_a.pdf");
+        Files.write(oldFile, new byte[]{1});
+        when(applicationsJdbcRepository.replaceAttachmentPath(eq(applicationId), eq(1), anyString()))
+                .thenReturn(Optional.of(applicationId + "/old_a.pdf"));
+
+        UploadStatus afterLast = put(uploadId, 200_000, 300_000);
+        assertEquals(0, afterLast.offset());
+        assertEquals(List.of("200000-300000"), afterLast.receivedRanges());
+        UploadStatus afterFirst = put(uploadId, 0, 100_000);
+        assertEquals(100_000, afterFirst.offset());
+        // 重送已收到的區段不影響結果
+        put(uploadId, 50_000, 100_000);
+        UploadStatus done = put(uploadId, 100_000, 200_000);
+        assertTrue(done.complete());
+        assertEquals(List.of("0-300000"), done.receivedRanges());
+
+        CompletedUpload completed = service.complete(uploadId);
+
+        assertEquals(sha256(pdf), completed.sha256());
+        assertTrue(completed.attachmentPath().startsWith(applicationId + "/"));
+        assertTrue(completed.attachmentPath().endsWith("_戶口名簿.pdf"));
+        Path stored = tempDir.resolve(completed.attachmentPath());
+        assertArrayEquals(pdf, Files.readAllBytes(stored));
+        assertFalse(Files.exists(oldFile));
+        assertFalse(Files.exists(tempDir.resolve(ResumableUploadService.PARTIAL_DIR).resolve(uploadId + ".part")));
+        assertTrue(service.status(uploadId).isEmpty());
+        verify(applicationsJdbcRepository).replaceAttachmentPath(applicationId, 1, completed.attachmentPath());
+    }
+
+    @Test
+    void testInterruptedChunk_ResumesFromRecordedOffset() throws Exception {
+        UUID uploadId = create(null).uploadId();
+
+        assertThrows(IOException.class, () -> service.writeChunk(uploadId, 0, pdf.length - 1, (long) pdf.length,
+                new DroppingInputStream(pdf, 123_456)));
+
+        UploadStatus status = service.status(uploadId).orElseThrow();
+        assertEquals(123_456, status.offset());
+        assertEquals(123_456, status.receivedBytes());
+
+        put(uploadId, (int) status.offset(), pdf.length);
+        when(applicationsJdbcRepository.replaceAttachmentPath(eq(applicationId), eq(1), anyString()))
+                .thenReturn(Optional.empty());
+        CompletedUpload completed = service.complete(uploadId);
+
+        assertArrayEquals(pdf, Files.readAllBytes(tempDir.resolve(completed.attachmentPath())));
+    }
+
+    @Test
+    void testComplete_RejectsIncompleteOrCorruptUpload() throws Exception {
+        UUID uploadId = create(sha256(new byte[]{1, 2, 3})).uploadId();
+        put(uploadId, 0, 100_000);
+
+        UploadRejectedException incomplete = assertThrows(UploadRejectedException.class,
+                () -> service.complete(uploadId));
+        assertEquals(409, incomplete.getStatus());
+
+        UploadRejectedException outOfRange = assertThrows(UploadRejectedException.class,
+                () -> service.writeChunk(uploadId, 299_000, 300_000, (long) pdf.length,
+                        new ByteArrayInputStream(new byte[1001])));
+        assertEquals(416, outOfRange.getStatus());
+
+        put(uploadId, 100_000, pdf.length);
+        UploadRejectedException mismatch = assertThrows(UploadRejectedException.class,
+                () -> service.complete(uploadId));
+        assertEquals(422, mismatch.getStatus());
+        assertTrue(service.status(uploadId).isEmpty());
+        verify(applicationsJdbcRepository, never()).replaceAttachmentPath(any(), anyInt(), anyString());
+    }
+
+    @Test
+    void testComplete_RejectedWhileChunkInFlight() throws Exception {
+        UUID uploadId = create(null).uploadId();
+        put(uploadId, 0, 200_000);
+        // 最後一段已重送（例如用戶端逾時重試），前一次仍在傳輸中
+        put(uploadId, 200_000, pdf.length);
+
+        GatedInputStream slow = new GatedInputStream(Arrays.copyOfRange(pdf, 200_000, pdf.length));
+        List<Throwable> errors = new ArrayList<>();
+        Thread writer = new Thread(() -> {
+            try {
+                service.writeChunk(uploadId, 200_000, pdf.length - 1, (long) pdf.length, slow);
+            } catch (Throwable e) {
+                errors.add(e);
+            }
+        });
+        writer.start();
+        assertTrue(slow.started.await(10, TimeUnit.SECONDS));
+
+        UploadRejectedException inFlight = assertThrows(UploadRejectedException.class,
+                () -> service.complete(uploadId));
+        assertEquals(409, inFlight.getStatus());
+
+        slow.release.countDown();
+        writer.join(10_000);
+        assertTrue(errors.isEmpty());
+
+        when(applicationsJdbcRepository.replaceAttachmentPath(eq(applicationId), eq(1), anyString()))
+                .thenReturn(Optional.empty());
+        CompletedUpload completed = service.complete(uploadId);
+        assertArrayEquals(pdf, Files.readAllBytes(tempDir.resolve(completed.attachmentPath())));
+    }
+
+    @Test
+    void testComplete_RejectedWhileChunkInFlightOnOtherNode() throws Exception {
+        // 第二個節點：同一張資料表、同一個共用 IdentityResource，但各自的鎖
+        FileService otherFileService = new FileService(tempDir.toString(), mock(AttachmentBlobStore.class),
+                mock(ImageDerivativeService.class), mock(FileMetadataIndex.class), mock(AttachmentArchiveService.class));
+        ResumableUploadService otherNode = new ResumableUploadService(repository, applicationsJdbcRepository,
+                otherFileService, streamingUploadService, tempDir, 1024 * 1024, Duration.ofHours(24), clock);
+
+        UUID uploadId = create(null).uploadId();
+        put(uploadId, 0, 200_000);
+        put(uploadId, 200_000, pdf.length);
+
+        GatedInputStream slow = new GatedInputStream(Arrays.copyOfRange(pdf, 200_000, pdf.length));
+        List<Throwable> errors = new ArrayList<>();
+        Thread writer = new Thread(() -> {
+            try {
+                otherNode.writeChunk(uploadId, 200_000, pdf.length - 1, (long) pdf.length, slow);
+            } catch (Throwable e) {
+                errors.add(e);
+            }
+        });
+        writer.start();
+        assertTrue(slow.started.await(10, TimeUnit.SECONDS));
+
+        UploadRejectedException inFlight = assertThrows(UploadRejectedException.class,
+                () -> service.complete(uploadId));
+        assertEquals(409, inFlight.getStatus());
+
+        slow.release.countDown();
+        writer.join(10_000);
+        assertTrue(errors.isEmpty());
+
+        // 完成期間另一節點的區段寫入被拒絕
+        assertTrue(repository.beginComplete(uploadId, LocalDateTime.now(clock), LocalDateTime.now(clock).plusMinutes(5)));
+        UploadRejectedException completing = assertThrows(UploadRejectedException.class,
+                () -> otherNode.writeChunk(uploadId, 0, 999, (long) pdf.length,
+                        new ByteArrayInputStream(Arrays.copyOfRange(pdf, 0, 1000))));
+        assertEquals(409, completing.getStatus());
+        repository.endComplete(uploadId);
+
+        when(applicationsJdbcRepository.replaceAttachmentPath(eq(applicationId), eq(1), anyString()))
+                .thenReturn(Optional.empty());
+        CompletedUpload completed = service.complete(uploadId);
+        assertArrayEquals(pdf, Files.readAllBytes(tempDir.resolve(completed.attachmentPath())));
+    }
+
+    @Test
+    void testCreate_Validation() {
+        assertEquals(400, assertThrows(UploadRejectedException.class,
+                () -> service.create(applicationId, 4, "a.pdf", "application/pdf", 10L, null)).getStatus());
+        assertEquals(413, assertThrows(UploadRejectedException.class,
+                () -> service.create(applicationId, 0, "a.pdf", "application/pdf", 2L * 1024 * 1024, null)).getStatus());
+        assertEquals(415, assertThrows(UploadRejectedException.class,
+                () -> service.create(applicationId, 0, "a.exe", "application/x-msdownload", 10L, null)).getStatus());
+        assertEquals(400, assertThrows(UploadRejectedException.class,
+                () -> service.create(applicationId, 0, "a.pdf", "application/pdf", 10L, "not-a-hash")).getStatus());
+
+        when(applicationsJdbcRepository.existsById(applicationId)).thenReturn(false);
+        assertEquals(404, assertThrows(UploadRejectedException.class,
+                () -> service.create(applicationId, 0, "a.pdf", "application/pdf", 10L, null)).getStatus());
+        assertTrue(repository.rows.isEmpty());
+    }
+
+    @Test
+    void testPurgeExpired_RemovesRowAndPartialFile() throws Exception {
+        UUID uploadId = create(null).uploadId();
+        put(uploadId, 0, 1000);
+        Path partial = tempDir.resolve(ResumableUploadService.PARTIAL_DIR).resolve(uploadId + ".part");
+        assertTrue(Files.exists(partial));
+
+        // 期限自最後一次收到資料起算
+        clock.advance(Duration.ofHours(23));
+        put(uploadId, 1000, 2000);
+        clock.advance(Duration.ofHours(2));
+        assertEquals(0, service.purgeExpired());
+        assertTrue(service.status(uploadId).isPresent());
+
+        clock.advance(Duration.ofHours(23));
+        assertEquals(1, service.purgeExpired());
+        assertFalse(Files.exists(partial));
+        assertTrue(service.status(uploadId).isEmpty());
+    }
+}
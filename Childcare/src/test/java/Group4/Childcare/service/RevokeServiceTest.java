@@ -4,6 +4,7 @@ import Group4.Childcare.DTO.RevokeApplicationDTO;
 import Group4.Childcare.DTO.ApplicationParticipantDTO;
 import Group4.Childcare.Repository.RevokesJdbcRepository;
 import Group4.Childcare.Service.RevokeService;
+import Group4.Childcare.Service.WaitlistPromotionService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -30,6 +31,9 @@ class RevokeServiceTest {
     @Mock
     private RevokesJdbcRepository revokesJdbcRepository;
 
+    @Mock
+    private WaitlistPromotionService waitlistPromotionService;
+
     @InjectMocks
     private RevokeService revokeService;
 
@@ -297,6 +301,33 @@ class RevokeServiceTest {
         assertEquals(0, result);
     }
 
+    @Test
+    void testUpdateApplicationParticipantStatus_RevokeAdmitted_TriggersPromotion() {
+        UUID classId = UUID.randomUUID();
+        when(revokesJdbcRepository.findAdmittedClassID(testApplicationId.toString(), "A123456789"))
+                .thenReturn(classId.toString());
+        when(revokesJdbcRepository.updateApplicationParticipantStatus(
+                testApplicationId.toString(), "A123456789", "已撤銷"))
+                .thenReturn(1);
+
+        int result = revokeService.updateApplicationParticipantStatus(
+                testApplicationId.toString(), "A123456789", "已撤銷");
+
+        assertEquals(1, result);
+        verify(waitlistPromotionService).seatFreed(classId);
+    }
+
+    @Test
+    void testUpdateApplicationParticipantStatus_NotAdmitted_NoPromotion() {
+        when(revokesJdbcRepository.findAdmittedClassID(anyString(), anyString())).thenReturn(null);
+        when(revokesJdbcRepository.updateApplicationParticipantStatus(anyString(), anyString(), anyString()))
+                .thenReturn(1);
+
+        revokeService.updateApplicationParticipantStatus(testApplicationId.toString(), "A123456789", "已撤銷");
+
+        verify(waitlistPromotionService, never()).seatFreed(any());
+    }
+
     // ===== createCancellation 測試 =====
 
     @Test
@@ -0,0 +1,262 @@
+package Group4.Childcare.service;
+
+import Group4.Childcare.Service.MultipartStreamParser;
+import Group4.Childcare.Service.StreamingUploadService;
+import Group4.Childcare.Service.StreamingUploadService.StoredFile;
+import Group4.Childcare.Service.StreamingUploadService.UploadRejectedException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * StreamingUploadService 單元測試
+ *
+ * 測試覆蓋：
+ * 1. 多個檔案欄位直接寫入目錄，內容與 SHA-256 正確；未選檔案的欄位不建立檔案
+ * 2. 單檔超過大小上限回傳 413，已寫入的部分刪除
+ * 3. 類型不在允許清單、或檔案開頭與宣告類型不符回傳 415
+ * 4. 請求本體超過總大小上限回傳 413；非 multipart 請求回傳 400
+ * 5. 同時上傳的檔案數多於寫檔執行緒時，傳輸中停頓的請求不會佔住寫檔執行緒
+ */
+class StreamingUploadServiceTest {
+
+    private static final String BOUNDARY = "boundary-123";
+    private static final byte[] PDF_HEADER = "%PDF-1.7\n".getBytes(StandardCharsets.US_ASCII);
+
+    @TempDir
+    Path tempDir;
+
+    private StreamingUploadService service;
+
+    @AfterEach
+    void tearDown() {
+        if (service != null) {
+            service.shutdown();
+        }
+    }
+
+    private StreamingUploadService service(long maxFileBytes, long maxRequestBytes) {
+        service = new StreamingUploadService(maxFileBytes, maxRequestBytes,
+                List.of("application/pdf", "image/jpeg", "image/png"), 2);
+        return service;
+    }
+
+    private static byte[] pdf(int size, long seed) {
+        byte[] content = new byte[size];
+        new Random(seed).nextBytes(content);
+        System.arraycopy(PDF_HEADER, 0, content, 0, PDF_HEADER.length);
+        return content;
+    }
+
+    private static void writeFilePart(ByteArrayOutputStream out, String name, String filename, String contentType,
+                                      byte[] body) throws IOException {
+        out.write(("--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"" + name + "\"; filename=\""
+                + filename + "\"\r\nContent-Type: " + contentType + "\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        out.write(body);
+        out.write("\r\n".getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static byte[] request(ByteArrayOutputStream out) throws IOException {
+        out.write(("--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        return out.toByteArray();
+    }
+
+    private MultipartStreamParser open(StreamingUploadService service, byte[] body) {
+        return service.open(new ByteArrayInputStream(body), "multipart/form-data; boundary=" + BOUNDARY);
+    }
+
+    private long fileCount() throws IOException {
+        try (Stream<Path> files = Files.list(tempDir)) {
+            return files.count();
+        }
+    }
+
+    @Test
+    void testStore_WritesFilesWithSha256() throws Exception {
+        byte[] first = pdf(3 * MultipartStreamParser.BUFFER_SIZE + 17, 1);
+        byte[] second = pdf(5000, 2);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeFilePart(out, "file", "a.pdf", "application/pdf", first);
+        writeFilePart(out, "file1", "", "application/octet-stream", new byte[0]);
+        writeFilePart(out, "file2", "b.pdf", "application/pdf; name=b.pdf", second);
+        MultipartStreamParser parser = open(service(1024 * 1024, 10 * 1024 * 1024), request(out));
+
+        List<Future<StoredFile>> pending = new ArrayList<>();
+        for (MultipartStreamParser.Part part; (part = parser.next()) != null; ) {
+            pending.add(service.store(part, tempDir));
+        }
+        List<StoredFile> stored = service.awaitAll(pending);
+
+        assertEquals(2, stored.size());
+        assertEquals(2, fileCount());
+        StoredFile a = stored.get(0);
+        assertEquals("file", a.fieldName());
+        assertEquals("a.pdf", a.originalFilename());
+        assertTrue(a.storedName().endsWith("_a.pdf"));
+        assertEquals(first.length, a.size());
+        assertArrayEquals(first, Files.readAllBytes(a.path()));
+        assertEquals(HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(first)), a.sha256());
+        assertEquals("file2", stored.get(1).fieldName());
+        assertEquals("application/pdf", stored.get(1).contentType());
+        assertEquals(HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(second)), stored.get(1).sha256());
+    }
+
+    @Test
+    void testStore_FileTooLarge() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeFilePart(out, "file", "big.pdf", "application/pdf", pdf(4 * MultipartStreamParser.BUFFER_SIZE, 3));
+        MultipartStreamParser parser = open(service(2 * MultipartStreamParser.BUFFER_SIZE, 10 * 1024 * 1024), request(out));
+
+        UploadRejectedException ex = assertThrows(UploadRejectedException.class,
+                () -> service.store(parser.next(), tempDir));
+
+        assertEquals(413, ex.getStatus());
+        assertEquals(0, fileCount());
+    }
+
+    @Test
+    void testStore_TypeNotAllowedOrSignatureMismatch() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeFilePart(out, "file", "run.exe", "application/x-msdownload", "MZ".getBytes(StandardCharsets.US_ASCII));
+        writeFilePart(out, "file1", "fake.png", "image/png", pdf(1000, 4));
+        MultipartStreamParser parser = open(service(1024 * 1024, 10 * 1024 * 1024), request(out));
+
+        UploadRejectedException type = assertThrows(UploadRejectedException.class,
+                () -> service.store(parser.next(), tempDir));
+        UploadRejectedException signature = assertThrows(UploadRejectedException.class,
+                () -> service.store(parser.next(), tempDir));
+
+        assertEquals(415, type.getStatus());
+        assertEquals(415, signature.getStatus());
+        assertEquals(0, fileCount());
+    }
+
+    @Test
+    void testOpen_RequestLimitAndContentType() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeFilePart(out, "file", "a.pdf", "application/pdf", pdf(200_000, 5));
+        MultipartStreamParser parser = open(service(1024 * 1024, 100_000), request(out));
+
+        UploadRejectedException tooLarge = assertThrows(UploadRejectedException.class,
+                () -> service.store(parser.next(), tempDir));
+        UploadRejectedException notMultipart = assertThrows(UploadRejectedException.class,
+                () -> service.open(new ByteArrayInputStream(new byte[0]), "application/json"));
+
+        assertEquals(413, tooLarge.getStatus());
+        assertEquals(400, notMultipart.getStatus());
+        assertEquals(0, fileCount());
+    }
+
+    /**
+     * 讀到 stallAt 後停住，直到 resume 開啟（模擬網路緩慢的用戶端）
+     */
+    private static final class StallingInputStream extends InputStream {
+        private final byte[] data;
+        private final int stallAt;
+        private final CountDownLatch resume;
+        private int position;
+
+        StallingInputStream(byte[] data, int stallAt, CountDownLatch resume) {
+            this.data = data;
+            this.stallAt = stallAt;
+            this.resume = resume;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position >= data.length) {
+                return -1;
+            }
+            if (position >= stallAt) {
+                try {
+                    resume.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                }
+            }
+            int limit = position < stallAt ? stallAt : data.length;
+            int n = Math.min(len, limit - position);
+            System.arraycopy(data, position, b, off, n);
+            position += n;
+            return n;
+        }
+    }
+
+    private List<StoredFile> upload(InputStream body) throws IOException {
+        MultipartStreamParser parser = service.open(body, "multipart/form-data; boundary=" + BOUNDARY);
+        List<Future<StoredFile>> pending = new ArrayList<>();
+        for (MultipartStreamParser.Part part; (part = parser.next()) != null; ) {
+            pending.add(service.store(part, tempDir));
+        }
+        return service.awaitAll(pending);
+    }
+
+    @Test
+    void testStore_MorePartsThanWriterThreads() throws Exception {
+        // 2 條寫檔執行緒，3 個請求在傳輸中途停住，第 4 個請求仍須完成
+        service(1024 * 1024, 10 * 1024 * 1024);
+        CountDownLatch resume = new CountDownLatch(1);
+        ExecutorService clients = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<StoredFile>>> stalled = new ArrayList<>();
+            List<byte[]> stalledContents = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                byte[] content = pdf(12 * MultipartStreamParser.BUFFER_SIZE + 5, 10 + i);
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                writeFilePart(out, "file", "slow" + i + ".pdf", "application/pdf", content);
+                byte[] body = request(out);
+                stalledContents.add(content);
+                stalled.add(clients.submit(() -> upload(new StallingInputStream(body, body.length / 2, resume))));
+            }
+
+            byte[] fastContent = pdf(12 * MultipartStreamParser.BUFFER_SIZE + 5, 20);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            writeFilePart(out, "file", "fast.pdf", "application/pdf", fastContent);
+            byte[] fastBody = request(out);
+            Future<List<StoredFile>> fast = clients.submit(() -> upload(new ByteArrayInputStream(fastBody)));
+
+            List<StoredFile> fastStored = fast.get(10, TimeUnit.SECONDS);
+            assertArrayEquals(fastContent, Files.readAllBytes(fastStored.get(0).path()));
+            assertTrue(stalled.stream().noneMatch(Future::isDone));
+
+            resume.countDown();
+            for (int i = 0; i < 3; i++) {
+                StoredFile file = stalled.get(i).get(10, TimeUnit.SECONDS).get(0);
+                assertArrayEquals(stalledContents.get(i), Files.readAllBytes(file.path()));
+                assertEquals(HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+                        .digest(stalledContents.get(i))), file.sha256());
+            }
+        } finally {
+            resume.countDown();
+            clients.shutdownNow();
+        }
+    }
+}
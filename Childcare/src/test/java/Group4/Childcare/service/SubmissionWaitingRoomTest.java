@@ -0,0 +1,208 @@
+package Group4.Childcare.service;
+
+import Group4.Childcare.Service.DataSourceWaitProbe;
+import Group4.Childcare.Service.SubmissionWaitingRoom;
+import Group4.Childcare.Service.SubmissionWaitingRoom.Ticket;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * SubmissionWaitingRoom 單元測試
+ *
+ * 測試覆蓋：
+ * 1. 取號依序排隊，每秒依放行速度推進
+ * 2. 連線池等待連線數超過目標值時放行速度減半，低於目標值一半時加快，且不超出上下限
+ * 3. 送件完成收回號碼牌；放行後逾時未送件、久未查詢的號碼牌被清除
+ * 4. 未啟用時取號立即放行，不量測連線池
+ * 5. 啟用時由專屬的 waiting-room-tick 執行緒放行
+ */
+@ExtendWith(MockitoExtension.class)
+class SubmissionWaitingRoomTest {
+
+    /**
+     * 可調整時間的 Clock
+     */
+    private static class MutableClock extends Clock {
+        private volatile long millis;
+
+        MutableClock(long millis) {
+            this.millis = millis;
+        }
+
+        void advanceSeconds(long seconds) {
+            millis += seconds * 1000;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+    }
+
+    @Mock
+    private DataSourceWaitProbe dataSourceWaitProbe;
+
+    private MutableClock clock;
+
+    @BeforeEach
+    void setUp() {
+        clock = new MutableClock(1_700_000_000_000L);
+    }
+
+    private SubmissionWaitingRoom room(double initialRate) {
+        return new SubmissionWaitingRoom(dataSourceWaitProbe, true, initialRate, 1, 50, 4, 300, 120, clock);
+    }
+
+    @Test
+    void testEnqueue_ReleasedAtConfiguredRate() {
+        // 平均等待連線數介於目標值一半與目標值之間，放行速度維持不變
+        when(dataSourceWaitProbe.samplePendingConnections()).thenReturn(10);
+        SubmissionWaitingRoom room = room(3);
+        List<Ticket> tickets = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            tickets.add(room.enqueue());
+        }
+
+        assertEquals(1, tickets.get(0).position());
+        assertEquals(5, tickets.get(4).position());
+        assertEquals(2, tickets.get(4).estimatedWaitSeconds());
+        assertFalse(room.isAdmitted(tickets.get(0).token()));
+
+        clock.advanceSeconds(1);
+        room.tick();
+
+        assertTrue(room.isAdmitted(tickets.get(0).token()));
+        assertTrue(room.isAdmitted(tickets.get(2).token()));
+        assertFalse(room.isAdmitted(tickets.get(3).token()));
+        assertEquals(1, room.status(tickets.get(3).token()).position());
+        assertEquals(2, room.waitingCount());
+    }
+
+    @Test
+    void testTick_RateAdaptsToPoolWait() {
+        SubmissionWaitingRoom room = room(20);
+        for (int i = 0; i < 1000; i++) {
+            room.enqueue();
+        }
+
+        // 等待連線的執行緒過多：減半直到下限
+        when(dataSourceWaitProbe.samplePendingConnections()).thenReturn(100);
+        room.tick();
+        assertEquals(10, room.getReleaseRate(), 0.001);
+        for (int i = 0; i < 10; i++) {
+            room.tick();
+        }
+        assertEquals(1, room.getReleaseRate(), 0.001);
+
+        // 等待恢復正常：平均值降到目標值一半以下後才逐步加快，不超過上限
+        when(dataSourceWaitProbe.samplePendingConnections()).thenReturn(0);
+        for (int i = 0; i < 100; i++) {
+            room.tick();
+        }
+        assertTrue(room.getAveragePendingConnections() < 2);
+        assertEquals(50, room.getReleaseRate(), 0.001);
+    }
+
+    @Test
+    void testTick_NoQueueNoProbe() {
+        SubmissionWaitingRoom room = room(5);
+
+        room.tick();
+
+        verifyNoInteractions(dataSourceWaitProbe);
+    }
+
+    @Test
+    void testComplete_RemovesToken() {
+        when(dataSourceWaitProbe.samplePendingConnections()).thenReturn(0);
+        SubmissionWaitingRoom room = room(5);
+        Ticket ticket = room.enqueue();
+        room.tick();
+        assertTrue(room.isAdmitted(ticket.token()));
+
+        room.complete(ticket.token());
+
+        assertFalse(room.isAdmitted(ticket.token()));
+        assertNull(room.status(ticket.token()));
+    }
+
+    @Test
+    void testExpiry_AdmissionWindowAndAbandoned() {
+        when(dataSourceWaitProbe.samplePendingConnections()).thenReturn(100);
+        SubmissionWaitingRoom room = room(1);
+        Ticket first = room.enqueue();
+        Ticket second = room.enqueue();
+        room.tick();
+        assertTrue(room.isAdmitted(first.token()));
+
+        // 放行後超過 300 秒未送件
+        clock.advanceSeconds(301);
+        assertFalse(room.isAdmitted(first.token()));
+
+        // 排隊中超過 120 秒未查詢，由定期清除移除
+        room.tick();
+        assertNull(room.status(second.token()));
+    }
+
+    @Test
+    void testDisabled_AdmitsImmediately() {
+        SubmissionWaitingRoom room = new SubmissionWaitingRoom(dataSourceWaitProbe, false, 1, 1, 1, 4, 300, 120, clock);
+
+        Ticket ticket = room.enqueue();
+        room.tick();
+
+        assertTrue(ticket.admitted());
+        assertEquals(0, ticket.position());
+        assertTrue(room.isAdmitted(null));
+        verifyNoInteractions(dataSourceWaitProbe);
+    }
+
+    @Test
+    void testStart_TicksOnDedicatedThread() throws Exception {
+        List<String> threads = new CopyOnWriteArrayList<>();
+        when(dataSourceWaitProbe.samplePendingConnections()).thenAnswer(invocation -> {
+            threads.add(Thread.currentThread().getName());
+            return 0;
+        });
+        SubmissionWaitingRoom room = room(5);
+        Ticket ticket = room.enqueue();
+
+        room.start();
+        try {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!room.isAdmitted(ticket.token()) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+        } finally {
+            room.shutdown();
+        }
+
+        assertTrue(room.isAdmitted(ticket.token()));
+        assertFalse(threads.isEmpty());
+        assertTrue(threads.stream().allMatch("waiting-room-tick"::equals));
+    }
+}
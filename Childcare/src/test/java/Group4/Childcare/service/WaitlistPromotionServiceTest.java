@@ -0,0 +1,221 @@
+package Group4.Childcare.service;
+
+import Group4.Childcare.Repository.WaitlistJdbcRepository;
+import Group4.Childcare.Service.AdmissionHoldService;
+import Group4.Childcare.Service.LotteryEngine;
+import Group4.Childcare.Service.LotteryNotificationService;
+import Group4.Childcare.Service.WaitlistPromotionService;
+import Group4.Childcare.Service.WaitlistRankIndexService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * WaitlistPromotionService 單元測試
+ *
+ * 測試覆蓋：
+ * 1. 第一序位法定名額未滿時優先遞補第一序位
+ * 2. 序位名額已滿時依 CurrentOrder 遞補
+ * 3. 年齡不符班級的候補者不遞補
+ * 4. 班級已額滿時不遞補、不取鎖
+ * 5. 候補者狀態已被變更時歸還座位並遞補下一位
+ * 6. 機構正在抽籤時回傳 null
+ * 7. 同一班級短時間內多次空位只遞補一次
+ */
+@ExtendWith(MockitoExtension.class)
+class WaitlistPromotionServiceTest {
+
+    @Mock
+    private WaitlistJdbcRepository waitlistJdbcRepository;
+
+    @Mock
+    private LotteryNotificationService lotteryNotificationService;
+
+    @Mock
+    private WaitlistRankIndexService waitlistRankIndexService;
+
+    @Mock
+    private AdmissionHoldService admissionHoldService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private WaitlistPromotionService waitlistPromotionService;
+    private UUID classId;
+    private UUID institutionId;
+
+    @BeforeEach
+    void setUp() {
+        waitlistPromotionService = new WaitlistPromotionService(waitlistJdbcRepository, lotteryNotificationService,
+                waitlistRankIndexService, admissionHoldService, transactionManager, 50);
+        classId = UUID.randomUUID();
+        institutionId = UUID.randomUUID();
+    }
+
+    @AfterEach
+    void tearDown() {
+        waitlistPromotionService.shutdown();
+    }
+
+    private Map<String, Object> classInfo(int capacity, int currentStudents) {
+        Map<String, Object> info = new HashMap<>();
+        info.put("ClassID", classId.toString());
+        info.put("InstitutionID", institutionId.toString());
+        info.put("Capacity", capacity);
+        info.put("CurrentStudents", currentStudents);
+        info.put("MinAgeDescription", 12);
+        info.put("MaxAgeDescription", 36);
+        return info;
+    }
+
+    private static Map<String, Object> applicant(String nationalId, int ageMonths, int currentOrder) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("ApplicationID", UUID.randomUUID().toString());
+        row.put("NationalID", nationalId);
+        row.put("BirthDate", java.sql.Date.valueOf(LocalDate.now().minusMonths(ageMonths).minusDays(1)));
+        row.put("CurrentOrder", currentOrder);
+        return row;
+    }
+
+    /**
+     * 總容量 10（法定名額：第一序位 2、第二序位 1）
+     */
+    private void givenWaitlist(Map<String, Object> classInfo, Map<Integer, Integer> acceptedCount,
+                               List<Map<String, Object>> first, List<Map<String, Object>> second,
+                               List<Map<String, Object>> third) {
+        Map<Integer, List<Map<String, Object>>> byPriority = new HashMap<>();
+        byPriority.put(1, first);
+        byPriority.put(2, second);
+        byPriority.put(3, third);
+        when(waitlistJdbcRepository.findClassForPromotion(classId)).thenReturn(classInfo);
+        when(waitlistJdbcRepository.tryAcquireLotteryLock(institutionId)).thenReturn(true);
+        when(waitlistJdbcRepository.getLotteryApplicantsByPriority(institutionId)).thenReturn(byPriority);
+        when(waitlistJdbcRepository.getAcceptedCountByPriority(institutionId)).thenReturn(acceptedCount);
+        when(waitlistJdbcRepository.getTotalCapacity(institutionId)).thenReturn(10);
+    }
+
+    @Test
+    void testPromote_FirstPriorityBeforeEarlierOrder() {
+        Map<String, Object> third = applicant("C", 24, 1);
+        Map<String, Object> first = applicant("A", 24, 5);
+        givenWaitlist(classInfo(10, 9), new HashMap<>(), List.of(first), List.of(), List.of(third));
+        when(waitlistJdbcRepository.claimClassSeat(classId)).thenReturn(true);
+        when(waitlistJdbcRepository.admitWaitlisted(any(), any(), eq(classId), any())).thenReturn(true);
+
+        List<Map<String, Object>> promoted = waitlistPromotionService.promote(classId);
+
+        assertEquals(1, promoted.size());
+        assertEquals("A", promoted.get(0).get("NationalID"));
+        assertEquals(LotteryEngine.STATUS_ADMITTED, promoted.get(0).get("Status"));
+        assertEquals(classId.toString(), promoted.get(0).get("ClassID"));
+        assertNull(promoted.get(0).get("CurrentOrder"));
+        verify(waitlistJdbcRepository).admitWaitlisted(UUID.fromString(first.get("ApplicationID").toString()), "A",
+                classId, WaitlistPromotionService.REASON_PROMOTED);
+        verify(lotteryNotificationService).sendLotteryNotificationEmails(eq(promoted), anyList());
+        verify(admissionHoldService).holdAdmitted(promoted);
+        verify(waitlistRankIndexService).refreshApplication(UUID.fromString(first.get("ApplicationID").toString()));
+    }
+
+    @Test
+    void testPromote_QuotaFilled_FollowsCurrentOrder() {
+        Map<Integer, Integer> acceptedCount = new HashMap<>();
+        acceptedCount.put(1, 2);
+        acceptedCount.put(2, 1);
+        Map<String, Object> third = applicant("C", 24, 1);
+        Map<String, Object> first = applicant("A", 24, 5);
+        givenWaitlist(classInfo(10, 9), acceptedCount, new ArrayList<>(List.of(first)), List.of(), List.of(third));
+        when(waitlistJdbcRepository.claimClassSeat(classId)).thenReturn(true);
+        when(waitlistJdbcRepository.admitWaitlisted(any(), any(), eq(classId), any())).thenReturn(true);
+
+        List<Map<String, Object>> promoted = waitlistPromotionService.promote(classId);
+
+        assertEquals(1, promoted.size());
+        assertEquals("C", promoted.get(0).get("NationalID"));
+    }
+
+    @Test
+    void testPromote_SkipsAgeIneligible() {
+        Map<String, Object> tooOld = applicant("A", 48, 1);
+        Map<String, Object> eligible = applicant("B", 24, 2);
+        givenWaitlist(classInfo(10, 8), new HashMap<>(), List.of(), List.of(), new ArrayList<>(List.of(tooOld, eligible)));
+        when(waitlistJdbcRepository.claimClassSeat(classId)).thenReturn(true);
+        when(waitlistJdbcRepository.admitWaitlisted(any(), any(), eq(classId), any())).thenReturn(true);
+
+        List<Map<String, Object>> promoted = waitlistPromotionService.promote(classId);
+
+        assertEquals(1, promoted.size());
+        assertEquals("B", promoted.get(0).get("NationalID"));
+        verify(waitlistJdbcRepository, times(1)).claimClassSeat(classId);
+        verify(waitlistJdbcRepository, never()).admitWaitlisted(any(), eq("A"), any(), any());
+    }
+
+    @Test
+    void testPromote_ClassFull_NoPromotion() {
+        when(waitlistJdbcRepository.findClassForPromotion(classId)).thenReturn(classInfo(10, 10));
+
+        List<Map<String, Object>> promoted = waitlistPromotionService.promote(classId);
+
+        assertTrue(promoted.isEmpty());
+        verify(waitlistJdbcRepository, never()).tryAcquireLotteryLock(any());
+        verify(waitlistJdbcRepository, never()).claimClassSeat(any());
+        verifyNoInteractions(lotteryNotificationService);
+    }
+
+    @Test
+    void testPromote_AdmitFails_ReturnsSeatAndTriesNext() {
+        Map<String, Object> changed = applicant("A", 24, 1);
+        Map<String, Object> next = applicant("B", 24, 2);
+        givenWaitlist(classInfo(10, 9), new HashMap<>(), List.of(), List.of(), new ArrayList<>(List.of(changed, next)));
+        when(waitlistJdbcRepository.claimClassSeat(classId)).thenReturn(true);
+        when(waitlistJdbcRepository.admitWaitlisted(any(), eq("A"), eq(classId), any())).thenReturn(false);
+        when(waitlistJdbcRepository.admitWaitlisted(any(), eq("B"), eq(classId), any())).thenReturn(true);
+
+        List<Map<String, Object>> promoted = waitlistPromotionService.promote(classId);
+
+        assertEquals(1, promoted.size());
+        assertEquals("B", promoted.get(0).get("NationalID"));
+        verify(waitlistJdbcRepository).releaseClassSeat(classId);
+        verify(waitlistJdbcRepository, times(2)).claimClassSeat(classId);
+    }
+
+    @Test
+    void testPromote_InstitutionLocked_ReturnsNull() {
+        when(waitlistJdbcRepository.findClassForPromotion(classId)).thenReturn(classInfo(10, 9));
+        when(waitlistJdbcRepository.tryAcquireLotteryLock(institutionId)).thenReturn(false);
+
+        assertNull(waitlistPromotionService.promote(classId));
+
+        verify(waitlistJdbcRepository, never()).getLotteryApplicantsByPriority(any());
+        verifyNoInteractions(lotteryNotificationService);
+    }
+
+    @Test
+    void testSeatFreed_CoalescesEventsPerClass() throws InterruptedException {
+        when(waitlistJdbcRepository.findClassForPromotion(classId)).thenReturn(classInfo(10, 10));
+
+        waitlistPromotionService.seatFreed(classId);
+        waitlistPromotionService.seatFreed(classId);
+        waitlistPromotionService.seatFreed(classId);
+
+        verify(waitlistJdbcRepository, timeout(1000).times(1)).findClassForPromotion(classId);
+        Thread.sleep(150);
+        verify(waitlistJdbcRepository, times(1)).findClassForPromotion(classId);
+    }
+}
@@ -0,0 +1,93 @@
+package Group4.Childcare.service;
+
+import Group4.Childcare.Repository.WaitlistJdbcRepository;
+import Group4.Childcare.Service.WaitlistRankCompactionService;
+import Group4.Childcare.Service.WaitlistRankIndexService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * WaitlistRankCompactionService 單元測試
+ *
+ * 測試覆蓋：
+ * 1. 取得機構鎖後重新編排
+ * 2. 機構正在抽籤時略過
+ * 3. 單一機構失敗不影響其他機構
+ */
+@ExtendWith(MockitoExtension.class)
+class WaitlistRankCompactionServiceTest {
+
+    @Mock
+    private WaitlistJdbcRepository waitlistJdbcRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private WaitlistRankIndexService waitlistRankIndexService;
+
+    private WaitlistRankCompactionService service;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(transactionManager.getTransaction(any())).thenReturn(mock(TransactionStatus.class));
+        service = new WaitlistRankCompactionService(waitlistJdbcRepository, transactionManager, waitlistRankIndexService);
+    }
+
+    @Test
+    void testCompact_LockAcquired_RenumbersKeys() {
+        UUID institutionId = UUID.randomUUID();
+        when(waitlistJdbcRepository.tryAcquireLotteryLock(institutionId)).thenReturn(true);
+        when(waitlistJdbcRepository.compactRankKeys(institutionId)).thenReturn(12);
+
+        assertEquals(12, service.compact(institutionId));
+        verify(waitlistRankIndexService).invalidate(institutionId);
+        verify(transactionManager).commit(any());
+    }
+
+    @Test
+    void testCompact_LotteryInProgress_Skipped() {
+        UUID institutionId = UUID.randomUUID();
+        when(waitlistJdbcRepository.tryAcquireLotteryLock(institutionId)).thenReturn(false);
+
+        assertEquals(-1, service.compact(institutionId));
+        verify(waitlistJdbcRepository, never()).compactRankKeys(any());
+    }
+
+    @Test
+    void testCompactDenseInstitutions_ContinuesAfterFailure() {
+        UUID failing = UUID.randomUUID();
+        UUID ok = UUID.randomUUID();
+        when(waitlistJdbcRepository.findInstitutionsNeedingRankCompaction()).thenReturn(List.of(failing, ok));
+        when(waitlistJdbcRepository.tryAcquireLotteryLock(any())).thenReturn(true);
+        when(waitlistJdbcRepository.compactRankKeys(failing)).thenThrow(new RuntimeException("DB error"));
+        when(waitlistJdbcRepository.compactRankKeys(ok)).thenReturn(3);
+
+        service.compactDenseInstitutions();
+
+        verify(waitlistJdbcRepository).compactRankKeys(ok);
+        verify(transactionManager).rollback(any());
+    }
+
+    @Test
+    void testCompactDenseInstitutions_NothingToDo() {
+        when(waitlistJdbcRepository.findInstitutionsNeedingRankCompaction()).thenReturn(Collections.emptyList());
+
+        service.compactDenseInstitutions();
+
+        verify(waitlistJdbcRepository, never()).tryAcquireLotteryLock(any());
+    }
+}
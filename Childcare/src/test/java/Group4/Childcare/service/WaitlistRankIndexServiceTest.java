@@ -0,0 +1,212 @@
+package Group4.Childcare.service;
+
+import Group4.Childcare.Repository.WaitlistJdbcRepository;
+import Group4.Childcare.Service.WaitlistRankIndex;
+import Group4.Childcare.Service.WaitlistRankIndexService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * WaitlistRankIndexService / WaitlistRankIndex 單元測試
+ *
+ * 測試覆蓋：
+ * 1. 延遲載入（同一機構只查詢一次）
+ * 2. 候補名單名次與姓名篩選
+ * 3. 候補名次查詢與不在名單中
+ * 4. 排在指定排序鍵之前的候補者
+ * 5. 狀態變更後同步索引
+ * 6. invalidate 後重新載入
+ * 7. 隨機新增/移除與排序清單比對
+ */
+@ExtendWith(MockitoExtension.class)
+class WaitlistRankIndexServiceTest {
+
+    @Mock
+    private WaitlistJdbcRepository waitlistJdbcRepository;
+
+    private WaitlistRankIndexService indexService;
+    private UUID institutionId;
+    private UUID app1;
+    private UUID app2;
+    private UUID app3;
+
+    @BeforeEach
+    void setUp() {
+        indexService = new WaitlistRankIndexService(waitlistJdbcRepository, 300);
+        institutionId = UUID.randomUUID();
+        app1 = UUID.randomUUID();
+        app2 = UUID.randomUUID();
+        app3 = UUID.randomUUID();
+    }
+
+    private static Map<String, Object> row(UUID applicationId, String nationalId, String name, int rankKey) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("ParticipantID", UUID.randomUUID().toString());
+        row.put("ApplicationID", applicationId.toString());
+        row.put("NationalID", nationalId);
+        row.put("Name", name);
+        row.put("CaseNumber", 202501010001L);
+        row.put("BirthDate", java.sql.Date.valueOf(LocalDate.now().minusMonths(26)));
+        row.put("IdentityType", 3);
+        row.put("InstitutionName", "測試幼兒園");
+        row.put("CurrentOrder", rankKey);
+        return row;
+    }
+
+    private void stubWaitlist() {
+        when(waitlistJdbcRepository.findWaitlistRankEntries(institutionId)).thenReturn(new ArrayList<>(List.of(
+                row(app2, "B", "王小明", 2048),
+                row(app1, "A", "陳小華", 1024),
+                row(app3, "C", "王小美", 3072))));
+    }
+
+    @Test
+    void testGetWaitlist_LoadsOnceAndDerivesPositions() {
+        stubWaitlist();
+
+        List<Map<String, Object>> first = indexService.getWaitlist(institutionId, null);
+        List<Map<String, Object>> second = indexService.getWaitlist(institutionId, null);
+
+        assertEquals(3, first.size());
+        assertEquals("陳小華", first.get(0).get("Name"));
+        assertEquals(1, first.get(0).get("CurrentOrder"));
+        assertEquals(3, first.get(2).get("CurrentOrder"));
+        assertEquals("2歲2個月", first.get(0).get("Age"));
+        assertEquals(3, second.size());
+        verify(waitlistJdbcRepository, times(1)).findWaitlistRankEntries(institutionId);
+    }
+
+    @Test
+    void testGetWaitlist_NameFilterKeepsOverallPosition() {
+        stubWaitlist();
+
+        List<Map<String, Object>> rows = indexService.getWaitlist(institutionId, "王");
+
+        assertEquals(2, rows.size());
+        assertEquals(2, rows.get(0).get("CurrentOrder"));
+        assertEquals(3, rows.get(1).get("CurrentOrder"));
+    }
+
+    @Test
+    void testGetPosition() {
+        stubWaitlist();
+
+        WaitlistRankIndexService.Position position = indexService.getPosition(institutionId, app2, "B");
+
+        assertNotNull(position);
+        assertEquals(2, position.position());
+        assertEquals(3, position.totalWaiting());
+        assertEquals(2048, position.rankKey());
+        assertNull(indexService.getPosition(institutionId, UUID.randomUUID(), "X"));
+    }
+
+    @Test
+    void testGetWaitingAhead() {
+        stubWaitlist();
+
+        List<Map<String, Object>> ahead = indexService.getWaitingAhead(institutionId, 3072);
+
+        assertEquals(2, ahead.size());
+        assertEquals("A", ahead.get(0).get("NationalID"));
+        assertEquals(1024, ahead.get(0).get("CurrentOrder"));
+        assertEquals("候補中", ahead.get(1).get("Status"));
+        assertTrue(indexService.getWaitingAhead(institutionId, 1024).isEmpty());
+    }
+
+    @Test
+    void testRefreshApplication_RemovesAdmittedAndAddsNewWaiting() {
+        stubWaitlist();
+        indexService.getWaitlist(institutionId, null);
+
+        Map<String, Object> admitted = row(app1, "A", "陳小華", 1024);
+        admitted.put("Status", "已錄取");
+        admitted.put("CurrentOrder", null);
+        admitted.put("InstitutionID", institutionId.toString());
+        when(waitlistJdbcRepository.findChildRankEntriesByApplication(app1)).thenReturn(List.of(admitted));
+        indexService.refreshApplication(app1);
+
+        UUID app4 = UUID.randomUUID();
+        Map<String, Object> waiting = row(app4, "D", "林小安", 4096);
+        waiting.put("Status", "候補中");
+        waiting.put("InstitutionID", institutionId.toString());
+        when(waitlistJdbcRepository.findChildRankEntriesByApplication(app4)).thenReturn(List.of(waiting));
+        indexService.refreshApplication(app4);
+
+        assertNull(indexService.getPosition(institutionId, app1, "A"));
+        assertEquals(1, indexService.getPosition(institutionId, app2, "B").position());
+        assertEquals(3, indexService.getPosition(institutionId, app4, "D").position());
+        verify(waitlistJdbcRepository, times(1)).findWaitlistRankEntries(institutionId);
+    }
+
+    @Test
+    void testRefreshApplication_NotLoadedInstitution_DoesNotLoad() {
+        Map<String, Object> waiting = row(app1, "A", "陳小華", 1024);
+        waiting.put("Status", "候補中");
+        waiting.put("InstitutionID", institutionId.toString());
+        when(waitlistJdbcRepository.findChildRankEntriesByApplication(app1)).thenReturn(List.of(waiting));
+
+        indexService.refreshApplication(app1);
+
+        verify(waitlistJdbcRepository, never()).findWaitlistRankEntries(any());
+    }
+
+    @Test
+    void testInvalidate_ReloadsOnNextQuery() {
+        stubWaitlist();
+        indexService.getWaitlist(institutionId, null);
+
+        indexService.invalidate(institutionId);
+        indexService.getWaitlist(institutionId, null);
+
+        verify(waitlistJdbcRepository, times(2)).findWaitlistRankEntries(institutionId);
+    }
+
+    @Test
+    void testRankIndex_RandomOperationsMatchSortedList() {
+        SplittableRandom random = new SplittableRandom(42);
+        WaitlistRankIndex index = new WaitlistRankIndex();
+        List<WaitlistRankIndex.Entry> expected = new ArrayList<>();
+        Comparator<WaitlistRankIndex.Entry> order = Comparator.comparingInt(WaitlistRankIndex.Entry::rankKey)
+                .thenComparing(WaitlistRankIndex.Entry::participantId);
+
+        for (int step = 0; step < 3_000; step++) {
+            if (expected.isEmpty() || random.nextInt(3) > 0) {
+                WaitlistRankIndex.Entry entry = new WaitlistRankIndex.Entry(UUID.randomUUID(), UUID.randomUUID(),
+                        "N" + step, "C" + step, null, null, 3, null, random.nextInt(5_000));
+                index.put(entry);
+                expected.add(entry);
+            } else {
+                WaitlistRankIndex.Entry removed = expected.remove(random.nextInt(expected.size()));
+                assertTrue(index.remove(removed.applicationId(), removed.nationalId()));
+            }
+        }
+        expected.sort(order);
+
+        assertEquals(expected.size(), index.size());
+        assertEquals(expected, index.firstWaiting(expected.size()));
+        for (int i = 0; i < expected.size(); i += 37) {
+            WaitlistRankIndex.Entry entry = expected.get(i);
+            assertEquals(i + 1, index.positionOf(entry.applicationId(), entry.nationalId()));
+            int key = entry.rankKey();
+            long ahead = expected.stream().filter(e -> e.rankKey() < key).count();
+            assertEquals(ahead, index.countAhead(key));
+            assertEquals(expected.subList(0, (int) ahead), index.aheadOf(key));
+        }
+        assertEquals(expected.subList(0, Math.min(10, expected.size())), index.firstWaiting(10));
+    }
+}